@@ -0,0 +1,122 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2015 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pentaho.di.core.KettleEnvironment;
+import org.pentaho.di.core.RowSet;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.logging.LogLevel;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.trans.Trans;
+import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.step.StepMeta;
+import org.pentaho.di.trans.steps.dummytrans.DummyTrans;
+import org.pentaho.di.trans.steps.dummytrans.DummyTransData;
+import org.pentaho.di.trans.steps.dummytrans.DummyTransMeta;
+
+/**
+ * Measures the overhead of BaseStep.getRow() and putRow() by passing rows through a Dummy step, one row per operation.
+ * Everything happens on the benchmark thread so the numbers don't depend on thread scheduling.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 5 )
+@Measurement( iterations = 10 )
+@Fork( 1 )
+public class BaseStepBenchmark {
+
+  @Param( { RowSetBenchmark.QUEUE, RowSetBenchmark.BLOCKING } )
+  public String rowSetType;
+
+  private Trans trans;
+  private DummyTrans step;
+  private DummyTransMeta meta;
+  private DummyTransData data;
+
+  private RowSet input;
+  private RowSet output;
+
+  private RowMetaInterface rowMeta;
+  private Object[] row;
+
+  @Setup
+  public void setUp() throws KettleException {
+    KettleEnvironment.init( false );
+
+    meta = new DummyTransMeta();
+    data = new DummyTransData();
+    StepMeta stepMeta = new StepMeta( "Dummy", meta );
+    TransMeta transMeta = new TransMeta();
+    transMeta.setName( "BaseStepBenchmark" );
+    transMeta.addStep( stepMeta );
+
+    trans = new Trans( transMeta );
+    trans.setLogLevel( LogLevel.MINIMAL );
+    trans.setRunning( true );
+
+    step = new DummyTrans( stepMeta, data, 0, transMeta, trans );
+    step.init( meta, data );
+
+    rowMeta = BenchmarkRows.createRowMeta( BenchmarkRows.MIXED, 10 );
+    row = BenchmarkRows.createRow( rowMeta, BenchmarkRows.createRandom() );
+
+    input = RowSetBenchmark.createRowSet( rowSetType );
+    output = RowSetBenchmark.createRowSet( rowSetType );
+    List<RowSet> inputRowSets = new ArrayList<RowSet>();
+    inputRowSets.add( input );
+    List<RowSet> outputRowSets = new ArrayList<RowSet>();
+    outputRowSets.add( output );
+    step.setInputRowSets( inputRowSets );
+    step.setOutputRowSets( outputRowSets );
+  }
+
+  @TearDown
+  public void tearDown() {
+    step.dispose( meta, data );
+    trans.setRunning( false );
+  }
+
+  @Benchmark
+  public Object[] passRow() throws KettleException {
+    input.putRow( rowMeta, row );
+    step.processRow( meta, data );
+    return output.getRow();
+  }
+}
@@ -0,0 +1,149 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2015 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.benchmark;
+
+import java.util.Date;
+import java.util.Random;
+
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaBoolean;
+import org.pentaho.di.core.row.value.ValueMetaDate;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaNumber;
+import org.pentaho.di.core.row.value.ValueMetaString;
+
+/**
+ * Generates the rows the benchmarks work on. The data is random but the same for every run so that results can be
+ * compared between builds.
+ */
+public class BenchmarkRows {
+
+  /** Rows with String fields only */
+  public static final String STRING = "string";
+
+  /** Rows with String, Date, Number, Integer and Boolean fields */
+  public static final String MIXED = "mixed";
+
+  private static final int[] MIXED_TYPES = new int[] {
+    ValueMetaInterface.TYPE_STRING, ValueMetaInterface.TYPE_DATE, ValueMetaInterface.TYPE_NUMBER,
+    ValueMetaInterface.TYPE_INTEGER, ValueMetaInterface.TYPE_BOOLEAN, };
+
+  private static final long SEED = 20150101L;
+
+  private BenchmarkRows() {
+  }
+
+  public static Random createRandom() {
+    return new Random( SEED );
+  }
+
+  /**
+   * @param rowType
+   *          {@link #STRING} or {@link #MIXED}
+   * @param nrFields
+   *          the number of fields in the row
+   * @return the row metadata
+   */
+  public static RowMetaInterface createRowMeta( String rowType, int nrFields ) {
+    RowMetaInterface rowMeta = new RowMeta();
+    for ( int i = 0; i < nrFields; i++ ) {
+      String name = "field" + ( i + 1 );
+      int type = STRING.equals( rowType ) ? ValueMetaInterface.TYPE_STRING : MIXED_TYPES[i % MIXED_TYPES.length];
+      rowMeta.addValueMeta( createValueMeta( name, type ) );
+    }
+    return rowMeta;
+  }
+
+  private static ValueMetaInterface createValueMeta( String name, int type ) {
+    switch ( type ) {
+      case ValueMetaInterface.TYPE_DATE:
+        return new ValueMetaDate( name );
+      case ValueMetaInterface.TYPE_NUMBER:
+        ValueMetaInterface numberMeta = new ValueMetaNumber( name );
+        numberMeta.setLength( 12, 4 );
+        return numberMeta;
+      case ValueMetaInterface.TYPE_INTEGER:
+        ValueMetaInterface integerMeta = new ValueMetaInteger( name );
+        integerMeta.setLength( 8, 0 );
+        return integerMeta;
+      case ValueMetaInterface.TYPE_BOOLEAN:
+        return new ValueMetaBoolean( name );
+      default:
+        ValueMetaInterface stringMeta = new ValueMetaString( name );
+        stringMeta.setLength( 20 );
+        return stringMeta;
+    }
+  }
+
+  /**
+   * @return a row of random data matching the metadata
+   */
+  public static Object[] createRow( RowMetaInterface rowMeta, Random random ) {
+    Object[] row = new Object[rowMeta.size()];
+    for ( int i = 0; i < row.length; i++ ) {
+      row[i] = createValue( rowMeta.getValueMeta( i ).getType(), random );
+    }
+    return row;
+  }
+
+  /**
+   * @return nrRows rows of random data matching the metadata
+   */
+  public static Object[][] createRows( RowMetaInterface rowMeta, int nrRows, Random random ) {
+    Object[][] rows = new Object[nrRows][];
+    for ( int i = 0; i < nrRows; i++ ) {
+      rows[i] = createRow( rowMeta, random );
+    }
+    return rows;
+  }
+
+  private static Object createValue( int type, Random random ) {
+    switch ( type ) {
+      case ValueMetaInterface.TYPE_DATE:
+        // Somewhere between 2000 and 2015
+        return new Date( 946684800000L + (long) ( random.nextDouble() * 15 * 365 * 86400000L ) );
+      case ValueMetaInterface.TYPE_NUMBER:
+        return Double.valueOf( random.nextDouble() * 1000000 );
+      case ValueMetaInterface.TYPE_INTEGER:
+        return Long.valueOf( random.nextInt( 1000000 ) );
+      case ValueMetaInterface.TYPE_BOOLEAN:
+        return Boolean.valueOf( random.nextBoolean() );
+      default:
+        return randomString( 20, random );
+    }
+  }
+
+  /**
+   * @return a random string of letters and digits
+   */
+  public static String randomString( int length, Random random ) {
+    StringBuilder string = new StringBuilder( length );
+    for ( int i = 0; i < length; i++ ) {
+      int c = random.nextInt( 36 );
+      string.append( (char) ( c < 10 ? '0' + c : 'a' + c - 10 ) );
+    }
+    return string.toString();
+  }
+}
@@ -0,0 +1,56 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2015 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the standard JMH command line options. Unless told otherwise the results are written as
+ * JSON to jmh-result.json so that they can be archived by the build and compared between versions.
+ */
+public class BenchmarkRunner {
+
+  public static final String DEFAULT_RESULT_FILE = "jmh-result.json";
+
+  public static void main( String[] args ) throws Exception {
+    CommandLineOptions commandLineOptions = new CommandLineOptions( args );
+    if ( commandLineOptions.shouldHelp() || commandLineOptions.shouldList()
+      || commandLineOptions.shouldListProfilers() || commandLineOptions.shouldListResultFormats() ) {
+      org.openjdk.jmh.Main.main( args );
+      return;
+    }
+
+    ChainedOptionsBuilder options = new OptionsBuilder().parent( commandLineOptions );
+    if ( !commandLineOptions.getResultFormat().hasValue() ) {
+      options.resultFormat( ResultFormatType.JSON );
+    }
+    if ( !commandLineOptions.getResult().hasValue() ) {
+      options.result( DEFAULT_RESULT_FILE );
+    }
+    new Runner( options.build() ).run();
+  }
+}
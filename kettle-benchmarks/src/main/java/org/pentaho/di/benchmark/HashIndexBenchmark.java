@@ -0,0 +1,190 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2015 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.hash.BinaryHashIndex;
+import org.pentaho.di.core.hash.ByteArrayHashIndex;
+import org.pentaho.di.core.hash.LongHashIndex;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaString;
+
+/**
+ * Measures building and probing the hash indexes used by Stream Lookup. The build benchmarks fill a new index with all
+ * the keys, the lookup benchmarks probe a filled index in random order. Scores are per entry.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 5 )
+@Measurement( iterations = 10 )
+@Fork( 1 )
+public class HashIndexBenchmark {
+
+  public static final int NR_KEYS = 100000;
+
+  private long[] longKeys;
+  private byte[][] keys;
+  private byte[][] values;
+  private int[] lookupOrder;
+
+  private ByteArrayHashIndex byteArrayIndex;
+  private LongHashIndex longIndex;
+  private BinaryHashIndex binaryIndex;
+
+  private RowMetaInterface keyMeta;
+
+  @Setup
+  public void setUp() throws KettleException {
+    keyMeta = new RowMeta();
+    keyMeta.addValueMeta( new ValueMetaInteger( "id" ) );
+    RowMetaInterface valueMeta = new RowMeta();
+    valueMeta.addValueMeta( new ValueMetaString( "name" ) );
+
+    Random random = BenchmarkRows.createRandom();
+    longKeys = new long[NR_KEYS];
+    keys = new byte[NR_KEYS][];
+    values = new byte[NR_KEYS][];
+    lookupOrder = new int[NR_KEYS];
+    for ( int i = 0; i < NR_KEYS; i++ ) {
+      // Sparse keys, like the technical keys of a dimension that had rows deleted
+      longKeys[i] = i * 7L + random.nextInt( 7 );
+      keys[i] = RowMeta.extractData( keyMeta, new Object[] { Long.valueOf( longKeys[i] ) } );
+      values[i] = RowMeta.extractData( valueMeta, new Object[] { BenchmarkRows.randomString( 20, random ) } );
+      lookupOrder[i] = i;
+    }
+    for ( int i = NR_KEYS - 1; i > 0; i-- ) {
+      int j = random.nextInt( i + 1 );
+      int swap = lookupOrder[i];
+      lookupOrder[i] = lookupOrder[j];
+      lookupOrder[j] = swap;
+    }
+
+    byteArrayIndex = buildByteArrayIndex();
+    longIndex = buildLongIndex();
+    binaryIndex = buildBinaryIndex();
+  }
+
+  @TearDown
+  public void tearDown() {
+    binaryIndex.clear();
+  }
+
+  private ByteArrayHashIndex buildByteArrayIndex() throws KettleException {
+    ByteArrayHashIndex index = new ByteArrayHashIndex( keyMeta );
+    for ( int i = 0; i < NR_KEYS; i++ ) {
+      index.put( keys[i], values[i] );
+    }
+    return index;
+  }
+
+  private LongHashIndex buildLongIndex() throws KettleException {
+    LongHashIndex index = new LongHashIndex();
+    for ( int i = 0; i < NR_KEYS; i++ ) {
+      index.put( longKeys[i], Long.valueOf( i ) );
+    }
+    return index;
+  }
+
+  private BinaryHashIndex buildBinaryIndex() {
+    BinaryHashIndex index = new BinaryHashIndex();
+    for ( int i = 0; i < NR_KEYS; i++ ) {
+      index.put( keys[i], values[i] );
+    }
+    return index;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation( NR_KEYS )
+  public ByteArrayHashIndex buildByteArrayHashIndex() throws KettleException {
+    return buildByteArrayIndex();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation( NR_KEYS )
+  public LongHashIndex buildLongHashIndex() throws KettleException {
+    return buildLongIndex();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation( NR_KEYS )
+  public int buildBinaryHashIndex() {
+    BinaryHashIndex index = buildBinaryIndex();
+    int size = index.getSize();
+    index.clear();
+    return size;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation( NR_KEYS )
+  public int lookupByteArrayHashIndex() throws KettleException {
+    int found = 0;
+    for ( int i = 0; i < NR_KEYS; i++ ) {
+      if ( byteArrayIndex.get( keys[lookupOrder[i]] ) != null ) {
+        found++;
+      }
+    }
+    return found;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation( NR_KEYS )
+  public int lookupLongHashIndex() throws KettleException {
+    int found = 0;
+    for ( int i = 0; i < NR_KEYS; i++ ) {
+      if ( longIndex.get( longKeys[lookupOrder[i]] ) != null ) {
+        found++;
+      }
+    }
+    return found;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation( NR_KEYS )
+  public int lookupBinaryHashIndex() {
+    int found = 0;
+    for ( int i = 0; i < NR_KEYS; i++ ) {
+      if ( binaryIndex.get( keys[lookupOrder[i]] ) != null ) {
+        found++;
+      }
+    }
+    return found;
+  }
+}
@@ -0,0 +1,108 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2015 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.RowMetaInterface;
+
+/**
+ * Measures the serialization of rows, as used by the socket and serialize-to-file steps and by sorting to disk, and
+ * the row hash code used by the lookup and partitioning code.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 5 )
+@Measurement( iterations = 10 )
+@Fork( 1 )
+public class RowMetaBenchmark {
+
+  @Param( { BenchmarkRows.STRING, BenchmarkRows.MIXED } )
+  public String rowType;
+
+  @Param( { "10", "100" } )
+  public int nrFields;
+
+  private RowMetaInterface rowMeta;
+  private Object[] row;
+
+  private ByteArrayOutputStream outputBuffer;
+  private DataOutputStream outputStream;
+
+  private ByteArrayInputStream inputBuffer;
+  private DataInputStream inputStream;
+
+  @Setup
+  public void setUp() throws KettleException {
+    rowMeta = BenchmarkRows.createRowMeta( rowType, nrFields );
+    row = BenchmarkRows.createRow( rowMeta, BenchmarkRows.createRandom() );
+
+    outputBuffer = new ByteArrayOutputStream( 64 * 1024 );
+    outputStream = new DataOutputStream( outputBuffer );
+
+    rowMeta.writeData( outputStream, row );
+    inputBuffer = new ByteArrayInputStream( outputBuffer.toByteArray() );
+    inputStream = new DataInputStream( inputBuffer );
+  }
+
+  @Benchmark
+  public int writeData() throws KettleException {
+    outputBuffer.reset();
+    rowMeta.writeData( outputStream, row );
+    return outputBuffer.size();
+  }
+
+  @Benchmark
+  public Object[] readData() throws KettleException, IOException {
+    inputBuffer.reset();
+    return rowMeta.readData( inputStream );
+  }
+
+  @Benchmark
+  public int hashCodeRow() throws KettleException {
+    return rowMeta.hashCode( row );
+  }
+
+  @Benchmark
+  public Object[] cloneRow() throws KettleException {
+    return rowMeta.cloneRow( row );
+  }
+}
@@ -0,0 +1,145 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2015 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.pentaho.di.core.BlockingBatchingRowSet;
+import org.pentaho.di.core.BlockingRowSet;
+import org.pentaho.di.core.QueueRowSet;
+import org.pentaho.di.core.RowSet;
+import org.pentaho.di.core.row.RowMetaInterface;
+
+/**
+ * Measures how fast rows are handed over between steps by the different row set implementations. The handoff group
+ * runs a producer and a consumer thread like two steps in a running transformation do. The single threaded variant
+ * fills the row set and empties it again, which is how the single threaded engine uses row sets.
+ */
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 5 )
+@Measurement( iterations = 10 )
+@Fork( 1 )
+public class RowSetBenchmark {
+
+  /** The default row set size of a transformation */
+  public static final int ROW_SET_SIZE = 10000;
+
+  public static final String BLOCKING = "BlockingRowSet";
+  public static final String BLOCKING_BATCHING = "BlockingBatchingRowSet";
+  public static final String QUEUE = "QueueRowSet";
+
+  static RowSet createRowSet( String rowSetType ) {
+    if ( BLOCKING.equals( rowSetType ) ) {
+      return new BlockingRowSet( ROW_SET_SIZE );
+    } else if ( BLOCKING_BATCHING.equals( rowSetType ) ) {
+      return new BlockingBatchingRowSet( ROW_SET_SIZE );
+    } else {
+      return new QueueRowSet();
+    }
+  }
+
+  /**
+   * A row set shared by a producer and a consumer thread. The queue row set isn't thread safe so it's not part of this
+   * comparison.
+   */
+  @State( Scope.Group )
+  public static class HandoffState {
+    @Param( { BLOCKING, BLOCKING_BATCHING } )
+    public String rowSetType;
+
+    RowSet rowSet;
+    RowMetaInterface rowMeta;
+    Object[] row;
+
+    @Setup
+    public void setUp() {
+      rowSet = createRowSet( rowSetType );
+      rowMeta = BenchmarkRows.createRowMeta( BenchmarkRows.MIXED, 10 );
+      row = BenchmarkRows.createRow( rowMeta, BenchmarkRows.createRandom() );
+    }
+  }
+
+  @State( Scope.Thread )
+  public static class SingleThreadedState {
+    @Param( { BLOCKING, BLOCKING_BATCHING, QUEUE } )
+    public String rowSetType;
+
+    RowSet rowSet;
+    RowMetaInterface rowMeta;
+    Object[] row;
+
+    @Setup
+    public void setUp() {
+      rowSet = createRowSet( rowSetType );
+      rowMeta = BenchmarkRows.createRowMeta( BenchmarkRows.MIXED, 10 );
+      row = BenchmarkRows.createRow( rowMeta, BenchmarkRows.createRandom() );
+    }
+  }
+
+  @Benchmark
+  @Group( "handoff" )
+  @GroupThreads( 1 )
+  public boolean putRow( HandoffState state ) {
+    // Times out when the consumer falls behind, like BaseStep we then simply try again
+    return state.rowSet.putRowWait( state.rowMeta, state.row, 10, TimeUnit.MILLISECONDS );
+  }
+
+  @Benchmark
+  @Group( "handoff" )
+  @GroupThreads( 1 )
+  public Object[] getRow( HandoffState state ) {
+    return state.rowSet.getRowWait( 10, TimeUnit.MILLISECONDS );
+  }
+
+  /**
+   * Fills the row set completely and reads it back. The batching row set only hands over full buffers so anything less
+   * wouldn't work for that one.
+   */
+  @Benchmark
+  @OperationsPerInvocation( ROW_SET_SIZE )
+  public void putAndGetRows( SingleThreadedState state, Blackhole blackhole ) {
+    RowSet rowSet = state.rowSet;
+    for ( int i = 0; i < ROW_SET_SIZE; i++ ) {
+      rowSet.putRow( state.rowMeta, state.row );
+    }
+    for ( int i = 0; i < ROW_SET_SIZE; i++ ) {
+      blackhole.consume( rowSet.getRow() );
+    }
+  }
+}
@@ -0,0 +1,152 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2015 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pentaho.di.core.KettleEnvironment;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.logging.KettleLogStore;
+import org.pentaho.di.core.logging.LogLevel;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.trans.Trans;
+import org.pentaho.di.trans.TransHopMeta;
+import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.step.StepMeta;
+import org.pentaho.di.trans.steps.calculator.CalculatorMeta;
+import org.pentaho.di.trans.steps.calculator.CalculatorMetaFunction;
+import org.pentaho.di.trans.steps.dummytrans.DummyTransMeta;
+import org.pentaho.di.trans.steps.rowgenerator.RowGeneratorMeta;
+
+/**
+ * Runs small transformations end to end: Generate Rows, optionally followed by a Calculator, into a Dummy step. This
+ * covers the step threads, the row sets between them and the start and stop of a transformation. Scores are rows per
+ * millisecond.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3 )
+@Measurement( iterations = 5 )
+@Fork( 1 )
+public class TransformationBenchmark {
+
+  public static final int NR_ROWS = 1000000;
+
+  /** Generate Rows into Dummy */
+  public static final String GENERATE_DUMMY = "generate-dummy";
+
+  /** Generate Rows into Calculator into Dummy */
+  public static final String GENERATE_CALCULATOR_DUMMY = "generate-calculator-dummy";
+
+  @Param( { GENERATE_DUMMY, GENERATE_CALCULATOR_DUMMY } )
+  public String transformation;
+
+  private TransMeta transMeta;
+
+  @Setup
+  public void setUp() throws KettleException {
+    KettleEnvironment.init( false );
+
+    transMeta = new TransMeta();
+    transMeta.setName( transformation );
+
+    StepMeta generate = new StepMeta( "Generate Rows", createRowGeneratorMeta() );
+    transMeta.addStep( generate );
+    StepMeta previous = generate;
+
+    if ( GENERATE_CALCULATOR_DUMMY.equals( transformation ) ) {
+      StepMeta calculator = new StepMeta( "Calculator", createCalculatorMeta() );
+      transMeta.addStep( calculator );
+      transMeta.addTransHop( new TransHopMeta( previous, calculator ) );
+      previous = calculator;
+    }
+
+    StepMeta dummy = new StepMeta( "Dummy", new DummyTransMeta() );
+    transMeta.addStep( dummy );
+    transMeta.addTransHop( new TransHopMeta( previous, dummy ) );
+  }
+
+  private static RowGeneratorMeta createRowGeneratorMeta() {
+    RowGeneratorMeta meta = new RowGeneratorMeta();
+    meta.setDefault();
+    meta.allocate( 4 );
+    addField( meta, 0, "id", "Integer", "1234567", 9, 0 );
+    addField( meta, 1, "name", "String", "Pentaho Data Integration", 30, -1 );
+    addField( meta, 2, "amount", "Number", "12345.67", 9, 2 );
+    addField( meta, 3, "quantity", "Integer", "3", 4, 0 );
+    meta.setRowLimit( Integer.toString( NR_ROWS ) );
+    return meta;
+  }
+
+  private static void addField( RowGeneratorMeta meta, int index, String name, String type, String value,
+    int length, int precision ) {
+    meta.getFieldName()[index] = name;
+    meta.getFieldType()[index] = type;
+    meta.getValue()[index] = value;
+    meta.getFieldLength()[index] = length;
+    meta.getFieldPrecision()[index] = precision;
+    meta.getDecimal()[index] = ".";
+    meta.getGroup()[index] = ",";
+    meta.getSetEmptyString()[index] = false;
+  }
+
+  private static CalculatorMeta createCalculatorMeta() {
+    CalculatorMeta meta = new CalculatorMeta();
+    meta.setCalculation( new CalculatorMetaFunction[] {
+      new CalculatorMetaFunction( "total", CalculatorMetaFunction.CALC_MULTIPLY, "amount", "quantity", null,
+        ValueMetaInterface.TYPE_NUMBER, 12, 2, false, null, null, null, null ),
+      new CalculatorMetaFunction( "next_id", CalculatorMetaFunction.CALC_ADD, "id", "quantity", null,
+        ValueMetaInterface.TYPE_INTEGER, 9, 0, false, null, null, null, null ), } );
+    return meta;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation( NR_ROWS )
+  public long runTransformation() throws KettleException {
+    Trans trans = new Trans( transMeta );
+    trans.setLogLevel( LogLevel.MINIMAL );
+    trans.execute( null );
+    trans.waitUntilFinished();
+    if ( trans.getErrors() > 0 ) {
+      throw new KettleException( "The transformation " + transformation + " failed" );
+    }
+    long rows = trans.findRunThread( "Dummy" ).getLinesWritten();
+
+    // Don't let the log lines of all the runs pile up
+    KettleLogStore.discardLines( trans.getLogChannelId(), false );
+    return rows;
+  }
+}
@@ -0,0 +1,163 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2015 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.benchmark;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaDate;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaNumber;
+import org.pentaho.di.core.row.value.ValueMetaString;
+
+/**
+ * Measures the data conversions and comparisons of ValueMetaBase for the common data types. The binary string
+ * variants work on data that was read with lazy conversion.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5 )
+@Measurement( iterations = 10 )
+@Fork( 1 )
+public class ValueMetaBenchmark {
+
+  private ValueMetaInterface stringMeta;
+  private ValueMetaInterface integerMeta;
+  private ValueMetaInterface numberMeta;
+  private ValueMetaInterface dateMeta;
+  private ValueMetaInterface binaryStringMeta;
+
+  private String integerString;
+  private String numberString;
+  private String dateString;
+
+  private String string1, string2;
+  private Long integer1, integer2;
+  private Double number1, number2;
+  private Date date1, date2;
+  private byte[] binaryString1, binaryString2;
+
+  @Setup
+  public void setUp() throws KettleException {
+    stringMeta = new ValueMetaString( "string" );
+    integerMeta = new ValueMetaInteger( "integer" );
+    integerMeta.setConversionMask( "0" );
+    numberMeta = new ValueMetaNumber( "number" );
+    numberMeta.setConversionMask( "0.00" );
+    numberMeta.setDecimalSymbol( "." );
+    dateMeta = new ValueMetaDate( "date" );
+    dateMeta.setConversionMask( "yyyy/MM/dd HH:mm:ss" );
+
+    binaryStringMeta = new ValueMetaString( "binary" );
+    binaryStringMeta.setStorageType( ValueMetaInterface.STORAGE_TYPE_BINARY_STRING );
+    binaryStringMeta.setStorageMetadata( new ValueMetaString( "binary" ) );
+
+    integerString = "1234567";
+    numberString = "12345.67";
+    dateString = "2015/06/30 12:34:56";
+
+    string1 = "Pentaho Data Integration 1";
+    string2 = "Pentaho Data Integration 2";
+    integer1 = Long.valueOf( 1234567L );
+    integer2 = Long.valueOf( 1234568L );
+    number1 = Double.valueOf( 12345.67 );
+    number2 = Double.valueOf( 12345.68 );
+    date1 = (Date) dateMeta.convertData( stringMeta, dateString );
+    date2 = new Date( date1.getTime() + 1000L );
+    binaryString1 = string1.getBytes();
+    binaryString2 = string2.getBytes();
+  }
+
+  @Benchmark
+  public Object convertStringToInteger() throws KettleException {
+    return integerMeta.convertData( stringMeta, integerString );
+  }
+
+  @Benchmark
+  public Object convertIntegerToString() throws KettleException {
+    return stringMeta.convertData( integerMeta, integer1 );
+  }
+
+  @Benchmark
+  public Object convertStringToNumber() throws KettleException {
+    return numberMeta.convertData( stringMeta, numberString );
+  }
+
+  @Benchmark
+  public Object convertNumberToString() throws KettleException {
+    return stringMeta.convertData( numberMeta, number1 );
+  }
+
+  @Benchmark
+  public Object convertStringToDate() throws KettleException {
+    return dateMeta.convertData( stringMeta, dateString );
+  }
+
+  @Benchmark
+  public Object convertDateToString() throws KettleException {
+    return stringMeta.convertData( dateMeta, date1 );
+  }
+
+  @Benchmark
+  public Object convertBinaryStringToString() throws KettleException {
+    return stringMeta.convertData( binaryStringMeta, binaryString1 );
+  }
+
+  @Benchmark
+  public int compareString() throws KettleException {
+    return stringMeta.compare( string1, string2 );
+  }
+
+  @Benchmark
+  public int compareInteger() throws KettleException {
+    return integerMeta.compare( integer1, integer2 );
+  }
+
+  @Benchmark
+  public int compareNumber() throws KettleException {
+    return numberMeta.compare( number1, number2 );
+  }
+
+  @Benchmark
+  public int compareDate() throws KettleException {
+    return dateMeta.compare( date1, date2 );
+  }
+
+  @Benchmark
+  public int compareBinaryString() throws KettleException {
+    return binaryStringMeta.compare( binaryString1, binaryString2 );
+  }
+}
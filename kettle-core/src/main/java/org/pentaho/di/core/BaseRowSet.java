@@ -26,6 +26,7 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import org.pentaho.di.core.row.RowBatch;
 import org.pentaho.di.core.row.RowMetaInterface;
 
 /**
@@ -94,6 +95,40 @@ abstract class BaseRowSet implements Comparable<RowSet>, RowSet {
   @Override
   public abstract boolean putRowWait( RowMetaInterface rowMeta, Object[] rowData, long time, TimeUnit tu );
 
+  /**
+   * Puts the rows of the batch one by one. Row sets that can do better override this method.
+   *
+   * @see org.pentaho.di.core.RowSet#putRowBatch(org.pentaho.di.core.row.RowMetaInterface,
+   * org.pentaho.di.core.row.RowBatch, int)
+   */
+  @Override
+  public int putRowBatch( RowMetaInterface rowMeta, RowBatch batch, int startIndex ) {
+    int index = startIndex;
+    while ( index < batch.size() && putRow( rowMeta, batch.getRow( index ) ) ) {
+      index++;
+    }
+    return index - startIndex;
+  }
+
+  /**
+   * Gets the available rows one by one. Row sets that can do better override this method.
+   *
+   * @see org.pentaho.di.core.RowSet#getRowBatch(org.pentaho.di.core.row.RowBatch)
+   */
+  @Override
+  public int getRowBatch( RowBatch batch ) {
+    int nrRows = 0;
+    while ( !batch.isFull() ) {
+      Object[] row = getRowImmediate();
+      if ( row == null ) {
+        break;
+      }
+      batch.addRow( row );
+      nrRows++;
+    }
+    return nrRows;
+  }
+
   // default getRow with wait time = 100ms
   //
   /*
@@ -924,6 +924,47 @@ public class Const {
    */
   public static final String KETTLE_BATCHING_ROWSET = "KETTLE_BATCHING_ROWSET";
 
+  /**
+   * Set this variable to Y to use the lock-free ring buffer row set between single step copies. (default = N)
+   */
+  public static final String KETTLE_RING_BUFFER_ROWSET = "KETTLE_RING_BUFFER_ROWSET";
+
+  /**
+   * The name of the variable that contains the number of rows in a row batch for steps that can process batches of
+   * rows. Set it to 0 to process rows one at a time. (default = 0)
+   */
+  public static final String KETTLE_ROW_BATCH_SIZE = "KETTLE_ROW_BATCH_SIZE";
+
+  /**
+   * Set this variable to Y to compile the conditions of Filter Rows and the calculations of Calculator into Java code
+   * for the data types of the input rows. (default = N)
+   */
+  public static final String KETTLE_COMPILED_EXPRESSIONS = "KETTLE_COMPILED_EXPRESSIONS";
+
+  /**
+   * Set this variable to Y to run the step copies of a transformation as tasks on a shared pool of worker threads
+   * instead of giving every step copy a thread of its own. (default = N)
+   */
+  public static final String KETTLE_POOLED_STEP_EXECUTION = "KETTLE_POOLED_STEP_EXECUTION";
+
+  /**
+   * The number of worker threads that run the step copies of transformations with pooled step execution. It's read
+   * once per JVM. (default = the number of processors)
+   */
+  public static final String KETTLE_STEP_WORKER_THREADS = "KETTLE_STEP_WORKER_THREADS";
+
+  /**
+   * Set this variable to Y to run linear chains of row-at-a-time steps on a single thread in a normal transformation.
+   * The other steps keep a thread of their own. (default = N)
+   */
+  public static final String KETTLE_STEP_FUSION = "KETTLE_STEP_FUSION";
+
+  /**
+   * Set this variable to Y to send rows between clustered steps and from Socket Writer to Socket Reader in
+   * length-prefixed, compressed frames of many rows with flow control. Both sides need the same setting. (default = N)
+   */
+  public static final String KETTLE_FRAMED_SOCKET_STREAMS = "KETTLE_FRAMED_SOCKET_STREAMS";
+
   /**
    * Set this variable to Y to disable standard Kettle logging to the console. (stdout)
    */
@@ -0,0 +1,318 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2015 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.core;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+import org.pentaho.di.core.row.RowBatch;
+import org.pentaho.di.core.row.RowMetaInterface;
+
+/**
+ * A lock-free row set for the common case of exactly one producing step copy and one consuming step copy. Rows are
+ * handed over through a fixed size ring buffer. The read and write positions live on their own (padded) cache lines
+ * so that the producer and the consumer thread don't invalidate each other's caches on every row.
+ *
+ * When the buffer is full (or empty) the waiting thread first spins for a little while, then yields and finally parks
+ * for short periods of time until the timeout expires. There is no lock and no unpark call on the hot path.
+ *
+ * IMPORTANT: only use this row set when a single thread writes to it and a single thread reads from it.
+ *
+ * @since 5.4
+ *
+ */
+public class RingBufferRowSet extends BaseRowSet implements Comparable<RowSet>, RowSet {
+
+  /**
+   * The number of busy spins before we start to yield
+   */
+  private static final int SPIN_TRIES = 128;
+
+  /**
+   * The number of yields before we start to park the thread
+   */
+  private static final int YIELD_TRIES = 64;
+
+  /**
+   * The maximum time to park in one go while waiting for the other side
+   */
+  private static final long MAX_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos( 500 );
+
+  private final Object[][] buffer;
+  private final int mask;
+
+  /**
+   * The sequence of the next row to write, only modified by the producer.
+   */
+  private final Sequence putSequence = new Sequence();
+
+  /**
+   * The sequence of the next row to read, only modified by the consumer.
+   */
+  private final Sequence getSequence = new Sequence();
+
+  /**
+   * Producer side copy of the get sequence to avoid reading the consumer cache line for every row.
+   */
+  private long cachedGetSequence;
+
+  /**
+   * Consumer side copy of the put sequence to avoid reading the producer cache line for every row.
+   */
+  private long cachedPutSequence;
+
+  private int timeoutPut;
+  private int timeoutGet;
+
+  /**
+   * Create a new single producer / single consumer row set. The capacity is rounded up to the next power of 2.
+   *
+   * @param maxSize
+   *          the minimum capacity of the row set
+   */
+  public RingBufferRowSet( int maxSize ) {
+    super();
+
+    int capacity = 1;
+    while ( capacity < Math.max( maxSize, 2 ) ) {
+      capacity <<= 1;
+    }
+    buffer = new Object[capacity][];
+    mask = capacity - 1;
+
+    timeoutGet = Const.toInt( System.getProperty( Const.KETTLE_ROWSET_GET_TIMEOUT ), Const.TIMEOUT_GET_MILLIS );
+    timeoutPut = Const.toInt( System.getProperty( Const.KETTLE_ROWSET_PUT_TIMEOUT ), Const.TIMEOUT_PUT_MILLIS );
+  }
+
+  @Override
+  public boolean putRow( RowMetaInterface rowMeta, Object[] rowData ) {
+    return putRowWait( rowMeta, rowData, timeoutPut, TimeUnit.MILLISECONDS );
+  }
+
+  @Override
+  public boolean putRowWait( RowMetaInterface rowMeta, Object[] rowData, long time, TimeUnit tu ) {
+    if ( rowData == null ) {
+      return false;
+    }
+    this.rowMeta = rowMeta;
+
+    final long put = putSequence.value;
+    final long wrapPoint = put - buffer.length;
+    if ( cachedGetSequence <= wrapPoint ) {
+      cachedGetSequence = getSequence.value;
+      if ( cachedGetSequence <= wrapPoint ) {
+        long deadline = System.nanoTime() + tu.toNanos( time );
+        int tries = 0;
+        while ( ( cachedGetSequence = getSequence.value ) <= wrapPoint ) {
+          if ( !idle( tries++, deadline ) ) {
+            return false;
+          }
+        }
+      }
+    }
+
+    buffer[(int) ( put & mask )] = rowData;
+    putSequence.lazySet( put + 1 );
+    return true;
+  }
+
+  /**
+   * Publishes as many rows of the batch as there is room for in one go.
+   */
+  @Override
+  public int putRowBatch( RowMetaInterface rowMeta, RowBatch batch, int startIndex ) {
+    int remaining = batch.size() - startIndex;
+    if ( remaining <= 0 ) {
+      return 0;
+    }
+
+    // Wait for room for at least the first row
+    //
+    if ( !putRow( rowMeta, batch.getRow( startIndex ) ) ) {
+      return 0;
+    }
+    remaining--;
+
+    final long put = putSequence.value;
+    long available = cachedGetSequence + buffer.length - put;
+    if ( available < remaining ) {
+      cachedGetSequence = getSequence.value;
+      available = cachedGetSequence + buffer.length - put;
+    }
+    int nrRows = (int) Math.min( available, remaining );
+    for ( int i = 0; i < nrRows; i++ ) {
+      buffer[(int) ( ( put + i ) & mask )] = batch.getRow( startIndex + 1 + i );
+    }
+    if ( nrRows > 0 ) {
+      putSequence.lazySet( put + nrRows );
+    }
+    return nrRows + 1;
+  }
+
+  /**
+   * Takes all available rows (up to the capacity of the batch) in one go.
+   */
+  @Override
+  public int getRowBatch( RowBatch batch ) {
+    final long get = getSequence.value;
+    cachedPutSequence = putSequence.value;
+    int nrRows = (int) Math.min( cachedPutSequence - get, batch.getCapacity() - batch.size() );
+    for ( int i = 0; i < nrRows; i++ ) {
+      int index = (int) ( ( get + i ) & mask );
+      batch.addRow( buffer[index] );
+      buffer[index] = null; // prevent any hold-up to GC
+    }
+    if ( nrRows > 0 ) {
+      getSequence.lazySet( get + nrRows );
+    }
+    return nrRows;
+  }
+
+  @Override
+  public Object[] getRow() {
+    return getRowWait( timeoutGet, TimeUnit.MILLISECONDS );
+  }
+
+  @Override
+  public Object[] getRowImmediate() {
+    final long get = getSequence.value;
+    if ( cachedPutSequence <= get ) {
+      cachedPutSequence = putSequence.value;
+      if ( cachedPutSequence <= get ) {
+        return null;
+      }
+    }
+    return take( get );
+  }
+
+  @Override
+  public Object[] getRowWait( long timeout, TimeUnit tu ) {
+    final long get = getSequence.value;
+    if ( cachedPutSequence <= get ) {
+      cachedPutSequence = putSequence.value;
+      if ( cachedPutSequence <= get ) {
+        long deadline = System.nanoTime() + tu.toNanos( timeout );
+        int tries = 0;
+        while ( ( cachedPutSequence = putSequence.value ) <= get ) {
+          if ( !idle( tries++, deadline ) ) {
+            return null;
+          }
+        }
+      }
+    }
+    return take( get );
+  }
+
+  private Object[] take( long get ) {
+    int index = (int) ( get & mask );
+    Object[] row = buffer[index];
+    buffer[index] = null; // prevent any hold-up to GC
+    getSequence.lazySet( get + 1 );
+    return row;
+  }
+
+  /**
+   * Wait a little bit for the other side of the row set: spin, then yield, then park.
+   *
+   * @param tries
+   *          the number of times we waited already
+   * @param deadline
+   *          the System.nanoTime() after which we give up
+   * @return false if the deadline passed or the thread was interrupted
+   */
+  private static boolean idle( int tries, long deadline ) {
+    if ( tries < SPIN_TRIES ) {
+      return true;
+    }
+    long remaining = deadline - System.nanoTime();
+    if ( remaining <= 0 || Thread.currentThread().isInterrupted() ) {
+      return false;
+    }
+    if ( tries < SPIN_TRIES + YIELD_TRIES ) {
+      Thread.yield();
+    } else {
+      LockSupport.parkNanos( Math.min( remaining, MAX_PARK_NANOS ) );
+    }
+    return true;
+  }
+
+  @Override
+  public int size() {
+    // Read the consumer side first so that we never report a negative size
+    //
+    long get = getSequence.value;
+    long put = putSequence.value;
+    return (int) ( put - get );
+  }
+
+  @Override
+  public void clear() {
+    long put = putSequence.value;
+    for ( int i = 0; i < buffer.length; i++ ) {
+      buffer[i] = null;
+    }
+    getSequence.set( put );
+    cachedGetSequence = put;
+    cachedPutSequence = put;
+    done.set( false );
+  }
+
+  /**
+   * The left hand side padding of a sequence.
+   */
+  static class LhsPadding {
+    protected long p1, p2, p3, p4, p5, p6, p7;
+  }
+
+  /**
+   * The actual value of a sequence.
+   */
+  static class Value extends LhsPadding {
+    volatile long value;
+  }
+
+  /**
+   * The right hand side padding of a sequence. Together with the left hand side padding this keeps the value on its own
+   * cache line.
+   */
+  static class RhsPadding extends Value {
+    protected long p9, p10, p11, p12, p13, p14, p15;
+  }
+
+  /**
+   * A padded sequence that supports ordered (lazy) writes.
+   */
+  static final class Sequence extends RhsPadding {
+    private static final AtomicLongFieldUpdater<Value> UPDATER = AtomicLongFieldUpdater.newUpdater(
+      Value.class, "value" );
+
+    void lazySet( long newValue ) {
+      UPDATER.lazySet( this, newValue );
+    }
+
+    void set( long newValue ) {
+      value = newValue;
+    }
+  }
+}
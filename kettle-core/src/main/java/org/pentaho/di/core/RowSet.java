@@ -24,6 +24,7 @@ package org.pentaho.di.core;
 
 import java.util.concurrent.TimeUnit;
 
+import org.pentaho.di.core.row.RowBatch;
 import org.pentaho.di.core.row.RowMetaInterface;
 
 public interface RowSet {
@@ -56,6 +57,30 @@ public interface RowSet {
    */
   public abstract boolean putRowWait( RowMetaInterface rowMeta, Object[] rowData, long time, TimeUnit tu );
 
+  /**
+   * Offer the rows of a batch to this rowset, starting at the given index in the batch. If the buffer is full, wait
+   * (block) for a small period of time.
+   *
+   * @param rowMeta
+   *          The description of the row data
+   * @param batch
+   *          the batch of rows
+   * @param startIndex
+   *          the index of the first row in the batch to add
+   * @return the number of rows that were added to the rowset, 0 if this buffer was full.
+   */
+  public abstract int putRowBatch( RowMetaInterface rowMeta, RowBatch batch, int startIndex );
+
+  /**
+   * Move the rows that are immediately available in the input buffer to the given batch until the batch is full. This
+   * method doesn't wait for new rows.
+   *
+   * @param batch
+   *          the batch to add the rows to
+   * @return the number of rows added to the batch
+   */
+  public abstract int getRowBatch( RowBatch batch );
+
   /**
    * Get a row from the input buffer, it blocks for a short period until a new row becomes available. Otherwise, it
    * returns null.
@@ -0,0 +1,202 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2015 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.core.cache;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.pentaho.di.core.exception.KettleException;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+/**
+ * A named, thread safe lookup cache that can be shared by several step copies and transformations running in the same
+ * JVM. Caches are obtained from and handed back to the {@link LookupCacheManager}, which counts the references and
+ * drops a cache once the last user released it.<br>
+ * <br>
+ * When a maximum size is set the least recently used entries are evicted first. When a time to live is set, entries
+ * expire that long after they were stored.
+ *
+ * @param <K>
+ *          the key type, it needs proper equals() and hashCode() implementations
+ * @param <V>
+ *          the value type
+ * @since 5.4
+ */
+public class LookupCache<K, V> {
+
+  /**
+   * Fills a cache with data, see {@link LookupCache#loadOnce(Loader)}
+   */
+  public interface Loader {
+    void load() throws KettleException;
+  }
+
+  private final String name;
+  private final long maximumSize;
+  private final long timeToLive;
+  private final Cache<K, V> cache;
+
+  private volatile int referenceCount; // Only modified by the manager
+  private boolean loaded;
+
+  /**
+   * @param name
+   *          the name of the cache
+   * @param maximumSize
+   *          the maximum number of entries or 0 for no limit
+   * @param timeToLive
+   *          the number of milliseconds an entry stays valid or 0 to keep it until it gets evicted
+   */
+  LookupCache( String name, long maximumSize, long timeToLive ) {
+    this.name = name;
+    this.maximumSize = maximumSize;
+    this.timeToLive = timeToLive;
+
+    CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder().recordStats();
+    if ( maximumSize > 0 ) {
+      builder.maximumSize( maximumSize );
+    }
+    if ( timeToLive > 0 ) {
+      builder.expireAfterWrite( timeToLive, TimeUnit.MILLISECONDS );
+    }
+    cache = builder.build();
+  }
+
+  /**
+   * @return the value for the key or null if it's not (or no longer) in the cache
+   */
+  public V get( K key ) {
+    return cache.getIfPresent( key );
+  }
+
+  /**
+   * Gets a value without counting a hit or a miss, handy while scanning the keys.
+   */
+  public V peek( K key ) {
+    return cache.asMap().get( key );
+  }
+
+  public void put( K key, V value ) {
+    cache.put( key, value );
+  }
+
+  public void remove( K key ) {
+    cache.invalidate( key );
+  }
+
+  /**
+   * @return a live view on the keys in the cache, it can be iterated while other threads modify the cache
+   */
+  public Set<K> keySet() {
+    return cache.asMap().keySet();
+  }
+
+  public long size() {
+    return cache.size();
+  }
+
+  /**
+   * Runs the loader unless the cache was loaded before. Other threads calling this method wait until the first one
+   * finished loading, so a table is only read once by all the users of the cache. When the loader fails, the next
+   * caller tries again.
+   *
+   * @param loader
+   *          the loader to fill the cache with
+   * @return true if the loader was executed
+   * @throws KettleException
+   *           in case the loader fails
+   */
+  public synchronized boolean loadOnce( Loader loader ) throws KettleException {
+    if ( loaded ) {
+      return false;
+    }
+    loader.load();
+    loaded = true;
+    return true;
+  }
+
+  public synchronized boolean isLoaded() {
+    return loaded;
+  }
+
+  /**
+   * Removes all entries, a cache that was loaded needs to be loaded again.
+   */
+  public synchronized void clear() {
+    cache.invalidateAll();
+    loaded = false;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public long getMaximumSize() {
+    return maximumSize;
+  }
+
+  public long getTimeToLive() {
+    return timeToLive;
+  }
+
+  public long getHitCount() {
+    return cache.stats().hitCount();
+  }
+
+  public long getMissCount() {
+    return cache.stats().missCount();
+  }
+
+  public long getEvictionCount() {
+    return cache.stats().evictionCount();
+  }
+
+  /**
+   * @return the ratio of lookups that found a value, 1.0 when there were no lookups
+   */
+  public double getHitRate() {
+    return cache.stats().hitRate();
+  }
+
+  /**
+   * @return the number of users that acquired this cache and didn't release it yet
+   */
+  public int getReferenceCount() {
+    return referenceCount;
+  }
+
+  void setReferenceCount( int referenceCount ) {
+    this.referenceCount = referenceCount;
+  }
+
+  @Override
+  public String toString() {
+    CacheStats stats = cache.stats();
+    return name
+      + " [entries=" + cache.size() + ", hits=" + stats.hitCount() + ", misses=" + stats.missCount()
+      + ", evictions=" + stats.evictionCount() + "]";
+  }
+}
@@ -0,0 +1,108 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2015 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.core.cache;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps track of the named {@link LookupCache}s in this JVM. Step copies and transformations that acquire a cache with
+ * the same name share its content. The name should therefore identify everything that determines the cached data, for
+ * example the connection, the table, the key fields and conditions and the returned fields.<br>
+ * <br>
+ * Every acquire() needs to be followed by a release(). When the last user releases a cache, it's removed and cleared.
+ *
+ * @since 5.4
+ */
+public class LookupCacheManager {
+
+  private static final LookupCacheManager instance = new LookupCacheManager();
+
+  private final Map<String, LookupCache<?, ?>> caches;
+
+  private LookupCacheManager() {
+    caches = new HashMap<String, LookupCache<?, ?>>();
+  }
+
+  public static LookupCacheManager getInstance() {
+    return instance;
+  }
+
+  /**
+   * Gets the cache with the given name, creating it if it doesn't exist yet. The size limit and time to live are only
+   * used to create a new cache, a cache that exists already keeps its settings.
+   *
+   * @param name
+   *          the name of the cache
+   * @param maximumSize
+   *          the maximum number of entries or 0 for no limit
+   * @param timeToLive
+   *          the number of milliseconds an entry stays valid or 0 for no limit
+   * @return the shared cache
+   */
+  @SuppressWarnings( "unchecked" )
+  public synchronized <K, V> LookupCache<K, V> acquire( String name, long maximumSize, long timeToLive ) {
+    LookupCache<K, V> cache = (LookupCache<K, V>) caches.get( name );
+    if ( cache == null ) {
+      cache = new LookupCache<K, V>( name, maximumSize, timeToLive );
+      caches.put( name, cache );
+    }
+    cache.setReferenceCount( cache.getReferenceCount() + 1 );
+    return cache;
+  }
+
+  /**
+   * Hands back a cache obtained with acquire(). The cache is cleared when nobody uses it anymore.
+   *
+   * @param cache
+   *          the cache to release
+   */
+  public synchronized void release( LookupCache<?, ?> cache ) {
+    if ( cache.getReferenceCount() <= 0 ) {
+      return;
+    }
+    cache.setReferenceCount( cache.getReferenceCount() - 1 );
+    if ( cache.getReferenceCount() == 0 ) {
+      if ( caches.get( cache.getName() ) == cache ) {
+        caches.remove( cache.getName() );
+      }
+      cache.clear();
+    }
+  }
+
+  /**
+   * @return the cache with the given name or null if nobody acquired it
+   */
+  public synchronized LookupCache<?, ?> getCache( String name ) {
+    return caches.get( name );
+  }
+
+  /**
+   * @return the caches in use, handy to report their statistics
+   */
+  public synchronized List<LookupCache<?, ?>> getCaches() {
+    return new ArrayList<LookupCache<?, ?>>( caches.values() );
+  }
+}
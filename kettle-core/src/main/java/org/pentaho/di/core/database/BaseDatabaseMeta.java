@@ -1717,6 +1717,33 @@ public abstract class BaseDatabaseMeta implements Cloneable, DatabaseInterface {
     return true;
   }
 
+  /**
+   * @return true if the database accepts several rows in the VALUES clause of an insert statement: INSERT INTO t (a, b)
+   *         VALUES (?, ?), (?, ?), ...
+   */
+  @Override
+  public boolean supportsMultiRowInsert() {
+    return false;
+  }
+
+  /**
+   * @return The maximum number of parameters in a single multi-row insert statement, <=0 means: no multi-row inserts
+   */
+  @Override
+  public int getMaxMultiRowInsertParameters() {
+    return 0;
+  }
+
+  /**
+   * @return The maximum number of parameters in a statement that looks up a list of keys at once: WHERE k IN (?, ?,
+   *         ...) or WHERE (k1 = ? AND k2 = ?) OR ..., <=0 means: no known limit. Defaults to 1000, the size of the
+   *         longest IN list most databases accept.
+   */
+  @Override
+  public int getMaxLookupListParameters() {
+    return 1000;
+  }
+
   /**
    * Get the SQL to insert a new empty unknown record in a dimension.
    *
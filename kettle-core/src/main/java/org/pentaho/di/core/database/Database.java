@@ -162,6 +162,16 @@ public class Database implements VariableSpace, LoggingObjectInterface {
 
   private int nrExecutedCommits;
 
+  /**
+   * The insert statements generated by getInsertStatement() with their number of fields
+   */
+  private Map<String, Integer> insertStatements = new HashMap<String, Integer>();
+
+  /**
+   * The prepared insert statements that send several rows at once, see {@link MultiRowInsert}
+   */
+  private Map<PreparedStatement, MultiRowInsert> multiRowInserts = new HashMap<PreparedStatement, MultiRowInsert>();
+
   private static List<ValueMetaInterface> valueMetaPluginClasses;
 
   static {
@@ -621,6 +631,12 @@ public class Database implements VariableSpace, LoggingObjectInterface {
         }
       }
 
+      for ( MultiRowInsert multiRowInsert : multiRowInserts.values() ) {
+        multiRowInsert.close();
+      }
+      multiRowInserts.clear();
+      insertStatements.clear();
+
       closeConnectionOnly();
 
       try {
@@ -739,6 +755,12 @@ public class Database implements VariableSpace, LoggingObjectInterface {
   }
 
   public void commit( boolean force ) throws KettleDatabaseException {
+    // Rows buffered for multi-row inserts are part of this transaction
+    //
+    for ( MultiRowInsert multiRowInsert : multiRowInserts.values() ) {
+      multiRowInsert.commit();
+    }
+
     try {
       // Don't do the commit, wait until the end of the transformation.
       // When the last database copy (opened counter) is about to be closed, we
@@ -826,6 +848,10 @@ public class Database implements VariableSpace, LoggingObjectInterface {
   }
 
   public void rollback( boolean force ) throws KettleDatabaseException {
+    for ( MultiRowInsert multiRowInsert : multiRowInserts.values() ) {
+      multiRowInsert.clear();
+    }
+
     try {
       if ( !Const.isEmpty( connectionGroup ) && !force ) {
         return; // Will be handled by Trans --> endProcessing()
@@ -908,13 +934,38 @@ public class Database implements VariableSpace, LoggingObjectInterface {
       if ( returnKeys && supportsAutoGeneratedKeys ) {
         return connection.prepareStatement( databaseMeta.stripCR( sql ), Statement.RETURN_GENERATED_KEYS );
       } else {
-        return connection.prepareStatement( databaseMeta.stripCR( sql ) );
+        PreparedStatement ps = connection.prepareStatement( databaseMeta.stripCR( sql ) );
+        if ( !returnKeys ) {
+          registerMultiRowInsert( sql, ps );
+        }
+        return ps;
       }
     } catch ( SQLException ex ) {
       throw new KettleDatabaseException( "Couldn't prepare statement:" + Const.CR + sql, ex );
     }
   }
 
+  /**
+   * Batched rows of an insert statement generated by getInsertStatement() are sent to the database several rows at a
+   * time if the database supports it.
+   */
+  private void registerMultiRowInsert( String sql, PreparedStatement ps ) {
+    Integer nrFields = insertStatements.get( sql );
+    if ( nrFields != null ) {
+      int maxRows = MultiRowInsert.getMaxRows( databaseMeta, nrFields );
+      if ( maxRows > 1 ) {
+        multiRowInserts.put( ps, new MultiRowInsert( this, sql, nrFields, maxRows ) );
+      }
+    }
+  }
+
+  private void closeMultiRowInsert( PreparedStatement ps ) throws SQLException {
+    MultiRowInsert multiRowInsert = multiRowInserts.remove( ps );
+    if ( multiRowInsert != null ) {
+      multiRowInsert.close();
+    }
+  }
+
   public void closeLookup() throws KettleDatabaseException {
     closePreparedStatement( pstmt );
     pstmt = null;
@@ -923,6 +974,7 @@ public class Database implements VariableSpace, LoggingObjectInterface {
   public void closePreparedStatement( PreparedStatement ps ) throws KettleDatabaseException {
     if ( ps != null ) {
       try {
+        closeMultiRowInsert( ps );
         ps.close();
       } catch ( SQLException e ) {
         throw new KettleDatabaseException( "Error closing prepared statement", e );
@@ -933,6 +985,7 @@ public class Database implements VariableSpace, LoggingObjectInterface {
   public void closeInsert() throws KettleDatabaseException {
     if ( prepStatementInsert != null ) {
       try {
+        closeMultiRowInsert( prepStatementInsert );
         prepStatementInsert.close();
         prepStatementInsert = null;
       } catch ( SQLException e ) {
@@ -1023,6 +1076,13 @@ public class Database implements VariableSpace, LoggingObjectInterface {
         throw new KettleDatabaseException( "offending row : " + rowMeta, e );
       }
     }
+
+    if ( !multiRowInserts.isEmpty() ) {
+      MultiRowInsert multiRowInsert = multiRowInserts.get( ps );
+      if ( multiRowInsert != null ) {
+        multiRowInsert.setRow( rowMeta, data );
+      }
+    }
   }
 
   /**
@@ -1159,7 +1219,11 @@ public class Database implements VariableSpace, LoggingObjectInterface {
     }
     ins.append( ')' );
 
-    return ins.toString();
+    String sql = ins.toString();
+    if ( databaseMeta.supportsMultiRowInsert() ) {
+      insertStatements.put( sql, fields.size() );
+    }
+    return sql;
   }
 
   public void insertRow() throws KettleDatabaseException {
@@ -1227,7 +1291,10 @@ public class Database implements VariableSpace, LoggingObjectInterface {
       if ( !isAutoCommit() ) {
         if ( useBatchInsert ) {
           debug = "insertRow add batch";
-          ps.addBatch(); // Add the batch, but don't forget to run the batch
+          MultiRowInsert multiRowInsert = multiRowInserts.get( ps );
+          if ( multiRowInsert == null || !multiRowInsert.addRow() ) {
+            ps.addBatch(); // Add the batch, but don't forget to run the batch
+          }
         } else {
           debug = "insertRow exec update";
           ps.executeUpdate();
@@ -1244,7 +1311,7 @@ public class Database implements VariableSpace, LoggingObjectInterface {
           if ( useBatchInsert ) {
             isBatchUpdate = true;
             debug = "insertRow executeBatch commit";
-            ps.executeBatch();
+            executeBatch( ps );
             commit();
             ps.clearBatch();
           } else {
@@ -1257,6 +1324,8 @@ public class Database implements VariableSpace, LoggingObjectInterface {
       }
 
       return rowsAreSafe;
+    } catch ( KettleDatabaseBatchException ex ) {
+      throw ex;
     } catch ( BatchUpdateException ex ) {
       throw createKettleDatabaseBatchException( "Error updating batch", ex );
     } catch ( SQLException ex ) {
@@ -1283,6 +1352,10 @@ public class Database implements VariableSpace, LoggingObjectInterface {
   }
 
   public void clearBatch( PreparedStatement preparedStatement ) throws KettleDatabaseException {
+    MultiRowInsert multiRowInsert = multiRowInserts.get( preparedStatement );
+    if ( multiRowInsert != null ) {
+      multiRowInsert.clear();
+    }
     try {
       preparedStatement.clearBatch();
     } catch ( SQLException e ) {
@@ -1290,10 +1363,36 @@ public class Database implements VariableSpace, LoggingObjectInterface {
     }
   }
 
+  /**
+   * Sends the batch of a prepared statement to the database. This includes the rows that were buffered to be inserted
+   * several rows at a time, see {@link DatabaseInterface#supportsMultiRowInsert()}.
+   *
+   * @param ps
+   *          The prepared statement
+   * @throws KettleDatabaseBatchException
+   *           in case (some of) the rows could not be written
+   * @throws KettleDatabaseException
+   */
+  public void executeBatch( PreparedStatement ps ) throws KettleDatabaseException {
+    try {
+      MultiRowInsert multiRowInsert = multiRowInserts.get( ps );
+      if ( multiRowInsert != null ) {
+        multiRowInsert.flush();
+        if ( multiRowInsert.isUsed() ) {
+          // Nothing was added to the batch of the statement itself
+          return;
+        }
+      }
+      ps.executeBatch();
+    } catch ( SQLException ex ) {
+      throw createKettleDatabaseBatchException( "Error updating batch", ex );
+    }
+  }
+
   public void executeAndClearBatch( PreparedStatement preparedStatement ) throws KettleDatabaseException {
     try {
       if ( written > 0 && getDatabaseMetaData().supportsBatchUpdates() ) {
-        preparedStatement.executeBatch();
+        executeBatch( preparedStatement );
       }
 
       written = 0;
@@ -1345,7 +1444,7 @@ public class Database implements VariableSpace, LoggingObjectInterface {
             // That leaves the task of keeping track of the number of rows up to
             // our responsibility.
             isBatchUpdate = true;
-            ps.executeBatch();
+            executeBatch( ps );
             commit();
             ps.clearBatch();
           } else {
@@ -1355,6 +1454,7 @@ public class Database implements VariableSpace, LoggingObjectInterface {
 
         // Let's not forget to close the prepared statement.
         //
+        closeMultiRowInsert( ps );
         ps.close();
       }
     } catch ( BatchUpdateException ex ) {
@@ -1421,7 +1521,7 @@ public class Database implements VariableSpace, LoggingObjectInterface {
             // That leaves the task of keeping track of the number of rows up to
             // our responsibility.
             isBatchUpdate = true;
-            ps.executeBatch();
+            executeBatch( ps );
             commit();
           } else {
             commit();
@@ -1430,6 +1530,7 @@ public class Database implements VariableSpace, LoggingObjectInterface {
 
         // Let's not forget to close the prepared statement.
         //
+        closeMultiRowInsert( ps );
         ps.close();
       }
     } catch ( BatchUpdateException ex ) {
@@ -941,6 +941,23 @@ public interface DatabaseInterface extends Cloneable {
    */
   public boolean supportsErrorHandlingOnBatchUpdates();
 
+  /**
+   * @return true if the database accepts several rows in the VALUES clause of an insert statement: INSERT INTO t (a, b)
+   *         VALUES (?, ?), (?, ?), ...
+   */
+  public boolean supportsMultiRowInsert();
+
+  /**
+   * @return The maximum number of parameters in a single multi-row insert statement, <=0 means: no multi-row inserts
+   */
+  public int getMaxMultiRowInsertParameters();
+
+  /**
+   * @return The maximum number of parameters in a statement that looks up a list of keys at once: WHERE k IN (?, ?,
+   *         ...) or WHERE (k1 = ? AND k2 = ?) OR ..., <=0 means: no known limit
+   */
+  public int getMaxLookupListParameters();
+
   /**
    * Get the SQL to insert a new empty unknown record in a dimension.
    *
@@ -2848,6 +2848,18 @@ public class DatabaseMeta extends SharedObjectBase implements Cloneable, XMLInte
     return databaseInterface.supportsErrorHandlingOnBatchUpdates();
   }
 
+  public boolean supportsMultiRowInsert() {
+    return databaseInterface.supportsMultiRowInsert();
+  }
+
+  public int getMaxMultiRowInsertParameters() {
+    return databaseInterface.getMaxMultiRowInsertParameters();
+  }
+
+  public int getMaxLookupListParameters() {
+    return databaseInterface.getMaxLookupListParameters();
+  }
+
   /**
    * Get the SQL to insert a new empty unknown record in a dimension.
    *
@@ -125,6 +125,24 @@ public class H2DatabaseMeta extends BaseDatabaseMeta implements DatabaseInterfac
     return false;
   }
 
+  @Override
+  public boolean supportsMultiRowInsert() {
+    return true;
+  }
+
+  @Override
+  public int getMaxMultiRowInsertParameters() {
+    return 65535;
+  }
+
+  /**
+   * The same limit applies to every statement.
+   */
+  @Override
+  public int getMaxLookupListParameters() {
+    return getMaxMultiRowInsertParameters();
+  }
+
   /**
    * Generates the SQL statement to add a column to the specified table For this generic type, i set it to the most
    * common possibility.
@@ -508,4 +508,12 @@ public class MSSQLServerDatabaseMeta extends BaseDatabaseMeta implements Databas
     return 8000;
   }
 
+  /**
+   * A request can't have more than 2100 parameters, keep some room for the driver.
+   */
+  @Override
+  public int getMaxLookupListParameters() {
+    return 2000;
+  }
+
 }
@@ -0,0 +1,248 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2015 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.core.database;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.pentaho.di.core.exception.KettleDatabaseBatchException;
+import org.pentaho.di.core.exception.KettleDatabaseException;
+import org.pentaho.di.core.row.RowMetaInterface;
+
+/**
+ * Collects the rows of a single row insert statement and sends them to the database several rows at a time: INSERT
+ * INTO table (a, b) VALUES (?, ?), (?, ?), ...<br>
+ * <br>
+ * A prepared statement is kept for every number of rows used. Full buffers use the widest statement, what's left at
+ * the end of a transaction is sent in chunks of a power of two rows so only a handful of statements get prepared.
+ *
+ * @since 5.4
+ */
+class MultiRowInsert {
+
+  /**
+   * The maximum number of rows in a single statement, larger statements don't get any faster.
+   */
+  static final int MAX_ROWS = 1000;
+
+  private final Database database;
+  private final String sql;
+  private final int nrFields;
+  private final int maxRows;
+  private final Map<Integer, PreparedStatement> statements;
+
+  private final List<RowMetaInterface> rowMetas;
+  private final List<Object[]> rows;
+
+  private RowMetaInterface rowMeta;
+  private Object[] row;
+  private boolean used;
+  private int sent; // rows sent in the current transaction
+
+  /**
+   * @param database
+   *          the database to prepare the statements on
+   * @param sql
+   *          the single row insert statement
+   * @param nrFields
+   *          the number of values in a row
+   * @param maxRows
+   *          the maximum number of rows to send in one statement
+   */
+  MultiRowInsert( Database database, String sql, int nrFields, int maxRows ) {
+    this.database = database;
+    this.sql = sql;
+    this.nrFields = nrFields;
+    this.maxRows = maxRows;
+    statements = new HashMap<Integer, PreparedStatement>();
+    rowMetas = new ArrayList<RowMetaInterface>( maxRows );
+    rows = new ArrayList<Object[]>( maxRows );
+  }
+
+  /**
+   * @return the number of rows to put in a single statement, below 2 if multi-row inserts are not worth it
+   */
+  static int getMaxRows( DatabaseMeta databaseMeta, int nrFields ) {
+    if ( !databaseMeta.supportsMultiRowInsert() || nrFields <= 0 ) {
+      return 0;
+    }
+    return Math.min( databaseMeta.getMaxMultiRowInsertParameters() / nrFields, MAX_ROWS );
+  }
+
+  /**
+   * @return the insert statement for the given number of rows
+   */
+  static String getMultiRowSQL( String sql, int nrFields, int nrRows ) {
+    StringBuffer values = new StringBuffer( nrFields * 3 + 2 );
+    values.append( ", (" );
+    for ( int i = 0; i < nrFields; i++ ) {
+      if ( i > 0 ) {
+        values.append( ", " );
+      }
+      values.append( " ?" );
+    }
+    values.append( ')' );
+
+    StringBuffer ins = new StringBuffer( sql.length() + ( nrRows - 1 ) * values.length() );
+    ins.append( sql );
+    for ( int i = 1; i < nrRows; i++ ) {
+      ins.append( values );
+    }
+    return ins.toString();
+  }
+
+  /**
+   * Remembers the values set on the single row statement, they are added by the next call to addRow().
+   */
+  void setRow( RowMetaInterface rowMeta, Object[] row ) {
+    this.rowMeta = rowMeta;
+    this.row = row;
+  }
+
+  /**
+   * Adds the row passed to setRow() to the buffer. The buffer is sent to the database when it's full.
+   *
+   * @return false if no row was set, the caller then needs to insert it itself
+   * @throws KettleDatabaseException
+   *           in case sending the buffer failed
+   */
+  boolean addRow() throws KettleDatabaseException {
+    if ( row == null ) {
+      return false;
+    }
+    rowMetas.add( rowMeta );
+    rows.add( row );
+    rowMeta = null;
+    row = null;
+    used = true;
+
+    if ( rows.size() >= maxRows ) {
+      flush();
+    }
+    return true;
+  }
+
+  /**
+   * Sends the buffered rows to the database.
+   *
+   * @throws KettleDatabaseBatchException
+   *           in case the database refused the rows. The update counts cover all the rows of the current transaction.
+   * @throws KettleDatabaseException
+   *           in case a value could not be set
+   */
+  void flush() throws KettleDatabaseException {
+    int done = 0;
+    try {
+      while ( done < rows.size() ) {
+        int remaining = rows.size() - done;
+        int width = remaining >= maxRows ? maxRows : Integer.highestOneBit( remaining );
+        PreparedStatement ps = getStatement( width );
+        for ( int r = 0; r < width; r++ ) {
+          RowMetaInterface meta = rowMetas.get( done + r );
+          Object[] data = rows.get( done + r );
+          for ( int i = 0; i < nrFields; i++ ) {
+            database.setValue( ps, meta.getValueMeta( i ), data[i], r * nrFields + i + 1 );
+          }
+        }
+        ps.executeUpdate();
+        done += width;
+      }
+      sent += done;
+    } catch ( SQLException e ) {
+      KettleDatabaseBatchException kdbe =
+        Database.createKettleDatabaseBatchException( "Error inserting " + rows.size() + " rows", e );
+      int[] updateCounts = new int[sent + rows.size()];
+      Arrays.fill( updateCounts, 0, sent + done, 1 );
+      Arrays.fill( updateCounts, sent + done, updateCounts.length, Statement.EXECUTE_FAILED );
+      kdbe.setUpdateCounts( updateCounts );
+      throw kdbe;
+    } finally {
+      rowMetas.clear();
+      rows.clear();
+    }
+  }
+
+  private PreparedStatement getStatement( int width ) throws SQLException {
+    PreparedStatement ps = statements.get( width );
+    if ( ps == null ) {
+      String multiRowSQL = database.getDatabaseMeta().stripCR( getMultiRowSQL( sql, nrFields, width ) );
+      ps = database.getConnection().prepareStatement( multiRowSQL );
+      statements.put( width, ps );
+    }
+    return ps;
+  }
+
+  /**
+   * Sends the buffered rows to the database at the end of a transaction.
+   */
+  void commit() throws KettleDatabaseException {
+    flush();
+    sent = 0;
+  }
+
+  /**
+   * Forgets the buffered rows, for example after a rollback.
+   */
+  void clear() {
+    rowMetas.clear();
+    rows.clear();
+    rowMeta = null;
+    row = null;
+    sent = 0;
+  }
+
+  /**
+   * @return true if rows were buffered, the batch of the single row statement is then empty
+   */
+  boolean isUsed() {
+    return used;
+  }
+
+  int size() {
+    return rows.size();
+  }
+
+  int getMaxRows() {
+    return maxRows;
+  }
+
+  /**
+   * Closes the prepared statements, the buffered rows are lost.
+   */
+  void close() throws SQLException {
+    clear();
+    try {
+      for ( PreparedStatement ps : statements.values() ) {
+        ps.close();
+      }
+    } finally {
+      statements.clear();
+    }
+  }
+}
@@ -465,6 +465,27 @@ public class MySQLDatabaseMeta extends BaseDatabaseMeta implements DatabaseInter
     return true;
   }
 
+  @Override
+  public boolean supportsMultiRowInsert() {
+    return true;
+  }
+
+  /**
+   * The server doesn't accept more than 65535 placeholders in a prepared statement.
+   */
+  @Override
+  public int getMaxMultiRowInsertParameters() {
+    return 65535;
+  }
+
+  /**
+   * The same limit applies to every statement.
+   */
+  @Override
+  public int getMaxLookupListParameters() {
+    return getMaxMultiRowInsertParameters();
+  }
+
   @Override
   public boolean isRequiringTransactionsOnQueries() {
     return false;
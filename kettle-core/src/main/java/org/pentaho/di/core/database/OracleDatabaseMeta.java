@@ -639,4 +639,12 @@ public class OracleDatabaseMeta extends BaseDatabaseMeta implements DatabaseInte
     return 2000;
   }
 
+  /**
+   * An IN list can't have more than 1000 values (ORA-01795).
+   */
+  @Override
+  public int getMaxLookupListParameters() {
+    return 1000;
+  }
+
 }
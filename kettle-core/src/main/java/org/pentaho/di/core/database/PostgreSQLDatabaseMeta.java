@@ -519,6 +519,27 @@ public class PostgreSQLDatabaseMeta extends BaseDatabaseMeta implements Database
     return false;
   }
 
+  @Override
+  public boolean supportsMultiRowInsert() {
+    return true;
+  }
+
+  /**
+   * The protocol sends the number of parameters as a 16 bit integer.
+   */
+  @Override
+  public int getMaxMultiRowInsertParameters() {
+    return 32767;
+  }
+
+  /**
+   * The same limit applies to every statement.
+   */
+  @Override
+  public int getMaxLookupListParameters() {
+    return getMaxMultiRowInsertParameters();
+  }
+
   /**
    * PG needs the extra E in front of the string before it allows you to quote it. Imagine that.
    * 
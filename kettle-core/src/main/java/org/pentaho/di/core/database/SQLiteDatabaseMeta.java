@@ -225,4 +225,28 @@ public class SQLiteDatabaseMeta extends BaseDatabaseMeta implements DatabaseInte
     return false;
   }
 
+  /**
+   * Multi-row inserts are available as of SQLite 3.7.11.
+   */
+  @Override
+  public boolean supportsMultiRowInsert() {
+    return true;
+  }
+
+  /**
+   * SQLITE_MAX_VARIABLE_NUMBER defaults to 999.
+   */
+  @Override
+  public int getMaxMultiRowInsertParameters() {
+    return 999;
+  }
+
+  /**
+   * The same limit applies to every statement.
+   */
+  @Override
+  public int getMaxLookupListParameters() {
+    return getMaxMultiRowInsertParameters();
+  }
+
 }
@@ -0,0 +1,501 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2015 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.core.hash;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A compact hash index of binary keys and values.<br>
+ * <br>
+ * The keys and values are packed one after the other in large blocks of memory, allocated outside of the Java heap by
+ * default. The index itself is an open addressing table of longs: every slot holds a reference to the entry in the
+ * blocks and a part of the hash code of the key to skip most of the key comparisons. There are no objects per entry, so
+ * the memory used is about the size of the data plus 8 bytes per slot.<br>
+ * <br>
+ * For range searches a sorted list of the entries is built the first time {@link #floor(byte[], int)} is called. The
+ * keys are then compared as unsigned bytes, use an {@link OrderedKeyEncoder} to get keys that sort like the values.<br>
+ * <br>
+ * Replacing the value of a key doesn't free the space of the old value. Gets can be done by several threads once all
+ * the entries are added, adding entries is not thread safe.
+ *
+ * @since 5.4
+ */
+public class BinaryHashIndex {
+
+  private static final int STANDARD_INDEX_SIZE = 512;
+  private static final float STANDARD_LOAD_FACTOR = 0.7f;
+
+  public static final int STANDARD_BLOCK_SIZE = 8 * 1024 * 1024;
+
+  /**
+   * A reference to an entry is a block number and a position in the block
+   */
+  private static final int POSITION_BITS = 24;
+  private static final int POSITION_MASK = ( 1 << POSITION_BITS ) - 1;
+  private static final int MAX_BLOCKS = ( 1 << 16 ) - 1;
+
+  /**
+   * A slot holds the reference + 1 in the lower bits (0 is an empty slot) and the highest bits of the hash code in the
+   * upper bits
+   */
+  private static final int REFERENCE_BITS = 40;
+  private static final long REFERENCE_MASK = ( 1L << REFERENCE_BITS ) - 1;
+
+  private static final int HEADER_SIZE = 8;
+
+  private final int blockSize;
+  private final boolean offHeap;
+
+  private long[] slots;
+  private int size;
+  private int resizeThreshold;
+
+  private ByteBuffer[] blocks;
+  private int nrBlocks;
+  private long dataSize;
+
+  /**
+   * The references of the entries ordered by key
+   */
+  private long[] sortedReferences;
+
+  /**
+   * @param initialSize
+   *          the expected number of entries
+   * @param blockSize
+   *          the size of the blocks of memory to allocate, at most 16MB
+   * @param offHeap
+   *          true to allocate the blocks outside of the Java heap
+   */
+  public BinaryHashIndex( int initialSize, int blockSize, boolean offHeap ) {
+    this.blockSize = Math.max( 1024, Math.min( POSITION_MASK + 1, blockSize ) );
+    this.offHeap = offHeap;
+
+    // Find a suitable capacity being a factor of 2:
+    int factor2Size = 1;
+    while ( factor2Size * STANDARD_LOAD_FACTOR <= initialSize ) {
+      factor2Size <<= 1; // Multiply by 2
+    }
+    slots = new long[factor2Size];
+    resizeThreshold = (int) ( factor2Size * STANDARD_LOAD_FACTOR );
+    blocks = new ByteBuffer[8];
+  }
+
+  public BinaryHashIndex() {
+    this( STANDARD_INDEX_SIZE, STANDARD_BLOCK_SIZE, true );
+  }
+
+  public int getSize() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * @return the number of bytes allocated for the index, the data and the sorted list
+   */
+  public long getMemorySize() {
+    long memory = slots.length * 8L;
+    for ( int i = 0; i < nrBlocks; i++ ) {
+      memory += blocks[i].capacity();
+    }
+    if ( sortedReferences != null ) {
+      memory += sortedReferences.length * 8L;
+    }
+    return memory;
+  }
+
+  /**
+   * @return the number of bytes used by the keys and values
+   */
+  public long getDataSize() {
+    return dataSize;
+  }
+
+  public byte[] get( byte[] key ) {
+    long reference = find( key, hash( key ) );
+    return reference < 0 ? null : readValue( reference );
+  }
+
+  public boolean containsKey( byte[] key ) {
+    return find( key, hash( key ) ) >= 0;
+  }
+
+  public void put( byte[] key, byte[] value ) {
+    long hash = hash( key );
+    long tag = hash >>> REFERENCE_BITS;
+    int mask = slots.length - 1;
+    int index = (int) hash & mask;
+    while ( slots[index] != 0L ) {
+      long slot = slots[index];
+      if ( ( slot >>> REFERENCE_BITS ) == tag && equalsKey( ( slot & REFERENCE_MASK ) - 1, key ) ) {
+        slots[index] = ( tag << REFERENCE_BITS ) | ( append( key, value ) + 1 );
+        sortedReferences = null;
+        return;
+      }
+      index = ( index + 1 ) & mask;
+    }
+    slots[index] = ( tag << REFERENCE_BITS ) | ( append( key, value ) + 1 );
+    sortedReferences = null;
+
+    size++;
+    if ( size >= resizeThreshold ) {
+      resize();
+    }
+  }
+
+  /**
+   * Finds the entry with the highest key that is lower than or equal to the given key and starts with the same bytes.
+   *
+   * @param key
+   *          the key to search for
+   * @param prefixLength
+   *          the number of bytes at the start of the key that have to match exactly
+   * @return the value of the entry or null if there is no such entry
+   */
+  public byte[] floor( byte[] key, int prefixLength ) {
+    if ( sortedReferences == null ) {
+      sort();
+    }
+
+    // Binary search for the last key <= the given key
+    //
+    int low = 0;
+    int high = sortedReferences.length - 1;
+    int found = -1;
+    while ( low <= high ) {
+      int middle = ( low + high ) >>> 1;
+      if ( compareKey( sortedReferences[middle], key ) <= 0 ) {
+        found = middle;
+        low = middle + 1;
+      } else {
+        high = middle - 1;
+      }
+    }
+    if ( found < 0 || !startsWith( sortedReferences[found], key, prefixLength ) ) {
+      return null;
+    }
+    return readValue( sortedReferences[found] );
+  }
+
+  /**
+   * Releases the memory of the index. It can't be used anymore afterwards.
+   */
+  public void clear() {
+    slots = new long[0];
+    blocks = null;
+    nrBlocks = 0;
+    size = 0;
+    dataSize = 0;
+    sortedReferences = null;
+  }
+
+  private long find( byte[] key, long hash ) {
+    long tag = hash >>> REFERENCE_BITS;
+    int mask = slots.length - 1;
+    int index = (int) hash & mask;
+    while ( slots[index] != 0L ) {
+      long slot = slots[index];
+      if ( ( slot >>> REFERENCE_BITS ) == tag ) {
+        long reference = ( slot & REFERENCE_MASK ) - 1;
+        if ( equalsKey( reference, key ) ) {
+          return reference;
+        }
+      }
+      index = ( index + 1 ) & mask;
+    }
+    return -1L;
+  }
+
+  private void resize() {
+    long[] oldSlots = slots;
+    int newSize = oldSlots.length * 2;
+    slots = new long[newSize];
+    int mask = newSize - 1;
+
+    // Only the highest bits of the hash code are kept, calculate it again from the key
+    //
+    for ( int i = 0; i < oldSlots.length; i++ ) {
+      long slot = oldSlots[i];
+      if ( slot != 0L ) {
+        long reference = ( slot & REFERENCE_MASK ) - 1;
+        ByteBuffer block = blocks[(int) ( reference >>> POSITION_BITS )];
+        int position = (int) reference & POSITION_MASK;
+        int index = (int) hash( block, position + HEADER_SIZE, block.getInt( position ) ) & mask;
+        while ( slots[index] != 0L ) {
+          index = ( index + 1 ) & mask;
+        }
+        slots[index] = slot;
+      }
+    }
+    resizeThreshold = (int) ( newSize * STANDARD_LOAD_FACTOR );
+  }
+
+  /**
+   * Writes an entry at the end of the data.
+   *
+   * @return the reference of the entry
+   */
+  private long append( byte[] key, byte[] value ) {
+    int entrySize = HEADER_SIZE + key.length + ( value == null ? 0 : value.length );
+    ByteBuffer block = nrBlocks == 0 ? null : blocks[nrBlocks - 1];
+    if ( block == null || block.remaining() < entrySize ) {
+      // Large entries get a block of their own, always at position 0
+      //
+      block = allocate( Math.max( blockSize, entrySize ) );
+    }
+    int position = block.position();
+    block.putInt( key.length );
+    block.putInt( value == null ? -1 : value.length );
+    block.put( key );
+    if ( value != null ) {
+      block.put( value );
+    }
+    dataSize += entrySize;
+    return ( (long) ( nrBlocks - 1 ) << POSITION_BITS ) | position;
+  }
+
+  private ByteBuffer allocate( int capacity ) {
+    if ( nrBlocks == MAX_BLOCKS ) {
+      throw new IllegalStateException( "The hash index is full: " + nrBlocks + " blocks of data are allocated" );
+    }
+    if ( nrBlocks == blocks.length ) {
+      blocks = Arrays.copyOf( blocks, nrBlocks * 2 );
+    }
+    ByteBuffer block = offHeap ? ByteBuffer.allocateDirect( capacity ) : ByteBuffer.allocate( capacity );
+    blocks[nrBlocks++] = block;
+    return block;
+  }
+
+  private boolean equalsKey( long reference, byte[] key ) {
+    ByteBuffer block = blocks[(int) ( reference >>> POSITION_BITS )];
+    int position = (int) reference & POSITION_MASK;
+    if ( block.getInt( position ) != key.length ) {
+      return false;
+    }
+    position += HEADER_SIZE;
+    for ( int i = 0; i < key.length; i++ ) {
+      if ( block.get( position + i ) != key[i] ) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean startsWith( long reference, byte[] key, int prefixLength ) {
+    ByteBuffer block = blocks[(int) ( reference >>> POSITION_BITS )];
+    int position = (int) reference & POSITION_MASK;
+    if ( block.getInt( position ) < prefixLength ) {
+      return false;
+    }
+    position += HEADER_SIZE;
+    for ( int i = 0; i < prefixLength; i++ ) {
+      if ( block.get( position + i ) != key[i] ) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Compares the key of an entry with a key, unsigned byte by byte.
+   */
+  private int compareKey( long reference, byte[] key ) {
+    ByteBuffer block = blocks[(int) ( reference >>> POSITION_BITS )];
+    int position = (int) reference & POSITION_MASK;
+    int length = block.getInt( position );
+    position += HEADER_SIZE;
+    int common = Math.min( length, key.length );
+    for ( int i = 0; i < common; i++ ) {
+      int cmp = ( block.get( position + i ) & 0xFF ) - ( key[i] & 0xFF );
+      if ( cmp != 0 ) {
+        return cmp;
+      }
+    }
+    return length - key.length;
+  }
+
+  private int compareKeys( long reference1, long reference2 ) {
+    ByteBuffer block1 = blocks[(int) ( reference1 >>> POSITION_BITS )];
+    int position1 = (int) reference1 & POSITION_MASK;
+    ByteBuffer block2 = blocks[(int) ( reference2 >>> POSITION_BITS )];
+    int position2 = (int) reference2 & POSITION_MASK;
+    int length1 = block1.getInt( position1 );
+    int length2 = block2.getInt( position2 );
+    position1 += HEADER_SIZE;
+    position2 += HEADER_SIZE;
+    int common = Math.min( length1, length2 );
+    for ( int i = 0; i < common; i++ ) {
+      int cmp = ( block1.get( position1 + i ) & 0xFF ) - ( block2.get( position2 + i ) & 0xFF );
+      if ( cmp != 0 ) {
+        return cmp;
+      }
+    }
+    return length1 - length2;
+  }
+
+  private byte[] readValue( long reference ) {
+    ByteBuffer block = blocks[(int) ( reference >>> POSITION_BITS )];
+    int position = (int) reference & POSITION_MASK;
+    int keyLength = block.getInt( position );
+    int valueLength = block.getInt( position + 4 );
+    if ( valueLength < 0 ) {
+      return null;
+    }
+    byte[] value = new byte[valueLength];
+
+    // Read through a view of the block so that several threads can read at the same time
+    //
+    ByteBuffer view = block.duplicate();
+    view.position( position + HEADER_SIZE + keyLength );
+    view.get( value );
+    return value;
+  }
+
+  /**
+   * Builds the list of references ordered by key. The first 8 bytes of every key are kept during the sort to avoid most
+   * of the comparisons of the complete keys.
+   */
+  private void sort() {
+    long[] references = new long[size];
+    long[] prefixes = new long[size];
+    int n = 0;
+    for ( int i = 0; i < slots.length; i++ ) {
+      if ( slots[i] != 0L ) {
+        long reference = ( slots[i] & REFERENCE_MASK ) - 1;
+        references[n] = reference;
+        prefixes[n] = getPrefix( reference );
+        n++;
+      }
+    }
+    sort( references, prefixes, 0, n - 1 );
+    sortedReferences = references;
+  }
+
+  /**
+   * @return the first 8 bytes of the key, padded with zeros, with the sign bit flipped for a signed comparison
+   */
+  private long getPrefix( long reference ) {
+    ByteBuffer block = blocks[(int) ( reference >>> POSITION_BITS )];
+    int position = (int) reference & POSITION_MASK;
+    int length = Math.min( 8, block.getInt( position ) );
+    long prefix = 0L;
+    for ( int i = 0; i < 8; i++ ) {
+      prefix <<= 8;
+      if ( i < length ) {
+        prefix |= block.get( position + HEADER_SIZE + i ) & 0xFF;
+      }
+    }
+    return prefix ^ Long.MIN_VALUE;
+  }
+
+  private int compare( long[] references, long[] prefixes, int i, int j ) {
+    if ( prefixes[i] != prefixes[j] ) {
+      return prefixes[i] < prefixes[j] ? -1 : 1;
+    }
+    return compareKeys( references[i], references[j] );
+  }
+
+  /**
+   * Quick sort of the references and the prefixes, with an insertion sort for the small ranges.
+   */
+  private void sort( long[] references, long[] prefixes, int from, int to ) {
+    while ( to - from > 16 ) {
+      // Median of three as the pivot, moved to the end of the range
+      //
+      int middle = ( from + to ) >>> 1;
+      if ( compare( references, prefixes, middle, from ) < 0 ) {
+        swap( references, prefixes, middle, from );
+      }
+      if ( compare( references, prefixes, to, from ) < 0 ) {
+        swap( references, prefixes, to, from );
+      }
+      if ( compare( references, prefixes, middle, to ) < 0 ) {
+        swap( references, prefixes, middle, to );
+      }
+
+      int store = from;
+      for ( int i = from; i < to; i++ ) {
+        if ( compare( references, prefixes, i, to ) < 0 ) {
+          swap( references, prefixes, i, store++ );
+        }
+      }
+      swap( references, prefixes, store, to );
+
+      // Recurse into the smaller part, loop over the larger one
+      //
+      if ( store - from < to - store ) {
+        sort( references, prefixes, from, store - 1 );
+        from = store + 1;
+      } else {
+        sort( references, prefixes, store + 1, to );
+        to = store - 1;
+      }
+    }
+    for ( int i = from + 1; i <= to; i++ ) {
+      for ( int j = i; j > from && compare( references, prefixes, j, j - 1 ) < 0; j-- ) {
+        swap( references, prefixes, j, j - 1 );
+      }
+    }
+  }
+
+  private static void swap( long[] references, long[] prefixes, int i, int j ) {
+    long reference = references[i];
+    references[i] = references[j];
+    references[j] = reference;
+    long prefix = prefixes[i];
+    prefixes[i] = prefixes[j];
+    prefixes[j] = prefix;
+  }
+
+  /**
+   * A 64-bit FNV-1a hash code finished with the MurmurHash3 mix so that both the lower and the upper bits are usable.
+   */
+  public static long hash( byte[] key ) {
+    long h = 0xcbf29ce484222325L;
+    for ( int i = 0; i < key.length; i++ ) {
+      h = ( h ^ ( key[i] & 0xFF ) ) * 0x100000001b3L;
+    }
+    return mix( h );
+  }
+
+  private static long hash( ByteBuffer block, int position, int length ) {
+    long h = 0xcbf29ce484222325L;
+    for ( int i = 0; i < length; i++ ) {
+      h = ( h ^ ( block.get( position + i ) & 0xFF ) ) * 0x100000001b3L;
+    }
+    return mix( h );
+  }
+
+  private static long mix( long h ) {
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+}
@@ -0,0 +1,195 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2015 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.core.hash;
+
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Date;
+
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+
+/**
+ * Encodes composite keys into byte arrays that compare (unsigned, byte by byte) in the same order as the values compare
+ * in ascending order. Equal keys give equal byte arrays, so the encoding can be used for hashing as well as for range
+ * searches in a {@link BinaryHashIndex}.<br>
+ * <br>
+ * Every value starts with a null flag so that nulls sort first. Strings are terminated, the encoding of the first n
+ * values of a key is therefore always a prefix of the encoding of the complete key.<br>
+ * <br>
+ * Supported are the String, Integer, Number, Date, Timestamp and Boolean data types. An encoder is not thread safe.
+ *
+ * @since 5.4
+ */
+public class OrderedKeyEncoder {
+
+  private static final byte NULL = 0;
+  private static final byte NOT_NULL = 1;
+
+  private final ValueMetaInterface[] valueMetas;
+
+  private byte[] buffer;
+  private int length;
+
+  /**
+   * @param keyMeta
+   *          the metadata of the key values, with normal storage
+   * @throws KettleValueException
+   *           in case one of the data types is not supported
+   */
+  public OrderedKeyEncoder( RowMetaInterface keyMeta ) throws KettleValueException {
+    valueMetas = new ValueMetaInterface[keyMeta.size()];
+    for ( int i = 0; i < valueMetas.length; i++ ) {
+      valueMetas[i] = keyMeta.getValueMeta( i );
+      if ( !isSupported( valueMetas[i] ) ) {
+        throw new KettleValueException( "Value '"
+          + valueMetas[i].getName() + "' of type " + valueMetas[i].getTypeDesc()
+          + " can't be encoded as an ordered key" );
+      }
+    }
+    buffer = new byte[64];
+  }
+
+  /**
+   * @return true if all the values of the key can be encoded
+   */
+  public static boolean isSupported( RowMetaInterface keyMeta ) {
+    for ( int i = 0; i < keyMeta.size(); i++ ) {
+      if ( !isSupported( keyMeta.getValueMeta( i ) ) ) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isSupported( ValueMetaInterface valueMeta ) {
+    switch ( valueMeta.getType() ) {
+      case ValueMetaInterface.TYPE_STRING:
+      case ValueMetaInterface.TYPE_INTEGER:
+      case ValueMetaInterface.TYPE_NUMBER:
+      case ValueMetaInterface.TYPE_DATE:
+      case ValueMetaInterface.TYPE_TIMESTAMP:
+      case ValueMetaInterface.TYPE_BOOLEAN:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  public byte[] encode( Object[] keyData ) throws KettleValueException {
+    return encode( keyData, valueMetas.length );
+  }
+
+  /**
+   * Encodes the first values of a key.
+   *
+   * @param keyData
+   *          the key values
+   * @param nrValues
+   *          the number of values to encode
+   * @return the encoded key
+   */
+  public byte[] encode( Object[] keyData, int nrValues ) throws KettleValueException {
+    length = 0;
+    for ( int i = 0; i < nrValues; i++ ) {
+      ValueMetaInterface valueMeta = valueMetas[i];
+      Object value = keyData[i];
+      if ( valueMeta.isNull( value ) ) {
+        writeByte( NULL );
+        continue;
+      }
+      writeByte( NOT_NULL );
+
+      switch ( valueMeta.getType() ) {
+        case ValueMetaInterface.TYPE_STRING:
+          writeString( valueMeta.getString( value ), valueMeta.isCaseInsensitive() );
+          break;
+        case ValueMetaInterface.TYPE_INTEGER:
+          writeLong( valueMeta.getInteger( value ).longValue() ^ Long.MIN_VALUE );
+          break;
+        case ValueMetaInterface.TYPE_NUMBER:
+          long bits = Double.doubleToLongBits( valueMeta.getNumber( value ).doubleValue() );
+          // Negative numbers sort in reverse order of their bits
+          writeLong( bits < 0 ? ~bits : bits ^ Long.MIN_VALUE );
+          break;
+        case ValueMetaInterface.TYPE_DATE:
+        case ValueMetaInterface.TYPE_TIMESTAMP:
+          Date date = valueMeta.getDate( value );
+          writeLong( date.getTime() ^ Long.MIN_VALUE );
+          if ( valueMeta.getType() == ValueMetaInterface.TYPE_TIMESTAMP ) {
+            writeInt( date instanceof Timestamp ? ( (Timestamp) date ).getNanos() : 0 );
+          }
+          break;
+        case ValueMetaInterface.TYPE_BOOLEAN:
+          writeByte( valueMeta.getBoolean( value ).booleanValue() ? (byte) 1 : (byte) 0 );
+          break;
+        default:
+          throw new KettleValueException( "Value '"
+            + valueMeta.getName() + "' of type " + valueMeta.getTypeDesc() + " can't be encoded as an ordered key" );
+      }
+    }
+    return Arrays.copyOf( buffer, length );
+  }
+
+  /**
+   * Characters below 128 take one byte (the character + 1), the others three bytes starting with 0x81-0x84. The string
+   * ends with a 0 byte. This keeps the order of String.compareTo().
+   */
+  private void writeString( String string, boolean caseInsensitive ) {
+    for ( int i = 0; i < string.length(); i++ ) {
+      char c = string.charAt( i );
+      if ( caseInsensitive ) {
+        // The same folding as String.compareToIgnoreCase()
+        c = Character.toLowerCase( Character.toUpperCase( c ) );
+      }
+      if ( c < 0x80 ) {
+        writeByte( (byte) ( c + 1 ) );
+      } else {
+        writeByte( (byte) ( 0x81 + ( c >>> 14 ) ) );
+        writeByte( (byte) ( ( c >>> 7 ) & 0x7F ) );
+        writeByte( (byte) ( c & 0x7F ) );
+      }
+    }
+    writeByte( (byte) 0 );
+  }
+
+  private void writeLong( long value ) {
+    writeInt( (int) ( value >>> 32 ) );
+    writeInt( (int) value );
+  }
+
+  private void writeInt( int value ) {
+    writeByte( (byte) ( value >>> 24 ) );
+    writeByte( (byte) ( value >>> 16 ) );
+    writeByte( (byte) ( value >>> 8 ) );
+    writeByte( (byte) value );
+  }
+
+  private void writeByte( byte value ) {
+    if ( length == buffer.length ) {
+      buffer = Arrays.copyOf( buffer, buffer.length * 2 );
+    }
+    buffer[length++] = value;
+  }
+}
@@ -0,0 +1,612 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2015 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.core.row;
+
+import java.util.Date;
+
+/**
+ * A column oriented batch of rows described by a single RowMetaInterface.<br>
+ * <br>
+ * Integer, Number, Boolean and Date values with normal storage are kept in primitive arrays (dates as milliseconds),
+ * all other values are kept as objects. Dates are also kept as objects, so a timestamp keeps its nanoseconds. Null
+ * values are tracked in a bitmap per column.<br>
+ * <br>
+ * When a row is added with {@link #addRow(Object[])} only a reference to the original row is kept. The values are
+ * moved into the columns the first time a column is accessed. As long as none of its values are changed in the batch,
+ * {@link #getRow(int)} hands back the original row without allocating anything. This allows steps that only filter or
+ * route rows to work on batches without extra cost.
+ *
+ * @since 5.4
+ */
+public class RowBatch {
+  /**
+   * The default number of rows in a batch
+   */
+  public static final int DEFAULT_BATCH_SIZE = 1024;
+
+  public static final int KIND_OBJECT = 0;
+  public static final int KIND_LONG = 1;
+  public static final int KIND_DOUBLE = 2;
+  public static final int KIND_BOOLEAN = 3;
+  public static final int KIND_DATE = 4;
+
+  private RowMetaInterface rowMeta;
+  private int capacity;
+  private int size;
+
+  /**
+   * The number of rows for which the values are stored in the columns
+   */
+  private int decoded;
+
+  private int[] kinds;
+  private long[][] longs;
+  private double[][] doubles;
+  private boolean[][] booleans;
+  private Object[][] objects;
+  private long[][] nulls;
+
+  /**
+   * The original rows, or null for a row that was modified in the batch
+   */
+  private Object[][] rows;
+
+  /**
+   * Create a new empty batch of rows.
+   *
+   * @param rowMeta
+   *          the description of the rows
+   * @param capacity
+   *          the maximum number of rows in the batch
+   */
+  public RowBatch( RowMetaInterface rowMeta, int capacity ) {
+    this.rowMeta = rowMeta;
+    this.capacity = capacity;
+    this.size = 0;
+    this.decoded = 0;
+
+    int nrColumns = rowMeta.size();
+    kinds = new int[nrColumns];
+    longs = new long[nrColumns][];
+    doubles = new double[nrColumns][];
+    booleans = new boolean[nrColumns][];
+    objects = new Object[nrColumns][];
+    nulls = new long[nrColumns][];
+    rows = new Object[capacity][];
+
+    for ( int c = 0; c < nrColumns; c++ ) {
+      kinds[c] = getKind( rowMeta.getValueMeta( c ) );
+      switch ( kinds[c] ) {
+        case KIND_LONG:
+          longs[c] = new long[capacity];
+          break;
+        case KIND_DATE:
+          longs[c] = new long[capacity];
+          objects[c] = new Object[capacity];
+          break;
+        case KIND_DOUBLE:
+          doubles[c] = new double[capacity];
+          break;
+        case KIND_BOOLEAN:
+          booleans[c] = new boolean[capacity];
+          break;
+        default:
+          objects[c] = new Object[capacity];
+          break;
+      }
+      nulls[c] = new long[( capacity + 63 ) >>> 6];
+    }
+  }
+
+  /**
+   * Creates a batch without column arrays, they are filled in by {@link #select(int[], RowMetaInterface)}.
+   */
+  private RowBatch( RowMetaInterface rowMeta, int capacity, int size, int nrColumns ) {
+    this.rowMeta = rowMeta;
+    this.capacity = capacity;
+    this.size = size;
+    this.decoded = size;
+    kinds = new int[nrColumns];
+    longs = new long[nrColumns][];
+    doubles = new double[nrColumns][];
+    booleans = new boolean[nrColumns][];
+    objects = new Object[nrColumns][];
+    nulls = new long[nrColumns][];
+    rows = new Object[capacity][];
+  }
+
+  /**
+   * Determine how the values of the given value metadata are stored in a batch.
+   *
+   * @param valueMeta
+   *          the value metadata
+   * @return one of the KIND_ constants
+   */
+  public static int getKind( ValueMetaInterface valueMeta ) {
+    if ( valueMeta.getStorageType() != ValueMetaInterface.STORAGE_TYPE_NORMAL ) {
+      return KIND_OBJECT;
+    }
+    switch ( valueMeta.getType() ) {
+      case ValueMetaInterface.TYPE_INTEGER:
+        return KIND_LONG;
+      case ValueMetaInterface.TYPE_NUMBER:
+        return KIND_DOUBLE;
+      case ValueMetaInterface.TYPE_BOOLEAN:
+        return KIND_BOOLEAN;
+      case ValueMetaInterface.TYPE_DATE:
+        return KIND_DATE;
+      default:
+        return KIND_OBJECT;
+    }
+  }
+
+  /**
+   * Add a row to the end of this batch.
+   *
+   * @param row
+   *          the row to add
+   * @return the index of the row in the batch
+   * @throws IllegalStateException
+   *           in case the batch is full
+   */
+  public int addRow( Object[] row ) {
+    if ( size >= capacity ) {
+      throw new IllegalStateException( "The row batch is full (" + capacity + " rows)" );
+    }
+    int index = size++;
+    rows[index] = row;
+    return index;
+  }
+
+  /**
+   * Copy a row from another batch with the same layout to the end of this batch.
+   *
+   * @param batch
+   *          the batch to copy from
+   * @param index
+   *          the index of the row in the other batch
+   * @return the index of the row in this batch
+   */
+  public int addRow( RowBatch batch, int index ) {
+    if ( batch.rows[index] != null ) {
+      return addRow( batch.rows[index] );
+    }
+    if ( size >= capacity ) {
+      throw new IllegalStateException( "The row batch is full (" + capacity + " rows)" );
+    }
+    decode();
+    int target = size++;
+    decoded++;
+    for ( int c = 0; c < kinds.length; c++ ) {
+      if ( batch.isNull( c, index ) ) {
+        setNullBit( c, target, true );
+        continue;
+      }
+      setNullBit( c, target, false );
+      switch ( kinds[c] ) {
+        case KIND_LONG:
+          longs[c][target] = batch.longs[c][index];
+          break;
+        case KIND_DATE:
+          longs[c][target] = batch.longs[c][index];
+          objects[c][target] = batch.objects[c][index];
+          break;
+        case KIND_DOUBLE:
+          doubles[c][target] = batch.doubles[c][index];
+          break;
+        case KIND_BOOLEAN:
+          booleans[c][target] = batch.booleans[c][index];
+          break;
+        default:
+          objects[c][target] = batch.objects[c][index];
+          break;
+      }
+    }
+    rows[target] = batch.rows[index];
+    return target;
+  }
+
+  /**
+   * Move the values of the rows that were added since the last call into the columns.
+   */
+  private void decode() {
+    for ( int index = decoded; index < size; index++ ) {
+      Object[] row = rows[index];
+      for ( int c = 0; c < kinds.length; c++ ) {
+        store( c, index, c < row.length ? row[c] : null );
+      }
+    }
+    decoded = size;
+  }
+
+  private void store( int column, int index, Object value ) {
+    if ( value == null ) {
+      setNullBit( column, index, true );
+      if ( objects[column] != null ) {
+        objects[column][index] = null;
+      }
+      return;
+    }
+    setNullBit( column, index, false );
+    switch ( kinds[column] ) {
+      case KIND_LONG:
+        longs[column][index] = ( (Number) value ).longValue();
+        break;
+      case KIND_DOUBLE:
+        doubles[column][index] = ( (Number) value ).doubleValue();
+        break;
+      case KIND_BOOLEAN:
+        booleans[column][index] = ( (Boolean) value ).booleanValue();
+        break;
+      case KIND_DATE:
+        longs[column][index] = ( (Date) value ).getTime();
+        objects[column][index] = value;
+        break;
+      default:
+        objects[column][index] = value;
+        break;
+    }
+  }
+
+  private void setNullBit( int column, int index, boolean isNull ) {
+    if ( isNull ) {
+      nulls[column][index >>> 6] |= 1L << index;
+    } else {
+      nulls[column][index >>> 6] &= ~( 1L << index );
+    }
+  }
+
+  /**
+   * Get a row from the batch. If the row was added with {@link #addRow(Object[])} and not modified since, the original
+   * row is returned. Otherwise a new row is allocated.
+   *
+   * @param index
+   *          the index of the row in the batch
+   * @return the row data
+   */
+  public Object[] getRow( int index ) {
+    Object[] row = rows[index];
+    if ( row != null ) {
+      return row;
+    }
+    row = RowDataUtil.allocateRowData( kinds.length );
+    for ( int c = 0; c < kinds.length; c++ ) {
+      row[c] = getObject( c, index );
+    }
+    return row;
+  }
+
+  /**
+   * @return true if the value is null
+   */
+  public boolean isNull( int column, int index ) {
+    if ( index >= decoded ) {
+      decode();
+    }
+    return ( nulls[column][index >>> 6] & ( 1L << index ) ) != 0;
+  }
+
+  /**
+   * @return the integer value (or the milliseconds of a date), only valid for KIND_LONG and KIND_DATE columns
+   */
+  public long getLong( int column, int index ) {
+    if ( index >= decoded ) {
+      decode();
+    }
+    return longs[column][index];
+  }
+
+  /**
+   * @return the number value, only valid for KIND_DOUBLE columns
+   */
+  public double getDouble( int column, int index ) {
+    if ( index >= decoded ) {
+      decode();
+    }
+    return doubles[column][index];
+  }
+
+  /**
+   * @return the boolean value, only valid for KIND_BOOLEAN columns
+   */
+  public boolean getBoolean( int column, int index ) {
+    if ( index >= decoded ) {
+      decode();
+    }
+    return booleans[column][index];
+  }
+
+  /**
+   * Get the values of a KIND_LONG or KIND_DATE column to process them in a loop. The array is indexed by row and only
+   * the first {@link #size()} values are valid. The values of null rows are undefined, see {@link #getNulls(int)}. The
+   * array must not be modified.
+   *
+   * @return the integer values (or the milliseconds of the dates) of the column
+   */
+  public long[] getLongs( int column ) {
+    decode();
+    return longs[column];
+  }
+
+  /**
+   * Get the values of a KIND_DOUBLE column, see {@link #getLongs(int)}.
+   *
+   * @return the number values of the column
+   */
+  public double[] getDoubles( int column ) {
+    decode();
+    return doubles[column];
+  }
+
+  /**
+   * Get the values of a KIND_BOOLEAN column, see {@link #getLongs(int)}.
+   *
+   * @return the boolean values of the column
+   */
+  public boolean[] getBooleans( int column ) {
+    decode();
+    return booleans[column];
+  }
+
+  /**
+   * Get the null bitmap of a column: a value is null if {@link #isNull(long[], int)} returns true for its row. The
+   * array must not be modified.
+   *
+   * @return the null bitmap of the column
+   */
+  public long[] getNulls( int column ) {
+    decode();
+    return nulls[column];
+  }
+
+  /**
+   * @return true if the null bitmap of a column, as returned by {@link #getNulls(int)}, has the bit of a row set
+   */
+  public static boolean isNull( long[] nulls, int index ) {
+    return ( nulls[index >>> 6] & ( 1L << index ) ) != 0;
+  }
+
+  /**
+   * Get a value as an object, whatever the way it is stored. Primitive values are boxed.
+   *
+   * @return the value or null
+   */
+  public Object getObject( int column, int index ) {
+    if ( isNull( column, index ) ) {
+      return null;
+    }
+    switch ( kinds[column] ) {
+      case KIND_LONG:
+        return Long.valueOf( longs[column][index] );
+      case KIND_DOUBLE:
+        return Double.valueOf( doubles[column][index] );
+      case KIND_BOOLEAN:
+        return Boolean.valueOf( booleans[column][index] );
+      case KIND_DATE:
+        // The original object, unless the date was changed with setLong()
+        //
+        Object date = objects[column][index];
+        return date != null ? date : new Date( longs[column][index] );
+      default:
+        return objects[column][index];
+    }
+  }
+
+  public void setLong( int column, int index, long value ) {
+    decode();
+    longs[column][index] = value;
+    if ( objects[column] != null ) {
+      objects[column][index] = null;
+    }
+    setNullBit( column, index, false );
+    rows[index] = null;
+  }
+
+  public void setDouble( int column, int index, double value ) {
+    decode();
+    doubles[column][index] = value;
+    setNullBit( column, index, false );
+    rows[index] = null;
+  }
+
+  public void setBoolean( int column, int index, boolean value ) {
+    decode();
+    booleans[column][index] = value;
+    setNullBit( column, index, false );
+    rows[index] = null;
+  }
+
+  /**
+   * Set a value from its object representation, whatever the way it is stored.
+   */
+  public void setObject( int column, int index, Object value ) {
+    decode();
+    store( column, index, value );
+    rows[index] = null;
+  }
+
+  public void setNull( int column, int index ) {
+    decode();
+    setNullBit( column, index, true );
+    if ( objects[column] != null ) {
+      objects[column][index] = null;
+    }
+    rows[index] = null;
+  }
+
+  /**
+   * Create a batch with a subset of the columns of this batch, in the given order. The values are copied into new
+   * columns, so the two batches can be changed, compacted or re-used independently. A column can be selected more than
+   * once. The original rows are not kept.
+   *
+   * @param columnIndexes
+   *          the indexes of the columns in this batch
+   * @param selectedRowMeta
+   *          the description of the selected columns, possibly renamed
+   * @return the new batch
+   */
+  public RowBatch select( int[] columnIndexes, RowMetaInterface selectedRowMeta ) {
+    decode();
+    RowBatch batch = new RowBatch( selectedRowMeta, capacity, size, columnIndexes.length );
+    for ( int c = 0; c < columnIndexes.length; c++ ) {
+      int source = columnIndexes[c];
+      batch.kinds[c] = kinds[source];
+      if ( longs[source] != null ) {
+        batch.longs[c] = new long[capacity];
+        System.arraycopy( longs[source], 0, batch.longs[c], 0, size );
+      }
+      if ( doubles[source] != null ) {
+        batch.doubles[c] = new double[capacity];
+        System.arraycopy( doubles[source], 0, batch.doubles[c], 0, size );
+      }
+      if ( booleans[source] != null ) {
+        batch.booleans[c] = new boolean[capacity];
+        System.arraycopy( booleans[source], 0, batch.booleans[c], 0, size );
+      }
+      if ( objects[source] != null ) {
+        batch.objects[c] = new Object[capacity];
+        System.arraycopy( objects[source], 0, batch.objects[c], 0, size );
+      }
+      batch.nulls[c] = nulls[source].clone();
+    }
+    return batch;
+  }
+
+  /**
+   * Remove the rows that are not selected, keeping the order of the remaining rows.
+   *
+   * @param selection
+   *          true for every row to keep
+   * @return the new size of the batch
+   */
+  public int compact( boolean[] selection ) {
+    if ( decoded > 0 ) {
+      decode();
+    }
+    int target = 0;
+    for ( int index = 0; index < size; index++ ) {
+      if ( !selection[index] ) {
+        continue;
+      }
+      if ( target != index ) {
+        moveRow( index, target );
+      }
+      target++;
+    }
+    for ( int index = target; index < size; index++ ) {
+      rows[index] = null;
+    }
+    size = target;
+    decoded = Math.min( decoded, size );
+    return size;
+  }
+
+  private void moveRow( int from, int to ) {
+    rows[to] = rows[from];
+    if ( decoded == 0 ) {
+      return;
+    }
+    for ( int c = 0; c < kinds.length; c++ ) {
+      boolean isNull = isNull( c, from );
+      setNullBit( c, to, isNull );
+      switch ( kinds[c] ) {
+        case KIND_LONG:
+          longs[c][to] = longs[c][from];
+          break;
+        case KIND_DATE:
+          longs[c][to] = longs[c][from];
+          objects[c][to] = objects[c][from];
+          break;
+        case KIND_DOUBLE:
+          doubles[c][to] = doubles[c][from];
+          break;
+        case KIND_BOOLEAN:
+          booleans[c][to] = booleans[c][from];
+          break;
+        default:
+          objects[c][to] = objects[c][from];
+          break;
+      }
+    }
+  }
+
+  /**
+   * Remove all rows from this batch so that it can be re-used.
+   */
+  public void clear() {
+    for ( int index = 0; index < size; index++ ) {
+      rows[index] = null;
+    }
+    for ( int c = 0; c < kinds.length; c++ ) {
+      if ( objects[c] != null ) {
+        for ( int index = 0; index < decoded; index++ ) {
+          objects[c][index] = null;
+        }
+      }
+    }
+    size = 0;
+    decoded = 0;
+  }
+
+  /**
+   * @return the metadata of the rows in this batch
+   */
+  public RowMetaInterface getRowMeta() {
+    return rowMeta;
+  }
+
+  /**
+   * @return the storage kind of a column, one of the KIND_ constants
+   */
+  public int getKind( int column ) {
+    return kinds[column];
+  }
+
+  /**
+   * @return the number of rows in this batch
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @return the maximum number of rows in this batch
+   */
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * @return true if no more rows can be added
+   */
+  public boolean isFull() {
+    return size >= capacity;
+  }
+
+  /**
+   * @return true if there are no rows in this batch
+   */
+  public boolean isEmpty() {
+    return size == 0;
+  }
+}
@@ -389,6 +389,15 @@ public interface ValueMetaInterface extends Cloneable {
    */
   public boolean isStorageBinaryString();
 
+  /**
+   * Checks if binary string data can be used as it is. That is the case when the data is stored as binary strings and
+   * the storage metadata has the same encoding and format as this value: decoding and encoding it again would give
+   * back the same bytes.
+   *
+   * @return true, if the binary strings can be passed on without conversion
+   */
+  public boolean isBinaryStringPassthrough();
+
   /**
    * Gets the conversion mask.
    *
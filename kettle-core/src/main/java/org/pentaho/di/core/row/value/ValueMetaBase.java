@@ -342,6 +342,7 @@ public class ValueMetaBase implements ValueMetaInterface {
   @Override
   public void setLength( int length ) {
     this.length = length;
+    compareStorageAndActualFormat();
   }
 
   /**
@@ -352,6 +353,7 @@ public class ValueMetaBase implements ValueMetaInterface {
   public void setLength( int length, int precision ) {
     this.length = length;
     this.precision = precision;
+    compareStorageAndActualFormat();
   }
 
   /**
@@ -412,6 +414,7 @@ public class ValueMetaBase implements ValueMetaInterface {
   @Override
   public void setPrecision( int precision ) {
     this.precision = precision;
+    compareStorageAndActualFormat();
   }
 
   /**
@@ -446,6 +449,11 @@ public class ValueMetaBase implements ValueMetaInterface {
     return storageType == STORAGE_TYPE_BINARY_STRING;
   }
 
+  @Override
+  public boolean isBinaryStringPassthrough() {
+    return storageType == STORAGE_TYPE_BINARY_STRING && identicalFormat;
+  }
+
   /**
    * @return the type
    */
@@ -559,6 +567,7 @@ public class ValueMetaBase implements ValueMetaInterface {
   public void setCurrencySymbol( String currencySymbol ) {
     this.currencySymbol = currencySymbol;
     decimalFormatChanged = true;
+    compareStorageAndActualFormat();
   }
 
   /**
@@ -2060,7 +2069,7 @@ public class ValueMetaBase implements ValueMetaInterface {
     // and only IF the formatting options for the storage metadata and this
     // object are the same.
     //
-    if ( isStorageBinaryString() && identicalFormat ) {
+    if ( isBinaryStringPassthrough() ) {
       return (byte[]) object; // shortcut it directly for better performance.
     }
 
@@ -3967,10 +3976,10 @@ public class ValueMetaBase implements ValueMetaInterface {
         // If there is a string encoding set and it's the same encoding in the
         // binary string, then we don't have to convert
         // If there are no encodings set, then we're certain we don't have to
-        // convert as well.
+        // convert as well. No encoding means the default encoding of the platform.
         //
-        if ( getStringEncoding() != null && getStringEncoding().equals( storageMetadata.getStringEncoding() )
-            || getStringEncoding() == null && storageMetadata.getStringEncoding() == null ) {
+        if ( getCanonicalEncoding( getStringEncoding() ).equals(
+            getCanonicalEncoding( storageMetadata.getStringEncoding() ) ) ) {
 
           // However, perhaps the conversion mask changed since we read the
           // binary string?
@@ -3986,41 +3995,55 @@ public class ValueMetaBase implements ValueMetaInterface {
               identicalFormat = false;
             }
           } else if ( isNumeric() ) {
-            // Check the lengths first
+            // For the same reasons as above, if the conversion mask, the
+            // decimal or the grouping symbol changes
+            // we need to convert from the binary strings to the target data
+            // type and then back to a string in the required format.
+            // The length and precision only matter without a conversion mask,
+            // the format is calculated from them in that case.
             //
-            if ( getLength() != storageMetadata.getLength() ) {
+            String storageMask = Const.NVL( storageMetadata.getConversionMask(), "" );
+            if ( !Const.NVL( getConversionMask(), "" ).equals( storageMask ) ) {
               identicalFormat = false;
-            } else if ( getPrecision() != storageMetadata.getPrecision() ) {
+            } else if ( Const.isEmpty( storageMask )
+                && ( getLength() != storageMetadata.getLength()
+                  || getPrecision() != storageMetadata.getPrecision() ) ) {
               identicalFormat = false;
-            } else if ( ( getConversionMask() != null
-                && getConversionMask().equals( storageMetadata.getConversionMask() ) || ( getConversionMask() == null && storageMetadata
-                .getConversionMask() == null ) ) ) {
-              // For the same reasons as above, if the conversion mask, the
-              // decimal or the grouping symbol changes
-              // we need to convert from the binary strings to the target data
-              // type and then back to a string in the required format.
-              //
-              if ( ( getGroupingSymbol() != null && getGroupingSymbol().equals( storageMetadata.getGroupingSymbol() ) )
-                  || ( getConversionMask() == null && storageMetadata.getConversionMask() == null ) ) {
-                if ( ( getDecimalFormat( false ) != null && getDecimalFormat( false ).equals(
-                    storageMetadata.getDecimalFormat( false ) ) )
-                    || ( getDecimalFormat( false ) == null && storageMetadata.getDecimalFormat( false ) == null ) ) {
-                  identicalFormat = true;
-                } else {
-                  identicalFormat = false;
-                }
-              } else {
-                identicalFormat = false;
-              }
             } else {
-              identicalFormat = false;
+              identicalFormat =
+                  Const.NVL( getDecimalSymbol(), "" ).equals( Const.NVL( storageMetadata.getDecimalSymbol(), "" ) )
+                      && Const.NVL( getGroupingSymbol(), "" ).equals(
+                          Const.NVL( storageMetadata.getGroupingSymbol(), "" ) )
+                      && Const.NVL( getCurrencySymbol(), "" ).equals(
+                          Const.NVL( storageMetadata.getCurrencySymbol(), "" ) );
             }
+          } else {
+            identicalFormat = true;
           }
+        } else {
+          // The bytes need to be decoded and encoded again
+          //
+          identicalFormat = false;
         }
       }
     }
   }
 
+  /**
+   * @return the name of the character set for an encoding or its alias, the default encoding of the platform if none
+   *         is given
+   */
+  private static String getCanonicalEncoding( String encoding ) {
+    if ( Const.isEmpty( encoding ) ) {
+      return Charset.defaultCharset().name();
+    }
+    try {
+      return Charset.forName( encoding ).name();
+    } catch ( Exception e ) {
+      return encoding; // an unknown encoding fails once the data is converted
+    }
+  }
+
   /**
    * @return the trimType
    */
@@ -4036,6 +4059,7 @@ public class ValueMetaBase implements ValueMetaInterface {
   @Override
   public void setTrimType( int trimType ) {
     this.trimType = trimType;
+    compareStorageAndActualFormat();
   }
 
   public static final int getTrimTypeByCode( String tt ) {
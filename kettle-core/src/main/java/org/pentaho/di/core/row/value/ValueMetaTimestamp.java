@@ -513,7 +513,7 @@ public class ValueMetaTimestamp extends ValueMetaDate {
       return null;
     }
 
-    if ( isStorageBinaryString() && identicalFormat ) {
+    if ( isBinaryStringPassthrough() ) {
       return (byte[]) object; // shortcut it directly for better performance.
     }
 
@@ -0,0 +1,160 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2015 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.core;
+
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMeta;
+import org.pentaho.di.core.row.ValueMetaInterface;
+
+/**
+ * Test class for the basic functionality of the lock-free ring buffer row set.
+ */
+public class RingBufferRowSetTest extends TestCase {
+  public RowMetaInterface createRowMetaInterface() {
+    RowMetaInterface rm = new RowMeta();
+
+    ValueMetaInterface[] valuesMeta = { new ValueMeta( "ROWNR", ValueMeta.TYPE_INTEGER ), };
+
+    for ( int i = 0; i < valuesMeta.length; i++ ) {
+      rm.addValueMeta( valuesMeta[i] );
+    }
+
+    return rm;
+  }
+
+  /**
+   * The basic stuff.
+   */
+  public void testBasicCreation() {
+    RowSet set = new RingBufferRowSet( 10 );
+
+    assertTrue( !set.isDone() );
+    assertEquals( 0, set.size() );
+  }
+
+  /**
+   * Functionality test: fill the buffer up to its capacity, check the order and the timeouts.
+   */
+  public void testFuntionality1() {
+    RowSet set = new RingBufferRowSet( 4 );
+
+    RowMetaInterface rm = createRowMetaInterface();
+
+    assertNull( set.getRowImmediate() );
+    assertNull( set.getRowWait( 1, TimeUnit.MILLISECONDS ) );
+
+    for ( int i = 0; i < 4; i++ ) {
+      assertTrue( set.putRowWait( rm, new Object[] { new Long( i ) }, 1, TimeUnit.MILLISECONDS ) );
+      assertEquals( i + 1, set.size() );
+    }
+    assertSame( rm, set.getRowMeta() );
+
+    // The buffer is full, this one has to time out
+    //
+    assertFalse( set.putRowWait( rm, new Object[] { new Long( 4 ) }, 1, TimeUnit.MILLISECONDS ) );
+    assertEquals( 4, set.size() );
+
+    for ( int i = 0; i < 4; i++ ) {
+      Object[] r = set.getRowImmediate();
+      assertNotNull( r );
+      assertEquals( new Long( i ), r[0] );
+    }
+    assertEquals( 0, set.size() );
+    assertNull( set.getRowImmediate() );
+
+    set.setDone();
+    assertTrue( set.isDone() );
+  }
+
+  /**
+   * The capacity is rounded up to the next power of two.
+   */
+  public void testCapacityRoundedUp() {
+    RowSet set = new RingBufferRowSet( 3 );
+    RowMetaInterface rm = createRowMetaInterface();
+
+    for ( int i = 0; i < 4; i++ ) {
+      assertTrue( set.putRowWait( rm, new Object[] { new Long( i ) }, 1, TimeUnit.MILLISECONDS ) );
+    }
+    assertFalse( set.putRowWait( rm, new Object[] { new Long( 4 ) }, 1, TimeUnit.MILLISECONDS ) );
+  }
+
+  public void testClear() {
+    RowSet set = new RingBufferRowSet( 4 );
+    RowMetaInterface rm = createRowMetaInterface();
+
+    set.putRow( rm, new Object[] { new Long( 1 ) } );
+    set.putRow( rm, new Object[] { new Long( 2 ) } );
+    set.setDone();
+
+    set.clear();
+    assertEquals( 0, set.size() );
+    assertFalse( set.isDone() );
+    assertNull( set.getRowImmediate() );
+
+    set.putRow( rm, new Object[] { new Long( 3 ) } );
+    assertEquals( new Long( 3 ), set.getRowImmediate()[0] );
+  }
+
+  /**
+   * Hand over a lot of rows between two threads and verify that none are lost or re-ordered.
+   */
+  public void testProducerConsumer() throws Exception {
+    final RowSet set = new RingBufferRowSet( 16 );
+    final RowMetaInterface rm = createRowMetaInterface();
+    final long nrRows = 100000;
+
+    Thread producer = new Thread( new Runnable() {
+      public void run() {
+        for ( long i = 0; i < nrRows; i++ ) {
+          Object[] row = new Object[] { new Long( i ) };
+          while ( !set.putRow( rm, row ) ) {
+            // retry
+          }
+        }
+        set.setDone();
+      }
+    } );
+    producer.start();
+
+    long expected = 0;
+    while ( true ) {
+      Object[] row = set.getRow();
+      if ( row == null ) {
+        if ( set.isDone() && set.size() == 0 ) {
+          break;
+        }
+        continue;
+      }
+      assertEquals( new Long( expected++ ), row[0] );
+    }
+    producer.join();
+
+    assertEquals( nrRows, expected );
+  }
+}
@@ -0,0 +1,131 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2015 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.core.cache;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.pentaho.di.core.exception.KettleException;
+
+public class LookupCacheManagerTest {
+
+  private final LookupCacheManager manager = LookupCacheManager.getInstance();
+
+  @Test
+  public void testSharedAndReferenceCounted() {
+    LookupCache<String, String> first = manager.acquire( "test-shared", 0, 0 );
+    LookupCache<String, String> second = manager.acquire( "test-shared", 100, 0 );
+    assertSame( first, second );
+    assertEquals( 2, first.getReferenceCount() );
+    assertEquals( 0, second.getMaximumSize() );
+
+    first.put( "key", "value" );
+    assertEquals( "value", second.get( "key" ) );
+    assertNull( second.get( "other" ) );
+    assertEquals( 1, first.getHitCount() );
+    assertEquals( 1, first.getMissCount() );
+
+    manager.release( first );
+    assertSame( first, manager.getCache( "test-shared" ) );
+    manager.release( second );
+    assertNull( manager.getCache( "test-shared" ) );
+    assertEquals( 0, first.size() );
+
+    // Releasing too often doesn't hurt
+    //
+    manager.release( first );
+    assertEquals( 0, first.getReferenceCount() );
+  }
+
+  @Test
+  public void testLeastRecentlyUsedEviction() {
+    LookupCache<Integer, Integer> cache = manager.acquire( "test-lru", 100, 0 );
+    try {
+      for ( int i = 0; i < 1000; i++ ) {
+        cache.put( i, i );
+        // Keep the first key in use
+        assertEquals( Integer.valueOf( 0 ), cache.get( 0 ) );
+      }
+      assertTrue( cache.size() <= 100 );
+      assertEquals( 1000 - cache.size(), cache.getEvictionCount() );
+      assertEquals( Integer.valueOf( 999 ), cache.peek( 999 ) );
+      assertNull( cache.peek( 1 ) );
+    } finally {
+      manager.release( cache );
+    }
+  }
+
+  @Test
+  public void testTimeToLive() throws Exception {
+    LookupCache<String, String> cache = manager.acquire( "test-ttl", 0, 50 );
+    try {
+      cache.put( "key", "value" );
+      assertEquals( "value", cache.get( "key" ) );
+      Thread.sleep( 100 );
+      assertNull( cache.get( "key" ) );
+    } finally {
+      manager.release( cache );
+    }
+  }
+
+  @Test
+  public void testLoadOnce() throws Exception {
+    final LookupCache<String, String> cache = manager.acquire( "test-load", 0, 0 );
+    final AtomicInteger loads = new AtomicInteger();
+    final LookupCache.Loader loader = new LookupCache.Loader() {
+      public void load() throws KettleException {
+        loads.incrementAndGet();
+        cache.put( "key", "value" );
+      }
+    };
+    try {
+      Thread[] threads = new Thread[4];
+      for ( int i = 0; i < threads.length; i++ ) {
+        threads[i] = new Thread( new Runnable() {
+          public void run() {
+            try {
+              cache.loadOnce( loader );
+            } catch ( KettleException e ) {
+              throw new RuntimeException( e );
+            }
+          }
+        } );
+        threads[i].start();
+      }
+      for ( Thread thread : threads ) {
+        thread.join();
+      }
+      assertEquals( 1, loads.get() );
+      assertTrue( cache.isLoaded() );
+      assertFalse( cache.loadOnce( loader ) );
+
+      cache.clear();
+      assertTrue( cache.loadOnce( loader ) );
+      assertEquals( 2, loads.get() );
+    } finally {
+      manager.release( cache );
+    }
+  }
+}
@@ -34,11 +34,16 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.pentaho.di.core.KettleClientEnvironment;
 import org.pentaho.di.core.exception.KettleDatabaseBatchException;
 import org.pentaho.di.core.exception.KettleDatabaseException;
@@ -46,8 +51,11 @@ import org.pentaho.di.core.logging.LogLevel;
 import org.pentaho.di.core.logging.LoggingObjectInterface;
 import org.pentaho.di.core.logging.LoggingObjectType;
 import org.pentaho.di.core.logging.SimpleLoggingObject;
+import org.pentaho.di.core.row.RowMeta;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaString;
 import org.pentaho.di.core.variables.VariableSpace;
 
 import javax.sql.DataSource;
@@ -435,6 +443,111 @@ public class DatabaseUnitTest {
     assertEquals( ValueMetaInterface.STORAGE_TYPE_BINARY_STRING, valueMeta.getStorageType() );
   }
 
+  @Test
+  public void insertRowsAreSentSeveralAtATime() throws Exception {
+    Map<String, PreparedStatement> statements = new HashMap<String, PreparedStatement>();
+    Database db = createMultiRowInsertDatabase( statements, false );
+    RowMetaInterface rowMeta = createInsertRowMeta();
+    String sql = db.getInsertStatement( "test", rowMeta );
+    PreparedStatement ps = db.prepareSQL( sql );
+
+    for ( long i = 0; i < 7; i++ ) {
+      db.setValues( rowMeta, new Object[] { i, "row " + i }, ps );
+      db.insertRow( ps, true, false );
+    }
+    verify( ps, never() ).addBatch();
+
+    // 6 parameters allowed: two statements of 3 rows were sent
+    String threeRowSQL = MultiRowInsert.getMultiRowSQL( sql, 2, 3 );
+    assertEquals( sql + ", ( ?,  ?), ( ?,  ?)", threeRowSQL );
+    PreparedStatement threeRows = statements.get( threeRowSQL );
+    verify( threeRows, times( 2 ) ).executeUpdate();
+    verify( threeRows ).setLong( 5, 2L );
+    verify( threeRows ).setLong( 5, 5L );
+
+    // The last row is sent with a statement of its own
+    db.executeBatch( ps );
+    PreparedStatement oneRow = statements.get( sql );
+    assertNotSame( ps, oneRow );
+    verify( oneRow ).setString( 2, "row 6" );
+    verify( oneRow ).executeUpdate();
+    verify( ps, never() ).executeBatch();
+
+    db.commit();
+    verify( threeRows, times( 2 ) ).executeUpdate();
+    verify( oneRow ).executeUpdate();
+
+    db.closePreparedStatement( ps );
+    verify( threeRows ).close();
+    verify( oneRow ).close();
+  }
+
+  @Test
+  public void failedMultiRowInsertReportsTheRowsOfTheTransaction() throws Exception {
+    Map<String, PreparedStatement> statements = new HashMap<String, PreparedStatement>();
+    Database db = createMultiRowInsertDatabase( statements, true );
+    RowMetaInterface rowMeta = createInsertRowMeta();
+    String sql = db.getInsertStatement( "test", rowMeta );
+    PreparedStatement ps = db.prepareSQL( sql );
+
+    try {
+      for ( long i = 0; i < 6; i++ ) {
+        db.setValues( rowMeta, new Object[] { i, "row " + i }, ps );
+        db.insertRow( ps, true, false );
+      }
+      fail( "The second statement should fail" );
+    } catch ( KettleDatabaseBatchException e ) {
+      int failed = Statement.EXECUTE_FAILED;
+      assertArrayEquals( new int[] { 1, 1, 1, failed, failed, failed }, e.getUpdateCounts() );
+    }
+
+    // Rows that were not sent yet are gone after a rollback
+    db.setValues( rowMeta, new Object[] { 6L, "row 6" }, ps );
+    db.insertRow( ps, true, false );
+    db.rollback();
+    db.commit();
+    assertSame( ps, statements.get( sql ) );
+  }
+
+  private Database createMultiRowInsertDatabase( final Map<String, PreparedStatement> statements,
+    final boolean failSecondInsert ) throws Exception {
+    DatabaseMeta dbMeta = new DatabaseMeta();
+    dbMeta.setDatabaseInterface( new H2DatabaseMeta() {
+      @Override
+      public int getMaxMultiRowInsertParameters() {
+        return 6;
+      }
+    } );
+
+    DatabaseMetaData dbMetaData = mock( DatabaseMetaData.class );
+    when( dbMetaData.supportsBatchUpdates() ).thenReturn( true );
+    when( dbMetaData.supportsTransactions() ).thenReturn( true );
+    Connection connection = mockConnection( dbMetaData );
+    when( connection.prepareStatement( anyString() ) ).thenAnswer( new Answer<PreparedStatement>() {
+      @Override
+      public PreparedStatement answer( InvocationOnMock invocation ) throws Throwable {
+        PreparedStatement ps = mock( PreparedStatement.class );
+        if ( failSecondInsert ) {
+          when( ps.executeUpdate() ).thenReturn( 3 ).thenThrow( new SQLException( "duplicate key" ) );
+        }
+        statements.put( (String) invocation.getArguments()[0], ps );
+        return ps;
+      }
+    } );
+
+    Database db = new Database( mockLogger(), dbMeta );
+    db.setConnection( connection );
+    db.setCommit( 100 );
+    return db;
+  }
+
+  private RowMetaInterface createInsertRowMeta() {
+    RowMetaInterface rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaInteger( "id" ) );
+    rowMeta.addValueMeta( new ValueMetaString( "name" ) );
+    return rowMeta;
+  }
+
   private static String concatWordsForRegexp( String... words ) {
     String emptySpace = "\\s*";
     StringBuilder sb = new StringBuilder( emptySpace );
@@ -0,0 +1,178 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2015 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.core.hash;
+
+import static org.junit.Assert.*;
+
+import java.util.Date;
+
+import org.junit.Test;
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaBigNumber;
+import org.pentaho.di.core.row.value.ValueMetaDate;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaNumber;
+import org.pentaho.di.core.row.value.ValueMetaString;
+
+public class BinaryHashIndexTest {
+
+  private static byte[] bytes( String string ) {
+    return string.getBytes();
+  }
+
+  @Test
+  public void testPutAndGet() {
+    // Small blocks so that the entries are spread over many of them
+    //
+    BinaryHashIndex index = new BinaryHashIndex( 0, 1024, false );
+    for ( int i = 0; i < 10000; i++ ) {
+      index.put( bytes( "key" + i ), bytes( "value" + i ) );
+    }
+    index.put( bytes( "key5" ), bytes( "replaced" ) );
+    index.put( bytes( "null" ), null );
+
+    assertEquals( 10001, index.getSize() );
+    assertEquals( "value7777", new String( index.get( bytes( "key7777" ) ) ) );
+    assertEquals( "replaced", new String( index.get( bytes( "key5" ) ) ) );
+    assertNull( index.get( bytes( "key10000" ) ) );
+    assertNull( index.get( bytes( "null" ) ) );
+    assertTrue( index.containsKey( bytes( "null" ) ) );
+    assertFalse( index.containsKey( bytes( "key" ) ) );
+  }
+
+  @Test
+  public void testLargeEntryGetsItsOwnBlock() {
+    BinaryHashIndex index = new BinaryHashIndex( 0, 1024, true );
+    byte[] value = new byte[10000];
+    value[9999] = 42;
+    index.put( bytes( "small" ), bytes( "value" ) );
+    index.put( bytes( "large" ), value );
+    index.put( bytes( "after" ), bytes( "value" ) );
+    assertEquals( 42, index.get( bytes( "large" ) )[9999] );
+    assertEquals( "value", new String( index.get( bytes( "after" ) ) ) );
+  }
+
+  @Test
+  public void testOrderedKeys() throws KettleValueException {
+    RowMetaInterface keyMeta = new RowMeta();
+    keyMeta.addValueMeta( new ValueMetaString( "s" ) );
+    keyMeta.addValueMeta( new ValueMetaInteger( "i" ) );
+    keyMeta.addValueMeta( new ValueMetaNumber( "n" ) );
+    keyMeta.addValueMeta( new ValueMetaDate( "d" ) );
+    OrderedKeyEncoder encoder = new OrderedKeyEncoder( keyMeta );
+
+    Object[][] ordered = new Object[][] {
+      { null, 1L, 1.0, new Date( 0L ) }, { "a", null, 1.0, new Date( 0L ) },
+      { "a", -5L, 1.0, new Date( 0L ) }, { "a", 3L, -2.5, new Date( 0L ) }, { "a", 3L, -0.5, new Date( 0L ) },
+      { "a", 3L, 0.5, new Date( -1000L ) }, { "a", 3L, 0.5, new Date( 1000L ) }, { "ab", 0L, 0.0, null },
+      { "a\u00e9", 0L, 0.0, null }, { "a\uffff", 0L, 0.0, null }, { "b", Long.MIN_VALUE, 0.0, null }, };
+
+    for ( int i = 1; i < ordered.length; i++ ) {
+      assertTrue( "Row " + i, compare( encoder.encode( ordered[i - 1] ), encoder.encode( ordered[i] ) ) < 0 );
+      assertTrue( "Row " + i, keyMeta.compare( ordered[i - 1], ordered[i] ) <= 0 );
+    }
+
+    // The first values are a prefix of the complete key
+    //
+    byte[] prefix = encoder.encode( ordered[4], 2 );
+    byte[] key = encoder.encode( ordered[4] );
+    for ( int i = 0; i < prefix.length; i++ ) {
+      assertEquals( prefix[i], key[i] );
+    }
+  }
+
+  @Test
+  public void testCaseInsensitiveStrings() throws KettleValueException {
+    RowMetaInterface keyMeta = new RowMeta();
+    ValueMetaString string = new ValueMetaString( "s" );
+    string.setCaseInsensitive( true );
+    keyMeta.addValueMeta( string );
+    OrderedKeyEncoder encoder = new OrderedKeyEncoder( keyMeta );
+
+    assertArrayEquals( encoder.encode( new Object[] { "Kettle" } ), encoder.encode( new Object[] { "kETTLE" } ) );
+  }
+
+  @Test
+  public void testUnsupportedTypes() {
+    RowMetaInterface keyMeta = new RowMeta();
+    keyMeta.addValueMeta( new ValueMetaBigNumber( "b" ) );
+    assertFalse( OrderedKeyEncoder.isSupported( keyMeta ) );
+    try {
+      new OrderedKeyEncoder( keyMeta );
+      fail( "BigNumber keys can't be ordered" );
+    } catch ( KettleValueException e ) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testFloor() throws KettleValueException {
+    RowMetaInterface keyMeta = new RowMeta();
+    keyMeta.addValueMeta( new ValueMetaString( "code" ) );
+    keyMeta.addValueMeta( new ValueMetaDate( "valid_from" ) );
+    OrderedKeyEncoder encoder = new OrderedKeyEncoder( keyMeta );
+
+    BinaryHashIndex index = new BinaryHashIndex();
+    for ( int code = 0; code < 100; code++ ) {
+      for ( long from = 0; from < 50; from++ ) {
+        Object[] key = new Object[] { "C" + code, new Date( from * 1000L ) };
+        index.put( encoder.encode( key ), bytes( code + "/" + from ) );
+      }
+    }
+
+    assertEquals( "12/7", floor( index, encoder, "C12", 7500L ) );
+    assertEquals( "12/7", floor( index, encoder, "C12", 7000L ) );
+    assertEquals( "12/49", floor( index, encoder, "C12", 1000000L ) );
+    assertEquals( "99/0", floor( index, encoder, "C99", 0L ) );
+
+    // Lower than the first value or a code that doesn't exist
+    //
+    assertNull( floor( index, encoder, "C12", -1L ) );
+    assertNull( floor( index, encoder, "C120", 7000L ) );
+    assertNull( floor( index, encoder, "C", 7000L ) );
+
+    // Adding an entry invalidates the sorted list
+    //
+    index.put( encoder.encode( new Object[] { "C12", new Date( 7200L ) } ), bytes( "new" ) );
+    assertEquals( "new", floor( index, encoder, "C12", 7500L ) );
+  }
+
+  private static String floor( BinaryHashIndex index, OrderedKeyEncoder encoder, String code, long date )
+    throws KettleValueException {
+    Object[] key = new Object[] { code, new Date( date ) };
+    byte[] value = index.floor( encoder.encode( key ), encoder.encode( key, 1 ).length );
+    return value == null ? null : new String( value );
+  }
+
+  private static int compare( byte[] one, byte[] two ) {
+    for ( int i = 0; i < Math.min( one.length, two.length ); i++ ) {
+      int cmp = ( one[i] & 0xFF ) - ( two[i] & 0xFF );
+      if ( cmp != 0 ) {
+        return cmp;
+      }
+    }
+    return one.length - two.length;
+  }
+}
@@ -0,0 +1,260 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2015 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.core.row;
+
+import java.sql.Timestamp;
+import java.util.Date;
+
+import junit.framework.TestCase;
+
+/**
+ * Test class for the column oriented row batches.
+ */
+public class RowBatchTest extends TestCase {
+
+  private RowMetaInterface createRowMeta() {
+    RowMetaInterface rm = new RowMeta();
+    rm.addValueMeta( new ValueMeta( "id", ValueMetaInterface.TYPE_INTEGER ) );
+    rm.addValueMeta( new ValueMeta( "amount", ValueMetaInterface.TYPE_NUMBER ) );
+    rm.addValueMeta( new ValueMeta( "name", ValueMetaInterface.TYPE_STRING ) );
+    rm.addValueMeta( new ValueMeta( "flag", ValueMetaInterface.TYPE_BOOLEAN ) );
+    rm.addValueMeta( new ValueMeta( "date", ValueMetaInterface.TYPE_DATE ) );
+    return rm;
+  }
+
+  private Object[] createRow( long id ) {
+    return new Object[] {
+      Long.valueOf( id ), Double.valueOf( id / 2.0 ), "name" + id, Boolean.valueOf( id % 2 == 0 ), new Date( id ), };
+  }
+
+  public void testKinds() {
+    RowBatch batch = new RowBatch( createRowMeta(), 4 );
+    assertEquals( RowBatch.KIND_LONG, batch.getKind( 0 ) );
+    assertEquals( RowBatch.KIND_DOUBLE, batch.getKind( 1 ) );
+    assertEquals( RowBatch.KIND_OBJECT, batch.getKind( 2 ) );
+    assertEquals( RowBatch.KIND_BOOLEAN, batch.getKind( 3 ) );
+    assertEquals( RowBatch.KIND_DATE, batch.getKind( 4 ) );
+
+    ValueMetaInterface binaryString = new ValueMeta( "lazy", ValueMetaInterface.TYPE_INTEGER );
+    binaryString.setStorageType( ValueMetaInterface.STORAGE_TYPE_BINARY_STRING );
+    assertEquals( RowBatch.KIND_OBJECT, RowBatch.getKind( binaryString ) );
+  }
+
+  public void testAddAndGet() {
+    RowBatch batch = new RowBatch( createRowMeta(), 4 );
+    assertTrue( batch.isEmpty() );
+
+    Object[] row0 = createRow( 10L );
+    Object[] row1 = new Object[] { null, null, null, null, null };
+    assertEquals( 0, batch.addRow( row0 ) );
+    assertEquals( 1, batch.addRow( row1 ) );
+    assertEquals( 2, batch.size() );
+    assertFalse( batch.isFull() );
+
+    // Unmodified rows are handed back as-is
+    //
+    assertSame( row0, batch.getRow( 0 ) );
+    assertSame( row1, batch.getRow( 1 ) );
+
+    assertEquals( 10L, batch.getLong( 0, 0 ) );
+    assertEquals( 5.0, batch.getDouble( 1, 0 ), 0.0 );
+    assertEquals( "name10", batch.getObject( 2, 0 ) );
+    assertTrue( batch.getBoolean( 3, 0 ) );
+    assertEquals( new Date( 10L ), batch.getObject( 4, 0 ) );
+    for ( int c = 0; c < 5; c++ ) {
+      assertFalse( batch.isNull( c, 0 ) );
+      assertTrue( batch.isNull( c, 1 ) );
+      assertNull( batch.getObject( c, 1 ) );
+    }
+
+    batch.addRow( createRow( 1L ) );
+    batch.addRow( createRow( 2L ) );
+    assertTrue( batch.isFull() );
+    try {
+      batch.addRow( createRow( 3L ) );
+      fail( "A full batch should not accept more rows" );
+    } catch ( IllegalStateException e ) {
+      // expected
+    }
+  }
+
+  public void testModify() {
+    RowBatch batch = new RowBatch( createRowMeta(), 4 );
+    Object[] row = createRow( 4L );
+    batch.addRow( row );
+
+    batch.setLong( 0, 0, 42L );
+    batch.setNull( 2, 0 );
+
+    Object[] result = batch.getRow( 0 );
+    assertNotSame( row, result );
+    assertEquals( Long.valueOf( 42L ), result[0] );
+    assertEquals( Double.valueOf( 2.0 ), result[1] );
+    assertNull( result[2] );
+    assertEquals( Boolean.TRUE, result[3] );
+    assertEquals( new Date( 4L ), result[4] );
+
+    // The original row is left alone
+    //
+    assertEquals( Long.valueOf( 4L ), row[0] );
+  }
+
+  public void testSelect() {
+    RowMetaInterface rowMeta = createRowMeta();
+    RowBatch batch = new RowBatch( rowMeta, 8 );
+    for ( int i = 0; i < 5; i++ ) {
+      batch.addRow( createRow( i ) );
+    }
+
+    RowMetaInterface selectedMeta = new RowMeta();
+    selectedMeta.addValueMeta( rowMeta.getValueMeta( 2 ) );
+    selectedMeta.addValueMeta( rowMeta.getValueMeta( 0 ) );
+    RowBatch selected = batch.select( new int[] { 2, 0 }, selectedMeta );
+
+    assertEquals( 5, selected.size() );
+    assertSame( selectedMeta, selected.getRowMeta() );
+    for ( int i = 0; i < 5; i++ ) {
+      Object[] row = selected.getRow( i );
+      assertEquals( "name" + i, row[0] );
+      assertEquals( Long.valueOf( i ), row[1] );
+    }
+  }
+
+  public void testSelectIsIndependentOfSource() {
+    RowMetaInterface rowMeta = createRowMeta();
+    RowBatch batch = new RowBatch( rowMeta, 8 );
+    for ( int i = 0; i < 4; i++ ) {
+      batch.addRow( createRow( i ) );
+    }
+
+    // Select the id column twice
+    //
+    RowMetaInterface selectedMeta = new RowMeta();
+    selectedMeta.addValueMeta( rowMeta.getValueMeta( 0 ) );
+    selectedMeta.addValueMeta( rowMeta.getValueMeta( 0 ).clone() );
+    RowBatch selected = batch.select( new int[] { 0, 0 }, selectedMeta );
+
+    // Changing, compacting and re-using the source doesn't affect the selection
+    //
+    batch.setLong( 0, 1, 100L );
+    batch.setNull( 0, 2 );
+    batch.compact( new boolean[] { false, true, true, true } );
+    batch.clear();
+    batch.addRow( createRow( 50L ) );
+    batch.getLong( 0, 0 );
+
+    for ( int i = 0; i < 4; i++ ) {
+      assertEquals( i, selected.getLong( 0, i ) );
+      assertEquals( i, selected.getLong( 1, i ) );
+      assertFalse( selected.isNull( 0, i ) );
+    }
+
+    // Changing a column of the selection doesn't affect the other copy of the same source column
+    //
+    selected.setLong( 0, 3, 42L );
+    selected.setNull( 1, 0 );
+    assertEquals( 42L, selected.getLong( 0, 3 ) );
+    assertEquals( 3L, selected.getLong( 1, 3 ) );
+    assertFalse( selected.isNull( 0, 0 ) );
+    assertTrue( selected.isNull( 1, 0 ) );
+    assertEquals( 50L, batch.getLong( 0, 0 ) );
+  }
+
+  public void testColumnArrays() {
+    RowBatch batch = new RowBatch( createRowMeta(), 4 );
+    batch.addRow( createRow( 4L ) );
+    batch.addRow( new Object[] { null, null, null, null, null } );
+
+    long[] ids = batch.getLongs( 0 );
+    double[] amounts = batch.getDoubles( 1 );
+    boolean[] flags = batch.getBooleans( 3 );
+    long[] nulls = batch.getNulls( 0 );
+    assertEquals( 4L, ids[0] );
+    assertEquals( 2.0, amounts[0], 0.0 );
+    assertTrue( flags[0] );
+    assertEquals( 4L, batch.getLongs( 4 )[0] );
+    assertFalse( RowBatch.isNull( nulls, 0 ) );
+    assertTrue( RowBatch.isNull( nulls, 1 ) );
+  }
+
+  public void testCompact() {
+    RowBatch batch = new RowBatch( createRowMeta(), 8 );
+    Object[][] rows = new Object[6][];
+    for ( int i = 0; i < rows.length; i++ ) {
+      rows[i] = createRow( i );
+      batch.addRow( rows[i] );
+    }
+    boolean[] selection = new boolean[] { true, false, false, true, false, true };
+    assertEquals( 3, batch.compact( selection ) );
+    assertEquals( 3, batch.size() );
+    assertSame( rows[0], batch.getRow( 0 ) );
+    assertSame( rows[3], batch.getRow( 1 ) );
+    assertSame( rows[5], batch.getRow( 2 ) );
+
+    // Compact after the columns were decoded
+    //
+    assertEquals( 3L, batch.getLong( 0, 1 ) );
+    assertEquals( 1, batch.compact( new boolean[] { false, false, true } ) );
+    assertEquals( 5L, batch.getLong( 0, 0 ) );
+    assertEquals( "name5", batch.getObject( 2, 0 ) );
+  }
+
+  public void testCopyAndClear() {
+    RowBatch source = new RowBatch( createRowMeta(), 4 );
+    source.addRow( createRow( 7L ) );
+    source.setDouble( 1, 0, 1.5 );
+
+    RowBatch target = new RowBatch( createRowMeta(), 4 );
+    assertEquals( 0, target.addRow( source, 0 ) );
+    assertEquals( 7L, target.getLong( 0, 0 ) );
+    assertEquals( 1.5, target.getDouble( 1, 0 ), 0.0 );
+
+    target.clear();
+    assertTrue( target.isEmpty() );
+    assertEquals( 4, target.getCapacity() );
+  }
+
+  public void testTimestampInDateColumn() {
+    Timestamp timestamp = new Timestamp( 1000L );
+    timestamp.setNanos( 123456789 );
+    Object[] row = createRow( 3L );
+    row[4] = timestamp;
+
+    RowBatch batch = new RowBatch( createRowMeta(), 4 );
+    batch.addRow( row );
+    batch.setLong( 0, 0, 42L );
+    assertEquals( 1123L, batch.getLong( 4, 0 ) );
+
+    // A modified row keeps the timestamp with its nanoseconds, also when it is copied
+    //
+    assertSame( timestamp, batch.getRow( 0 )[4] );
+    RowBatch target = new RowBatch( createRowMeta(), 4 );
+    target.addRow( batch, 0 );
+    assertSame( timestamp, target.getObject( 4, 0 ) );
+
+    // A date changed as milliseconds is a plain date again
+    //
+    batch.setLong( 4, 0, 5L );
+    assertEquals( new Date( 5L ), batch.getObject( 4, 0 ) );
+  }
+}
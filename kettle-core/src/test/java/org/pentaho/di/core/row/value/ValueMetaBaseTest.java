@@ -27,6 +27,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
@@ -524,6 +525,39 @@ public class ValueMetaBaseTest {
     assertEquals( local( 1918, 3, 25, 0, 0, 0, 0 ), dateMeta.convertStringToDate( "1918-03-25  \n" ) );
   }
 
+  @Test
+  public void testBinaryStringPassthrough() throws Exception {
+    ValueMetaBase storageMeta = new ValueMetaBase( "number", TYPE_STRING );
+    storageMeta.setStringEncoding( "UTF-8" );
+    ValueMetaBase numberMeta = new ValueMetaBase( "number", TYPE_NUMBER );
+    numberMeta.setStorageType( ValueMetaInterface.STORAGE_TYPE_BINARY_STRING );
+    numberMeta.setConversionMask( "0.00" );
+    storageMeta.setConversionMask( "0.00" );
+    numberMeta.setStorageMetadata( storageMeta );
+
+    // An alias of the same encoding doesn't need a conversion, neither does a different length with the same mask
+    //
+    numberMeta.setStringEncoding( "utf8" );
+    numberMeta.setLength( 10, 2 );
+    assertTrue( numberMeta.isBinaryStringPassthrough() );
+    byte[] bytes = "1.50".getBytes( "UTF-8" );
+    assertSame( bytes, numberMeta.getBinaryString( bytes ) );
+
+    numberMeta.setStringEncoding( "UTF-16" );
+    assertFalse( numberMeta.isBinaryStringPassthrough() );
+    numberMeta.setStringEncoding( "UTF-8" );
+    numberMeta.setConversionMask( "0.0" );
+    assertFalse( numberMeta.isBinaryStringPassthrough() );
+    assertArrayEquals( "1.5".getBytes( "UTF-8" ), numberMeta.getBinaryString( bytes ) );
+
+    ValueMetaBase stringMeta = new ValueMetaBase( "string", TYPE_STRING );
+    stringMeta.setStorageType( ValueMetaInterface.STORAGE_TYPE_BINARY_STRING );
+    stringMeta.setStorageMetadata( new ValueMetaBase( "string", TYPE_STRING ) );
+    assertTrue( stringMeta.isBinaryStringPassthrough() );
+    stringMeta.setTrimType( ValueMetaInterface.TRIM_TYPE_BOTH );
+    assertFalse( stringMeta.isBinaryStringPassthrough() );
+  }
+
   Date local( int year, int month, int dat, int hrs, int min, int sec, int ms ) {
     GregorianCalendar cal = new GregorianCalendar( year, month - 1, dat, hrs, min, sec );
     cal.set( Calendar.MILLISECOND, ms );
@@ -0,0 +1,112 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2015 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.trans;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps approximate counts of the most frequent keys in a stream with a fixed number of counters (the "space saving"
+ * algorithm). A key that isn't counted yet replaces the key with the lowest count and inherits that count as its
+ * possible error, so a key that occurs in more than 1/capacity of the stream is always counted.<br>
+ * <br>
+ * The methods are synchronized, callers are expected to only add a sample of the keys.
+ *
+ * @since 5.4
+ */
+class KeyFrequencySketch {
+
+  private final int capacity;
+  private final Map<Long, long[]> counters; // key --> { count, error }
+  private long total;
+
+  KeyFrequencySketch( int capacity ) {
+    this.capacity = capacity;
+    counters = new HashMap<Long, long[]>();
+  }
+
+  synchronized void add( long key ) {
+    total++;
+
+    long[] counter = counters.get( key );
+    if ( counter != null ) {
+      counter[0]++;
+      return;
+    }
+    if ( counters.size() < capacity ) {
+      counters.put( key, new long[] { 1, 0 } );
+      return;
+    }
+
+    Long minimumKey = null;
+    long minimum = Long.MAX_VALUE;
+    for ( Map.Entry<Long, long[]> entry : counters.entrySet() ) {
+      if ( entry.getValue()[0] < minimum ) {
+        minimum = entry.getValue()[0];
+        minimumKey = entry.getKey();
+      }
+    }
+    counters.remove( minimumKey );
+    counters.put( key, new long[] { minimum + 1, minimum } );
+  }
+
+  /**
+   * @param share
+   *          the minimum share of the keys added, between 0 and 1
+   * @return the keys that were certainly added more often than the given share
+   */
+  synchronized Set<Long> getFrequentKeys( double share ) {
+    Set<Long> keys = new HashSet<Long>();
+    for ( Map.Entry<Long, long[]> entry : counters.entrySet() ) {
+      long[] counter = entry.getValue();
+      if ( counter[0] - counter[1] > share * total ) {
+        keys.add( entry.getKey() );
+      }
+    }
+    return keys;
+  }
+
+  /**
+   * Halves all counts so that recent keys weigh more than keys that were frequent a long time ago.
+   */
+  synchronized void decay() {
+    total /= 2;
+    Iterator<long[]> iterator = counters.values().iterator();
+    while ( iterator.hasNext() ) {
+      long[] counter = iterator.next();
+      counter[0] /= 2;
+      counter[1] /= 2;
+      if ( counter[0] == 0 ) {
+        iterator.remove();
+      }
+    }
+  }
+
+  synchronized long getTotal() {
+    return total;
+  }
+}
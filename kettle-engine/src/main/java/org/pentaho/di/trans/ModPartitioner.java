@@ -63,6 +63,26 @@ public class ModPartitioner extends BasePartitioner {
   public int getPartition( RowMetaInterface rowMeta, Object[] row ) throws KettleException {
     init( rowMeta );
 
+    long value = getPartitionValue( rowMeta, row );
+
+    int targetLocation = (int) ( Math.abs( value ) % nrPartitions );
+
+    return targetLocation;
+  }
+
+  /**
+   * Calculates the number the partition is derived from: the value of an integer field or the hash code of any other
+   * value.
+   *
+   * @param rowMeta
+   *          the row metadata
+   * @param row
+   *          the row data
+   * @return the partitioning value
+   * @throws KettleException
+   *           in case the partitioning field can't be found
+   */
+  protected long getPartitionValue( RowMetaInterface rowMeta, Object[] row ) throws KettleException {
     if ( partitionColumnIndex < 0 ) {
       partitionColumnIndex = rowMeta.indexOfValue( fieldName );
       if ( partitionColumnIndex < 0 ) {
@@ -89,13 +109,7 @@ public class ModPartitioner extends BasePartitioner {
         value = valueMeta.hashCode( valueData );
     }
 
-    /*
-     * value = rowMeta.getInteger(row, partitionColumnIndex);
-     */
-
-    int targetLocation = (int) ( Math.abs( value ) % nrPartitions );
-
-    return targetLocation;
+    return value;
   }
 
   public String getDescription() {
@@ -0,0 +1,252 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2015 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.trans;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.exception.KettleXMLException;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.xml.XMLHandler;
+import org.pentaho.di.repository.ObjectId;
+import org.pentaho.di.repository.Repository;
+import org.w3c.dom.Node;
+
+/**
+ * Partitions like the {@link ModPartitioner} but keeps an eye on the keys that show up most often. A sample of the rows
+ * is counted with a {@link KeyFrequencySketch}. Keys that account for more than half the fair share of a partition are
+ * heavy hitters: a single one of them is enough to keep one step copy or slave busy while the others wait.<br>
+ * <br>
+ * When spreading is enabled, the rows of the heavy hitters are sent to all partitions in turn. That is only correct
+ * when the partitioned step doesn't need all rows of a key together, for example an aggregation whose results are
+ * merged again by a step further down the stream. The other keys always go to the same partition as with the
+ * {@link ModPartitioner}, so lookups that rely on the partitioning keep working. Without spreading the partitioning
+ * isn't changed at all and the skew is only reported.<br>
+ * <br>
+ * The partitioner is shared by all step copies that send rows to the partitioned step.
+ *
+ * @since 5.4
+ */
+public class SkewAwarePartitioner extends ModPartitioner {
+
+  static final int SAMPLE_MASK = 0x0F; // Sample one row out of 16 on average
+  static final int SKETCH_CAPACITY = 64;
+  static final int SAMPLES_PER_ROUND = 1024;
+
+  private boolean spreadingHeavyHitters;
+
+  private final KeyFrequencySketch sketch;
+  private volatile Map<Long, AtomicInteger> heavyHitters;
+  private int random; // Lost updates from other threads only change which rows get sampled
+  private long[] sampledRows;
+  private long heavyHitterSamples;
+
+  public SkewAwarePartitioner() {
+    super();
+    sketch = new KeyFrequencySketch( SKETCH_CAPACITY );
+    heavyHitters = Collections.emptyMap();
+    random = 0x2545F491;
+  }
+
+  public Partitioner getInstance() {
+    Partitioner partitioner = new SkewAwarePartitioner();
+    partitioner.setId( getId() );
+    partitioner.setDescription( getDescription() );
+    return partitioner;
+  }
+
+  public SkewAwarePartitioner clone() {
+    SkewAwarePartitioner partitioner = (SkewAwarePartitioner) super.clone();
+    partitioner.spreadingHeavyHitters = spreadingHeavyHitters;
+
+    return partitioner;
+  }
+
+  public String getDialogClassName() {
+    return "org.pentaho.di.ui.trans.dialog.SkewAwarePartitionerDialog";
+  }
+
+  public int getPartition( RowMetaInterface rowMeta, Object[] row ) throws KettleException {
+    init( rowMeta );
+
+    long value = getPartitionValue( rowMeta, row );
+    int partition = (int) ( Math.abs( value ) % nrPartitions );
+
+    boolean heavyHitter = false;
+    Map<Long, AtomicInteger> hitters = heavyHitters;
+    if ( !hitters.isEmpty() ) {
+      AtomicInteger next = hitters.get( value );
+      if ( next != null ) {
+        heavyHitter = true;
+        if ( spreadingHeavyHitters ) {
+          partition = ( partition + ( next.getAndIncrement() & Integer.MAX_VALUE ) % nrPartitions ) % nrPartitions;
+        }
+      }
+    }
+
+    // Pick the samples at random (xorshift) so that sorted or repeating input doesn't fool us
+    //
+    int x = random;
+    x ^= x << 13;
+    x ^= x >>> 17;
+    x ^= x << 5;
+    random = x;
+    if ( ( x & SAMPLE_MASK ) == 0 ) {
+      sample( value, partition, heavyHitter );
+    }
+
+    return partition;
+  }
+
+  private synchronized void sample( long value, int partition, boolean heavyHitter ) {
+    if ( sampledRows == null ) {
+      sampledRows = new long[nrPartitions];
+    }
+    sampledRows[partition]++;
+    if ( heavyHitter ) {
+      heavyHitterSamples++;
+    }
+    if ( nrPartitions < 2 ) {
+      return;
+    }
+
+    sketch.add( value );
+    if ( sketch.getTotal() >= SAMPLES_PER_ROUND ) {
+      // Keep the position in the rotation of the keys that stay heavy
+      //
+      Map<Long, AtomicInteger> hitters = new HashMap<Long, AtomicInteger>();
+      for ( Long key : sketch.getFrequentKeys( 0.5 / nrPartitions ) ) {
+        AtomicInteger next = heavyHitters.get( key );
+        hitters.put( key, next == null ? new AtomicInteger() : next );
+      }
+      heavyHitters = hitters;
+      sketch.decay();
+    }
+  }
+
+  /**
+   * @return the partitioning values of the current heavy hitters
+   */
+  public Set<Long> getHeavyHitters() {
+    return new HashSet<Long>( heavyHitters.keySet() );
+  }
+
+  /**
+   * @return the number of sampled rows that went to each partition or null if no rows were sampled yet
+   */
+  public synchronized long[] getSampledRows() {
+    return sampledRows == null ? null : sampledRows.clone();
+  }
+
+  /**
+   * @return the number of rows of the largest partition divided by the average, 1.0 for perfectly balanced partitions
+   */
+  public synchronized double getSkew() {
+    if ( sampledRows == null ) {
+      return 1.0;
+    }
+    long total = 0;
+    long maximum = 0;
+    for ( long rows : sampledRows ) {
+      total += rows;
+      maximum = Math.max( maximum, rows );
+    }
+    return total == 0 ? 1.0 : (double) maximum * sampledRows.length / total;
+  }
+
+  /**
+   * @return a one line summary of the partition sizes and heavy hitters seen so far
+   */
+  public synchronized String getSkewReport() {
+    StringBuilder report = new StringBuilder( getDescription() );
+    report.append( ": skew " ).append( String.format( "%.2f", getSkew() ) );
+    long total = 0;
+    if ( sampledRows != null ) {
+      report.append( ", sampled rows per partition [" );
+      for ( int i = 0; i < sampledRows.length; i++ ) {
+        report.append( i > 0 ? ", " : "" ).append( sampledRows[i] );
+        total += sampledRows[i];
+      }
+      report.append( "]" );
+    }
+    report.append( ", " ).append( heavyHitters.size() ).append( " heavy hitter(s)" );
+    if ( total > 0 ) {
+      report.append( " with " ).append( heavyHitterSamples * 100 / total ).append( "% of the sampled rows" );
+    }
+    report.append( spreadingHeavyHitters ? ", spread over all partitions" : ", not spread" );
+    return report.toString();
+  }
+
+  public String getDescription() {
+    String description = "Skew aware partitioner";
+    if ( !Const.isEmpty( getFieldName() ) ) {
+      description += "(" + getFieldName() + ")";
+    }
+    return description;
+  }
+
+  public String getXML() {
+    StringBuilder xml = new StringBuilder( super.getXML() );
+    xml.append( "           " ).append(
+      XMLHandler.addTagValue( "spread_heavy_hitters", spreadingHeavyHitters ) );
+    return xml.toString();
+  }
+
+  public void loadXML( Node partitioningMethodNode ) throws KettleXMLException {
+    super.loadXML( partitioningMethodNode );
+    spreadingHeavyHitters =
+      "Y".equalsIgnoreCase( XMLHandler.getTagValue( partitioningMethodNode, "spread_heavy_hitters" ) );
+  }
+
+  public void saveRep( Repository rep, ObjectId id_transformation, ObjectId id_step ) throws KettleException {
+    super.saveRep( rep, id_transformation, id_step );
+    rep.saveStepAttribute( id_transformation, id_step, "PARTITIONING_SPREAD_HEAVY_HITTERS", spreadingHeavyHitters );
+  }
+
+  public void loadRep( Repository rep, ObjectId id_step ) throws KettleException {
+    super.loadRep( rep, id_step );
+    spreadingHeavyHitters = rep.getStepAttributeBoolean( id_step, "PARTITIONING_SPREAD_HEAVY_HITTERS" );
+  }
+
+  /**
+   * @return true if the rows of heavy hitters are spread over all partitions
+   */
+  public boolean isSpreadingHeavyHitters() {
+    return spreadingHeavyHitters;
+  }
+
+  /**
+   * @param spreadingHeavyHitters
+   *          true to spread the rows of heavy hitters over all partitions, only when the partitioned step tolerates it
+   */
+  public void setSpreadingHeavyHitters( boolean spreadingHeavyHitters ) {
+    this.spreadingHeavyHitters = spreadingHeavyHitters;
+  }
+}
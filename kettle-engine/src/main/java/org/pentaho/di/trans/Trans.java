@@ -34,10 +34,12 @@ import java.util.Comparator;
 import java.util.Date;
 import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.ArrayBlockingQueue;
@@ -67,6 +69,7 @@ import org.pentaho.di.core.KettleEnvironment;
 import org.pentaho.di.core.QueueRowSet;
 import org.pentaho.di.core.Result;
 import org.pentaho.di.core.ResultFile;
+import org.pentaho.di.core.RingBufferRowSet;
 import org.pentaho.di.core.RowMetaAndData;
 import org.pentaho.di.core.RowSet;
 import org.pentaho.di.core.SingleRowRowSet;
@@ -127,15 +130,18 @@ import org.pentaho.di.trans.cluster.TransSplitter;
 import org.pentaho.di.trans.performance.StepPerformanceSnapShot;
 import org.pentaho.di.trans.step.BaseStep;
 import org.pentaho.di.trans.step.BaseStepData.StepExecutionStatus;
+import org.pentaho.di.trans.step.FusedRunThread;
 import org.pentaho.di.trans.step.RunThread;
 import org.pentaho.di.trans.step.StepAdapter;
 import org.pentaho.di.trans.step.StepDataInterface;
+import org.pentaho.di.trans.step.StepFusion;
 import org.pentaho.di.trans.step.StepInitThread;
 import org.pentaho.di.trans.step.StepInterface;
 import org.pentaho.di.trans.step.StepListener;
 import org.pentaho.di.trans.step.StepMeta;
 import org.pentaho.di.trans.step.StepMetaDataCombi;
 import org.pentaho.di.trans.step.StepPartitioningMeta;
+import org.pentaho.di.trans.step.StepScheduler;
 import org.pentaho.di.trans.steps.mappinginput.MappingInput;
 import org.pentaho.di.trans.steps.mappingoutput.MappingOutput;
 import org.pentaho.di.www.AddExportServlet;
@@ -792,8 +798,16 @@ public class Trans implements VariableSpace, NamedParams, HasLogChannelInterface
                 //
                 Boolean batchingRowSet =
                   ValueMeta.convertStringToBoolean( System.getProperty( Const.KETTLE_BATCHING_ROWSET ) );
+                // The ring buffer row set can be switched on per transformation with a variable or parameter
+                //
+                Boolean ringBufferRowSet =
+                  ValueMeta.convertStringToBoolean( getVariable( Const.KETTLE_RING_BUFFER_ROWSET ) );
                 if ( batchingRowSet != null && batchingRowSet.booleanValue() ) {
                   rowSet = new BlockingBatchingRowSet( transMeta.getSizeRowset() );
+                } else if ( ringBufferRowSet != null && ringBufferRowSet.booleanValue() ) {
+                  // Every row set in here connects exactly one source copy with one target copy
+                  //
+                  rowSet = new RingBufferRowSet( transMeta.getSizeRowset() );
                 } else {
                   rowSet = new BlockingRowSet( transMeta.getSizeRowset() );
                 }
@@ -1348,13 +1362,21 @@ public class Trans implements VariableSpace, NamedParams, HasLogChannelInterface
     switch ( transMeta.getTransformationType() ) {
       case Normal:
 
-        // Now start all the threads...
+        // Now start all the threads, or hand the step copies to the shared worker pool
         //
+        boolean pooled = StepScheduler.isEnabled( this );
+        List<List<StepMetaDataCombi>> chains = new ArrayList<List<StepMetaDataCombi>>();
+        Set<StepInterface> fused = new HashSet<StepInterface>();
+        if ( !pooled && StepFusion.isEnabled( this ) ) {
+          chains = StepFusion.fuse( steps, rowsets );
+          for ( List<StepMetaDataCombi> chain : chains ) {
+            for ( StepMetaDataCombi combi : chain ) {
+              fused.add( combi.step );
+            }
+          }
+        }
         for ( int i = 0; i < steps.size(); i++ ) {
           final StepMetaDataCombi combi = steps.get( i );
-          RunThread runThread = new RunThread( combi );
-          Thread thread = new Thread( runThread );
-          thread.setName( getName() + " - " + combi.stepname );
           ExtensionPointHandler.callExtensionPoint( log, KettleExtensionPoint.StepBeforeStart.id, combi );
           // Call an extension point at the end of the step
           //
@@ -1371,8 +1393,31 @@ public class Trans implements VariableSpace, NamedParams, HasLogChannelInterface
 
           } );
 
+          if ( !pooled && !fused.contains( combi.step ) ) {
+            RunThread runThread = new RunThread( combi );
+            Thread thread = new Thread( runThread );
+            thread.setName( getName() + " - " + combi.stepname );
+            thread.start();
+          }
+        }
+        for ( List<StepMetaDataCombi> chain : chains ) {
+          FusedRunThread runThread = new FusedRunThread( chain );
+          Thread thread = new Thread( runThread );
+          thread.setName( getName() + " - " + runThread.getName() );
           thread.start();
         }
+        if ( !chains.isEmpty() && log.isDetailed() ) {
+          log.logDetailed( BaseMessages.getString( PKG, "Trans.Log.StepsFused", String.valueOf( fused.size() ),
+            String.valueOf( chains.size() ) ) );
+        }
+        if ( pooled ) {
+          StepScheduler scheduler = StepScheduler.getInstance();
+          scheduler.schedule( steps, rowsets, transMeta.getSizeRowset() );
+          if ( log.isDetailed() ) {
+            log.logDetailed( BaseMessages.getString( PKG, "Trans.Log.StepsScheduled", String.valueOf( steps.size() ),
+              String.valueOf( scheduler.getNrWorkers() ) ) );
+          }
+        }
         break;
 
       case SerialSingleThreaded:
@@ -0,0 +1,83 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2015 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.compiler;
+
+import org.pentaho.di.core.Condition;
+import org.pentaho.di.core.row.RowMetaInterface;
+
+/**
+ * The base class of the code generated for a {@link Condition} by the {@link ConditionCompiler}. The parts of the
+ * condition that could not be compiled are still evaluated by the condition itself.
+ *
+ * @since 5.4
+ */
+public abstract class CompiledCondition {
+
+  private Condition[] interpreted;
+  private RowMetaInterface rowMeta;
+  private int nrCompiled;
+
+  /**
+   * Evaluates the condition for a row of the row layout it was compiled for.
+   *
+   * @param r
+   *          the row data
+   * @return true if the row meets the condition
+   */
+  public abstract boolean evaluate( Object[] r );
+
+  /**
+   * Evaluates a part of the condition that was not compiled.
+   */
+  protected boolean interpret( int nr, Object[] r ) {
+    return interpreted[nr].evaluate( rowMeta, r );
+  }
+
+  protected static int compare( long one, long two ) {
+    return one < two ? -1 : ( one == two ? 0 : 1 );
+  }
+
+  protected static int compare( boolean one, boolean two ) {
+    return one == two ? 0 : ( one ? 1 : -1 );
+  }
+
+  void setInterpreted( Condition[] interpreted, RowMetaInterface rowMeta, int nrCompiled ) {
+    this.interpreted = interpreted;
+    this.rowMeta = rowMeta;
+    this.nrCompiled = nrCompiled;
+  }
+
+  /**
+   * @return the number of simple conditions that were compiled
+   */
+  public int getNrCompiled() {
+    return nrCompiled;
+  }
+
+  /**
+   * @return the number of simple conditions that are interpreted
+   */
+  public int getNrInterpreted() {
+    return interpreted.length;
+  }
+}
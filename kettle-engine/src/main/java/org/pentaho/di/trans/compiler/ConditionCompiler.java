@@ -0,0 +1,447 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2015 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.compiler;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.pentaho.di.core.Condition;
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaAndData;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaBase;
+
+/**
+ * Generates the Java code of a {@link Condition} for a given row layout. Every simple condition on a plain field (see
+ * {@link ExpressionCompiler#isPlain(ValueMetaInterface)}) compared with a constant or with a field of the same type
+ * becomes a method that works on the data directly: the field positions are known, constants are converted once and
+ * patterns are compiled once. The other simple conditions are evaluated by the Condition itself, so the compiled code
+ * always gives the same result as {@link Condition#evaluate(RowMetaInterface, Object[])}.
+ *
+ * @since 5.4
+ */
+public class ConditionCompiler {
+
+  private final RowMetaInterface rowMeta;
+  private final StringBuilder fields;
+  private final StringBuilder methods;
+  private final List<Condition> interpreted;
+  private int nrCompiled;
+  private int nrNames;
+
+  private ConditionCompiler( RowMetaInterface rowMeta ) {
+    this.rowMeta = rowMeta;
+    fields = new StringBuilder();
+    methods = new StringBuilder();
+    interpreted = new ArrayList<Condition>();
+  }
+
+  /**
+   * Compiles a condition for rows with the given layout.
+   *
+   * @param condition
+   *          the condition to compile
+   * @param rowMeta
+   *          the layout of the rows the condition is evaluated on
+   * @return the compiled condition or null if no part of the condition can be compiled
+   * @throws KettleException
+   *           in case the generated code doesn't compile
+   */
+  public static CompiledCondition compile( Condition condition, RowMetaInterface rowMeta ) throws KettleException {
+    ConditionCompiler compiler = new ConditionCompiler( rowMeta );
+    String expression = compiler.getExpression( condition );
+    if ( compiler.nrCompiled == 0 ) {
+      return null;
+    }
+
+    String classBody =
+      compiler.fields + "public boolean evaluate( Object[] r ) {\n  return " + expression + ";\n}\n" + compiler.methods;
+    CompiledCondition compiled = ExpressionCompiler.newInstance( CompiledCondition.class, classBody );
+    compiled.setInterpreted(
+      compiler.interpreted.toArray( new Condition[compiler.interpreted.size()] ), rowMeta, compiler.nrCompiled );
+    return compiled;
+  }
+
+  /**
+   * @return the Java expression of the condition, following the evaluation order of the Condition
+   */
+  private String getExpression( Condition condition ) {
+    if ( condition.isAtomic() ) {
+      // Always true, even when negated
+      if ( condition.getFunction() == Condition.FUNC_TRUE ) {
+        nrCompiled++;
+        return "true";
+      }
+      String method = compileAtomic( condition );
+      if ( method == null ) {
+        interpreted.add( condition );
+        return "interpret( " + ( interpreted.size() - 1 ) + ", r )";
+      }
+      nrCompiled++;
+      return ( condition.isNegated() ? "!" : "" ) + method + "( r )";
+    }
+
+    String expression = getExpression( condition.getCondition( 0 ) );
+    for ( int i = 1; i < condition.nrConditions(); i++ ) {
+      Condition next = condition.getCondition( i );
+      switch ( next.getOperator() ) {
+        case Condition.OPERATOR_OR:
+          expression = "( " + expression + " || " + getExpression( next ) + " )";
+          break;
+        case Condition.OPERATOR_AND:
+          expression = "( " + expression + " && " + getExpression( next ) + " )";
+          break;
+        case Condition.OPERATOR_OR_NOT:
+          expression = "( " + expression + " || !" + getExpression( next ) + " )";
+          break;
+        case Condition.OPERATOR_AND_NOT:
+          expression = "( " + expression + " && !" + getExpression( next ) + " )";
+          break;
+        case Condition.OPERATOR_XOR:
+          expression = "( " + expression + " ^ " + getExpression( next ) + " )";
+          break;
+        default:
+          // Ignored by the condition as well
+          break;
+      }
+    }
+    return condition.isNegated() ? "!( " + expression + " )" : expression;
+  }
+
+  /**
+   * Generates the method of a simple condition, without the negation.
+   *
+   * @return the name of the method or null if the condition needs to be interpreted
+   */
+  private String compileAtomic( Condition condition ) {
+    int leftIndex = rowMeta.indexOfValue( condition.getLeftValuename() );
+    if ( leftIndex < 0 ) {
+      return null;
+    }
+    ValueMetaInterface left = rowMeta.getValueMeta( leftIndex );
+    if ( !ExpressionCompiler.isPlain( left ) ) {
+      return null;
+    }
+
+    // The right hand side: the constant, or the field if there is no constant value
+    //
+    ValueMetaAndData exact = condition.getRightExact();
+    ValueMetaInterface rightMeta = exact != null ? exact.getValueMeta() : null;
+    Object rightData = exact != null ? exact.getValueData() : null;
+    int rightIndex = -1;
+    if ( rightData == null && !Const.isEmpty( condition.getRightValuename() ) ) {
+      rightIndex = rowMeta.indexOfValue( condition.getRightValuename() );
+      if ( rightIndex >= 0 ) {
+        rightMeta = rowMeta.getValueMeta( rightIndex );
+      }
+    }
+
+    String name = "c" + nrNames++;
+    StringBuilder body = new StringBuilder();
+    body.append( "  Object a = r[" ).append( leftIndex ).append( "];\n" );
+
+    try {
+      switch ( condition.getFunction() ) {
+        case Condition.FUNC_EQUAL:
+        case Condition.FUNC_NOT_EQUAL:
+        case Condition.FUNC_SMALLER:
+        case Condition.FUNC_SMALLER_EQUAL:
+        case Condition.FUNC_LARGER:
+        case Condition.FUNC_LARGER_EQUAL:
+          if ( !compileComparison( body, condition.getFunction(), left, rightMeta, rightData, rightIndex ) ) {
+            return null;
+          }
+          break;
+        case Condition.FUNC_NULL:
+          body.append( "  return " ).append( isNull( left, "a" ) ).append( ";\n" );
+          break;
+        case Condition.FUNC_NOT_NULL:
+          body.append( "  return !( " ).append( isNull( left, "a" ) ).append( " );\n" );
+          break;
+        case Condition.FUNC_CONTAINS:
+        case Condition.FUNC_STARTS_WITH:
+        case Condition.FUNC_ENDS_WITH:
+        case Condition.FUNC_LIKE:
+        case Condition.FUNC_REGEXP:
+        case Condition.FUNC_IN_LIST:
+          if ( left.getType() != ValueMetaInterface.TYPE_STRING || rightIndex >= 0 || rightData == null
+            || !compileStringFunction( body, condition.getFunction(), left, rightMeta, rightData ) ) {
+            return null;
+          }
+          break;
+        default:
+          return null;
+      }
+    } catch ( KettleValueException e ) {
+      // The constant can't be converted, the condition reports the error for every row
+      return null;
+    }
+
+    methods.append( "private boolean " ).append( name ).append( "( Object[] r ) {\n" ).append( body ).append(
+      "}\n" );
+    return name;
+  }
+
+  private boolean compileComparison( StringBuilder body, int function, ValueMetaInterface left,
+    ValueMetaInterface rightMeta, Object rightData, int rightIndex ) throws KettleValueException {
+    String operator = getOperator( function );
+    int type = left.getType();
+
+    if ( rightIndex >= 0 ) {
+      // Two fields, the values of the left field drive the comparison
+      //
+      if ( rightMeta.getType() != type || rightMeta.getStorageType() != ValueMetaInterface.STORAGE_TYPE_NORMAL ) {
+        return false;
+      }
+      body.append( "  Object b = r[" ).append( rightIndex ).append( "];\n" );
+      body.append( "  boolean na = " ).append( isNull( left, "a" ) ).append( ";\n" );
+      body.append( "  boolean nb = " ).append( isNull( left, "b" ) ).append( ";\n" );
+      body.append( "  if ( na || nb ) {\n" );
+      body.append( "    return ( na ? ( nb ? 0 : -1 ) : 1 ) " ).append( operator ).append( ";\n" );
+      body.append( "  }\n" );
+      body.append( "  return " ).append(
+        compare( left, getValue( type, "a" ), getValue( type, "b" ) ) ).append( " " ).append( operator ).append(
+        ";\n" );
+      return true;
+    }
+
+    if ( rightMeta == null ) {
+      return false;
+    }
+
+    // Convert the constant once to the data type of the field
+    //
+    Object constant = rightData;
+    if ( rightMeta.getType() != type ) {
+      constant = left.convertData( rightMeta, rightData );
+    } else if ( rightMeta.getStorageType() != ValueMetaInterface.STORAGE_TYPE_NORMAL ) {
+      return false;
+    }
+
+    if ( left.isNull( constant ) ) {
+      body.append( "  return ( " ).append( isNull( left, "a" ) ).append( " ? 0 : 1 ) " ).append( operator ).append(
+        ";\n" );
+      return true;
+    }
+    String value = addConstant( type, constant );
+    if ( value == null ) {
+      return false;
+    }
+    body.append( "  if ( " ).append( isNull( left, "a" ) ).append( " ) {\n" );
+    body.append( "    return -1 " ).append( operator ).append( ";\n" );
+    body.append( "  }\n" );
+    body.append( "  return " ).append( compare( left, getValue( type, "a" ), value ) ).append( " " ).append(
+      operator ).append( ";\n" );
+    return true;
+  }
+
+  private boolean compileStringFunction( StringBuilder body, int function, ValueMetaInterface left,
+    ValueMetaInterface rightMeta, Object rightData ) throws KettleValueException {
+    String string = rightMeta.getCompatibleString( rightData );
+    if ( string == null ) {
+      return false;
+    }
+
+    switch ( function ) {
+      case Condition.FUNC_CONTAINS:
+        body.append( "  return a != null && ( (String) a ).indexOf( " ).append( addConstant( string ) ).append(
+          " ) >= 0;\n" );
+        return true;
+      case Condition.FUNC_STARTS_WITH:
+        body.append( "  return a != null && ( (String) a ).startsWith( " ).append( addConstant( string ) ).append(
+          " );\n" );
+        return true;
+      case Condition.FUNC_ENDS_WITH:
+        body.append( "  return a != null && ( (String) a ).length() > 0 && ( (String) a ).endsWith( " ).append(
+          addConstant( string ) ).append( " );\n" );
+        return true;
+      case Condition.FUNC_LIKE:
+        return compilePattern( body, left, string.replace( "%", ".*" ).replace( "?", "." ) );
+      case Condition.FUNC_REGEXP:
+        return compilePattern( body, left, string );
+      case Condition.FUNC_IN_LIST:
+        String[] list = Const.splitString( rightMeta.getString( rightData ), ';', true );
+        StringBuilder values = new StringBuilder();
+        for ( int i = 0; i < list.length; i++ ) {
+          if ( list[i] == null ) {
+            return false;
+          }
+          values.append( i > 0 ? ", " : "" ).append( ExpressionCompiler.literal( list[i].replace( "\\", "" ) ) );
+        }
+        String set = "s" + nrNames++;
+        fields.append( "private static final java.util.Set " ).append( set ).append(
+          " = new java.util.HashSet( java.util.Arrays.asList( new String[] { " ).append( values ).append(
+          " } ) );\n" );
+        body.append( "  return a != null && " ).append( set ).append( ".contains( a );\n" );
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  private boolean compilePattern( StringBuilder body, ValueMetaInterface left, String regex ) {
+    try {
+      Pattern.compile( regex );
+    } catch ( Exception e ) {
+      // The condition reports the error for every row
+      return false;
+    }
+    String pattern = "p" + nrNames++;
+    fields.append( "private static final java.util.regex.Pattern " ).append( pattern ).append(
+      " = java.util.regex.Pattern.compile( " ).append( ExpressionCompiler.literal( regex ) ).append( " );\n" );
+    body.append( "  if ( " ).append( isNull( left, "a" ) ).append( " ) {\n" );
+    body.append( "    return false;\n" );
+    body.append( "  }\n" );
+    body.append( "  return " ).append( pattern ).append( ".matcher( (String) a ).matches();\n" );
+    return true;
+  }
+
+  private static String getOperator( int function ) {
+    switch ( function ) {
+      case Condition.FUNC_EQUAL:
+        return "== 0";
+      case Condition.FUNC_NOT_EQUAL:
+        return "!= 0";
+      case Condition.FUNC_SMALLER:
+        return "< 0";
+      case Condition.FUNC_SMALLER_EQUAL:
+        return "<= 0";
+      case Condition.FUNC_LARGER:
+        return "> 0";
+      default:
+        return ">= 0";
+    }
+  }
+
+  /**
+   * @return the expression that tells if the data of a plain value is null, like ValueMetaBase.isNull() does
+   */
+  private static String isNull( ValueMetaInterface valueMeta, String object ) {
+    if ( valueMeta.getType() == ValueMetaInterface.TYPE_STRING && !ValueMetaBase.EMPTY_STRING_AND_NULL_ARE_DIFFERENT ) {
+      return "( " + object + " == null || ( (String) " + object + " ).length() == 0 )";
+    }
+    return object + " == null";
+  }
+
+  /**
+   * @return the expression of the (primitive) value of the data of a plain value
+   */
+  private static String getValue( int type, String object ) {
+    switch ( type ) {
+      case ValueMetaInterface.TYPE_STRING:
+        return "( (String) " + object + " )";
+      case ValueMetaInterface.TYPE_INTEGER:
+        return "( (Long) " + object + " ).longValue()";
+      case ValueMetaInterface.TYPE_NUMBER:
+        return "( (Double) " + object + " ).doubleValue()";
+      case ValueMetaInterface.TYPE_DATE:
+        return "( (java.util.Date) " + object + " ).getTime()";
+      case ValueMetaInterface.TYPE_BIGNUMBER:
+        return "( (java.math.BigDecimal) " + object + " )";
+      default:
+        return "( (Boolean) " + object + " ).booleanValue()";
+    }
+  }
+
+  /**
+   * @return the expression that compares two values like ValueMetaBase.compare() does
+   */
+  private static String compare( ValueMetaInterface valueMeta, String one, String two ) {
+    switch ( valueMeta.getType() ) {
+      case ValueMetaInterface.TYPE_STRING:
+        return one + ( valueMeta.isCaseInsensitive() ? ".compareToIgnoreCase( " : ".compareTo( " ) + two + " )";
+      case ValueMetaInterface.TYPE_NUMBER:
+        return "Double.compare( " + one + ", " + two + " )";
+      case ValueMetaInterface.TYPE_BIGNUMBER:
+        return one + ".compareTo( " + two + " )";
+      default:
+        return "compare( " + one + ", " + two + " )";
+    }
+  }
+
+  /**
+   * Adds a constant to the generated class.
+   *
+   * @return the name of the constant or null if the data doesn't have the Java type of the data type
+   */
+  private String addConstant( int type, Object data ) {
+    String name = "k" + nrNames++;
+    String declaration;
+    switch ( type ) {
+      case ValueMetaInterface.TYPE_STRING:
+        if ( !( data instanceof String ) ) {
+          return null;
+        }
+        return addConstant( (String) data );
+      case ValueMetaInterface.TYPE_INTEGER:
+        if ( !( data instanceof Long ) ) {
+          return null;
+        }
+        declaration = "long " + name + " = " + ExpressionCompiler.literal( ( (Long) data ).longValue() );
+        break;
+      case ValueMetaInterface.TYPE_NUMBER:
+        if ( !( data instanceof Double ) ) {
+          return null;
+        }
+        declaration = "double " + name + " = " + ExpressionCompiler.literal( ( (Double) data ).doubleValue() );
+        break;
+      case ValueMetaInterface.TYPE_DATE:
+        if ( !( data instanceof Date ) ) {
+          return null;
+        }
+        declaration = "long " + name + " = " + ExpressionCompiler.literal( ( (Date) data ).getTime() );
+        break;
+      case ValueMetaInterface.TYPE_BIGNUMBER:
+        if ( !( data instanceof BigDecimal ) ) {
+          return null;
+        }
+        declaration =
+          "java.math.BigDecimal " + name + " = new java.math.BigDecimal( "
+            + ExpressionCompiler.literal( data.toString() ) + " )";
+        break;
+      case ValueMetaInterface.TYPE_BOOLEAN:
+        if ( !( data instanceof Boolean ) ) {
+          return null;
+        }
+        declaration = "boolean " + name + " = " + data;
+        break;
+      default:
+        return null;
+    }
+    fields.append( "private static final " ).append( declaration ).append( ";\n" );
+    return name;
+  }
+
+  private String addConstant( String string ) {
+    String name = "k" + nrNames++;
+    fields.append( "private static final String " ).append( name ).append( " = " ).append(
+      ExpressionCompiler.literal( string ) ).append( ";\n" );
+    return name;
+  }
+}
@@ -0,0 +1,220 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2015 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.compiler;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.codehaus.janino.ClassBodyEvaluator;
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.ValueMeta;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaBigNumber;
+import org.pentaho.di.core.row.value.ValueMetaBoolean;
+import org.pentaho.di.core.row.value.ValueMetaDate;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaNumber;
+import org.pentaho.di.core.row.value.ValueMetaString;
+import org.pentaho.di.core.variables.VariableSpace;
+
+/**
+ * Compiles generated Java source into classes with Janino. Steps use it to turn their definitions (conditions,
+ * calculations) into code that is specialized on the data types of the input row, instead of interpreting the
+ * definition for every row.<br>
+ * <br>
+ * The generated source is a class body that extends a base class of the step. The compiled classes are kept by their
+ * source, so the copies of a step and transformations that run the same definition over the same row layout compile
+ * it only once.<br>
+ * <br>
+ * Janino doesn't support generics or autoboxing, the generated source needs to be plain Java 1.4.
+ *
+ * @since 5.4
+ */
+public class ExpressionCompiler {
+
+  /**
+   * The number of compiled classes that are kept
+   */
+  private static final int MAX_CLASSES = 500;
+
+  private static final Map<String, Class<?>> classes = new LinkedHashMap<String, Class<?>>( 16, 0.75f, true ) {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected boolean removeEldestEntry( Map.Entry<String, Class<?>> eldest ) {
+      return size() > MAX_CLASSES;
+    }
+  };
+
+  /**
+   * The value metadata classes that use the data conversions and comparisons of ValueMetaBase as they are
+   */
+  private static final Set<Class<?>> PLAIN_VALUE_CLASSES = new HashSet<Class<?>>();
+
+  static {
+    PLAIN_VALUE_CLASSES.add( ValueMeta.class );
+    PLAIN_VALUE_CLASSES.add( ValueMetaString.class );
+    PLAIN_VALUE_CLASSES.add( ValueMetaInteger.class );
+    PLAIN_VALUE_CLASSES.add( ValueMetaNumber.class );
+    PLAIN_VALUE_CLASSES.add( ValueMetaDate.class );
+    PLAIN_VALUE_CLASSES.add( ValueMetaBigNumber.class );
+    PLAIN_VALUE_CLASSES.add( ValueMetaBoolean.class );
+  }
+
+  private ExpressionCompiler() {
+  }
+
+  /**
+   * @param space
+   *          the variables of the step
+   * @return true if the KETTLE_COMPILED_EXPRESSIONS variable asks to compile expressions
+   */
+  public static boolean isEnabled( VariableSpace space ) {
+    return "Y".equalsIgnoreCase( space.getVariable( Const.KETTLE_COMPILED_EXPRESSIONS, "N" ) );
+  }
+
+  /**
+   * Compiles a class body, or takes the class compiled earlier for the same body, and creates an instance of it.
+   *
+   * @param baseType
+   *          the public class the generated class extends, it needs a public constructor without arguments
+   * @param classBody
+   *          the fields and methods of the generated class
+   * @return a new instance of the generated class
+   * @throws KettleException
+   *           in case the source doesn't compile
+   */
+  public static <T> T newInstance( Class<T> baseType, String classBody ) throws KettleException {
+    String key = baseType.getName() + "\n" + classBody;
+    Class<?> clazz;
+    synchronized ( classes ) {
+      clazz = classes.get( key );
+    }
+    if ( clazz == null ) {
+      try {
+        ClassBodyEvaluator evaluator = new ClassBodyEvaluator();
+        evaluator.setParentClassLoader( baseType.getClassLoader() );
+        evaluator.setExtendedType( baseType );
+        evaluator.cook( classBody );
+        clazz = evaluator.getClazz();
+      } catch ( Exception e ) {
+        throw new KettleException( "Unable to compile the generated code:" + Const.CR + classBody, e );
+      }
+      synchronized ( classes ) {
+        classes.put( key, clazz );
+      }
+    }
+    try {
+      return baseType.cast( clazz.newInstance() );
+    } catch ( Exception e ) {
+      throw new KettleException( "Unable to create an instance of the generated class", e );
+    }
+  }
+
+  /**
+   * A value is plain when its data is stored in the normal Java type of its data type, and comparing or converting it
+   * is nothing more than what ValueMetaBase does for that type. Generated code can then work on the data directly.
+   *
+   * @param valueMeta
+   *          the value metadata to verify
+   * @return true if the value is a plain string, integer, number, date, big number or boolean
+   */
+  public static boolean isPlain( ValueMetaInterface valueMeta ) {
+    if ( valueMeta == null || !PLAIN_VALUE_CLASSES.contains( valueMeta.getClass() ) ) {
+      return false;
+    }
+    if ( valueMeta.getStorageType() != ValueMetaInterface.STORAGE_TYPE_NORMAL || valueMeta.isSortedDescending() ) {
+      return false;
+    }
+    switch ( valueMeta.getType() ) {
+      case ValueMetaInterface.TYPE_STRING:
+        return valueMeta.getTrimType() == ValueMetaInterface.TRIM_TYPE_NONE;
+      case ValueMetaInterface.TYPE_INTEGER:
+      case ValueMetaInterface.TYPE_NUMBER:
+      case ValueMetaInterface.TYPE_DATE:
+      case ValueMetaInterface.TYPE_BIGNUMBER:
+      case ValueMetaInterface.TYPE_BOOLEAN:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * @return the Java class of the data of a plain value
+   */
+  public static String getJavaType( int type ) {
+    switch ( type ) {
+      case ValueMetaInterface.TYPE_STRING:
+        return "String";
+      case ValueMetaInterface.TYPE_INTEGER:
+        return "Long";
+      case ValueMetaInterface.TYPE_NUMBER:
+        return "Double";
+      case ValueMetaInterface.TYPE_DATE:
+        return "java.util.Date";
+      case ValueMetaInterface.TYPE_BIGNUMBER:
+        return "java.math.BigDecimal";
+      case ValueMetaInterface.TYPE_BOOLEAN:
+        return "Boolean";
+      default:
+        return "Object";
+    }
+  }
+
+  /**
+   * @return the Java source of a string constant
+   */
+  public static String literal( String string ) {
+    StringBuilder source = new StringBuilder( string.length() + 2 ).append( '"' );
+    for ( int i = 0; i < string.length(); i++ ) {
+      char c = string.charAt( i );
+      if ( c == '"' || c == '\\' ) {
+        source.append( '\\' ).append( c );
+      } else if ( c < ' ' ) {
+        // Octal, unicode escapes are replaced before the source is parsed
+        source.append( String.format( "\\%03o", (int) c ) );
+      } else {
+        source.append( c );
+      }
+    }
+    return source.append( '"' ).toString();
+  }
+
+  /**
+   * @return the Java source of a long constant
+   */
+  public static String literal( long value ) {
+    return value == Long.MIN_VALUE ? "Long.MIN_VALUE" : value + "L";
+  }
+
+  /**
+   * @return the Java source of a double constant, exact to the last bit
+   */
+  public static String literal( double value ) {
+    return "Double.longBitsToDouble( " + literal( Double.doubleToRawLongBits( value ) ) + " )";
+  }
+}
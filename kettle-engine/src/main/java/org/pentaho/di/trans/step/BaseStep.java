@@ -56,6 +56,7 @@ import org.pentaho.di.core.logging.LogChannelInterface;
 import org.pentaho.di.core.logging.LogLevel;
 import org.pentaho.di.core.logging.LoggingObjectInterface;
 import org.pentaho.di.core.logging.LoggingObjectType;
+import org.pentaho.di.core.row.RowBatch;
 import org.pentaho.di.core.row.RowDataUtil;
 import org.pentaho.di.core.row.RowMeta;
 import org.pentaho.di.core.row.RowMetaInterface;
@@ -70,6 +71,7 @@ import org.pentaho.di.repository.ObjectRevision;
 import org.pentaho.di.repository.Repository;
 import org.pentaho.di.repository.RepositoryDirectory;
 import org.pentaho.di.trans.BasePartitioner;
+import org.pentaho.di.trans.SkewAwarePartitioner;
 import org.pentaho.di.trans.SlaveStepCopyPartitionDistribution;
 import org.pentaho.di.trans.Trans;
 import org.pentaho.di.trans.TransMeta;
@@ -341,6 +343,16 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
 
   private int blockPointer;
 
+  /**
+   * The number of rows in a row batch, -1 if not yet determined
+   */
+  private int rowBatchSize = -1;
+
+  /**
+   * The re-usable batch handed out by getRowBatch()
+   */
+  private RowBatch inputRowBatch;
+
   /**
    * A flag to indicate that clustered partitioning was not yet initialized
    */
@@ -1579,6 +1591,60 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
     incrementLinesWritten();
   }
 
+  /**
+   * putRowBatch sends all the rows of a batch to the output rowset(s). In the simple case of a single target rowset
+   * without partitioning or row listeners, the rows are handed over in bulk. In all other cases the rows are sent one
+   * by one with putRow().
+   *
+   * @param rowMeta
+   *          The description of the rows in the batch
+   * @param batch
+   *          The batch of rows to put to the destination rowset(s).
+   * @throws KettleStepException
+   */
+  public void putRowBatch( RowMetaInterface rowMeta, RowBatch batch ) throws KettleStepException {
+    if ( batch.isEmpty() ) {
+      return;
+    }
+
+    if ( !rowListeners.isEmpty()
+      || terminator || repartitioning != StepPartitioningMeta.PARTITIONING_METHOD_NONE
+      || outputRowSets.size() != 1 ) {
+      for ( int i = 0; i < batch.size() && !isStopped(); i++ ) {
+        putRow( rowMeta, batch.getRow( i ) );
+      }
+      return;
+    }
+
+    // The first row takes care of pausing, stopping, waiting for the transformation to start
+    // and initializing the metadata of the target rowset.
+    //
+    putRow( rowMeta, batch.getRow( 0 ) );
+
+    RowSet rs = outputRowSets.get( 0 );
+    RowMetaInterface toBeSent = rs.getRowMeta() != null ? rs.getRowMeta() : rowMeta.clone();
+    int index = 1;
+    while ( index < batch.size() ) {
+      while ( paused.get() && !stopped.get() ) {
+        try {
+          Thread.sleep( 1 );
+        } catch ( InterruptedException e ) {
+          throw new KettleStepException( e );
+        }
+      }
+      if ( isStopped() ) {
+        return;
+      }
+      int nrRows = rs.putRowBatch( toBeSent, batch, index );
+      if ( nrRows > 0 ) {
+        index += nrRows;
+        synchronized ( statusCountersLock ) {
+          linesWritten += nrRows;
+        }
+      }
+    }
+  }
+
   /**
    * Put error.
    *
@@ -1899,6 +1965,55 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
     return row;
   }
 
+  /**
+   * Get a batch of rows from the input rowset(s). The first row is read with getRow(), the rest of the batch is filled
+   * with the rows that are immediately available in the same input rowset. That way we never wait for a batch to fill
+   * up.
+   *
+   * @return a batch with at least one row or null if there are no more rows. The batch is re-used by the next call.
+   * @throws KettleException
+   */
+  public RowBatch getRowBatch() throws KettleException {
+    Object[] row = getRow();
+    if ( row == null ) {
+      return null;
+    }
+
+    if ( inputRowBatch == null || inputRowBatch.getRowMeta() != inputRowMeta ) {
+      int batchSize = getRowBatchSize();
+      inputRowBatch = new RowBatch( inputRowMeta, batchSize > 0 ? batchSize : RowBatch.DEFAULT_BATCH_SIZE );
+    } else {
+      inputRowBatch.clear();
+    }
+    inputRowBatch.addRow( row );
+
+    // Row listeners and safe mode want to see every row go by in getRow()
+    //
+    if ( !inputRowSets.isEmpty() && rowListeners.isEmpty() && !trans.isSafeModeEnabled() ) {
+      int nrRows = currentInputStream().getRowBatch( inputRowBatch );
+      if ( nrRows > 0 ) {
+        blockPointer += nrRows;
+        synchronized ( statusCountersLock ) {
+          linesRead += nrRows;
+        }
+      }
+    }
+
+    return inputRowBatch;
+  }
+
+  /**
+   * The number of rows in a row batch is set with the KETTLE_ROW_BATCH_SIZE variable.
+   *
+   * @return the number of rows in a row batch or 0 if rows are not processed in batches.
+   */
+  public int getRowBatchSize() {
+    if ( rowBatchSize < 0 ) {
+      rowBatchSize = Math.max( 0, Const.toInt( getVariable( Const.KETTLE_ROW_BATCH_SIZE ), 0 ) );
+    }
+    return rowBatchSize;
+  }
+
   /**
    * Opens socket connections to the remote input steps of this step. <br>
    * This method should be used by steps that don't call getRow() first in which it is executed automatically. <br>
@@ -2421,6 +2536,11 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
     if ( log.isDebug() ) {
       logDebug( BaseMessages.getString( PKG, "BaseStep.Log.OutputDone", String.valueOf( outputRowSets.size() ) ) );
     }
+    if ( log.isDetailed() && nextStepPartitioningMeta != null
+      && nextStepPartitioningMeta.getPartitioner() instanceof SkewAwarePartitioner ) {
+      SkewAwarePartitioner partitioner = (SkewAwarePartitioner) nextStepPartitioningMeta.getPartitioner();
+      logDetailed( BaseMessages.getString( PKG, "BaseStep.Log.PartitionSkew", partitioner.getSkewReport() ) );
+    }
     synchronized ( outputRowSets ) {
       for ( int i = 0; i < outputRowSets.size(); i++ ) {
         RowSet rs = outputRowSets.get( i );
@@ -3479,6 +3599,21 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
       && ( lines % getTransMeta().getFeedbackSize() ) == 0;
   }
 
+  /**
+   * Check feedback after processing a batch of rows.
+   *
+   * @param lines
+   *          the lines after the batch was processed
+   * @param nrRows
+   *          the number of rows in the batch
+   * @return true if the feedback size was reached somewhere in the batch
+   */
+  protected boolean checkFeedback( long lines, int nrRows ) {
+    int feedbackSize = getTransMeta().getFeedbackSize();
+    return getTransMeta().isFeedbackShown()
+      && ( lines > 0 ) && ( feedbackSize > 0 ) && ( lines / feedbackSize ) != ( ( lines - nrRows ) / feedbackSize );
+  }
+
   /**
    * @return the rowMeta
    */
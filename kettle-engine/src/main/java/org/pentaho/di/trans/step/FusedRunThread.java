@@ -0,0 +1,140 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2015 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.step;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.pentaho.di.core.RowSet;
+
+/**
+ * Runs a chain of fused step copies (see {@link StepFusion}) on a single thread. The first step copy of the chain is
+ * called just like on a thread of its own, it may wait for its input. After every call, the rows it produced are passed
+ * through the rest of the chain, one processRow() call per row, before the first step copy is called again.
+ *
+ * @since 5.4
+ */
+public class FusedRunThread implements Runnable {
+
+  private final List<RunThread> runners;
+  private final RowSet[] inputs;
+
+  /**
+   * @param chain
+   *          the fused step copies, in the order the rows flow through them
+   */
+  public FusedRunThread( List<StepMetaDataCombi> chain ) {
+    runners = new ArrayList<RunThread>();
+    inputs = new RowSet[chain.size()];
+    for ( int i = 0; i < chain.size(); i++ ) {
+      StepMetaDataCombi combi = chain.get( i );
+      runners.add( new RunThread( combi ) );
+      if ( i > 0 ) {
+        // The step copy removes the row set from its list once it's finished, keep a reference to it
+        inputs[i] = combi.step.getInputRowSets().get( 0 );
+      }
+    }
+  }
+
+  public void run() {
+    int current = 0;
+    boolean[] finished = new boolean[runners.size()];
+    try {
+      for ( RunThread runner : runners ) {
+        runner.startRunning();
+      }
+
+      boolean[] done = new boolean[runners.size()];
+      int nrDone = 0;
+      while ( nrDone < runners.size() ) {
+        for ( current = 0; current < runners.size(); current++ ) {
+          if ( done[current] ) {
+            continue;
+          }
+          RunThread runner = runners.get( current );
+          RowSet input = inputs[current];
+          if ( input == null ) {
+            if ( !runner.processRow() ) {
+              done[current] = true;
+              nrDone++;
+              finish( current, finished );
+            }
+            continue;
+          }
+
+          // A step that stopped without signaling the end of its output has nothing more to offer
+          //
+          if ( done[current - 1] && !input.isDone() ) {
+            input.setDone();
+          }
+
+          // Only call the step when getRow() doesn't need to wait
+          //
+          while ( !done[current]
+            && ( input.size() > 0 || input.isDone() || runner.getStep().isStopped() ) ) {
+            int size = input.size();
+            if ( !runner.processRow() ) {
+              done[current] = true;
+              nrDone++;
+              finish( current, finished );
+            } else if ( input.size() >= size ) {
+              // Nothing was read, give the other steps a chance
+              break;
+            }
+          }
+        }
+      }
+    } catch ( Throwable t ) {
+      runners.get( Math.min( current, runners.size() - 1 ) ).handleError( t );
+    } finally {
+      for ( int i = 0; i < runners.size(); i++ ) {
+        finish( i, finished );
+      }
+    }
+  }
+
+  /**
+   * Disposes of a step copy once, as soon as it's done like its own thread would, while the rest of the chain keeps
+   * running.
+   */
+  private void finish( int index, boolean[] finished ) {
+    if ( !finished[index] ) {
+      finished[index] = true;
+      runners.get( index ).finish();
+    }
+  }
+
+  /**
+   * @return the names of the fused steps, handy for the name of the thread
+   */
+  public String getName() {
+    StringBuilder name = new StringBuilder();
+    for ( RunThread runner : runners ) {
+      if ( name.length() > 0 ) {
+        name.append( " + " );
+      }
+      name.append( runner.getStep().getStepname() );
+    }
+    return name.toString();
+  }
+}
@@ -0,0 +1,126 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2015 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.trans.step;
+
+import java.util.List;
+
+import org.pentaho.di.core.RowSet;
+import org.pentaho.di.core.exception.KettleStepException;
+import org.pentaho.di.core.gui.PrimitiveGCInterface.EImage;
+import org.pentaho.di.core.row.RowMetaInterface;
+
+/**
+ * Distributes rows to the output row set with the fewest rows waiting, so that a slow copy of the next step doesn't
+ * hold up the others the way round robin distribution does.<br>
+ * <br>
+ * Looking at the size of every row set for every row would cost more locking than it saves, so the row sets are only
+ * compared once per batch of rows. In between the rows go to the same row set, unless it's full: then a new target is
+ * chosen right away.<br>
+ * <br>
+ * Every target still receives its rows in the order they were sent, so a Sorted Merge further down the stream keeps
+ * working when the next step runs in multiple copies. Only the number of rows per copy isn't predictable anymore.<br>
+ * <br>
+ * The distribution object is shared by all copies of the step, the state it needs is kept in the step copy.
+ *
+ * @since 5.4
+ */
+@RowDistributionPlugin( code = "LoadBalance", name = "Load balance",
+  description = "Sends the rows to the copy with the fewest rows waiting" )
+public class LoadBalancingRowDistribution implements RowDistributionInterface {
+
+  /** The number of rows sent to the same row set before the row sets are compared again */
+  static final int BATCH_SIZE = 16;
+
+  @Override
+  public String getCode() {
+    return "LoadBalance";
+  }
+
+  @Override
+  public String getDescription() {
+    return "Load balance";
+  }
+
+  @Override
+  public void distributeRow( RowMetaInterface rowMeta, Object[] row, StepInterface stepInterface )
+    throws KettleStepException {
+    List<RowSet> rowSets = stepInterface.getOutputRowSets();
+
+    // The lines written are counted after every row: use them to find the start of a batch
+    //
+    int current = stepInterface.getCurrentOutputRowSetNr();
+    if ( current >= rowSets.size() || stepInterface.getLinesWritten() % BATCH_SIZE == 0 ) {
+      current = findLeastLoaded( rowSets, current, false );
+      stepInterface.setCurrentOutputRowSetNr( current );
+    }
+
+    RowSet rowSet = rowSets.get( current );
+    while ( !rowSet.putRow( rowMeta, row ) ) {
+      if ( stepInterface.isStopped() ) {
+        return;
+      }
+      // Full for a while, try the others
+      //
+      current = findLeastLoaded( rowSets, current, true );
+      stepInterface.setCurrentOutputRowSetNr( current );
+      rowSet = rowSets.get( current );
+    }
+  }
+
+  /**
+   * @param rowSets
+   *          the output row sets
+   * @param current
+   *          the index of the row set used so far, the search starts after it to break ties
+   * @param skipCurrent
+   *          true to look for another row set than the current one, if there is one
+   * @return the index of the row set with the fewest rows
+   */
+  static int findLeastLoaded( List<RowSet> rowSets, int current, boolean skipCurrent ) {
+    int nrRowSets = rowSets.size();
+    if ( skipCurrent && nrRowSets < 2 ) {
+      return current;
+    }
+    int best = 0;
+    int bestSize = Integer.MAX_VALUE;
+    int last = skipCurrent ? nrRowSets - 1 : nrRowSets;
+    for ( int i = 1; i <= last; i++ ) {
+      int index = ( current + i ) % nrRowSets;
+      int size = rowSets.get( index ).size();
+      if ( size < bestSize ) {
+        best = index;
+        bestSize = size;
+        if ( size == 0 ) {
+          break;
+        }
+      }
+    }
+    return best;
+  }
+
+  @Override
+  public EImage getDistributionImage() {
+    return EImage.LOAD_BALANCE;
+  }
+}
@@ -46,6 +46,7 @@ import javax.crypto.CipherOutputStream;
 
 import org.pentaho.di.core.BlockingRowSet;
 import org.pentaho.di.core.Const;
+import org.pentaho.di.core.RowSet;
 import org.pentaho.di.core.encryption.CertificateGenEncryptUtil;
 import org.pentaho.di.core.exception.KettleEOFException;
 import org.pentaho.di.core.exception.KettleException;
@@ -104,6 +105,7 @@ public class RemoteStep implements Cloneable, XMLInterface, Comparable<RemoteSte
 
   private int bufferSize;
   private boolean compressingStreams;
+  private boolean framingStreams;
 
   private boolean encryptingStreams;
   private byte[] key;
@@ -180,6 +182,7 @@ public class RemoteStep implements Cloneable, XMLInterface, Comparable<RemoteSte
     xml.append( XMLHandler.addTagValue( "port", port, false ) );
     xml.append( XMLHandler.addTagValue( "buffer_size", bufferSize, false ) );
     xml.append( XMLHandler.addTagValue( "compressed_streams", compressingStreams, false ) );
+    xml.append( XMLHandler.addTagValue( "framed_streams", framingStreams, false ) );
 
     xml.append( XMLHandler.addTagValue( "source_step_name", sourceStep, false ) );
     xml.append( XMLHandler.addTagValue( "source_step_copy", sourceStepCopyNr, false ) );
@@ -213,6 +216,7 @@ public class RemoteStep implements Cloneable, XMLInterface, Comparable<RemoteSte
     port = XMLHandler.getTagValue( node, "port" );
     bufferSize = Integer.parseInt( XMLHandler.getTagValue( node, "buffer_size" ) );
     compressingStreams = "Y".equalsIgnoreCase( XMLHandler.getTagValue( node, "compressed_streams" ) );
+    framingStreams = "Y".equalsIgnoreCase( XMLHandler.getTagValue( node, "framed_streams" ) );
 
     sourceStep = XMLHandler.getTagValue( node, "source_step_name" );
     sourceStepCopyNr = Integer.parseInt( XMLHandler.getTagValue( node, "source_step_copy" ) );
@@ -351,7 +355,9 @@ public class RemoteStep implements Cloneable, XMLInterface, Comparable<RemoteSte
           // Create the output stream...
           OutputStream socketOut = socket.getOutputStream();
 
-          if ( compressingStreams ) {
+          // Frames are compressed one by one
+          //
+          if ( compressingStreams && !framingStreams ) {
             gzipOutputStream = new GZIPOutputStream( socketOut, 50000 );
             bufferedOutputStream = new BufferedOutputStream( gzipOutputStream, bufferSize );
           } else {
@@ -386,35 +392,39 @@ public class RemoteStep implements Cloneable, XMLInterface, Comparable<RemoteSte
           baseStep.logBasic( "Server socket accepted for port ["
             + port + "], reading from server " + targetSlaveServerName );
 
-          // get a row of data...
-          Object[] rowData = baseStep.getRowFrom( rowSet );
-          if ( rowData != null ) {
-            rowSet.getRowMeta().writeMeta( outputStream );
-          }
-
-          // Send that row to the remote step
-          //
-          while ( rowData != null && !baseStep.isStopped() ) {
-            // It's too confusing to count these twice, so decrement
-            baseStep.decrementLinesRead();
-            baseStep.decrementLinesWritten();
+          if ( framingStreams ) {
+            writeFrames( rowSet );
+          } else {
+            // get a row of data...
+            Object[] rowData = baseStep.getRowFrom( rowSet );
+            if ( rowData != null ) {
+              rowSet.getRowMeta().writeMeta( outputStream );
+            }
 
-            // Write the row to the remote step via the output stream....
+            // Send that row to the remote step
             //
-            rowSet.getRowMeta().writeData( outputStream, rowData );
-            baseStep.incrementLinesOutput();
-
-            if ( baseStep.log.isDebug() ) {
-              baseStep.logDebug( "Sent row to port " + port + " : " + rowSet.getRowMeta().getString( rowData ) );
+            while ( rowData != null && !baseStep.isStopped() ) {
+              // It's too confusing to count these twice, so decrement
+              baseStep.decrementLinesRead();
+              baseStep.decrementLinesWritten();
+
+              // Write the row to the remote step via the output stream....
+              //
+              rowSet.getRowMeta().writeData( outputStream, rowData );
+              baseStep.incrementLinesOutput();
+
+              if ( baseStep.log.isDebug() ) {
+                baseStep.logDebug( "Sent row to port " + port + " : " + rowSet.getRowMeta().getString( rowData ) );
+              }
+              rowData = baseStep.getRowFrom( rowSet );
             }
-            rowData = baseStep.getRowFrom( rowSet );
-          }
 
-          if ( compressingStreams ) {
-            outputStream.flush();
-            gzipOutputStream.finish();
-          } else {
-            outputStream.flush();
+            if ( compressingStreams ) {
+              outputStream.flush();
+              gzipOutputStream.finish();
+            } else {
+              outputStream.flush();
+            }
           }
 
         } catch ( Exception e ) {
@@ -471,6 +481,75 @@ public class RemoteStep implements Cloneable, XMLInterface, Comparable<RemoteSte
     return rowSet;
   }
 
+  /**
+   * Sends the rows in frames, see {@link RowFrameWriter}. The remote reader hands out credits on the input channel of
+   * the socket.
+   */
+  private void writeFrames( RowSet rowSet ) throws KettleException, IOException {
+    RowFrameWriter frameWriter = new RowFrameWriter( outputStream, socket.getInputStream(), compressingStreams );
+
+    Object[] rowData = baseStep.getRowFrom( rowSet );
+    if ( rowData != null ) {
+      frameWriter.writeMeta( rowSet.getRowMeta() );
+    }
+    while ( rowData != null && !baseStep.isStopped() ) {
+      // It's too confusing to count these twice, so decrement
+      baseStep.decrementLinesRead();
+      baseStep.decrementLinesWritten();
+
+      frameWriter.writeRow( rowData );
+      baseStep.incrementLinesOutput();
+
+      if ( baseStep.log.isDebug() ) {
+        baseStep.logDebug( "Sent row to port " + port + " : " + rowSet.getRowMeta().getString( rowData ) );
+      }
+
+      // Don't hold back the rows of a partial frame while we wait for more
+      //
+      if ( rowSet.size() == 0 ) {
+        frameWriter.flush();
+      }
+      rowData = baseStep.getRowFrom( rowSet );
+    }
+
+    if ( baseStep.isStopped() ) {
+      outputStream.flush();
+    } else {
+      frameWriter.finish();
+      if ( baseStep.log.isDetailed() ) {
+        baseStep.logDetailed( "Sent " + frameWriter.getFramesWritten() + " frames ("
+          + frameWriter.getBytesWritten() + " bytes) to port " + port );
+      }
+    }
+  }
+
+  /**
+   * Reads the rows sent in frames, see {@link RowFrameReader}. Credits are handed out to the remote writer on the
+   * output channel of the socket.
+   */
+  private void readFrames( RowSet rowSet ) throws KettleException, IOException {
+    RowFrameReader frameReader = new RowFrameReader( inputStream, socket.getOutputStream() );
+
+    RowMetaInterface rowMeta = frameReader.readMeta();
+    if ( rowMeta == null ) {
+      return;
+    }
+
+    Object[] rowData = frameReader.readRow();
+    while ( rowData != null && !baseStep.isStopped() ) {
+      baseStep.incrementLinesInput();
+      baseStep.decrementLinesRead();
+
+      if ( baseStep.log.isDebug() ) {
+        baseStep.logDebug( "Received row from remote step: " + rowMeta.getString( rowData ) );
+      }
+
+      baseStep.putRowTo( rowMeta, rowData, rowSet );
+      baseStep.decrementLinesWritten();
+      rowData = frameReader.readRow();
+    }
+  }
+
   /**
    * Close left-over sockets, streams and so on.
    */
@@ -578,7 +657,7 @@ public class RemoteStep implements Cloneable, XMLInterface, Comparable<RemoteSte
         connected = true;
 
         InputStream socketStream = socket.getInputStream();
-        if ( compressingStreams ) {
+        if ( compressingStreams && !framingStreams ) {
           gzipInputStream = new GZIPInputStream( socketStream );
           bufferedInputStream = new BufferedInputStream( gzipInputStream, bufferSize );
         } else {
@@ -665,39 +744,42 @@ public class RemoteStep implements Cloneable, XMLInterface, Comparable<RemoteSte
     Runnable runnable = new Runnable() {
       public void run() {
         try {
+          if ( framingStreams ) {
+            readFrames( rowSet );
+          } else {
+            // First read the row meta data from the socket...
+            //
+            RowMetaInterface rowMeta = null;
+            while ( !baseStep.isStopped() && rowMeta == null ) {
+              try {
+                rowMeta = new RowMeta( inputStream );
+              } catch ( SocketTimeoutException e ) {
+                rowMeta = null;
+              }
+            }
 
-          // First read the row meta data from the socket...
-          //
-          RowMetaInterface rowMeta = null;
-          while ( !baseStep.isStopped() && rowMeta == null ) {
-            try {
-              rowMeta = new RowMeta( inputStream );
-            } catch ( SocketTimeoutException e ) {
-              rowMeta = null;
+            if ( rowMeta == null ) {
+              throw new KettleEOFException(); // leave now.
             }
-          }
 
-          if ( rowMeta == null ) {
-            throw new KettleEOFException(); // leave now.
-          }
+            // And a first row of data...
+            //
+            Object[] rowData = getRowOfData( rowMeta );
 
-          // And a first row of data...
-          //
-          Object[] rowData = getRowOfData( rowMeta );
+            // Now get the data itself, row by row...
+            //
+            while ( rowData != null && !baseStep.isStopped() ) {
+              baseStep.incrementLinesInput();
+              baseStep.decrementLinesRead();
 
-          // Now get the data itself, row by row...
-          //
-          while ( rowData != null && !baseStep.isStopped() ) {
-            baseStep.incrementLinesInput();
-            baseStep.decrementLinesRead();
+              if ( baseStep.log.isDebug() ) {
+                baseStep.logDebug( "Received row from remote step: " + rowMeta.getString( rowData ) );
+              }
 
-            if ( baseStep.log.isDebug() ) {
-              baseStep.logDebug( "Received row from remote step: " + rowMeta.getString( rowData ) );
+              baseStep.putRowTo( rowMeta, rowData, rowSet );
+              baseStep.decrementLinesWritten();
+              rowData = getRowOfData( rowMeta );
             }
-
-            baseStep.putRowTo( rowMeta, rowData, rowSet );
-            baseStep.decrementLinesWritten();
-            rowData = getRowOfData( rowMeta );
           }
         } catch ( KettleEOFException e ) {
           // Nothing, we're simply done reading...
@@ -942,6 +1024,21 @@ public class RemoteStep implements Cloneable, XMLInterface, Comparable<RemoteSte
     this.rowMeta = rowMeta;
   }
 
+  /**
+   * @return true if the rows are sent in frames, see {@link RowFrameWriter}
+   */
+  public boolean isFramingStreams() {
+    return framingStreams;
+  }
+
+  /**
+   * @param framingStreams
+   *          true if the rows need to be sent in frames
+   */
+  public void setFramingStreams( boolean framingStreams ) {
+    this.framingStreams = framingStreams;
+  }
+
   public boolean isEncryptingStreams() {
     return encryptingStreams;
   }
@@ -24,6 +24,7 @@ package org.pentaho.di.trans.step;
 
 import java.lang.annotation.Annotation;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -60,7 +61,9 @@ public class RowDistributionPluginType extends BasePluginType implements PluginT
    * Scan & register internal row distribution plugins
    */
   protected void registerNatives() throws KettlePluginException {
-    // None at this moment
+    Class<?> clazz = LoadBalancingRowDistribution.class;
+    handlePluginAnnotation(
+      clazz, clazz.getAnnotation( RowDistributionPlugin.class ), new ArrayList<String>(), true, null );
   }
 
   protected void registerXmlPlugins() throws KettlePluginException {
@@ -0,0 +1,242 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2015 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.trans.step;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.pentaho.di.core.exception.KettleFileException;
+import org.pentaho.di.core.row.RowDataUtil;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.xerial.snappy.Snappy;
+
+/**
+ * Reads the rows sent by a {@link RowFrameWriter}. When there is a credit stream the reader allows the writer to send
+ * a number of frames ahead and hands out a new credit for every frame it starts to read.
+ *
+ * @since 5.4
+ */
+public class RowFrameReader {
+
+  /** The number of frames the writer can send ahead of the reader */
+  public static final int DEFAULT_WINDOW = 8;
+
+  private static final int MAX_FRAME_LENGTH = 256 * 1024 * 1024;
+
+  private final DataInputStream inputStream;
+  private final DataOutputStream creditStream;
+  private final int window;
+
+  private final List<String> dictionary;
+
+  private RowMetaInterface rowMeta;
+  private boolean[] dictionaryEncoded;
+  private boolean ended;
+
+  private byte[] payload;
+  private byte[] uncompressed;
+  private DataInputStream frameStream;
+  private int rowsLeft;
+
+  /**
+   * @param inputStream
+   *          the stream to read the frames from
+   * @param creditStream
+   *          the stream to send credits to the writer on or null if the writer doesn't wait for them
+   */
+  public RowFrameReader( InputStream inputStream, OutputStream creditStream ) {
+    this( inputStream, creditStream, DEFAULT_WINDOW );
+  }
+
+  public RowFrameReader( InputStream inputStream, OutputStream creditStream, int window ) {
+    this.inputStream = new DataInputStream( inputStream );
+    this.creditStream = creditStream == null ? null : new DataOutputStream( creditStream );
+    this.window = window;
+
+    dictionary = new ArrayList<String>();
+  }
+
+  /**
+   * Reads the row metadata at the start of the stream.
+   *
+   * @return the row metadata or null if the writer closed the stream without sending any rows
+   * @throws KettleFileException
+   *           in case the stream can't be read or wasn't written by a {@link RowFrameWriter}
+   */
+  public RowMetaInterface readMeta() throws KettleFileException {
+    int magic;
+    try {
+      magic = inputStream.readInt();
+    } catch ( EOFException e ) {
+      ended = true;
+      return null;
+    } catch ( IOException e ) {
+      throw new KettleFileException( "Unable to read the start of the frame stream", e );
+    }
+    if ( magic != RowFrameWriter.MAGIC ) {
+      throw new KettleFileException( "The rows were not sent in frames, check if both sides use the same setting for "
+        + "KETTLE_FRAMED_SOCKET_STREAMS" );
+    }
+
+    try {
+      if ( readFrame() != RowFrameWriter.FRAME_META ) {
+        throw new KettleFileException( "The frame stream doesn't start with the row metadata" );
+      }
+      rowMeta = new RowMeta( frameStream );
+      grantCredits( window );
+    } catch ( IOException e ) {
+      throw new KettleFileException( "Unable to read the row metadata frame", e );
+    }
+
+    dictionaryEncoded = new boolean[rowMeta.size()];
+    for ( int i = 0; i < rowMeta.size(); i++ ) {
+      ValueMetaInterface valueMeta = rowMeta.getValueMeta( i );
+      dictionaryEncoded[i] = valueMeta.isString() && valueMeta.isStorageNormal();
+    }
+    return rowMeta;
+  }
+
+  /**
+   * @return the next row or null if the writer finished the stream
+   * @throws KettleFileException
+   *           in case the stream can't be read or ended before the writer finished it
+   */
+  public Object[] readRow() throws KettleFileException {
+    try {
+      while ( rowsLeft == 0 ) {
+        if ( ended ) {
+          return null;
+        }
+        byte type = readFrame();
+        if ( type == RowFrameWriter.FRAME_END ) {
+          ended = true;
+        } else if ( type == RowFrameWriter.FRAME_ROWS ) {
+          grantCredits( 1 );
+        } else {
+          throw new KettleFileException( "Unexpected frame of type " + type + " in the frame stream" );
+        }
+      }
+
+      Object[] row = RowDataUtil.allocateRowData( dictionaryEncoded.length );
+      for ( int i = 0; i < dictionaryEncoded.length; i++ ) {
+        if ( dictionaryEncoded[i] ) {
+          row[i] = readString();
+        } else {
+          row[i] = rowMeta.getValueMeta( i ).readData( frameStream );
+        }
+      }
+      rowsLeft--;
+      return row;
+    } catch ( IOException e ) {
+      throw new KettleFileException( "Unable to read a frame of rows", e );
+    }
+  }
+
+  private String readString() throws IOException {
+    int code = readVarInt( frameStream );
+    switch ( code ) {
+      case RowFrameWriter.STRING_NULL:
+        return null;
+      case RowFrameWriter.STRING_LITERAL:
+        return readBytes();
+      case RowFrameWriter.STRING_NEW:
+        String string = readBytes();
+        dictionary.add( string );
+        return string;
+      default:
+        return dictionary.get( code - RowFrameWriter.STRING_REFERENCE );
+    }
+  }
+
+  private String readBytes() throws IOException {
+    byte[] bytes = new byte[readVarInt( frameStream )];
+    frameStream.readFully( bytes );
+    return new String( bytes, RowFrameWriter.STRING_ENCODING );
+  }
+
+  static int readVarInt( DataInputStream stream ) throws IOException {
+    int value = 0;
+    for ( int shift = 0; shift < 32; shift += 7 ) {
+      int b = stream.readUnsignedByte();
+      value |= ( b & 0x7F ) << shift;
+      if ( ( b & 0x80 ) == 0 ) {
+        return value;
+      }
+    }
+    throw new IOException( "Malformed variable length integer in frame" );
+  }
+
+  /**
+   * Reads the next frame into the frame stream.
+   *
+   * @return the frame type
+   */
+  private byte readFrame() throws IOException {
+    int length = inputStream.readInt();
+    byte type = inputStream.readByte();
+    byte flags = inputStream.readByte();
+    int rows = inputStream.readInt();
+    if ( length < 0 || length > MAX_FRAME_LENGTH || rows < 0 ) {
+      throw new IOException( "Corrupt frame header: length " + length + ", " + rows + " rows" );
+    }
+
+    if ( payload == null || payload.length < length ) {
+      payload = new byte[length];
+    }
+    inputStream.readFully( payload, 0, length );
+
+    byte[] data = payload;
+    if ( ( flags & RowFrameWriter.FLAG_COMPRESSED ) != 0 ) {
+      int uncompressedLength = Snappy.uncompressedLength( payload, 0, length );
+      if ( uncompressed == null || uncompressed.length < uncompressedLength ) {
+        uncompressed = new byte[uncompressedLength];
+      }
+      length = Snappy.uncompress( payload, 0, length, uncompressed, 0 );
+      data = uncompressed;
+    }
+    frameStream = new DataInputStream( new ByteArrayInputStream( data, 0, length ) );
+    rowsLeft = rows;
+    return type;
+  }
+
+  private void grantCredits( int credits ) throws IOException {
+    if ( creditStream != null ) {
+      creditStream.writeInt( credits );
+      creditStream.flush();
+    }
+  }
+
+  public RowMetaInterface getRowMeta() {
+    return rowMeta;
+  }
+}
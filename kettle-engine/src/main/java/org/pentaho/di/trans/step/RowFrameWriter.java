@@ -0,0 +1,317 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2015 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.trans.step;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.exception.KettleFileException;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.variables.VariableSpace;
+import org.xerial.snappy.Snappy;
+
+/**
+ * Writes rows to a socket in length-prefixed frames, to be read by a {@link RowFrameReader}.<br>
+ * <br>
+ * The stream starts with a magic number followed by frames. Every frame has a header with the payload length, the
+ * frame type, flags and the number of rows in the frame. The row metadata is sent once in the first frame, then come
+ * frames with many rows each and finally an end frame. Strings in normal storage are sent once per stream and
+ * referenced by number afterwards. When compressing, every frame is compressed on its own with Snappy.<br>
+ * <br>
+ * The reader hands out credits, one per frame it can take. When there is a credit stream the writer waits for a
+ * credit before it sends a frame of rows, so a slow reader doesn't get flooded while the writer can keep a few frames
+ * in flight.
+ *
+ * @since 5.4
+ */
+public class RowFrameWriter {
+
+  static final int MAGIC = 0x4B524631; // KRF1
+
+  static final byte FRAME_META = 1;
+  static final byte FRAME_ROWS = 2;
+  static final byte FRAME_END = 3;
+
+  static final byte FLAG_COMPRESSED = 1;
+
+  static final int STRING_NULL = 0;
+  static final int STRING_LITERAL = 1;
+  static final int STRING_NEW = 2;
+  static final int STRING_REFERENCE = 3;
+
+  static final String STRING_ENCODING = "UTF-8";
+
+  static final int MAX_DICTIONARY_SIZE = 65536;
+  static final int MAX_DICTIONARY_STRING_LENGTH = 256;
+
+  /** The number of bytes of row data after which a frame is sent */
+  public static final int DEFAULT_FRAME_SIZE = 65536;
+
+  private final DataOutputStream outputStream;
+  private final DataInputStream creditStream;
+  private final boolean compressing;
+  private final int frameSize;
+
+  private final FrameBuffer frame;
+  private final DataOutputStream frameStream;
+  private final Map<String, Integer> dictionary;
+
+  private RowMetaInterface rowMeta;
+  private boolean[] dictionaryEncoded;
+  private int nrRows;
+  private int credits;
+  private byte[] compressed;
+
+  private long framesWritten;
+  private long bytesWritten;
+
+  /**
+   * @param outputStream
+   *          the stream to write the frames to
+   * @param creditStream
+   *          the stream the reader sends its credits on or null to send frames without waiting
+   * @param compressing
+   *          true if the frames need to be compressed
+   */
+  public RowFrameWriter( OutputStream outputStream, InputStream creditStream, boolean compressing ) {
+    this( outputStream, creditStream, compressing, DEFAULT_FRAME_SIZE );
+  }
+
+  public RowFrameWriter( OutputStream outputStream, InputStream creditStream, boolean compressing, int frameSize ) {
+    this.outputStream = new DataOutputStream( outputStream );
+    this.creditStream = creditStream == null ? null : new DataInputStream( creditStream );
+    this.compressing = compressing;
+    this.frameSize = frameSize;
+
+    frame = new FrameBuffer( frameSize + frameSize / 4 );
+    frameStream = new DataOutputStream( frame );
+    dictionary = new HashMap<String, Integer>();
+  }
+
+  /**
+   * @return true if rows need to be sent over sockets in frames, see {@link Const#KETTLE_FRAMED_SOCKET_STREAMS}
+   */
+  public static boolean isEnabled( VariableSpace space ) {
+    return "Y".equalsIgnoreCase( space.getVariable( Const.KETTLE_FRAMED_SOCKET_STREAMS, "N" ) );
+  }
+
+  /**
+   * Starts the stream with the metadata of the rows that follow.
+   *
+   * @param rowMeta
+   *          the row metadata
+   * @throws KettleFileException
+   *           in case the metadata can't be written
+   */
+  public void writeMeta( RowMetaInterface rowMeta ) throws KettleFileException {
+    this.rowMeta = rowMeta;
+    dictionaryEncoded = new boolean[rowMeta.size()];
+    for ( int i = 0; i < rowMeta.size(); i++ ) {
+      ValueMetaInterface valueMeta = rowMeta.getValueMeta( i );
+      dictionaryEncoded[i] = valueMeta.isString() && valueMeta.isStorageNormal();
+    }
+
+    try {
+      outputStream.writeInt( MAGIC );
+      rowMeta.writeMeta( frameStream );
+      writeFrame( FRAME_META, 0 );
+    } catch ( IOException e ) {
+      throw new KettleFileException( "Unable to write the row metadata frame", e );
+    }
+  }
+
+  /**
+   * Adds a row to the current frame, the frame is sent once it's full.
+   *
+   * @param row
+   *          the row data
+   * @throws KettleFileException
+   *           in case the frame can't be written
+   */
+  public void writeRow( Object[] row ) throws KettleFileException {
+    try {
+      for ( int i = 0; i < dictionaryEncoded.length; i++ ) {
+        if ( dictionaryEncoded[i] ) {
+          writeString( (String) row[i] );
+        } else {
+          rowMeta.getValueMeta( i ).writeData( frameStream, row[i] );
+        }
+      }
+      nrRows++;
+      if ( frame.size() >= frameSize ) {
+        writeRows();
+      }
+    } catch ( IOException e ) {
+      throw new KettleFileException( "Unable to write a frame of rows", e );
+    }
+  }
+
+  /**
+   * Sends the rows gathered so far, even if the frame isn't full.
+   *
+   * @throws KettleFileException
+   *           in case the frame can't be written
+   */
+  public void flush() throws KettleFileException {
+    try {
+      writeRows();
+      outputStream.flush();
+    } catch ( IOException e ) {
+      throw new KettleFileException( "Unable to flush a frame of rows", e );
+    }
+  }
+
+  /**
+   * Sends the remaining rows and ends the stream. The underlying streams are not closed.
+   *
+   * @throws KettleFileException
+   *           in case the frames can't be written
+   */
+  public void finish() throws KettleFileException {
+    try {
+      writeRows();
+      writeFrame( FRAME_END, 0 );
+      outputStream.flush();
+    } catch ( IOException e ) {
+      throw new KettleFileException( "Unable to write the end of the frame stream", e );
+    }
+  }
+
+  private void writeString( String string ) throws IOException {
+    if ( string == null ) {
+      writeVarInt( frameStream, STRING_NULL );
+      return;
+    }
+    Integer id = dictionary.get( string );
+    if ( id != null ) {
+      writeVarInt( frameStream, id + STRING_REFERENCE );
+    } else if ( string.length() <= MAX_DICTIONARY_STRING_LENGTH && dictionary.size() < MAX_DICTIONARY_SIZE ) {
+      dictionary.put( string, dictionary.size() );
+      writeVarInt( frameStream, STRING_NEW );
+      writeBytes( string );
+    } else {
+      writeVarInt( frameStream, STRING_LITERAL );
+      writeBytes( string );
+    }
+  }
+
+  private void writeBytes( String string ) throws IOException {
+    byte[] bytes = string.getBytes( STRING_ENCODING );
+    writeVarInt( frameStream, bytes.length );
+    frameStream.write( bytes );
+  }
+
+  static void writeVarInt( DataOutputStream stream, int value ) throws IOException {
+    while ( ( value & ~0x7F ) != 0 ) {
+      stream.writeByte( ( value & 0x7F ) | 0x80 );
+      value >>>= 7;
+    }
+    stream.writeByte( value );
+  }
+
+  private void writeRows() throws IOException {
+    if ( nrRows == 0 ) {
+      return;
+    }
+    waitForCredit();
+    writeFrame( FRAME_ROWS, nrRows );
+    nrRows = 0;
+  }
+
+  private void waitForCredit() throws IOException {
+    if ( creditStream == null ) {
+      return;
+    }
+    if ( credits <= 0 ) {
+      // The reader can only hand out credits for what it received
+      //
+      outputStream.flush();
+      while ( credits <= 0 ) {
+        credits += creditStream.readInt();
+      }
+    }
+    credits--;
+  }
+
+  private void writeFrame( byte type, int rows ) throws IOException {
+    byte[] payload = frame.getBuffer();
+    int length = frame.size();
+    byte flags = 0;
+
+    if ( compressing && length > 0 ) {
+      int maxLength = Snappy.maxCompressedLength( length );
+      if ( compressed == null || compressed.length < maxLength ) {
+        compressed = new byte[maxLength];
+      }
+      int compressedLength = Snappy.compress( payload, 0, length, compressed, 0 );
+      if ( compressedLength < length ) {
+        payload = compressed;
+        length = compressedLength;
+        flags |= FLAG_COMPRESSED;
+      }
+    }
+
+    outputStream.writeInt( length );
+    outputStream.writeByte( type );
+    outputStream.writeByte( flags );
+    outputStream.writeInt( rows );
+    outputStream.write( payload, 0, length );
+    frame.reset();
+
+    framesWritten++;
+    bytesWritten += length + 10;
+  }
+
+  /**
+   * @return the number of frames sent, including the metadata and end frames
+   */
+  public long getFramesWritten() {
+    return framesWritten;
+  }
+
+  /**
+   * @return the number of bytes sent in frames
+   */
+  public long getBytesWritten() {
+    return bytesWritten;
+  }
+
+  private static class FrameBuffer extends ByteArrayOutputStream {
+    FrameBuffer( int size ) {
+      super( size );
+    }
+
+    byte[] getBuffer() {
+      return buf;
+    }
+  }
+}
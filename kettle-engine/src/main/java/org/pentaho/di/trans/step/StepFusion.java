@@ -0,0 +1,148 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2015 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.step;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.QueueRowSet;
+import org.pentaho.di.core.RowSet;
+import org.pentaho.di.core.variables.VariableSpace;
+import org.pentaho.di.trans.TransMeta.TransformationType;
+
+/**
+ * Finds the linear chains of step copies in a transformation that can run on a single thread, one after the other, like
+ * the single threaded engine does. The rows between the steps of a chain are handed over through unbounded row sets
+ * without any locking or waiting, the chains themselves and the other steps keep a thread of their own and remain
+ * connected through the usual bounded row sets.<br>
+ * <br>
+ * Two step copies are fused when the first one only sends rows to the second one and the second one only receives rows
+ * from the first one, when both of them support the single threaded engine, and when neither of them keeps rows until
+ * all the rows of a batch are read (sort, group by, unique rows, ...). The latter are recognized by their
+ * batchComplete() method.
+ *
+ * @since 5.4
+ */
+public class StepFusion {
+
+  private StepFusion() {
+  }
+
+  /**
+   * @param space
+   *          the variables of the transformation
+   * @return true if the KETTLE_STEP_FUSION variable asks to fuse step copies
+   */
+  public static boolean isEnabled( VariableSpace space ) {
+    return "Y".equalsIgnoreCase( space.getVariable( Const.KETTLE_STEP_FUSION, "N" ) );
+  }
+
+  /**
+   * Finds the chains of step copies to fuse and replaces the row sets within the chains by unbounded row sets. Call it
+   * after the steps are initialized and before they start running.
+   *
+   * @param steps
+   *          the step copies of the transformation
+   * @param rowSets
+   *          the row sets of the transformation, the fused row sets are replaced in this list
+   * @return the chains of two or more step copies, in the order the rows flow through them
+   */
+  public static List<List<StepMetaDataCombi>> fuse( List<StepMetaDataCombi> steps, List<RowSet> rowSets ) {
+    Map<String, StepMetaDataCombi> byName = new HashMap<String, StepMetaDataCombi>();
+    for ( StepMetaDataCombi combi : steps ) {
+      byName.put( combi.stepname + "." + combi.copy, combi );
+    }
+
+    Map<StepMetaDataCombi, StepMetaDataCombi> next = new HashMap<StepMetaDataCombi, StepMetaDataCombi>();
+    Map<StepMetaDataCombi, StepMetaDataCombi> previous = new HashMap<StepMetaDataCombi, StepMetaDataCombi>();
+    for ( int i = 0; i < rowSets.size(); i++ ) {
+      RowSet rowSet = rowSets.get( i );
+      StepMetaDataCombi origin = byName.get( rowSet.getOriginStepName() + "." + rowSet.getOriginStepCopy() );
+      StepMetaDataCombi destination =
+        byName.get( rowSet.getDestinationStepName() + "." + rowSet.getDestinationStepCopy() );
+      if ( origin == null || destination == null || !canFuse( origin, destination, rowSet ) ) {
+        continue;
+      }
+
+      RowSet fused = new QueueRowSet();
+      fused.setThreadNameFromToCopy( rowSet.getOriginStepName(), rowSet.getOriginStepCopy(), rowSet
+        .getDestinationStepName(), rowSet.getDestinationStepCopy() );
+      rowSets.set( i, fused );
+      origin.step.getOutputRowSets().set( 0, fused );
+      destination.step.getInputRowSets().set( 0, fused );
+
+      next.put( origin, destination );
+      previous.put( destination, origin );
+    }
+
+    List<List<StepMetaDataCombi>> chains = new ArrayList<List<StepMetaDataCombi>>();
+    for ( StepMetaDataCombi combi : steps ) {
+      if ( next.containsKey( combi ) && !previous.containsKey( combi ) ) {
+        List<StepMetaDataCombi> chain = new ArrayList<StepMetaDataCombi>();
+        for ( StepMetaDataCombi link = combi; link != null; link = next.get( link ) ) {
+          // No thread priority management: the steps of a chain never wait for each other
+          link.step.setUsingThreadPriorityManagment( false );
+          chain.add( link );
+        }
+        chains.add( chain );
+      }
+    }
+    return chains;
+  }
+
+  private static boolean canFuse( StepMetaDataCombi origin, StepMetaDataCombi destination, RowSet rowSet ) {
+    List<RowSet> outputs = origin.step.getOutputRowSets();
+    List<RowSet> inputs = destination.step.getInputRowSets();
+    return outputs.size() == 1 && outputs.get( 0 ) == rowSet && inputs.size() == 1 && inputs.get( 0 ) == rowSet
+      && !origin.stepMeta.isDoingErrorHandling()
+      && destination.stepMeta.getStepMetaInterface().getStepIOMeta().getInfoStreams().isEmpty()
+      && isRowAtATime( origin ) && isRowAtATime( destination );
+  }
+
+  /**
+   * @return true if the step copy runs in the single threaded engine without batches and without remote steps
+   */
+  static boolean isRowAtATime( StepMetaDataCombi combi ) {
+    if ( !( combi.step instanceof BaseStep ) || !combi.stepMeta.getRemoteInputSteps().isEmpty()
+      || !combi.stepMeta.getRemoteOutputSteps().isEmpty() ) {
+      return false;
+    }
+    boolean singleThreaded = false;
+    for ( TransformationType type : combi.stepMeta.getStepMetaInterface().getSupportedTransformationTypes() ) {
+      if ( type == TransformationType.SingleThreaded ) {
+        singleThreaded = true;
+      }
+    }
+    if ( !singleThreaded ) {
+      return false;
+    }
+    try {
+      return combi.step.getClass().getMethod( "batchComplete" ).getDeclaringClass() == BaseStep.class;
+    } catch ( NoSuchMethodException e ) {
+      return false;
+    }
+  }
+}
@@ -31,6 +31,7 @@ import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleStepException;
 import org.pentaho.di.core.logging.HasLogChannelInterface;
 import org.pentaho.di.core.logging.LogChannelInterface;
+import org.pentaho.di.core.row.RowBatch;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.core.variables.VariableSpace;
 import org.pentaho.di.repository.Repository;
@@ -245,6 +246,24 @@ public interface StepInterface extends VariableSpace, HasLogChannelInterface {
    */
   public Object[] getRow() throws KettleException;
 
+  /**
+   * Put a batch of rows on the destination rowsets.
+   *
+   * @param rowMeta
+   *          The description of the rows in the batch
+   * @param batch
+   *          The batch of rows to send to the destinations steps
+   */
+  public void putRowBatch( RowMetaInterface rowMeta, RowBatch batch ) throws KettleException;
+
+  /**
+   * Get a batch of rows from the source step(s). The batch contains at least one row. It is re-used by the next call
+   * so don't keep a reference to it.
+   *
+   * @return a batch of rows or null if there are no more rows.
+   */
+  public RowBatch getRowBatch() throws KettleException;
+
   /**
    * Signal output done to destination steps
    */
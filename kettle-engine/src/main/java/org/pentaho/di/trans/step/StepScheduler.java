@@ -0,0 +1,296 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2015 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.step;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.RowSet;
+import org.pentaho.di.core.logging.LogChannel;
+import org.pentaho.di.core.util.EnvUtil;
+import org.pentaho.di.core.variables.VariableSpace;
+
+/**
+ * Runs step copies as tasks on a pool of worker threads that is shared by all the transformations in the JVM, instead
+ * of giving every step copy a thread of its own. A task only gets a worker when its step copy can process rows without
+ * waiting: when there are rows in one of its input row sets and room in its output row sets. After a short time slice
+ * the worker moves on to the next task. Tasks are woken up by the steps they exchange rows with, a monitor thread
+ * checks the others regularly.<br>
+ * <br>
+ * Some steps wait inside processRow(), for example for the rows of an info stream, a socket or a database. While all
+ * the workers are waiting like that, the monitor adds extra workers so the steps they wait for can still run. The extra
+ * workers stop once they have been idle for a while.
+ *
+ * @since 5.4
+ */
+public class StepScheduler {
+
+  /** The time a task may run before the worker moves on to the next task */
+  private static final long TIME_SLICE = TimeUnit.MILLISECONDS.toNanos( 10 );
+
+  /** The interval of the monitor thread in ms */
+  private static final long MONITOR_INTERVAL = 10;
+
+  /** A time slice running longer than this (in ms) is waiting inside the step */
+  private static final long BLOCKED_DELAY = 100;
+
+  /** The number of ms an extra worker stays idle before it stops */
+  private static final long KEEP_ALIVE = 10000;
+
+  private static StepScheduler instance;
+
+  private final int nrWorkers;
+  private final BlockingQueue<StepTask> queue;
+  private final Set<StepTask> tasks;
+  private final List<Worker> workers;
+  private int nrThreads;
+
+  /**
+   * @param nrWorkers
+   *          the number of worker threads to keep running
+   */
+  StepScheduler( int nrWorkers ) {
+    this.nrWorkers = nrWorkers;
+    this.queue = new LinkedBlockingQueue<StepTask>();
+    this.tasks = Collections.newSetFromMap( new ConcurrentHashMap<StepTask, Boolean>() );
+    this.workers = new ArrayList<Worker>();
+
+    for ( int i = 0; i < nrWorkers; i++ ) {
+      addWorker( true );
+    }
+    Thread monitor = new Thread( new Runnable() {
+      public void run() {
+        monitor();
+      }
+    }, "Step scheduler monitor" );
+    monitor.setDaemon( true );
+    monitor.start();
+  }
+
+  /**
+   * @return the scheduler of this JVM, its size is read from KETTLE_STEP_WORKER_THREADS the first time
+   */
+  public static synchronized StepScheduler getInstance() {
+    if ( instance == null ) {
+      int size = Const.toInt( EnvUtil.getSystemProperty( Const.KETTLE_STEP_WORKER_THREADS ), 0 );
+      if ( size <= 0 ) {
+        size = Runtime.getRuntime().availableProcessors();
+      }
+      instance = new StepScheduler( size );
+    }
+    return instance;
+  }
+
+  /**
+   * @param space
+   *          the variables of the transformation
+   * @return true if the KETTLE_POOLED_STEP_EXECUTION variable asks to run the steps on the worker pool
+   */
+  public static boolean isEnabled( VariableSpace space ) {
+    return "Y".equalsIgnoreCase( space.getVariable( Const.KETTLE_POOLED_STEP_EXECUTION, "N" ) );
+  }
+
+  /**
+   * Starts running the step copies of a transformation. Every step copy is disposed and marked as stopped after its
+   * last row, just like with a thread of its own.
+   *
+   * @param steps
+   *          the initialized step copies
+   * @param rowSets
+   *          the row sets between the step copies
+   * @param rowSetSize
+   *          the number of rows that fit in a row set
+   */
+  public void schedule( List<StepMetaDataCombi> steps, List<RowSet> rowSets, int rowSetSize ) {
+    Map<String, StepTask> byName = new HashMap<String, StepTask>();
+    Map<StepTask, List<RowSet>> inputs = new HashMap<StepTask, List<RowSet>>();
+    Map<StepTask, List<RowSet>> outputs = new HashMap<StepTask, List<RowSet>>();
+    List<StepTask> newTasks = new ArrayList<StepTask>();
+
+    for ( StepMetaDataCombi combi : steps ) {
+      List<RowSet> input = new ArrayList<RowSet>();
+      List<RowSet> output = new ArrayList<RowSet>();
+      StepTask task = new StepTask( this, combi, input, output, rowSetSize );
+      byName.put( getKey( combi.stepname, combi.copy ), task );
+      inputs.put( task, input );
+      outputs.put( task, output );
+      newTasks.add( task );
+
+      // Sleeping or yielding to other step threads only slows down the worker
+      //
+      combi.step.setUsingThreadPriorityManagment( false );
+    }
+
+    for ( RowSet rowSet : rowSets ) {
+      StepTask origin = byName.get( getKey( rowSet.getOriginStepName(), rowSet.getOriginStepCopy() ) );
+      StepTask destination =
+        byName.get( getKey( rowSet.getDestinationStepName(), rowSet.getDestinationStepCopy() ) );
+      if ( origin != null ) {
+        outputs.get( origin ).add( rowSet );
+      }
+      if ( destination != null ) {
+        inputs.get( destination ).add( rowSet );
+      }
+      if ( origin != null && destination != null ) {
+        origin.addNeighbour( destination );
+        destination.addNeighbour( origin );
+      }
+    }
+
+    tasks.addAll( newTasks );
+    for ( StepTask task : newTasks ) {
+      task.wakeUp();
+    }
+  }
+
+  private static String getKey( String stepname, int copy ) {
+    return stepname + "." + copy;
+  }
+
+  void enqueue( StepTask task ) {
+    queue.add( task );
+  }
+
+  void taskFinished( StepTask task ) {
+    tasks.remove( task );
+  }
+
+  long getTimeSlice() {
+    return TIME_SLICE;
+  }
+
+  /**
+   * @return the number of worker threads kept running
+   */
+  public int getNrWorkers() {
+    return nrWorkers;
+  }
+
+  /**
+   * @return the number of worker threads running now, including the extra workers of waiting steps
+   */
+  public synchronized int getNrThreads() {
+    return nrThreads;
+  }
+
+  /**
+   * @return the number of step copies that didn't finish yet
+   */
+  public int getNrTasks() {
+    return tasks.size();
+  }
+
+  private synchronized void addWorker( boolean permanent ) {
+    Worker worker = new Worker( permanent );
+    workers.add( worker );
+    Thread thread = new Thread( worker, "Step worker " + ( ++nrThreads ) );
+    thread.setDaemon( true );
+    thread.start();
+  }
+
+  private synchronized void removeWorker( Worker worker ) {
+    workers.remove( worker );
+    nrThreads--;
+  }
+
+  /**
+   * Wakes up the idle tasks that became ready without a neighbour noticing, for example because they were stopped or
+   * resumed, and adds a worker when all of them are waiting inside a step while other tasks are queued.
+   */
+  private void monitor() {
+    while ( true ) {
+      try {
+        Thread.sleep( MONITOR_INTERVAL );
+      } catch ( InterruptedException e ) {
+        return;
+      }
+      try {
+        for ( StepTask task : tasks ) {
+          if ( task.isIdle() && task.isReady() ) {
+            task.wakeUp();
+          }
+        }
+        if ( !queue.isEmpty() && isBlocked() ) {
+          addWorker( false );
+        }
+      } catch ( Exception e ) {
+        LogChannel.GENERAL.logError( "Unexpected error in the step scheduler", e );
+      }
+    }
+  }
+
+  private synchronized boolean isBlocked() {
+    long limit = System.currentTimeMillis() - BLOCKED_DELAY;
+    for ( Worker worker : workers ) {
+      StepTask task = worker.task;
+      long since = task == null ? 0L : task.getRunningSince();
+      if ( since == 0L || since > limit ) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private class Worker implements Runnable {
+    private final boolean permanent;
+    private volatile StepTask task;
+
+    Worker( boolean permanent ) {
+      this.permanent = permanent;
+    }
+
+    public void run() {
+      while ( true ) {
+        StepTask next;
+        try {
+          next = permanent ? queue.take() : queue.poll( KEEP_ALIVE, TimeUnit.MILLISECONDS );
+        } catch ( InterruptedException e ) {
+          removeWorker( this );
+          return;
+        }
+        if ( next == null ) {
+          removeWorker( this );
+          return;
+        }
+        task = next;
+        try {
+          next.run();
+        } catch ( RuntimeException e ) {
+          // Thrown while finishing the step, it has been marked as stopped already
+          LogChannel.GENERAL.logError( "Unexpected error running step " + next.getStep(), e );
+        } finally {
+          task = null;
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,226 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2015 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.step;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.pentaho.di.core.RowSet;
+
+/**
+ * A step copy that runs on the worker threads of the {@link StepScheduler}. Every call to run() processes rows for a
+ * short while, as long as there is input to read and room in the output row sets, and then hands the worker back to
+ * the other tasks.
+ *
+ * @since 5.4
+ */
+class StepTask extends RunThread {
+
+  private static final int IDLE = 0;
+  private static final int QUEUED = 1;
+  private static final int RUNNING = 2;
+  private static final int WOKEN_UP = 3;
+  private static final int DONE = 4;
+
+  private final StepScheduler scheduler;
+  private final AtomicInteger state;
+  private final List<RowSet> inputRowSets;
+  private final List<RowSet> outputRowSets;
+  private final int rowSetSize;
+  private final List<StepTask> neighbours;
+
+  private boolean started;
+  private volatile long runningSince;
+
+  /**
+   * @param scheduler
+   *          the scheduler to run on
+   * @param combi
+   *          the step copy
+   * @param inputRowSets
+   *          the row sets the step copy reads from
+   * @param outputRowSets
+   *          the row sets the step copy writes to
+   * @param rowSetSize
+   *          the number of rows that fit in a row set
+   */
+  StepTask( StepScheduler scheduler, StepMetaDataCombi combi, List<RowSet> inputRowSets,
+    List<RowSet> outputRowSets, int rowSetSize ) {
+    super( combi );
+    this.scheduler = scheduler;
+    this.state = new AtomicInteger( IDLE );
+    this.inputRowSets = inputRowSets;
+    this.outputRowSets = outputRowSets;
+    this.rowSetSize = rowSetSize;
+    this.neighbours = new ArrayList<StepTask>();
+  }
+
+  /**
+   * Adds a task that reads from or writes to this task, it's woken up when this task made progress.
+   */
+  void addNeighbour( StepTask task ) {
+    if ( task != this && !neighbours.contains( task ) ) {
+      neighbours.add( task );
+    }
+  }
+
+  /**
+   * A step copy can process a row without waiting if one of its input row sets has rows (or all of them are finished)
+   * and all its output row sets have room for another row. Steps without input or output are always ready, they wait
+   * inside processRow() if they have to.
+   *
+   * @return true if the step copy can process a row, or needs to finish because it was stopped
+   */
+  boolean isReady() {
+    if ( getStep().isStopped() ) {
+      return true;
+    }
+    if ( getStep().isPaused() ) {
+      return false;
+    }
+    if ( !inputRowSets.isEmpty() ) {
+      boolean finished = true;
+      boolean available = false;
+      for ( int i = 0; i < inputRowSets.size() && !available; i++ ) {
+        RowSet rowSet = inputRowSets.get( i );
+        if ( rowSet.size() > 0 ) {
+          available = true;
+        } else if ( !rowSet.isDone() ) {
+          finished = false;
+        }
+      }
+      if ( !available && !finished ) {
+        return false;
+      }
+    }
+    for ( int i = 0; i < outputRowSets.size(); i++ ) {
+      if ( outputRowSets.get( i ).size() >= rowSetSize ) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Queues the task unless it's queued or finished already. A running task is queued again when its time slice ends.
+   */
+  void wakeUp() {
+    while ( true ) {
+      int current = state.get();
+      if ( current == IDLE ) {
+        if ( state.compareAndSet( IDLE, QUEUED ) ) {
+          scheduler.enqueue( this );
+          return;
+        }
+      } else if ( current == RUNNING ) {
+        if ( state.compareAndSet( RUNNING, WOKEN_UP ) ) {
+          return;
+        }
+      } else {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Runs one time slice of the step copy on the calling worker thread.
+   */
+  @Override
+  public void run() {
+    state.set( RUNNING );
+    runningSince = System.currentTimeMillis();
+
+    boolean done = false;
+    boolean processed = false;
+    Throwable error = null;
+    try {
+      if ( !started ) {
+        started = true;
+        startRunning();
+      }
+      long end = System.nanoTime() + scheduler.getTimeSlice();
+      while ( isReady() ) {
+        processed = true;
+        if ( !processRow() ) {
+          done = true;
+          break;
+        }
+        if ( System.nanoTime() - end >= 0 ) {
+          break;
+        }
+      }
+    } catch ( Throwable t ) {
+      error = t;
+    }
+    runningSince = 0L;
+
+    if ( done || error != null ) {
+      state.set( DONE );
+      try {
+        if ( error != null ) {
+          handleError( error );
+        }
+      } finally {
+        try {
+          finish();
+        } finally {
+          scheduler.taskFinished( this );
+          wakeUpNeighbours();
+        }
+      }
+      return;
+    }
+
+    if ( processed ) {
+      wakeUpNeighbours();
+    }
+    if ( isReady() || !state.compareAndSet( RUNNING, IDLE ) ) {
+      // Still work to do, or somebody made room or rows available while we were running
+      //
+      state.set( QUEUED );
+      scheduler.enqueue( this );
+    }
+  }
+
+  private void wakeUpNeighbours() {
+    for ( int i = 0; i < neighbours.size(); i++ ) {
+      neighbours.get( i ).wakeUp();
+    }
+  }
+
+  boolean isIdle() {
+    return state.get() == IDLE;
+  }
+
+  boolean isDone() {
+    return state.get() == DONE;
+  }
+
+  /**
+   * @return the time the current time slice started or 0 if the task isn't running
+   */
+  long getRunningSince() {
+    return runningSince;
+  }
+}
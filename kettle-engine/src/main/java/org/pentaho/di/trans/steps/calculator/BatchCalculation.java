@@ -0,0 +1,271 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2015 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.trans.steps.calculator;
+
+import org.pentaho.di.core.row.RowBatch;
+import org.pentaho.di.core.row.RowDataUtil;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.trans.compiler.ExpressionCompiler;
+
+/**
+ * Calculates the fields of a Calculator step for a batch of rows, one calculation at a time for all the rows of the
+ * batch. Copies and the arithmetic on plain integer and number fields of the same type are supported, when the result
+ * doesn't need to be converted. The arguments are read from the primitive columns of the input batch and the results
+ * are kept in primitive columns as well, so only the fields that end up in the output rows are boxed.
+ *
+ * @since 5.4
+ */
+public class BatchCalculation {
+
+  private final int inputSize;
+  private final int outputSize;
+  private final int[] calcTypes;
+  private final boolean[] integer;
+  private final boolean[] removed;
+  private final int[] indexA;
+  private final int[] indexB;
+
+  /**
+   * The calculated values per calculation
+   */
+  private long[][] longs;
+  private double[][] doubles;
+  private long[][] nulls;
+  private int capacity;
+
+  private BatchCalculation( int inputSize, int outputSize, int nrCalculations ) {
+    this.inputSize = inputSize;
+    this.outputSize = outputSize;
+    calcTypes = new int[nrCalculations];
+    integer = new boolean[nrCalculations];
+    removed = new boolean[nrCalculations];
+    indexA = new int[nrCalculations];
+    indexB = new int[nrCalculations];
+  }
+
+  /**
+   * Prepares the calculations for batches of rows with the given layout.
+   *
+   * @param calculation
+   *          the calculations of the step
+   * @param fieldIndexes
+   *          the indexes of the arguments of the calculations in the row
+   * @param calcRowMeta
+   *          the layout of the input row followed by the calculated fields
+   * @param inputSize
+   *          the number of fields in the input row
+   * @param outputSize
+   *          the number of fields in the output row
+   * @return the prepared calculations or null if one of the calculations can't be done on the columns of a batch
+   */
+  public static BatchCalculation prepare( CalculatorMetaFunction[] calculation,
+    Calculator.FieldIndexes[] fieldIndexes, RowMetaInterface calcRowMeta, int inputSize, int outputSize ) {
+    BatchCalculation batchCalculation = new BatchCalculation( inputSize, outputSize, calculation.length );
+    for ( int i = 0; i < calculation.length; i++ ) {
+      int index = inputSize + i;
+      int a = fieldIndexes[i].indexA;
+      int b = fieldIndexes[i].indexB;
+
+      // The arguments are input fields or fields calculated before
+      //
+      if ( a < 0 || a >= index ) {
+        return null;
+      }
+      ValueMetaInterface metaA = calcRowMeta.getValueMeta( a );
+      if ( !isNumeric( metaA ) || calcRowMeta.getValueMeta( index ).getType() != metaA.getType() ) {
+        return null;
+      }
+
+      switch ( calculation[i].getCalcType() ) {
+        case CalculatorMetaFunction.CALC_COPY_OF_FIELD:
+        case CalculatorMetaFunction.CALC_SQUARE:
+          b = a;
+          break;
+        case CalculatorMetaFunction.CALC_ADD:
+        case CalculatorMetaFunction.CALC_SUBTRACT:
+        case CalculatorMetaFunction.CALC_MULTIPLY:
+        case CalculatorMetaFunction.CALC_DIVIDE:
+          if ( b < 0 || b >= index ) {
+            return null;
+          }
+          ValueMetaInterface metaB = calcRowMeta.getValueMeta( b );
+          if ( !isNumeric( metaB ) || metaB.getType() != metaA.getType() ) {
+            return null;
+          }
+          break;
+        default:
+          return null;
+      }
+
+      batchCalculation.calcTypes[i] = calculation[i].getCalcType();
+      batchCalculation.integer[i] = metaA.getType() == ValueMetaInterface.TYPE_INTEGER;
+      batchCalculation.removed[i] = calculation[i].isRemovedFromResult();
+      batchCalculation.indexA[i] = a;
+      batchCalculation.indexB[i] = b;
+    }
+    return batchCalculation;
+  }
+
+  private static boolean isNumeric( ValueMetaInterface valueMeta ) {
+    return ExpressionCompiler.isPlain( valueMeta )
+      && ( valueMeta.getType() == ValueMetaInterface.TYPE_INTEGER
+      || valueMeta.getType() == ValueMetaInterface.TYPE_NUMBER );
+  }
+
+  /**
+   * Calculates the fields for all the rows of a batch. Like ValueDataUtil, a null argument gives a null result and an
+   * integer division by zero throws an exception.
+   *
+   * @param batch
+   *          the input rows
+   * @param outputBatch
+   *          receives the output rows: the input fields followed by the calculated fields that are not removed
+   */
+  public void calculate( RowBatch batch, RowBatch outputBatch ) {
+    int size = batch.size();
+    if ( capacity < batch.getCapacity() ) {
+      allocate( batch.getCapacity() );
+    }
+
+    for ( int i = 0; i < calcTypes.length; i++ ) {
+      int words = ( size + 63 ) >>> 6;
+      long[] nullsA = getNulls( batch, indexA[i] );
+      long[] nullsB = getNulls( batch, indexB[i] );
+      for ( int w = 0; w < words; w++ ) {
+        nulls[i][w] = nullsA[w] | nullsB[w];
+      }
+      if ( integer[i] ) {
+        calculateLongs( i, getLongs( batch, indexA[i] ), getLongs( batch, indexB[i] ), size );
+      } else {
+        calculateDoubles( i, getDoubles( batch, indexA[i] ), getDoubles( batch, indexB[i] ), size );
+      }
+    }
+
+    for ( int r = 0; r < size; r++ ) {
+      Object[] row = RowDataUtil.resizeArray( batch.getRow( r ), outputSize );
+      int index = inputSize;
+      for ( int i = 0; i < calcTypes.length; i++ ) {
+        if ( removed[i] ) {
+          continue;
+        }
+        if ( RowBatch.isNull( nulls[i], r ) ) {
+          row[index++] = null;
+        } else if ( integer[i] ) {
+          row[index++] = Long.valueOf( longs[i][r] );
+        } else {
+          row[index++] = Double.valueOf( doubles[i][r] );
+        }
+      }
+      outputBatch.addRow( row );
+    }
+  }
+
+  private void calculateLongs( int i, long[] a, long[] b, int size ) {
+    long[] result = longs[i];
+    switch ( calcTypes[i] ) {
+      case CalculatorMetaFunction.CALC_COPY_OF_FIELD:
+        System.arraycopy( a, 0, result, 0, size );
+        break;
+      case CalculatorMetaFunction.CALC_ADD:
+        for ( int r = 0; r < size; r++ ) {
+          result[r] = a[r] + b[r];
+        }
+        break;
+      case CalculatorMetaFunction.CALC_SUBTRACT:
+        for ( int r = 0; r < size; r++ ) {
+          result[r] = a[r] - b[r];
+        }
+        break;
+      case CalculatorMetaFunction.CALC_DIVIDE:
+        for ( int r = 0; r < size; r++ ) {
+          if ( !RowBatch.isNull( nulls[i], r ) ) {
+            result[r] = a[r] / b[r];
+          }
+        }
+        break;
+      default: // multiply and square
+        for ( int r = 0; r < size; r++ ) {
+          result[r] = a[r] * b[r];
+        }
+        break;
+    }
+  }
+
+  private void calculateDoubles( int i, double[] a, double[] b, int size ) {
+    double[] result = doubles[i];
+    switch ( calcTypes[i] ) {
+      case CalculatorMetaFunction.CALC_COPY_OF_FIELD:
+        System.arraycopy( a, 0, result, 0, size );
+        break;
+      case CalculatorMetaFunction.CALC_ADD:
+        for ( int r = 0; r < size; r++ ) {
+          result[r] = a[r] + b[r];
+        }
+        break;
+      case CalculatorMetaFunction.CALC_SUBTRACT:
+        for ( int r = 0; r < size; r++ ) {
+          result[r] = a[r] - b[r];
+        }
+        break;
+      case CalculatorMetaFunction.CALC_DIVIDE:
+        for ( int r = 0; r < size; r++ ) {
+          result[r] = a[r] / b[r];
+        }
+        break;
+      default: // multiply and square
+        for ( int r = 0; r < size; r++ ) {
+          result[r] = a[r] * b[r];
+        }
+        break;
+    }
+  }
+
+  private void allocate( int newCapacity ) {
+    capacity = newCapacity;
+    longs = new long[calcTypes.length][];
+    doubles = new double[calcTypes.length][];
+    nulls = new long[calcTypes.length][];
+    for ( int i = 0; i < calcTypes.length; i++ ) {
+      if ( integer[i] ) {
+        longs[i] = new long[capacity];
+      } else {
+        doubles[i] = new double[capacity];
+      }
+      nulls[i] = new long[( capacity + 63 ) >>> 6];
+    }
+  }
+
+  private long[] getLongs( RowBatch batch, int index ) {
+    return index < inputSize ? batch.getLongs( index ) : longs[index - inputSize];
+  }
+
+  private double[] getDoubles( RowBatch batch, int index ) {
+    return index < inputSize ? batch.getDoubles( index ) : doubles[index - inputSize];
+  }
+
+  private long[] getNulls( RowBatch batch, int index ) {
+    return index < inputSize ? batch.getNulls( index ) : nulls[index - inputSize];
+  }
+}
@@ -0,0 +1,263 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2015 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.calculator;
+
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.trans.compiler.ExpressionCompiler;
+
+/**
+ * Generates the Java code of the calculations of a Calculator step for a given row layout. Copies and the arithmetic
+ * on plain integer and number fields (see {@link ExpressionCompiler#isPlain(ValueMetaInterface)}) of the same type are
+ * compiled, when the result doesn't need to be converted. Their results are kept in primitive local variables, so
+ * chained calculations don't box intermediate results. The other calculations are done by the step as usual, in the
+ * same order.
+ *
+ * @since 5.4
+ */
+class CalculatorCompiler {
+
+  private final CalculatorMetaFunction[] calculation;
+  private final Calculator.FieldIndexes[] fieldIndexes;
+  private final RowMetaInterface calcRowMeta;
+  private final int inputSize;
+
+  /**
+   * Per field of the row: its value is in local variables rather than in the row
+   */
+  private final boolean[] locals;
+
+  /**
+   * Per field of the row: the calculated value is stored in the row
+   */
+  private final boolean[] stored;
+
+  private final StringBuilder declarations;
+  private final StringBuilder code;
+
+  private CalculatorCompiler( CalculatorMetaFunction[] calculation, Calculator.FieldIndexes[] fieldIndexes,
+    RowMetaInterface calcRowMeta, int inputSize ) {
+    this.calculation = calculation;
+    this.fieldIndexes = fieldIndexes;
+    this.calcRowMeta = calcRowMeta;
+    this.inputSize = inputSize;
+    locals = new boolean[calcRowMeta.size()];
+    stored = new boolean[calcRowMeta.size()];
+    declarations = new StringBuilder();
+    code = new StringBuilder();
+  }
+
+  /**
+   * Compiles the calculations for rows with the given layout.
+   *
+   * @param calculation
+   *          the calculations of the step
+   * @param fieldIndexes
+   *          the indexes of the arguments of the calculations in the row
+   * @param calcRowMeta
+   *          the layout of the input row followed by the calculated fields
+   * @param inputSize
+   *          the number of fields in the input row
+   * @param interpreter
+   *          calculates the fields that are not compiled
+   * @return the compiled calculations or null if none of the calculations can be compiled
+   * @throws KettleException
+   *           in case the generated code doesn't compile
+   */
+  static CompiledCalculation compile( CalculatorMetaFunction[] calculation, Calculator.FieldIndexes[] fieldIndexes,
+    RowMetaInterface calcRowMeta, int inputSize, CompiledCalculation.Interpreter interpreter ) throws KettleException {
+    CalculatorCompiler compiler = new CalculatorCompiler( calculation, fieldIndexes, calcRowMeta, inputSize );
+
+    // The values used by interpreted calculations and the fields of the result need to be in the row
+    //
+    boolean[] compiled = new boolean[calculation.length];
+    int nrCompiled = 0;
+    int nrInterpreted = 0;
+    for ( int i = 0; i < calculation.length; i++ ) {
+      if ( Const.isEmpty( calculation[i].getFieldName() ) ) {
+        continue;
+      }
+      compiled[i] = compiler.isCompilable( i );
+      if ( compiled[i] ) {
+        nrCompiled++;
+      } else {
+        nrInterpreted++;
+        compiler.store( fieldIndexes[i].indexA );
+        compiler.store( fieldIndexes[i].indexB );
+        compiler.store( fieldIndexes[i].indexC );
+      }
+      if ( !calculation[i].isRemovedFromResult() ) {
+        compiler.store( inputSize + i );
+      }
+    }
+    if ( nrCompiled == 0 ) {
+      return null;
+    }
+
+    for ( int i = 0; i < calculation.length; i++ ) {
+      if ( Const.isEmpty( calculation[i].getFieldName() ) ) {
+        continue;
+      }
+      if ( compiled[i] ) {
+        compiler.generate( i );
+      } else {
+        compiler.code.append( "  interpreter.calculate( " ).append( i ).append( ", " ).append( inputSize + i )
+          .append( ", d );\n" );
+      }
+    }
+
+    String classBody =
+      "public void calculate( Object[] d ) throws org.pentaho.di.core.exception.KettleValueException {\n"
+        + compiler.declarations + compiler.code + "}\n";
+    CompiledCalculation compiledCalculation = ExpressionCompiler.newInstance( CompiledCalculation.class, classBody );
+    compiledCalculation.setInterpreter( interpreter, nrCompiled, nrInterpreted );
+    return compiledCalculation;
+  }
+
+  private void store( int index ) {
+    if ( index >= 0 && index < stored.length ) {
+      stored[index] = true;
+    }
+  }
+
+  private boolean isCompilable( int i ) {
+    CalculatorMetaFunction fn = calculation[i];
+    ValueMetaInterface targetMeta = calcRowMeta.getValueMeta( inputSize + i );
+    if ( fieldIndexes[i].indexA < 0 ) {
+      return false;
+    }
+    ValueMetaInterface metaA = calcRowMeta.getValueMeta( fieldIndexes[i].indexA );
+
+    // The result has the data type of the first argument, it's not converted
+    //
+    if ( metaA.getType() == ValueMetaInterface.TYPE_NONE || targetMeta.getType() != metaA.getType() ) {
+      return false;
+    }
+
+    switch ( fn.getCalcType() ) {
+      case CalculatorMetaFunction.CALC_COPY_OF_FIELD:
+        return true;
+      case CalculatorMetaFunction.CALC_SQUARE:
+        return isNumeric( metaA );
+      case CalculatorMetaFunction.CALC_ADD:
+      case CalculatorMetaFunction.CALC_SUBTRACT:
+      case CalculatorMetaFunction.CALC_MULTIPLY:
+      case CalculatorMetaFunction.CALC_DIVIDE:
+        if ( Const.isEmpty( fn.getFieldB() ) || fieldIndexes[i].indexB < 0 ) {
+          return false;
+        }
+        ValueMetaInterface metaB = calcRowMeta.getValueMeta( fieldIndexes[i].indexB );
+        return isNumeric( metaA ) && isNumeric( metaB ) && metaA.getType() == metaB.getType();
+      default:
+        return false;
+    }
+  }
+
+  private static boolean isNumeric( ValueMetaInterface valueMeta ) {
+    return ExpressionCompiler.isPlain( valueMeta )
+      && ( valueMeta.getType() == ValueMetaInterface.TYPE_INTEGER
+      || valueMeta.getType() == ValueMetaInterface.TYPE_NUMBER );
+  }
+
+  private void generate( int i ) {
+    int index = inputSize + i;
+    int indexA = fieldIndexes[i].indexA;
+    int type = calcRowMeta.getValueMeta( indexA ).getType();
+
+    switch ( calculation[i].getCalcType() ) {
+      case CalculatorMetaFunction.CALC_COPY_OF_FIELD:
+        if ( locals[indexA] && indexA != index ) {
+          declare( index, type );
+          code.append( "  n" ).append( index ).append( " = n" ).append( indexA ).append( ";\n" );
+          code.append( "  v" ).append( index ).append( " = v" ).append( indexA ).append( ";\n" );
+          storeLocal( index, type );
+        } else {
+          code.append( "  d[" ).append( index ).append( "] = d[" ).append( indexA ).append( "];\n" );
+        }
+        break;
+      case CalculatorMetaFunction.CALC_SQUARE:
+        generateArithmetic( index, type, "*", indexA, indexA );
+        break;
+      case CalculatorMetaFunction.CALC_ADD:
+        generateArithmetic( index, type, "+", indexA, fieldIndexes[i].indexB );
+        break;
+      case CalculatorMetaFunction.CALC_SUBTRACT:
+        generateArithmetic( index, type, "-", indexA, fieldIndexes[i].indexB );
+        break;
+      case CalculatorMetaFunction.CALC_MULTIPLY:
+        generateArithmetic( index, type, "*", indexA, fieldIndexes[i].indexB );
+        break;
+      default:
+        generateArithmetic( index, type, "/", indexA, fieldIndexes[i].indexB );
+        break;
+    }
+  }
+
+  /**
+   * Like ValueDataUtil, a null argument gives a null result and an integer division by zero throws an exception.
+   */
+  private void generateArithmetic( int index, int type, String operator, int indexA, int indexB ) {
+    String isNull = isNull( indexA ) + " || " + isNull( indexB );
+    String value = getValue( indexA, type ) + " " + operator + " " + getValue( indexB, type );
+    declare( index, type );
+    code.append( "  n" ).append( index ).append( " = " ).append( isNull ).append( ";\n" );
+    code.append( "  if ( !n" ).append( index ).append( " ) {\n" );
+    code.append( "    v" ).append( index ).append( " = " ).append( value ).append( ";\n" );
+    code.append( "  }\n" );
+    storeLocal( index, type );
+  }
+
+  private void declare( int index, int type ) {
+    declarations.append( type == ValueMetaInterface.TYPE_INTEGER ? "  long v" : "  double v" ).append( index )
+      .append( type == ValueMetaInterface.TYPE_INTEGER ? " = 0L;\n" : " = 0.0;\n" );
+    declarations.append( "  boolean n" ).append( index ).append( " = true;\n" );
+    locals[index] = true;
+  }
+
+  private void storeLocal( int index, int type ) {
+    if ( !stored[index] ) {
+      return;
+    }
+    code.append( "  if ( n" ).append( index ).append( " ) {\n" );
+    code.append( "    d[" ).append( index ).append( "] = null;\n" );
+    code.append( "  } else {\n" );
+    code.append( "    d[" ).append( index ).append( "] = " ).append(
+      type == ValueMetaInterface.TYPE_INTEGER ? "Long" : "Double" ).append( ".valueOf( v" ).append( index ).append(
+      " );\n" );
+    code.append( "  }\n" );
+  }
+
+  private String isNull( int index ) {
+    return locals[index] ? "n" + index : "d[" + index + "] == null";
+  }
+
+  private String getValue( int index, int type ) {
+    if ( locals[index] ) {
+      return "v" + index;
+    }
+    return type == ValueMetaInterface.TYPE_INTEGER
+      ? "( (Long) d[" + index + "] ).longValue()" : "( (Double) d[" + index + "] ).doubleValue()";
+  }
+}
@@ -23,6 +23,7 @@
 package org.pentaho.di.trans.steps.calculator;
 
 import org.pentaho.di.core.exception.KettlePluginException;
+import org.pentaho.di.core.row.RowBatch;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.core.row.ValueMetaInterface;
 import org.pentaho.di.core.row.value.ValueMetaFactory;
@@ -44,6 +45,12 @@ public class CalculatorData extends BaseStepData implements StepDataInterface {
 
   private int[] tempIndexes;
 
+  private RowBatch outputBatch;
+
+  private BatchCalculation batchCalculation;
+
+  private CompiledCalculation compiledCalculation;
+
   private final Map<Integer, ValueMetaInterface> resultMetaMapping;
 
   public CalculatorData() {
@@ -75,6 +82,33 @@ public class CalculatorData extends BaseStepData implements StepDataInterface {
     this.fieldIndexes = fieldIndexes;
   }
 
+  public RowBatch getOutputBatch() {
+    return outputBatch;
+  }
+
+  public void setOutputBatch( RowBatch outputBatch ) {
+    this.outputBatch = outputBatch;
+  }
+
+  public BatchCalculation getBatchCalculation() {
+    return batchCalculation;
+  }
+
+  public void setBatchCalculation( BatchCalculation batchCalculation ) {
+    this.batchCalculation = batchCalculation;
+  }
+
+  /**
+   * @return the calculations compiled for the input rows or null to interpret them
+   */
+  public CompiledCalculation getCompiledCalculation() {
+    return compiledCalculation;
+  }
+
+  public void setCompiledCalculation( CompiledCalculation compiledCalculation ) {
+    this.compiledCalculation = compiledCalculation;
+  }
+
   public int[] getTempIndexes() {
     return tempIndexes;
   }
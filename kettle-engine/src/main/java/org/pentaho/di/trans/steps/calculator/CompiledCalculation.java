@@ -0,0 +1,70 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2015 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.calculator;
+
+import org.pentaho.di.core.exception.KettleValueException;
+
+/**
+ * The base class of the code the {@link CalculatorCompiler} generates for the calculations of a Calculator step. The
+ * calculations that could not be compiled are handed to the interpreter of the step.
+ *
+ * @since 5.4
+ */
+public abstract class CompiledCalculation {
+
+  /**
+   * Calculates one field the way the step always does
+   */
+  public interface Interpreter {
+    void calculate( int nr, int index, Object[] calcData ) throws KettleValueException;
+  }
+
+  protected Interpreter interpreter;
+
+  private int nrCompiled;
+  private int nrInterpreted;
+
+  /**
+   * Calculates all fields of a row.
+   *
+   * @param calcData
+   *          the input row, resized to hold the calculated fields
+   * @throws KettleValueException
+   *           in case there is a calculation error
+   */
+  public abstract void calculate( Object[] calcData ) throws KettleValueException;
+
+  void setInterpreter( Interpreter interpreter, int nrCompiled, int nrInterpreted ) {
+    this.interpreter = interpreter;
+    this.nrCompiled = nrCompiled;
+    this.nrInterpreted = nrInterpreted;
+  }
+
+  public int getNrCompiled() {
+    return nrCompiled;
+  }
+
+  public int getNrInterpreted() {
+    return nrInterpreted;
+  }
+}
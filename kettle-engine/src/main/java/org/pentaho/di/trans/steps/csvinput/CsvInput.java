@@ -333,11 +333,31 @@ public class CsvInput extends BaseStep implements StepInterface {
 
       data.fis = new FileInputStream( KettleVFS.getFilename( fileObject ) );
       data.fc = data.fis.getChannel();
-      data.bb = ByteBuffer.allocateDirect( data.preferredBufferSize );
+
+      if ( data.memoryMapped ) {
+        // Start one byte early when we skip into the file: if a row starts exactly at the block boundary, the skipped
+        // row is then only the line end of the previous row and this step copy reads the row at the boundary. The
+        // previous step copy stops as soon as it has read up to the boundary, so it doesn't read that row. This way a
+        // row at an exact boundary is neither lost nor read twice.
+        //
+        long startPosition = 0L;
+        if ( data.parallel && data.bytesToSkipInFirstFile > 0 ) {
+          startPosition = data.bytesToSkipInFirstFile - 1;
+          data.totalBytesRead--;
+        }
+        data.scanner =
+          new MappedCsvScanner( data.fc, startPosition, data.delimiter[0], data.enclosure,
+            meta.getInputFields().length, meta.isNewlinePossibleInFields(), MappedCsvScanner.DEFAULT_WINDOW_SIZE );
+        if ( startPosition > 0 ) {
+          readOneRow( true, true );
+        }
+      } else {
+        data.bb = ByteBuffer.allocateDirect( data.preferredBufferSize );
+      }
 
       // If we are running in parallel and we need to skip bytes in the first file, let's do so here.
       //
-      if ( data.parallel ) {
+      if ( data.parallel && !data.memoryMapped ) {
         if ( data.bytesToSkipInFirstFile > 0 ) {
           data.fc.position( data.bytesToSkipInFirstFile );
 
@@ -397,6 +417,9 @@ public class CsvInput extends BaseStep implements StepInterface {
    * @throws KettleException
    */
   private Object[] readOneRow( boolean skipRow, boolean ignoreEnclosures ) throws KettleException {
+    if ( data.scanner != null ) {
+      return readOneMappedRow( skipRow, ignoreEnclosures );
+    }
 
     try {
 
@@ -608,38 +631,88 @@ public class CsvInput extends BaseStep implements StepInterface {
         data.setStartBuffer( data.getEndBuffer() );
       }
 
-      // Optionally add the current filename to the mix as well...
-      //
-      if ( meta.isIncludingFilename() && !Const.isEmpty( meta.getFilenameField() ) ) {
+      return finishRow( outputRowData, ignoreEnclosures, conversionExceptions, exceptionFields );
+    } catch ( KettleConversionException e ) {
+      throw e;
+    } catch ( IOException e ) {
+      throw new KettleFileException( "Exception reading line using NIO", e );
+    }
+  }
+
+  /**
+   * Reads a single row with the memory mapped scanner. The fields are located in the mapped file first, only the
+   * fields that are needed are copied and converted.
+   */
+  private Object[] readOneMappedRow( boolean skipRow, boolean ignoreEnclosures ) throws KettleException {
+    try {
+      MappedCsvScanner scanner = data.scanner;
+      if ( !scanner.nextRow( ignoreEnclosures ) ) {
+        return null; // nothing more to read, call it a day.
+      }
+      data.totalBytesRead += scanner.getRowLength();
+
+      Object[] outputRowData = RowDataUtil.allocateRowData( data.outputRowMeta.size() );
+      if ( skipRow ) {
+        return finishRow( outputRowData, ignoreEnclosures, null, null );
+      }
+
+      List<Exception> conversionExceptions = null;
+      List<ValueMetaInterface> exceptionFields = null;
+      int nrFields = Math.min( scanner.getFieldCount(), meta.getInputFields().length );
+      for ( int i = 0; i < nrFields; i++ ) {
+        byte[] field = scanner.getField( i );
         if ( meta.isLazyConversionActive() ) {
-          outputRowData[ data.filenameFieldIndex ] = data.binaryFilename;
+          outputRowData[ i ] = field;
         } else {
-          outputRowData[ data.filenameFieldIndex ] = data.filenames[ data.filenr - 1 ];
+          ValueMetaInterface sourceValueMeta = data.convertRowMeta.getValueMeta( i );
+          try {
+            outputRowData[ i ] = sourceValueMeta.convertBinaryStringToNativeType( field );
+          } catch ( KettleValueException e ) {
+            if ( conversionExceptions == null ) {
+              conversionExceptions = new ArrayList<Exception>();
+              exceptionFields = new ArrayList<ValueMetaInterface>();
+            }
+            conversionExceptions.add( e );
+            exceptionFields.add( sourceValueMeta );
+          }
         }
       }
 
-      if ( data.isAddingRowNumber ) {
-        outputRowData[ data.rownumFieldIndex ] = data.rowNumber++;
-      }
+      return finishRow( outputRowData, ignoreEnclosures, conversionExceptions, exceptionFields );
+    } catch ( IOException e ) {
+      throw new KettleFileException( "Exception reading line from memory mapped file", e );
+    }
+  }
 
-      if ( !ignoreEnclosures ) {
-        incrementLinesInput();
+  private Object[] finishRow( Object[] outputRowData, boolean ignoreEnclosures, List<Exception> conversionExceptions,
+    List<ValueMetaInterface> exceptionFields ) throws KettleConversionException {
+    // Optionally add the current filename to the mix as well...
+    //
+    if ( meta.isIncludingFilename() && !Const.isEmpty( meta.getFilenameField() ) ) {
+      if ( meta.isLazyConversionActive() ) {
+        outputRowData[ data.filenameFieldIndex ] = data.binaryFilename;
+      } else {
+        outputRowData[ data.filenameFieldIndex ] = data.filenames[ data.filenr - 1 ];
       }
+    }
 
-      if ( conversionExceptions != null && conversionExceptions.size() > 0 ) {
-        // Forward the first exception
-        //
-        throw new KettleConversionException(
-          "There were " + conversionExceptions.size() + " conversion errors on line " + getLinesInput(),
-          conversionExceptions, exceptionFields, outputRowData );
-      }
+    if ( data.isAddingRowNumber ) {
+      outputRowData[ data.rownumFieldIndex ] = data.rowNumber++;
+    }
 
-      return outputRowData;
-    } catch ( KettleConversionException e ) {
-      throw e;
-    } catch ( IOException e ) {
-      throw new KettleFileException( "Exception reading line using NIO", e );
+    if ( !ignoreEnclosures ) {
+      incrementLinesInput();
+    }
+
+    if ( conversionExceptions != null && conversionExceptions.size() > 0 ) {
+      // Forward the first exception
+      //
+      throw new KettleConversionException(
+        "There were " + conversionExceptions.size() + " conversion errors on line " + getLinesInput(),
+        conversionExceptions, exceptionFields, outputRowData );
     }
+
+    return outputRowData;
   }
 
   public boolean init( StepMetaInterface smi, StepDataInterface sdi ) {
@@ -739,6 +812,15 @@ public class CsvInput extends BaseStep implements StepInterface {
           break;
       }
 
+      // The memory mapped scanner looks for single bytes
+      //
+      data.memoryMapped =
+        meta.isMemoryMapped() && data.encodingType.getLength() == 1 && data.delimiter.length == 1
+          && ( data.enclosure == null || data.enclosure.length == 1 );
+      if ( meta.isMemoryMapped() && !data.memoryMapped ) {
+        logBasic( BaseMessages.getString( PKG, "CsvInput.Log.MemoryMappingNotPossible" ) );
+      }
+
       return true;
 
     }
@@ -81,6 +81,9 @@ public class CsvInputData extends BaseStepData implements StepDataInterface {
   public PatternMatcherInterface enclosureMatcher;
   public CrLfMatcherInterface crLfMatcher;
 
+  public boolean memoryMapped;
+  MappedCsvScanner scanner;
+
   /**
    * Data class for CsvInput step
    *
@@ -265,6 +268,10 @@ public class CsvInputData extends BaseStepData implements StepDataInterface {
 
   void closeFile() throws KettleException {
     try {
+      if ( scanner != null ) {
+        scanner.close();
+        scanner = null;
+      }
       if ( fc != null ) {
         fc.close();
       }
@@ -0,0 +1,364 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2015 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.csvinput;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Splits a memory mapped file into rows and fields. Large files are mapped one window at a time, a row that doesn't
+ * fit in the rest of a window is read again from the start of the next window.<br>
+ * <br>
+ * Delimiters, enclosures and line ends are looked for 8 bytes at a time: every byte of a long is compared with the
+ * byte we're looking for using a few arithmetic operations (SWAR, SIMD within a register). The start and end of the
+ * fields of the current row are kept in index arrays that are reused for every row. The data of a field is only copied
+ * when it is asked for, conversions are left to the caller.<br>
+ * <br>
+ * Only single byte delimiters and enclosures in encodings where these and the line ends take a single byte are
+ * supported, for example ASCII, ISO-8859-1 or UTF-8. An enclosure is only recognized at the start of a field.
+ *
+ * @since 5.4
+ */
+class MappedCsvScanner {
+
+  /**
+   * The default size of the part of the file that is mapped at once
+   */
+  static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+  private static final byte CR = '\r';
+  private static final byte LF = '\n';
+
+  private static final long ONES = 0x0101010101010101L;
+  private static final long LOW_BITS = 0x7F7F7F7F7F7F7F7FL;
+  private static final long CR_PATTERN = ONES * CR;
+  private static final long LF_PATTERN = ONES * LF;
+
+  private final FileChannel channel;
+  private final long fileSize;
+  private final byte delimiter;
+  private final long delimiterPattern;
+  private final boolean enclosed;
+  private final byte enclosure;
+  private final long enclosurePattern;
+  private final int maxFields;
+  private final boolean newlinesInFields;
+
+  private int windowSize;
+  private MappedByteBuffer buffer;
+  private long windowStart;
+  private int limit;
+  private boolean lastWindow;
+  private int position;
+
+  private final int[] fieldStarts;
+  private final int[] fieldEnds;
+  private final int[] fieldEscapes;
+  private int nrFields;
+  private int rowLength;
+
+  /**
+   * @param channel
+   *          the file to read
+   * @param startPosition
+   *          the position in the file to start reading from
+   * @param delimiter
+   *          the field delimiter
+   * @param enclosure
+   *          the enclosure or null if fields are not enclosed
+   * @param maxFields
+   *          the number of fields to keep track of, the other fields in a row are skipped
+   * @param newlinesInFields
+   *          true if a line end only ends a row in the last field
+   * @param windowSize
+   *          the number of bytes to map at once
+   * @throws IOException
+   *           in case the file can't be mapped
+   */
+  MappedCsvScanner( FileChannel channel, long startPosition, byte delimiter, byte[] enclosure, int maxFields,
+    boolean newlinesInFields, int windowSize ) throws IOException {
+    this.channel = channel;
+    this.fileSize = channel.size();
+    this.delimiter = delimiter;
+    this.delimiterPattern = ONES * ( delimiter & 0xFF );
+    this.enclosed = enclosure != null && enclosure.length > 0;
+    this.enclosure = enclosed ? enclosure[0] : 0;
+    this.enclosurePattern = ONES * ( this.enclosure & 0xFF );
+    this.maxFields = maxFields;
+    this.newlinesInFields = newlinesInFields;
+    this.windowSize = windowSize;
+
+    fieldStarts = new int[maxFields];
+    fieldEnds = new int[maxFields];
+    fieldEscapes = new int[maxFields];
+
+    map( startPosition );
+  }
+
+  private void map( long start ) throws IOException {
+    long length = Math.min( windowSize, fileSize - start );
+    buffer = channel.map( FileChannel.MapMode.READ_ONLY, start, length );
+    buffer.order( ByteOrder.LITTLE_ENDIAN );
+    windowStart = start;
+    limit = (int) length;
+    lastWindow = start + length >= fileSize;
+    position = 0;
+  }
+
+  /**
+   * Finds the fields of the next row.
+   *
+   * @param ignoreEnclosures
+   *          true to split the row without looking at enclosures, for example to skip to the start of the next row
+   * @return false if there are no more rows in the file
+   * @throws IOException
+   *           in case the next part of the file can't be mapped
+   */
+  boolean nextRow( boolean ignoreEnclosures ) throws IOException {
+    while ( true ) {
+      if ( position >= limit && lastWindow ) {
+        return false;
+      }
+      if ( scanRow( ignoreEnclosures ) ) {
+        return true;
+      }
+
+      // The row continues after the end of the window, map the file again starting with this row.
+      // If the row is longer than a window, we need larger windows.
+      //
+      if ( position == 0 ) {
+        if ( windowSize > Integer.MAX_VALUE / 2 ) {
+          throw new IOException( "Row at position " + windowStart + " is longer than " + windowSize + " bytes" );
+        }
+        windowSize *= 2;
+      }
+      map( windowStart + position );
+    }
+  }
+
+  /**
+   * @return true if a complete row was found, false if the row continues after the end of the window
+   */
+  private boolean scanRow( boolean ignoreEnclosures ) {
+    int p = position;
+    nrFields = 0;
+    while ( true ) {
+      int start;
+      int end;
+      int escapes = 0;
+      int next;
+
+      if ( enclosed && !ignoreEnclosures && p < limit && buffer.get( p ) == enclosure ) {
+        // Look for the closing enclosure, a doubled enclosure is an escaped one
+        //
+        int q = p + 1;
+        while ( true ) {
+          q = findEnclosure( q );
+          if ( q < 0 ) {
+            if ( !lastWindow ) {
+              return false;
+            }
+            q = limit; // not closed before the end of the file
+            break;
+          }
+          if ( q + 1 >= limit && !lastWindow ) {
+            return false;
+          }
+          if ( q + 1 < limit && buffer.get( q + 1 ) == enclosure ) {
+            escapes++;
+            q += 2;
+          } else {
+            break;
+          }
+        }
+        start = p + 1;
+        end = q;
+        // Anything between the enclosure and the next delimiter is ignored
+        next = q < limit ? findFieldEnd( q + 1 ) : -1;
+      } else {
+        start = p;
+        next = findFieldEnd( p );
+        end = next < 0 ? limit : next;
+      }
+
+      if ( next < 0 && !lastWindow ) {
+        return false;
+      }
+
+      if ( nrFields < maxFields ) {
+        fieldStarts[nrFields] = start;
+        fieldEnds[nrFields] = end;
+        fieldEscapes[nrFields] = escapes;
+      }
+      nrFields++;
+
+      if ( next < 0 ) {
+        // The last row in the file doesn't end with a line end
+        //
+        rowLength = limit - position;
+        position = limit;
+        return true;
+      }
+
+      byte b = buffer.get( next );
+      if ( b == delimiter ) {
+        p = next + 1;
+        continue;
+      }
+
+      int rowEnd = next + 1;
+      if ( b == CR ) {
+        if ( rowEnd >= limit && !lastWindow ) {
+          return false;
+        }
+        if ( rowEnd < limit && buffer.get( rowEnd ) == LF ) {
+          rowEnd++;
+        }
+      }
+      rowLength = rowEnd - position;
+      position = rowEnd;
+      return true;
+    }
+  }
+
+  /**
+   * @return the position of the delimiter or line end after the field or -1 if none was found in the window
+   */
+  private int findFieldEnd( int from ) {
+    int next = findSeparator( from );
+    if ( newlinesInFields ) {
+      // Only the last field can end with a line end
+      while ( next >= 0 && nrFields < maxFields - 1 && buffer.get( next ) != delimiter ) {
+        next = findSeparator( next + 1 );
+      }
+    }
+    return next;
+  }
+
+  private int findSeparator( int from ) {
+    int i = from;
+    int wordLimit = limit - 8;
+    while ( i <= wordLimit ) {
+      long word = buffer.getLong( i );
+      long found = matches( word, delimiterPattern ) | matches( word, CR_PATTERN ) | matches( word, LF_PATTERN );
+      if ( found != 0 ) {
+        return i + ( Long.numberOfTrailingZeros( found ) >>> 3 );
+      }
+      i += 8;
+    }
+    while ( i < limit ) {
+      byte b = buffer.get( i );
+      if ( b == delimiter || b == CR || b == LF ) {
+        return i;
+      }
+      i++;
+    }
+    return -1;
+  }
+
+  private int findEnclosure( int from ) {
+    int i = from;
+    int wordLimit = limit - 8;
+    while ( i <= wordLimit ) {
+      long found = matches( buffer.getLong( i ), enclosurePattern );
+      if ( found != 0 ) {
+        return i + ( Long.numberOfTrailingZeros( found ) >>> 3 );
+      }
+      i += 8;
+    }
+    while ( i < limit ) {
+      if ( buffer.get( i ) == enclosure ) {
+        return i;
+      }
+      i++;
+    }
+    return -1;
+  }
+
+  /**
+   * Compares all the bytes of a word with a pattern that repeats the byte to look for.
+   *
+   * @return a word with the highest bit set in every byte that matches. Since the words are read little endian, the
+   *         number of trailing zeros divided by 8 is the index of the first match.
+   */
+  static long matches( long word, long pattern ) {
+    long x = word ^ pattern; // Matching bytes become 0
+    return ~( ( ( x & LOW_BITS ) + LOW_BITS ) | x | LOW_BITS );
+  }
+
+  /**
+   * @return the number of fields found in the current row, this can be more than the number of fields kept track of
+   */
+  int getFieldCount() {
+    return nrFields;
+  }
+
+  /**
+   * Copies the data of a field of the current row, escaped enclosures are removed.
+   *
+   * @param index
+   *          the index of the field, smaller than the maximum number of fields
+   * @return the field data
+   */
+  byte[] getField( int index ) {
+    int start = fieldStarts[index];
+    int end = fieldEnds[index];
+    int escapes = fieldEscapes[index];
+
+    byte[] field = new byte[end - start - escapes];
+    if ( escapes == 0 ) {
+      buffer.position( start );
+      buffer.get( field );
+    } else {
+      int j = 0;
+      for ( int i = start; i < end; i++ ) {
+        byte b = buffer.get( i );
+        field[j++] = b;
+        if ( b == enclosure ) {
+          i++; // skip the second enclosure
+        }
+      }
+    }
+    return field;
+  }
+
+  /**
+   * @return the number of bytes of the current row, including the line end
+   */
+  int getRowLength() {
+    return rowLength;
+  }
+
+  /**
+   * @return the position in the file of the next row
+   */
+  long getPosition() {
+    return windowStart + position;
+  }
+
+  void close() {
+    buffer = null;
+  }
+}
@@ -22,17 +22,29 @@
 
 package org.pentaho.di.trans.steps.databaselookup;
 
+import java.sql.ResultSet;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import com.google.common.annotations.VisibleForTesting;
 import org.pentaho.di.core.Const;
 import org.pentaho.di.core.RowMetaAndData;
 import org.pentaho.di.core.TimedRow;
+import org.pentaho.di.core.cache.LookupCache;
+import org.pentaho.di.core.cache.LookupCacheManager;
 import org.pentaho.di.core.database.Database;
 import org.pentaho.di.core.database.DatabaseMeta;
 import org.pentaho.di.core.exception.KettleDatabaseException;
@@ -78,8 +90,51 @@ public class DatabaseLookup extends BaseStep implements StepInterface {
    * @throws KettleException In case something goes wrong.
    */
   private synchronized Object[] lookupValues( RowMetaInterface inputRowMeta, Object[] row ) throws KettleException {
-    Object[] outputRow = RowDataUtil.resizeArray( row, data.outputRowMeta.size() );
+    Object[] lookupRow = getLookupRow( inputRowMeta, row );
+
+    Object[] add;
+    boolean cache_now = false;
+
+    // First, check if we looked up before
+    if ( meta.isCached() ) {
+      add = getRowFromCache( data.lookupMeta, lookupRow );
+    } else {
+      add = null;
+    }
+
+    if ( add == null ) {
+      if ( !( meta.isCached() && meta.isLoadingAllDataInCache() ) || data.hasDBCondition ) { // do not go to the
+        // database when all rows
+        // are in (exception LIKE
+        // operator)
+        if ( log.isRowLevel() ) {
+          logRowlevel( BaseMessages.getString( PKG, "DatabaseLookup.Log.AddedValuesToLookupRow1" )
+            + meta.getStreamKeyField1().length
+            + BaseMessages.getString( PKG, "DatabaseLookup.Log.AddedValuesToLookupRow2" )
+            + data.lookupMeta.getString( lookupRow ) );
+        }
+
+        data.db.setValuesLookup( data.lookupMeta, lookupRow );
+        // PDI-8373
+        add = data.db.getLookup( meta.isFailingOnMultipleResults(), meta.getDatabaseMeta().isMySQLVariant() );
+        cache_now = true;
+
+        // Only verify the data types if the data comes from the DB, NOT when we have a cache hit
+        // In that case, we already know the data type is OK.
+        if ( add != null ) {
+          incrementLinesInput();
+          convertReturnedValues( data.db.getReturnRowMeta(), 0, add );
+        }
+      }
+    }
+
+    return addLookupValues( inputRowMeta, row, lookupRow, add, cache_now );
+  }
 
+  /**
+   * Gets the values to look up from the input row, converted to the data types of the table.
+   */
+  private Object[] getLookupRow( RowMetaInterface inputRowMeta, Object[] row ) throws KettleException {
     Object[] lookupRow = new Object[ data.lookupMeta.size() ];
     int lookupIndex = 0;
 
@@ -111,39 +166,52 @@ public class DatabaseLookup extends BaseStep implements StepInterface {
         lookupIndex++;
       }
     }
+    return lookupRow;
+  }
 
-    Object[] add;
-    boolean cache_now = false;
-    boolean cacheHit = false;
+  /**
+   * Converts the values returned by the database to the default return types.
+   *
+   * @param returnRowMeta the metadata of the row returned by the database
+   * @param offset the index of the first returned value in that row
+   * @param add the returned values
+   */
+  private void convertReturnedValues( RowMetaInterface returnRowMeta, int offset, Object[] add )
+    throws KettleException {
+    int[] types = meta.getReturnValueDefaultType();
 
-    // First, check if we looked up before
-    if ( meta.isCached() ) {
-      add = getRowFromCache( data.lookupMeta, lookupRow );
-      if ( add != null ) {
-        cacheHit = true;
+    // The assumption here is that the types are in the same order
+    // as the returned lookup row, but since we make the lookup row
+    // that should not be a problem.
+    //
+    for ( int i = 0; i < types.length; i++ ) {
+      ValueMetaInterface returned = returnRowMeta.getValueMeta( offset + i );
+      ValueMetaInterface expected = data.returnMeta.getValueMeta( i );
+
+      if ( returned != null && types[ i ] > 0
+        && ( types[ i ] != returned.getType()
+        ||
+          returned.getType() == ValueMetaInterface.TYPE_STRING
+            && returned.getStorageType() == ValueMetaInterface.STORAGE_TYPE_BINARY_STRING ) ) {
+        // Set the type to the default return type
+        add[ i ] = expected.convertData( returned, add[ i ] );
       }
-    } else {
-      add = null;
     }
+  }
 
-    if ( add == null ) {
-      if ( !( meta.isCached() && meta.isLoadingAllDataInCache() ) || data.hasDBCondition ) { // do not go to the
-        // database when all rows
-        // are in (exception LIKE
-        // operator)
-        if ( log.isRowLevel() ) {
-          logRowlevel( BaseMessages.getString( PKG, "DatabaseLookup.Log.AddedValuesToLookupRow1" )
-            + meta.getStreamKeyField1().length
-            + BaseMessages.getString( PKG, "DatabaseLookup.Log.AddedValuesToLookupRow2" )
-            + data.lookupMeta.getString( lookupRow ) );
-        }
-
-        data.db.setValuesLookup( data.lookupMeta, lookupRow );
-        // PDI-8373
-        add = data.db.getLookup( meta.isFailingOnMultipleResults(), meta.getDatabaseMeta().isMySQLVariant() );
-        cache_now = true;
-      }
-    }
+  /**
+   * Adds the looked up values to the input row.
+   *
+   * @param inputRowMeta the metadata of the input row
+   * @param row the input row
+   * @param lookupRow the values that were looked up
+   * @param add the values found or null if nothing was found
+   * @param cache_now true if the values come from the database and can be stored in the cache
+   * @return the output row or null if the row doesn't need to be passed on
+   */
+  private Object[] addLookupValues( RowMetaInterface inputRowMeta, Object[] row, Object[] lookupRow, Object[] add,
+                                    boolean cache_now ) throws KettleException {
+    Object[] outputRow = RowDataUtil.resizeArray( row, data.outputRowMeta.size() );
 
     if ( add == null ) { // nothing was found, unknown code: add default values
       if ( meta.isEatingRowOnLookupFailure() ) {
@@ -173,32 +241,6 @@ public class DatabaseLookup extends BaseStep implements StepInterface {
         logRowlevel( BaseMessages.getString( PKG, "DatabaseLookup.Log.FoundResultsAfterLookup" )
           + Arrays.toString( add ) );
       }
-
-      // Only verify the data types if the data comes from the DB, NOT when we have a cache hit
-      // In that case, we already know the data type is OK.
-      if ( !cacheHit ) {
-        incrementLinesInput();
-
-        int[] types = meta.getReturnValueDefaultType();
-
-        // The assumption here is that the types are in the same order
-        // as the returned lookup row, but since we make the lookup row
-        // that should not be a problem.
-        //
-        for ( int i = 0; i < types.length; i++ ) {
-          ValueMetaInterface returned = data.db.getReturnRowMeta().getValueMeta( i );
-          ValueMetaInterface expected = data.returnMeta.getValueMeta( i );
-
-          if ( returned != null && types[ i ] > 0
-            && ( types[ i ] != returned.getType()
-            ||
-              returned.getType() == ValueMetaInterface.TYPE_STRING
-                && returned.getStorageType() == ValueMetaInterface.STORAGE_TYPE_BINARY_STRING ) ) {
-            // Set the type to the default return type
-            add[ i ] = expected.convertData( returned, add[ i ] );
-          }
-        }
-      }
     }
 
     // Store in cache if we need to!
@@ -219,6 +261,14 @@ public class DatabaseLookup extends BaseStep implements StepInterface {
   void storeRowInCache( RowMetaInterface lookupMeta, Object[] lookupRow, Object[] add ) {
 
     RowMetaAndData rowMetaAndData = new RowMetaAndData( lookupMeta, lookupRow );
+
+    // The shared cache takes care of its own size limit
+    //
+    if ( data.sharedCache != null ) {
+      data.sharedCache.put( rowMetaAndData, add );
+      return;
+    }
+
     // DEinspanjer 2009-02-01 XXX: I want to write a test case to prove this point before checking in.
     // /* Don't insert a row with a duplicate key into the cache. It doesn't seem
     // * to serve a useful purpose and can potentially cause the step to return
@@ -273,7 +323,11 @@ public class DatabaseLookup extends BaseStep implements StepInterface {
   Object[] getRowFromCache( RowMetaInterface lookupMeta, Object[] lookupRow ) throws KettleException {
     if ( data.allEquals ) {
       // only do the hashtable lookup when all equals otherwise conditions >, <, <> will give wrong results
-      TimedRow timedRow = data.look.get( new RowMetaAndData( data.lookupMeta, lookupRow ) );
+      RowMetaAndData key = new RowMetaAndData( data.lookupMeta, lookupRow );
+      if ( data.sharedCache != null ) {
+        return data.sharedCache.get( key );
+      }
+      TimedRow timedRow = data.look.get( key );
       if ( timedRow != null ) {
         return timedRow.getRow();
       }
@@ -283,7 +337,8 @@ public class DatabaseLookup extends BaseStep implements StepInterface {
         // Not all conditions are "=" so we are going to have to evaluate row by row
         // A sorted list or index might be a good solution here...
         //
-        for ( RowMetaAndData key : data.look.keySet() ) {
+        Iterable<RowMetaAndData> keys = data.sharedCache != null ? data.sharedCache.keySet() : data.look.keySet();
+        for ( RowMetaAndData key : keys ) {
           // Now verify that the key is matching our conditions...
           //
           boolean match = true;
@@ -340,9 +395,16 @@ public class DatabaseLookup extends BaseStep implements StepInterface {
             lookupIndex++;
           }
           if ( match ) {
-            TimedRow timedRow = data.look.get( key );
-            if ( timedRow != null ) {
-              return timedRow.getRow();
+            if ( data.sharedCache != null ) {
+              Object[] row = data.sharedCache.peek( key );
+              if ( row != null ) {
+                return row;
+              }
+            } else {
+              TimedRow timedRow = data.look.get( key );
+              if ( timedRow != null ) {
+                return timedRow.getRow();
+              }
             }
           }
         }
@@ -450,15 +512,18 @@ public class DatabaseLookup extends BaseStep implements StepInterface {
   }
 
   public boolean processRow( StepMetaInterface smi, StepDataInterface sdi ) throws KettleException {
+    meta = (DatabaseLookupMeta) smi;
+    data = (DatabaseLookupData) sdi;
+
     Object[] r = getRow(); // Get row from input rowset & set row busy!
     if ( r == null ) { // no more input to be expected...
+      if ( data.batchSize > 0 && !putAllBatches() ) {
+        return false;
+      }
       setOutputDone();
       return false;
     }
 
-    meta = (DatabaseLookupMeta) smi;
-    data = (DatabaseLookupData) sdi;
-
     if ( first ) {
       first = false;
 
@@ -466,7 +531,21 @@ public class DatabaseLookup extends BaseStep implements StepInterface {
       data.outputRowMeta = getInputRowMeta().clone();
       meta.getFields( data.outputRowMeta, getStepname(), null, null, this, repository, metaStore );
 
-      if ( meta.isCached() ) {
+      if ( meta.isCached() && meta.isSharingCache() ) {
+        // A cache that holds the complete table can't evict anything
+        //
+        long maximumSize = 0;
+        long timeToLive = 0;
+        if ( !meta.isLoadingAllDataInCache() ) {
+          maximumSize = Math.max( meta.getCacheSize(), 0 );
+          timeToLive = Math.max( meta.getCacheTimeToLive(), 0 ) * 1000L;
+        }
+        data.sharedCache = LookupCacheManager.getInstance().acquire( getSharedCacheName(), maximumSize, timeToLive );
+        if ( log.isDetailed() ) {
+          logDetailed( BaseMessages.getString( PKG, "DatabaseLookup.Log.UsingSharedCache",
+            data.sharedCache.getName(), data.sharedCache.getReferenceCount() ) );
+        }
+      } else if ( meta.isCached() ) {
         if ( meta.getCacheSize() > 0 ) {
           data.look = new LinkedHashMap<RowMetaAndData, TimedRow>( (int) ( meta.getCacheSize() * 1.5 ) );
         } else {
@@ -524,10 +603,31 @@ public class DatabaseLookup extends BaseStep implements StepInterface {
 
       initReturnMeta();
 
+      // Look up the rows in batches if we can
+      //
+      data.batchSize = 0;
+      if ( meta.getBatchSize() > 1 && !( meta.isCached() && meta.isLoadingAllDataInCache() ) ) {
+        if ( data.allEquals && data.lookupMeta.size() == meta.getTableKeyField().length ) {
+          initBatchLookup();
+        } else {
+          logBasic( BaseMessages.getString( PKG, "DatabaseLookup.Log.BatchLookupNotPossible" ) );
+        }
+      }
+
       // If the user selected to load all data into the cache at startup, that's what we do now...
       //
       if ( meta.isCached() && meta.isLoadingAllDataInCache() ) {
-        loadAllTableDataIntoTheCache();
+        if ( data.sharedCache != null ) {
+          // Only the first copy reads the table, the others wait for it to finish
+          //
+          data.sharedCache.loadOnce( new LookupCache.Loader() {
+            public void load() throws KettleException {
+              loadAllTableDataIntoTheCache();
+            }
+          } );
+        } else {
+          loadAllTableDataIntoTheCache();
+        }
       }
 
     }
@@ -537,38 +637,427 @@ public class DatabaseLookup extends BaseStep implements StepInterface {
         + getInputRowMeta().getString( r ) );
     }
 
+    if ( data.batchSize > 0 ) {
+      return addRowToBatch( r );
+    }
+
     try {
       // add new lookup values to the row
       Object[] outputRow = lookupValues( getInputRowMeta(), r );
 
       if ( outputRow != null ) {
-        // copy row to output rowset(s);
-        putRow( data.outputRowMeta, outputRow );
+        putLookupRow( r, outputRow );
+      }
+    } catch ( KettleException e ) {
+      return handleLookupError( r, e );
+    }
 
-        if ( log.isRowLevel() ) {
-          logRowlevel( BaseMessages.getString( PKG, "DatabaseLookup.Log.WroteRowToNextStep" )
-            + getInputRowMeta().getString( r ) );
-        }
-        if ( checkFeedback( getLinesRead() ) ) {
-          logBasic( "linenr " + getLinesRead() );
+    return true;
+  }
+
+  private void putLookupRow( Object[] r, Object[] outputRow ) throws KettleStepException {
+    // copy row to output rowset(s);
+    putRow( data.outputRowMeta, outputRow );
+
+    if ( log.isRowLevel() ) {
+      logRowlevel( BaseMessages.getString( PKG, "DatabaseLookup.Log.WroteRowToNextStep" )
+        + getInputRowMeta().getString( r ) );
+    }
+    if ( checkFeedback( getLinesRead() ) ) {
+      logBasic( "linenr " + getLinesRead() );
+    }
+  }
+
+  /**
+   * Sends a row that failed to the error handling or stops the transformation.
+   *
+   * @return false if the step needs to stop
+   */
+  private boolean handleLookupError( Object[] r, KettleException e ) throws KettleStepException {
+    if ( getStepMeta().isDoingErrorHandling() ) {
+      putError( getInputRowMeta(), r, 1, e.getMessage(), null, "DBLOOKUPD001" );
+      return true;
+    }
+    logError( BaseMessages.getString( PKG, "DatabaseLookup.ERROR003.UnexpectedErrorDuringProcessing" )
+      + e.getMessage() );
+    setErrors( 1 );
+    stopAll();
+    setOutputDone(); // signal end to receiver(s)
+    return false;
+  }
+
+  /**
+   * Prepares the statement that looks up a batch of keys at once: an IN list for a single key or a series of OR-ed
+   * conditions for a composite key. The lookups run on a separate thread so that the step can read the next rows while
+   * the database works.
+   */
+  private void initBatchLookup() throws KettleException {
+    data.batchSize = meta.getBatchSize();
+
+    // Stay within the number of parameters the database accepts in a single statement
+    //
+    int maxParameters = meta.getDatabaseMeta().getMaxLookupListParameters();
+    if ( maxParameters > 0 && data.batchSize * data.lookupMeta.size() > maxParameters ) {
+      data.batchSize = Math.max( 1, maxParameters / data.lookupMeta.size() );
+      if ( log.isBasic() ) {
+        logBasic( BaseMessages.getString( PKG, "DatabaseLookup.Log.BatchSizeLimited", data.batchSize ) );
+      }
+    }
+
+    // The lookup rows always contain normal storage data
+    //
+    data.batchKeyMeta = data.lookupMeta.clone();
+    List<ValueMetaInterface> parameters = new ArrayList<ValueMetaInterface>();
+    for ( int i = 0; i < data.batchKeyMeta.size(); i++ ) {
+      data.batchKeyMeta.getValueMeta( i ).setStorageType( ValueMetaInterface.STORAGE_TYPE_NORMAL );
+    }
+    for ( int k = 0; k < data.batchSize; k++ ) {
+      parameters.addAll( data.batchKeyMeta.getValueMetaList() );
+    }
+    data.batchParameterMeta = new RowMeta();
+    data.batchParameterMeta.setValueMetaList( parameters );
+
+    String sql = getBatchLookupSql( data.batchSize );
+    if ( log.isDetailed() ) {
+      logDetailed( BaseMessages.getString( PKG, "DatabaseLookup.Log.BatchLookup", data.batchSize, sql ) );
+    }
+    data.batchStatement = data.db.prepareSQL( sql );
+    data.batchesInFlight = new LinkedList<LookupBatch>();
+
+    final String threadName = getStepname() + "." + getCopy() + " batch lookup";
+    data.batchExecutor = Executors.newSingleThreadExecutor( new ThreadFactory() {
+      public Thread newThread( Runnable r ) {
+        Thread thread = new Thread( r, threadName );
+        thread.setDaemon( true );
+        return thread;
+      }
+    } );
+  }
+
+  private String getBatchLookupSql( int nrKeys ) {
+    DatabaseMeta dbMeta = meta.getDatabaseMeta();
+    String[] keyFields = meta.getTableKeyField();
+    String[] returnFields = meta.getReturnValueField();
+
+    // The key fields come first so that the rows can be matched with the keys
+    //
+    StringBuilder sql = new StringBuilder( "SELECT " );
+    for ( int i = 0; i < keyFields.length; i++ ) {
+      if ( i > 0 ) {
+        sql.append( ", " );
+      }
+      sql.append( dbMeta.quoteField( keyFields[ i ] ) );
+    }
+    for ( int i = 0; i < returnFields.length; i++ ) {
+      sql.append( ", " ).append( dbMeta.quoteField( returnFields[ i ] ) );
+    }
+    sql.append( " FROM " ).append( dbMeta.getQuotedSchemaTableCombination(
+      environmentSubstitute( meta.getSchemaName() ), environmentSubstitute( meta.getTablename() ) ) );
+    sql.append( " WHERE " );
+
+    if ( keyFields.length == 1 ) {
+      sql.append( dbMeta.quoteField( keyFields[ 0 ] ) ).append( " IN (" );
+      for ( int k = 0; k < nrKeys; k++ ) {
+        sql.append( k > 0 ? ", ?" : "?" );
+      }
+      sql.append( ")" );
+    } else {
+      for ( int k = 0; k < nrKeys; k++ ) {
+        sql.append( k > 0 ? " OR (" : "(" );
+        for ( int i = 0; i < keyFields.length; i++ ) {
+          if ( i > 0 ) {
+            sql.append( " AND " );
+          }
+          sql.append( dbMeta.quoteField( keyFields[ i ] ) ).append( " = ?" );
         }
+        sql.append( ")" );
       }
+    }
+
+    if ( !Const.isEmpty( meta.getOrderByClause() ) ) {
+      sql.append( " ORDER BY " ).append( meta.getOrderByClause() );
+    }
+    return sql.toString();
+  }
+
+  private boolean addRowToBatch( Object[] r ) throws KettleException {
+    if ( data.batch == null ) {
+      data.batch = new LookupBatch();
+    }
+
+    try {
+      Object[] lookupRow = getLookupRow( getInputRowMeta(), r );
+      Object[] add = meta.isCached() ? getRowFromCache( data.lookupMeta, lookupRow ) : null;
+      data.batch.addRow( r, lookupRow, add, data.batchKeyMeta );
     } catch ( KettleException e ) {
-      if ( getStepMeta().isDoingErrorHandling() ) {
-        putError( getInputRowMeta(), r, 1, e.getMessage(), null, "DBLOOKUPD001" );
+      if ( !handleLookupError( r, e ) ) {
+        return false;
+      }
+    }
+
+    if ( data.batch.size() >= data.batchSize ) {
+      LookupBatch batch = data.batch;
+      data.batch = null;
+      submitBatch( batch );
+
+      // Pass on the rows of the batches that are done, wait if too many are on their way
+      //
+      while ( !data.batchesInFlight.isEmpty()
+        && ( data.batchesInFlight.size() > DatabaseLookupData.MAX_BATCHES_IN_FLIGHT
+        || data.batchesInFlight.getFirst().isDone() ) ) {
+        if ( !putBatch( data.batchesInFlight.removeFirst() ) ) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  private void submitBatch( final LookupBatch batch ) {
+    if ( !batch.getKeys().isEmpty() ) {
+      batch.setResult( data.batchExecutor.submit( new Callable<List<Object[]>>() {
+        public List<Object[]> call() throws Exception {
+          return lookupBatch( batch );
+        }
+      } ) );
+    }
+    data.batchesInFlight.addLast( batch );
+  }
+
+  /**
+   * Runs on the lookup thread: queries all the keys of the batch that weren't found in the cache.
+   */
+  private List<Object[]> lookupBatch( LookupBatch batch ) throws KettleException {
+    // Unused parameters repeat the last key, that way the statement can be used for every batch
+    //
+    int nrValues = data.batchKeyMeta.size();
+    Object[] parameters = new Object[ data.batchParameterMeta.size() ];
+    int index = 0;
+    for ( Object[] keyData : batch.getKeys().values() ) {
+      System.arraycopy( keyData, 0, parameters, index, nrValues );
+      index += nrValues;
+    }
+    for ( ; index < parameters.length; index += nrValues ) {
+      System.arraycopy( parameters, index - nrValues, parameters, index, nrValues );
+    }
+
+    ResultSet resultSet = data.db.openQuery( data.batchStatement, data.batchParameterMeta, parameters );
+    RowMetaInterface resultMeta = data.db.getReturnRowMeta();
+    batch.setResultMeta( resultMeta );
+    return matchKeys( batch, resultMeta, data.db.getRows( resultSet, 0, null ) );
+  }
+
+  /**
+   * Runs on the lookup thread: replaces the key values of the rows found with the keys they were looked up with. The
+   * values are compared the way the key fields compare them, but the database can consider more values equal than
+   * that: padded CHAR columns, case insensitive collations, ... The keys that might have been found that way are looked
+   * up one by one.
+   *
+   * @return the keys followed by the return values for every row found
+   */
+  private List<Object[]> matchKeys( LookupBatch batch, RowMetaInterface resultMeta, List<Object[]> found )
+    throws KettleException {
+    int nrValues = data.batchKeyMeta.size();
+    List<Object[]> rows = new ArrayList<Object[]>( found.size() );
+    Set<RowMetaAndData> matched = new HashSet<RowMetaAndData>();
+    Set<List<Object>> looseKeys = new HashSet<List<Object>>();
+    boolean unmatchedRows = false;
+
+    for ( Object[] dbRow : found ) {
+      Object[] keyData = new Object[ nrValues ];
+      for ( int i = 0; i < nrValues; i++ ) {
+        ValueMetaInterface keyMeta = data.batchKeyMeta.getValueMeta( i );
+        ValueMetaInterface returned = resultMeta.getValueMeta( i );
+        if ( keyMeta.getType() == returned.getType() && !returned.isStorageBinaryString() ) {
+          keyData[ i ] = dbRow[ i ];
+        } else {
+          keyData[ i ] = keyMeta.convertData( returned, dbRow[ i ] );
+        }
+      }
+      looseKeys.add( getLooseKey( keyData ) );
+
+      Object[] lookupRow = findKey( batch, keyData );
+      if ( lookupRow == null ) {
+        unmatchedRows = true;
       } else {
-        logError( BaseMessages.getString( PKG, "DatabaseLookup.ERROR003.UnexpectedErrorDuringProcessing" )
-          + e.getMessage() );
-        setErrors( 1 );
-        stopAll();
-        setOutputDone(); // signal end to receiver(s)
+        System.arraycopy( lookupRow, 0, dbRow, 0, nrValues );
+        matched.add( new RowMetaAndData( data.batchKeyMeta, lookupRow ) );
+        rows.add( dbRow );
+      }
+    }
+
+    for ( Map.Entry<RowMetaAndData, Object[]> entry : batch.getKeys().entrySet() ) {
+      Object[] lookupRow = entry.getValue();
+      boolean maybeFound = unmatchedRows || looseKeys.contains( getLooseKey( lookupRow ) );
+      if ( matched.contains( entry.getKey() ) || !maybeFound ) {
+        continue;
+      }
+      try {
+        data.db.setValuesLookup( data.batchKeyMeta, lookupRow );
+        Object[] add = data.db.getLookup( meta.isFailingOnMultipleResults(), meta.getDatabaseMeta().isMySQLVariant() );
+        if ( add != null ) {
+          Object[] row = new Object[ nrValues + add.length ];
+          System.arraycopy( lookupRow, 0, row, 0, nrValues );
+          System.arraycopy( add, 0, row, nrValues, add.length );
+          rows.add( row );
+        }
+      } catch ( KettleException e ) {
+        batch.setLookupError( entry.getKey(), e );
+      }
+    }
+    return rows;
+  }
+
+  /**
+   * @return the key that was looked up with values equal to the given ones, null if there is none
+   */
+  private Object[] findKey( LookupBatch batch, Object[] keyData ) throws KettleException {
+    Object[] lookupRow = batch.getKeys().get( new RowMetaAndData( data.batchKeyMeta, keyData ) );
+    if ( lookupRow == null ) {
+      // Equal values of different classes or scales: Date and Timestamp, 1.0 and 1.00, ...
+      //
+      for ( Object[] candidate : batch.getKeys().values() ) {
+        if ( data.batchKeyMeta.compare( keyData, candidate ) == 0 ) {
+          return candidate;
+        }
+      }
+    }
+    return lookupRow;
+  }
+
+  /**
+   * @return the key values with the strings in lower case and without trailing spaces
+   */
+  private List<Object> getLooseKey( Object[] keyData ) {
+    List<Object> looseKey = new ArrayList<Object>( keyData.length );
+    for ( Object value : keyData ) {
+      if ( value instanceof String ) {
+        looseKey.add( Const.rtrim( (String) value ).toLowerCase() );
+      } else {
+        looseKey.add( value );
+      }
+    }
+    return looseKey;
+  }
+
+  private boolean putAllBatches() throws KettleException {
+    if ( data.batch != null ) {
+      submitBatch( data.batch );
+      data.batch = null;
+    }
+    while ( !data.batchesInFlight.isEmpty() ) {
+      if ( !putBatch( data.batchesInFlight.removeFirst() ) ) {
         return false;
       }
     }
+    return true;
+  }
 
+  /**
+   * Waits for the lookup of a batch to finish and passes on its rows in the order they were read.
+   *
+   * @return false if the step needs to stop
+   */
+  private boolean putBatch( LookupBatch batch ) throws KettleException {
+    KettleException error = null;
+    List<Object[]> found = null;
+    try {
+      found = batch.getResult();
+    } catch ( KettleException e ) {
+      error = e;
+    }
+
+    // Collect the values of the keys, the first row of a key wins like it does for a single lookup
+    //
+    Map<RowMetaAndData, Object[]> values = new HashMap<RowMetaAndData, Object[]>();
+    Map<RowMetaAndData, KettleException> errors =
+      new HashMap<RowMetaAndData, KettleException>( batch.getLookupErrors() );
+    Set<RowMetaAndData> multiple = new HashSet<RowMetaAndData>();
+    if ( found != null ) {
+      RowMetaInterface resultMeta = batch.getResultMeta();
+      int nrValues = data.batchKeyMeta.size();
+      for ( Object[] dbRow : found ) {
+        Object[] keyData = new Object[ nrValues ];
+        System.arraycopy( dbRow, 0, keyData, 0, nrValues );
+        RowMetaAndData key = new RowMetaAndData( data.batchKeyMeta, keyData );
+        if ( values.containsKey( key ) || errors.containsKey( key ) ) {
+          multiple.add( key );
+          continue;
+        }
+        Object[] add = new Object[ data.returnMeta.size() ];
+        System.arraycopy( dbRow, nrValues, add, 0, add.length );
+        incrementLinesInput();
+        try {
+          convertReturnedValues( resultMeta, nrValues, add );
+          values.put( key, add );
+        } catch ( KettleException e ) {
+          errors.put( key, e );
+        }
+      }
+    }
+
+    for ( int i = 0; i < batch.size(); i++ ) {
+      Object[] r = batch.getRow( i );
+      try {
+        Object[] add = batch.getCachedValues( i );
+        boolean cache_now = false;
+        if ( add == null ) {
+          RowMetaAndData key = batch.getKey( i );
+          if ( error != null && batch.getKeys().containsKey( key ) ) {
+            throw error;
+          }
+          if ( meta.isFailingOnMultipleResults() && multiple.contains( key ) ) {
+            throw new KettleDatabaseException(
+              "Only 1 row was expected as a result of a lookup, and at least 2 were found!" );
+          }
+          if ( errors.containsKey( key ) ) {
+            throw errors.get( key );
+          }
+          add = values.get( key );
+          cache_now = true;
+        }
+
+        Object[] outputRow = addLookupValues( getInputRowMeta(), r, batch.getLookupRow( i ), add, cache_now );
+        if ( outputRow != null ) {
+          putLookupRow( r, outputRow );
+        }
+      } catch ( KettleException e ) {
+        if ( !handleLookupError( r, e ) ) {
+          return false;
+        }
+      }
+    }
     return true;
   }
 
+  /**
+   * The name of a shared cache identifies everything that determines the cached rows: the connection, the table, the
+   * keys and conditions, the returned fields with their default values and types, and the order. Rows that aren't
+   * found are cached with the default values, unless they are eaten.
+   */
+  private String getSharedCacheName() throws KettleException {
+    DatabaseMeta dbMeta = meta.getDatabaseMeta();
+    StringBuilder name = new StringBuilder( "DatabaseLookup" );
+    name.append( "|" ).append( environmentSubstitute( dbMeta.getURL( getPartitionID() ) ) );
+    name.append( "|" ).append( environmentSubstitute( dbMeta.getUsername() ) );
+    name.append( "|" ).append( dbMeta.getQuotedSchemaTableCombination(
+      environmentSubstitute( meta.getSchemaName() ), environmentSubstitute( meta.getTablename() ) ) );
+    for ( int i = 0; i < meta.getTableKeyField().length; i++ ) {
+      name.append( i == 0 ? "|" : "," ).append( meta.getTableKeyField()[ i ] ).append( " " )
+        .append( meta.getKeyCondition()[ i ] );
+    }
+    for ( int i = 0; i < meta.getReturnValueField().length; i++ ) {
+      name.append( i == 0 ? "|" : "," ).append( meta.getReturnValueField()[ i ] ).append( " " )
+        .append( meta.getReturnValueDefaultType()[ i ] ).append( " " )
+        .append( Const.NVL( meta.getReturnValueDefault()[ i ], "" ) );
+    }
+    name.append( "|" ).append( Const.NVL( meta.getOrderByClause(), "" ) );
+    name.append( "|" ).append( meta.isFailingOnMultipleResults() );
+    name.append( "|" ).append( meta.isLoadingAllDataInCache() );
+    name.append( "|" ).append( meta.isEatingRowOnLookupFailure() );
+    return name.toString();
+  }
+
   private void loadAllTableDataIntoTheCache() throws KettleException {
     DatabaseMeta dbMeta = meta.getDatabaseMeta();
 
@@ -650,6 +1139,9 @@ public class DatabaseLookup extends BaseStep implements StepInterface {
     if ( data.db != null && !data.isCanceled ) {
       synchronized ( data.db ) {
         data.db.cancelQuery();
+        if ( data.batchStatement != null ) {
+          data.db.cancelStatement( data.batchStatement );
+        }
       }
       data.isCanceled = true;
     }
@@ -701,6 +1193,31 @@ public class DatabaseLookup extends BaseStep implements StepInterface {
     meta = (DatabaseLookupMeta) smi;
     data = (DatabaseLookupData) sdi;
 
+    if ( data.batchExecutor != null ) {
+      data.batchExecutor.shutdownNow();
+      // A lookup that is still running uses the batch statement and the connection, so wait for it before closing them
+      //
+      try {
+        if ( !data.batchExecutor.awaitTermination( DatabaseLookupData.BATCH_TERMINATION_TIMEOUT, TimeUnit.SECONDS ) ) {
+          logError( BaseMessages.getString( PKG, "DatabaseLookup.ERROR0006.BatchLookupStillRunning",
+            DatabaseLookupData.BATCH_TERMINATION_TIMEOUT ) );
+        }
+      } catch ( InterruptedException e ) {
+        Thread.currentThread().interrupt();
+      }
+      data.batchExecutor = null;
+    }
+    if ( data.batchStatement != null ) {
+      try {
+        data.db.closePreparedStatement( data.batchStatement );
+      } catch ( KettleDatabaseException e ) {
+        logError( BaseMessages.getString( PKG, "DatabaseLookup.ERROR0005.UnableToCloseBatchStatement" ), e );
+      }
+      data.batchStatement = null;
+    }
+    data.batchesInFlight = null;
+    data.batch = null;
+
     if ( data.db != null ) {
       data.db.disconnect();
     }
@@ -709,6 +1226,16 @@ public class DatabaseLookup extends BaseStep implements StepInterface {
     //
     data.look = null;
 
+    if ( data.sharedCache != null ) {
+      if ( log.isDetailed() ) {
+        logDetailed( BaseMessages.getString( PKG, "DatabaseLookup.Log.SharedCacheStatistics",
+          data.sharedCache.getName(), data.sharedCache.size(), data.sharedCache.getHitCount(),
+          data.sharedCache.getMissCount(), data.sharedCache.getEvictionCount() ) );
+      }
+      LookupCacheManager.getInstance().release( data.sharedCache );
+      data.sharedCache = null;
+    }
+
     super.dispose( smi, sdi );
   }
 
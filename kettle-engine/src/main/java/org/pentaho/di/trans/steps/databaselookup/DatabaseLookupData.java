@@ -22,10 +22,14 @@
 
 package org.pentaho.di.trans.steps.databaselookup;
 
+import java.sql.PreparedStatement;
 import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.concurrent.ExecutorService;
 
 import org.pentaho.di.core.RowMetaAndData;
 import org.pentaho.di.core.TimedRow;
+import org.pentaho.di.core.cache.LookupCache;
 import org.pentaho.di.core.database.Database;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.trans.step.BaseStepData;
@@ -37,6 +41,7 @@ import org.pentaho.di.trans.step.StepDataInterface;
  */
 public class DatabaseLookupData extends BaseStepData implements StepDataInterface {
   public LinkedHashMap<RowMetaAndData, TimedRow> look; // to store values in used to look up things...
+  public LookupCache<RowMetaAndData, Object[]> sharedCache; // used instead of look when the cache is shared
   public Database db;
 
   public Object[] nullif; // Not found: default values...
@@ -52,6 +57,20 @@ public class DatabaseLookupData extends BaseStepData implements StepDataInterfac
   public int[] conditions;
   public boolean hasDBCondition;
 
+  /** The number of batches that can be looked up while the step reads the next rows */
+  public static final int MAX_BATCHES_IN_FLIGHT = 2;
+
+  /** The number of seconds the step waits for a running batch lookup when it is disposed */
+  public static final long BATCH_TERMINATION_TIMEOUT = 60L;
+
+  public int batchSize; // 0 when the rows are looked up one by one
+  public RowMetaInterface batchKeyMeta;
+  public RowMetaInterface batchParameterMeta;
+  public PreparedStatement batchStatement;
+  public ExecutorService batchExecutor;
+  LookupBatch batch; // the batch being filled
+  LinkedList<LookupBatch> batchesInFlight;
+
   public DatabaseLookupData() {
     super();
 
@@ -0,0 +1,175 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2015 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.databaselookup;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.pentaho.di.core.RowMetaAndData;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.RowMetaInterface;
+
+/**
+ * The input rows of a batch lookup, in the order they were read, together with the distinct keys that need to be looked
+ * up in the database.
+ *
+ * @since 5.4
+ */
+class LookupBatch {
+  private final List<Object[]> rows;
+  private final List<Object[]> lookupRows;
+  private final List<Object[]> cachedValues;
+  private final List<RowMetaAndData> rowKeys;
+  private final Map<RowMetaAndData, Object[]> keys;
+  private final Map<RowMetaAndData, KettleException> lookupErrors;
+
+  private Future<List<Object[]>> result;
+  private volatile RowMetaInterface resultMeta;
+
+  LookupBatch() {
+    rows = new ArrayList<Object[]>();
+    lookupRows = new ArrayList<Object[]>();
+    cachedValues = new ArrayList<Object[]>();
+    rowKeys = new ArrayList<RowMetaAndData>();
+    keys = new LinkedHashMap<RowMetaAndData, Object[]>();
+    lookupErrors = new HashMap<RowMetaAndData, KettleException>();
+  }
+
+  /**
+   * @param row
+   *          the input row
+   * @param lookupRow
+   *          the values to look up
+   * @param values
+   *          the values found in the cache or null if the row needs to be looked up
+   * @param keyMeta
+   *          the metadata of the lookup values
+   */
+  void addRow( Object[] row, Object[] lookupRow, Object[] values, RowMetaInterface keyMeta ) {
+    rows.add( row );
+    lookupRows.add( lookupRow );
+    cachedValues.add( values );
+
+    RowMetaAndData key = null;
+    if ( values == null ) {
+      key = new RowMetaAndData( keyMeta, lookupRow );
+      // A null never equals anything, there's no need to ask the database
+      if ( !hasNulls( lookupRow ) && !keys.containsKey( key ) ) {
+        keys.put( key, lookupRow );
+      }
+    }
+    rowKeys.add( key );
+  }
+
+  private static boolean hasNulls( Object[] lookupRow ) {
+    for ( Object value : lookupRow ) {
+      if ( value == null ) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  int size() {
+    return rows.size();
+  }
+
+  Object[] getRow( int index ) {
+    return rows.get( index );
+  }
+
+  Object[] getLookupRow( int index ) {
+    return lookupRows.get( index );
+  }
+
+  Object[] getCachedValues( int index ) {
+    return cachedValues.get( index );
+  }
+
+  RowMetaAndData getKey( int index ) {
+    return rowKeys.get( index );
+  }
+
+  /**
+   * @return the distinct keys to look up in the database with their values
+   */
+  Map<RowMetaAndData, Object[]> getKeys() {
+    return keys;
+  }
+
+  void setResult( Future<List<Object[]>> result ) {
+    this.result = result;
+  }
+
+  boolean isDone() {
+    return result == null || result.isDone();
+  }
+
+  /**
+   * Waits for the lookup to finish.
+   *
+   * @return the rows found: the keys they were found with followed by the return values, or null if nothing was
+   *         looked up
+   * @throws KettleException
+   *           in case the lookup failed
+   */
+  List<Object[]> getResult() throws KettleException {
+    if ( result == null ) {
+      return null;
+    }
+    try {
+      return result.get();
+    } catch ( InterruptedException e ) {
+      throw new KettleException( e );
+    } catch ( ExecutionException e ) {
+      if ( e.getCause() instanceof KettleException ) {
+        throw (KettleException) e.getCause();
+      }
+      throw new KettleException( e.getCause() );
+    }
+  }
+
+  RowMetaInterface getResultMeta() {
+    return resultMeta;
+  }
+
+  void setResultMeta( RowMetaInterface resultMeta ) {
+    this.resultMeta = resultMeta;
+  }
+
+  /**
+   * @return the errors of the keys that were looked up one by one, available once the result is
+   */
+  Map<RowMetaAndData, KettleException> getLookupErrors() {
+    return lookupErrors;
+  }
+
+  void setLookupError( RowMetaAndData key, KettleException error ) {
+    lookupErrors.put( key, error );
+  }
+}
@@ -0,0 +1,371 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2015 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.trans.steps.filterrows;
+
+import java.util.Date;
+
+import org.pentaho.di.core.Condition;
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.row.RowBatch;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaAndData;
+import org.pentaho.di.core.row.ValueMetaInterface;
+
+/**
+ * Evaluates a condition for all the rows of a batch at once. Integer, number, date and boolean fields compared with a
+ * constant, and null checks on those fields, are evaluated on the primitive columns and null bitmaps of the batch. The
+ * other parts of the condition are evaluated row by row on the original rows, which are not copied.
+ *
+ * @since 5.4
+ */
+public class BatchCondition {
+
+  private final RowMetaInterface rowMeta;
+  private final Node root;
+  private int nrColumnar;
+
+  private BatchCondition( Condition condition, RowMetaInterface rowMeta ) {
+    this.rowMeta = rowMeta;
+    this.root = compile( condition );
+  }
+
+  /**
+   * Prepares a condition for the evaluation of batches of rows with the given layout.
+   *
+   * @param condition
+   *          the condition to evaluate
+   * @param rowMeta
+   *          the layout of the rows in the batches
+   * @return the prepared condition or null if no part of the condition can be evaluated on the columns of a batch
+   */
+  public static BatchCondition prepare( Condition condition, RowMetaInterface rowMeta ) {
+    BatchCondition batchCondition = new BatchCondition( condition, rowMeta );
+    return batchCondition.nrColumnar > 0 ? batchCondition : null;
+  }
+
+  /**
+   * Evaluates the condition for all rows of a batch.
+   *
+   * @param batch
+   *          the batch of rows
+   * @param selection
+   *          receives the result for every row in the batch
+   */
+  public void evaluate( RowBatch batch, boolean[] selection ) {
+    root.evaluate( batch, selection );
+  }
+
+  private Node compile( Condition condition ) {
+    if ( condition.isComposite() ) {
+      Node[] children = new Node[condition.nrConditions()];
+      int[] operators = new int[children.length];
+      for ( int i = 0; i < children.length; i++ ) {
+        children[i] = compile( condition.getCondition( i ) );
+        operators[i] = condition.getCondition( i ).getOperator();
+      }
+      return new CompositeNode( children, operators, condition.isNegated() );
+    }
+
+    Node node = compileColumnar( condition );
+    if ( node != null ) {
+      nrColumnar++;
+      return node;
+    }
+    return new RowNode( condition );
+  }
+
+  /**
+   * @return the node evaluating an atomic condition on the column of its field or null if that's not possible
+   */
+  private Node compileColumnar( Condition condition ) {
+    if ( Const.isEmpty( condition.getLeftValuename() ) ) {
+      return null;
+    }
+    int column = rowMeta.indexOfValue( condition.getLeftValuename() );
+    if ( column < 0 ) {
+      return null;
+    }
+    ValueMetaInterface fieldMeta = rowMeta.getValueMeta( column );
+    int kind = RowBatch.getKind( fieldMeta );
+    if ( kind == RowBatch.KIND_OBJECT || fieldMeta.isSortedDescending() ) {
+      return null;
+    }
+
+    switch ( condition.getFunction() ) {
+      case Condition.FUNC_NULL:
+      case Condition.FUNC_NOT_NULL:
+        return new NullNode( column, condition.getFunction() == Condition.FUNC_NULL, condition.isNegated() );
+      case Condition.FUNC_EQUAL:
+      case Condition.FUNC_NOT_EQUAL:
+      case Condition.FUNC_SMALLER:
+      case Condition.FUNC_SMALLER_EQUAL:
+      case Condition.FUNC_LARGER:
+      case Condition.FUNC_LARGER_EQUAL:
+        break;
+      default:
+        return null;
+    }
+
+    // Only a comparison with a constant, converted to the data type of the field like ValueMeta.compare() does
+    //
+    ValueMetaAndData exact = condition.getRightExact();
+    if ( !Const.isEmpty( condition.getRightValuename() ) || exact == null || exact.getValueMeta() == null ) {
+      return null;
+    }
+    Object value;
+    try {
+      ValueMetaInterface exactMeta = exact.getValueMeta();
+      if ( exactMeta.getType() == fieldMeta.getType() ) {
+        value = exactMeta.convertToNormalStorageType( exact.getValueData() );
+      } else {
+        value = fieldMeta.convertData( exactMeta, exact.getValueData() );
+      }
+    } catch ( Exception e ) {
+      return null; // let the row by row evaluation report the problem
+    }
+
+    CompareNode node = new CompareNode( column, kind, condition.getFunction(), condition.isNegated() );
+    if ( value == null ) {
+      node.constantNull = true;
+    } else {
+      switch ( kind ) {
+        case RowBatch.KIND_LONG:
+          node.constantLong = ( (Number) value ).longValue();
+          break;
+        case RowBatch.KIND_DATE:
+          node.constantLong = ( (Date) value ).getTime();
+          break;
+        case RowBatch.KIND_DOUBLE:
+          node.constantDouble = ( (Number) value ).doubleValue();
+          break;
+        default:
+          node.constantLong = ( (Boolean) value ).booleanValue() ? 1L : 0L;
+          break;
+      }
+    }
+    return node;
+  }
+
+  private abstract static class Node {
+    abstract void evaluate( RowBatch batch, boolean[] result );
+  }
+
+  /**
+   * An atomic condition evaluated row by row
+   */
+  private class RowNode extends Node {
+    private final Condition condition;
+
+    RowNode( Condition condition ) {
+      this.condition = condition;
+    }
+
+    void evaluate( RowBatch batch, boolean[] result ) {
+      for ( int i = 0; i < batch.size(); i++ ) {
+        result[i] = condition.evaluate( rowMeta, batch.getRow( i ) );
+      }
+    }
+  }
+
+  /**
+   * Combines the results of the sub-conditions the way Condition.evaluate() does
+   */
+  private static class CompositeNode extends Node {
+    private final Node[] children;
+    private final int[] operators;
+    private final boolean negate;
+    private boolean[] other;
+
+    CompositeNode( Node[] children, int[] operators, boolean negate ) {
+      this.children = children;
+      this.operators = operators;
+      this.negate = negate;
+    }
+
+    void evaluate( RowBatch batch, boolean[] result ) {
+      int size = batch.size();
+      if ( other == null || other.length < size ) {
+        other = new boolean[batch.getCapacity()];
+      }
+
+      children[0].evaluate( batch, result );
+      for ( int c = 1; c < children.length; c++ ) {
+        children[c].evaluate( batch, other );
+        switch ( operators[c] ) {
+          case Condition.OPERATOR_OR:
+            for ( int i = 0; i < size; i++ ) {
+              result[i] = result[i] || other[i];
+            }
+            break;
+          case Condition.OPERATOR_AND:
+            for ( int i = 0; i < size; i++ ) {
+              result[i] = result[i] && other[i];
+            }
+            break;
+          case Condition.OPERATOR_OR_NOT:
+            for ( int i = 0; i < size; i++ ) {
+              result[i] = result[i] || !other[i];
+            }
+            break;
+          case Condition.OPERATOR_AND_NOT:
+            for ( int i = 0; i < size; i++ ) {
+              result[i] = result[i] && !other[i];
+            }
+            break;
+          case Condition.OPERATOR_XOR:
+            for ( int i = 0; i < size; i++ ) {
+              result[i] = result[i] ^ other[i];
+            }
+            break;
+          default:
+            break;
+        }
+      }
+
+      if ( negate ) {
+        for ( int i = 0; i < size; i++ ) {
+          result[i] = !result[i];
+        }
+      }
+    }
+  }
+
+  /**
+   * IS NULL and IS NOT NULL on the null bitmap of a column
+   */
+  private static class NullNode extends Node {
+    private final int column;
+    private final boolean isNull;
+    private final boolean negate;
+
+    NullNode( int column, boolean isNull, boolean negate ) {
+      this.column = column;
+      this.isNull = isNull;
+      this.negate = negate;
+    }
+
+    void evaluate( RowBatch batch, boolean[] result ) {
+      long[] nulls = batch.getNulls( column );
+      for ( int i = 0; i < batch.size(); i++ ) {
+        result[i] = ( RowBatch.isNull( nulls, i ) == isNull ) != negate;
+      }
+    }
+  }
+
+  /**
+   * Compares the values of a column with a constant. Like in ValueMeta.compare(), null is smaller than any value.
+   */
+  private static class CompareNode extends Node {
+    private final int column;
+    private final int kind;
+    private final int function;
+    private final boolean negate;
+    private boolean constantNull;
+    private long constantLong;
+    private double constantDouble;
+
+    CompareNode( int column, int kind, int function, boolean negate ) {
+      this.column = column;
+      this.kind = kind;
+      this.function = function;
+      this.negate = negate;
+    }
+
+    void evaluate( RowBatch batch, boolean[] result ) {
+      int size = batch.size();
+      long[] nulls = batch.getNulls( column );
+      switch ( kind ) {
+        case RowBatch.KIND_LONG:
+        case RowBatch.KIND_DATE:
+          long[] longs = batch.getLongs( column );
+          for ( int i = 0; i < size; i++ ) {
+            int cmp;
+            if ( RowBatch.isNull( nulls, i ) ) {
+              cmp = constantNull ? 0 : -1;
+            } else if ( constantNull ) {
+              cmp = 1;
+            } else {
+              cmp = longs[i] < constantLong ? -1 : ( longs[i] == constantLong ? 0 : 1 );
+            }
+            result[i] = test( cmp );
+          }
+          break;
+        case RowBatch.KIND_DOUBLE:
+          double[] doubles = batch.getDoubles( column );
+          for ( int i = 0; i < size; i++ ) {
+            int cmp;
+            if ( RowBatch.isNull( nulls, i ) ) {
+              cmp = constantNull ? 0 : -1;
+            } else if ( constantNull ) {
+              cmp = 1;
+            } else {
+              cmp = Double.compare( doubles[i], constantDouble );
+            }
+            result[i] = test( cmp );
+          }
+          break;
+        default:
+          boolean[] booleans = batch.getBooleans( column );
+          for ( int i = 0; i < size; i++ ) {
+            int cmp;
+            if ( RowBatch.isNull( nulls, i ) ) {
+              cmp = constantNull ? 0 : -1;
+            } else if ( constantNull ) {
+              cmp = 1;
+            } else {
+              long value = booleans[i] ? 1L : 0L;
+              cmp = value < constantLong ? -1 : ( value == constantLong ? 0 : 1 );
+            }
+            result[i] = test( cmp );
+          }
+          break;
+      }
+    }
+
+    private boolean test( int cmp ) {
+      boolean result;
+      switch ( function ) {
+        case Condition.FUNC_EQUAL:
+          result = cmp == 0;
+          break;
+        case Condition.FUNC_NOT_EQUAL:
+          result = cmp != 0;
+          break;
+        case Condition.FUNC_SMALLER:
+          result = cmp < 0;
+          break;
+        case Condition.FUNC_SMALLER_EQUAL:
+          result = cmp <= 0;
+          break;
+        case Condition.FUNC_LARGER:
+          result = cmp > 0;
+          break;
+        default:
+          result = cmp >= 0;
+          break;
+      }
+      return result != negate;
+    }
+  }
+}
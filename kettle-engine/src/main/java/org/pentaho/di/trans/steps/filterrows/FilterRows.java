@@ -25,11 +25,15 @@ package org.pentaho.di.trans.steps.filterrows;
 import java.util.List;
 
 import org.pentaho.di.core.Const;
+import org.pentaho.di.core.RowSet;
 import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.RowBatch;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.i18n.BaseMessages;
 import org.pentaho.di.trans.Trans;
 import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.compiler.ConditionCompiler;
+import org.pentaho.di.trans.compiler.ExpressionCompiler;
 import org.pentaho.di.trans.step.BaseStep;
 import org.pentaho.di.trans.step.StepDataInterface;
 import org.pentaho.di.trans.step.StepInterface;
@@ -56,6 +60,9 @@ public class FilterRows extends BaseStep implements StepInterface {
 
   private synchronized boolean keepRow( RowMetaInterface rowMeta, Object[] row ) throws KettleException {
     try {
+      if ( data.compiledCondition != null ) {
+        return data.compiledCondition.evaluate( row );
+      }
       return meta.getCondition().evaluate( rowMeta, row );
     } catch ( Exception e ) {
       String message =
@@ -67,10 +74,74 @@ public class FilterRows extends BaseStep implements StepInterface {
     }
   }
 
+  /**
+   * Evaluates the condition for all the rows of a batch on the columns of the batch.
+   */
+  private synchronized void keepRows( RowBatch batch ) throws KettleException {
+    try {
+      data.batchCondition.evaluate( batch, data.batchSelection );
+    } catch ( Exception e ) {
+      String message =
+        BaseMessages.getString( PKG, "FilterRows.Exception.UnexpectedErrorFoundInEvaluationFuction" );
+      logError( message );
+      logError( Const.getStackTracker( e ) );
+      throw new KettleException( message, e );
+    }
+  }
+
+  /**
+   * Process a batch of rows. Where possible the condition is evaluated on the primitive columns of the batch, the rest
+   * of the condition is evaluated on the original rows. The rows themselves are not copied.
+   */
+  private boolean processRowBatch() throws KettleException {
+    RowBatch batch = getRowBatch();
+    if ( batch == null ) {
+      setOutputDone();
+      return false;
+    }
+
+    if ( data.batchSelection == null || data.batchSelection.length < batch.size() ) {
+      data.batchSelection = new boolean[batch.getCapacity()];
+    }
+    if ( data.batchCondition != null ) {
+      keepRows( batch );
+    } else {
+      for ( int i = 0; i < batch.size(); i++ ) {
+        data.batchSelection[i] = keepRow( getInputRowMeta(), batch.getRow( i ) );
+      }
+    }
+
+    if ( !data.chosesTargetSteps ) {
+      batch.compact( data.batchSelection );
+      putRowBatch( data.outputRowMeta, batch );
+    } else {
+      for ( int i = 0; i < batch.size(); i++ ) {
+        RowSet rowSet = data.batchSelection[i] ? data.trueRowSet : data.falseRowSet;
+        if ( rowSet != null ) {
+          putRowTo( data.outputRowMeta, batch.getRow( i ), rowSet );
+        }
+      }
+    }
+
+    if ( checkFeedback( getLinesRead(), batch.size() ) ) {
+      if ( log.isBasic() ) {
+        logBasic( BaseMessages.getString( PKG, "FilterRows.Log.LineNumber" ) + getLinesRead() );
+      }
+    }
+
+    return true;
+  }
+
   public boolean processRow( StepMetaInterface smi, StepDataInterface sdi ) throws KettleException {
     meta = (FilterRowsMeta) smi;
     data = (FilterRowsData) sdi;
 
+    // Once the first row has set everything up we can process batches of rows
+    //
+    if ( !first && getRowBatchSize() > 0 && !log.isRowLevel() ) {
+      return processRowBatch();
+    }
+
     boolean keep;
 
     Object[] r = getRow(); // Get next usable row from input rowset(s)!
@@ -89,6 +160,23 @@ public class FilterRows extends BaseStep implements StepInterface {
       // if filter refers to non-existing fields, throw exception
       checkNonExistingFields();
 
+      // Turn the condition into code for the layout of the input rows
+      //
+      if ( ExpressionCompiler.isEnabled( this ) ) {
+        data.compiledCondition = ConditionCompiler.compile( meta.getCondition(), getInputRowMeta() );
+        if ( data.compiledCondition != null && log.isDetailed() ) {
+          logDetailed( BaseMessages.getString( PKG, "FilterRows.Log.ConditionCompiled", Integer
+            .toString( data.compiledCondition.getNrCompiled() ), Integer.toString( data.compiledCondition
+            .getNrInterpreted() ) ) );
+        }
+      }
+
+      // See which parts of the condition can be evaluated on the columns of a batch of rows
+      //
+      if ( getRowBatchSize() > 0 ) {
+        data.batchCondition = BatchCondition.prepare( meta.getCondition(), getInputRowMeta() );
+      }
+
       // Cache the position of the RowSet for the output.
       //
       if ( data.chosesTargetSteps ) {
@@ -24,6 +24,7 @@ package org.pentaho.di.trans.steps.filterrows;
 
 import org.pentaho.di.core.RowSet;
 import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.trans.compiler.CompiledCondition;
 import org.pentaho.di.trans.step.BaseStepData;
 import org.pentaho.di.trans.step.StepDataInterface;
 
@@ -41,6 +42,15 @@ public class FilterRowsData extends BaseStepData implements StepDataInterface {
   public String trueStepname;
   public String falseStepname;
 
+  /** The rows to keep in the current row batch */
+  public boolean[] batchSelection;
+
+  /** The condition prepared for batches of rows, null to evaluate it row by row */
+  public BatchCondition batchCondition;
+
+  /** The condition compiled for the input rows, null to evaluate the condition itself */
+  public CompiledCondition compiledCondition;
+
   public FilterRowsData() {
     super();
   }
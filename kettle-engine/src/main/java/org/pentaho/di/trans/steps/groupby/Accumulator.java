@@ -0,0 +1,567 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2015 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.groupby;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Date;
+
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.ValueMetaInterface;
+
+/**
+ * The running state of one aggregate over primitive fields. The Group By and Memory Group By steps pick an
+ * accumulator once, from the input value metadata, for the aggregates that have one: sums, averages, counts, minimum
+ * and maximum of integers, numbers and dates and the standard deviation. Adding a row to an accumulator doesn't box,
+ * convert or compare through the value metadata so it doesn't allocate anything.<br>
+ * <br>
+ * The approximate aggregates are accumulators as well: {@link HyperLogLog} and {@link QuantileSketch}. The other
+ * aggregates (and subjects with binary string storage, big numbers, ...) keep using the generic code in the steps.
+ *
+ * @since 5.4
+ */
+public abstract class Accumulator {
+
+  /**
+   * Adds a value of a row to the aggregate.
+   *
+   * @param valueMeta
+   *          the metadata of the subject field
+   * @param value
+   *          the value of the subject field
+   * @throws KettleValueException
+   */
+  public abstract void add( ValueMetaInterface valueMeta, Object value ) throws KettleValueException;
+
+  /**
+   * @return the aggregate of the values added so far, in the type of the aggregate field
+   */
+  public abstract Object getValue();
+
+  /**
+   * Starts over with a new group.
+   */
+  public abstract void reset();
+
+  /**
+   * @return a new, empty accumulator of the same kind
+   */
+  public abstract Accumulator newInstance();
+
+  /**
+   * Adds the state of another accumulator of the same kind, filled with values that came later.
+   */
+  public abstract void merge( Accumulator other );
+
+  /**
+   * @return the approximate heap size of the accumulator in bytes
+   */
+  public long estimateSize() {
+    return 32;
+  }
+
+  public abstract void writeState( DataOutputStream output ) throws IOException;
+
+  public abstract void readState( DataInputStream input ) throws IOException;
+
+  /**
+   * Creates a sum or an average accumulator.
+   *
+   * @param subjMeta
+   *          the metadata of the subject field
+   * @param aggMeta
+   *          the metadata of the aggregate field
+   * @param average
+   *          true to calculate the average, false for the sum
+   * @return the accumulator or null if the types can't be handled with primitives
+   */
+  public static Accumulator createSum( ValueMetaInterface subjMeta, ValueMetaInterface aggMeta, boolean average ) {
+    if ( !isPrimitive( subjMeta ) || aggMeta == null ) {
+      return null;
+    }
+    switch ( aggMeta.getType() ) {
+      case ValueMetaInterface.TYPE_INTEGER:
+        return subjMeta.isInteger() ? new LongSum( average ) : null;
+      case ValueMetaInterface.TYPE_NUMBER:
+        return new DoubleSum( average, subjMeta.isInteger() );
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * Creates a counter.
+   *
+   * @param countNulls
+   *          true to count all rows, false to count the values that are not null
+   */
+  public static Accumulator createCount( boolean countNulls ) {
+    return new Count( countNulls );
+  }
+
+  /**
+   * Creates a minimum or maximum accumulator.
+   *
+   * @param subjMeta
+   *          the metadata of the subject field
+   * @param max
+   *          true for the maximum, false for the minimum
+   * @param minNullIsValued
+   *          true if a null value is the minimum of a group
+   * @return the accumulator or null if the type can't be handled with primitives
+   */
+  public static Accumulator createMinMax( ValueMetaInterface subjMeta, boolean max, boolean minNullIsValued ) {
+    if ( subjMeta == null || !subjMeta.isStorageNormal() ) {
+      return null;
+    }
+    boolean nullIsMinimum = !max && minNullIsValued;
+    switch ( subjMeta.getType() ) {
+      case ValueMetaInterface.TYPE_INTEGER:
+        return new LongMinMax( max, nullIsMinimum, false );
+      case ValueMetaInterface.TYPE_DATE:
+        return new LongMinMax( max, nullIsMinimum, true );
+      case ValueMetaInterface.TYPE_NUMBER:
+        return new DoubleMinMax( max, nullIsMinimum );
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * Creates a (population) standard deviation accumulator.
+   *
+   * @param subjMeta
+   *          the metadata of the subject field
+   * @return the accumulator or null if the type can't be handled with primitives
+   */
+  public static Accumulator createStandardDeviation( ValueMetaInterface subjMeta ) {
+    if ( !isPrimitive( subjMeta ) ) {
+      return null;
+    }
+    return new StandardDeviation( subjMeta.isInteger() );
+  }
+
+  private static boolean isPrimitive( ValueMetaInterface subjMeta ) {
+    return subjMeta != null
+      && ( subjMeta.getType() == ValueMetaInterface.TYPE_INTEGER
+      || subjMeta.getType() == ValueMetaInterface.TYPE_NUMBER );
+  }
+
+  /**
+   * Sum or average of integers, the average is calculated with an integer division.
+   */
+  static class LongSum extends Accumulator {
+    private final boolean average;
+    private long sum;
+    private long count;
+
+    LongSum( boolean average ) {
+      this.average = average;
+    }
+
+    @Override
+    public void add( ValueMetaInterface valueMeta, Object value ) throws KettleValueException {
+      if ( !valueMeta.isNull( value ) ) {
+        sum += valueMeta.getInteger( value ).longValue();
+        count++;
+      }
+    }
+
+    @Override
+    public Object getValue() {
+      if ( count == 0 ) {
+        return null;
+      }
+      return Long.valueOf( average ? sum / count : sum );
+    }
+
+    @Override
+    public void reset() {
+      sum = 0;
+      count = 0;
+    }
+
+    @Override
+    public Accumulator newInstance() {
+      return new LongSum( average );
+    }
+
+    @Override
+    public void merge( Accumulator other ) {
+      sum += ( (LongSum) other ).sum;
+      count += ( (LongSum) other ).count;
+    }
+
+    @Override
+    public void writeState( DataOutputStream output ) throws IOException {
+      output.writeLong( sum );
+      output.writeLong( count );
+    }
+
+    @Override
+    public void readState( DataInputStream input ) throws IOException {
+      sum = input.readLong();
+      count = input.readLong();
+    }
+  }
+
+  /**
+   * Sum or average of numbers, or of integers with a number as result.
+   */
+  static class DoubleSum extends Accumulator {
+    private final boolean average;
+    private final boolean integerInput;
+    private double sum;
+    private long count;
+
+    DoubleSum( boolean average, boolean integerInput ) {
+      this.average = average;
+      this.integerInput = integerInput;
+    }
+
+    @Override
+    public void add( ValueMetaInterface valueMeta, Object value ) throws KettleValueException {
+      if ( !valueMeta.isNull( value ) ) {
+        if ( integerInput ) {
+          sum += valueMeta.getInteger( value ).longValue();
+        } else {
+          sum += valueMeta.getNumber( value ).doubleValue();
+        }
+        count++;
+      }
+    }
+
+    @Override
+    public Object getValue() {
+      if ( count == 0 ) {
+        return null;
+      }
+      return Double.valueOf( average ? sum / count : sum );
+    }
+
+    @Override
+    public void reset() {
+      sum = 0.0;
+      count = 0;
+    }
+
+    @Override
+    public Accumulator newInstance() {
+      return new DoubleSum( average, integerInput );
+    }
+
+    @Override
+    public void merge( Accumulator other ) {
+      sum += ( (DoubleSum) other ).sum;
+      count += ( (DoubleSum) other ).count;
+    }
+
+    @Override
+    public void writeState( DataOutputStream output ) throws IOException {
+      output.writeDouble( sum );
+      output.writeLong( count );
+    }
+
+    @Override
+    public void readState( DataInputStream input ) throws IOException {
+      sum = input.readDouble();
+      count = input.readLong();
+    }
+  }
+
+  static class Count extends Accumulator {
+    private final boolean countNulls;
+    private long count;
+
+    Count( boolean countNulls ) {
+      this.countNulls = countNulls;
+    }
+
+    @Override
+    public void add( ValueMetaInterface valueMeta, Object value ) throws KettleValueException {
+      if ( countNulls || !valueMeta.isNull( value ) ) {
+        count++;
+      }
+    }
+
+    @Override
+    public Object getValue() {
+      return Long.valueOf( count );
+    }
+
+    @Override
+    public void reset() {
+      count = 0;
+    }
+
+    @Override
+    public Accumulator newInstance() {
+      return new Count( countNulls );
+    }
+
+    @Override
+    public void merge( Accumulator other ) {
+      count += ( (Count) other ).count;
+    }
+
+    @Override
+    public void writeState( DataOutputStream output ) throws IOException {
+      output.writeLong( count );
+    }
+
+    @Override
+    public void readState( DataInputStream input ) throws IOException {
+      count = input.readLong();
+    }
+  }
+
+  /**
+   * The common part of the minimum and maximum: the value that wins is kept as is, so the result is the same object
+   * that came in.
+   */
+  abstract static class MinMax extends Accumulator {
+    protected final boolean max;
+    protected final boolean nullIsMinimum;
+    protected Object value;
+    protected boolean hasNull;
+
+    MinMax( boolean max, boolean nullIsMinimum ) {
+      this.max = max;
+      this.nullIsMinimum = nullIsMinimum;
+    }
+
+    @Override
+    public Object getValue() {
+      if ( hasNull && nullIsMinimum ) {
+        return null;
+      }
+      return value;
+    }
+
+    @Override
+    public void reset() {
+      value = null;
+      hasNull = false;
+    }
+  }
+
+  /**
+   * Minimum or maximum of integers or dates, compared on the long value or the milliseconds.
+   */
+  static class LongMinMax extends MinMax {
+    private final boolean date;
+    private long current;
+
+    LongMinMax( boolean max, boolean nullIsMinimum, boolean date ) {
+      super( max, nullIsMinimum );
+      this.date = date;
+    }
+
+    @Override
+    public void add( ValueMetaInterface valueMeta, Object object ) throws KettleValueException {
+      if ( object == null ) {
+        hasNull = true;
+        return;
+      }
+      long x = date ? ( (Date) object ).getTime() : ( (Long) object ).longValue();
+      if ( value == null || ( max ? x > current : x < current ) ) {
+        current = x;
+        value = object;
+      }
+    }
+
+    @Override
+    public Accumulator newInstance() {
+      return new LongMinMax( max, nullIsMinimum, date );
+    }
+
+    @Override
+    public void merge( Accumulator other ) {
+      LongMinMax minMax = (LongMinMax) other;
+      hasNull |= minMax.hasNull;
+      if ( minMax.value != null
+        && ( value == null || ( max ? minMax.current > current : minMax.current < current ) ) ) {
+        current = minMax.current;
+        value = minMax.value;
+      }
+    }
+
+    @Override
+    public void writeState( DataOutputStream output ) throws IOException {
+      output.writeBoolean( hasNull );
+      output.writeBoolean( value != null );
+      output.writeLong( current );
+    }
+
+    @Override
+    public void readState( DataInputStream input ) throws IOException {
+      hasNull = input.readBoolean();
+      boolean hasValue = input.readBoolean();
+      current = input.readLong();
+      if ( hasValue ) {
+        value = date ? new Date( current ) : Long.valueOf( current );
+      } else {
+        value = null;
+      }
+    }
+  }
+
+  /**
+   * Minimum or maximum of numbers, in the order of {@link Double#compare(double, double)} like the value metadata.
+   */
+  static class DoubleMinMax extends MinMax {
+    private double current;
+
+    DoubleMinMax( boolean max, boolean nullIsMinimum ) {
+      super( max, nullIsMinimum );
+    }
+
+    @Override
+    public void add( ValueMetaInterface valueMeta, Object object ) throws KettleValueException {
+      if ( object == null ) {
+        hasNull = true;
+        return;
+      }
+      double x = ( (Double) object ).doubleValue();
+      if ( value == null || wins( x ) ) {
+        current = x;
+        value = object;
+      }
+    }
+
+    private boolean wins( double x ) {
+      int cmp = Double.compare( x, current );
+      return max ? cmp > 0 : cmp < 0;
+    }
+
+    @Override
+    public Accumulator newInstance() {
+      return new DoubleMinMax( max, nullIsMinimum );
+    }
+
+    @Override
+    public void merge( Accumulator other ) {
+      DoubleMinMax minMax = (DoubleMinMax) other;
+      hasNull |= minMax.hasNull;
+      if ( minMax.value != null && ( value == null || wins( minMax.current ) ) ) {
+        current = minMax.current;
+        value = minMax.value;
+      }
+    }
+
+    @Override
+    public void writeState( DataOutputStream output ) throws IOException {
+      output.writeBoolean( hasNull );
+      output.writeBoolean( value != null );
+      output.writeDouble( current );
+    }
+
+    @Override
+    public void readState( DataInputStream input ) throws IOException {
+      hasNull = input.readBoolean();
+      boolean hasValue = input.readBoolean();
+      current = input.readDouble();
+      value = hasValue ? Double.valueOf( current ) : null;
+    }
+  }
+
+  /**
+   * Population standard deviation with Welford's running mean and sum of squared differences. Null values are skipped.
+   */
+  static class StandardDeviation extends Accumulator {
+    private final boolean integerInput;
+    private long count;
+    private double mean;
+    private double m2;
+
+    StandardDeviation( boolean integerInput ) {
+      this.integerInput = integerInput;
+    }
+
+    @Override
+    public void add( ValueMetaInterface valueMeta, Object value ) throws KettleValueException {
+      if ( valueMeta.isNull( value ) ) {
+        return;
+      }
+      double x = integerInput ? valueMeta.getInteger( value ).longValue() : valueMeta.getNumber( value ).doubleValue();
+      count++;
+      double delta = x - mean;
+      mean += delta / count;
+      m2 += delta * ( x - mean );
+    }
+
+    @Override
+    public Object getValue() {
+      if ( count == 0 ) {
+        return null;
+      }
+      return Double.valueOf( Math.sqrt( m2 / count ) );
+    }
+
+    @Override
+    public void reset() {
+      count = 0;
+      mean = 0.0;
+      m2 = 0.0;
+    }
+
+    @Override
+    public Accumulator newInstance() {
+      return new StandardDeviation( integerInput );
+    }
+
+    @Override
+    public void merge( Accumulator other ) {
+      StandardDeviation later = (StandardDeviation) other;
+      if ( later.count == 0 ) {
+        return;
+      }
+      if ( count == 0 ) {
+        count = later.count;
+        mean = later.mean;
+        m2 = later.m2;
+        return;
+      }
+      double n = count + later.count;
+      double delta = later.mean - mean;
+      m2 += later.m2 + delta * delta * count * later.count / n;
+      mean += delta * later.count / n;
+      count += later.count;
+    }
+
+    @Override
+    public void writeState( DataOutputStream output ) throws IOException {
+      output.writeLong( count );
+      output.writeDouble( mean );
+      output.writeDouble( m2 );
+    }
+
+    @Override
+    public void readState( DataInputStream input ) throws IOException {
+      count = input.readLong();
+      mean = input.readDouble();
+      m2 = input.readDouble();
+    }
+  }
+}
@@ -428,6 +428,10 @@ public class GroupBy extends BaseStep implements StepInterface {
     for ( int i = 0; i < data.subjectnrs.length; i++ ) {
       Object subj = r[ data.subjectnrs[ i ] ];
       ValueMetaInterface subjMeta = data.inputRowMeta.getValueMeta( data.subjectnrs[ i ] );
+      if ( data.accumulators != null && data.accumulators[ i ] != null ) {
+        data.accumulators[ i ].add( subjMeta, subj );
+        continue;
+      }
       Object value = data.agg[ i ];
       ValueMetaInterface valueMeta = data.aggMeta.getValueMeta( i );
 
@@ -582,6 +586,13 @@ public class GroupBy extends BaseStep implements StepInterface {
     data.mean = new double[ data.subjectnrs.length ]; // sets all doubles to 0.0
     data.aggMeta = new RowMeta();
 
+    // The accumulators are picked once, with the first group
+    //
+    boolean pickAccumulators = data.accumulators == null;
+    if ( pickAccumulators ) {
+      data.accumulators = new Accumulator[ data.subjectnrs.length ];
+    }
+
     for ( int i = 0; i < data.subjectnrs.length; i++ ) {
       ValueMetaInterface subjMeta = data.inputRowMeta.getValueMeta( data.subjectnrs[ i ] );
       Object v = null;
@@ -602,11 +613,14 @@ public class GroupBy extends BaseStep implements StepInterface {
           v = new ArrayList<Double>();
           break;
         case GroupByMeta.TYPE_GROUP_STANDARD_DEVIATION:
+        case GroupByMeta.TYPE_GROUP_MEDIAN_APPROX:
+        case GroupByMeta.TYPE_GROUP_PERCENTILE_APPROX:
           vMeta = new ValueMeta( meta.getAggregateField()[ i ], ValueMetaInterface.TYPE_NUMBER );
           break;
         case GroupByMeta.TYPE_GROUP_COUNT_DISTINCT:
         case GroupByMeta.TYPE_GROUP_COUNT_ANY:
         case GroupByMeta.TYPE_GROUP_COUNT_ALL:
+        case GroupByMeta.TYPE_GROUP_COUNT_DISTINCT_APPROX:
           vMeta = new ValueMeta( meta.getAggregateField()[ i ], ValueMetaInterface.TYPE_INTEGER );
           break;
         case GroupByMeta.TYPE_GROUP_FIRST:
@@ -635,11 +649,18 @@ public class GroupBy extends BaseStep implements StepInterface {
       if ( ( subjMeta != null )
           && ( aggType != GroupByMeta.TYPE_GROUP_COUNT_ALL
           && aggType != GroupByMeta.TYPE_GROUP_COUNT_DISTINCT
-          && aggType != GroupByMeta.TYPE_GROUP_COUNT_ANY ) ) {
+          && aggType != GroupByMeta.TYPE_GROUP_COUNT_ANY
+          && aggType != GroupByMeta.TYPE_GROUP_COUNT_DISTINCT_APPROX ) ) {
         vMeta.setLength( subjMeta.getLength(), subjMeta.getPrecision() );
       }
       data.agg[ i ] = v;
       data.aggMeta.addValueMeta( vMeta );
+
+      if ( pickAccumulators ) {
+        data.accumulators[ i ] = createAccumulator( i, subjMeta, vMeta );
+      } else if ( data.accumulators[ i ] != null ) {
+        data.accumulators[ i ].reset();
+      }
     }
 
     // Also clear the cumulative data...
@@ -653,6 +674,50 @@ public class GroupBy extends BaseStep implements StepInterface {
     }
   }
 
+  /**
+   * Picks the primitive accumulator for an aggregate, if there is one for the type of the subject.
+   *
+   * @return the accumulator or null if the aggregate is calculated in {@link #calcAggregate(Object[])}
+   */
+  private Accumulator createAccumulator( int i, ValueMetaInterface subjMeta, ValueMetaInterface aggMeta ) {
+    switch ( meta.getAggregateType()[ i ] ) {
+      case GroupByMeta.TYPE_GROUP_SUM:
+        return Accumulator.createSum( subjMeta, aggMeta, false );
+      case GroupByMeta.TYPE_GROUP_AVERAGE:
+        return Accumulator.createSum( subjMeta, aggMeta, true );
+      case GroupByMeta.TYPE_GROUP_STANDARD_DEVIATION:
+        return Accumulator.createStandardDeviation( subjMeta );
+      case GroupByMeta.TYPE_GROUP_COUNT_ALL:
+        return subjMeta == null ? null : Accumulator.createCount( false );
+      case GroupByMeta.TYPE_GROUP_COUNT_ANY:
+        return Accumulator.createCount( true );
+      case GroupByMeta.TYPE_GROUP_MIN:
+        return Accumulator.createMinMax( subjMeta, false, minNullIsValued );
+      case GroupByMeta.TYPE_GROUP_MAX:
+        return Accumulator.createMinMax( subjMeta, true, minNullIsValued );
+      case GroupByMeta.TYPE_GROUP_COUNT_DISTINCT_APPROX:
+        return new HyperLogLog( HyperLogLog.getPrecision( getApproximationError() ) );
+      case GroupByMeta.TYPE_GROUP_MEDIAN_APPROX:
+        return new QuantileSketch( QuantileSketch.getK( getApproximationError() ), 0.5 );
+      case GroupByMeta.TYPE_GROUP_PERCENTILE_APPROX:
+        double percentile = Double.parseDouble( meta.getValueField()[ i ] );
+        return new QuantileSketch( QuantileSketch.getK( getApproximationError() ), percentile / 100 );
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * @return the relative error of the approximate aggregates as a fraction
+   */
+  private double getApproximationError() {
+    String error = Const.NVL( environmentSubstitute( meta.getApproximationError() ), "" );
+    if ( Const.isEmpty( error ) ) {
+      error = GroupByMeta.DEFAULT_APPROXIMATION_ERROR;
+    }
+    return Const.toDouble( error, 1.0 ) / 100;
+  }
+
   private Object[] buildResult( Object[] r ) throws KettleValueException {
     Object[] result = null;
     if ( r != null || meta.isAlwaysGivingBackOneRow() ) {
@@ -690,7 +755,14 @@ public class GroupBy extends BaseStep implements StepInterface {
     if ( data.subjectnrs != null ) {
       for ( int i = 0; i < data.subjectnrs.length; i++ ) {
         Object ag = data.agg[ i ];
-        switch ( meta.getAggregateType()[ i ] ) {
+        int aggregateType = meta.getAggregateType()[ i ];
+        if ( data.accumulators != null && data.accumulators[ i ] != null ) {
+          // The accumulator has the final value of the aggregate ready
+          //
+          ag = data.accumulators[ i ].getValue();
+          aggregateType = GroupByMeta.TYPE_GROUP_NONE;
+        }
+        switch ( aggregateType ) {
           case GroupByMeta.TYPE_GROUP_SUM:
             break;
           case GroupByMeta.TYPE_GROUP_AVERAGE:
@@ -101,6 +101,11 @@ public class GroupByData extends BaseStepData implements StepDataInterface {
 
   public double[] mean;
 
+  /**
+   * The primitive accumulators of the aggregates, null for the aggregates that are calculated in the generic way.
+   */
+  public Accumulator[] accumulators;
+
   public boolean newBatch;
 
   /**
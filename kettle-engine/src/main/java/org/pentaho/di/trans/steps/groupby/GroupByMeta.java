@@ -95,11 +95,22 @@ public class GroupByMeta extends BaseStepMeta implements StepMetaInterface {
 
   public static final int TYPE_GROUP_COUNT_ANY = 18;
 
+  public static final int TYPE_GROUP_COUNT_DISTINCT_APPROX = 19;
+
+  public static final int TYPE_GROUP_MEDIAN_APPROX = 20;
+
+  public static final int TYPE_GROUP_PERCENTILE_APPROX = 21;
+
+  /**
+   * The default relative error of the approximate aggregates in percent
+   */
+  public static final String DEFAULT_APPROXIMATION_ERROR = "1";
+
   public static final String[] typeGroupCode = /* WARNING: DO NOT TRANSLATE THIS. WE ARE SERIOUS, DON'T TRANSLATE! */
   {
     "-", "SUM", "AVERAGE", "MEDIAN", "PERCENTILE", "MIN", "MAX", "COUNT_ALL", "CONCAT_COMMA", "FIRST", "LAST",
     "FIRST_INCL_NULL", "LAST_INCL_NULL", "CUM_SUM", "CUM_AVG", "STD_DEV", "CONCAT_STRING", "COUNT_DISTINCT",
-    "COUNT_ANY", };
+    "COUNT_ANY", "COUNT_DISTINCT_APPROX", "MEDIAN_APPROX", "PERCENTILE_APPROX", };
 
   public static final String[] typeGroupLongDesc = {
     "-", BaseMessages.getString( PKG, "GroupByMeta.TypeGroupLongDesc.SUM" ),
@@ -119,7 +130,10 @@ public class GroupByMeta extends BaseStepMeta implements StepMetaInterface {
     BaseMessages.getString( PKG, "GroupByMeta.TypeGroupLongDesc.STANDARD_DEVIATION" ),
     BaseMessages.getString( PKG, "GroupByMeta.TypeGroupLongDesc.CONCAT_STRING" ),
     BaseMessages.getString( PKG, "GroupByMeta.TypeGroupLongDesc.COUNT_DISTINCT" ),
-    BaseMessages.getString( PKG, "GroupByMeta.TypeGroupLongDesc.COUNT_ANY" ), };
+    BaseMessages.getString( PKG, "GroupByMeta.TypeGroupLongDesc.COUNT_ANY" ),
+    BaseMessages.getString( PKG, "GroupByMeta.TypeGroupLongDesc.COUNT_DISTINCT_APPROX" ),
+    BaseMessages.getString( PKG, "GroupByMeta.TypeGroupLongDesc.MEDIAN_APPROX" ),
+    BaseMessages.getString( PKG, "GroupByMeta.TypeGroupLongDesc.PERCENTILE_APPROX" ), };
 
   /**
    * All rows need to pass, adding an extra row at the end of each group/block.
@@ -186,6 +200,12 @@ public class GroupByMeta extends BaseStepMeta implements StepMetaInterface {
    */
   private boolean alwaysGivingBackOneRow;
 
+  /**
+   * The relative error of the approximate aggregates in percent: the standard error of the approximate number of
+   * distinct values and the rank error of the approximate median and percentiles.
+   */
+  private String approximationError;
+
   public GroupByMeta() {
     super(); // allocate BaseStepMeta
   }
@@ -327,6 +347,7 @@ public class GroupByMeta extends BaseStepMeta implements StepMetaInterface {
 
       directory = XMLHandler.getTagValue( stepnode, "directory" );
       prefix = XMLHandler.getTagValue( stepnode, "prefix" );
+      approximationError = XMLHandler.getTagValue( stepnode, "approximation_error" );
 
       addingLineNrInGroup = "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "add_linenr" ) );
       lineNrInGroupField = XMLHandler.getTagValue( stepnode, "linenr_fieldname" );
@@ -352,7 +373,8 @@ public class GroupByMeta extends BaseStepMeta implements StepMetaInterface {
         aggregateType[ i ] = getType( XMLHandler.getTagValue( fnode, "type" ) );
 
         if ( aggregateType[ i ] == TYPE_GROUP_COUNT_ALL
-            || aggregateType[ i ] == TYPE_GROUP_COUNT_DISTINCT || aggregateType[ i ] == TYPE_GROUP_COUNT_ANY ) {
+            || aggregateType[ i ] == TYPE_GROUP_COUNT_DISTINCT || aggregateType[ i ] == TYPE_GROUP_COUNT_ANY
+            || aggregateType[ i ] == TYPE_GROUP_COUNT_DISTINCT_APPROX ) {
           hasNumberOfValues = true;
         }
 
@@ -402,6 +424,7 @@ public class GroupByMeta extends BaseStepMeta implements StepMetaInterface {
   public void setDefault() {
     directory = "%%java.io.tmpdir%%";
     prefix = "grp";
+    approximationError = DEFAULT_APPROXIMATION_ERROR;
 
     passAllRows = false;
     aggregateIgnored = false;
@@ -460,6 +483,7 @@ public class GroupByMeta extends BaseStepMeta implements StepMetaInterface {
           case TYPE_GROUP_COUNT_DISTINCT:
           case TYPE_GROUP_COUNT_ANY:
           case TYPE_GROUP_COUNT_ALL:
+          case TYPE_GROUP_COUNT_DISTINCT_APPROX:
             value_type = ValueMetaInterface.TYPE_INTEGER;
             break;
           case TYPE_GROUP_CONCAT_COMMA:
@@ -468,6 +492,8 @@ public class GroupByMeta extends BaseStepMeta implements StepMetaInterface {
           case TYPE_GROUP_STANDARD_DEVIATION:
           case TYPE_GROUP_MEDIAN:
           case TYPE_GROUP_PERCENTILE:
+          case TYPE_GROUP_MEDIAN_APPROX:
+          case TYPE_GROUP_PERCENTILE_APPROX:
             value_type = ValueMetaInterface.TYPE_NUMBER;
             break;
           case TYPE_GROUP_CONCAT_STRING:
@@ -484,7 +510,8 @@ public class GroupByMeta extends BaseStepMeta implements StepMetaInterface {
           precision = -1;
           length = -1;
         } else if ( aggregateType[ i ] == TYPE_GROUP_COUNT_ALL
-            || aggregateType[ i ] == TYPE_GROUP_COUNT_DISTINCT || aggregateType[ i ] == TYPE_GROUP_COUNT_ANY ) {
+            || aggregateType[ i ] == TYPE_GROUP_COUNT_DISTINCT || aggregateType[ i ] == TYPE_GROUP_COUNT_ANY
+            || aggregateType[ i ] == TYPE_GROUP_COUNT_DISTINCT_APPROX ) {
           length = ValueMetaInterface.DEFAULT_INTEGER_LENGTH;
           precision = 0;
         } else if ( aggregateType[ i ] == TYPE_GROUP_SUM
@@ -531,6 +558,7 @@ public class GroupByMeta extends BaseStepMeta implements StepMetaInterface {
     retval.append( "      " ).append( XMLHandler.addTagValue( "field_ignore", aggregateIgnoredField ) );
     retval.append( "      " ).append( XMLHandler.addTagValue( "directory", directory ) );
     retval.append( "      " ).append( XMLHandler.addTagValue( "prefix", prefix ) );
+    retval.append( "      " ).append( XMLHandler.addTagValue( "approximation_error", approximationError ) );
     retval.append( "      " ).append( XMLHandler.addTagValue( "add_linenr", addingLineNrInGroup ) );
     retval.append( "      " ).append( XMLHandler.addTagValue( "linenr_fieldname", lineNrInGroupField ) );
     retval.append( "      " ).append( XMLHandler.addTagValue( "give_back_row", alwaysGivingBackOneRow ) );
@@ -565,6 +593,7 @@ public class GroupByMeta extends BaseStepMeta implements StepMetaInterface {
       aggregateIgnoredField = rep.getStepAttributeString( id_step, "field_ignore" );
       directory = rep.getStepAttributeString( id_step, "directory" );
       prefix = rep.getStepAttributeString( id_step, "prefix" );
+      approximationError = rep.getStepAttributeString( id_step, "approximation_error" );
       addingLineNrInGroup = rep.getStepAttributeBoolean( id_step, "add_linenr" );
       lineNrInGroupField = rep.getStepAttributeString( id_step, "linenr_fieldname" );
 
@@ -584,7 +613,8 @@ public class GroupByMeta extends BaseStepMeta implements StepMetaInterface {
         aggregateType[ i ] = getType( rep.getStepAttributeString( id_step, i, "aggregate_type" ) );
 
         if ( aggregateType[ i ] == TYPE_GROUP_COUNT_ALL
-            || aggregateType[ i ] == TYPE_GROUP_COUNT_DISTINCT || aggregateType[ i ] == TYPE_GROUP_COUNT_ANY ) {
+            || aggregateType[ i ] == TYPE_GROUP_COUNT_DISTINCT || aggregateType[ i ] == TYPE_GROUP_COUNT_ANY
+            || aggregateType[ i ] == TYPE_GROUP_COUNT_DISTINCT_APPROX ) {
           hasNumberOfValues = true;
         }
         valueField[ i ] = rep.getStepAttributeString( id_step, i, "aggregate_value_field" );
@@ -605,6 +635,7 @@ public class GroupByMeta extends BaseStepMeta implements StepMetaInterface {
       rep.saveStepAttribute( id_transformation, id_step, "field_ignore", aggregateIgnoredField );
       rep.saveStepAttribute( id_transformation, id_step, "directory", directory );
       rep.saveStepAttribute( id_transformation, id_step, "prefix", prefix );
+      rep.saveStepAttribute( id_transformation, id_step, "approximation_error", approximationError );
       rep.saveStepAttribute( id_transformation, id_step, "add_linenr", addingLineNrInGroup );
       rep.saveStepAttribute( id_transformation, id_step, "linenr_fieldname", lineNrInGroupField );
       rep.saveStepAttribute( id_transformation, id_step, "give_back_row", alwaysGivingBackOneRow );
@@ -681,6 +712,20 @@ public class GroupByMeta extends BaseStepMeta implements StepMetaInterface {
     this.prefix = prefix;
   }
 
+  /**
+   * @return the relative error of the approximate aggregates in percent
+   */
+  public String getApproximationError() {
+    return approximationError;
+  }
+
+  /**
+   * @param approximationError the relative error of the approximate aggregates in percent
+   */
+  public void setApproximationError( String approximationError ) {
+    this.approximationError = approximationError;
+  }
+
   /**
    * @return the addingLineNrInGroup
    */
@@ -0,0 +1,348 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2015 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.groupby;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.Date;
+
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.ValueMetaInterface;
+
+/**
+ * Approximate number of distinct values with a HyperLogLog sketch. The memory of a group is bounded by the number of
+ * registers (2^precision bytes) whatever the number of values.<br>
+ * <br>
+ * Small groups don't pay for the registers: as long as a group has few distinct values their 64-bit hash codes are kept
+ * in a small hash set and the count is exact. Only when the set would take as much memory as the registers, it is
+ * converted.
+ *
+ * @since 5.4
+ */
+public class HyperLogLog extends Accumulator {
+
+  public static final int MIN_PRECISION = 4;
+
+  public static final int MAX_PRECISION = 16;
+
+  private static final int MIN_SPARSE_CAPACITY = 16;
+
+  private final int precision;
+
+  /**
+   * The registers, null as long as the sketch is sparse
+   */
+  private byte[] registers;
+
+  /**
+   * The open addressing set of hash codes of the sparse sketch, 0 is an empty slot
+   */
+  private long[] hashes;
+  private int nrHashes;
+
+  private boolean hasValues;
+
+  /**
+   * @param precision
+   *          the number of bits of the hash code that pick the register
+   */
+  public HyperLogLog( int precision ) {
+    this.precision = Math.max( MIN_PRECISION, Math.min( MAX_PRECISION, precision ) );
+  }
+
+  /**
+   * Calculates the precision that gives the relative standard error: 1.04/sqrt(2^precision).
+   *
+   * @param relativeError
+   *          the relative standard error, for example 0.01 for 1%
+   */
+  public static int getPrecision( double relativeError ) {
+    if ( relativeError <= 0.0 ) {
+      return MAX_PRECISION;
+    }
+    double nrRegisters = ( 1.04 / relativeError ) * ( 1.04 / relativeError );
+    int precision = (int) Math.ceil( Math.log( nrRegisters ) / Math.log( 2 ) );
+    return Math.max( MIN_PRECISION, Math.min( MAX_PRECISION, precision ) );
+  }
+
+  public int getPrecision() {
+    return precision;
+  }
+
+  @Override
+  public void add( ValueMetaInterface valueMeta, Object value ) throws KettleValueException {
+    if ( valueMeta.isNull( value ) ) {
+      return;
+    }
+    addHash( hash( valueMeta.convertToNormalStorageType( value ) ) );
+  }
+
+  private void addHash( long hash ) {
+    hasValues = true;
+    if ( registers != null ) {
+      updateRegister( hash );
+      return;
+    }
+    if ( hash == 0L ) {
+      hash = 1L; // 0 marks an empty slot
+    }
+    if ( hashes == null ) {
+      hashes = new long[MIN_SPARSE_CAPACITY];
+    }
+    int mask = hashes.length - 1;
+    int slot = (int) ( hash ^ ( hash >>> 32 ) ) & mask;
+    while ( hashes[slot] != 0L ) {
+      if ( hashes[slot] == hash ) {
+        return;
+      }
+      slot = ( slot + 1 ) & mask;
+    }
+    hashes[slot] = hash;
+    nrHashes++;
+
+    if ( nrHashes * 2 > hashes.length ) {
+      // The set takes 8 bytes per slot, the registers 1 byte per register
+      //
+      if ( hashes.length * 2 * 8 > ( 1 << precision ) ) {
+        toRegisters();
+      } else {
+        rehash( hashes.length * 2 );
+      }
+    }
+  }
+
+  private void rehash( int capacity ) {
+    long[] old = hashes;
+    hashes = new long[capacity];
+    nrHashes = 0;
+    for ( int i = 0; i < old.length; i++ ) {
+      if ( old[i] != 0L ) {
+        addHash( old[i] );
+      }
+    }
+  }
+
+  private void toRegisters() {
+    registers = new byte[1 << precision];
+    if ( hashes != null ) {
+      for ( int i = 0; i < hashes.length; i++ ) {
+        if ( hashes[i] != 0L ) {
+          updateRegister( hashes[i] );
+        }
+      }
+    }
+    hashes = null;
+    nrHashes = 0;
+  }
+
+  private void updateRegister( long hash ) {
+    int index = (int) ( hash >>> ( 64 - precision ) );
+    // The remaining bits, with a sentinel bit so that the rank is bounded
+    long rest = ( hash << precision ) | ( 1L << ( precision - 1 ) );
+    byte rank = (byte) ( Long.numberOfLeadingZeros( rest ) + 1 );
+    if ( rank > registers[index] ) {
+      registers[index] = rank;
+    }
+  }
+
+  /**
+   * @return the estimated number of distinct values
+   */
+  public long estimate() {
+    if ( registers == null ) {
+      return nrHashes;
+    }
+    int m = registers.length;
+    double sum = 0.0;
+    int zeros = 0;
+    for ( int i = 0; i < m; i++ ) {
+      sum += 1.0 / ( 1L << registers[i] );
+      if ( registers[i] == 0 ) {
+        zeros++;
+      }
+    }
+    double estimate = getAlpha( m ) * m * m / sum;
+    if ( estimate <= 2.5 * m && zeros > 0 ) {
+      // Small range correction: linear counting
+      estimate = m * Math.log( (double) m / zeros );
+    }
+    return Math.round( estimate );
+  }
+
+  private static double getAlpha( int m ) {
+    switch ( m ) {
+      case 16:
+        return 0.673;
+      case 32:
+        return 0.697;
+      case 64:
+        return 0.709;
+      default:
+        return 0.7213 / ( 1.0 + 1.079 / m );
+    }
+  }
+
+  /**
+   * Like the exact count of distinct values: null if the group has no values.
+   */
+  @Override
+  public Object getValue() {
+    return hasValues ? Long.valueOf( estimate() ) : null;
+  }
+
+  @Override
+  public void reset() {
+    registers = null;
+    hashes = null;
+    nrHashes = 0;
+    hasValues = false;
+  }
+
+  @Override
+  public Accumulator newInstance() {
+    return new HyperLogLog( precision );
+  }
+
+  @Override
+  public void merge( Accumulator other ) {
+    HyperLogLog sketch = (HyperLogLog) other;
+    if ( !sketch.hasValues ) {
+      return;
+    }
+    if ( sketch.registers == null ) {
+      for ( int i = 0; i < sketch.hashes.length; i++ ) {
+        if ( sketch.hashes[i] != 0L ) {
+          addHash( sketch.hashes[i] );
+        }
+      }
+      return;
+    }
+    if ( registers == null ) {
+      toRegisters();
+    }
+    hasValues = true;
+    for ( int i = 0; i < registers.length; i++ ) {
+      if ( sketch.registers[i] > registers[i] ) {
+        registers[i] = sketch.registers[i];
+      }
+    }
+  }
+
+  @Override
+  public long estimateSize() {
+    return super.estimateSize() + ( registers != null ? registers.length : 0 )
+      + ( hashes != null ? hashes.length * 8L : 0 );
+  }
+
+  @Override
+  public void writeState( DataOutputStream output ) throws IOException {
+    output.writeBoolean( hasValues );
+    output.writeBoolean( registers != null );
+    if ( registers != null ) {
+      output.write( registers );
+    } else {
+      output.writeInt( nrHashes );
+      if ( hashes != null ) {
+        for ( int i = 0; i < hashes.length; i++ ) {
+          if ( hashes[i] != 0L ) {
+            output.writeLong( hashes[i] );
+          }
+        }
+      }
+    }
+  }
+
+  @Override
+  public void readState( DataInputStream input ) throws IOException {
+    reset();
+    boolean values = input.readBoolean();
+    if ( input.readBoolean() ) {
+      registers = new byte[1 << precision];
+      input.readFully( registers );
+    } else {
+      int nr = input.readInt();
+      for ( int i = 0; i < nr; i++ ) {
+        addHash( input.readLong() );
+      }
+    }
+    hasValues = values;
+  }
+
+  /**
+   * Calculates a 64-bit hash code of a value with normal storage. Values that are equal for the value metadata get
+   * the same hash code.
+   */
+  static long hash( Object value ) {
+    if ( value instanceof Long ) {
+      return mix( ( (Long) value ).longValue() );
+    }
+    if ( value instanceof String ) {
+      return hashChars( (String) value );
+    }
+    if ( value instanceof Double ) {
+      return mix( Double.doubleToLongBits( ( (Double) value ).doubleValue() ) );
+    }
+    if ( value instanceof Timestamp ) {
+      return mix( ( (Timestamp) value ).getTime() * 31 + ( (Timestamp) value ).getNanos() );
+    }
+    if ( value instanceof Date ) {
+      return mix( ( (Date) value ).getTime() );
+    }
+    if ( value instanceof BigDecimal ) {
+      // 1.0 and 1.00 are the same number
+      return hashChars( ( (BigDecimal) value ).stripTrailingZeros().toString() );
+    }
+    if ( value instanceof byte[] ) {
+      long h = 0xcbf29ce484222325L;
+      byte[] bytes = (byte[]) value;
+      for ( int i = 0; i < bytes.length; i++ ) {
+        h = ( h ^ bytes[i] ) * 0x100000001b3L;
+      }
+      return mix( h );
+    }
+    return mix( value.hashCode() );
+  }
+
+  private static long hashChars( String string ) {
+    long h = 0xcbf29ce484222325L;
+    for ( int i = 0; i < string.length(); i++ ) {
+      h = ( h ^ string.charAt( i ) ) * 0x100000001b3L;
+    }
+    return mix( h );
+  }
+
+  /**
+   * The finalization step of MurmurHash3: spreads every input bit over the whole hash code.
+   */
+  private static long mix( long h ) {
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+}
@@ -0,0 +1,323 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2015 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.groupby;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.ValueMetaInterface;
+
+/**
+ * Approximate median or percentile with a KLL quantile sketch (Karnin, Lang, Liberty).<br>
+ * <br>
+ * The sketch is a stack of compactors. Values go into the first compactor, every value in compactor h stands for 2^h
+ * values of the input. When a compactor is full it is sorted and one value of every pair (randomly the odd or the even
+ * ones) moves up a level. The capacity of the compactors shrinks by a factor 2/3 going down from the top, so the memory
+ * is bounded by about 3k values while the rank error stays within a fraction of 1/k of the number of values.
+ *
+ * @since 5.4
+ */
+public class QuantileSketch extends Accumulator {
+
+  public static final int MIN_K = 16;
+
+  public static final int MAX_K = 8192;
+
+  private static final int MIN_CAPACITY = 2;
+
+  private static final double CAPACITY_FACTOR = 2.0 / 3.0;
+
+  private final int k;
+
+  /**
+   * The quantile to calculate, between 0 and 1
+   */
+  private final double quantile;
+
+  private double[][] levels;
+  private int[] sizes;
+  private int nrLevels;
+
+  /**
+   * The number of values the compactors can hold before one is compacted
+   */
+  private int maxSize;
+  private int size;
+
+  private long count;
+
+  /**
+   * The state of the random generator (xorshift) that picks the odd or even values to keep
+   */
+  private long random;
+
+  /**
+   * @param k
+   *          the capacity of the top compactor, determines the accuracy
+   * @param quantile
+   *          the quantile to calculate, 0.5 for the median
+   */
+  public QuantileSketch( int k, double quantile ) {
+    this.k = Math.max( MIN_K, Math.min( MAX_K, k ) );
+    this.quantile = Math.max( 0.0, Math.min( 1.0, quantile ) );
+    reset();
+  }
+
+  /**
+   * Calculates the k that keeps the normalized rank error within the given fraction.
+   *
+   * @param rankError
+   *          the rank error, for example 0.01 for 1%
+   */
+  public static int getK( double rankError ) {
+    if ( rankError <= 0.0 ) {
+      return MAX_K;
+    }
+    double k = Math.ceil( Math.pow( 2.296 / rankError, 1.0 / 0.9723 ) );
+    return (int) Math.max( MIN_K, Math.min( MAX_K, k ) );
+  }
+
+  public int getK() {
+    return k;
+  }
+
+  @Override
+  public void add( ValueMetaInterface valueMeta, Object value ) throws KettleValueException {
+    if ( valueMeta.isNull( value ) ) {
+      return;
+    }
+    update( valueMeta.getNumber( value ).doubleValue() );
+  }
+
+  /**
+   * Adds a value to the sketch.
+   */
+  public void update( double value ) {
+    append( 0, value );
+    count++;
+    if ( size >= maxSize ) {
+      compress();
+    }
+  }
+
+  private void append( int level, double value ) {
+    double[] items = levels[level];
+    if ( sizes[level] == items.length ) {
+      items = Arrays.copyOf( items, Math.max( 8, items.length * 2 ) );
+      levels[level] = items;
+    }
+    items[sizes[level]++] = value;
+    size++;
+  }
+
+  private int capacity( int level ) {
+    int depth = nrLevels - 1 - level;
+    return Math.max( MIN_CAPACITY, (int) Math.ceil( k * Math.pow( CAPACITY_FACTOR, depth ) ) );
+  }
+
+  private void addLevel() {
+    if ( nrLevels == levels.length ) {
+      levels = Arrays.copyOf( levels, nrLevels * 2 );
+      sizes = Arrays.copyOf( sizes, nrLevels * 2 );
+    }
+    levels[nrLevels] = new double[0];
+    sizes[nrLevels] = 0;
+    nrLevels++;
+
+    maxSize = 0;
+    for ( int h = 0; h < nrLevels; h++ ) {
+      maxSize += capacity( h );
+    }
+  }
+
+  /**
+   * Compacts the lowest full compactors until the sketch is within its capacity again.
+   */
+  private void compress() {
+    while ( size >= maxSize ) {
+      for ( int h = 0; h < nrLevels && size >= maxSize; h++ ) {
+        if ( sizes[h] >= capacity( h ) ) {
+          if ( h + 1 >= nrLevels ) {
+            addLevel();
+          }
+          compact( h );
+        }
+      }
+    }
+  }
+
+  private void compact( int level ) {
+    double[] items = levels[level];
+    int n = sizes[level];
+    Arrays.sort( items, 0, n );
+
+    // With an odd number of values the smallest one stays behind
+    //
+    int start = n & 1;
+    int offset = nextRandomBit();
+    for ( int i = start + offset; i < n; i += 2 ) {
+      append( level + 1, items[i] );
+    }
+    size -= n - start;
+    sizes[level] = start;
+
+    // The capacity of a compactor shrinks as levels are added on top of it
+    //
+    int capacity = capacity( level );
+    if ( items.length > 2 * capacity ) {
+      levels[level] = Arrays.copyOf( items, Math.max( 8, capacity ) );
+    }
+  }
+
+  private int nextRandomBit() {
+    random ^= random << 13;
+    random ^= random >>> 7;
+    random ^= random << 17;
+    return (int) ( random >>> 63 );
+  }
+
+  /**
+   * @return the value at the quantile of the values added so far, NaN if there are none
+   */
+  public double getQuantile() {
+    if ( size == 0 ) {
+      return Double.NaN;
+    }
+
+    // Sort every compactor, then walk through them in order of value
+    //
+    double[][] sorted = new double[nrLevels][];
+    int[] positions = new int[nrLevels];
+    long totalWeight = 0;
+    for ( int h = 0; h < nrLevels; h++ ) {
+      sorted[h] = Arrays.copyOf( levels[h], sizes[h] );
+      Arrays.sort( sorted[h] );
+      totalWeight += (long) sizes[h] << h;
+    }
+
+    double rank = quantile * totalWeight;
+    long cumulative = 0;
+    double value = Double.NaN;
+    while ( true ) {
+      int next = -1;
+      for ( int h = 0; h < nrLevels; h++ ) {
+        if ( positions[h] < sorted[h].length
+          && ( next < 0 || sorted[h][positions[h]] < sorted[next][positions[next]] ) ) {
+          next = h;
+        }
+      }
+      if ( next < 0 ) {
+        return value;
+      }
+      value = sorted[next][positions[next]++];
+      cumulative += 1L << next;
+      if ( cumulative >= rank ) {
+        return value;
+      }
+    }
+  }
+
+  /**
+   * @return the number of values added to the sketch
+   */
+  public long getCount() {
+    return count;
+  }
+
+  @Override
+  public Object getValue() {
+    return count == 0 ? null : Double.valueOf( getQuantile() );
+  }
+
+  @Override
+  public void reset() {
+    levels = new double[4][];
+    sizes = new int[4];
+    nrLevels = 0;
+    size = 0;
+    count = 0;
+    random = 0x9E3779B97F4A7C15L;
+    addLevel();
+  }
+
+  @Override
+  public Accumulator newInstance() {
+    return new QuantileSketch( k, quantile );
+  }
+
+  @Override
+  public void merge( Accumulator other ) {
+    QuantileSketch sketch = (QuantileSketch) other;
+    while ( nrLevels < sketch.nrLevels ) {
+      addLevel();
+    }
+    for ( int h = 0; h < sketch.nrLevels; h++ ) {
+      for ( int i = 0; i < sketch.sizes[h]; i++ ) {
+        append( h, sketch.levels[h][i] );
+      }
+    }
+    count += sketch.count;
+    compress();
+  }
+
+  @Override
+  public long estimateSize() {
+    long bytes = super.estimateSize();
+    for ( int h = 0; h < nrLevels; h++ ) {
+      bytes += 16 + levels[h].length * 8L;
+    }
+    return bytes;
+  }
+
+  @Override
+  public void writeState( DataOutputStream output ) throws IOException {
+    output.writeLong( count );
+    output.writeInt( nrLevels );
+    for ( int h = 0; h < nrLevels; h++ ) {
+      output.writeInt( sizes[h] );
+      for ( int i = 0; i < sizes[h]; i++ ) {
+        output.writeDouble( levels[h][i] );
+      }
+    }
+  }
+
+  @Override
+  public void readState( DataInputStream input ) throws IOException {
+    reset();
+    long values = input.readLong();
+    int nr = input.readInt();
+    while ( nrLevels < nr ) {
+      addLevel();
+    }
+    for ( int h = 0; h < nr; h++ ) {
+      int n = input.readInt();
+      for ( int i = 0; i < n; i++ ) {
+        append( h, input.readDouble() );
+      }
+    }
+    count = values;
+  }
+}
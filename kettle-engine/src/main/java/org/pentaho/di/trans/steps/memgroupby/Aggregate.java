@@ -24,10 +24,13 @@ package org.pentaho.di.trans.steps.memgroupby;
 
 import java.util.Set;
 
+import org.pentaho.di.trans.steps.groupby.Accumulator;
+
 public class Aggregate {
   public Object[] agg;
   public long[] counts;
   public Set<Object>[] distinctObjs;
   public double[] mean;
+  public Accumulator[] accumulators;
 
 }
@@ -0,0 +1,776 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2015 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.memgroupby;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.commons.vfs2.FileObject;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.exception.KettleFileException;
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.logging.LogChannelInterface;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.variables.VariableSpace;
+import org.pentaho.di.core.vfs.KettleVFS;
+import org.pentaho.di.trans.steps.groupby.Accumulator;
+import org.pentaho.di.trans.steps.memgroupby.MemoryGroupByData.HashEntry;
+import org.xerial.snappy.SnappyInputStream;
+import org.xerial.snappy.SnappyOutputStream;
+
+/**
+ * Spills the hash table of the Memory Group By step to disk when it outgrows its memory budget (hybrid hash
+ * aggregation).<br>
+ * <br>
+ * The groups are divided over a number of partitions on the hash code of the group key. Every partition is appended
+ * to its own Snappy compressed temporary file. Group keys are written with the value metadata, the aggregate states in
+ * a compact binary form per aggregate type: counts, sums and means as primitives, lists and sets as a length followed
+ * by the elements. Primitive accumulators write their own state. After a spill the step continues with an empty hash
+ * table.<br>
+ * <br>
+ * At the end the partitions are aggregated one at a time: the partial aggregates of a group are combined in the order
+ * in which they were spilled, so first and last values remain correct. When a partition doesn't fit in the budget
+ * either, it is partitioned again on the next bits of the hash code and the sub-partitions are aggregated in turn.
+ *
+ * @since 5.4
+ */
+public class AggregateSpiller {
+
+  public static final int PARTITION_BITS = 4;
+
+  public static final int NR_PARTITIONS = 1 << PARTITION_BITS;
+
+  /**
+   * The partitioning level after which all the bits of the hash code are used.
+   */
+  private static final int MAX_LEVEL = 32 / PARTITION_BITS - 1;
+
+  /**
+   * The approximate heap size of a group in the hash table: map entry, hash entry, aggregate and its arrays.
+   */
+  static final int ENTRY_OVERHEAD = 160;
+
+  /**
+   * The approximate heap size of an aggregate value in a group: array slots, boxed value.
+   */
+  static final int AGGREGATE_OVERHEAD = 48;
+
+  /**
+   * The approximate heap size of a value in a median or percentile list.
+   */
+  static final int LIST_ENTRY_SIZE = 24;
+
+  /**
+   * The approximate heap size of an entry in a distinct values set, without the value itself.
+   */
+  static final int SET_ENTRY_SIZE = 40;
+
+  private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+
+  private final MemoryGroupByData data;
+  private final int[] aggregateType;
+  private final String[] separator;
+  private final boolean minNullIsValued;
+  private final long memoryLimit;
+
+  private final String filePrefix;
+  private final String directory;
+  private final VariableSpace space;
+  private final LogChannelInterface log;
+
+  /**
+   * The group metadata with normal storage: the group keys in the hash table are converted already.
+   */
+  private final RowMetaInterface keyMeta;
+
+  /**
+   * The subject metadata with normal storage, for the distinct values.
+   */
+  private final ValueMetaInterface[] distinctMeta;
+
+  /**
+   * The partitions that are being written: while the input rows are read or while a partition that didn't fit is
+   * divided. Null if nothing is written.
+   */
+  private Partition[] partitions;
+
+  /**
+   * The partitions that still need to be aggregated, in order.
+   */
+  private final LinkedList<Partition> pending;
+
+  private int nrSpills;
+
+  /**
+   * @param data
+   *          the step data with the group and aggregate metadata
+   * @param aggregateType
+   *          the type of every aggregate
+   * @param separator
+   *          the (variable substituted) separator of every aggregate, for the concatenations
+   * @param minNullIsValued
+   *          true if null is a valid minimum
+   * @param memoryLimit
+   *          the memory budget in bytes, applies to the aggregation of spilled partitions
+   */
+  public AggregateSpiller( MemoryGroupByData data, int[] aggregateType, String[] separator,
+    boolean minNullIsValued, long memoryLimit, String filePrefix, String directory, VariableSpace space,
+    LogChannelInterface log ) {
+    this.data = data;
+    this.aggregateType = aggregateType;
+    this.separator = separator;
+    this.minNullIsValued = minNullIsValued;
+    this.memoryLimit = memoryLimit;
+    this.filePrefix = filePrefix;
+    this.directory = directory;
+    this.space = space;
+    this.log = log;
+
+    keyMeta = new RowMeta();
+    for ( int i = 0; i < data.groupMeta.size(); i++ ) {
+      ValueMetaInterface valueMeta = data.groupMeta.getValueMeta( i ).clone();
+      valueMeta.setStorageType( ValueMetaInterface.STORAGE_TYPE_NORMAL );
+      keyMeta.addValueMeta( valueMeta );
+    }
+
+    distinctMeta = new ValueMetaInterface[aggregateType.length];
+    for ( int i = 0; i < aggregateType.length; i++ ) {
+      if ( aggregateType[i] == MemoryGroupByMeta.TYPE_GROUP_COUNT_DISTINCT ) {
+        distinctMeta[i] = data.inputRowMeta.getValueMeta( data.subjectnrs[i] ).clone();
+        distinctMeta[i].setStorageType( ValueMetaInterface.STORAGE_TYPE_NORMAL );
+      }
+    }
+
+    pending = new LinkedList<Partition>();
+  }
+
+  /**
+   * Estimates the heap size of a new group in the hash table.
+   *
+   * @param groupData
+   *          the group key
+   * @param aggregate
+   *          the aggregate of the group
+   * @return the approximate number of bytes used
+   */
+  public long estimateEntrySize( Object[] groupData, Aggregate aggregate ) {
+    long size = ENTRY_OVERHEAD + (long) aggregateType.length * AGGREGATE_OVERHEAD;
+    for ( int i = 0; i < groupData.length; i++ ) {
+      size += estimateValueSize( groupData[i] );
+    }
+    return size + estimateStateSize( aggregate );
+  }
+
+  /**
+   * Estimates the heap size of the lists, sets, strings and sketches that grow with the number of rows in a group.
+   */
+  @SuppressWarnings( "unchecked" )
+  long estimateStateSize( Aggregate aggregate ) {
+    long size = 0;
+    if ( aggregate.accumulators != null ) {
+      for ( int i = 0; i < aggregate.accumulators.length; i++ ) {
+        if ( aggregate.accumulators[i] != null ) {
+          size += aggregate.accumulators[i].estimateSize();
+        }
+      }
+    }
+    for ( int i = 0; i < aggregateType.length; i++ ) {
+      switch ( aggregateType[i] ) {
+        case MemoryGroupByMeta.TYPE_GROUP_MEDIAN:
+        case MemoryGroupByMeta.TYPE_GROUP_PERCENTILE:
+          size += (long) ( (List<Double>) aggregate.agg[i] ).size() * LIST_ENTRY_SIZE;
+          break;
+        case MemoryGroupByMeta.TYPE_GROUP_COUNT_DISTINCT:
+          if ( aggregate.distinctObjs != null && aggregate.distinctObjs[i] != null ) {
+            for ( Object value : aggregate.distinctObjs[i] ) {
+              size += SET_ENTRY_SIZE + estimateValueSize( value );
+            }
+          }
+          break;
+        case MemoryGroupByMeta.TYPE_GROUP_CONCAT_COMMA:
+        case MemoryGroupByMeta.TYPE_GROUP_CONCAT_STRING:
+          size += 2L * ( (StringBuilder) aggregate.agg[i] ).length();
+          break;
+        default:
+          break;
+      }
+    }
+    return size;
+  }
+
+  /**
+   * Estimates the heap size of a single (normal storage) value.
+   */
+  static long estimateValueSize( Object value ) {
+    if ( value instanceof String ) {
+      return 40 + 2L * ( (String) value ).length();
+    }
+    if ( value instanceof byte[] ) {
+      return 16 + ( (byte[]) value ).length;
+    }
+    if ( value == null ) {
+      return 0;
+    }
+    return 24;
+  }
+
+  /**
+   * Writes all the groups in the hash table to the partitions on disk and clears the hash table.
+   *
+   * @param map
+   *          the hash table to spill
+   * @throws KettleException
+   *           in case a temporary file can't be written
+   */
+  public void spill( Map<HashEntry, Aggregate> map ) throws KettleException {
+    if ( partitions == null ) {
+      partitions = new Partition[NR_PARTITIONS];
+    }
+    write( map, partitions, 0 );
+    map.clear();
+    nrSpills++;
+  }
+
+  /**
+   * @return true if groups were spilled to disk since the last clear.
+   */
+  public boolean hasSpilled() {
+    return nrSpills > 0;
+  }
+
+  /**
+   * @return the number of times the hash table was spilled to disk since the last clear.
+   */
+  public int getNrSpills() {
+    return nrSpills;
+  }
+
+  /**
+   * Aggregates the next partition that was spilled to disk. Call this after the last spill until it returns null.
+   *
+   * @return the groups of the next partition or null if all partitions were aggregated.
+   * @throws KettleException
+   *           in case a temporary file can't be read or written
+   */
+  public Map<HashEntry, Aggregate> nextPartition() throws KettleException {
+    if ( partitions != null ) {
+      schedule( partitions );
+      partitions = null;
+    }
+
+    while ( !pending.isEmpty() ) {
+      Partition partition = pending.removeFirst();
+      Map<HashEntry, Aggregate> map = new HashMap<HashEntry, Aggregate>( 5000 );
+      long memoryUsage = 0;
+
+      DataInputStream input = openInput( partition );
+      try {
+        for ( long i = 0; i < partition.nrGroups; i++ ) {
+          memoryUsage += readGroup( input, map );
+
+          if ( memoryUsage > memoryLimit && partition.level < MAX_LEVEL ) {
+            // This partition doesn't fit either: divide it over the next bits of the hash code
+            //
+            if ( partitions == null ) {
+              partitions = new Partition[NR_PARTITIONS];
+            }
+            write( map, partitions, partition.level + 1 );
+            map.clear();
+            memoryUsage = 0;
+          }
+        }
+      } finally {
+        close( input );
+        deleteQuietly( partition.file );
+      }
+
+      if ( partitions == null ) {
+        return map;
+      }
+      write( map, partitions, partition.level + 1 );
+      map.clear();
+      schedule( partitions );
+      partitions = null;
+    }
+
+    return null;
+  }
+
+  /**
+   * Closes and deletes all temporary files.
+   */
+  public void clear() {
+    if ( partitions != null ) {
+      for ( Partition partition : partitions ) {
+        if ( partition != null ) {
+          close( partition.output );
+          deleteQuietly( partition.file );
+        }
+      }
+      partitions = null;
+    }
+    for ( Partition partition : pending ) {
+      deleteQuietly( partition.file );
+    }
+    pending.clear();
+    nrSpills = 0;
+  }
+
+  /**
+   * Calculates the partition of a group on a level. Every level uses different bits of the (spread) hash code, so the
+   * groups of a partition are divided over all partitions of the next level.
+   */
+  static int getPartitionNr( int hashCode, int level ) {
+    int h = hashCode;
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    h *= 0xc2b2ae35;
+    h ^= h >>> 16;
+    return ( h >>> ( level * PARTITION_BITS ) ) & ( NR_PARTITIONS - 1 );
+  }
+
+  private void write( Map<HashEntry, Aggregate> map, Partition[] target, int level ) throws KettleException {
+    try {
+      for ( Map.Entry<HashEntry, Aggregate> entry : map.entrySet() ) {
+        int nr = getPartitionNr( entry.getKey().hashCode(), level );
+        Partition partition = target[nr];
+        if ( partition == null ) {
+          partition = new Partition( level );
+          partition.file = KettleVFS.createTempFile( filePrefix, ".tmp", directory, space );
+          target[nr] = partition;
+          partition.output =
+            new DataOutputStream( new SnappyOutputStream( new BufferedOutputStream( KettleVFS.getOutputStream(
+              partition.file, false ), STREAM_BUFFER_SIZE ) ) );
+        }
+        keyMeta.writeData( partition.output, entry.getKey().getGroupData() );
+        writeAggregate( partition.output, entry.getValue() );
+        partition.nrGroups++;
+      }
+    } catch ( IOException e ) {
+      throw new KettleException( "Error writing groups to a temporary file", e );
+    }
+  }
+
+  /**
+   * Closes the partitions that were written and queues them up (in front of the other pending ones).
+   */
+  private void schedule( Partition[] target ) throws KettleException {
+    for ( int i = target.length - 1; i >= 0; i-- ) {
+      Partition partition = target[i];
+      if ( partition != null ) {
+        try {
+          partition.output.close();
+        } catch ( IOException e ) {
+          throw new KettleException( "Error closing temporary file " + partition.file, e );
+        } finally {
+          partition.output = null;
+        }
+        pending.addFirst( partition );
+      }
+    }
+  }
+
+  private DataInputStream openInput( Partition partition ) throws KettleException {
+    InputStream fileInput = null;
+    try {
+      fileInput = KettleVFS.getInputStream( partition.file );
+      return new DataInputStream( new SnappyInputStream(
+        new BufferedInputStream( fileInput, STREAM_BUFFER_SIZE ) ) );
+    } catch ( IOException e ) {
+      close( fileInput );
+      throw new KettleException( "Error opening temporary file " + partition.file, e );
+    }
+  }
+
+  /**
+   * Reads a group from a partition and adds it to the hash table.
+   *
+   * @return the approximate number of bytes the hash table grew
+   */
+  private long readGroup( DataInputStream input, Map<HashEntry, Aggregate> map ) throws KettleException {
+    try {
+      Object[] groupData = keyMeta.readData( input );
+      Aggregate aggregate = readAggregate( input );
+
+      HashEntry entry = data.getHashEntry( groupData );
+      Aggregate existing = map.get( entry );
+      if ( existing == null ) {
+        map.put( entry, aggregate );
+        return estimateEntrySize( groupData, aggregate );
+      }
+      combine( existing, aggregate );
+      return estimateStateSize( aggregate );
+    } catch ( KettleFileException e ) {
+      throw new KettleException( "Error reading groups from a temporary file", e );
+    } catch ( IOException e ) {
+      throw new KettleException( "Error reading groups from a temporary file", e );
+    } catch ( RuntimeException e ) {
+      // A group key compare that failed
+      //
+      throw new KettleException( "Error reading groups from a temporary file", e.getCause() != null
+        ? e.getCause() : e );
+    }
+  }
+
+  /**
+   * Writes the state of an aggregate in binary form.
+   */
+  @SuppressWarnings( "unchecked" )
+  void writeAggregate( DataOutputStream output, Aggregate aggregate ) throws KettleFileException, IOException {
+    for ( int i = 0; i < aggregateType.length; i++ ) {
+      if ( aggregate.accumulators != null && aggregate.accumulators[i] != null ) {
+        aggregate.accumulators[i].writeState( output );
+        continue;
+      }
+      Object value = aggregate.agg[i];
+      switch ( aggregateType[i] ) {
+        case MemoryGroupByMeta.TYPE_GROUP_SUM:
+          writeNumber( output, value );
+          break;
+        case MemoryGroupByMeta.TYPE_GROUP_AVERAGE:
+          writeNumber( output, value );
+          output.writeLong( aggregate.counts[i] );
+          break;
+        case MemoryGroupByMeta.TYPE_GROUP_MEDIAN:
+        case MemoryGroupByMeta.TYPE_GROUP_PERCENTILE:
+          List<Double> values = (List<Double>) value;
+          output.writeInt( values.size() );
+          for ( int v = 0; v < values.size(); v++ ) {
+            output.writeDouble( values.get( v ) );
+          }
+          break;
+        case MemoryGroupByMeta.TYPE_GROUP_STANDARD_DEVIATION:
+          writeNumber( output, value );
+          output.writeLong( aggregate.counts[i] );
+          output.writeDouble( aggregate.mean == null ? 0.0 : aggregate.mean[i] );
+          break;
+        case MemoryGroupByMeta.TYPE_GROUP_COUNT_DISTINCT:
+          Set<Object> distinct = aggregate.distinctObjs == null ? null : aggregate.distinctObjs[i];
+          output.writeInt( distinct == null ? 0 : distinct.size() );
+          if ( distinct != null ) {
+            for ( Object object : distinct ) {
+              distinctMeta[i].writeData( output, object );
+            }
+          }
+          break;
+        case MemoryGroupByMeta.TYPE_GROUP_COUNT_ALL:
+        case MemoryGroupByMeta.TYPE_GROUP_COUNT_ANY:
+          output.writeLong( aggregate.counts[i] );
+          break;
+        case MemoryGroupByMeta.TYPE_GROUP_FIRST_INCL_NULL:
+          output.writeLong( aggregate.counts[i] );
+          data.aggMeta.getValueMeta( i ).writeData( output, value );
+          break;
+        case MemoryGroupByMeta.TYPE_GROUP_MIN:
+        case MemoryGroupByMeta.TYPE_GROUP_MAX:
+        case MemoryGroupByMeta.TYPE_GROUP_FIRST:
+        case MemoryGroupByMeta.TYPE_GROUP_LAST:
+        case MemoryGroupByMeta.TYPE_GROUP_LAST_INCL_NULL:
+          data.aggMeta.getValueMeta( i ).writeData( output, value );
+          break;
+        case MemoryGroupByMeta.TYPE_GROUP_CONCAT_COMMA:
+        case MemoryGroupByMeta.TYPE_GROUP_CONCAT_STRING:
+          byte[] bytes = value.toString().getBytes( "UTF-8" );
+          output.writeInt( bytes.length );
+          output.write( bytes );
+          break;
+        default:
+          break;
+      }
+    }
+  }
+
+  /**
+   * Reads the state of an aggregate written by {@link #writeAggregate(DataOutputStream, Aggregate)}.
+   */
+  @SuppressWarnings( "unchecked" )
+  Aggregate readAggregate( DataInputStream input ) throws KettleFileException, IOException {
+    Aggregate aggregate = new Aggregate();
+    aggregate.agg = new Object[aggregateType.length];
+    aggregate.counts = new long[aggregateType.length];
+    aggregate.mean = new double[aggregateType.length];
+    if ( data.accumulators != null ) {
+      aggregate.accumulators = new Accumulator[aggregateType.length];
+    }
+
+    for ( int i = 0; i < aggregateType.length; i++ ) {
+      if ( data.accumulators != null && data.accumulators[i] != null ) {
+        aggregate.accumulators[i] = data.accumulators[i].newInstance();
+        aggregate.accumulators[i].readState( input );
+        continue;
+      }
+      switch ( aggregateType[i] ) {
+        case MemoryGroupByMeta.TYPE_GROUP_SUM:
+          aggregate.agg[i] = readNumber( input );
+          break;
+        case MemoryGroupByMeta.TYPE_GROUP_AVERAGE:
+          aggregate.agg[i] = readNumber( input );
+          aggregate.counts[i] = input.readLong();
+          break;
+        case MemoryGroupByMeta.TYPE_GROUP_MEDIAN:
+        case MemoryGroupByMeta.TYPE_GROUP_PERCENTILE:
+          int nrValues = input.readInt();
+          List<Double> values = new ArrayList<Double>( nrValues );
+          for ( int v = 0; v < nrValues; v++ ) {
+            values.add( input.readDouble() );
+          }
+          aggregate.agg[i] = values;
+          break;
+        case MemoryGroupByMeta.TYPE_GROUP_STANDARD_DEVIATION:
+          aggregate.agg[i] = readNumber( input );
+          aggregate.counts[i] = input.readLong();
+          aggregate.mean[i] = input.readDouble();
+          break;
+        case MemoryGroupByMeta.TYPE_GROUP_COUNT_DISTINCT:
+          int nrDistinct = input.readInt();
+          if ( nrDistinct > 0 ) {
+            if ( aggregate.distinctObjs == null ) {
+              aggregate.distinctObjs = new Set[aggregateType.length];
+            }
+            aggregate.distinctObjs[i] = new TreeSet<Object>();
+            for ( int v = 0; v < nrDistinct; v++ ) {
+              aggregate.distinctObjs[i].add( distinctMeta[i].readData( input ) );
+            }
+            aggregate.agg[i] = Long.valueOf( nrDistinct );
+          }
+          break;
+        case MemoryGroupByMeta.TYPE_GROUP_COUNT_ALL:
+        case MemoryGroupByMeta.TYPE_GROUP_COUNT_ANY:
+          aggregate.counts[i] = input.readLong();
+          break;
+        case MemoryGroupByMeta.TYPE_GROUP_FIRST_INCL_NULL:
+          aggregate.counts[i] = input.readLong();
+          aggregate.agg[i] = data.aggMeta.getValueMeta( i ).readData( input );
+          break;
+        case MemoryGroupByMeta.TYPE_GROUP_MIN:
+        case MemoryGroupByMeta.TYPE_GROUP_MAX:
+        case MemoryGroupByMeta.TYPE_GROUP_FIRST:
+        case MemoryGroupByMeta.TYPE_GROUP_LAST:
+        case MemoryGroupByMeta.TYPE_GROUP_LAST_INCL_NULL:
+          aggregate.agg[i] = data.aggMeta.getValueMeta( i ).readData( input );
+          break;
+        case MemoryGroupByMeta.TYPE_GROUP_CONCAT_COMMA:
+        case MemoryGroupByMeta.TYPE_GROUP_CONCAT_STRING:
+          byte[] bytes = new byte[input.readInt()];
+          input.readFully( bytes );
+          aggregate.agg[i] = new StringBuilder( new String( bytes, "UTF-8" ) );
+          break;
+        default:
+          break;
+      }
+    }
+    return aggregate;
+  }
+
+  /**
+   * Adds the partial aggregate of a group that was spilled later on to the partial aggregate spilled before.
+   *
+   * @param aggregate
+   *          the partial aggregate to update
+   * @param later
+   *          the partial aggregate to add
+   */
+  @SuppressWarnings( "unchecked" )
+  void combine( Aggregate aggregate, Aggregate later ) throws KettleValueException {
+    for ( int i = 0; i < aggregateType.length; i++ ) {
+      if ( aggregate.accumulators != null && aggregate.accumulators[i] != null ) {
+        aggregate.accumulators[i].merge( later.accumulators[i] );
+        continue;
+      }
+      Object value = aggregate.agg[i];
+      Object other = later.agg[i];
+      ValueMetaInterface valueMeta = data.aggMeta.getValueMeta( i );
+
+      switch ( aggregateType[i] ) {
+        case MemoryGroupByMeta.TYPE_GROUP_SUM:
+          aggregate.agg[i] = addNumbers( value, other );
+          break;
+        case MemoryGroupByMeta.TYPE_GROUP_AVERAGE:
+          aggregate.agg[i] = addNumbers( value, other );
+          aggregate.counts[i] += later.counts[i];
+          break;
+        case MemoryGroupByMeta.TYPE_GROUP_MEDIAN:
+        case MemoryGroupByMeta.TYPE_GROUP_PERCENTILE:
+          ( (List<Double>) value ).addAll( (List<Double>) other );
+          break;
+        case MemoryGroupByMeta.TYPE_GROUP_STANDARD_DEVIATION:
+          // Combine the running mean and sum of squared differences of both parts
+          //
+          long n1 = aggregate.counts[i];
+          long n2 = later.counts[i];
+          if ( n2 == 0 ) {
+            break;
+          }
+          if ( n1 == 0 ) {
+            aggregate.counts[i] = n2;
+            aggregate.mean[i] = later.mean[i];
+            aggregate.agg[i] = other;
+            break;
+          }
+          double n = n1 + n2;
+          double delta = later.mean[i] - aggregate.mean[i];
+          double m1 = value == null ? 0.0 : ( (Number) value ).doubleValue();
+          double m2 = other == null ? 0.0 : ( (Number) other ).doubleValue();
+          aggregate.counts[i] = n1 + n2;
+          aggregate.mean[i] = aggregate.mean[i] + delta * n2 / n;
+          aggregate.agg[i] = Double.valueOf( m1 + m2 + delta * delta * n1 * n2 / n );
+          break;
+        case MemoryGroupByMeta.TYPE_GROUP_COUNT_DISTINCT:
+          if ( later.distinctObjs != null && later.distinctObjs[i] != null ) {
+            if ( aggregate.distinctObjs == null ) {
+              aggregate.distinctObjs = new Set[aggregateType.length];
+            }
+            if ( aggregate.distinctObjs[i] == null ) {
+              aggregate.distinctObjs[i] = new TreeSet<Object>();
+            }
+            aggregate.distinctObjs[i].addAll( later.distinctObjs[i] );
+            aggregate.agg[i] = Long.valueOf( aggregate.distinctObjs[i].size() );
+          }
+          break;
+        case MemoryGroupByMeta.TYPE_GROUP_COUNT_ALL:
+        case MemoryGroupByMeta.TYPE_GROUP_COUNT_ANY:
+          aggregate.counts[i] += later.counts[i];
+          break;
+        case MemoryGroupByMeta.TYPE_GROUP_MIN:
+          if ( other == null && !minNullIsValued ) {
+            // PDI-11530 do not compare null
+            break;
+          }
+          if ( ( value == null && !minNullIsValued ) || valueMeta.compare( other, value ) < 0 ) {
+            aggregate.agg[i] = other;
+          }
+          break;
+        case MemoryGroupByMeta.TYPE_GROUP_MAX:
+          if ( valueMeta.compare( other, value ) > 0 ) {
+            aggregate.agg[i] = other;
+          }
+          break;
+        case MemoryGroupByMeta.TYPE_GROUP_FIRST:
+          if ( value == null && !valueMeta.isNull( other ) ) {
+            aggregate.agg[i] = other;
+          }
+          break;
+        case MemoryGroupByMeta.TYPE_GROUP_LAST:
+          if ( !valueMeta.isNull( other ) ) {
+            aggregate.agg[i] = other;
+          }
+          break;
+        case MemoryGroupByMeta.TYPE_GROUP_FIRST_INCL_NULL:
+          if ( aggregate.counts[i] == 0 ) {
+            aggregate.agg[i] = other;
+            aggregate.counts[i] = later.counts[i];
+          }
+          break;
+        case MemoryGroupByMeta.TYPE_GROUP_LAST_INCL_NULL:
+          aggregate.agg[i] = other;
+          break;
+        case MemoryGroupByMeta.TYPE_GROUP_CONCAT_COMMA:
+        case MemoryGroupByMeta.TYPE_GROUP_CONCAT_STRING:
+          StringBuilder sb = (StringBuilder) value;
+          StringBuilder otherSb = (StringBuilder) other;
+          if ( otherSb.length() > 0 ) {
+            if ( sb.length() > 0 ) {
+              sb.append( aggregateType[i] == MemoryGroupByMeta.TYPE_GROUP_CONCAT_COMMA ? ", " : separator[i] );
+            }
+            sb.append( otherSb );
+          }
+          break;
+        default:
+          break;
+      }
+    }
+  }
+
+  private static Object addNumbers( Object value, Object other ) {
+    if ( value == null ) {
+      return other;
+    }
+    if ( other == null ) {
+      return value;
+    }
+    return Double.valueOf( ( (Number) value ).doubleValue() + ( (Number) other ).doubleValue() );
+  }
+
+  private static void writeNumber( DataOutputStream output, Object value ) throws IOException {
+    output.writeBoolean( value == null );
+    if ( value != null ) {
+      output.writeDouble( ( (Number) value ).doubleValue() );
+    }
+  }
+
+  private static Double readNumber( DataInputStream input ) throws IOException {
+    if ( input.readBoolean() ) {
+      return null;
+    }
+    return Double.valueOf( input.readDouble() );
+  }
+
+  private void close( Closeable closeable ) {
+    if ( closeable != null ) {
+      try {
+        closeable.close();
+      } catch ( IOException e ) {
+        log.logError( "Unable to close temporary file", e );
+      }
+    }
+  }
+
+  private void deleteQuietly( FileObject file ) {
+    try {
+      if ( file != null && file.exists() ) {
+        file.delete();
+      }
+    } catch ( IOException e ) {
+      log.logError( "Unable to delete temporary file " + file, e );
+    }
+  }
+
+  /**
+   * A partition of the groups on disk.
+   */
+  private static class Partition {
+    private final int level;
+    private FileObject file;
+    private DataOutputStream output;
+    private long nrGroups;
+
+    Partition( int level ) {
+      this.level = level;
+    }
+  }
+}
@@ -25,6 +25,7 @@ package org.pentaho.di.trans.steps.memgroupby;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 
@@ -49,6 +50,9 @@ import org.pentaho.di.trans.step.StepDataInterface;
 import org.pentaho.di.trans.step.StepInterface;
 import org.pentaho.di.trans.step.StepMeta;
 import org.pentaho.di.trans.step.StepMetaInterface;
+import org.pentaho.di.trans.steps.groupby.Accumulator;
+import org.pentaho.di.trans.steps.groupby.HyperLogLog;
+import org.pentaho.di.trans.steps.groupby.QuantileSketch;
 import org.pentaho.di.trans.steps.memgroupby.MemoryGroupByData.HashEntry;
 
 /**
@@ -155,6 +159,17 @@ public class MemoryGroupBy extends BaseStep implements StepInterface {
       data.groupAggMeta = new RowMeta();
       data.groupAggMeta.addRowMeta( data.groupMeta );
       data.groupAggMeta.addRowMeta( data.aggMeta );
+
+      if ( data.memoryLimit > 0 ) {
+        String[] separators = new String[meta.getSubjectField().length];
+        for ( int i = 0; i < separators.length; i++ ) {
+          separators[i] = Const.NVL( environmentSubstitute( meta.getValueField()[i] ), "" );
+        }
+        data.spiller =
+          new AggregateSpiller( data, meta.getAggregateType(), separators, minNullIsValued, data.memoryLimit,
+            environmentSubstitute( Const.NVL( meta.getPrefix(), "grp" ) ), environmentSubstitute( Const.NVL( meta
+              .getDirectory(), "%%java.io.tmpdir%%" ) ), this, log );
+      }
     }
 
     // Here is where we start to do the real work...
@@ -174,6 +189,16 @@ public class MemoryGroupBy extends BaseStep implements StepInterface {
 
     addToAggregate( r );
 
+    if ( data.spiller != null && data.memoryUsage > data.memoryLimit ) {
+      // The hash table doesn't fit in the memory budget: move it to disk and start over with an empty one
+      //
+      data.spiller.spill( data.map );
+      data.memoryUsage = 0;
+      if ( log.isDetailed() ) {
+        logDetailed( BaseMessages.getString( PKG, "MemoryGroupBy.Log.SpilledToDisk", data.spiller.getNrSpills() ) );
+      }
+    }
+
     if ( checkFeedback( getLinesRead() ) ) {
       if ( log.isBasic() ) {
         logBasic( BaseMessages.getString( PKG, "MemoryGroupBy.LineNumber" ) + getLinesRead() );
@@ -184,27 +209,31 @@ public class MemoryGroupBy extends BaseStep implements StepInterface {
   }
 
   private void handleLastOfGroup() throws KettleException {
-    // Dump the content of the map...
-    //
-    for ( HashEntry entry : data.map.keySet() ) {
-      Aggregate aggregate = data.map.get( entry );
-      Object[] aggregateResult = getAggregateResult( aggregate );
+    boolean hasGroups = !data.map.isEmpty();
 
-      Object[] outputRowData = RowDataUtil.allocateRowData( data.outputRowMeta.size() );
-      int index = 0;
-      for ( int i = 0; i < data.groupMeta.size(); i++ ) {
-        outputRowData[index++] = entry.getGroupData()[i];
-      }
-      for ( int i = 0; i < data.aggMeta.size(); i++ ) {
-        outputRowData[index++] = aggregateResult[i];
+    if ( data.spiller != null && data.spiller.hasSpilled() ) {
+      // Whatever is left in memory goes to disk as well, then aggregate the partitions one at a time
+      //
+      data.spiller.spill( data.map );
+      data.memoryUsage = 0;
+      hasGroups = true;
+
+      Map<HashEntry, Aggregate> partition = data.spiller.nextPartition();
+      while ( partition != null ) {
+        putGroups( partition );
+        partition = data.spiller.nextPartition();
       }
-      putRow( data.outputRowMeta, outputRowData );
+      data.spiller.clear();
+    } else {
+      // Dump the content of the map...
+      //
+      putGroups( data.map );
     }
 
     // What if we always need to give back one row?
     // This means we give back 0 for count all, count distinct, null for everything else
     //
-    if ( data.map.isEmpty() && meta.isAlwaysGivingBackOneRow() ) {
+    if ( !hasGroups && meta.isAlwaysGivingBackOneRow() ) {
       Object[] outputRowData = RowDataUtil.allocateRowData( data.outputRowMeta.size() );
       int index = 0;
       for ( int i = 0; i < data.groupMeta.size(); i++ ) {
@@ -213,7 +242,8 @@ public class MemoryGroupBy extends BaseStep implements StepInterface {
       for ( int i = 0; i < data.aggMeta.size(); i++ ) {
         if ( meta.getAggregateType()[i] == MemoryGroupByMeta.TYPE_GROUP_COUNT_ALL
           || meta.getAggregateType()[i] == MemoryGroupByMeta.TYPE_GROUP_COUNT_ANY
-          || meta.getAggregateType()[i] == MemoryGroupByMeta.TYPE_GROUP_COUNT_DISTINCT ) {
+          || meta.getAggregateType()[i] == MemoryGroupByMeta.TYPE_GROUP_COUNT_DISTINCT
+          || meta.getAggregateType()[i] == MemoryGroupByMeta.TYPE_GROUP_COUNT_DISTINCT_APPROX ) {
           outputRowData[index++] = Long.valueOf( 0L );
         } else {
           outputRowData[index++] = null;
@@ -223,6 +253,23 @@ public class MemoryGroupBy extends BaseStep implements StepInterface {
     }
   }
 
+  private void putGroups( Map<HashEntry, Aggregate> map ) throws KettleException {
+    for ( HashEntry entry : map.keySet() ) {
+      Aggregate aggregate = map.get( entry );
+      Object[] aggregateResult = getAggregateResult( aggregate );
+
+      Object[] outputRowData = RowDataUtil.allocateRowData( data.outputRowMeta.size() );
+      int index = 0;
+      for ( int i = 0; i < data.groupMeta.size(); i++ ) {
+        outputRowData[index++] = entry.getGroupData()[i];
+      }
+      for ( int i = 0; i < data.aggMeta.size(); i++ ) {
+        outputRowData[index++] = aggregateResult[i];
+      }
+      putRow( data.outputRowMeta, outputRowData );
+    }
+  }
+
   /**
    * Used for junits in MemoryGroupByAggregationNullsTest
    * @param r
@@ -249,11 +296,27 @@ public class MemoryGroupBy extends BaseStep implements StepInterface {
       // Store it in the map!
       //
       data.map.put( entry, aggregate );
+
+      if ( data.spiller != null ) {
+        data.memoryUsage += data.spiller.estimateEntrySize( groupData, aggregate );
+      }
     }
 
     for ( int i = 0; i < data.subjectnrs.length; i++ ) {
       Object subj = r[data.subjectnrs[i]];
       ValueMetaInterface subjMeta = data.inputRowMeta.getValueMeta( data.subjectnrs[i] );
+      if ( aggregate.accumulators != null && aggregate.accumulators[i] != null ) {
+        Accumulator accumulator = aggregate.accumulators[i];
+        if ( data.spiller == null ) {
+          accumulator.add( subjMeta, subj );
+        } else {
+          // Sketches grow with the group, up to their bound
+          long size = accumulator.estimateSize();
+          accumulator.add( subjMeta, subj );
+          data.memoryUsage += accumulator.estimateSize() - size;
+        }
+        continue;
+      }
       Object value = aggregate.agg[i];
       ValueMetaInterface valueMeta = data.aggMeta.getValueMeta( i );
 
@@ -271,6 +334,7 @@ public class MemoryGroupBy extends BaseStep implements StepInterface {
         case MemoryGroupByMeta.TYPE_GROUP_PERCENTILE:
           if ( !subjMeta.isNull( subj ) ) {
             ( (List<Double>) aggregate.agg[i] ).add( subjMeta.getNumber( subj ) );
+            data.memoryUsage += AggregateSpiller.LIST_ENTRY_SIZE;
           }
           break;
         case MemoryGroupByMeta.TYPE_GROUP_STANDARD_DEVIATION:
@@ -302,6 +366,7 @@ public class MemoryGroupBy extends BaseStep implements StepInterface {
             Object obj = subjMeta.convertToNormalStorageType( subj );
             if ( !aggregate.distinctObjs[i].contains( obj ) ) {
               aggregate.distinctObjs[i].add( obj );
+              data.memoryUsage += AggregateSpiller.SET_ENTRY_SIZE + AggregateSpiller.estimateValueSize( obj );
               // null is exact 0, or we will not be able to ++.
               value = value == null ? new Long( 0 ) : value;
               aggregate.agg[i] = (Long) value + 1;
@@ -321,7 +386,8 @@ public class MemoryGroupBy extends BaseStep implements StepInterface {
             // PDI-11530 do not compare null
             break;
           }
-          if ( subjMeta.compare( subj, valueMeta, value ) < 0 ) {
+          // A null that came from the first row of the group is not a minimum either
+          if ( ( value == null && !minNullIsValued ) || subjMeta.compare( subj, valueMeta, value ) < 0 ) {
             aggregate.agg[i] = subj;
           }
           break;
@@ -352,10 +418,12 @@ public class MemoryGroupBy extends BaseStep implements StepInterface {
         case MemoryGroupByMeta.TYPE_GROUP_CONCAT_COMMA:
           if ( !( subj == null ) ) {
             StringBuilder sb = (StringBuilder) value;
+            int length = sb.length();
             if ( sb.length() > 0 ) {
               sb.append( ", " );
             }
             sb.append( subjMeta.getString( subj ) );
+            data.memoryUsage += 2L * ( sb.length() - length );
           }
           break;
         case MemoryGroupByMeta.TYPE_GROUP_CONCAT_STRING:
@@ -365,10 +433,12 @@ public class MemoryGroupBy extends BaseStep implements StepInterface {
               separator = environmentSubstitute( meta.getValueField()[i] );
             }
             StringBuilder sb = (StringBuilder) value;
+            int length = sb.length();
             if ( sb.length() > 0 ) {
               sb.append( separator );
             }
             sb.append( subjMeta.getString( subj ) );
+            data.memoryUsage += 2L * ( sb.length() - length );
           }
           break;
         default:
@@ -386,6 +456,7 @@ public class MemoryGroupBy extends BaseStep implements StepInterface {
   void newAggregate( Object[] r, Aggregate aggregate ) throws KettleException {
     if ( aggregate == null ) {
       data.aggMeta = new RowMeta();
+      data.accumulators = new Accumulator[data.subjectnrs.length];
     } else {
       aggregate.counts = new long[data.subjectnrs.length];
 
@@ -396,6 +467,9 @@ public class MemoryGroupBy extends BaseStep implements StepInterface {
       aggregate.distinctObjs = null;
       aggregate.agg = new Object[data.subjectnrs.length];
       aggregate.mean = new double[data.subjectnrs.length]; // sets all doubles to 0.0
+      if ( data.accumulators != null ) {
+        aggregate.accumulators = new Accumulator[data.subjectnrs.length];
+      }
     }
 
     for ( int i = 0; i < data.subjectnrs.length; i++ ) {
@@ -411,11 +485,14 @@ public class MemoryGroupBy extends BaseStep implements StepInterface {
         case MemoryGroupByMeta.TYPE_GROUP_SUM:
         case MemoryGroupByMeta.TYPE_GROUP_AVERAGE:
         case MemoryGroupByMeta.TYPE_GROUP_STANDARD_DEVIATION:
+        case MemoryGroupByMeta.TYPE_GROUP_MEDIAN_APPROX:
+        case MemoryGroupByMeta.TYPE_GROUP_PERCENTILE_APPROX:
           vMeta = new ValueMeta( meta.getAggregateField()[i], ValueMetaInterface.TYPE_NUMBER );
           break;
         case MemoryGroupByMeta.TYPE_GROUP_COUNT_DISTINCT:
         case MemoryGroupByMeta.TYPE_GROUP_COUNT_ANY:
         case MemoryGroupByMeta.TYPE_GROUP_COUNT_ALL:
+        case MemoryGroupByMeta.TYPE_GROUP_COUNT_DISTINCT_APPROX:
           vMeta = new ValueMeta( meta.getAggregateField()[i], ValueMetaInterface.TYPE_INTEGER );
           break;
         case MemoryGroupByMeta.TYPE_GROUP_FIRST:
@@ -442,17 +519,67 @@ public class MemoryGroupBy extends BaseStep implements StepInterface {
 
       if ( meta.getAggregateType()[i] != MemoryGroupByMeta.TYPE_GROUP_COUNT_ALL
         && meta.getAggregateType()[i] != MemoryGroupByMeta.TYPE_GROUP_COUNT_DISTINCT
-        && meta.getAggregateType()[i] != MemoryGroupByMeta.TYPE_GROUP_COUNT_ANY ) {
+        && meta.getAggregateType()[i] != MemoryGroupByMeta.TYPE_GROUP_COUNT_ANY
+        && meta.getAggregateType()[i] != MemoryGroupByMeta.TYPE_GROUP_COUNT_DISTINCT_APPROX ) {
         vMeta.setLength( subjMeta.getLength(), subjMeta.getPrecision() );
       }
       if ( aggregate == null ) {
         data.aggMeta.addValueMeta( vMeta );
+        data.accumulators[i] = createAccumulator( i, subjMeta, vMeta );
       } else {
         aggregate.agg[i] = v;
+        if ( aggregate.accumulators != null && data.accumulators[i] != null ) {
+          aggregate.accumulators[i] = data.accumulators[i].newInstance();
+        }
       }
     }
   }
 
+  /**
+   * Picks the primitive accumulator for an aggregate, if there is one for the type of the subject.
+   *
+   * @return the accumulator to copy for every group or null if the aggregate is calculated in
+   *         {@link #addToAggregate(Object[])}
+   */
+  private Accumulator createAccumulator( int i, ValueMetaInterface subjMeta, ValueMetaInterface aggMeta ) {
+    switch ( meta.getAggregateType()[i] ) {
+      case MemoryGroupByMeta.TYPE_GROUP_SUM:
+        return Accumulator.createSum( subjMeta, aggMeta, false );
+      case MemoryGroupByMeta.TYPE_GROUP_AVERAGE:
+        return Accumulator.createSum( subjMeta, aggMeta, true );
+      case MemoryGroupByMeta.TYPE_GROUP_STANDARD_DEVIATION:
+        return Accumulator.createStandardDeviation( subjMeta );
+      case MemoryGroupByMeta.TYPE_GROUP_COUNT_ALL:
+        return subjMeta == null ? null : Accumulator.createCount( false );
+      case MemoryGroupByMeta.TYPE_GROUP_COUNT_ANY:
+        return Accumulator.createCount( true );
+      case MemoryGroupByMeta.TYPE_GROUP_MIN:
+        return Accumulator.createMinMax( subjMeta, false, minNullIsValued );
+      case MemoryGroupByMeta.TYPE_GROUP_MAX:
+        return Accumulator.createMinMax( subjMeta, true, minNullIsValued );
+      case MemoryGroupByMeta.TYPE_GROUP_COUNT_DISTINCT_APPROX:
+        return new HyperLogLog( HyperLogLog.getPrecision( getApproximationError() ) );
+      case MemoryGroupByMeta.TYPE_GROUP_MEDIAN_APPROX:
+        return new QuantileSketch( QuantileSketch.getK( getApproximationError() ), 0.5 );
+      case MemoryGroupByMeta.TYPE_GROUP_PERCENTILE_APPROX:
+        double percentile = Double.parseDouble( meta.getValueField()[i] );
+        return new QuantileSketch( QuantileSketch.getK( getApproximationError() ), percentile / 100 );
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * @return the relative error of the approximate aggregates as a fraction
+   */
+  private double getApproximationError() {
+    String error = Const.NVL( environmentSubstitute( meta.getApproximationError() ), "" );
+    if ( Const.isEmpty( error ) ) {
+      error = MemoryGroupByMeta.DEFAULT_APPROXIMATION_ERROR;
+    }
+    return Const.toDouble( error, 1.0 ) / 100;
+  }
+
   private void initGroupMeta( RowMetaInterface previousRowMeta ) throws KettleValueException {
     data.groupMeta = new RowMeta();
     data.entryMeta = new RowMeta();
@@ -480,7 +607,14 @@ public class MemoryGroupBy extends BaseStep implements StepInterface {
     if ( data.subjectnrs != null ) {
       for ( int i = 0; i < data.subjectnrs.length; i++ ) {
         Object ag = aggregate.agg[i];
-        switch ( meta.getAggregateType()[i] ) {
+        int aggregateType = meta.getAggregateType()[i];
+        if ( aggregate.accumulators != null && aggregate.accumulators[i] != null ) {
+          // The accumulator has the final value of the aggregate ready
+          //
+          ag = aggregate.accumulators[i].getValue();
+          aggregateType = MemoryGroupByMeta.TYPE_GROUP_NONE;
+        }
+        switch ( aggregateType ) {
           case MemoryGroupByMeta.TYPE_GROUP_SUM:
             break;
           case MemoryGroupByMeta.TYPE_GROUP_AVERAGE:
@@ -543,6 +677,10 @@ public class MemoryGroupBy extends BaseStep implements StepInterface {
     if ( super.init( smi, sdi ) ) {
       data.map = new HashMap<HashEntry, Aggregate>( 5000 );
 
+      // The memory budget of the hash table in MB
+      //
+      data.memoryLimit = Const.toInt( environmentSubstitute( meta.getMemoryLimit() ), 0 ) * 1024L * 1024L;
+
       return true;
     }
     return false;
@@ -562,6 +700,7 @@ public class MemoryGroupBy extends BaseStep implements StepInterface {
     // Clear the complete cache...
     //
     data.map.clear();
+    data.memoryUsage = 0;
 
     data.newBatch = true;
   }
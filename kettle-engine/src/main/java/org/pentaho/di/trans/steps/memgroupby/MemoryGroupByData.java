@@ -29,6 +29,7 @@ import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.core.row.ValueMetaInterface;
 import org.pentaho.di.trans.step.BaseStepData;
 import org.pentaho.di.trans.step.StepDataInterface;
+import org.pentaho.di.trans.steps.groupby.Accumulator;
 
 /**
  * @author Matt
@@ -90,6 +91,18 @@ public class MemoryGroupByData extends BaseStepData implements StepDataInterface
 
   public boolean newBatch;
 
+  /** The memory budget of the hash table in bytes, 0 means unlimited */
+  public long memoryLimit;
+
+  /** The approximate memory used by the hash table */
+  public long memoryUsage;
+
+  /** Writes the hash table to disk when it doesn't fit in the memory budget */
+  public AggregateSpiller spiller;
+
+  /** The accumulators that are copied for every group, null for the aggregates calculated in the generic way */
+  public Accumulator[] accumulators;
+
   public MemoryGroupByData() {
     super();
 
@@ -104,5 +117,9 @@ public class MemoryGroupByData extends BaseStepData implements StepDataInterface
    */
   public void clear() {
     map = new HashMap<MemoryGroupByData.HashEntry, Aggregate>();
+    memoryUsage = 0;
+    if ( spiller != null ) {
+      spiller.clear();
+    }
   }
 }
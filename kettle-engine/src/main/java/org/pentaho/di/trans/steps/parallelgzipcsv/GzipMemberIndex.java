@@ -0,0 +1,270 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2015 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.parallelgzipcsv;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * The positions of the independently compressed members of a gzip file, in the compressed file and in the
+ * uncompressed data. A file with more than one member can be split at the start of a member: every part can be
+ * inflated on its own.<br>
+ * <br>
+ * The index is either read from a .gzi file as written by "bgzip -i" or found by walking the block headers of a BGZF
+ * (block gzip) file. In a .gzi file the positions don't need to be those of single members, the data between two
+ * positions only needs to consist of complete members.
+ *
+ * @since 5.4
+ */
+class GzipMemberIndex {
+
+  /**
+   * The extension of an index file, added to the name of the gzip file
+   */
+  static final String INDEX_EXTENSION = ".gzi";
+
+  private static final int GZIP_MAGIC_1 = 0x1f;
+  private static final int GZIP_MAGIC_2 = 0x8b;
+  private static final int FLAG_EXTRA = 4;
+
+  private final long[] compressedOffsets;
+  private final long[] uncompressedOffsets;
+  private final int nrMembers;
+
+  /**
+   * @param compressedOffsets
+   *          the start of every member in the compressed file followed by the size of the file
+   * @param uncompressedOffsets
+   *          the start of every member in the uncompressed data followed by the uncompressed size or -1 if that is
+   *          unknown
+   * @param nrMembers
+   *          the number of members
+   */
+  GzipMemberIndex( long[] compressedOffsets, long[] uncompressedOffsets, int nrMembers ) {
+    this.compressedOffsets = compressedOffsets;
+    this.uncompressedOffsets = uncompressedOffsets;
+    this.nrMembers = nrMembers;
+  }
+
+  /**
+   * Reads an index in the .gzi format: the number of entries followed by a compressed and uncompressed position for
+   * every entry, all as little endian unsigned 64 bit numbers. The first member at position 0 isn't listed.
+   *
+   * @param in
+   *          the index file
+   * @param fileSize
+   *          the size of the compressed file
+   * @return the index
+   * @throws IOException
+   *           in case the index can't be read or doesn't fit the file
+   */
+  static GzipMemberIndex readIndex( InputStream in, long fileSize ) throws IOException {
+    byte[] buffer = new byte[16];
+    readFully( in, buffer, 8 );
+    long nrEntries = getLong( buffer, 0 );
+    if ( nrEntries < 0 || nrEntries >= Integer.MAX_VALUE ) {
+      throw new IOException( "Invalid number of entries in gzip index: " + nrEntries );
+    }
+
+    int nrMembers = (int) nrEntries + 1;
+    long[] compressedOffsets = new long[nrMembers + 1];
+    long[] uncompressedOffsets = new long[nrMembers + 1];
+    for ( int i = 1; i < nrMembers; i++ ) {
+      readFully( in, buffer, 16 );
+      compressedOffsets[i] = getLong( buffer, 0 );
+      uncompressedOffsets[i] = getLong( buffer, 8 );
+      if ( compressedOffsets[i] <= compressedOffsets[i - 1] || compressedOffsets[i] >= fileSize
+        || uncompressedOffsets[i] < uncompressedOffsets[i - 1] ) {
+        throw new IOException( "Entry " + i + " of the gzip index doesn't fit the file" );
+      }
+    }
+    compressedOffsets[nrMembers] = fileSize;
+    uncompressedOffsets[nrMembers] = -1L;
+
+    return new GzipMemberIndex( compressedOffsets, uncompressedOffsets, nrMembers );
+  }
+
+  /**
+   * Walks the blocks of a BGZF file. Every block is a gzip member with a "BC" extra field holding the size of the
+   * block, the uncompressed size is found in the last 4 bytes of the block.
+   *
+   * @param in
+   *          the compressed file, positioned at the start
+   * @param fileSize
+   *          the size of the compressed file
+   * @return the index or null if the file is not a BGZF file
+   * @throws IOException
+   *           in case the file can't be read
+   */
+  static GzipMemberIndex readBgzf( InputStream in, long fileSize ) throws IOException {
+    long[] compressedOffsets = new long[1024];
+    long[] uncompressedOffsets = new long[1024];
+    int nrMembers = 0;
+
+    byte[] header = new byte[12];
+    byte[] trailer = new byte[4];
+    long compressedOffset = 0L;
+    long uncompressedOffset = 0L;
+    while ( compressedOffset < fileSize ) {
+      if ( fileSize - compressedOffset < header.length ) {
+        return null;
+      }
+      readFully( in, header, header.length );
+      if ( ( header[0] & 0xff ) != GZIP_MAGIC_1 || ( header[1] & 0xff ) != GZIP_MAGIC_2
+        || ( header[3] & FLAG_EXTRA ) == 0 ) {
+        return null;
+      }
+      int extraLength = getShort( header, 10 );
+      byte[] extra = new byte[extraLength];
+      readFully( in, extra, extraLength );
+      int blockSize = getBlockSize( extra );
+      if ( blockSize < header.length + extraLength + trailer.length
+        || compressedOffset + blockSize > fileSize ) {
+        return null;
+      }
+      skipFully( in, blockSize - header.length - extraLength - trailer.length );
+      readFully( in, trailer, trailer.length );
+
+      if ( nrMembers + 1 >= compressedOffsets.length ) {
+        compressedOffsets = Arrays.copyOf( compressedOffsets, compressedOffsets.length * 2 );
+        uncompressedOffsets = Arrays.copyOf( uncompressedOffsets, uncompressedOffsets.length * 2 );
+      }
+      compressedOffsets[nrMembers] = compressedOffset;
+      uncompressedOffsets[nrMembers] = uncompressedOffset;
+      nrMembers++;
+
+      compressedOffset += blockSize;
+      uncompressedOffset += getInt( trailer, 0 );
+    }
+    if ( nrMembers == 0 ) {
+      return null;
+    }
+    compressedOffsets[nrMembers] = compressedOffset;
+    uncompressedOffsets[nrMembers] = uncompressedOffset;
+
+    return new GzipMemberIndex( compressedOffsets, uncompressedOffsets, nrMembers );
+  }
+
+  /**
+   * @return the size of the block found in the BC subfield of the extra field or -1 if there is no such subfield
+   */
+  private static int getBlockSize( byte[] extra ) {
+    int i = 0;
+    while ( i + 4 <= extra.length ) {
+      int length = getShort( extra, i + 2 );
+      if ( extra[i] == 'B' && extra[i + 1] == 'C' && length == 2 && i + 6 <= extra.length ) {
+        return getShort( extra, i + 4 ) + 1;
+      }
+      i += 4 + length;
+    }
+    return -1;
+  }
+
+  private static void readFully( InputStream in, byte[] buffer, int length ) throws IOException {
+    int read = 0;
+    while ( read < length ) {
+      int n = in.read( buffer, read, length - read );
+      if ( n < 0 ) {
+        throw new EOFException( "Unexpected end of gzip data" );
+      }
+      read += n;
+    }
+  }
+
+  static void skipFully( InputStream in, long length ) throws IOException {
+    long skipped = 0L;
+    while ( skipped < length ) {
+      long n = in.skip( length - skipped );
+      if ( n <= 0 ) {
+        // Some streams only tell about the end of the data when reading
+        if ( in.read() < 0 ) {
+          throw new EOFException( "Unexpected end of gzip data" );
+        }
+        n = 1;
+      }
+      skipped += n;
+    }
+  }
+
+  private static int getShort( byte[] buffer, int offset ) {
+    return ( buffer[offset] & 0xff ) | ( buffer[offset + 1] & 0xff ) << 8;
+  }
+
+  private static long getInt( byte[] buffer, int offset ) {
+    return ( getShort( buffer, offset ) | (long) getShort( buffer, offset + 2 ) << 16 ) & 0xffffffffL;
+  }
+
+  private static long getLong( byte[] buffer, int offset ) {
+    return getInt( buffer, offset ) | getInt( buffer, offset + 4 ) << 32;
+  }
+
+  /**
+   * @return the number of members
+   */
+  int size() {
+    return nrMembers;
+  }
+
+  /**
+   * @return the position of a member in the compressed file, for index size() that's the size of the file
+   */
+  long getCompressedOffset( int member ) {
+    return compressedOffsets[member];
+  }
+
+  /**
+   * @return the position of a member in the uncompressed data, for index size() that's the uncompressed size or -1
+   *         if that's not known
+   */
+  long getUncompressedOffset( int member ) {
+    return uncompressedOffsets[member];
+  }
+
+  /**
+   * @return the number of uncompressed bytes of a member or -1 if that is not known
+   */
+  long getUncompressedSize( int member ) {
+    if ( uncompressedOffsets[member + 1] < 0 ) {
+      return -1L;
+    }
+    return uncompressedOffsets[member + 1] - uncompressedOffsets[member];
+  }
+
+  /**
+   * @return the number of compressed bytes of a member
+   */
+  long getCompressedSize( int member ) {
+    return compressedOffsets[member + 1] - compressedOffsets[member];
+  }
+
+  /**
+   * @return the first member that starts at or after the given position in the compressed file, size() if there is
+   *         none
+   */
+  int findMember( long compressedPosition ) {
+    int index = Arrays.binarySearch( compressedOffsets, 0, nrMembers, compressedPosition );
+    return index >= 0 ? index : -index - 1;
+  }
+}
@@ -0,0 +1,214 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2015 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.parallelgzipcsv;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Inflates the members of a gzip file on a pool of threads and hands out the uncompressed data in the original order.
+ * The compressed data of the next members is read ahead and every member is inflated on its own, so several members
+ * are inflated at the same time while the data of the current member is consumed.
+ *
+ * @since 5.4
+ */
+class GzipMemberInputStream extends InputStream {
+
+  /**
+   * Members are inflated in memory, larger members need to be read with a regular gzip stream
+   */
+  static final long MAX_MEMBER_SIZE = 16 * 1024 * 1024;
+
+  private final InputStream compressed;
+  private final GzipMemberIndex index;
+  private final ExecutorService executor;
+  private final int readAhead;
+
+  private final LinkedList<Future<byte[]>> members;
+  private int nextMember;
+
+  private byte[] current;
+  private int position;
+
+  /**
+   * @param compressed
+   *          the gzip file, positioned at the start of the first member to read
+   * @param index
+   *          the members of the file
+   * @param firstMember
+   *          the first member to read, all members after it are read as well
+   * @param executor
+   *          the threads to inflate the members with
+   * @param readAhead
+   *          the maximum number of members to inflate ahead
+   */
+  GzipMemberInputStream( InputStream compressed, GzipMemberIndex index, int firstMember, ExecutorService executor,
+    int readAhead ) {
+    this.compressed = compressed;
+    this.index = index;
+    this.executor = executor;
+    this.readAhead = Math.max( 1, readAhead );
+    this.members = new LinkedList<Future<byte[]>>();
+    this.nextMember = firstMember;
+    this.current = new byte[0];
+    this.position = 0;
+  }
+
+  /**
+   * @return true if all the members from the first one can be inflated in memory
+   */
+  static boolean canInflate( GzipMemberIndex index, int firstMember ) {
+    for ( int i = firstMember; i < index.size(); i++ ) {
+      if ( index.getCompressedSize( i ) > MAX_MEMBER_SIZE || index.getUncompressedSize( i ) > MAX_MEMBER_SIZE ) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public int read() throws IOException {
+    if ( !fill() ) {
+      return -1;
+    }
+    return current[position++] & 0xff;
+  }
+
+  @Override
+  public int read( byte[] buffer, int offset, int length ) throws IOException {
+    if ( length == 0 ) {
+      return 0;
+    }
+    if ( !fill() ) {
+      return -1;
+    }
+    int n = Math.min( length, current.length - position );
+    System.arraycopy( current, position, buffer, offset, n );
+    position += n;
+    return n;
+  }
+
+  @Override
+  public long skip( long n ) throws IOException {
+    long skipped = 0L;
+    while ( skipped < n && fill() ) {
+      int step = (int) Math.min( n - skipped, current.length - position );
+      position += step;
+      skipped += step;
+    }
+    return skipped;
+  }
+
+  /**
+   * @return false if all the members were read
+   */
+  private boolean fill() throws IOException {
+    while ( position >= current.length ) {
+      readAhead();
+      if ( members.isEmpty() ) {
+        return false;
+      }
+      try {
+        current = members.removeFirst().get();
+      } catch ( InterruptedException e ) {
+        throw new IOException( "Interrupted while inflating gzip data", e );
+      } catch ( ExecutionException e ) {
+        if ( e.getCause() instanceof IOException ) {
+          throw (IOException) e.getCause();
+        }
+        throw new IOException( "Unable to inflate gzip data", e.getCause() );
+      }
+      position = 0;
+    }
+    return true;
+  }
+
+  /**
+   * Reads the compressed data of the next members and hands them over to the threads to inflate.
+   */
+  private void readAhead() throws IOException {
+    while ( members.size() < readAhead && nextMember < index.size() ) {
+      final int member = nextMember++;
+      final byte[] data = new byte[(int) index.getCompressedSize( member )];
+      int read = 0;
+      while ( read < data.length ) {
+        int n = compressed.read( data, read, data.length - read );
+        if ( n < 0 ) {
+          throw new EOFException( "Unexpected end of gzip data in member " + member );
+        }
+        read += n;
+      }
+      members.add( executor.submit( new Callable<byte[]>() {
+        public byte[] call() throws IOException {
+          return inflate( data, index.getUncompressedSize( member ) );
+        }
+      } ) );
+    }
+  }
+
+  static byte[] inflate( byte[] data, long size ) throws IOException {
+    GZIPInputStream in = new GZIPInputStream( new ByteArrayInputStream( data ), Math.max( 512, data.length ) );
+    try {
+      if ( size >= 0 ) {
+        byte[] result = new byte[(int) size];
+        int read = 0;
+        while ( read < result.length ) {
+          int n = in.read( result, read, result.length - read );
+          if ( n < 0 ) {
+            throw new IOException( "The gzip member holds less data than the index says" );
+          }
+          read += n;
+        }
+        return result;
+      } else {
+        ByteArrayOutputStream result = new ByteArrayOutputStream( data.length * 4 );
+        byte[] buffer = new byte[8192];
+        int n;
+        while ( ( n = in.read( buffer ) ) >= 0 ) {
+          result.write( buffer, 0, n );
+        }
+        return result.toByteArray();
+      }
+    } finally {
+      in.close();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    for ( Future<byte[]> member : members ) {
+      member.cancel( true );
+    }
+    members.clear();
+    compressed.close();
+  }
+}
@@ -23,8 +23,11 @@
 package org.pentaho.di.trans.steps.parallelgzipcsv;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.zip.GZIPInputStream;
 
 import org.apache.commons.vfs2.FileObject;
@@ -163,7 +166,7 @@ public class ParGzipCsvInput extends BaseStep implements StepInterface {
 
   private boolean skipToNextBlock() throws KettleException {
 
-    if ( data.eofReached ) {
+    if ( data.eofReached || data.memberIndex != null ) {
       return true; // next file please!
     }
     // Reset the bytes read in the current block of data
@@ -262,6 +265,10 @@ public class ParGzipCsvInput extends BaseStep implements StepInterface {
     } catch ( Exception ignored ) {
       // Exceptions on stream / file closing should be ignored.
     }
+    if ( data.inflateExecutor != null ) {
+      data.inflateExecutor.shutdownNow();
+      data.inflateExecutor = null;
+    }
     super.dispose( smi, sdi );
   }
 
@@ -286,7 +293,12 @@ public class ParGzipCsvInput extends BaseStep implements StepInterface {
         data.binaryFilename = data.filenames[data.filenr].getBytes();
       }
 
-      data.gzis = new GZIPInputStream( data.fis, data.bufferSize );
+      // Block gzip files and files with an index can be split at the start of a member
+      //
+      data.memberIndex = readMemberIndex( fileObject );
+      if ( data.memberIndex == null ) {
+        data.gzis = new GZIPInputStream( data.fis, data.bufferSize );
+      }
 
       clearBuffer();
       data.fileReadPosition = 0L;
@@ -297,9 +309,15 @@ public class ParGzipCsvInput extends BaseStep implements StepInterface {
       //
       data.filenr++;
 
-      // If we are running in parallel and we need to skip bytes in the first file, let's do so here.
-      //
-      if ( data.parallel ) {
+      if ( data.memberIndex != null ) {
+        if ( !openMembers() ) {
+          // None of the members of this file are for this step copy
+          data.eofReached = true;
+          return false;
+        }
+      } else if ( data.parallel ) {
+        // If we are running in parallel and we need to skip bytes in the first file, let's do so here.
+        //
         // Calculate the first block of data to read from the file
         // If the buffer size is 500, we read 0-499 for the first file,
         // 500-999 for the second, 1000-1499 for the third, etc.
@@ -391,6 +409,102 @@ public class ParGzipCsvInput extends BaseStep implements StepInterface {
     }
   }
 
+  /**
+   * @return the members of the file or null if the file is not a BGZF file and doesn't have an index file
+   */
+  private GzipMemberIndex readMemberIndex( FileObject fileObject ) throws KettleException, IOException {
+    long fileSize = fileObject.getContent().getSize();
+    FileObject indexFile =
+      KettleVFS.getFileObject( data.filenames[data.filenr] + GzipMemberIndex.INDEX_EXTENSION, getTransMeta() );
+
+    GzipMemberIndex index;
+    InputStream in;
+    if ( indexFile.exists() ) {
+      in = KettleVFS.getInputStream( indexFile );
+      try {
+        index = GzipMemberIndex.readIndex( in, fileSize );
+      } finally {
+        in.close();
+      }
+    } else {
+      in = KettleVFS.getInputStream( fileObject );
+      try {
+        index = GzipMemberIndex.readBgzf( in, fileSize );
+      } finally {
+        in.close();
+      }
+    }
+
+    if ( index != null && log.isDetailed() ) {
+      logDetailed( BaseMessages.getString( PKG, "ParGzipCsvInput.Log.MembersFound", data.filenames[data.filenr],
+        Integer.toString( index.size() ) ) );
+    }
+    return index;
+  }
+
+  /**
+   * Positions the file at the first member for this step copy and sets the number of uncompressed bytes to read. In
+   * parallel, every step copy reads the members that start in its share of the compressed file. The row that
+   * continues in the next share is read completely, the next step copy skips it.
+   *
+   * @return false if there is nothing to read for this step copy
+   */
+  private boolean openMembers() throws KettleException, IOException {
+    GzipMemberIndex index = data.memberIndex;
+    int firstMember = 0;
+    int endMember = index.size();
+    if ( data.parallel ) {
+      long fileSize = index.getCompressedOffset( index.size() );
+      firstMember = index.findMember( fileSize * data.stepNumber / data.totalNumberOfSteps );
+      endMember = index.findMember( fileSize * ( data.stepNumber + 1 ) / data.totalNumberOfSteps );
+      if ( firstMember >= endMember ) {
+        return false;
+      }
+    }
+
+    GzipMemberIndex.skipFully( data.fis, index.getCompressedOffset( firstMember ) );
+    if ( GzipMemberInputStream.canInflate( index, firstMember ) ) {
+      if ( data.inflateExecutor == null ) {
+        final String threadName = getStepname() + "." + getCopy() + " inflate";
+        data.inflateExecutor = Executors.newFixedThreadPool( getNrInflateThreads(), new ThreadFactory() {
+          public Thread newThread( Runnable r ) {
+            Thread thread = new Thread( r, threadName );
+            thread.setDaemon( true );
+            return thread;
+          }
+        } );
+      }
+      data.gzis =
+        new GzipMemberInputStream( data.fis, index, firstMember, data.inflateExecutor, 2 * getNrInflateThreads() );
+    } else {
+      data.gzis = new GZIPInputStream( data.fis, data.bufferSize );
+    }
+
+    data.totalBytesRead = 0L;
+    if ( endMember < index.size() ) {
+      data.blockSize = index.getUncompressedOffset( endMember ) - index.getUncompressedOffset( firstMember );
+    } else {
+      data.blockSize = Long.MAX_VALUE;
+    }
+
+    if ( firstMember > 0 ) {
+      // Skip the rest of the row that started in the previous member
+      //
+      readOneRow( false );
+    } else if ( meta.isHeaderPresent() ) {
+      readOneRow( false );
+    }
+    return true;
+  }
+
+  /**
+   * @return the number of threads to inflate with, the available processors are shared by the step copies
+   */
+  private int getNrInflateThreads() {
+    int nrCopies = data.parallel ? data.totalNumberOfSteps : 1;
+    return Math.max( 1, Runtime.getRuntime().availableProcessors() / nrCopies );
+  }
+
   private void clearBuffer() {
     data.startBuffer = 0;
     data.endBuffer = 0;
@@ -518,6 +632,7 @@ public class ParGzipCsvInput extends BaseStep implements StepInterface {
             boolean keepGoing;
             do {
               data.endBuffer++;
+              data.totalBytesRead++;
               if ( checkBufferSize() ) {
                 enclosureFound = false;
                 break;
@@ -529,6 +644,7 @@ public class ParGzipCsvInput extends BaseStep implements StepInterface {
                 // Read another byte...
                 //
                 data.endBuffer++;
+                data.totalBytesRead++;
                 if ( checkBufferSize() ) {
                   enclosureFound = false;
                   break;
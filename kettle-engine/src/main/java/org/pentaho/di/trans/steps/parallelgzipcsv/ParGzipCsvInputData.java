@@ -24,7 +24,7 @@ package org.pentaho.di.trans.steps.parallelgzipcsv;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.zip.GZIPInputStream;
+import java.util.concurrent.ExecutorService;
 
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.row.RowMetaInterface;
@@ -55,7 +55,11 @@ public class ParGzipCsvInputData extends BaseStepData implements StepDataInterfa
   public boolean parallel;
   public int filenameFieldIndex;
   public int rownumFieldIndex;
-  public GZIPInputStream gzis;
+
+  /**
+   * The uncompressed data of the current file
+   */
+  public InputStream gzis;
   public int bufferSize;
   public byte[] delimiter;
   public byte[] enclosure;
@@ -75,6 +79,12 @@ public class ParGzipCsvInputData extends BaseStepData implements StepDataInterfa
   public long fileReadPosition;
   public int blockNr;
 
+  /**
+   * The independently compressed members of the current file or null if the file can't be split that way
+   */
+  GzipMemberIndex memberIndex;
+  ExecutorService inflateExecutor;
+
   public ParGzipCsvInputData() {
     super();
     startBuffer = 0;
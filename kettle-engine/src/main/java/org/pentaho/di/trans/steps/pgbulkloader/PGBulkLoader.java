@@ -30,11 +30,20 @@ package org.pentaho.di.trans.steps.pgbulkloader;
 //
 //
 
+import java.io.DataOutputStream;
+import java.io.UnsupportedEncodingException;
 import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
 
 import org.apache.commons.vfs2.FileObject;
 import org.pentaho.di.core.Const;
+import org.pentaho.di.core.database.Database;
 import org.pentaho.di.core.database.DatabaseMeta;
+import org.pentaho.di.core.exception.KettleDatabaseException;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleFileException;
 import org.pentaho.di.core.row.RowMetaInterface;
@@ -49,6 +58,8 @@ import org.pentaho.di.trans.step.StepDataInterface;
 import org.pentaho.di.trans.step.StepInterface;
 import org.pentaho.di.trans.step.StepMeta;
 import org.pentaho.di.trans.step.StepMetaInterface;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
 
 /**
  * Performs a bulk load to a postgres table.
@@ -99,6 +110,28 @@ public class PGBulkLoader extends BaseStep implements StepInterface {
       contents.append( tableName + ";" );
       contents.append( Const.CR );
     }
+    contents.append( getCopyStatement( false ) );
+    contents.append( ";" ).append( Const.CR );
+
+    return contents.toString();
+  }
+
+  /**
+   * Get the COPY ... FROM STDIN statement for the table and fields specified in the meta object
+   *
+   * @param binary
+   *          true to use the binary format, false to use CSV
+   * @return the COPY statement without a terminating semicolon
+   */
+  public String getCopyStatement( boolean binary ) throws KettleException {
+    DatabaseMeta dm = meta.getDatabaseMeta();
+
+    StringBuffer contents = new StringBuffer( 500 );
+
+    String tableName =
+      dm.getQuotedSchemaTableCombination(
+        environmentSubstitute( meta.getSchemaName() ), environmentSubstitute( meta.getTableName() ) );
+
     contents.append( "COPY " );
     // Table name
 
@@ -128,10 +161,13 @@ public class PGBulkLoader extends BaseStep implements StepInterface {
     contents.append( " FROM STDIN" ); // FIFO file
 
     // The "FORMAT" clause
-    contents.append( " WITH CSV DELIMITER AS '" ).append( environmentSubstitute( meta.getDelimiter() ) )
+    if ( binary ) {
+      contents.append( " WITH BINARY" );
+    } else {
+      contents.append( " WITH CSV DELIMITER AS '" ).append( environmentSubstitute( meta.getDelimiter() ) )
         .append( "' QUOTE AS '" ).append(
-      environmentSubstitute( meta.getEnclosure() ) ).append( "'" );
-    contents.append( ";" ).append( Const.CR );
+          environmentSubstitute( meta.getEnclosure() ) ).append( "'" );
+    }
 
     return contents.toString();
   }
@@ -244,6 +280,139 @@ public class PGBulkLoader extends BaseStep implements StepInterface {
     return true;
   }
 
+  /**
+   * Starts a COPY ... FROM STDIN over a JDBC connection, no psql client is needed. The rows are written to a
+   * {@link PGCopyWriter} which sends them to the database in a separate thread.
+   */
+  private void startJdbcCopy() throws KettleException {
+    DatabaseMeta databaseMeta = meta.getDatabaseMeta();
+    if ( databaseMeta == null ) {
+      throw new KettleException( "No connection specified" );
+    }
+    String overrideName = environmentSubstitute( meta.getDbNameOverride() );
+    if ( !Const.isEmpty( Const.rtrim( overrideName ) ) ) {
+      databaseMeta = (DatabaseMeta) databaseMeta.clone();
+      databaseMeta.setDBName( overrideName );
+    }
+
+    data.db = new Database( this, databaseMeta );
+    data.db.shareVariablesWith( this );
+    data.db.connect( getPartitionID() );
+
+    String schemaName = environmentSubstitute( meta.getSchemaName() );
+    String tableName = environmentSubstitute( meta.getTableName() );
+    if ( environmentSubstitute( meta.getLoadAction() ).equalsIgnoreCase( "truncate" ) ) {
+      // In the same transaction as the COPY, the old rows stay when the load fails
+      data.db.truncateTable( schemaName, tableName );
+    }
+
+    boolean binary = meta.isBinaryCopyFormat();
+    if ( binary ) {
+      data.columnTypes = getColumnTypes( databaseMeta.getQuotedSchemaTableCombination( schemaName, tableName ) );
+    }
+
+    String copyStatement = getCopyStatement( binary );
+    logBasic( BaseMessages.getString( PKG, "PGBulkLoader.Log.StartingJdbcCopy", copyStatement ) );
+
+    int flushSize = Const.toInt( environmentSubstitute( meta.getFlushSize() ), PGBulkLoaderMeta.DEFAULT_FLUSH_SIZE );
+    if ( flushSize <= 0 ) {
+      flushSize = PGBulkLoaderMeta.DEFAULT_FLUSH_SIZE;
+    }
+
+    try {
+      data.pgdb = getPGConnection( data.db.getConnection() );
+      CopyIn copyIn = data.pgdb.getCopyAPI().copyIn( copyStatement );
+      data.copyWriter = new PGCopyWriter( copyIn, flushSize, getStepname() + "." + getCopy() + " COPY" );
+      data.pgOutputStream = data.copyWriter;
+      data.encoding = PGCopyBinaryFormat.ENCODING;
+
+      if ( binary ) {
+        data.binaryOutputStream = new DataOutputStream( data.copyWriter );
+        PGCopyBinaryFormat.writeHeader( data.binaryOutputStream );
+      }
+    } catch ( Exception e ) {
+      throw new KettleException( BaseMessages.getString( PKG, "PGBulkLoader.Exception.UnableToStartJdbcCopy" ), e );
+    }
+  }
+
+  private PGConnection getPGConnection( Connection connection ) throws SQLException, KettleException {
+    if ( connection instanceof PGConnection ) {
+      return (PGConnection) connection;
+    }
+    // Connection pools wrap the driver's connection
+    if ( connection.isWrapperFor( PGConnection.class ) ) {
+      return connection.unwrap( PGConnection.class );
+    }
+    throw new KettleException( BaseMessages.getString(
+      PKG, "PGBulkLoader.Exception.NotAPostgresConnection", connection.getClass().getName() ) );
+  }
+
+  /**
+   * Looks up the types of the target columns, the binary format needs to send every value in the column's type.
+   */
+  private int[] getColumnTypes( String schemaTable ) throws KettleException {
+    DatabaseMeta dm = data.db.getDatabaseMeta();
+    String[] tableFields = meta.getFieldTable();
+
+    StringBuffer sql = new StringBuffer( 200 );
+    sql.append( "SELECT " );
+    for ( int i = 0; i < tableFields.length; i++ ) {
+      if ( i != 0 ) {
+        sql.append( ", " );
+      }
+      sql.append( dm.quoteField( tableFields[i] ) );
+    }
+    sql.append( " FROM " ).append( schemaTable ).append( " WHERE 1=0" );
+
+    Statement statement = null;
+    try {
+      statement = data.db.getConnection().createStatement();
+      ResultSet resultSet = statement.executeQuery( sql.toString() );
+      ResultSetMetaData resultSetMeta = resultSet.getMetaData();
+
+      int[] columnTypes = new int[tableFields.length];
+      for ( int i = 0; i < columnTypes.length; i++ ) {
+        String typeName = resultSetMeta.getColumnTypeName( i + 1 );
+        columnTypes[i] = PGCopyBinaryFormat.getColumnType( typeName );
+        if ( columnTypes[i] < 0 ) {
+          throw new KettleException( BaseMessages.getString(
+            PKG, "PGBulkLoader.Exception.TypeNotSupportedInBinaryFormat", tableFields[i], typeName ) );
+        }
+      }
+      resultSet.close();
+      return columnTypes;
+    } catch ( SQLException e ) {
+      throw new KettleDatabaseException( "Unable to get the column types of table " + schemaTable, e );
+    } finally {
+      if ( statement != null ) {
+        try {
+          statement.close();
+        } catch ( SQLException e ) {
+          // Ignore, we only read metadata
+        }
+      }
+    }
+  }
+
+  /**
+   * Sends the last data, ends the COPY operation and commits.
+   */
+  private void finishJdbcCopy() throws KettleException {
+    try {
+      if ( data.binaryOutputStream != null ) {
+        PGCopyBinaryFormat.writeTrailer( data.binaryOutputStream );
+        data.binaryOutputStream.flush();
+      }
+      long rows = data.copyWriter.finish();
+      data.db.commit();
+      logBasic( BaseMessages.getString( PKG, "PGBulkLoader.Log.JdbcCopyFinished", rows ) );
+    } catch ( KettleException e ) {
+      throw e;
+    } catch ( Exception e ) {
+      throw new KettleException( BaseMessages.getString( PKG, "PGBulkLoader.Exception.JdbcCopyFailed" ), e );
+    }
+  }
+
   public boolean processRow( StepMetaInterface smi, StepDataInterface sdi ) throws KettleException {
     meta = (PGBulkLoaderMeta) smi;
     data = (PGBulkLoaderData) sdi;
@@ -257,7 +426,9 @@ public class PGBulkLoader extends BaseStep implements StepInterface {
 
         // Close the output stream...
         // will be null if no records (empty stream)
-        if ( data != null && data.psqlProcess != null ) {
+        if ( data != null && data.copyWriter != null ) {
+          finishJdbcCopy();
+        } else if ( data != null && data.psqlProcess != null ) {
           data.pgOutputStream.flush();
           data.pgOutputStream.close();
 
@@ -286,19 +457,27 @@ public class PGBulkLoader extends BaseStep implements StepInterface {
           data.keynrs[i] = getInputRowMeta().indexOfValue( meta.getFieldStream()[i] );
         }
 
-        // execute the psql statement...
-        //
-        execute( meta, true );
+        if ( meta.isUsingJdbcCopy() ) {
+          startJdbcCopy();
+        } else {
+          // execute the psql statement...
+          //
+          execute( meta, true );
 
-        String copyCmd = getCopyCommand( getInputRowMeta(), r );
-        logBasic( "Launching command: " + copyCmd );
-        data.pgOutputStream.write( copyCmd.getBytes() );
+          String copyCmd = getCopyCommand( getInputRowMeta(), r );
+          logBasic( "Launching command: " + copyCmd );
+          data.pgOutputStream.write( copyCmd.getBytes() );
+        }
 
         // Write rows of data hereafter...
         //
       }
 
-      writeRowToPostgres( getInputRowMeta(), r );
+      if ( data.binaryOutputStream != null ) {
+        writeRowToPostgresBinary( getInputRowMeta(), r );
+      } else {
+        writeRowToPostgres( getInputRowMeta(), r );
+      }
 
       putRow( getInputRowMeta(), r );
       incrementLinesOutput();
@@ -341,7 +520,7 @@ public class PGBulkLoader extends BaseStep implements StepInterface {
               // We need to escape the quote characters in every string
               String quoteStr = new String( data.quote );
               String escapedString = valueMeta.getString( valueData ).replace( quoteStr, quoteStr + quoteStr );
-              data.pgOutputStream.write( escapedString.getBytes() );
+              data.pgOutputStream.write( getBytes( escapedString ) );
 
               data.pgOutputStream.write( data.quote );
               break;
@@ -430,6 +609,23 @@ public class PGBulkLoader extends BaseStep implements StepInterface {
 
   }
 
+  private byte[] getBytes( String string ) throws UnsupportedEncodingException {
+    return data.encoding == null ? string.getBytes() : string.getBytes( data.encoding );
+  }
+
+  private void writeRowToPostgresBinary( RowMetaInterface rowMeta, Object[] r ) throws KettleException {
+    try {
+      PGCopyBinaryFormat.writeRowStart( data.binaryOutputStream, data.keynrs.length );
+      for ( int i = 0; i < data.keynrs.length; i++ ) {
+        int index = data.keynrs[i];
+        PGCopyBinaryFormat.writeValue( data.binaryOutputStream, meta.getFieldTable()[i], data.columnTypes[i],
+          rowMeta.getValueMeta( index ), r[index] );
+      }
+    } catch ( Exception e ) {
+      throw new KettleException( "Error serializing rows of data to the COPY operation", e );
+    }
+  }
+
   public boolean init( StepMetaInterface smi, StepDataInterface sdi ) {
     meta = (PGBulkLoaderMeta) smi;
     data = (PGBulkLoaderData) sdi;
@@ -468,4 +664,32 @@ public class PGBulkLoader extends BaseStep implements StepInterface {
     return false;
   }
 
+  public void dispose( StepMetaInterface smi, StepDataInterface sdi ) {
+    meta = (PGBulkLoaderMeta) smi;
+    data = (PGBulkLoaderData) sdi;
+
+    // Only still there when the load didn't finish: nothing gets loaded
+    //
+    if ( data.copyWriter != null && !data.copyWriter.isFinished() ) {
+      try {
+        data.copyWriter.cancel();
+      } catch ( SQLException e ) {
+        logError( BaseMessages.getString( PKG, "PGBulkLoader.Exception.UnableToCancelJdbcCopy" ), e );
+      }
+    }
+    if ( data.db != null ) {
+      try {
+        if ( getErrors() > 0 ) {
+          data.db.rollback();
+        }
+      } catch ( KettleDatabaseException e ) {
+        logError( BaseMessages.getString( PKG, "PGBulkLoader.Exception.UnableToCancelJdbcCopy" ), e );
+      } finally {
+        data.db.disconnect();
+        data.db = null;
+      }
+    }
+
+    super.dispose( smi, sdi );
+  }
 }
@@ -22,6 +22,7 @@
 
 package org.pentaho.di.trans.steps.pgbulkloader;
 
+import java.io.DataOutputStream;
 import java.io.OutputStream;
 
 import org.pentaho.di.core.database.Database;
@@ -57,6 +58,14 @@ public class PGBulkLoaderData extends BaseStepData implements StepDataInterface
 
   public PGConnection pgdb;
 
+  public PGCopyWriter copyWriter;
+
+  public DataOutputStream binaryOutputStream;
+
+  public int[] columnTypes;
+
+  public String encoding;
+
   public int[] dateFormatChoices;
 
   public ValueMetaInterface dateMeta;
@@ -103,6 +103,15 @@ public class PGBulkLoaderMeta extends BaseStepMeta implements StepMetaInjectionI
   /** Stop On Error */
   private boolean stopOnError;
 
+  /** Load through the psql client or with COPY over the JDBC connection */
+  private String loadMethod;
+
+  /** The format of the data sent over the JDBC connection: CSV or binary */
+  private String copyFormat;
+
+  /** The number of bytes to buffer before sending them over the JDBC connection */
+  private String flushSize;
+
   /*
    * Do not translate following values!!! They are will end up in the job export.
    */
@@ -116,6 +125,17 @@ public class PGBulkLoaderMeta extends BaseStepMeta implements StepMetaInjectionI
   public static final String DATE_MASK_DATE = "DATE";
   public static final String DATE_MASK_DATETIME = "DATETIME";
 
+  /*
+   * Do not translate following values!!! They are will end up in the job export.
+   */
+  public static final String LOAD_METHOD_PSQL = "PSQL";
+  public static final String LOAD_METHOD_JDBC_COPY = "JDBC_COPY";
+
+  public static final String COPY_FORMAT_CSV = "CSV";
+  public static final String COPY_FORMAT_BINARY = "BINARY";
+
+  public static final int DEFAULT_FLUSH_SIZE = 1024 * 1024;
+
   public static final int NR_DATE_MASK_PASS_THROUGH = 0;
   public static final int NR_DATE_MASK_DATE = 1;
   public static final int NR_DATE_MASK_DATETIME = 2;
@@ -239,6 +259,9 @@ public class PGBulkLoaderMeta extends BaseStepMeta implements StepMetaInjectionI
       PsqlPath = XMLHandler.getTagValue( stepnode, "PsqlPath" );
       dbNameOverride = XMLHandler.getTagValue( stepnode, "dbname_override" );
       stopOnError = "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "stop_on_error" ) );
+      loadMethod = Const.NVL( XMLHandler.getTagValue( stepnode, "load_method" ), LOAD_METHOD_PSQL );
+      copyFormat = Const.NVL( XMLHandler.getTagValue( stepnode, "copy_format" ), COPY_FORMAT_CSV );
+      flushSize = XMLHandler.getTagValue( stepnode, "flush_size" );
 
       int nrvalues = XMLHandler.countNodes( stepnode, "mapping" );
       allocate( nrvalues );
@@ -280,6 +303,9 @@ public class PGBulkLoaderMeta extends BaseStepMeta implements StepMetaInjectionI
     delimiter = ";";
     enclosure = "\"";
     stopOnError = false;
+    loadMethod = LOAD_METHOD_PSQL;
+    copyFormat = COPY_FORMAT_CSV;
+    flushSize = Integer.toString( DEFAULT_FLUSH_SIZE );
     int nrvalues = 0;
     allocate( nrvalues );
   }
@@ -298,6 +324,9 @@ public class PGBulkLoaderMeta extends BaseStepMeta implements StepMetaInjectionI
     retval.append( "    " ).append( XMLHandler.addTagValue( "enclosure", enclosure ) );
     retval.append( "    " ).append( XMLHandler.addTagValue( "delimiter", delimiter ) );
     retval.append( "    " ).append( XMLHandler.addTagValue( "stop_on_error", stopOnError ) );
+    retval.append( "    " ).append( XMLHandler.addTagValue( "load_method", loadMethod ) );
+    retval.append( "    " ).append( XMLHandler.addTagValue( "copy_format", copyFormat ) );
+    retval.append( "    " ).append( XMLHandler.addTagValue( "flush_size", flushSize ) );
 
     for ( int i = 0; i < fieldTable.length; i++ ) {
       retval.append( "      <mapping>" ).append( Const.CR );
@@ -318,6 +347,9 @@ public class PGBulkLoaderMeta extends BaseStepMeta implements StepMetaInjectionI
       loadAction = rep.getStepAttributeString( id_step, "load_action" );
       PsqlPath = rep.getStepAttributeString( id_step, "PsqlPath" );
       stopOnError = rep.getStepAttributeBoolean( id_step, "stop_on_error" );
+      loadMethod = Const.NVL( rep.getStepAttributeString( id_step, "load_method" ), LOAD_METHOD_PSQL );
+      copyFormat = Const.NVL( rep.getStepAttributeString( id_step, "copy_format" ), COPY_FORMAT_CSV );
+      flushSize = rep.getStepAttributeString( id_step, "flush_size" );
 
       dbNameOverride = rep.getStepAttributeString( id_step, "dbname_override" );
       enclosure = rep.getStepAttributeString( id_step, "enclosure" );
@@ -352,6 +384,9 @@ public class PGBulkLoaderMeta extends BaseStepMeta implements StepMetaInjectionI
       rep.saveStepAttribute( id_transformation, id_step, "enclosure", enclosure );
       rep.saveStepAttribute( id_transformation, id_step, "delimiter", delimiter );
       rep.saveStepAttribute( id_transformation, id_step, "stop_on_error", stopOnError );
+      rep.saveStepAttribute( id_transformation, id_step, "load_method", loadMethod );
+      rep.saveStepAttribute( id_transformation, id_step, "copy_format", copyFormat );
+      rep.saveStepAttribute( id_transformation, id_step, "flush_size", flushSize );
 
       for ( int i = 0; i < fieldTable.length; i++ ) {
         rep.saveStepAttribute( id_transformation, id_step, i, "stream_name", fieldTable[i] );
@@ -693,6 +728,50 @@ public class PGBulkLoaderMeta extends BaseStepMeta implements StepMetaInjectionI
     this.stopOnError = value;
   }
 
+  /**
+   * @return the load method: {@link #LOAD_METHOD_PSQL} or {@link #LOAD_METHOD_JDBC_COPY}
+   */
+  public String getLoadMethod() {
+    return loadMethod;
+  }
+
+  public void setLoadMethod( String loadMethod ) {
+    this.loadMethod = loadMethod;
+  }
+
+  /**
+   * @return true if the data is loaded with COPY over the JDBC connection instead of through the psql client
+   */
+  public boolean isUsingJdbcCopy() {
+    return LOAD_METHOD_JDBC_COPY.equalsIgnoreCase( loadMethod );
+  }
+
+  /**
+   * @return the format used with COPY over JDBC: {@link #COPY_FORMAT_CSV} or {@link #COPY_FORMAT_BINARY}
+   */
+  public String getCopyFormat() {
+    return copyFormat;
+  }
+
+  public void setCopyFormat( String copyFormat ) {
+    this.copyFormat = copyFormat;
+  }
+
+  public boolean isBinaryCopyFormat() {
+    return COPY_FORMAT_BINARY.equalsIgnoreCase( copyFormat );
+  }
+
+  /**
+   * @return the number of bytes to buffer before sending them over the JDBC connection, can contain variables
+   */
+  public String getFlushSize() {
+    return flushSize;
+  }
+
+  public void setFlushSize( String flushSize ) {
+    this.flushSize = flushSize;
+  }
+
   public StepMetaInjectionInterface getStepMetaInjectionInterface() {
     return this;
   }
@@ -728,6 +807,12 @@ public class PGBulkLoaderMeta extends BaseStepMeta implements StepMetaInjectionI
           delimiter = (String) entry.getValue();
         } else if ( entry.getKey().equals( "STOPONERROR" ) ) {
           stopOnError = (Boolean) entry.getValue();
+        } else if ( entry.getKey().equals( "LOADMETHOD" ) ) {
+          loadMethod = (String) entry.getValue();
+        } else if ( entry.getKey().equals( "COPYFORMAT" ) ) {
+          copyFormat = (String) entry.getValue();
+        } else if ( entry.getKey().equals( "FLUSHSIZE" ) ) {
+          flushSize = (String) entry.getValue();
         } else {
           throw new RuntimeException( "Unhandled metadata injection of attribute: "
             + attr.toString() + " - " + attr.getDescription() );
@@ -0,0 +1,329 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2015 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.pgbulkloader;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.TimeZone;
+import java.util.UUID;
+
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.ValueMetaInterface;
+
+/**
+ * Writes rows in the binary format of the PostgreSQL COPY command. In this format every value is sent in the internal
+ * representation of the target column type, so the type of each target column needs to be known up front. Timestamps
+ * are sent as 64 bit integers, which is the default for servers since PostgreSQL 8.4 and Greenplum 4.<br>
+ * <br>
+ * Dates and timestamps without time zone are sent in the local time zone of the JVM, just like they are formatted for
+ * the CSV format.
+ *
+ * @since 5.4
+ */
+public class PGCopyBinaryFormat {
+
+  public static final int TYPE_TEXT = 0;
+  public static final int TYPE_INT2 = 1;
+  public static final int TYPE_INT4 = 2;
+  public static final int TYPE_INT8 = 3;
+  public static final int TYPE_FLOAT4 = 4;
+  public static final int TYPE_FLOAT8 = 5;
+  public static final int TYPE_NUMERIC = 6;
+  public static final int TYPE_BOOL = 7;
+  public static final int TYPE_DATE = 8;
+  public static final int TYPE_TIMESTAMP = 9;
+  public static final int TYPE_TIMESTAMPTZ = 10;
+  public static final int TYPE_BYTEA = 11;
+  public static final int TYPE_UUID = 12;
+
+  private static final String[] TEXT_TYPE_NAMES = new String[] {
+    "text", "varchar", "bpchar", "char", "name", "json", "citext", };
+
+  private static final byte[] SIGNATURE = new byte[] { 'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0 };
+
+  /** The JDBC driver always uses UTF-8 as client encoding */
+  public static final String ENCODING = "UTF-8";
+
+  /** 2000-01-01 00:00:00 UTC, the PostgreSQL epoch */
+  private static final long PG_EPOCH_MILLIS = 946684800000L;
+
+  private static final long MILLIS_PER_DAY = 86400000L;
+
+  private static final short NUMERIC_POSITIVE = 0x0000;
+  private static final short NUMERIC_NEGATIVE = 0x4000;
+
+  private PGCopyBinaryFormat() {
+  }
+
+  /**
+   * @param typeName
+   *          the name of the PostgreSQL column type, as given by the JDBC driver
+   * @return the column type or -1 if the type can't be loaded in binary format
+   */
+  public static int getColumnType( String typeName ) {
+    if ( typeName == null ) {
+      return -1;
+    }
+    String name = typeName.toLowerCase();
+    if ( Const.indexOfString( name, TEXT_TYPE_NAMES ) >= 0 ) {
+      return TYPE_TEXT;
+    } else if ( "int2".equals( name ) ) {
+      return TYPE_INT2;
+    } else if ( "int4".equals( name ) ) {
+      return TYPE_INT4;
+    } else if ( "int8".equals( name ) ) {
+      return TYPE_INT8;
+    } else if ( "float4".equals( name ) ) {
+      return TYPE_FLOAT4;
+    } else if ( "float8".equals( name ) ) {
+      return TYPE_FLOAT8;
+    } else if ( "numeric".equals( name ) ) {
+      return TYPE_NUMERIC;
+    } else if ( "bool".equals( name ) ) {
+      return TYPE_BOOL;
+    } else if ( "date".equals( name ) ) {
+      return TYPE_DATE;
+    } else if ( "timestamp".equals( name ) ) {
+      return TYPE_TIMESTAMP;
+    } else if ( "timestamptz".equals( name ) ) {
+      return TYPE_TIMESTAMPTZ;
+    } else if ( "bytea".equals( name ) ) {
+      return TYPE_BYTEA;
+    } else if ( "uuid".equals( name ) ) {
+      return TYPE_UUID;
+    }
+    return -1;
+  }
+
+  public static void writeHeader( DataOutputStream out ) throws IOException {
+    out.write( SIGNATURE );
+    out.writeInt( 0 ); // flags: no OIDs
+    out.writeInt( 0 ); // no header extension
+  }
+
+  public static void writeTrailer( DataOutputStream out ) throws IOException {
+    out.writeShort( -1 );
+  }
+
+  /**
+   * Writes the number of values that follow for the next row.
+   */
+  public static void writeRowStart( DataOutputStream out, int nrValues ) throws IOException {
+    out.writeShort( nrValues );
+  }
+
+  /**
+   * Writes a single value, converted to the column type.
+   *
+   * @param out
+   *          the stream to write to
+   * @param columnName
+   *          the name of the target column, for error messages
+   * @param columnType
+   *          the type of the target column, see {@link #getColumnType(String)}
+   * @param valueMeta
+   *          the metadata of the value
+   * @param valueData
+   *          the value
+   */
+  public static void writeValue( DataOutputStream out, String columnName, int columnType,
+    ValueMetaInterface valueMeta, Object valueData ) throws KettleValueException, IOException {
+    if ( valueMeta.isNull( valueData ) ) {
+      out.writeInt( -1 );
+      return;
+    }
+
+    switch ( columnType ) {
+      case TYPE_INT2:
+        out.writeInt( 2 );
+        out.writeShort( (int) getInteger( columnName, valueMeta, valueData, Short.MIN_VALUE, Short.MAX_VALUE ) );
+        break;
+      case TYPE_INT4:
+        out.writeInt( 4 );
+        out.writeInt( (int) getInteger( columnName, valueMeta, valueData, Integer.MIN_VALUE, Integer.MAX_VALUE ) );
+        break;
+      case TYPE_INT8:
+        out.writeInt( 8 );
+        out.writeLong( valueMeta.getInteger( valueData ).longValue() );
+        break;
+      case TYPE_FLOAT4:
+        out.writeInt( 4 );
+        out.writeFloat( valueMeta.getNumber( valueData ).floatValue() );
+        break;
+      case TYPE_FLOAT8:
+        out.writeInt( 8 );
+        out.writeDouble( valueMeta.getNumber( valueData ).doubleValue() );
+        break;
+      case TYPE_NUMERIC:
+        writeNumeric( out, valueMeta.getBigNumber( valueData ) );
+        break;
+      case TYPE_BOOL:
+        out.writeInt( 1 );
+        out.writeByte( valueMeta.getBoolean( valueData ).booleanValue() ? 1 : 0 );
+        break;
+      case TYPE_DATE:
+        out.writeInt( 4 );
+        out.writeInt( getPostgresDays( valueMeta.getDate( valueData ) ) );
+        break;
+      case TYPE_TIMESTAMP:
+        out.writeInt( 8 );
+        out.writeLong( getPostgresMicros( valueMeta.getDate( valueData ), true ) );
+        break;
+      case TYPE_TIMESTAMPTZ:
+        out.writeInt( 8 );
+        out.writeLong( getPostgresMicros( valueMeta.getDate( valueData ), false ) );
+        break;
+      case TYPE_BYTEA:
+        byte[] binary = valueMeta.getBinary( valueData );
+        out.writeInt( binary.length );
+        out.write( binary );
+        break;
+      case TYPE_UUID:
+        UUID uuid = UUID.fromString( valueMeta.getString( valueData ) );
+        out.writeInt( 16 );
+        out.writeLong( uuid.getMostSignificantBits() );
+        out.writeLong( uuid.getLeastSignificantBits() );
+        break;
+      default:
+        byte[] text = valueMeta.getString( valueData ).getBytes( ENCODING );
+        out.writeInt( text.length );
+        out.write( text );
+        break;
+    }
+  }
+
+  /**
+   * @return the integer value, if it lies within the range of the column type
+   * @throws KettleValueException
+   *           if the value doesn't fit in the column
+   */
+  private static long getInteger( String columnName, ValueMetaInterface valueMeta, Object valueData, long min,
+    long max ) throws KettleValueException {
+    long value = valueMeta.getInteger( valueData ).longValue();
+    if ( value < min || value > max ) {
+      throw new KettleValueException( "Value " + value + " of field [" + valueMeta.getName()
+        + "] is out of range for column [" + columnName + "], it should lie between " + min + " and " + max );
+    }
+    return value;
+  }
+
+  /**
+   * @return the number of days since 2000-01-01 of the date in the local time zone
+   */
+  static int getPostgresDays( Date date ) {
+    long localMillis = toLocalMillis( date.getTime() );
+    return (int) ( floorDiv( localMillis, MILLIS_PER_DAY ) - PG_EPOCH_MILLIS / MILLIS_PER_DAY );
+  }
+
+  /**
+   * @return the number of microseconds since 2000-01-01 00:00:00, in the local time zone or in UTC
+   */
+  static long getPostgresMicros( Date date, boolean localTime ) {
+    long millis = localTime ? toLocalMillis( date.getTime() ) : date.getTime();
+    long micros = ( millis - PG_EPOCH_MILLIS ) * 1000L;
+    if ( date instanceof java.sql.Timestamp ) {
+      // Keep the microseconds, the milliseconds are part of getTime() already
+      micros += ( ( (java.sql.Timestamp) date ).getNanos() / 1000 ) % 1000;
+    }
+    return micros;
+  }
+
+  private static long toLocalMillis( long millis ) {
+    return millis + TimeZone.getDefault().getOffset( millis );
+  }
+
+  private static long floorDiv( long x, long y ) {
+    long result = x / y;
+    if ( ( x % y != 0 ) && ( ( x < 0 ) != ( y < 0 ) ) ) {
+      result--;
+    }
+    return result;
+  }
+
+  /**
+   * Writes a numeric as base 10000 digits: the number of digits, the weight of the first digit, the sign, the display
+   * scale and the digits themselves.
+   */
+  static void writeNumeric( DataOutputStream out, BigDecimal number ) throws IOException {
+    short sign = number.signum() < 0 ? NUMERIC_NEGATIVE : NUMERIC_POSITIVE;
+    int scale = Math.max( 0, number.scale() );
+    String plain = number.abs().toPlainString();
+
+    int point = plain.indexOf( '.' );
+    String integerPart = point < 0 ? plain : plain.substring( 0, point );
+    String fractionPart = point < 0 ? "" : plain.substring( point + 1 );
+
+    // Leading zeros would only add zero digits
+    int start = 0;
+    while ( start < integerPart.length() && integerPart.charAt( start ) == '0' ) {
+      start++;
+    }
+    integerPart = integerPart.substring( start );
+
+    // Align the integer part to the left and the fraction to the right on groups of 4 decimal digits
+    int integerGroups = ( integerPart.length() + 3 ) / 4;
+    int fractionGroups = ( fractionPart.length() + 3 ) / 4;
+    StringBuilder aligned = new StringBuilder( ( integerGroups + fractionGroups ) * 4 );
+    for ( int i = integerPart.length(); i < integerGroups * 4; i++ ) {
+      aligned.append( '0' );
+    }
+    aligned.append( integerPart ).append( fractionPart );
+    for ( int i = fractionPart.length(); i < fractionGroups * 4; i++ ) {
+      aligned.append( '0' );
+    }
+
+    short[] digits = new short[integerGroups + fractionGroups];
+    for ( int i = 0; i < digits.length; i++ ) {
+      digits[i] = Short.parseShort( aligned.substring( i * 4, i * 4 + 4 ) );
+    }
+
+    // Strip the zero digits at both ends, the weight keeps track of the position of the first one
+    int first = 0;
+    int weight = integerGroups - 1;
+    while ( first < digits.length && digits[first] == 0 ) {
+      first++;
+      weight--;
+    }
+    int last = digits.length;
+    while ( last > first && digits[last - 1] == 0 ) {
+      last--;
+    }
+    int nrDigits = last - first;
+    if ( nrDigits == 0 ) {
+      weight = 0;
+      sign = NUMERIC_POSITIVE;
+    }
+
+    out.writeInt( 8 + nrDigits * 2 );
+    out.writeShort( nrDigits );
+    out.writeShort( weight );
+    out.writeShort( sign );
+    out.writeShort( scale );
+    for ( int i = first; i < last; i++ ) {
+      out.writeShort( digits[i] );
+    }
+  }
+}
@@ -0,0 +1,236 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2015 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.pgbulkloader;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.SQLException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.postgresql.copy.CopyIn;
+
+/**
+ * Streams data to a COPY ... FROM STDIN operation over a JDBC connection. Bytes written to this stream are gathered in
+ * a buffer. Once the buffer holds the flush size, it's handed over to a writer thread that sends it to the database
+ * while the step fills the second buffer. This way serializing rows and sending them over the network overlap.<br>
+ * <br>
+ * This stream is meant to be used by a single step thread. Errors of the writer thread are reported at the next buffer
+ * hand-over or when the COPY is finished.
+ *
+ * @since 5.4
+ */
+public class PGCopyWriter extends OutputStream {
+
+  private static final int NR_BUFFERS = 2;
+
+  private static final Buffer END_OF_DATA = new Buffer( 0 );
+
+  private static class Buffer {
+    private final byte[] bytes;
+    private int length;
+
+    private Buffer( int size ) {
+      bytes = new byte[size];
+    }
+  }
+
+  private final CopyIn copyIn;
+
+  private final BlockingQueue<Buffer> emptyBuffers;
+  private final BlockingQueue<Buffer> fullBuffers;
+  private Buffer buffer;
+
+  private final Thread writerThread;
+  private volatile Throwable error;
+  private boolean finished;
+
+  /**
+   * Creates the stream and starts the writer thread.
+   *
+   * @param copyIn
+   *          the COPY operation to send the data to
+   * @param flushSize
+   *          the number of bytes to gather before sending them to the database
+   * @param threadName
+   *          the name of the writer thread
+   */
+  public PGCopyWriter( CopyIn copyIn, int flushSize, String threadName ) {
+    this.copyIn = copyIn;
+
+    emptyBuffers = new ArrayBlockingQueue<Buffer>( NR_BUFFERS );
+    fullBuffers = new ArrayBlockingQueue<Buffer>( NR_BUFFERS + 2 );
+    for ( int i = 0; i < NR_BUFFERS; i++ ) {
+      emptyBuffers.add( new Buffer( Math.max( 1, flushSize ) ) );
+    }
+    buffer = emptyBuffers.poll();
+
+    writerThread = new Thread( new Runnable() {
+      public void run() {
+        writeBuffers();
+      }
+    }, threadName );
+    writerThread.setDaemon( true );
+    writerThread.start();
+  }
+
+  private void writeBuffers() {
+    try {
+      while ( true ) {
+        Buffer full = fullBuffers.take();
+        if ( full == END_OF_DATA ) {
+          return;
+        }
+        // After an error we keep on emptying buffers to not block the step thread
+        if ( error == null ) {
+          try {
+            copyIn.writeToCopy( full.bytes, 0, full.length );
+          } catch ( Throwable e ) {
+            error = e;
+          }
+        }
+        full.length = 0;
+        emptyBuffers.put( full );
+      }
+    } catch ( InterruptedException e ) {
+      if ( error == null ) {
+        error = e;
+      }
+    }
+  }
+
+  @Override
+  public void write( int b ) throws IOException {
+    if ( buffer.length == buffer.bytes.length ) {
+      handOver();
+    }
+    buffer.bytes[buffer.length++] = (byte) b;
+  }
+
+  @Override
+  public void write( byte[] bytes, int offset, int length ) throws IOException {
+    while ( length > 0 ) {
+      if ( buffer.length == buffer.bytes.length ) {
+        handOver();
+      }
+      int size = Math.min( length, buffer.bytes.length - buffer.length );
+      System.arraycopy( bytes, offset, buffer.bytes, buffer.length, size );
+      buffer.length += size;
+      offset += size;
+      length -= size;
+    }
+  }
+
+  /**
+   * Hands the data gathered so far to the writer thread. It doesn't wait until the data is sent.
+   */
+  @Override
+  public void flush() throws IOException {
+    if ( buffer.length > 0 ) {
+      handOver();
+    }
+  }
+
+  /**
+   * Passes the current buffer to the writer thread and waits for an empty one.
+   */
+  private void handOver() throws IOException {
+    checkError();
+    try {
+      fullBuffers.put( buffer );
+      buffer = emptyBuffers.take();
+    } catch ( InterruptedException e ) {
+      throw new IOException( "Interrupted while handing data to the COPY writer thread", e );
+    }
+    checkError();
+  }
+
+  private void checkError() throws IOException {
+    if ( error != null ) {
+      throw new IOException( "Unable to send data to the database", error );
+    }
+  }
+
+  /**
+   * Sends the remaining data, waits for the writer thread and ends the COPY operation.
+   *
+   * @return the number of rows the database loaded
+   * @throws IOException
+   *           in case the data couldn't be sent
+   * @throws SQLException
+   *           in case the database rejected the data
+   */
+  public long finish() throws IOException, SQLException {
+    flush();
+    stopWriterThread();
+    checkError();
+    finished = true;
+    return copyIn.endCopy();
+  }
+
+  /**
+   * Stops the writer thread and cancels the COPY operation if it wasn't finished. Nothing is loaded in that case.
+   */
+  public void cancel() throws SQLException {
+    if ( finished ) {
+      return;
+    }
+    finished = true;
+    try {
+      stopWriterThread();
+    } catch ( IOException e ) {
+      // We're cancelling anyway
+    }
+    if ( copyIn.isActive() ) {
+      copyIn.cancelCopy();
+    }
+  }
+
+  private void stopWriterThread() throws IOException {
+    try {
+      fullBuffers.put( END_OF_DATA );
+      writerThread.join();
+    } catch ( InterruptedException e ) {
+      throw new IOException( "Interrupted while waiting for the COPY writer thread", e );
+    }
+  }
+
+  /**
+   * Finishes the COPY operation, see {@link #finish()}.
+   */
+  @Override
+  public void close() throws IOException {
+    if ( finished ) {
+      return;
+    }
+    try {
+      finish();
+    } catch ( SQLException e ) {
+      throw new IOException( e );
+    }
+  }
+
+  public boolean isFinished() {
+    return finished;
+  }
+}
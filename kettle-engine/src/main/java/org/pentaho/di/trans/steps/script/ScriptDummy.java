@@ -31,6 +31,7 @@ import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleStepException;
 import org.pentaho.di.core.exception.KettleValueException;
 import org.pentaho.di.core.logging.LogChannelInterface;
+import org.pentaho.di.core.row.RowBatch;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.core.variables.VariableSpace;
 import org.pentaho.di.repository.Repository;
@@ -110,6 +111,10 @@ public class ScriptDummy implements StepInterface {
     return null;
   }
 
+  public RowBatch getRowBatch() throws KettleException {
+    return null;
+  }
+
   public List<RowListener> getRowListeners() {
     return null;
   }
@@ -147,6 +152,9 @@ public class ScriptDummy implements StepInterface {
   public void putRow( RowMetaInterface rowMeta, Object[] row ) throws KettleException {
   }
 
+  public void putRowBatch( RowMetaInterface rowMeta, RowBatch batch ) throws KettleException {
+  }
+
   public void removeRowListener( RowListener rowListener ) {
   }
 
@@ -32,6 +32,7 @@ import org.pentaho.di.core.Const;
 import org.pentaho.di.core.exception.KettleConversionException;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.RowBatch;
 import org.pentaho.di.core.row.RowDataUtil;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.core.row.ValueMetaInterface;
@@ -334,10 +335,93 @@ public class SelectValues extends BaseStep implements StepInterface {
     return rowData;
   }
 
+  /**
+   * Selecting and removing fields only moves values around. In that case, once the first row has been processed, we can
+   * calculate where every output field comes from and process batches of rows with a single loop over the fields.
+   *
+   * @return the input field index for every output field or null if the rows can't be processed in batches.
+   */
+  private int[] getBatchFieldnrs( RowMetaInterface rowMeta ) {
+    if ( getRowBatchSize() <= 0 || data.metadata || getStepMeta().isDoingErrorHandling() ) {
+      return null;
+    }
+
+    List<Integer> fieldnrs = new ArrayList<Integer>();
+    if ( data.select ) {
+      for ( int idx : data.fieldnrs ) {
+        if ( idx >= rowMeta.size() || fieldnrs.contains( idx ) ) {
+          return null; // mixed streams or a field copied twice: keep it simple
+        }
+        fieldnrs.add( idx );
+      }
+      for ( int idx : data.extraFieldnrs ) {
+        fieldnrs.add( idx );
+      }
+    } else {
+      for ( int i = 0; i < rowMeta.size(); i++ ) {
+        fieldnrs.add( i );
+      }
+    }
+    if ( data.deselect ) {
+      // removenrs is sorted ascending: remove from the back
+      //
+      for ( int i = data.removenrs.length - 1; i >= 0; i-- ) {
+        fieldnrs.remove( data.removenrs[ i ] );
+      }
+    }
+
+    if ( fieldnrs.size() != data.metadataRowMeta.size() ) {
+      return null;
+    }
+    int[] batchFieldnrs = new int[ fieldnrs.size() ];
+    for ( int i = 0; i < batchFieldnrs.length; i++ ) {
+      batchFieldnrs[ i ] = fieldnrs.get( i );
+    }
+    return batchFieldnrs;
+  }
+
+  /**
+   * Process a batch of rows. Like in the row by row case the values are moved to the output rows as they are, they are
+   * not converted to and from the columns of the batch.
+   */
+  private boolean processRowBatch() throws KettleException {
+    RowBatch batch = getRowBatch();
+    if ( batch == null ) {
+      setOutputDone();
+      return false;
+    }
+
+    if ( data.outputBatch == null ) {
+      data.outputBatch = new RowBatch( data.metadataRowMeta, batch.getCapacity() );
+    }
+    data.outputBatch.clear();
+
+    int[] fieldnrs = data.batchFieldnrs;
+    for ( int i = 0; i < batch.size(); i++ ) {
+      Object[] rowData = batch.getRow( i );
+      Object[] outputData = RowDataUtil.allocateRowData( fieldnrs.length );
+      for ( int f = 0; f < fieldnrs.length; f++ ) {
+        outputData[ f ] = rowData[ fieldnrs[ f ] ];
+      }
+      data.outputBatch.addRow( outputData );
+    }
+    putRowBatch( data.metadataRowMeta, data.outputBatch );
+
+    if ( checkFeedback( getLinesRead(), batch.size() ) ) {
+      logBasic( BaseMessages.getString( PKG, "SelectValues.Log.LineNumber" ) + getLinesRead() );
+    }
+
+    return true;
+  }
+
   public boolean processRow( StepMetaInterface smi, StepDataInterface sdi ) throws KettleException {
     meta = (SelectValuesMeta) smi;
     data = (SelectValuesData) sdi;
 
+    if ( data.batchFieldnrs != null ) {
+      return processRowBatch();
+    }
+
     Object[] rowData = getRow(); // get row from rowset, wait for our turn, indicate busy!
     if ( rowData == null ) { // no more input to be expected...
 
@@ -392,6 +476,12 @@ public class SelectValues extends BaseStep implements StepInterface {
           + data.metadataRowMeta.getString( outputData ) );
       }
 
+      // Now that the field positions are known, see if we can switch to processing batches of rows
+      //
+      if ( getLinesRead() == 1 && !log.isRowLevel() ) {
+        data.batchFieldnrs = getBatchFieldnrs( getInputRowMeta() );
+      }
+
     } catch ( KettleException e ) {
       if ( getStepMeta().isDoingErrorHandling() ) {
         String field;
@@ -22,6 +22,7 @@
 
 package org.pentaho.di.trans.steps.selectvalues;
 
+import org.pentaho.di.core.row.RowBatch;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.trans.step.BaseStepData;
 import org.pentaho.di.trans.step.StepDataInterface;
@@ -46,6 +47,16 @@ public class SelectValuesData extends BaseStepData implements StepDataInterface
 
   public RowMetaInterface outputRowMeta;
 
+  /**
+   * The input field index for every output field when rows are processed in batches, null if we process row by row.
+   */
+  public int[] batchFieldnrs;
+
+  /**
+   * The re-usable batch of output rows when rows are processed in batches
+   */
+  public RowBatch outputBatch;
+
   // The MODE, default = select...
   public boolean select; // "normal" selection of fields.
   public boolean deselect; // de-select mode
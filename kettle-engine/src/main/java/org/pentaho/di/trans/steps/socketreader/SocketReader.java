@@ -39,6 +39,8 @@ import org.pentaho.di.i18n.BaseMessages;
 import org.pentaho.di.trans.Trans;
 import org.pentaho.di.trans.TransMeta;
 import org.pentaho.di.trans.step.BaseStep;
+import org.pentaho.di.trans.step.RowFrameReader;
+import org.pentaho.di.trans.step.RowFrameWriter;
 import org.pentaho.di.trans.step.StepDataInterface;
 import org.pentaho.di.trans.step.StepInterface;
 import org.pentaho.di.trans.step.StepMeta;
@@ -90,7 +92,14 @@ public class SocketReader extends BaseStep implements StepInterface {
             data.socket = new Socket( environmentSubstitute( meta.getHostname() ), port );
             connected = true;
 
-            if ( meta.isCompressed() ) {
+            if ( RowFrameWriter.isEnabled( this ) ) {
+              // The credits for the writer go out on the output channel, the frames are compressed one by one
+              //
+              data.outputStream = new DataOutputStream( data.socket.getOutputStream() );
+              data.inputStream =
+                new DataInputStream( new BufferedInputStream( data.socket.getInputStream(), bufferSize ) );
+              data.frameReader = new RowFrameReader( data.inputStream, data.outputStream );
+            } else if ( meta.isCompressed() ) {
               data.outputStream =
                 new DataOutputStream( new BufferedOutputStream( new GZIPOutputStream( data.socket
                   .getOutputStream() ), bufferSize ) );
@@ -136,10 +145,24 @@ public class SocketReader extends BaseStep implements StepInterface {
           }
         }
 
-        data.rowMeta = new RowMeta( data.inputStream ); // This is the metadata
+        if ( data.frameReader != null ) {
+          data.rowMeta = data.frameReader.readMeta();
+          if ( data.rowMeta == null ) {
+            throw new KettleEOFException(); // nothing was sent
+          }
+        } else {
+          data.rowMeta = new RowMeta( data.inputStream ); // This is the metadata
+        }
         first = false;
       }
-      r = data.rowMeta.readData( data.inputStream );
+      if ( data.frameReader != null ) {
+        r = data.frameReader.readRow();
+        if ( r == null ) {
+          throw new KettleEOFException(); // the writer finished the stream
+        }
+      } else {
+        r = data.rowMeta.readData( data.inputStream );
+      }
 
       incrementLinesInput();
 
@@ -33,6 +33,7 @@ import org.pentaho.di.i18n.BaseMessages;
 import org.pentaho.di.trans.Trans;
 import org.pentaho.di.trans.TransMeta;
 import org.pentaho.di.trans.step.BaseStep;
+import org.pentaho.di.trans.step.RowFrameWriter;
 import org.pentaho.di.trans.step.StepDataInterface;
 import org.pentaho.di.trans.step.StepInterface;
 import org.pentaho.di.trans.step.StepMeta;
@@ -68,7 +69,14 @@ public class SocketWriter extends BaseStep implements StepInterface {
 
         data.clientSocket = data.serverSocket.accept();
 
-        if ( meta.isCompressed() ) {
+        if ( RowFrameWriter.isEnabled( this ) ) {
+          // The reader hands out credits on the input channel, the frames are compressed one by one
+          //
+          data.outputStream =
+            new DataOutputStream( new BufferedOutputStream( data.clientSocket.getOutputStream(), bufferSize ) );
+          data.frameWriter =
+            new RowFrameWriter( data.outputStream, data.clientSocket.getInputStream(), meta.isCompressed() );
+        } else if ( meta.isCompressed() ) {
           data.outputStream =
             new DataOutputStream( new BufferedOutputStream( new GZIPOutputStream( data.clientSocket
               .getOutputStream() ), bufferSize ) );
@@ -105,20 +113,34 @@ public class SocketWriter extends BaseStep implements StepInterface {
 
     if ( r == null ) { // no more input to be expected...
 
+      if ( data.frameWriter != null && !first ) {
+        data.frameWriter.finish();
+      }
       setOutputDone();
       return false;
     }
 
     try {
-      if ( first ) {
-        getInputRowMeta().writeMeta( data.outputStream );
-        first = false;
+      if ( data.frameWriter != null ) {
+        if ( first ) {
+          data.frameWriter.writeMeta( getInputRowMeta() );
+          first = false;
+        }
+        data.frameWriter.writeRow( r );
+      } else {
+        if ( first ) {
+          getInputRowMeta().writeMeta( data.outputStream );
+          first = false;
+        }
+        getInputRowMeta().writeData( data.outputStream, r );
       }
-      getInputRowMeta().writeData( data.outputStream, r );
       incrementLinesOutput();
 
       // flush every X rows
       if ( getLinesOutput() > 0 && data.flushInterval > 0 && ( getLinesOutput() % data.flushInterval ) == 0 ) {
+        if ( data.frameWriter != null ) {
+          data.frameWriter.flush();
+        }
         data.outputStream.flush();
       }
 
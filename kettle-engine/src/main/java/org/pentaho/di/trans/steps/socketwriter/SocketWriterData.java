@@ -27,6 +27,7 @@ import java.net.ServerSocket;
 import java.net.Socket;
 
 import org.pentaho.di.trans.step.BaseStepData;
+import org.pentaho.di.trans.step.RowFrameWriter;
 import org.pentaho.di.trans.step.StepDataInterface;
 
 /**
@@ -39,6 +40,7 @@ public class SocketWriterData extends BaseStepData implements StepDataInterface
   public Socket clientSocket;
   public int flushInterval;
   public ServerSocket serverSocket;
+  public RowFrameWriter frameWriter;
 
   public SocketWriterData() {
     super();
@@ -0,0 +1,152 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2015 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.sort;
+
+import java.util.Comparator;
+
+/**
+ * A tournament tree of losers to merge a number of sorted sources. Every inner node remembers the source that lost the
+ * match played there, the overall winner is kept at the top. Replacing the head of the winning source only replays
+ * the matches on the path from its leaf to the top: log2(k) comparisons instead of the k-1 of a linear scan.
+ *
+ * An exhausted source is represented by a null head and loses every match. When heads compare equal, the source with
+ * the lowest number wins so that merging runs in the order they were created is stable.
+ *
+ * @param <T>
+ *          the type of the heads of the sources
+ */
+public class LoserTree<T> {
+  private final int nrSources;
+  private final Object[] heads;
+  private final int[] tree;
+  private final Comparator<? super T> comparator;
+
+  /**
+   * Create a new loser tree.
+   *
+   * @param nrSources
+   *          the number of sources to merge
+   * @param comparator
+   *          the comparator for the heads of the sources
+   */
+  public LoserTree( int nrSources, Comparator<? super T> comparator ) {
+    this.nrSources = nrSources;
+    this.comparator = comparator;
+    this.heads = new Object[nrSources];
+    this.tree = new int[Math.max( nrSources, 1 )];
+  }
+
+  /**
+   * Set the first value of a source, before calling {@link #init()}.
+   *
+   * @param source
+   *          the number of the source
+   * @param head
+   *          the first value of the source or null if the source is empty
+   */
+  public void setHead( int source, T head ) {
+    heads[source] = head;
+  }
+
+  /**
+   * Play all the matches once all the first values were set.
+   */
+  public void init() {
+    if ( nrSources == 0 ) {
+      tree[0] = -1;
+      return;
+    }
+
+    // The leaves are positions nrSources..2*nrSources-1, the winners of the matches are only needed while building
+    //
+    int[] winners = new int[2 * nrSources];
+    for ( int i = 0; i < nrSources; i++ ) {
+      winners[nrSources + i] = i;
+    }
+    for ( int node = nrSources - 1; node > 0; node-- ) {
+      int left = winners[2 * node];
+      int right = winners[2 * node + 1];
+      if ( beats( left, right ) ) {
+        winners[node] = left;
+        tree[node] = right;
+      } else {
+        winners[node] = right;
+        tree[node] = left;
+      }
+    }
+    tree[0] = nrSources == 1 ? 0 : winners[1];
+  }
+
+  /**
+   * @return the number of the source with the smallest head or -1 if all sources are exhausted
+   */
+  public int getWinner() {
+    int winner = tree[0];
+    if ( winner < 0 || heads[winner] == null ) {
+      return -1;
+    }
+    return winner;
+  }
+
+  /**
+   * @return the smallest head of all sources or null if all sources are exhausted
+   */
+  @SuppressWarnings( "unchecked" )
+  public T getWinnerHead() {
+    int winner = getWinner();
+    return winner < 0 ? null : (T) heads[winner];
+  }
+
+  /**
+   * Replace the head of the winning source with its next value and find the new winner.
+   *
+   * @param head
+   *          the next value of the winning source or null if that source is exhausted
+   */
+  public void replaceWinner( T head ) {
+    int source = tree[0];
+    heads[source] = head;
+    for ( int node = ( source + nrSources ) >> 1; node > 0; node >>= 1 ) {
+      if ( beats( tree[node], source ) ) {
+        int loser = source;
+        source = tree[node];
+        tree[node] = loser;
+      }
+    }
+    tree[0] = source;
+  }
+
+  @SuppressWarnings( "unchecked" )
+  private boolean beats( int one, int two ) {
+    Object head1 = heads[one];
+    Object head2 = heads[two];
+    if ( head1 == null ) {
+      return false;
+    }
+    if ( head2 == null ) {
+      return true;
+    }
+    int cmp = comparator.compare( (T) head1, (T) head2 );
+    return cmp < 0 || ( cmp == 0 && one < two );
+  }
+}
@@ -0,0 +1,946 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2015 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.sort;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.commons.vfs2.FileObject;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.logging.LogChannelInterface;
+import org.pentaho.di.core.row.RowDataUtil;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.variables.VariableSpace;
+import org.pentaho.di.core.vfs.KettleVFS;
+import org.xerial.snappy.SnappyInputStream;
+import org.xerial.snappy.SnappyOutputStream;
+
+/**
+ * Sorts rows within a fixed memory budget.<br>
+ * <br>
+ * Rows are serialized into pages of direct (off-heap) memory: the sort keys first, then the other values. The sort
+ * order is kept in an index of (key prefix, pointer) pairs. The key prefix is an 8 byte normalized version of the
+ * first sort key: comparing 2 prefixes as signed longs gives the same order as comparing the values, or a tie. The
+ * index is radix sorted on the prefix, only rows with the same prefix are compared on the actual key values.<br>
+ * <br>
+ * When the budget is used up, the sorted rows are written to a Snappy compressed run on disk. At the end the runs are
+ * merged with a loser tree, at most "fan-in" runs at a time.<br>
+ * <br>
+ * The memory used for pages and index never exceeds the budget, with the exception of a single row that is larger
+ * than a page.
+ *
+ * @since 5.4
+ */
+public class OffHeapRowSorter {
+
+  public static final int DEFAULT_MERGE_FAN_IN = 64;
+
+  private static final int MIN_PAGE_SIZE = 64 * 1024;
+  private static final int MAX_PAGE_SIZE = 4 * 1024 * 1024;
+
+  /**
+   * The size of an index entry: prefix and pointer, plus the scratch arrays of the radix sort.
+   */
+  private static final int INDEX_ENTRY_SIZE = 32;
+
+  private static final int MIN_INDEX_SIZE = 1024;
+
+  private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+
+  private final RowMetaInterface rowMeta;
+  private final int[] keyNrs;
+  private final int[] restNrs;
+  private final ValueMetaInterface[] keyMetas;
+  private final ValueMetaInterface[] restMetas;
+
+  private final long memoryLimit;
+  private final int pageSize;
+  private final int mergeFanIn;
+
+  private final String filePrefix;
+  private final String directory;
+  private final VariableSpace space;
+  private final LogChannelInterface log;
+
+  /**
+   * True if equal prefixes mean equal keys: a single key of a type that fits in the prefix
+   */
+  private final boolean exactPrefixType;
+
+  /**
+   * Set as soon as a value is found that has the same prefix as null
+   */
+  private boolean prefixCollision;
+
+  private final List<ByteBuffer> pages;
+  private int currentPage;
+  private long pageMemory;
+
+  private long[] prefixes;
+  private long[] pointers;
+  private long[] scratchPrefixes;
+  private long[] scratchPointers;
+  private int size;
+
+  private final RecordOutputStream record;
+  private final DataOutputStream recordOutput;
+  private final RecordInputStream recordInput;
+  private final DataInputStream recordDataInput;
+  private byte[] recordBytes;
+
+  private final List<Run> runs;
+  private final Comparator<RunReader> runComparator;
+
+  private boolean sorted;
+  private int outputIndex;
+  private LoserTree<RunReader> mergeTree;
+  private List<RunReader> readers;
+
+  /**
+   * Create a new sorter.
+   *
+   * @param rowMeta
+   *          the layout of the rows to sort. The key values need to have normal storage.
+   * @param keyNrs
+   *          the indexes of the sort keys in the row
+   * @param memoryLimit
+   *          the maximum number of bytes to use for the rows in memory
+   * @param mergeFanIn
+   *          the maximum number of runs to merge at once
+   * @param filePrefix
+   *          the prefix of the temporary files
+   * @param directory
+   *          the directory for the temporary files
+   * @param space
+   *          the variable space to resolve the directory with
+   * @param log
+   *          the log channel to report on
+   */
+  public OffHeapRowSorter( RowMetaInterface rowMeta, int[] keyNrs, long memoryLimit, int mergeFanIn,
+    String filePrefix, String directory, VariableSpace space, LogChannelInterface log ) {
+    this.rowMeta = rowMeta;
+    this.keyNrs = keyNrs;
+    this.mergeFanIn = Math.max( mergeFanIn, 2 );
+    this.filePrefix = filePrefix;
+    this.directory = directory;
+    this.space = space;
+    this.log = log;
+
+    keyMetas = new ValueMetaInterface[keyNrs.length];
+    for ( int i = 0; i < keyNrs.length; i++ ) {
+      keyMetas[i] = rowMeta.getValueMeta( keyNrs[i] );
+    }
+    boolean[] isKey = new boolean[rowMeta.size()];
+    for ( int keyNr : keyNrs ) {
+      isKey[keyNr] = true;
+    }
+    List<Integer> rest = new ArrayList<Integer>();
+    for ( int i = 0; i < isKey.length; i++ ) {
+      if ( !isKey[i] ) {
+        rest.add( i );
+      }
+    }
+    restNrs = new int[rest.size()];
+    restMetas = new ValueMetaInterface[rest.size()];
+    for ( int i = 0; i < restNrs.length; i++ ) {
+      restNrs[i] = rest.get( i );
+      restMetas[i] = rowMeta.getValueMeta( restNrs[i] );
+    }
+
+    boolean exact = false;
+    if ( keyMetas.length == 1 ) {
+      switch ( keyMetas[0].getType() ) {
+        case ValueMetaInterface.TYPE_INTEGER:
+        case ValueMetaInterface.TYPE_NUMBER:
+        case ValueMetaInterface.TYPE_DATE:
+        case ValueMetaInterface.TYPE_BOOLEAN:
+          exact = true;
+          break;
+        default:
+          break;
+      }
+    }
+    exactPrefixType = exact;
+
+    // A page is a 16th of the budget so that we don't waste too much when spilling
+    //
+    int pages = (int) Math.min( Math.max( memoryLimit / 16, MIN_PAGE_SIZE ), MAX_PAGE_SIZE );
+    this.pageSize = pages;
+    this.memoryLimit = Math.max( memoryLimit, 2L * pageSize + (long) MIN_INDEX_SIZE * INDEX_ENTRY_SIZE );
+
+    this.pages = new ArrayList<ByteBuffer>();
+    this.prefixes = new long[MIN_INDEX_SIZE];
+    this.pointers = new long[MIN_INDEX_SIZE];
+
+    record = new RecordOutputStream();
+    recordOutput = new DataOutputStream( record );
+    recordInput = new RecordInputStream();
+    recordDataInput = new DataInputStream( recordInput );
+    recordBytes = new byte[256];
+
+    runs = new ArrayList<Run>();
+    runComparator = new Comparator<RunReader>() {
+      @Override
+      public int compare( RunReader one, RunReader two ) {
+        if ( one.prefix != two.prefix ) {
+          return one.prefix < two.prefix ? -1 : 1;
+        }
+        if ( isPrefixExact() ) {
+          return 0;
+        }
+        try {
+          return compareKeys( one.keys, two.keys );
+        } catch ( KettleValueException e ) {
+          throw new RuntimeException( e );
+        }
+      }
+    };
+  }
+
+  /**
+   * Add a row to sort. The sort buffer is written to disk if the memory budget is used up.
+   *
+   * @param row
+   *          the row to add
+   * @throws KettleException
+   *           in case of a serialization or I/O error
+   */
+  public void addRow( Object[] row ) throws KettleException {
+    if ( sorted ) {
+      throw new KettleException( "Unable to add rows to a sort buffer that was sorted already" );
+    }
+
+    record.reset();
+    for ( int i = 0; i < keyNrs.length; i++ ) {
+      keyMetas[i].writeData( recordOutput, row[keyNrs[i]] );
+    }
+    for ( int i = 0; i < restNrs.length; i++ ) {
+      restMetas[i].writeData( recordOutput, row[restNrs[i]] );
+    }
+    long prefix = keyNrs.length == 0 ? 0L : getPrefix( keyMetas[0], row[keyNrs[0]] );
+
+    int length = record.size() + 4;
+    if ( size == prefixes.length && !growIndex() ) {
+      spill();
+    }
+    long pointer = allocate( length );
+    if ( pointer < 0 ) {
+      spill();
+      pointer = allocate( length );
+    }
+
+    ByteBuffer page = pages.get( (int) ( pointer >>> 32 ) );
+    page.position( (int) pointer );
+    page.putInt( record.size() );
+    page.put( record.buffer(), 0, record.size() );
+
+    prefixes[size] = prefix;
+    pointers[size] = pointer;
+    size++;
+  }
+
+  /**
+   * @return the number of bytes currently in use for rows and index
+   */
+  public long getMemoryUsage() {
+    return pageMemory + (long) prefixes.length * INDEX_ENTRY_SIZE;
+  }
+
+  /**
+   * @return the number of runs that were written to disk
+   */
+  public int getNrRuns() {
+    return runs.size();
+  }
+
+  private boolean growIndex() {
+    int newLength = prefixes.length * 2;
+    if ( pageMemory + (long) newLength * INDEX_ENTRY_SIZE > memoryLimit ) {
+      return false;
+    }
+    prefixes = Arrays.copyOf( prefixes, newLength );
+    pointers = Arrays.copyOf( pointers, newLength );
+    scratchPrefixes = null;
+    scratchPointers = null;
+    return true;
+  }
+
+  /**
+   * Find room for a record in the pages.
+   *
+   * @return the pointer (page number and offset) or -1 if the memory budget doesn't allow it
+   */
+  private long allocate( int length ) {
+    while ( currentPage < pages.size() ) {
+      ByteBuffer page = pages.get( currentPage );
+      if ( page.remaining() >= length ) {
+        return ( (long) currentPage << 32 ) | page.position();
+      }
+      currentPage++;
+    }
+
+    int capacity = Math.max( pageSize, length );
+    if ( size > 0 && pageMemory + capacity + (long) prefixes.length * INDEX_ENTRY_SIZE > memoryLimit ) {
+      return -1;
+    }
+    ByteBuffer page = ByteBuffer.allocateDirect( capacity );
+    pages.add( page );
+    pageMemory += capacity;
+    currentPage = pages.size() - 1;
+    return (long) currentPage << 32;
+  }
+
+  /**
+   * Sort the rows in memory, write them to a new run and clear the buffer.
+   */
+  private void spill() throws KettleException {
+    if ( size == 0 ) {
+      return;
+    }
+    sortIndex();
+
+    Run run = new Run();
+    run.file = KettleVFS.createTempFile( filePrefix, ".tmp", directory, space );
+    runs.add( run );
+
+    DataOutputStream output = null;
+    try {
+      output = openRunOutput( run );
+      for ( int i = 0; i < size; i++ ) {
+        output.writeLong( prefixes[i] );
+        int length = readRecord( pointers[i] );
+        output.writeInt( length );
+        output.write( recordBytes, 0, length );
+      }
+      run.rows = size;
+    } catch ( IOException e ) {
+      throw new KettleException( "Error writing sorted rows to temporary file " + run.file, e );
+    } finally {
+      closeQuietly( output );
+    }
+
+    if ( log.isDetailed() ) {
+      log.logDetailed( "Wrote run #" + runs.size() + " with " + size + " rows, "
+        + ( getMemoryUsage() / 1024 ) + "kB of memory in use" );
+    }
+    resetBuffer();
+  }
+
+  private DataOutputStream openRunOutput( Run run ) throws KettleException, IOException {
+    return new DataOutputStream( new SnappyOutputStream( new BufferedOutputStream( KettleVFS.getOutputStream(
+      run.file, false ), STREAM_BUFFER_SIZE ) ) );
+  }
+
+  /**
+   * Clear the rows in memory but keep the pages for the next batch of rows.
+   */
+  private void resetBuffer() {
+    // Don't hang on to the oversized pages for single large rows
+    //
+    for ( int i = pages.size() - 1; i >= 0; i-- ) {
+      if ( pages.get( i ).capacity() > pageSize ) {
+        pageMemory -= pages.remove( i ).capacity();
+      }
+    }
+    for ( ByteBuffer page : pages ) {
+      page.clear();
+    }
+    currentPage = 0;
+    size = 0;
+  }
+
+  /**
+   * Copy a record from the pages into recordBytes.
+   *
+   * @return the length of the record
+   */
+  private int readRecord( long pointer ) {
+    ByteBuffer page = pages.get( (int) ( pointer >>> 32 ) ).duplicate();
+    page.position( (int) pointer );
+    int length = page.getInt();
+    if ( recordBytes.length < length ) {
+      recordBytes = new byte[Math.max( length, recordBytes.length * 2 )];
+    }
+    page.get( recordBytes, 0, length );
+    return length;
+  }
+
+  /**
+   * Sort the index: a radix sort on the key prefixes, followed by a comparison sort of the ranges of equal prefixes.
+   */
+  void sortIndex() throws KettleException {
+    if ( scratchPrefixes == null || scratchPrefixes.length < prefixes.length ) {
+      scratchPrefixes = new long[prefixes.length];
+      scratchPointers = new long[prefixes.length];
+    }
+    radixSort();
+
+    if ( isPrefixExact() ) {
+      return;
+    }
+    int start = 0;
+    while ( start < size ) {
+      int end = start + 1;
+      while ( end < size && prefixes[end] == prefixes[start] ) {
+        end++;
+      }
+      if ( end - start > 1 ) {
+        sortRange( start, end );
+      }
+      start = end;
+    }
+  }
+
+  /**
+   * A least significant digit first radix sort on the unsigned prefixes, 8 bits at a time. Passes where all the values
+   * have the same digit are skipped. The sort is stable.
+   */
+  private void radixSort() {
+    long[] srcPrefixes = prefixes;
+    long[] srcPointers = pointers;
+    long[] dstPrefixes = scratchPrefixes;
+    long[] dstPointers = scratchPointers;
+    int[] counts = new int[256];
+
+    for ( int shift = 0; shift < 64; shift += 8 ) {
+      Arrays.fill( counts, 0 );
+      for ( int i = 0; i < size; i++ ) {
+        counts[digit( srcPrefixes[i], shift )]++;
+      }
+      if ( counts[digit( srcPrefixes[0], shift )] == size ) {
+        continue; // all the same
+      }
+      int offset = 0;
+      for ( int d = 0; d < 256; d++ ) {
+        int count = counts[d];
+        counts[d] = offset;
+        offset += count;
+      }
+      for ( int i = 0; i < size; i++ ) {
+        int target = counts[digit( srcPrefixes[i], shift )]++;
+        dstPrefixes[target] = srcPrefixes[i];
+        dstPointers[target] = srcPointers[i];
+      }
+      long[] swap = srcPrefixes;
+      srcPrefixes = dstPrefixes;
+      dstPrefixes = swap;
+      swap = srcPointers;
+      srcPointers = dstPointers;
+      dstPointers = swap;
+    }
+
+    prefixes = srcPrefixes;
+    pointers = srcPointers;
+    scratchPrefixes = dstPrefixes;
+    scratchPointers = dstPointers;
+  }
+
+  private static int digit( long prefix, int shift ) {
+    // Flip the sign bit to sort signed values as unsigned digits
+    //
+    return (int) ( ( ( prefix ^ Long.MIN_VALUE ) >>> shift ) & 0xFF );
+  }
+
+  /**
+   * Sort a range of index entries with the same prefix on the actual key values (stable).
+   */
+  private void sortRange( int start, int end ) throws KettleException {
+    int length = end - start;
+    final Object[][] keys = new Object[length][];
+    Integer[] order = new Integer[length];
+    long[] rangePointers = new long[length];
+    for ( int i = 0; i < length; i++ ) {
+      rangePointers[i] = pointers[start + i];
+      keys[i] = readKeys( rangePointers[i] );
+      order[i] = i;
+    }
+
+    try {
+      Arrays.sort( order, new Comparator<Integer>() {
+        @Override
+        public int compare( Integer one, Integer two ) {
+          try {
+            return compareKeys( keys[one], keys[two] );
+          } catch ( KettleValueException e ) {
+            throw new RuntimeException( e );
+          }
+        }
+      } );
+    } catch ( RuntimeException e ) {
+      throw new KettleException( "Error comparing rows", e.getCause() != null ? e.getCause() : e );
+    }
+
+    for ( int i = 0; i < length; i++ ) {
+      pointers[start + i] = rangePointers[order[i]];
+    }
+  }
+
+  private Object[] readKeys( long pointer ) throws KettleException {
+    int length = readRecord( pointer );
+    recordInput.reset( recordBytes, 0, length );
+    return readKeys( recordDataInput );
+  }
+
+  private Object[] readKeys( DataInputStream input ) throws KettleException {
+    try {
+      Object[] keys = new Object[keyMetas.length];
+      for ( int i = 0; i < keyMetas.length; i++ ) {
+        keys[i] = keyMetas[i].readData( input );
+      }
+      return keys;
+    } catch ( IOException e ) {
+      throw new KettleException( "Error reading sort keys", e );
+    }
+  }
+
+  /**
+   * Build a complete row from the keys and the serialized other values.
+   */
+  private Object[] readRow( Object[] keys, DataInputStream input ) throws KettleException {
+    try {
+      Object[] row = RowDataUtil.allocateRowData( rowMeta.size() );
+      for ( int i = 0; i < keyNrs.length; i++ ) {
+        row[keyNrs[i]] = keys[i];
+      }
+      for ( int i = 0; i < restNrs.length; i++ ) {
+        row[restNrs[i]] = restMetas[i].readData( input );
+      }
+      return row;
+    } catch ( IOException e ) {
+      throw new KettleException( "Error reading sorted row", e );
+    }
+  }
+
+  private int compareKeys( Object[] one, Object[] two ) throws KettleValueException {
+    for ( int i = 0; i < keyMetas.length; i++ ) {
+      int cmp = keyMetas[i].compare( one[i], two[i] );
+      if ( cmp != 0 ) {
+        return cmp;
+      }
+    }
+    return 0;
+  }
+
+  private boolean isPrefixExact() {
+    return exactPrefixType && !prefixCollision;
+  }
+
+  /**
+   * Calculate the normalized prefix of a key value. The prefix never decreases when the value increases, in the sort
+   * order of the value metadata (null first, descending, case insensitive).
+   */
+  long getPrefix( ValueMetaInterface valueMeta, Object value ) throws KettleValueException {
+    long prefix;
+    if ( valueMeta.isNull( value ) ) {
+      prefix = Long.MIN_VALUE;
+    } else {
+      switch ( valueMeta.getType() ) {
+        case ValueMetaInterface.TYPE_INTEGER:
+          prefix = valueMeta.getInteger( value ).longValue();
+          prefixCollision |= prefix == Long.MIN_VALUE;
+          break;
+        case ValueMetaInterface.TYPE_DATE:
+          prefix = valueMeta.getDate( value ).getTime();
+          prefixCollision |= prefix == Long.MIN_VALUE;
+          break;
+        case ValueMetaInterface.TYPE_NUMBER:
+          prefix = getDoublePrefix( valueMeta.getNumber( value ).doubleValue() );
+          break;
+        case ValueMetaInterface.TYPE_BIGNUMBER:
+          prefix = getDoublePrefix( valueMeta.getBigNumber( value ).doubleValue() );
+          break;
+        case ValueMetaInterface.TYPE_BOOLEAN:
+          prefix = valueMeta.getBoolean( value ).booleanValue() ? 1L : 0L;
+          break;
+        case ValueMetaInterface.TYPE_STRING:
+          prefix = getStringPrefix( valueMeta.getString( value ), valueMeta.isCaseInsensitive() );
+          break;
+        default:
+          prefix = 0L;
+          break;
+      }
+
+      // Only the values are inverted: nulls come first in both directions, just like in ValueMetaBase.compare()
+      //
+      if ( valueMeta.isSortedDescending() ) {
+        prefix = ~prefix;
+        prefixCollision |= prefix == Long.MIN_VALUE;
+      }
+    }
+    return prefix;
+  }
+
+  /**
+   * Flip the bits of negative numbers so that the IEEE 754 bit patterns sort like Double.compare()
+   */
+  private static long getDoublePrefix( double value ) {
+    long bits = Double.doubleToLongBits( value );
+    return bits ^ ( ( bits >> 63 ) & Long.MAX_VALUE );
+  }
+
+  /**
+   * The first 4 UTF-16 characters, like String.compareTo() and String.compareToIgnoreCase() compare them
+   */
+  private static long getStringPrefix( String string, boolean caseInsensitive ) {
+    long prefix = 0L;
+    for ( int i = 0; i < 4; i++ ) {
+      prefix <<= 16;
+      if ( i < string.length() ) {
+        char c = string.charAt( i );
+        if ( caseInsensitive ) {
+          c = Character.toLowerCase( Character.toUpperCase( c ) );
+        }
+        prefix |= c;
+      }
+    }
+    return prefix ^ Long.MIN_VALUE;
+  }
+
+  /**
+   * Indicate that all rows were added: sort what is in memory and prepare to merge the runs on disk.
+   *
+   * @throws KettleException
+   *           in case of an I/O error
+   */
+  public void sort() throws KettleException {
+    if ( sorted ) {
+      return;
+    }
+    sorted = true;
+    outputIndex = 0;
+
+    if ( runs.isEmpty() ) {
+      sortIndex();
+      return;
+    }
+
+    spill();
+    releasePages();
+
+    // Reduce the number of runs until we can merge them in one go
+    //
+    while ( runs.size() > mergeFanIn ) {
+      List<Run> merged = new ArrayList<Run>();
+      for ( int start = 0; start < runs.size(); start += mergeFanIn ) {
+        List<Run> group = runs.subList( start, Math.min( start + mergeFanIn, runs.size() ) );
+        if ( group.size() == 1 ) {
+          merged.add( group.get( 0 ) );
+        } else {
+          merged.add( mergeRuns( group ) );
+        }
+      }
+      runs.clear();
+      runs.addAll( merged );
+    }
+
+    readers = openReaders( runs );
+    mergeTree = new LoserTree<RunReader>( readers.size(), runComparator );
+    for ( int i = 0; i < readers.size(); i++ ) {
+      RunReader reader = readers.get( i );
+      mergeTree.setHead( i, reader.next() ? reader : null );
+    }
+    mergeTree.init();
+  }
+
+  /**
+   * Merge a group of consecutive runs into a single new run.
+   */
+  private Run mergeRuns( List<Run> group ) throws KettleException {
+    Run run = new Run();
+    run.file = KettleVFS.createTempFile( filePrefix, ".tmp", directory, space );
+
+    List<RunReader> groupReaders = openReaders( group );
+    DataOutputStream output = null;
+    try {
+      LoserTree<RunReader> tree = new LoserTree<RunReader>( groupReaders.size(), runComparator );
+      for ( int i = 0; i < groupReaders.size(); i++ ) {
+        RunReader reader = groupReaders.get( i );
+        tree.setHead( i, reader.next() ? reader : null );
+      }
+      tree.init();
+
+      output = openRunOutput( run );
+      RunReader winner = tree.getWinnerHead();
+      while ( winner != null ) {
+        output.writeLong( winner.prefix );
+        output.writeInt( winner.length );
+        output.write( winner.record, 0, winner.length );
+        run.rows++;
+
+        tree.replaceWinner( winner.next() ? winner : null );
+        winner = tree.getWinnerHead();
+      }
+    } catch ( IOException e ) {
+      throw new KettleException( "Error merging temporary files into " + run.file, e );
+    } catch ( RuntimeException e ) {
+      throw new KettleException( "Error comparing rows", e.getCause() != null ? e.getCause() : e );
+    } finally {
+      closeQuietly( output );
+      for ( RunReader reader : groupReaders ) {
+        reader.close();
+      }
+    }
+
+    for ( Run merged : group ) {
+      deleteQuietly( merged.file );
+    }
+    if ( log.isDetailed() ) {
+      log.logDetailed( "Merged " + group.size() + " runs into a single run of " + run.rows + " rows" );
+    }
+    return run;
+  }
+
+  private List<RunReader> openReaders( List<Run> group ) throws KettleException {
+    List<RunReader> list = new ArrayList<RunReader>( group.size() );
+    try {
+      for ( Run run : group ) {
+        list.add( new RunReader( run ) );
+      }
+    } catch ( KettleException e ) {
+      for ( RunReader reader : list ) {
+        reader.close();
+      }
+      throw e;
+    }
+    return list;
+  }
+
+  /**
+   * Get the next row in sort order, after calling {@link #sort()}.
+   *
+   * @return the next row or null if there are no more rows
+   * @throws KettleException
+   *           in case of an I/O error
+   */
+  public Object[] getRow() throws KettleException {
+    if ( !sorted ) {
+      sort();
+    }
+
+    if ( mergeTree == null ) {
+      if ( outputIndex >= size ) {
+        return null;
+      }
+      int length = readRecord( pointers[outputIndex++] );
+      recordInput.reset( recordBytes, 0, length );
+      return readRow( readKeys( recordDataInput ), recordDataInput );
+    }
+
+    RunReader winner = mergeTree.getWinnerHead();
+    if ( winner == null ) {
+      return null;
+    }
+    recordInput.reset( winner.record, winner.restOffset, winner.length - winner.restOffset );
+    Object[] row = readRow( winner.keys, recordDataInput );
+    try {
+      mergeTree.replaceWinner( winner.next() ? winner : null );
+    } catch ( RuntimeException e ) {
+      throw new KettleException( "Error comparing rows", e.getCause() != null ? e.getCause() : e );
+    }
+    return row;
+  }
+
+  /**
+   * Remove all rows and temporary files so that the sorter can be used for a new set of rows.
+   */
+  public void clear() {
+    if ( readers != null ) {
+      for ( RunReader reader : readers ) {
+        reader.close();
+      }
+      readers = null;
+    }
+    mergeTree = null;
+    for ( Run run : runs ) {
+      deleteQuietly( run.file );
+    }
+    runs.clear();
+    resetBuffer();
+    sorted = false;
+    outputIndex = 0;
+    prefixCollision = false;
+  }
+
+  /**
+   * Clear everything and release the memory.
+   */
+  public void dispose() {
+    clear();
+    releasePages();
+  }
+
+  /**
+   * Give the pages and the index back. The direct memory is freed once the buffers are garbage collected.
+   */
+  private void releasePages() {
+    pages.clear();
+    pageMemory = 0;
+    currentPage = 0;
+    size = 0;
+    prefixes = new long[MIN_INDEX_SIZE];
+    pointers = new long[MIN_INDEX_SIZE];
+    scratchPrefixes = null;
+    scratchPointers = null;
+  }
+
+  private void deleteQuietly( FileObject file ) {
+    try {
+      if ( file != null && file.exists() ) {
+        file.delete();
+      }
+    } catch ( IOException e ) {
+      log.logError( "Unable to delete temporary file " + file, e );
+    }
+  }
+
+  private static void closeQuietly( Closeable closeable ) {
+    if ( closeable != null ) {
+      try {
+        closeable.close();
+      } catch ( IOException e ) {
+        // Ignore
+      }
+    }
+  }
+
+  /**
+   * A sorted run of rows in a temporary file
+   */
+  private static class Run {
+    FileObject file;
+    long rows;
+  }
+
+  /**
+   * Reads the records of a run one by one, decoding only the keys.
+   */
+  private class RunReader {
+    private final Run run;
+    private InputStream fileInput;
+    private DataInputStream input;
+    private long remaining;
+
+    long prefix;
+    byte[] record = new byte[256];
+    int length;
+    Object[] keys;
+    int restOffset;
+
+    private final RecordInputStream keyInput = new RecordInputStream();
+    private final DataInputStream keyDataInput = new DataInputStream( keyInput );
+
+    RunReader( Run run ) throws KettleException {
+      this.run = run;
+      this.remaining = run.rows;
+      try {
+        fileInput = KettleVFS.getInputStream( run.file );
+        input =
+          new DataInputStream( new SnappyInputStream( new BufferedInputStream( fileInput, STREAM_BUFFER_SIZE ) ) );
+      } catch ( IOException e ) {
+        close();
+        throw new KettleException( "Error opening temporary file " + run.file, e );
+      }
+    }
+
+    /**
+     * Read the next record.
+     *
+     * @return false if the run is exhausted
+     */
+    boolean next() throws KettleException {
+      if ( remaining <= 0 ) {
+        close();
+        return false;
+      }
+      try {
+        prefix = input.readLong();
+        length = input.readInt();
+        if ( record.length < length ) {
+          record = new byte[Math.max( length, record.length * 2 )];
+        }
+        input.readFully( record, 0, length );
+      } catch ( IOException e ) {
+        throw new KettleException( "Error reading temporary file " + run.file, e );
+      }
+      keyInput.reset( record, 0, length );
+      keys = readKeys( keyDataInput );
+      restOffset = keyInput.position();
+      remaining--;
+      return true;
+    }
+
+    void close() {
+      closeQuietly( input );
+      closeQuietly( fileInput );
+      input = null;
+      fileInput = null;
+    }
+  }
+
+  /**
+   * Gives access to the buffer to avoid copying the serialized record
+   */
+  private static class RecordOutputStream extends ByteArrayOutputStream {
+    RecordOutputStream() {
+      super( 256 );
+    }
+
+    byte[] buffer() {
+      return buf;
+    }
+  }
+
+  /**
+   * A byte array input stream that can be pointed at another buffer
+   */
+  private static class RecordInputStream extends ByteArrayInputStream {
+    RecordInputStream() {
+      super( new byte[0] );
+    }
+
+    void reset( byte[] buffer, int offset, int length ) {
+      this.buf = buffer;
+      this.pos = offset;
+      this.count = offset + length;
+      this.mark = offset;
+    }
+
+    int position() {
+      return pos;
+    }
+  }
+}
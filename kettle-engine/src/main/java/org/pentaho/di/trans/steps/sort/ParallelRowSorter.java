@@ -0,0 +1,524 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2015 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.sort;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.vfs2.FileObject;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.logging.LogChannelInterface;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.variables.VariableSpace;
+import org.pentaho.di.core.vfs.KettleVFS;
+
+/**
+ * Sorts rows with a number of threads.<br>
+ * <br>
+ * Rows are handed over in chunks. Every chunk is sorted on a fork-join pool (a parallel merge sort) and written to a
+ * temporary file while the step keeps reading input. At most "threads" chunks are in flight at any time, after that
+ * handing over a chunk waits for one to finish. If all rows fit in a single chunk they are sorted in parallel and
+ * returned from memory.<br>
+ * <br>
+ * The runs on disk are merged with a loser tree on a separate thread which hands the rows over through a bounded
+ * queue.
+ *
+ * @since 5.4
+ */
+public class ParallelRowSorter {
+
+  /**
+   * Below this number of rows a range is sorted by a single thread
+   */
+  private static final int SEQUENTIAL_THRESHOLD = 8192;
+
+  private static final int QUEUE_SIZE = 10000;
+
+  private static final Object[] END_OF_ROWS = new Object[0];
+
+  private final RowMetaInterface rowMeta;
+  private final Comparator<Object[]> comparator;
+  private final int threads;
+  private final boolean compress;
+  private final String filePrefix;
+  private final String directory;
+  private final VariableSpace space;
+  private final LogChannelInterface log;
+
+  private final ForkJoinPool pool;
+  private final Semaphore inFlight;
+
+  private final List<Run> runs;
+  private volatile Throwable error;
+
+  private Object[][] sortedRows;
+  private int outputIndex;
+
+  private Thread mergeThread;
+  private BlockingQueue<Object[]> mergedRows;
+  private volatile boolean stopped;
+  private boolean endOfRows;
+
+  /**
+   * Create a new parallel sorter.
+   *
+   * @param rowMeta
+   *          the layout of the rows
+   * @param comparator
+   *          compares rows on the sort keys
+   * @param threads
+   *          the number of threads to sort with
+   * @param compress
+   *          true to compress the temporary files with GZIP
+   * @param filePrefix
+   *          the prefix of the temporary files
+   * @param directory
+   *          the directory for the temporary files
+   * @param space
+   *          the variable space to resolve the directory with
+   * @param log
+   *          the log channel to report on
+   */
+  public ParallelRowSorter( RowMetaInterface rowMeta, Comparator<Object[]> comparator, int threads,
+    boolean compress, String filePrefix, String directory, VariableSpace space, LogChannelInterface log ) {
+    this.rowMeta = rowMeta;
+    this.comparator = comparator;
+    this.threads = Math.max( threads, 1 );
+    this.compress = compress;
+    this.filePrefix = filePrefix;
+    this.directory = directory;
+    this.space = space;
+    this.log = log;
+
+    pool = new ForkJoinPool( this.threads );
+    inFlight = new Semaphore( this.threads );
+    runs = new ArrayList<Run>();
+  }
+
+  /**
+   * Sort a chunk of rows in the background and write it to a temporary file. Waits if too many chunks are being
+   * sorted already. The list can be re-used as soon as this method returns.
+   *
+   * @param rows
+   *          the rows to sort
+   * @throws KettleException
+   *           in case sorting or writing a previous chunk failed
+   */
+  public void addChunk( List<Object[]> rows ) throws KettleException {
+    checkError();
+    if ( rows.isEmpty() ) {
+      return;
+    }
+
+    try {
+      inFlight.acquire();
+    } catch ( InterruptedException e ) {
+      throw new KettleException( "Interrupted while waiting for a sort thread", e );
+    }
+
+    final Run run = new Run();
+    try {
+      run.file = KettleVFS.createTempFile( filePrefix, ".tmp", directory, space );
+      runs.add( run );
+      run.output = KettleVFS.getOutputStream( run.file, false );
+    } catch ( Exception e ) {
+      inFlight.release();
+      throw new KettleException( "Unable to create temporary file for sorting", e );
+    }
+
+    final Object[][] chunk = rows.toArray( new Object[rows.size()][] );
+    run.rows = chunk.length;
+    pool.execute( new Runnable() {
+      @Override
+      public void run() {
+        try {
+          sortInParallel( chunk );
+          writeRun( run, chunk );
+        } catch ( Throwable e ) {
+          error = e;
+        } finally {
+          inFlight.release();
+        }
+      }
+    } );
+
+    if ( log.isDetailed() ) {
+      log.logDetailed( "Handed over chunk #" + runs.size() + " of " + chunk.length + " rows for sorting" );
+    }
+  }
+
+  private void writeRun( Run run, Object[][] chunk ) throws KettleException {
+    DataOutputStream output = null;
+    try {
+      if ( compress ) {
+        output = new DataOutputStream( new GZIPOutputStream( new BufferedOutputStream( run.output ) ) );
+      } else {
+        output = new DataOutputStream( new BufferedOutputStream( run.output, 500000 ) );
+      }
+      for ( Object[] row : chunk ) {
+        if ( stopped ) {
+          return;
+        }
+        rowMeta.writeData( output, row );
+      }
+    } catch ( IOException e ) {
+      throw new KettleException( "Error writing sorted rows to temporary file " + run.file, e );
+    } finally {
+      closeQuietly( output );
+      closeQuietly( run.output );
+      run.output = null;
+    }
+  }
+
+  /**
+   * Indicate that all rows were handed over. Waits for all chunks to be sorted and starts merging them.
+   *
+   * @param rows
+   *          the last rows that were not handed over as a chunk yet
+   * @throws KettleException
+   *           in case of an error sorting or writing the rows
+   */
+  public void sort( List<Object[]> rows ) throws KettleException {
+    if ( runs.isEmpty() ) {
+      // Everything fits in memory: no need for temporary files
+      //
+      sortedRows = rows.toArray( new Object[rows.size()][] );
+      outputIndex = 0;
+      try {
+        pool.invoke( new SortTask( sortedRows, new Object[sortedRows.length][], 0, sortedRows.length, comparator ) );
+      } catch ( RuntimeException e ) {
+        throw new KettleException( "Error sorting rows", e );
+      }
+      return;
+    }
+
+    addChunk( rows );
+    try {
+      inFlight.acquire( threads );
+      inFlight.release( threads );
+    } catch ( InterruptedException e ) {
+      throw new KettleException( "Interrupted while waiting for the sort threads", e );
+    }
+    checkError();
+
+    if ( log.isDetailed() ) {
+      log.logDetailed( "Merging " + runs.size() + " sorted temporary files" );
+    }
+    startMerge();
+  }
+
+  private void sortInParallel( Object[][] rows ) {
+    new SortTask( rows, new Object[rows.length][], 0, rows.length, comparator ).invoke();
+  }
+
+  private void startMerge() throws KettleException {
+    final List<RunReader> readers = new ArrayList<RunReader>();
+    try {
+      for ( Run run : runs ) {
+        readers.add( new RunReader( run ) );
+      }
+    } catch ( KettleException e ) {
+      for ( RunReader reader : readers ) {
+        reader.close();
+      }
+      throw e;
+    }
+
+    mergedRows = new ArrayBlockingQueue<Object[]>( QUEUE_SIZE );
+    endOfRows = false;
+    mergeThread = new Thread( new Runnable() {
+      @Override
+      public void run() {
+        try {
+          merge( readers );
+        } catch ( Throwable e ) {
+          error = e;
+        } finally {
+          for ( RunReader reader : readers ) {
+            reader.close();
+          }
+          handOver( END_OF_ROWS );
+        }
+      }
+    }, "Sort rows merge" );
+    mergeThread.setDaemon( true );
+    mergeThread.start();
+  }
+
+  private void merge( List<RunReader> readers ) throws KettleException {
+    LoserTree<Object[]> tree = new LoserTree<Object[]>( readers.size(), comparator );
+    for ( int i = 0; i < readers.size(); i++ ) {
+      tree.setHead( i, readers.get( i ).next() );
+    }
+    tree.init();
+
+    Object[] row = tree.getWinnerHead();
+    while ( row != null && !stopped ) {
+      if ( !handOver( row ) ) {
+        return;
+      }
+      tree.replaceWinner( readers.get( tree.getWinner() ).next() );
+      row = tree.getWinnerHead();
+    }
+  }
+
+  /**
+   * Put a row on the queue, waiting for room unless the sorter is stopped.
+   */
+  private boolean handOver( Object[] row ) {
+    try {
+      while ( !stopped ) {
+        if ( mergedRows.offer( row, 100, TimeUnit.MILLISECONDS ) ) {
+          return true;
+        }
+      }
+    } catch ( InterruptedException e ) {
+      // Stopped
+    }
+    return false;
+  }
+
+  /**
+   * Get the next row in sort order, after calling {@link #sort(List)}.
+   *
+   * @return the next row or null if there are no more rows
+   * @throws KettleException
+   *           in case of an error while merging
+   */
+  public Object[] getRow() throws KettleException {
+    if ( sortedRows != null ) {
+      if ( outputIndex < sortedRows.length ) {
+        Object[] row = sortedRows[outputIndex];
+        sortedRows[outputIndex++] = null;
+        return row;
+      }
+      return null;
+    }
+    if ( mergedRows == null || endOfRows ) {
+      return null;
+    }
+
+    Object[] row;
+    try {
+      row = mergedRows.take();
+    } catch ( InterruptedException e ) {
+      throw new KettleException( "Interrupted while waiting for sorted rows", e );
+    }
+    if ( row == END_OF_ROWS ) {
+      endOfRows = true;
+      checkError();
+      return null;
+    }
+    return row;
+  }
+
+  /**
+   * @return the number of chunks that were written to temporary files
+   */
+  public int getNrRuns() {
+    return runs.size();
+  }
+
+  private void checkError() throws KettleException {
+    Throwable e = error;
+    if ( e != null ) {
+      error = null;
+      if ( e instanceof KettleException ) {
+        throw (KettleException) e;
+      }
+      throw new KettleException( "Error sorting rows", e );
+    }
+  }
+
+  /**
+   * Stop merging, wait for the sort threads and remove all temporary files so that the sorter can be used again.
+   */
+  public void clear() {
+    stopped = true;
+    if ( mergeThread != null ) {
+      mergeThread.interrupt();
+      try {
+        mergeThread.join();
+      } catch ( InterruptedException e ) {
+        // Ignore
+      }
+      mergeThread = null;
+    }
+    try {
+      inFlight.acquire( threads );
+      inFlight.release( threads );
+    } catch ( InterruptedException e ) {
+      // Ignore
+    }
+    for ( Run run : runs ) {
+      try {
+        if ( run.file.exists() ) {
+          run.file.delete();
+        }
+      } catch ( IOException e ) {
+        log.logError( "Unable to delete temporary file " + run.file, e );
+      }
+    }
+    runs.clear();
+    mergedRows = null;
+    sortedRows = null;
+    outputIndex = 0;
+    error = null;
+    stopped = false;
+  }
+
+  /**
+   * Clear everything and stop the sort threads.
+   */
+  public void dispose() {
+    clear();
+    pool.shutdown();
+  }
+
+  private static void closeQuietly( Closeable closeable ) {
+    if ( closeable != null ) {
+      try {
+        closeable.close();
+      } catch ( IOException e ) {
+        // Ignore
+      }
+    }
+  }
+
+  /**
+   * A parallel merge sort. Ranges below the threshold are sorted with Arrays.sort(), larger ranges are split in two
+   * halves that are sorted in parallel and merged. The sort is stable.
+   */
+  private static class SortTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final Object[][] rows;
+    private final Object[][] scratch;
+    private final int from;
+    private final int to;
+    private final Comparator<Object[]> comparator;
+
+    SortTask( Object[][] rows, Object[][] scratch, int from, int to, Comparator<Object[]> comparator ) {
+      this.rows = rows;
+      this.scratch = scratch;
+      this.from = from;
+      this.to = to;
+      this.comparator = comparator;
+    }
+
+    @Override
+    protected void compute() {
+      if ( to - from <= SEQUENTIAL_THRESHOLD ) {
+        Arrays.sort( rows, from, to, comparator );
+        return;
+      }
+      int middle = ( from + to ) >>> 1;
+      invokeAll( new SortTask( rows, scratch, from, middle, comparator ), new SortTask(
+        rows, scratch, middle, to, comparator ) );
+
+      if ( comparator.compare( rows[middle - 1], rows[middle] ) <= 0 ) {
+        return; // already in order
+      }
+      System.arraycopy( rows, from, scratch, from, to - from );
+      int left = from;
+      int right = middle;
+      for ( int target = from; target < to; target++ ) {
+        if ( right >= to || ( left < middle && comparator.compare( scratch[left], scratch[right] ) <= 0 ) ) {
+          rows[target] = scratch[left++];
+        } else {
+          rows[target] = scratch[right++];
+        }
+      }
+    }
+  }
+
+  /**
+   * A sorted chunk of rows in a temporary file
+   */
+  private static class Run {
+    FileObject file;
+    OutputStream output;
+    int rows;
+  }
+
+  private class RunReader {
+    private final Run run;
+    private InputStream fileInput;
+    private DataInputStream input;
+    private int remaining;
+
+    RunReader( Run run ) throws KettleException {
+      this.run = run;
+      this.remaining = run.rows;
+      try {
+        fileInput = KettleVFS.getInputStream( run.file );
+        if ( compress ) {
+          input = new DataInputStream( new GZIPInputStream( new BufferedInputStream( fileInput ) ) );
+        } else {
+          input = new DataInputStream( new BufferedInputStream( fileInput, 50000 ) );
+        }
+      } catch ( IOException e ) {
+        close();
+        throw new KettleException( "Error opening temporary file " + run.file, e );
+      }
+    }
+
+    Object[] next() throws KettleException {
+      if ( remaining <= 0 ) {
+        close();
+        return null;
+      }
+      try {
+        remaining--;
+        return rowMeta.readData( input );
+      } catch ( IOException e ) {
+        throw new KettleException( "Error reading temporary file " + run.file, e );
+      }
+    }
+
+    void close() {
+      closeQuietly( input );
+      closeQuietly( fileInput );
+      input = null;
+      fileInput = null;
+    }
+  }
+}
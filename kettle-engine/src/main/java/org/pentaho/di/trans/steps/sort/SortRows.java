@@ -84,6 +84,12 @@ public class SortRows extends BaseStep implements StepInterface {
       }
     }
 
+    // Sorting within a memory budget: the sorter decides when to go to disk
+    if ( data.sorter != null ) {
+      data.sorter.addRow( r );
+      return;
+    }
+
     // Save row
     data.buffer.add( r );
 
@@ -116,10 +122,24 @@ public class SortRows extends BaseStep implements StepInterface {
     }
     // time to sort the buffer and write the data to disk...
     if ( doSort ) {
-      sortExternalRows();
+      if ( data.parallelSorter != null ) {
+        sortChunkInParallel();
+      } else {
+        sortExternalRows();
+      }
     }
   }
 
+  // hand the rows in the buffer over to the sort threads,
+  // they get sorted and written to disk while we keep reading rows
+  void sortChunkInParallel() throws KettleException {
+    data.parallelSorter.addChunk( data.buffer );
+    data.buffer.clear();
+
+    data.freeMemoryPct = Const.getPercentageFreeMemory();
+    data.freeCounter = 0;
+  }
+
   // dump sorted rows from in-memory buffer to fs file
   // clean current buffer
   void sortExternalRows() throws KettleException {
@@ -239,7 +259,14 @@ public class SortRows extends BaseStep implements StepInterface {
   // get sorted rows from available files in iterative manner.
   // that means call to this method will continue to return rows
   // till all temp files will not be read to the end.
-  Object[] getBuffer() throws KettleValueException {
+  Object[] getBuffer() throws KettleException {
+    if ( data.sorter != null ) {
+      return data.sorter.getRow();
+    }
+    if ( data.parallelSorter != null ) {
+      return data.parallelSorter.getRow();
+    }
+
     Object[] retval;
 
     // Open all files at once and read one row from each file...
@@ -438,6 +465,23 @@ public class SortRows extends BaseStep implements StepInterface {
         i++;
       }
       data.rowComparator = new RowObjectArrayComparator( data.outputRowMeta, data.fieldnrs );
+
+      if ( data.memoryLimit > 0 ) {
+        data.sorter =
+          new OffHeapRowSorter( data.outputRowMeta, data.fieldnrs, data.memoryLimit, data.mergeFanIn, meta
+            .getPrefix(), environmentSubstitute( meta.getDirectory() ), getTransMeta(), log );
+        if ( log.isDetailed() ) {
+          logDetailed( BaseMessages.getString( PKG, "SortRows.Detailed.OffHeapSort", data.memoryLimit / ( 1024 * 1024 ),
+            data.mergeFanIn ) );
+        }
+      } else if ( data.sortThreads > 1 ) {
+        data.parallelSorter =
+          new ParallelRowSorter( data.outputRowMeta, data.rowComparator, data.sortThreads, data.compressFiles, meta
+            .getPrefix(), environmentSubstitute( meta.getDirectory() ), getTransMeta(), log );
+        if ( log.isDetailed() ) {
+          logDetailed( BaseMessages.getString( PKG, "SortRows.Detailed.ParallelSort", data.sortThreads ) );
+        }
+      }
     } // end if first
 
     // it is not first row and it is null
@@ -574,16 +618,35 @@ public class SortRows extends BaseStep implements StepInterface {
 
     data.minSortSize = 5000;
 
+    data.memoryLimit = Const.toInt( environmentSubstitute( meta.getMemoryLimit() ), -1 ) * 1024L * 1024L;
+    data.mergeFanIn =
+      Const.toInt( environmentSubstitute( meta.getMergeFanIn() ), OffHeapRowSorter.DEFAULT_MERGE_FAN_IN );
+    data.sortThreads = Const.toInt( environmentSubstitute( meta.getSortThreads() ), 1 );
+
     return true;
   }
 
   @Override
   public void dispose( StepMetaInterface smi, StepDataInterface sdi ) {
     clearBuffers();
+    if ( data.sorter != null ) {
+      data.sorter.dispose();
+      data.sorter = null;
+    }
+    if ( data.parallelSorter != null ) {
+      data.parallelSorter.dispose();
+      data.parallelSorter = null;
+    }
     super.dispose( smi, sdi );
   }
 
   private void clearBuffers() {
+    if ( data.sorter != null ) {
+      data.sorter.clear();
+    }
+    if ( data.parallelSorter != null ) {
+      data.parallelSorter.clear();
+    }
 
     // Clean out the sort buffer
     data.buffer.clear();
@@ -645,7 +708,11 @@ public class SortRows extends BaseStep implements StepInterface {
   }
 
   private void preSortBeforeFlush() throws KettleException {
-    if ( data.files.size() > 0 ) {
+    if ( data.sorter != null ) {
+      data.sorter.sort();
+    } else if ( data.parallelSorter != null ) {
+      data.parallelSorter.sort( data.buffer );
+    } else if ( data.files.size() > 0 ) {
       // dump to dist and then read from disk
       sortExternalRows();
     } else {
@@ -69,6 +69,15 @@ public class SortRowsData extends BaseStepData implements StepDataInterface {
   public int freeMemoryPctLimit;
   public int memoryReporting;
 
+  /** Sorts the rows in off-heap memory when a memory limit is set, null otherwise */
+  public OffHeapRowSorter sorter;
+  public long memoryLimit;
+  public int mergeFanIn;
+
+  /** Sorts the rows with several threads when more than one sort thread is set, null otherwise */
+  public ParallelRowSorter parallelSorter;
+  public int sortThreads;
+
   /*
    * Group Fields Implementation heroic
    */
@@ -82,6 +82,18 @@ public class SortRowsMeta extends BaseStepMeta implements StepMetaInterface {
   /** The free memory limit in percentages in case we don't use the sort size */
   private String freeMemoryLimit;
 
+  /**
+   * The memory budget in MB for the rows kept in memory. If set, rows are sorted in off-heap memory and the sort size
+   * and free memory limit are ignored.
+   */
+  private String memoryLimit;
+
+  /** The maximum number of temporary files to merge at once when sorting within a memory budget */
+  private String mergeFanIn;
+
+  /** The number of threads to sort with */
+  private String sortThreads;
+
   /** only pass unique rows to the output stream(s) */
   private boolean onlyPassingUniqueRows;
 
@@ -193,6 +205,9 @@ public class SortRowsMeta extends BaseStepMeta implements StepMetaInterface {
       prefix = XMLHandler.getTagValue( stepnode, "prefix" );
       sortSize = XMLHandler.getTagValue( stepnode, "sort_size" );
       freeMemoryLimit = XMLHandler.getTagValue( stepnode, "free_memory" );
+      memoryLimit = XMLHandler.getTagValue( stepnode, "memory_limit" );
+      mergeFanIn = XMLHandler.getTagValue( stepnode, "merge_fan_in" );
+      sortThreads = XMLHandler.getTagValue( stepnode, "sort_threads" );
       compressFiles = "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "compress" ) );
       compressFilesVariable = XMLHandler.getTagValue( stepnode, "compress_variable" );
       onlyPassingUniqueRows = "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "unique_rows" ) );
@@ -223,6 +238,9 @@ public class SortRowsMeta extends BaseStepMeta implements StepMetaInterface {
     prefix = "out";
     sortSize = "1000000";
     freeMemoryLimit = null;
+    memoryLimit = null;
+    mergeFanIn = null;
+    sortThreads = null;
     compressFiles = false;
     compressFilesVariable = null;
     onlyPassingUniqueRows = false;
@@ -245,6 +263,9 @@ public class SortRowsMeta extends BaseStepMeta implements StepMetaInterface {
     retval.append( "      " ).append( XMLHandler.addTagValue( "prefix", prefix ) );
     retval.append( "      " ).append( XMLHandler.addTagValue( "sort_size", sortSize ) );
     retval.append( "      " ).append( XMLHandler.addTagValue( "free_memory", freeMemoryLimit ) );
+    retval.append( "      " ).append( XMLHandler.addTagValue( "memory_limit", memoryLimit ) );
+    retval.append( "      " ).append( XMLHandler.addTagValue( "merge_fan_in", mergeFanIn ) );
+    retval.append( "      " ).append( XMLHandler.addTagValue( "sort_threads", sortThreads ) );
     retval.append( "      " ).append( XMLHandler.addTagValue( "compress", compressFiles ) );
     retval.append( "      " ).append( XMLHandler.addTagValue( "compress_variable", compressFilesVariable ) );
     retval.append( "      " ).append( XMLHandler.addTagValue( "unique_rows", onlyPassingUniqueRows ) );
@@ -269,6 +290,9 @@ public class SortRowsMeta extends BaseStepMeta implements StepMetaInterface {
       prefix = rep.getStepAttributeString( id_step, "prefix" );
       sortSize = rep.getStepAttributeString( id_step, "sort_size" );
       freeMemoryLimit = rep.getStepAttributeString( id_step, "free_memory" );
+      memoryLimit = rep.getStepAttributeString( id_step, "memory_limit" );
+      mergeFanIn = rep.getStepAttributeString( id_step, "merge_fan_in" );
+      sortThreads = rep.getStepAttributeString( id_step, "sort_threads" );
 
       compressFiles = rep.getStepAttributeBoolean( id_step, "compress" );
       compressFilesVariable = rep.getStepAttributeString( id_step, "compress_variable" );
@@ -296,6 +320,9 @@ public class SortRowsMeta extends BaseStepMeta implements StepMetaInterface {
       rep.saveStepAttribute( id_transformation, id_step, "prefix", prefix );
       rep.saveStepAttribute( id_transformation, id_step, "sort_size", sortSize );
       rep.saveStepAttribute( id_transformation, id_step, "free_memory", freeMemoryLimit );
+      rep.saveStepAttribute( id_transformation, id_step, "memory_limit", memoryLimit );
+      rep.saveStepAttribute( id_transformation, id_step, "merge_fan_in", mergeFanIn );
+      rep.saveStepAttribute( id_transformation, id_step, "sort_threads", sortThreads );
       rep.saveStepAttribute( id_transformation, id_step, "compress", compressFiles );
       rep.saveStepAttribute( id_transformation, id_step, "compress_variable", compressFilesVariable );
       rep.saveStepAttribute( id_transformation, id_step, "unique_rows", onlyPassingUniqueRows );
@@ -516,6 +543,51 @@ public class SortRowsMeta extends BaseStepMeta implements StepMetaInterface {
     this.freeMemoryLimit = freeMemoryLimit;
   }
 
+  /**
+   * @return the memory budget in MB for sorting in off-heap memory
+   */
+  public String getMemoryLimit() {
+    return memoryLimit;
+  }
+
+  /**
+   * @param memoryLimit
+   *          the memory budget in MB for sorting in off-heap memory, empty to use the sort size or free memory limit
+   */
+  public void setMemoryLimit( String memoryLimit ) {
+    this.memoryLimit = memoryLimit;
+  }
+
+  /**
+   * @return the maximum number of temporary files to merge at once
+   */
+  public String getMergeFanIn() {
+    return mergeFanIn;
+  }
+
+  /**
+   * @param mergeFanIn
+   *          the maximum number of temporary files to merge at once
+   */
+  public void setMergeFanIn( String mergeFanIn ) {
+    this.mergeFanIn = mergeFanIn;
+  }
+
+  /**
+   * @return the number of threads to sort with
+   */
+  public String getSortThreads() {
+    return sortThreads;
+  }
+
+  /**
+   * @param sortThreads
+   *          the number of threads to sort with, empty or 1 to sort on the step thread
+   */
+  public void setSortThreads( String sortThreads ) {
+    this.sortThreads = sortThreads;
+  }
+
   /**
    * @return the preSortedField
    */
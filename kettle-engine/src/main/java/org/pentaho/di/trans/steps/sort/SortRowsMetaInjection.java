@@ -45,6 +45,9 @@ public class SortRowsMetaInjection implements StepMetaInjectionInterface {
       SORT_DIRECTORY( ValueMetaInterface.TYPE_STRING, "The sort directory" ),
       SORT_FILE_PREFIX( ValueMetaInterface.TYPE_STRING, "The sort file prefix" ),
       FREE_MEMORY_TRESHOLD( ValueMetaInterface.TYPE_STRING, "The free memory treshold (in %)" ),
+      MEMORY_LIMIT( ValueMetaInterface.TYPE_STRING, "The memory limit for off-heap sorting (in MB)" ),
+      MERGE_FAN_IN( ValueMetaInterface.TYPE_STRING, "The maximum number of temporary files to merge at once" ),
+      SORT_THREADS( ValueMetaInterface.TYPE_STRING, "The number of threads to sort with" ),
       ONLY_PASS_UNIQUE_ROWS( ValueMetaInterface.TYPE_STRING, "Only pass unique rows? (Y/N)" ),
       COMPRESS_TEMP_FILES( ValueMetaInterface.TYPE_STRING, "Compress temporary files? (Y/N)" ),
 
@@ -96,7 +99,8 @@ public class SortRowsMetaInjection implements StepMetaInjectionInterface {
     Entry[] topEntries =
       new Entry[] {
         Entry.SORT_SIZE_ROWS, Entry.ONLY_PASS_UNIQUE_ROWS, Entry.COMPRESS_TEMP_FILES, Entry.SORT_DIRECTORY,
-        Entry.SORT_FILE_PREFIX, Entry.FREE_MEMORY_TRESHOLD, };
+        Entry.SORT_FILE_PREFIX, Entry.FREE_MEMORY_TRESHOLD, Entry.MEMORY_LIMIT, Entry.MERGE_FAN_IN,
+        Entry.SORT_THREADS, };
     for ( Entry topEntry : topEntries ) {
       all.add( new StepInjectionMetaEntry( topEntry.name(), topEntry.getValueType(), topEntry.getDescription() ) );
     }
@@ -196,6 +200,15 @@ public class SortRowsMetaInjection implements StepMetaInjectionInterface {
           case FREE_MEMORY_TRESHOLD:
             meta.setFreeMemoryLimit( lookValue );
             break;
+          case MEMORY_LIMIT:
+            meta.setMemoryLimit( lookValue );
+            break;
+          case MERGE_FAN_IN:
+            meta.setMergeFanIn( lookValue );
+            break;
+          case SORT_THREADS:
+            meta.setSortThreads( lookValue );
+            break;
           default:
             break;
         }
@@ -229,6 +242,9 @@ public class SortRowsMetaInjection implements StepMetaInjectionInterface {
     list.add( StepInjectionUtil.getEntry( Entry.SORT_DIRECTORY, meta.getDirectory() ) );
     list.add( StepInjectionUtil.getEntry( Entry.SORT_FILE_PREFIX, meta.getPrefix() ) );
     list.add( StepInjectionUtil.getEntry( Entry.FREE_MEMORY_TRESHOLD, meta.getFreeMemoryLimit() ) );
+    list.add( StepInjectionUtil.getEntry( Entry.MEMORY_LIMIT, meta.getMemoryLimit() ) );
+    list.add( StepInjectionUtil.getEntry( Entry.MERGE_FAN_IN, meta.getMergeFanIn() ) );
+    list.add( StepInjectionUtil.getEntry( Entry.SORT_THREADS, meta.getSortThreads() ) );
     list.add( StepInjectionUtil.getEntry( Entry.ONLY_PASS_UNIQUE_ROWS, meta.isOnlyPassingUniqueRows() ) );
     list.add( StepInjectionUtil.getEntry( Entry.COMPRESS_TEMP_FILES, meta.getCompressFiles() ) );
 
@@ -32,7 +32,9 @@ import org.pentaho.di.core.RowSet;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleStepException;
 import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.hash.BinaryHashIndex;
 import org.pentaho.di.core.hash.ByteArrayHashIndex;
+import org.pentaho.di.core.hash.OrderedKeyEncoder;
 import org.pentaho.di.core.row.RowDataUtil;
 import org.pentaho.di.core.row.RowMeta;
 import org.pentaho.di.core.row.RowMetaInterface;
@@ -218,6 +220,11 @@ public class StreamLookup extends BaseStep implements StepInterface {
       rowData = getRowFrom( rowSet );
     }
 
+    if ( data.binaryIndex != null && log.isDetailed() ) {
+      logDetailed( BaseMessages.getString(
+        PKG, "StreamLookup.Log.BinaryIndexSize", data.binaryIndex.getSize(), data.binaryIndex.getMemorySize() ) );
+    }
+
     return true;
   }
 
@@ -295,7 +302,12 @@ public class StreamLookup extends BaseStep implements StepInterface {
 
   private void addToCache( RowMetaInterface keyMeta, Object[] keyData, RowMetaInterface valueMeta,
     Object[] valueData ) throws KettleValueException {
-    if ( meta.isMemoryPreservationActive() ) {
+    if ( data.useBinaryIndex ) {
+      if ( data.binaryIndex == null ) {
+        createBinaryIndex( keyMeta );
+      }
+      data.binaryIndex.put( encodeKey( keyMeta, keyData ), RowMeta.extractData( valueMeta, valueData ) );
+    } else if ( meta.isMemoryPreservationActive() ) {
       if ( meta.isUsingSortedList() ) {
         KeyValue keyValue = new KeyValue( keyData, valueData );
         int idx = Collections.binarySearch( data.list, keyValue, data.comparator );
@@ -336,8 +348,42 @@ public class StreamLookup extends BaseStep implements StepInterface {
     }
   }
 
+  /**
+   * The keys are encoded so that they sort like the values, if the data types allow it. This is needed for range
+   * lookups.
+   */
+  private void createBinaryIndex( RowMetaInterface keyMeta ) throws KettleValueException {
+    if ( OrderedKeyEncoder.isSupported( keyMeta ) ) {
+      data.keyEncoder = new OrderedKeyEncoder( keyMeta );
+    } else if ( meta.isRangeLookup() ) {
+      throw new KettleValueException( BaseMessages.getString( PKG, "StreamLookup.Exception.CanNotUseRangeLookup" ) );
+    }
+    data.binaryIndex = new BinaryHashIndex();
+  }
+
+  private byte[] encodeKey( RowMetaInterface keyMeta, Object[] keyData ) throws KettleValueException {
+    if ( data.keyEncoder != null ) {
+      return data.keyEncoder.encode( keyData );
+    }
+    return RowMeta.extractData( keyMeta, keyData );
+  }
+
   private Object[] getFromCache( RowMetaInterface keyMeta, Object[] keyData ) throws KettleValueException {
-    if ( meta.isMemoryPreservationActive() ) {
+    if ( data.useBinaryIndex ) {
+      byte[] value;
+      if ( meta.isRangeLookup() ) {
+        // All keys but the last one have to be equal
+        //
+        int prefixLength = data.keyEncoder.encode( keyData, keyData.length - 1 ).length;
+        value = data.binaryIndex.floor( data.keyEncoder.encode( keyData ), prefixLength );
+      } else {
+        value = data.binaryIndex.get( encodeKey( keyMeta, keyData ) );
+      }
+      if ( value == null ) {
+        return null;
+      }
+      return RowMeta.getRow( data.cacheValueMeta, value );
+    } else if ( meta.isMemoryPreservationActive() ) {
       if ( meta.isUsingSortedList() ) {
         KeyValue keyValue = new KeyValue( keyData, null );
         int idx = Collections.binarySearch( data.list, keyValue, data.comparator );
@@ -378,6 +424,8 @@ public class StreamLookup extends BaseStep implements StepInterface {
 
     if ( data.readLookupValues ) {
       data.readLookupValues = false;
+      data.useBinaryIndex =
+        meta.isRangeLookup() || ( meta.isMemoryPreservationActive() && meta.isUsingBinaryIndex() );
 
       if ( !readLookupValues() ) {
         // Read values in lookup table (look)
@@ -481,6 +529,10 @@ public class StreamLookup extends BaseStep implements StepInterface {
     data.list = null;
     data.hashIndex = null;
     data.longIndex = null;
+    if ( data.binaryIndex != null ) {
+      data.binaryIndex.clear();
+      data.binaryIndex = null;
+    }
 
     super.dispose( smi, sdi );
   }
@@ -30,8 +30,10 @@ import java.util.Map;
 
 import org.pentaho.di.core.RowMetaAndData;
 import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.hash.BinaryHashIndex;
 import org.pentaho.di.core.hash.ByteArrayHashIndex;
 import org.pentaho.di.core.hash.LongHashIndex;
+import org.pentaho.di.core.hash.OrderedKeyEncoder;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.trans.step.BaseStepData;
 import org.pentaho.di.trans.step.StepDataInterface;
@@ -74,6 +76,14 @@ public class StreamLookupData extends BaseStepData implements StepDataInterface
   public ByteArrayHashIndex hashIndex;
   public LongHashIndex longIndex;
 
+  /** Flag to indicate that the lookup data is kept in the binary index */
+  public boolean useBinaryIndex;
+
+  public BinaryHashIndex binaryIndex;
+
+  /** Encodes the keys of the binary index, null if the keys are serialized as rows */
+  public OrderedKeyEncoder keyEncoder;
+
   public RowMetaInterface lookupMeta;
 
   public RowMetaInterface infoMeta;
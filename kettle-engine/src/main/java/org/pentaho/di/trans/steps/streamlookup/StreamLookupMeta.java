@@ -89,6 +89,12 @@ public class StreamLookupMeta extends BaseStepMeta implements StepMetaInterface
   /** The content of the key and lookup is a single Integer (long) */
   private boolean usingIntegerPair;
 
+  /** Indicate that we want to use a compact binary hash index, stored outside of the Java heap */
+  private boolean usingBinaryIndex;
+
+  /** The last key matches the lookup row with the nearest lower or equal value */
+  private boolean rangeLookup;
+
   public StreamLookupMeta() {
     super(); // allocate BaseStepMeta
   }
@@ -120,6 +126,8 @@ public class StreamLookupMeta extends BaseStepMeta implements StepMetaInterface
       setMemoryPreservationActive( "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "preserve_memory" ) ) );
       setUsingSortedList( "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "sorted_list" ) ) );
       setUsingIntegerPair( "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "integer_pair" ) ) );
+      setUsingBinaryIndex( "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "binary_index" ) ) );
+      setRangeLookup( "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "range_lookup" ) ) );
 
       Node lookup = XMLHandler.getSubNode( stepnode, "lookup" );
       nrkeys = XMLHandler.countNodes( lookup, "key" );
@@ -166,6 +174,8 @@ public class StreamLookupMeta extends BaseStepMeta implements StepMetaInterface
     setMemoryPreservationActive( true );
     setUsingSortedList( false );
     setUsingIntegerPair( false );
+    setUsingBinaryIndex( false );
+    setRangeLookup( false );
 
     allocate( 0, 0 );
   }
@@ -207,6 +217,8 @@ public class StreamLookupMeta extends BaseStepMeta implements StepMetaInterface
     retval.append( "    " ).append( XMLHandler.addTagValue( "preserve_memory", isMemoryPreservationActive() ) );
     retval.append( "    " ).append( XMLHandler.addTagValue( "sorted_list", isUsingSortedList() ) );
     retval.append( "    " ).append( XMLHandler.addTagValue( "integer_pair", isUsingIntegerPair() ) );
+    retval.append( "    " ).append( XMLHandler.addTagValue( "binary_index", isUsingBinaryIndex() ) );
+    retval.append( "    " ).append( XMLHandler.addTagValue( "range_lookup", isRangeLookup() ) );
 
     retval.append( "    <lookup>" ).append( Const.CR );
     for ( int i = 0; i < getKeystream().length; i++ ) {
@@ -240,6 +252,8 @@ public class StreamLookupMeta extends BaseStepMeta implements StepMetaInterface
       setMemoryPreservationActive( rep.getStepAttributeBoolean( id_step, "preserve_memory" ) );
       setUsingSortedList( rep.getStepAttributeBoolean( id_step, "sorted_list" ) );
       setUsingIntegerPair( rep.getStepAttributeBoolean( id_step, "integer_pair" ) );
+      setUsingBinaryIndex( rep.getStepAttributeBoolean( id_step, "binary_index" ) );
+      setRangeLookup( rep.getStepAttributeBoolean( id_step, "range_lookup" ) );
 
       int nrkeys = rep.countNrStepAttributes( id_step, "lookup_key_name" );
       int nrvalues = rep.countNrStepAttributes( id_step, "return_value_name" );
@@ -275,6 +289,8 @@ public class StreamLookupMeta extends BaseStepMeta implements StepMetaInterface
       rep.saveStepAttribute( id_transformation, id_step, "preserve_memory", isMemoryPreservationActive() );
       rep.saveStepAttribute( id_transformation, id_step, "sorted_list", isUsingSortedList() );
       rep.saveStepAttribute( id_transformation, id_step, "integer_pair", isUsingIntegerPair() );
+      rep.saveStepAttribute( id_transformation, id_step, "binary_index", isUsingBinaryIndex() );
+      rep.saveStepAttribute( id_transformation, id_step, "range_lookup", isRangeLookup() );
 
       for ( int i = 0; i < getKeystream().length; i++ ) {
         rep.saveStepAttribute( id_transformation, id_step, i, "lookup_key_name", getKeystream()[i] );
@@ -608,4 +624,35 @@ public class StreamLookupMeta extends BaseStepMeta implements StepMetaInterface
   public void setUsingIntegerPair( boolean usingIntegerPair ) {
     this.usingIntegerPair = usingIntegerPair;
   }
+
+  /**
+   * @return true if the lookup data is kept in a compact binary hash index outside of the Java heap
+   */
+  public boolean isUsingBinaryIndex() {
+    return usingBinaryIndex;
+  }
+
+  /**
+   * @param usingBinaryIndex
+   *          true to keep the lookup data in a compact binary hash index outside of the Java heap
+   */
+  public void setUsingBinaryIndex( boolean usingBinaryIndex ) {
+    this.usingBinaryIndex = usingBinaryIndex;
+  }
+
+  /**
+   * @return true if the last key matches the lookup row with the nearest lower or equal value. The other keys have to
+   *         match exactly. A range lookup always uses the binary hash index.
+   */
+  public boolean isRangeLookup() {
+    return rangeLookup;
+  }
+
+  /**
+   * @param rangeLookup
+   *          true if the last key matches the lookup row with the nearest lower or equal value
+   */
+  public void setRangeLookup( boolean rangeLookup ) {
+    this.rangeLookup = rangeLookup;
+  }
 }
@@ -371,25 +371,20 @@ public class SynchronizeAfterMerge extends BaseStep implements StepInterface {
         //
         if ( commitCounter > 0 && ( commitCounter % data.commitSize ) == 0 ) {
           if ( data.batchMode ) {
-            try {
-              if ( performInsert ) {
-                data.insertStatement.executeBatch();
-                data.db.commit();
-                data.insertStatement.clearBatch();
-              } else if ( performUpdate ) {
-                data.updateStatement.executeBatch();
-                data.db.commit();
-                data.updateStatement.clearBatch();
-              } else if ( performDelete ) {
-                data.deleteStatement.executeBatch();
-                data.db.commit();
-                data.deleteStatement.clearBatch();
-              }
-            } catch ( SQLException ex ) {
-              throw Database.createKettleDatabaseBatchException( BaseMessages.getString(
-                  PKG, "SynchronizeAfterMerge.Error.UpdatingBatch" ), ex );
-            } catch ( Exception ex ) {
-              throw new KettleDatabaseException( "Unexpected error inserting row", ex );
+            // Database.executeBatch() also sends the inserted rows it buffered to insert several rows at a time
+            //
+            if ( performInsert ) {
+              data.db.executeBatch( data.insertStatement );
+              data.db.commit();
+              data.db.clearBatch( data.insertStatement );
+            } else if ( performUpdate ) {
+              data.db.executeBatch( data.updateStatement );
+              data.db.commit();
+              data.db.clearBatch( data.updateStatement );
+            } else if ( performDelete ) {
+              data.db.executeBatch( data.deleteStatement );
+              data.db.commit();
+              data.db.clearBatch( data.deleteStatement );
             }
           } else {
             // insertRow normal commit
@@ -0,0 +1,382 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2015 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.tableoutput;
+
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.pentaho.di.core.database.Database;
+import org.pentaho.di.core.exception.KettleDatabaseException;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.RowMetaInterface;
+
+/**
+ * Inserts rows into one table over several database connections at the same time. The rows are gathered in batches
+ * which are handed out round-robin to the connections, every connection is served by its own writer thread. The batch
+ * size can be tuned on the fly based on the time it takes to execute a batch.<br>
+ * <br>
+ * A connection commits after every batch or, in single transaction mode, after a number of batches. The output rows of
+ * a batch are only passed on once its rows are committed and always in the order they were added.
+ *
+ * @since 5.4
+ */
+class ParallelTableWriter {
+
+  /** The number of batches that can wait for a writer thread */
+  private static final int QUEUE_SIZE = 2;
+
+  private static final Batch END_OF_DATA = new Batch( 0 );
+
+  static class Batch {
+    private final List<Object[]> insertRows;
+    private final List<Object[]> outputRows;
+    private volatile boolean committed;
+
+    Batch( int size ) {
+      insertRows = new ArrayList<Object[]>( size );
+      outputRows = new ArrayList<Object[]>( size );
+    }
+
+    int size() {
+      return insertRows.size();
+    }
+  }
+
+  /**
+   * Adapts the batch size to the execution time of the batches: a batch that executes quickly gets bigger, a slow one
+   * gets smaller. The size stays between a fraction and a multiple of the initial size.
+   */
+  static class BatchSizeTuner {
+    static final long TARGET_MILLIS = 500L;
+    static final int RANGE = 8;
+
+    private final int minimumSize;
+    private final int maximumSize;
+    private volatile int batchSize;
+
+    BatchSizeTuner( int initialSize ) {
+      batchSize = Math.max( 1, initialSize );
+      minimumSize = Math.max( 1, batchSize / RANGE );
+      maximumSize = batchSize > Integer.MAX_VALUE / RANGE ? Integer.MAX_VALUE : batchSize * RANGE;
+    }
+
+    int getBatchSize() {
+      return batchSize;
+    }
+
+    /**
+     * @param rows
+     *          the number of rows in the executed batch
+     * @param nanos
+     *          the time it took to execute the batch
+     */
+    synchronized void executed( int rows, long nanos ) {
+      // Only full batches say something about the batch size
+      if ( rows < batchSize ) {
+        return;
+      }
+      long millis = nanos / 1000000L;
+      if ( millis < TARGET_MILLIS / 2 && batchSize < maximumSize ) {
+        batchSize = (int) Math.min( maximumSize, batchSize * 2L );
+      } else if ( millis > TARGET_MILLIS * 2 && batchSize > minimumSize ) {
+        batchSize = Math.max( minimumSize, batchSize / 2 );
+      }
+    }
+  }
+
+  private class Writer implements Runnable {
+    private final Database db;
+    private final RowMetaInterface rowMeta;
+    private final BlockingQueue<Batch> queue;
+    private final List<Batch> uncommitted;
+    private PreparedStatement statement;
+
+    Writer( Database db ) {
+      this.db = db;
+      // The value metadata caches its date and number formats, which can't be shared between threads
+      rowMeta = insertRowMeta.clone();
+      queue = new ArrayBlockingQueue<Batch>( QUEUE_SIZE + 1 );
+      uncommitted = new ArrayList<Batch>();
+    }
+
+    public void run() {
+      try {
+        while ( true ) {
+          Batch batch = queue.take();
+          if ( batch == END_OF_DATA ) {
+            if ( error == null && !uncommitted.isEmpty() ) {
+              commit();
+            }
+            return;
+          }
+          // After an error we keep on taking batches to not block the step thread
+          if ( error == null ) {
+            write( batch );
+          }
+        }
+      } catch ( InterruptedException e ) {
+        setError( e );
+      } catch ( Exception e ) {
+        setError( e );
+        // Drain the queue until the end
+        try {
+          while ( queue.take() != END_OF_DATA ) {
+            // Skip
+          }
+        } catch ( InterruptedException ie ) {
+          // Stopping anyway
+        }
+      }
+    }
+
+    private void write( Batch batch ) throws KettleException {
+      if ( statement == null ) {
+        statement = db.prepareSQL( db.getInsertStatement( schemaName, tableName, rowMeta ) );
+      }
+      boolean useBatch = db.getUseBatchInsert( true );
+      long start = System.nanoTime();
+      for ( Object[] row : batch.insertRows ) {
+        db.setValues( rowMeta, row, statement );
+        db.insertRow( statement, true, false );
+      }
+      if ( useBatch ) {
+        db.executeBatch( statement );
+        db.clearBatch( statement );
+      }
+      if ( tuner != null ) {
+        tuner.executed( batch.size(), System.nanoTime() - start );
+      }
+
+      uncommitted.add( batch );
+      if ( uncommitted.size() >= batchesPerTransaction ) {
+        commit();
+      }
+    }
+
+    private void commit() throws KettleDatabaseException {
+      db.commit( true );
+      for ( Batch batch : uncommitted ) {
+        batch.committed = true;
+      }
+      uncommitted.clear();
+    }
+
+    private void close() {
+      if ( statement != null ) {
+        try {
+          db.closePreparedStatement( statement );
+        } catch ( KettleDatabaseException e ) {
+          // The connection is closed by the step
+        }
+        statement = null;
+      }
+    }
+  }
+
+  private final String schemaName;
+  private final String tableName;
+  private final RowMetaInterface insertRowMeta;
+  private final int initialBatchSize;
+  private final int batchesPerTransaction;
+  private final BatchSizeTuner tuner;
+
+  private final List<Writer> writers;
+  private final List<Thread> threads;
+  private final LinkedList<Batch> pending;
+
+  private Batch batch;
+  private int nextWriter;
+  private volatile Throwable error;
+  private boolean finished;
+
+  /**
+   * @param databases
+   *          the connected databases to write to, one writer thread is started per database
+   * @param schemaName
+   *          the schema of the table
+   * @param tableName
+   *          the table to insert into
+   * @param insertRowMeta
+   *          the metadata of the rows to insert
+   * @param batchSize
+   *          the (initial) number of rows per batch
+   * @param autoTune
+   *          true to adapt the batch size to the execution time of the batches
+   * @param batchesPerTransaction
+   *          the number of batches a connection executes before it commits
+   * @param threadName
+   *          the name prefix of the writer threads
+   */
+  ParallelTableWriter( List<Database> databases, String schemaName, String tableName,
+    RowMetaInterface insertRowMeta, int batchSize, boolean autoTune, int batchesPerTransaction,
+    String threadName ) {
+    this.schemaName = schemaName;
+    this.tableName = tableName;
+    this.insertRowMeta = insertRowMeta;
+    this.initialBatchSize = Math.max( 1, batchSize );
+    this.batchesPerTransaction = Math.max( 1, batchesPerTransaction );
+    this.tuner = autoTune ? new BatchSizeTuner( initialBatchSize ) : null;
+
+    writers = new ArrayList<Writer>( databases.size() );
+    threads = new ArrayList<Thread>( databases.size() );
+    pending = new LinkedList<Batch>();
+
+    for ( int i = 0; i < databases.size(); i++ ) {
+      Writer writer = new Writer( databases.get( i ) );
+      Thread thread = new Thread( writer, threadName + " writer " + ( i + 1 ) );
+      thread.setDaemon( true );
+      writers.add( writer );
+      threads.add( thread );
+      thread.start();
+    }
+  }
+
+  /**
+   * @return the current number of rows per batch
+   */
+  int getBatchSize() {
+    return tuner != null ? tuner.getBatchSize() : initialBatchSize;
+  }
+
+  /**
+   * Adds a row to the current batch, the batch is handed to the next writer once it's full. This blocks when all
+   * writers are busy.
+   *
+   * @param insertRow
+   *          the values to insert
+   * @param outputRow
+   *          the row to pass on once the row is committed
+   * @param committedRows
+   *          the output rows of the committed batches are added to this list, in order
+   * @throws KettleException
+   *           in case one of the writers failed
+   */
+  void addRow( Object[] insertRow, Object[] outputRow, List<Object[]> committedRows ) throws KettleException {
+    checkError();
+    if ( batch == null ) {
+      batch = new Batch( getBatchSize() );
+    }
+    batch.insertRows.add( insertRow );
+    batch.outputRows.add( outputRow );
+    if ( batch.size() >= getBatchSize() ) {
+      handOver();
+    }
+    getCommittedRows( committedRows );
+  }
+
+  private void handOver() throws KettleException {
+    Writer writer = writers.get( nextWriter );
+    nextWriter = ( nextWriter + 1 ) % writers.size();
+    pending.add( batch );
+    try {
+      writer.queue.put( batch );
+    } catch ( InterruptedException e ) {
+      throw new KettleException( "Interrupted while handing rows to a writer", e );
+    }
+    batch = null;
+  }
+
+  private void getCommittedRows( List<Object[]> committedRows ) {
+    while ( !pending.isEmpty() && pending.getFirst().committed ) {
+      committedRows.addAll( pending.removeFirst().outputRows );
+    }
+  }
+
+  /**
+   * Writes the last rows, commits and waits for the writers to finish.
+   *
+   * @param committedRows
+   *          the output rows that weren't passed on yet are added to this list, in order
+   * @throws KettleException
+   *           in case one of the writers failed
+   */
+  void finish( List<Object[]> committedRows ) throws KettleException {
+    if ( finished ) {
+      return;
+    }
+    if ( batch != null && batch.size() > 0 ) {
+      checkError();
+      handOver();
+    }
+    stopWriters();
+    checkError();
+    getCommittedRows( committedRows );
+  }
+
+  /**
+   * Stops the writers without committing the rows they didn't commit yet, the caller rolls back the connections.
+   */
+  void cancel() {
+    if ( finished ) {
+      return;
+    }
+    setError( new KettleException( "Writing was cancelled" ) );
+    try {
+      stopWriters();
+    } catch ( KettleException e ) {
+      // Cancelling anyway
+    }
+  }
+
+  private void stopWriters() throws KettleException {
+    finished = true;
+    try {
+      for ( Writer writer : writers ) {
+        writer.queue.put( END_OF_DATA );
+      }
+      for ( Thread thread : threads ) {
+        thread.join();
+      }
+    } catch ( InterruptedException e ) {
+      throw new KettleException( "Interrupted while waiting for the writers", e );
+    } finally {
+      for ( Writer writer : writers ) {
+        writer.close();
+      }
+    }
+  }
+
+  private synchronized void setError( Throwable e ) {
+    if ( error == null ) {
+      error = e;
+    }
+  }
+
+  private void checkError() throws KettleException {
+    Throwable e = error;
+    if ( e != null ) {
+      if ( e instanceof KettleException ) {
+        throw new KettleException( "Error inserting rows into table [" + tableName + "]", e );
+      }
+      throw new KettleException( "Unexpected error inserting rows into table [" + tableName + "]", e );
+    }
+  }
+
+  boolean isFinished() {
+    return finished;
+  }
+}
@@ -25,6 +25,7 @@ package org.pentaho.di.trans.steps.tableoutput;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
@@ -146,6 +147,11 @@ public class TableOutput extends BaseStep implements StepInterface {
       return null;
     }
 
+    if ( data.writerDatabases != null ) {
+      writeToParallelWriters( r );
+      return null;
+    }
+
     PreparedStatement insertStatement = null;
     Object[] insertRowData;
     Object[] outputRowData = r;
@@ -281,15 +287,9 @@ public class TableOutput extends BaseStep implements StepInterface {
 
       if ( ( data.commitSize > 0 ) && ( ( commitCounter % data.commitSize ) == 0 ) ) {
         if ( data.db.getUseBatchInsert( data.batchMode ) ) {
-          try {
-            insertStatement.executeBatch();
-            data.db.commit();
-            insertStatement.clearBatch();
-          } catch ( SQLException ex ) {
-            throw Database.createKettleDatabaseBatchException( "Error updating batch", ex );
-          } catch ( Exception ex ) {
-            throw new KettleDatabaseException( "Unexpected error inserting row", ex );
-          }
+          data.db.executeBatch( insertStatement );
+          data.db.commit();
+          data.db.clearBatch( insertStatement );
         } else {
           // insertRow normal commit
           data.db.commit();
@@ -422,6 +422,103 @@ public class TableOutput extends BaseStep implements StepInterface {
     return outputRowData;
   }
 
+  /**
+   * Hands the row to the parallel writers. The rows of the committed batches are passed on, in order.
+   */
+  private void writeToParallelWriters( Object[] r ) throws KettleException {
+    if ( data.parallelWriter == null ) {
+      int batchesPerCommit = Const.toInt( environmentSubstitute( meta.getBatchesPerCommit() ), 1 );
+      data.parallelWriter =
+        new ParallelTableWriter( data.writerDatabases, environmentSubstitute( meta.getSchemaName() ),
+          data.tableName, data.insertRowMeta, data.commitSize, meta.isAutoTuneBatchSize(), batchesPerCommit,
+          getStepname() + "." + getCopy() );
+    }
+
+    Object[] insertRowData = r;
+    if ( meta.specifyFields() ) {
+      insertRowData = new Object[data.valuenrs.length];
+      for ( int idx = 0; idx < data.valuenrs.length; idx++ ) {
+        insertRowData[idx] = r[data.valuenrs[idx]];
+      }
+    }
+
+    data.parallelWriter.addRow( insertRowData, r, data.committedRows );
+    putCommittedRows();
+  }
+
+  private void putCommittedRows() throws KettleStepException {
+    for ( Object[] row : data.committedRows ) {
+      putRow( data.outputRowMeta, row );
+      incrementLinesOutput();
+    }
+    data.committedRows.clear();
+  }
+
+  /**
+   * Opens the extra connections for the parallel writers if they can be used. Rows that fail need to go to the error
+   * handling or need to be ignored one by one, the table name needs to be fixed and batches need to be supported.
+   */
+  private void connectParallelWriters() throws KettleException {
+    int nrWriters = Const.toInt( environmentSubstitute( meta.getNumberOfWriters() ), 1 );
+    if ( nrWriters <= 1 ) {
+      return;
+    }
+    if ( !data.batchMode || getStepMeta().isDoingErrorHandling() || meta.ignoreErrors()
+      || meta.isPartitioningEnabled() || meta.isTableNameInField() || !data.db.getUseBatchInsert( true ) ) {
+      logBasic( BaseMessages.getString( PKG, "TableOutput.Log.ParallelWritersNotPossible", nrWriters ) );
+      return;
+    }
+
+    data.writerDatabases = new ArrayList<Database>( nrWriters );
+    data.writerDatabases.add( data.db );
+    for ( int i = 1; i < nrWriters; i++ ) {
+      Database db = new Database( this, meta.getDatabaseMeta() );
+      db.shareVariablesWith( this );
+      // Add it before connecting, dispose() disconnects what's in the list
+      data.writerDatabases.add( db );
+      db.connect( getPartitionID() );
+      db.setCommit( data.commitSize );
+    }
+    if ( log.isBasic() ) {
+      logBasic( BaseMessages.getString( PKG, "TableOutput.Log.ParallelWriters", nrWriters ) );
+    }
+  }
+
+  /**
+   * Commits the rows left in the parallel writers and passes them on. Nothing is committed after an error.
+   */
+  private void finishParallelWriters() {
+    try {
+      if ( data.parallelWriter != null ) {
+        if ( getErrors() > 0 ) {
+          data.parallelWriter.cancel();
+        } else {
+          data.parallelWriter.finish( data.committedRows );
+          putCommittedRows();
+        }
+      }
+    } catch ( KettleException e ) {
+      logError( "Unexpected error committing the parallel writers.", e );
+      setErrors( 1 );
+      stopAll();
+    } finally {
+      // The first connection is db, it's handled by dispose()
+      for ( int i = 1; i < data.writerDatabases.size(); i++ ) {
+        Database db = data.writerDatabases.get( i );
+        if ( getErrors() > 0 ) {
+          try {
+            db.rollback();
+          } catch ( KettleDatabaseException e ) {
+            logError( "Unexpected error rolling back the database connection.", e );
+          }
+        }
+        db.disconnect();
+      }
+      data.writerDatabases = null;
+      data.parallelWriter = null;
+    }
+  }
+
   public boolean isRowLevel() {
     return log.isRowLevel();
   }
@@ -534,6 +631,8 @@ public class TableOutput extends BaseStep implements StepInterface {
         }
         data.db.setCommit( data.commitSize );
 
+        connectParallelWriters();
+
         if ( !meta.isPartitioningEnabled() && !meta.isTableNameInField() ) {
           data.tableName = environmentSubstitute( meta.getTableName() );
 
@@ -560,6 +659,10 @@ public class TableOutput extends BaseStep implements StepInterface {
     meta = (TableOutputMeta) smi;
     data = (TableOutputData) sdi;
 
+    if ( data.writerDatabases != null ) {
+      finishParallelWriters();
+    }
+
     if ( data.db != null ) {
       try {
         for ( String schemaTable : data.preparedStatements.keySet() ) {
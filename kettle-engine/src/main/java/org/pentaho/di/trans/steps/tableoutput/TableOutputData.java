@@ -78,6 +78,14 @@ public class TableOutputData extends BaseStepData implements StepDataInterface {
 
   public int commitSize;
 
+  /** The connections of the parallel writers, the first one is db. Null if there's only one writer. */
+  public List<Database> writerDatabases;
+
+  ParallelTableWriter parallelWriter;
+
+  /** The output rows of the batches the parallel writers committed */
+  public List<Object[]> committedRows;
+
   public TableOutputData() {
     super();
 
@@ -91,6 +99,7 @@ public class TableOutputData extends BaseStepData implements StepDataInterface {
     indexOfTableNameField = -1;
 
     batchBuffer = new ArrayList<Object[]>();
+    committedRows = new ArrayList<Object[]>();
     commitCounterMap = new HashMap<String, Integer>();
 
     releaseSavepoint = true;
@@ -98,6 +98,15 @@ public class TableOutputMeta extends BaseStepMeta implements StepMetaInterface,
   /** Fields in the table to insert */
   private String[] fieldDatabase;
 
+  /** The number of connections to insert over in parallel */
+  private String numberOfWriters;
+
+  /** Adapt the batch size to the time it takes to execute a batch */
+  private boolean autoTuneBatchSize;
+
+  /** The number of batches a parallel writer executes in one transaction */
+  private String batchesPerCommit;
+
   /**
    * @return Returns the generatedKeyField.
    */
@@ -240,6 +249,8 @@ public class TableOutputMeta extends BaseStepMeta implements StepMetaInterface,
     super(); // allocate BaseStepMeta
     useBatchUpdate = true;
     commitSize = "1000";
+    numberOfWriters = "1";
+    batchesPerCommit = "1";
 
     fieldStream = new String[0];
     fieldDatabase = new String[0];
@@ -393,6 +404,51 @@ public class TableOutputMeta extends BaseStepMeta implements StepMetaInterface,
     return specifyFields;
   }
 
+  /**
+   * @return the number of connections to insert over in parallel
+   */
+  public String getNumberOfWriters() {
+    return numberOfWriters;
+  }
+
+  /**
+   * @param numberOfWriters
+   *          the number of connections to insert over in parallel
+   */
+  public void setNumberOfWriters( String numberOfWriters ) {
+    this.numberOfWriters = numberOfWriters;
+  }
+
+  /**
+   * @return true if the parallel writers adapt the batch size to the time it takes to execute a batch
+   */
+  public boolean isAutoTuneBatchSize() {
+    return autoTuneBatchSize;
+  }
+
+  /**
+   * @param autoTuneBatchSize
+   *          true if the parallel writers adapt the batch size to the time it takes to execute a batch
+   */
+  public void setAutoTuneBatchSize( boolean autoTuneBatchSize ) {
+    this.autoTuneBatchSize = autoTuneBatchSize;
+  }
+
+  /**
+   * @return the number of batches a parallel writer executes in one transaction
+   */
+  public String getBatchesPerCommit() {
+    return batchesPerCommit;
+  }
+
+  /**
+   * @param batchesPerCommit
+   *          the number of batches a parallel writer executes in one transaction
+   */
+  public void setBatchesPerCommit( String batchesPerCommit ) {
+    this.batchesPerCommit = batchesPerCommit;
+  }
+
   /**
    * @param useBatchUpdate
    *          The useBatchUpdate flag to set.
@@ -434,6 +490,10 @@ public class TableOutputMeta extends BaseStepMeta implements StepMetaInterface,
       returningGeneratedKeys = "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "return_keys" ) );
       generatedKeyField = XMLHandler.getTagValue( stepnode, "return_field" );
 
+      numberOfWriters = Const.NVL( XMLHandler.getTagValue( stepnode, "number_of_writers" ), "1" );
+      autoTuneBatchSize = "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "auto_tune_batch_size" ) );
+      batchesPerCommit = Const.NVL( XMLHandler.getTagValue( stepnode, "batches_per_commit" ), "1" );
+
       Node fields = XMLHandler.getSubNode( stepnode, "fields" );
       int nrRows = XMLHandler.countNodes( fields, "field" );
 
@@ -454,6 +514,9 @@ public class TableOutputMeta extends BaseStepMeta implements StepMetaInterface,
     databaseMeta = null;
     tableName = "";
     commitSize = "1000";
+    numberOfWriters = "1";
+    autoTuneBatchSize = false;
+    batchesPerCommit = "1";
 
     partitioningEnabled = false;
     partitioningMonthly = true;
@@ -490,6 +553,10 @@ public class TableOutputMeta extends BaseStepMeta implements StepMetaInterface,
     retval.append( "    " + XMLHandler.addTagValue( "return_keys", returningGeneratedKeys ) );
     retval.append( "    " + XMLHandler.addTagValue( "return_field", generatedKeyField ) );
 
+    retval.append( "    " + XMLHandler.addTagValue( "number_of_writers", numberOfWriters ) );
+    retval.append( "    " + XMLHandler.addTagValue( "auto_tune_batch_size", autoTuneBatchSize ) );
+    retval.append( "    " + XMLHandler.addTagValue( "batches_per_commit", batchesPerCommit ) );
+
     retval.append( "    <fields>" ).append( Const.CR );
 
     for ( int i = 0; i < fieldDatabase.length; i++ ) {
@@ -526,6 +593,10 @@ public class TableOutputMeta extends BaseStepMeta implements StepMetaInterface,
       returningGeneratedKeys = rep.getStepAttributeBoolean( id_step, "return_keys" );
       generatedKeyField = rep.getStepAttributeString( id_step, "return_field" );
 
+      numberOfWriters = Const.NVL( rep.getStepAttributeString( id_step, "number_of_writers" ), "1" );
+      autoTuneBatchSize = rep.getStepAttributeBoolean( id_step, "auto_tune_batch_size" );
+      batchesPerCommit = Const.NVL( rep.getStepAttributeString( id_step, "batches_per_commit" ), "1" );
+
       int nrCols = rep.countNrStepAttributes( id_step, "column_name" );
       int nrStreams = rep.countNrStepAttributes( id_step, "stream_name" );
 
@@ -564,6 +635,10 @@ public class TableOutputMeta extends BaseStepMeta implements StepMetaInterface,
       rep.saveStepAttribute( id_transformation, id_step, "return_keys", returningGeneratedKeys );
       rep.saveStepAttribute( id_transformation, id_step, "return_field", generatedKeyField );
 
+      rep.saveStepAttribute( id_transformation, id_step, "number_of_writers", numberOfWriters );
+      rep.saveStepAttribute( id_transformation, id_step, "auto_tune_batch_size", autoTuneBatchSize );
+      rep.saveStepAttribute( id_transformation, id_step, "batches_per_commit", batchesPerCommit );
+
       int nrRows = ( fieldDatabase.length < fieldStream.length ? fieldStream.length : fieldDatabase.length );
       for ( int idx = 0; idx < nrRows; idx++ ) {
         String columnName = ( idx < fieldDatabase.length ? fieldDatabase[idx] : "" );
@@ -61,6 +61,10 @@ public class TableOutputMetaInjection implements StepMetaInjectionInterface {
       RETURN_AUTO_GENERATED_KEY( ValueMetaInterface.TYPE_STRING, "Return auto-generated key? (Y/N)" ),
       AUTO_GENERATED_KEY_FIELD( ValueMetaInterface.TYPE_STRING, "Name of auto-generated key field" ),
 
+      NUMBER_OF_WRITERS( ValueMetaInterface.TYPE_STRING, "Number of connections to insert over in parallel" ),
+      AUTO_TUNE_BATCH_SIZE( ValueMetaInterface.TYPE_STRING, "Auto-tune the batch size of parallel writers? (Y/N)" ),
+      BATCHES_PER_COMMIT( ValueMetaInterface.TYPE_STRING, "Number of batches per transaction of parallel writers" ),
+
       DATABASE_FIELDS( ValueMetaInterface.TYPE_NONE, "The database fields" ),
       DATABASE_FIELD( ValueMetaInterface.TYPE_NONE, "One database field" ),
       DATABASE_FIELDNAME( ValueMetaInterface.TYPE_STRING, "Table field" ),
@@ -109,7 +113,8 @@ public class TableOutputMetaInjection implements StepMetaInjectionInterface {
         Entry.SPECIFY_DATABASE_FIELDS, Entry.IGNORE_INSERT_ERRORS, Entry.USE_BATCH_UPDATE,
         Entry.PARTITION_OVER_TABLES, Entry.PARTITIONING_FIELD, Entry.PARTITION_DATA_PER,
         Entry.TABLE_NAME_DEFINED_IN_FIELD, Entry.TABLE_NAME_FIELD, Entry.STORE_TABLE_NAME,
-        Entry.RETURN_AUTO_GENERATED_KEY, Entry.AUTO_GENERATED_KEY_FIELD, };
+        Entry.RETURN_AUTO_GENERATED_KEY, Entry.AUTO_GENERATED_KEY_FIELD, Entry.NUMBER_OF_WRITERS,
+        Entry.AUTO_TUNE_BATCH_SIZE, Entry.BATCHES_PER_COMMIT, };
     for ( Entry topEntry : topEntries ) {
       all.add( new StepInjectionMetaEntry( topEntry.name(), topEntry.getValueType(), topEntry.getDescription() ) );
     }
@@ -228,6 +233,15 @@ public class TableOutputMetaInjection implements StepMetaInjectionInterface {
         case AUTO_GENERATED_KEY_FIELD:
           meta.setGeneratedKeyField( lookValue );
           break;
+        case NUMBER_OF_WRITERS:
+          meta.setNumberOfWriters( lookValue );
+          break;
+        case AUTO_TUNE_BATCH_SIZE:
+          meta.setAutoTuneBatchSize( "Y".equalsIgnoreCase( lookValue ) );
+          break;
+        case BATCHES_PER_COMMIT:
+          meta.setBatchesPerCommit( lookValue );
+          break;
         default:
           break;
       }
@@ -265,6 +279,10 @@ public class TableOutputMetaInjection implements StepMetaInjectionInterface {
     list.add( StepInjectionUtil.getEntry( Entry.RETURN_AUTO_GENERATED_KEY, meta.isReturningGeneratedKeys() ) );
     list.add( StepInjectionUtil.getEntry( Entry.AUTO_GENERATED_KEY_FIELD, meta.getGeneratedKeyField() ) );
 
+    list.add( StepInjectionUtil.getEntry( Entry.NUMBER_OF_WRITERS, meta.getNumberOfWriters() ) );
+    list.add( StepInjectionUtil.getEntry( Entry.AUTO_TUNE_BATCH_SIZE, meta.isAutoTuneBatchSize() ) );
+    list.add( StepInjectionUtil.getEntry( Entry.BATCHES_PER_COMMIT, meta.getBatchesPerCommit() ) );
+
     StepInjectionMetaEntry fieldsEntry = StepInjectionUtil.getEntry( Entry.DATABASE_FIELDS );
     list.add( fieldsEntry );
     for ( int i = 0; i < meta.getFieldDatabase().length; i++ ) {
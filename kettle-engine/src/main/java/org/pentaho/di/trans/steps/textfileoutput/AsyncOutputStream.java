@@ -0,0 +1,337 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2015 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.textfileoutput;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Collects the output of the step in large blocks and writes them to the target stream on a background thread, so
+ * formatting the rows and writing to disk happen at the same time. While one block is being written, the step fills
+ * the next one.<br>
+ * <br>
+ * When a compression pool is given, every block is compressed as a separate gzip member on that pool, like pigz does.
+ * The members are written in the order of the blocks, the concatenated members form a regular gzip file.
+ *
+ * @since 5.4
+ */
+class AsyncOutputStream extends OutputStream {
+
+  static final int BLOCK_SIZE = 1024 * 1024;
+
+  private static final long POLL_MILLIS = 100L;
+
+  /**
+   * Tells the writer thread that there are no more blocks
+   */
+  private static final Future<Block> END = new FutureTask<Block>( new Callable<Block>() {
+    public Block call() {
+      return null;
+    }
+  } );
+
+  private static class Block {
+    private final byte[] data;
+    private final int length;
+    private final byte[] buffer;
+
+    /**
+     * @param data
+     *          the bytes to write
+     * @param length
+     *          the number of bytes to write
+     * @param buffer
+     *          the buffer to reuse once the data is written or null
+     */
+    Block( byte[] data, int length, byte[] buffer ) {
+      this.data = data;
+      this.length = length;
+      this.buffer = buffer;
+    }
+  }
+
+  private final OutputStream target;
+  private final ExecutorService compressor;
+  private final int maxBuffers;
+
+  private final BlockingQueue<byte[]> freeBuffers;
+  private final BlockingQueue<Future<Block>> blocks;
+  private final Thread writerThread;
+
+  private byte[] buffer;
+  private int count;
+  private int nrBuffers;
+  private boolean closed;
+
+  private long submitted; // only used by the step thread
+  private long written; // guarded by this
+  private volatile Throwable failure;
+
+  /**
+   * @param target
+   *          the stream to write to
+   * @param compressor
+   *          the threads to compress the blocks with or null to write the blocks as they are
+   * @param nrCompressThreads
+   *          the number of threads of the compression pool
+   * @param threadName
+   *          the name of the writer thread
+   */
+  AsyncOutputStream( OutputStream target, ExecutorService compressor, int nrCompressThreads, String threadName ) {
+    this.target = target;
+    this.compressor = compressor;
+    // Double buffering, plus a block for every thread that's compressing
+    //
+    this.maxBuffers = compressor == null ? 2 : 2 + Math.max( 1, nrCompressThreads );
+    this.freeBuffers = new LinkedBlockingQueue<byte[]>();
+    this.blocks = new LinkedBlockingQueue<Future<Block>>( maxBuffers );
+
+    writerThread = new Thread( new Runnable() {
+      public void run() {
+        writeBlocks();
+      }
+    }, threadName );
+    writerThread.setDaemon( true );
+    writerThread.start();
+  }
+
+  @Override
+  public void write( int b ) throws IOException {
+    if ( buffer == null || count == buffer.length ) {
+      nextBuffer();
+    }
+    buffer[count++] = (byte) b;
+  }
+
+  @Override
+  public void write( byte[] b, int off, int len ) throws IOException {
+    while ( len > 0 ) {
+      if ( buffer == null || count == buffer.length ) {
+        nextBuffer();
+      }
+      int size = Math.min( len, buffer.length - count );
+      System.arraycopy( b, off, buffer, count, size );
+      count += size;
+      off += size;
+      len -= size;
+    }
+  }
+
+  /**
+   * Waits until all the data is written and flushes the target stream.
+   */
+  @Override
+  public void flush() throws IOException {
+    checkOpen();
+    submitBuffer();
+    waitUntilWritten();
+    target.flush();
+  }
+
+  /**
+   * Writes the remaining data, stops the writer thread and closes the target stream.
+   */
+  @Override
+  public void close() throws IOException {
+    if ( closed ) {
+      return;
+    }
+    try {
+      submitBuffer();
+      waitUntilWritten();
+    } finally {
+      closed = true;
+      try {
+        boolean ended = false;
+        while ( !ended && writerThread.isAlive() ) {
+          ended = blocks.offer( END, POLL_MILLIS, TimeUnit.MILLISECONDS );
+        }
+        writerThread.join();
+      } catch ( InterruptedException e ) {
+        writerThread.interrupt();
+      }
+      target.close();
+    }
+  }
+
+  private void nextBuffer() throws IOException {
+    checkOpen();
+    submitBuffer();
+    buffer = freeBuffers.poll();
+    if ( buffer == null ) {
+      if ( nrBuffers < maxBuffers ) {
+        buffer = new byte[BLOCK_SIZE];
+        nrBuffers++;
+      } else {
+        try {
+          while ( buffer == null ) {
+            checkFailure();
+            buffer = freeBuffers.poll( POLL_MILLIS, TimeUnit.MILLISECONDS );
+          }
+        } catch ( InterruptedException e ) {
+          throw new InterruptedIOException();
+        }
+      }
+    }
+    count = 0;
+  }
+
+  /**
+   * Hands the current buffer to the writer thread, compressing it first if needed.
+   */
+  private void submitBuffer() throws IOException {
+    checkFailure();
+    if ( buffer == null || count == 0 ) {
+      return;
+    }
+    final byte[] data = buffer;
+    final int length = count;
+    buffer = null;
+    count = 0;
+
+    Future<Block> block;
+    if ( compressor == null ) {
+      FutureTask<Block> task = new FutureTask<Block>( new Callable<Block>() {
+        public Block call() {
+          return new Block( data, length, data );
+        }
+      } );
+      task.run();
+      block = task;
+    } else {
+      block = compressor.submit( new Callable<Block>() {
+        public Block call() throws IOException {
+          try {
+            byte[] member = gzip( data, length );
+            return new Block( member, member.length, null );
+          } finally {
+            freeBuffers.offer( data );
+          }
+        }
+      } );
+    }
+
+    try {
+      while ( !blocks.offer( block, POLL_MILLIS, TimeUnit.MILLISECONDS ) ) {
+        checkFailure();
+      }
+    } catch ( InterruptedException e ) {
+      throw new InterruptedIOException();
+    }
+    submitted++;
+  }
+
+  private synchronized void waitUntilWritten() throws IOException {
+    try {
+      while ( written < submitted && failure == null ) {
+        wait( POLL_MILLIS );
+      }
+    } catch ( InterruptedException e ) {
+      throw new InterruptedIOException();
+    }
+    checkFailure();
+  }
+
+  private synchronized void blockWritten() {
+    written++;
+    notifyAll();
+  }
+
+  /**
+   * Runs on the writer thread. After a failure the blocks are still taken from the queue, so the step thread never
+   * waits for a writer that stopped. The step thread reports the failure.
+   */
+  private void writeBlocks() {
+    try {
+      Future<Block> future;
+      while ( ( future = blocks.take() ) != END ) {
+        byte[] reuse = null;
+        try {
+          Block block = future.get();
+          reuse = block.buffer;
+          if ( failure == null ) {
+            target.write( block.data, 0, block.length );
+          }
+        } catch ( ExecutionException e ) {
+          fail( e.getCause() );
+        } catch ( InterruptedException e ) {
+          throw e;
+        } catch ( Exception e ) {
+          fail( e );
+        } finally {
+          if ( reuse != null ) {
+            freeBuffers.offer( reuse );
+          }
+        }
+        blockWritten();
+      }
+    } catch ( InterruptedException e ) {
+      fail( e );
+    }
+  }
+
+  private synchronized void fail( Throwable e ) {
+    if ( failure == null ) {
+      failure = e;
+    }
+    notifyAll();
+  }
+
+  private void checkOpen() throws IOException {
+    if ( closed ) {
+      throw new IOException( "Stream closed" );
+    }
+  }
+
+  private void checkFailure() throws IOException {
+    Throwable e = failure;
+    if ( e instanceof IOException ) {
+      throw (IOException) e;
+    }
+    if ( e != null ) {
+      throw new IOException( e );
+    }
+  }
+
+  /**
+   * Compresses a block of data into a complete gzip member.
+   */
+  static byte[] gzip( byte[] data, int length ) throws IOException {
+    ByteArrayOutputStream member = new ByteArrayOutputStream( length / 4 + 64 );
+    GZIPOutputStream gzip = new GZIPOutputStream( member, 64 * 1024 );
+    gzip.write( data, 0, length );
+    gzip.close();
+    return member.toByteArray();
+  }
+}
@@ -0,0 +1,206 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2015 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.textfileoutput;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * The output of one partition of a partitioned text file output: the folder of the partition, the file that is
+ * currently open in it and the statistics of everything written to the partition. The data written to this stream goes
+ * to the open file and is counted, so the file can be split once it gets too large.
+ *
+ * @since 5.4
+ */
+class PartitionWriter extends OutputStream {
+
+  /**
+   * The folder name of a null value, the one Hive uses
+   */
+  static final String DEFAULT_PARTITION_NAME = "__HIVE_DEFAULT_PARTITION__";
+
+  private final String path;
+  private final String filename;
+
+  private OutputStream writer;
+  private OutputStream out;
+  private OutputStream fos;
+
+  private int nrFiles;
+  private long fileRows;
+  private long fileBytes;
+  private long rows;
+  private long bytes;
+
+  /**
+   * @param path
+   *          the partition folders, for example country=BE/year=2015
+   * @param filename
+   *          the base name of the files of the partition, including the folders
+   */
+  PartitionWriter( String path, String filename ) {
+    this.path = path;
+    this.filename = filename;
+  }
+
+  /**
+   * Starts writing to a new file of the partition.
+   *
+   * @param writer
+   *          the stream to write the data to
+   * @param out
+   *          the compression stream underneath the writer, closed after the writer is flushed
+   * @param fos
+   *          the file stream underneath, closed last
+   */
+  void open( OutputStream writer, OutputStream out, OutputStream fos ) {
+    this.writer = writer;
+    this.out = out;
+    this.fos = fos;
+    nrFiles++;
+    fileRows = 0L;
+    fileBytes = 0L;
+  }
+
+  boolean isOpen() {
+    return writer != null;
+  }
+
+  /**
+   * @param splitRows
+   *          the maximum number of rows in a file or 0 for no limit
+   * @param splitBytes
+   *          the maximum number of bytes in a file or 0 for no limit
+   * @return true if the open file reached one of the limits
+   */
+  boolean isFull( long splitRows, long splitBytes ) {
+    return ( splitRows > 0 && fileRows >= splitRows ) || ( splitBytes > 0 && fileBytes >= splitBytes );
+  }
+
+  void rowWritten() {
+    fileRows++;
+    rows++;
+  }
+
+  @Override
+  public void write( int b ) throws IOException {
+    writer.write( b );
+    fileBytes++;
+    bytes++;
+  }
+
+  @Override
+  public void write( byte[] b, int off, int len ) throws IOException {
+    writer.write( b, off, len );
+    fileBytes += len;
+    bytes += len;
+  }
+
+  @Override
+  public void flush() throws IOException {
+    if ( writer != null ) {
+      writer.flush();
+    }
+  }
+
+  /**
+   * Closes the open file, the partition can be opened again in a new file.
+   */
+  @Override
+  public void close() throws IOException {
+    if ( writer == null ) {
+      return;
+    }
+    try {
+      writer.flush();
+      if ( out != null ) {
+        out.close();
+      }
+    } finally {
+      writer = null;
+      out = null;
+      if ( fos != null ) {
+        fos.close();
+        fos = null;
+      }
+    }
+  }
+
+  /**
+   * Escapes a value the way Hive does for the name of a partition folder.
+   */
+  static String escapePathName( String value ) {
+    if ( value == null || value.length() == 0 ) {
+      return DEFAULT_PARTITION_NAME;
+    }
+    StringBuilder escaped = null;
+    for ( int i = 0; i < value.length(); i++ ) {
+      char c = value.charAt( i );
+      if ( needsEscaping( c ) ) {
+        if ( escaped == null ) {
+          escaped = new StringBuilder( value.length() + 8 ).append( value, 0, i );
+        }
+        escaped.append( '%' ).append( Character.toUpperCase( Character.forDigit( c >> 4 & 0xF, 16 ) ) ).append(
+          Character.toUpperCase( Character.forDigit( c & 0xF, 16 ) ) );
+      } else if ( escaped != null ) {
+        escaped.append( c );
+      }
+    }
+    return escaped == null ? value : escaped.toString();
+  }
+
+  private static boolean needsEscaping( char c ) {
+    // The characters Hive escapes, plus the dollar sign: the file name undergoes variable substitution
+    //
+    return c < ' ' || c == 0x7F || "\"#%'*/:=?\\{[]^$".indexOf( c ) >= 0;
+  }
+
+  String getPath() {
+    return path;
+  }
+
+  String getFilename() {
+    return filename;
+  }
+
+  /**
+   * @return the number of files written for this partition
+   */
+  int getNrFiles() {
+    return nrFiles;
+  }
+
+  /**
+   * @return the number of rows written to this partition
+   */
+  long getRows() {
+    return rows;
+  }
+
+  /**
+   * @return the number of bytes written to this partition, before compression
+   */
+  long getBytes() {
+    return bytes;
+  }
+}
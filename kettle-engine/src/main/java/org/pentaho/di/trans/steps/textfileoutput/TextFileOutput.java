@@ -29,6 +29,9 @@ import java.io.UnsupportedEncodingException;
 import java.io.Writer;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import org.apache.commons.vfs2.FileObject;
 import org.pentaho.di.core.Const;
@@ -36,6 +39,7 @@ import org.pentaho.di.core.ResultFile;
 import org.pentaho.di.core.WriterOutputStream;
 import org.pentaho.di.core.compress.CompressionProvider;
 import org.pentaho.di.core.compress.CompressionProviderFactory;
+import org.pentaho.di.core.compress.gzip.GZIPCompressionProvider;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleFileException;
 import org.pentaho.di.core.exception.KettleStepException;
@@ -115,6 +119,17 @@ public class TextFileOutput extends BaseStep implements StepInterface {
         data.fileNameMeta = getInputRowMeta().getValueMeta( data.fileNameFieldIndex );
         data.fileName = data.fileNameMeta.getString( r[data.fileNameFieldIndex] );
         setDataWriterForFilename( data.fileName );
+      } else if ( meta.isPartitionedOutput() ) {
+        // Find the partition fields, the files are opened for every row
+        //
+        data.partitionFieldIndexes = new int[meta.getPartitionFields().length];
+        for ( int i = 0; i < data.partitionFieldIndexes.length; i++ ) {
+          data.partitionFieldIndexes[i] = getInputRowMeta().indexOfValue( meta.getPartitionFields()[i] );
+          if ( data.partitionFieldIndexes[i] < 0 ) {
+            throw new KettleStepException( BaseMessages.getString(
+              PKG, "TextFileOutput.Exception.PartitionFieldNotFound", meta.getPartitionFields()[i] ) );
+          }
+        }
       } else if ( meta.isDoNotOpenNewFileInit() && !meta.isFileNameInField() ) {
         // Open a new file here
         //
@@ -126,7 +141,8 @@ public class TextFileOutput extends BaseStep implements StepInterface {
       if ( !meta.isFileAppended() && ( meta.isHeaderEnabled() || meta.isFooterEnabled() ) ) // See if we have to write a
                                                                                             // header-line)
       {
-        if ( !meta.isFileNameInField() && meta.isHeaderEnabled() && data.outputRowMeta != null ) {
+        if ( !meta.isFileNameInField() && !meta.isPartitionedOutput() && meta.isHeaderEnabled()
+            && data.outputRowMeta != null ) {
           writeHeader();
         }
       }
@@ -141,6 +157,21 @@ public class TextFileOutput extends BaseStep implements StepInterface {
       }
     }
 
+    if ( meta.isPartitionedOutput() ) {
+      if ( r == null ) {
+        closePartitions();
+        setOutputDone();
+        return false;
+      }
+      writePartitionedRow( r );
+      putRow( data.outputRowMeta, r ); // in case we want it to go further...
+
+      if ( checkFeedback( getLinesOutput() ) ) {
+        logBasic( "linenr " + getLinesOutput() );
+      }
+      return true;
+    }
+
     if ( ( r == null && data.outputRowMeta != null && meta.isFooterEnabled() )
         || ( r != null && getLinesOutput() > 0 && meta.getSplitEvery() > 0
         && ( ( getLinesOutput() + meta.getFooterShift() ) % meta.getSplitEvery() ) == 0 ) ) {
@@ -230,6 +261,129 @@ public class TextFileOutput extends BaseStep implements StepInterface {
     }
   }
 
+  /**
+   * Writes a row to the open file of its partition. The file is opened first if needed: when the partition shows up for
+   * the first time, when the previous file of the partition is full or when it was closed to open other partitions.
+   *
+   * @param r
+   *          the row to write
+   * @throws KettleException
+   */
+  private void writePartitionedRow( Object[] r ) throws KettleException {
+    String path = getPartitionPath( r );
+
+    PartitionWriter partition = data.partition;
+    if ( partition == null || !partition.getPath().equals( path ) ) {
+      partition = data.partitions.get( path );
+      if ( partition == null ) {
+        partition = new PartitionWriter( path, getPartitionFilename( path ) );
+        data.partitions.put( path, partition );
+      }
+      data.partition = partition;
+    }
+
+    if ( partition.isOpen()
+        && partition.isFull( meta.getSplitEvery(), meta.getPartitionSplitSize() * 1024L * 1024L ) ) {
+      closePartitionFile( partition );
+    }
+    if ( partition.isOpen() ) {
+      data.openPartitions.get( path ); // most recently used
+    } else {
+      openPartitionFile( partition );
+    }
+
+    data.writer = partition;
+    writeRowToFile( data.outputRowMeta, r );
+    partition.rowWritten();
+  }
+
+  /**
+   * @return the folders of the partition of the row, like Hive names them: field1=value1/field2=value2
+   */
+  private String getPartitionPath( Object[] r ) throws KettleValueException {
+    StringBuilder path = new StringBuilder();
+    for ( int i = 0; i < data.partitionFieldIndexes.length; i++ ) {
+      ValueMetaInterface valueMeta = getInputRowMeta().getValueMeta( data.partitionFieldIndexes[i] );
+      if ( i > 0 ) {
+        path.append( '/' );
+      }
+      path.append( PartitionWriter.escapePathName( valueMeta.getName() ) ).append( '=' );
+      path.append( PartitionWriter.escapePathName( valueMeta.getString( r[data.partitionFieldIndexes[i]] ) ) );
+    }
+    return path.toString();
+  }
+
+  /**
+   * The partition folders go between the folder and the name of the file: /data/sales/part becomes
+   * /data/sales/country=BE/part
+   */
+  private String getPartitionFilename( String path ) {
+    String filename = environmentSubstitute( meta.getFileName() );
+    int slash = Math.max( filename.lastIndexOf( '/' ), filename.lastIndexOf( '\\' ) );
+    return filename.substring( 0, slash + 1 ) + path + "/" + filename.substring( slash + 1 );
+  }
+
+  private void openPartitionFile( PartitionWriter partition ) throws KettleException {
+    int maxOpenFiles = meta.getMaxOpenFiles() > 0 ? meta.getMaxOpenFiles() : TextFileOutputMeta.DEFAULT_MAX_OPEN_FILES;
+    while ( !data.openPartitions.isEmpty() && data.openPartitions.size() >= maxOpenFiles ) {
+      closePartitionFile( data.openPartitions.values().iterator().next() );
+      data.partitionFilesEvicted++;
+    }
+
+    // Every file of a partition gets its own number
+    //
+    data.splitnr = partition.getNrFiles();
+    openNewFile( partition.getFilename() );
+    partition.open( data.writer, data.out, data.fos );
+    data.out = null;
+    data.fos = null;
+    data.openPartitions.put( partition.getPath(), partition );
+    data.maxOpenPartitions = Math.max( data.maxOpenPartitions, data.openPartitions.size() );
+
+    data.writer = partition;
+    if ( !meta.isFileAppended() && meta.isHeaderEnabled() ) {
+      writeHeader();
+    }
+  }
+
+  private void closePartitionFile( PartitionWriter partition ) throws KettleException {
+    data.writer = partition;
+    if ( meta.isFooterEnabled() ) {
+      writeHeader();
+    }
+    writeEndedLine();
+    data.writer = null;
+    data.openPartitions.remove( partition.getPath() );
+    try {
+      partition.close();
+    } catch ( IOException e ) {
+      throw new KettleException( BaseMessages.getString( PKG, "TextFileOutput.Exception.PartitionNotClosed",
+        partition.getPath() ), e );
+    }
+  }
+
+  /**
+   * Closes the files of all partitions and reports the statistics per partition.
+   */
+  private void closePartitions() throws KettleException {
+    for ( PartitionWriter partition : new ArrayList<PartitionWriter>( data.openPartitions.values() ) ) {
+      closePartitionFile( partition );
+    }
+    data.partition = null;
+
+    if ( log.isDetailed() ) {
+      for ( PartitionWriter partition : data.partitions.values() ) {
+        logDetailed( BaseMessages.getString( PKG, "TextFileOutput.Log.PartitionWritten", partition.getPath(), Long
+          .toString( partition.getRows() ), Long.toString( partition.getBytes() ), Integer.toString( partition
+          .getNrFiles() ) ) );
+      }
+    }
+    if ( log.isBasic() && !data.partitions.isEmpty() ) {
+      logBasic( BaseMessages.getString( PKG, "TextFileOutput.Log.PartitionsWritten", Integer.toString( data.partitions
+        .size() ), Integer.toString( data.maxOpenPartitions ), Long.toString( data.partitionFilesEvicted ) ) );
+    }
+  }
+
   protected void writeRowToFile( RowMetaInterface rowMeta, Object[] r ) throws KettleStepException {
     try {
       if ( meta.getOutputFields() == null || meta.getOutputFields().length == 0 ) {
@@ -275,17 +429,20 @@ public class TextFileOutput extends BaseStep implements StepInterface {
   }
 
   private byte[] formatField( ValueMetaInterface v, Object valueData ) throws KettleValueException {
+    // Lazy conversion: write the bytes that were read if the encoding and format didn't change.
+    // Strings with a length are padded or cut to size, so they need a conversion.
+    //
+    if ( v.isBinaryStringPassthrough() && ( !v.isString() || v.getLength() < 0 ) ) {
+      data.conversionsAvoided++;
+      return (byte[]) valueData;
+    }
+
     if ( v.isString() ) {
-      if ( v.isStorageBinaryString() && v.getTrimType() == ValueMetaInterface.TRIM_TYPE_NONE && v.getLength() < 0
-          && Const.isEmpty( v.getStringEncoding() ) ) {
-        return (byte[]) valueData;
-      } else {
-        String svalue = ( valueData instanceof String ) ? (String) valueData : v.getString( valueData );
+      String svalue = ( valueData instanceof String ) ? (String) valueData : v.getString( valueData );
 
-        // trim or cut to size if needed.
-        //
-        return convertStringToBinaryString( v, Const.trimToType( svalue, v.getTrimType() ) );
-      }
+      // trim or cut to size if needed.
+      //
+      return convertStringToBinaryString( v, Const.trimToType( svalue, v.getTrimType() ) );
     } else {
       return v.getBinaryString( valueData );
     }
@@ -593,9 +750,9 @@ public class TextFileOutput extends BaseStep implements StepInterface {
         new Thread( stderrLogger ).start();
       } else {
 
-        // Check for parent folder creation only if the user asks for it
+        // Check for parent folder creation only if the user asks for it, partition folders are always created
         //
-        if ( meta.isCreateParentFolder() ) {
+        if ( meta.isCreateParentFolder() || meta.isPartitionedOutput() ) {
           createParentFolder( filename );
         }
 
@@ -617,6 +774,18 @@ public class TextFileOutput extends BaseStep implements StepInterface {
           throw new KettleException( "Compression provider " + compressionType + " does not support output streams!" );
         }
 
+        // Every copy writes its own file, several files per copy would need as many writer threads and buffers
+        //
+        boolean async = meta.isAsyncWriter() && !meta.isFileNameInField() && !meta.isPartitionedOutput();
+
+        // Compress blocks of data into separate gzip members on all cores rather than compressing on one thread
+        //
+        boolean parallelGzip = async && compressionProvider instanceof GZIPCompressionProvider;
+        if ( parallelGzip ) {
+          compressionProvider =
+            CompressionProviderFactory.getInstance().getCompressionProviderByName( FILE_COMPRESSION_TYPE_NONE );
+        }
+
         if ( log.isDetailed() ) {
           logDetailed( "Opening output stream using provider: " + compressionProvider.getName() );
         }
@@ -638,11 +807,35 @@ public class TextFileOutput extends BaseStep implements StepInterface {
           if ( log.isDetailed() ) {
             logDetailed( "Opening output stream in encoding: " + meta.getEncoding() );
           }
-          data.writer = new BufferedOutputStream( data.out, 5000 );
         } else {
           if ( log.isDetailed() ) {
             logDetailed( "Opening output stream in default encoding" );
           }
+        }
+
+        if ( async ) {
+          if ( parallelGzip && data.compressExecutor == null ) {
+            final String threadName = getStepname() + "." + getCopy() + " gzip";
+            data.compressExecutor = Executors.newFixedThreadPool( getNrCompressThreads(), new ThreadFactory() {
+              public Thread newThread( Runnable r ) {
+                Thread thread = new Thread( r, threadName );
+                thread.setDaemon( true );
+                return thread;
+              }
+            } );
+          }
+          if ( log.isDetailed() ) {
+            if ( parallelGzip ) {
+              logDetailed( BaseMessages.getString( PKG, "TextFileOutput.Log.ParallelGzip", Integer
+                .toString( getNrCompressThreads() ) ) );
+            } else {
+              logDetailed( BaseMessages.getString( PKG, "TextFileOutput.Log.AsyncWriter" ) );
+            }
+          }
+          data.writer =
+            new AsyncOutputStream( data.out, parallelGzip ? data.compressExecutor : null, getNrCompressThreads(),
+              getStepname() + "." + getCopy() + " writer" );
+        } else {
           data.writer = new BufferedOutputStream( data.out, 5000 );
         }
 
@@ -669,6 +862,10 @@ public class TextFileOutput extends BaseStep implements StepInterface {
     }
   }
 
+  private int getNrCompressThreads() {
+    return Runtime.getRuntime().availableProcessors();
+  }
+
   protected boolean closeFile() {
     boolean retval = false;
 
@@ -688,6 +885,11 @@ public class TextFileOutput extends BaseStep implements StepInterface {
           if ( log.isDebug() ) {
             logDebug( "Closed output stream" );
           }
+        } else if ( data.writer instanceof AsyncOutputStream ) {
+          // Stops the writer thread and closes the compression stream underneath
+          //
+          data.writer.close();
+          data.out = null;
         }
       }
       data.writer = null;
@@ -749,9 +951,14 @@ public class TextFileOutput extends BaseStep implements StepInterface {
       data.splitnr = 0;
       // In case user want to create file at first row
       // In that case, DO NOT create file at Init
+      if ( meta.isPartitionedOutput() && ( meta.isFileAsCommand() || meta.isServletOutput() ) ) {
+        logError( BaseMessages.getString( PKG, "TextFileOutput.Exception.PartitionedOutputNeedsFiles" ) );
+        return false;
+      }
+
       if ( !meta.isDoNotOpenNewFileInit() ) {
         try {
-          if ( !meta.isFileNameInField() ) {
+          if ( !meta.isFileNameInField() && !meta.isPartitionedOutput() ) {
             openNewFile( meta.getFileName() );
           }
 
@@ -829,7 +1036,24 @@ public class TextFileOutput extends BaseStep implements StepInterface {
     meta = (TextFileOutputMeta) smi;
     data = (TextFileOutputData) sdi;
 
-    if ( meta.isFileNameInField() ) {
+    if ( data.conversionsAvoided > 0 && log.isDetailed() ) {
+      logDetailed( BaseMessages.getString( PKG, "TextFileOutput.Log.ConversionsAvoided", Long
+        .toString( data.conversionsAvoided ) ) );
+    }
+
+    if ( meta.isPartitionedOutput() ) {
+      // Only open after an error, the files are closed at the end of the data otherwise
+      //
+      for ( PartitionWriter partition : data.openPartitions.values() ) {
+        try {
+          partition.close();
+        } catch ( IOException e ) {
+          logError( "Unexpected error closing file", e );
+          setErrors( 1 );
+        }
+      }
+      data.openPartitions.clear();
+    } else if ( meta.isFileNameInField() ) {
       for ( OutputStream outputStream : data.fileWriterMap.values() ) {
         try {
           outputStream.close();
@@ -854,6 +1078,11 @@ public class TextFileOutput extends BaseStep implements StepInterface {
       }
     }
 
+    if ( data.compressExecutor != null ) {
+      data.compressExecutor.shutdownNow();
+      data.compressExecutor = null;
+    }
+
     super.dispose( smi, sdi );
   }
 
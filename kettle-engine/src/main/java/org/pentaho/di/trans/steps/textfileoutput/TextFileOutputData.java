@@ -30,8 +30,10 @@ import java.text.NumberFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 
 import org.pentaho.di.core.compress.CompressionOutputStream;
 import org.pentaho.di.core.row.RowMetaInterface;
@@ -91,6 +93,46 @@ public class TextFileOutputData extends BaseStepData implements StepDataInterfac
 
   public String fileName;
 
+  /**
+   * The number of values written as the bytes that were read, without converting them
+   */
+  public long conversionsAvoided;
+
+  /**
+   * The threads compressing the blocks of an asynchronously written gzip file
+   */
+  public ExecutorService compressExecutor;
+
+  /**
+   * The indexes of the partition fields in the input rows
+   */
+  public int[] partitionFieldIndexes;
+
+  /**
+   * All the partitions written to, by their path
+   */
+  Map<String, PartitionWriter> partitions;
+
+  /**
+   * The partitions with an open file, the least recently used one first
+   */
+  LinkedHashMap<String, PartitionWriter> openPartitions;
+
+  /**
+   * The partition of the last row
+   */
+  PartitionWriter partition;
+
+  /**
+   * The highest number of partition files that were open at the same time
+   */
+  public int maxOpenPartitions;
+
+  /**
+   * The number of partition files that were closed to stay within the maximum number of open files
+   */
+  public long partitionFilesEvicted;
+
   public TextFileOutputData() {
     super();
 
@@ -114,6 +156,9 @@ public class TextFileOutputData extends BaseStepData implements StepDataInterfac
     oneFileOpened = false;
 
     fileWriterMap = new HashMap<String, OutputStream>();
+
+    partitions = new HashMap<String, PartitionWriter>();
+    openPartitions = new LinkedHashMap<String, PartitionWriter>( 16, 0.75f, true );
   }
 
   List<String> getPreviouslyOpenedFiles() {
@@ -69,6 +69,9 @@ public class TextFileOutputMeta extends BaseStepMeta implements StepMetaInterfac
 
   protected static final int FILE_COMPRESSION_TYPE_ZIP = 1;
 
+  /** The default maximum number of partition files that are open at the same time */
+  public static final int DEFAULT_MAX_OPEN_FILES = 100;
+
   protected static final String[] fileCompressionTypeCodes = new String[] { "None", "Zip" };
 
   public static final String[] formatMapperLineTerminator = new String[] { "DOS", "UNIX", "CR", "None" };
@@ -139,6 +142,18 @@ public class TextFileOutputMeta extends BaseStepMeta implements StepMetaInterfac
   /** Flag: Fast dump data without field formatting */
   private boolean fastDump;
 
+  /** Flag: write and compress the file on background threads */
+  private boolean asyncWriter;
+
+  /** The fields to partition the output on: one folder per value, named field=value like Hive does */
+  private String[] partitionFields = new String[0];
+
+  /** The maximum number of partition files that are open at the same time, the default if not larger than 0 */
+  private int maxOpenFiles;
+
+  /** if this value is larger then 0, a partition file is split up into parts of about this number of megabytes */
+  private int partitionSplitSize;
+
   /* THE FIELD SPECIFICATIONS ... */
 
   /** The output fields */
@@ -436,6 +451,73 @@ public class TextFileOutputMeta extends BaseStepMeta implements StepMetaInterfac
     this.fastDump = fastDump;
   }
 
+  /**
+   * @return true if the file is written and compressed on background threads while the rows are formatted
+   */
+  public boolean isAsyncWriter() {
+    return asyncWriter;
+  }
+
+  /**
+   * @param asyncWriter
+   *          true to write and compress the file on background threads while the rows are formatted
+   */
+  public void setAsyncWriter( boolean asyncWriter ) {
+    this.asyncWriter = asyncWriter;
+  }
+
+  /**
+   * @return the fields to partition the output on, every combination of values gets its own folder
+   */
+  public String[] getPartitionFields() {
+    return partitionFields;
+  }
+
+  /**
+   * @param partitionFields
+   *          the fields to partition the output on, every combination of values gets its own folder
+   */
+  public void setPartitionFields( String[] partitionFields ) {
+    this.partitionFields = partitionFields;
+  }
+
+  /**
+   * @return true if the rows are written to a folder per partition value
+   */
+  public boolean isPartitionedOutput() {
+    return partitionFields != null && partitionFields.length > 0;
+  }
+
+  /**
+   * @return the maximum number of partition files that are open at the same time
+   */
+  public int getMaxOpenFiles() {
+    return maxOpenFiles;
+  }
+
+  /**
+   * @param maxOpenFiles
+   *          the maximum number of partition files that are open at the same time
+   */
+  public void setMaxOpenFiles( int maxOpenFiles ) {
+    this.maxOpenFiles = maxOpenFiles;
+  }
+
+  /**
+   * @return the number of megabytes after which a new partition file is started, 0 means no limit
+   */
+  public int getPartitionSplitSize() {
+    return partitionSplitSize;
+  }
+
+  /**
+   * @param partitionSplitSize
+   *          the number of megabytes after which a new partition file is started, 0 means no limit
+   */
+  public void setPartitionSplitSize( int partitionSplitSize ) {
+    this.partitionSplitSize = partitionSplitSize;
+  }
+
   /**
    * @return Returns the separator.
    */
@@ -641,6 +723,7 @@ public class TextFileOutputMeta extends BaseStepMeta implements StepMetaInterfac
     for ( int i = 0; i < nrfields; i++ ) {
       retval.outputFields[i] = (TextFileField) outputFields[i].clone();
     }
+    retval.partitionFields = partitionFields.clone();
 
     return retval;
   }
@@ -713,6 +796,7 @@ public class TextFileOutputMeta extends BaseStepMeta implements StepMetaInterfac
 
       padded = "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "file", "pad" ) );
       fastDump = "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "file", "fast_dump" ) );
+      asyncWriter = "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "file", "async_writer" ) );
       splitEvery = Const.toInt( XMLHandler.getTagValue( stepnode, "file", "splitevery" ), 0 );
 
       newline = getNewLine( fileFormat );
@@ -740,6 +824,17 @@ public class TextFileOutputMeta extends BaseStepMeta implements StepMetaInterfac
         outputFields[i].setLength( Const.toInt( XMLHandler.getTagValue( fnode, "length" ), -1 ) );
         outputFields[i].setPrecision( Const.toInt( XMLHandler.getTagValue( fnode, "precision" ), -1 ) );
       }
+
+      Node partitionNode = XMLHandler.getSubNode( stepnode, "partition_output" );
+      int nrPartitionFields = XMLHandler.countNodes( partitionNode, "field" );
+      partitionFields = new String[nrPartitionFields];
+      for ( int i = 0; i < nrPartitionFields; i++ ) {
+        Node fnode = XMLHandler.getSubNodeByNr( partitionNode, "field", i );
+        partitionFields[i] = XMLHandler.getTagValue( fnode, "name" );
+      }
+      maxOpenFiles =
+        Const.toInt( XMLHandler.getTagValue( stepnode, "partition_output", "max_open_files" ), DEFAULT_MAX_OPEN_FILES );
+      partitionSplitSize = Const.toInt( XMLHandler.getTagValue( stepnode, "partition_output", "split_size" ), 0 );
     } catch ( Exception e ) {
       throw new KettleXMLException( "Unable to load step info from XML", e );
     }
@@ -790,8 +885,12 @@ public class TextFileOutputMeta extends BaseStepMeta implements StepMetaInterfac
     timeInFilename = false;
     padded = false;
     fastDump = false;
+    asyncWriter = false;
     addToResultFilenames = true;
     splitEvery = 0;
+    partitionFields = new String[0];
+    maxOpenFiles = DEFAULT_MAX_OPEN_FILES;
+    partitionSplitSize = 0;
 
     newline = getNewLine( fileFormat );
 
@@ -895,7 +994,7 @@ public class TextFileOutputMeta extends BaseStepMeta implements StepMetaInterfac
     if ( meta.isPartNrInFilename() ) {
       retval += "_" + partnr;
     }
-    if ( meta.getSplitEvery() > 0 ) {
+    if ( meta.getSplitEvery() > 0 || meta.isPartitionedOutput() ) {
       retval += "_" + splitnr;
     }
 
@@ -987,6 +1086,7 @@ public class TextFileOutputMeta extends BaseStepMeta implements StepMetaInterfac
     retval.append( "      " ).append( XMLHandler.addTagValue( "add_to_result_filenames", addToResultFilenames ) );
     retval.append( "      " ).append( XMLHandler.addTagValue( "pad", padded ) );
     retval.append( "      " ).append( XMLHandler.addTagValue( "fast_dump", fastDump ) );
+    retval.append( "      " ).append( XMLHandler.addTagValue( "async_writer", asyncWriter ) );
     retval.append( "      " ).append( XMLHandler.addTagValue( "splitevery", splitEvery ) );
     retval.append( "    </file>" ).append( Const.CR );
 
@@ -1011,6 +1111,16 @@ public class TextFileOutputMeta extends BaseStepMeta implements StepMetaInterfac
     }
     retval.append( "    </fields>" ).append( Const.CR );
 
+    retval.append( "    <partition_output>" ).append( Const.CR );
+    retval.append( "      " ).append( XMLHandler.addTagValue( "max_open_files", maxOpenFiles ) );
+    retval.append( "      " ).append( XMLHandler.addTagValue( "split_size", partitionSplitSize ) );
+    for ( String partitionField : partitionFields ) {
+      retval.append( "      <field>" ).append( Const.CR );
+      retval.append( "        " ).append( XMLHandler.addTagValue( "name", partitionField ) );
+      retval.append( "      </field>" ).append( Const.CR );
+    }
+    retval.append( "    </partition_output>" ).append( Const.CR );
+
     return retval.toString();
   }
 
@@ -1060,6 +1170,7 @@ public class TextFileOutputMeta extends BaseStepMeta implements StepMetaInterfac
 
       padded = rep.getStepAttributeBoolean( id_step, "file_pad" );
       fastDump = rep.getStepAttributeBoolean( id_step, "file_fast_dump" );
+      asyncWriter = rep.getStepAttributeBoolean( id_step, "file_async_writer" );
 
       newline = getNewLine( fileFormat );
 
@@ -1084,6 +1195,14 @@ public class TextFileOutputMeta extends BaseStepMeta implements StepMetaInterfac
       }
       endedLine = rep.getStepAttributeString( id_step, "endedLine" );
 
+      int nrPartitionFields = rep.countNrStepAttributes( id_step, "partition_field_name" );
+      partitionFields = new String[nrPartitionFields];
+      for ( int i = 0; i < nrPartitionFields; i++ ) {
+        partitionFields[i] = rep.getStepAttributeString( id_step, i, "partition_field_name" );
+      }
+      maxOpenFiles = (int) rep.getStepAttributeInteger( id_step, "partition_max_open_files" );
+      partitionSplitSize = (int) rep.getStepAttributeInteger( id_step, "partition_split_size" );
+
     } catch ( Exception e ) {
       throw new KettleException( "Unexpected error reading step information from the repository", e );
     }
@@ -1119,6 +1238,7 @@ public class TextFileOutputMeta extends BaseStepMeta implements StepMetaInterfac
       rep.saveStepAttribute( id_transformation, id_step, "file_add_time", timeInFilename );
       rep.saveStepAttribute( id_transformation, id_step, "file_pad", padded );
       rep.saveStepAttribute( id_transformation, id_step, "file_fast_dump", fastDump );
+      rep.saveStepAttribute( id_transformation, id_step, "file_async_writer", asyncWriter );
       rep.saveStepAttribute( id_transformation, id_step, "fileNameInField", fileNameInField );
       rep.saveStepAttribute( id_transformation, id_step, "fileNameField", fileNameField );
 
@@ -1137,6 +1257,12 @@ public class TextFileOutputMeta extends BaseStepMeta implements StepMetaInterfac
         rep.saveStepAttribute( id_transformation, id_step, i, "field_precision", field.getPrecision() );
       }
       rep.saveStepAttribute( id_transformation, id_step, "endedLine", endedLine );
+
+      for ( int i = 0; i < partitionFields.length; i++ ) {
+        rep.saveStepAttribute( id_transformation, id_step, i, "partition_field_name", partitionFields[i] );
+      }
+      rep.saveStepAttribute( id_transformation, id_step, "partition_max_open_files", maxOpenFiles );
+      rep.saveStepAttribute( id_transformation, id_step, "partition_split_size", partitionSplitSize );
     } catch ( Exception e ) {
       throw new KettleException( "Unable to save step information to the repository for id_step=" + id_step, e );
     }
@@ -1165,6 +1291,12 @@ public class TextFileOutputMeta extends BaseStepMeta implements StepMetaInterfac
           error_found = true;
         }
       }
+      for ( String partitionField : partitionFields ) {
+        if ( prev.indexOfValue( partitionField ) < 0 ) {
+          error_message += "\t\t" + partitionField + Const.CR;
+          error_found = true;
+        }
+      }
       if ( error_found ) {
         error_message = BaseMessages.getString( PKG, "TextFileOutputMeta.CheckResult.FieldsNotFound", error_message );
         cr = new CheckResult( CheckResultInterface.TYPE_RESULT_ERROR, error_message, stepMeta );
@@ -73,6 +73,10 @@ public class TextFileOutputMetaInjection implements StepMetaInjectionInterface {
       RIGHT_PAD_FIELDS( ValueMetaInterface.TYPE_STRING, "Right pad fields? (Y/N)" ),
       FAST_DATA_DUMP( ValueMetaInterface.TYPE_STRING, "Fast data dump? (Y/N)" ),
       SPLIT_EVERY( ValueMetaInterface.TYPE_STRING, "Split every ... rows" ),
+      ASYNC_WRITER( ValueMetaInterface.TYPE_STRING, "Write in the background? (Y/N)" ),
+      PARTITION_FIELDS( ValueMetaInterface.TYPE_STRING, "The fields to partition the output on (comma separated)" ),
+      MAX_OPEN_FILES( ValueMetaInterface.TYPE_STRING, "The maximum number of open partition files" ),
+      PARTITION_SPLIT_SIZE( ValueMetaInterface.TYPE_STRING, "Split partition files every ... megabytes" ),
       ADD_ENDING_LINE( ValueMetaInterface.TYPE_STRING, "Add ending line after last row" ),
 
       OUTPUT_FIELDS( ValueMetaInterface.TYPE_NONE, "The fields to output" ),
@@ -136,6 +140,7 @@ public class TextFileOutputMetaInjection implements StepMetaInjectionInterface {
         Entry.APPEND, Entry.SEPARATOR, Entry.ENCLOSURE, Entry.FORCE_ENCLOSURE,
         Entry.DISABLE_ENCLOSURE_FIX, Entry.HEADER, Entry.FOOTER, Entry.FORMAT, Entry.COMPRESSION,
         Entry.ENCODING, Entry.RIGHT_PAD_FIELDS, Entry.FAST_DATA_DUMP, Entry.SPLIT_EVERY,
+        Entry.ASYNC_WRITER, Entry.PARTITION_FIELDS, Entry.MAX_OPEN_FILES, Entry.PARTITION_SPLIT_SIZE,
         Entry.ADD_ENDING_LINE, };
     for ( Entry topEntry : topEntries ) {
       all.add( new StepInjectionMetaEntry( topEntry.name(), topEntry.getValueType(), topEntry.getDescription() ) );
@@ -341,6 +346,26 @@ public class TextFileOutputMetaInjection implements StepMetaInjectionInterface {
         case SPLIT_EVERY:
           meta.setSplitEvery( Const.toInt( lookValue, 0 ) );
           break;
+        case ASYNC_WRITER:
+          meta.setAsyncWriter( "Y".equalsIgnoreCase( lookValue ) );
+          break;
+        case PARTITION_FIELDS:
+          List<String> partitionFields = new ArrayList<String>();
+          if ( !Const.isEmpty( lookValue ) ) {
+            for ( String partitionField : lookValue.split( "," ) ) {
+              if ( !Const.isEmpty( partitionField.trim() ) ) {
+                partitionFields.add( partitionField.trim() );
+              }
+            }
+          }
+          meta.setPartitionFields( partitionFields.toArray( new String[partitionFields.size()] ) );
+          break;
+        case MAX_OPEN_FILES:
+          meta.setMaxOpenFiles( Const.toInt( lookValue, TextFileOutputMeta.DEFAULT_MAX_OPEN_FILES ) );
+          break;
+        case PARTITION_SPLIT_SIZE:
+          meta.setPartitionSplitSize( Const.toInt( lookValue, 0 ) );
+          break;
         case ADD_ENDING_LINE:
           meta.setEndedLine( lookValue );
           break;
@@ -415,6 +440,17 @@ public class TextFileOutputMetaInjection implements StepMetaInjectionInterface {
     list.add( StepInjectionUtil.getEntry( Entry.RIGHT_PAD_FIELDS, meta.isPadded() ) );
     list.add( StepInjectionUtil.getEntry( Entry.FAST_DATA_DUMP, meta.isFastDump() ) );
     list.add( StepInjectionUtil.getEntry( Entry.SPLIT_EVERY, meta.getSplitEvery() ) );
+    list.add( StepInjectionUtil.getEntry( Entry.ASYNC_WRITER, meta.isAsyncWriter() ) );
+    StringBuilder partitionFields = new StringBuilder();
+    for ( String partitionField : meta.getPartitionFields() ) {
+      if ( partitionFields.length() > 0 ) {
+        partitionFields.append( ',' );
+      }
+      partitionFields.append( partitionField );
+    }
+    list.add( StepInjectionUtil.getEntry( Entry.PARTITION_FIELDS, partitionFields.toString() ) );
+    list.add( StepInjectionUtil.getEntry( Entry.MAX_OPEN_FILES, meta.getMaxOpenFiles() ) );
+    list.add( StepInjectionUtil.getEntry( Entry.PARTITION_SPLIT_SIZE, meta.getPartitionSplitSize() ) );
     list.add( StepInjectionUtil.getEntry( Entry.ADD_ENDING_LINE, meta.getEndedLine() ) );
 
     StepInjectionMetaEntry fieldsEntry = StepInjectionUtil.getEntry( Entry.OUTPUT_FIELDS );
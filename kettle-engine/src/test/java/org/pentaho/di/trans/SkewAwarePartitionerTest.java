@@ -0,0 +1,147 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2015 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.trans;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.pentaho.di.core.KettleEnvironment;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.xml.XMLHandler;
+import org.w3c.dom.Node;
+
+public class SkewAwarePartitionerTest {
+
+  private static final int NR_PARTITIONS = 4;
+  private static final long HEAVY_KEY = 42L;
+
+  private RowMetaInterface rowMeta;
+
+  @BeforeClass
+  public static void initKettle() throws Exception {
+    KettleEnvironment.init();
+  }
+
+  private SkewAwarePartitioner createPartitioner( boolean spreading ) {
+    rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaInteger( "customer" ) );
+
+    SkewAwarePartitioner partitioner = new SkewAwarePartitioner();
+    partitioner.setFieldName( "customer" );
+    partitioner.setNrPartitions( NR_PARTITIONS );
+    partitioner.setSpreadingHeavyHitters( spreading );
+    return partitioner;
+  }
+
+  /**
+   * Sends 200000 rows, a third of them for the heavy key.
+   *
+   * @return the number of heavy key rows sent to each partition
+   */
+  private int[] partitionSkewedRows( SkewAwarePartitioner partitioner ) throws Exception {
+    int[] heavyRows = new int[NR_PARTITIONS];
+    for ( long i = 1; i <= 200000; i++ ) {
+      long key = i % 3 == 0 ? HEAVY_KEY : i * 7;
+      int partition = partitioner.getPartition( rowMeta, new Object[] { key } );
+      if ( key == HEAVY_KEY ) {
+        heavyRows[partition]++;
+      } else {
+        // Cold keys always go where the mod partitioner sends them
+        assertEquals( key % NR_PARTITIONS, partition );
+      }
+    }
+    return heavyRows;
+  }
+
+  @Test
+  public void testBalancedKeys() throws Exception {
+    SkewAwarePartitioner partitioner = createPartitioner( true );
+    for ( long key = 0; key < 100000; key++ ) {
+      assertEquals( key % NR_PARTITIONS, partitioner.getPartition( rowMeta, new Object[] { key } ) );
+    }
+    assertTrue( partitioner.getHeavyHitters().isEmpty() );
+    assertEquals( 1.0, partitioner.getSkew(), 0.1 );
+  }
+
+  @Test
+  public void testHeavyHittersAreReported() throws Exception {
+    SkewAwarePartitioner partitioner = createPartitioner( false );
+    int[] heavyRows = partitionSkewedRows( partitioner );
+
+    assertEquals( Collections.singleton( HEAVY_KEY ), partitioner.getHeavyHitters() );
+    assertEquals( 200000 / 3, heavyRows[(int) ( HEAVY_KEY % NR_PARTITIONS )] );
+    assertTrue( partitioner.getSkew() > 1.8 );
+    String report = partitioner.getSkewReport();
+    assertTrue( report, report.contains( "1 heavy hitter(s)" ) );
+    assertTrue( report, report.contains( "not spread" ) );
+  }
+
+  @Test
+  public void testHeavyHittersAreSpread() throws Exception {
+    SkewAwarePartitioner partitioner = createPartitioner( true );
+    int[] heavyRows = partitionSkewedRows( partitioner );
+
+    assertEquals( Collections.singleton( HEAVY_KEY ), partitioner.getHeavyHitters() );
+    for ( int partition = 0; partition < NR_PARTITIONS; partition++ ) {
+      assertTrue( "Partition " + partition + " got " + heavyRows[partition], heavyRows[partition] > 10000 );
+    }
+    assertTrue( partitioner.getSkew() < 1.2 );
+  }
+
+  @Test
+  public void testKeyFrequencySketch() {
+    KeyFrequencySketch sketch = new KeyFrequencySketch( 8 );
+    for ( long i = 0; i < 10000; i++ ) {
+      sketch.add( i % 4 == 0 ? -1L : i );
+    }
+    assertEquals( 10000, sketch.getTotal() );
+    assertEquals( Collections.singleton( -1L ), sketch.getFrequentKeys( 0.2 ) );
+
+    sketch.decay();
+    assertEquals( 5000, sketch.getTotal() );
+    assertEquals( Collections.singleton( -1L ), sketch.getFrequentKeys( 0.2 ) );
+  }
+
+  @Test
+  public void testXmlAndClone() throws Exception {
+    SkewAwarePartitioner partitioner = createPartitioner( true );
+    String xml = "<partitioning>" + partitioner.getXML() + "</partitioning>";
+    Node node = XMLHandler.getSubNode( XMLHandler.loadXMLString( xml ), "partitioning" );
+
+    SkewAwarePartitioner loaded = new SkewAwarePartitioner();
+    loaded.loadXML( node );
+    assertEquals( "customer", loaded.getFieldName() );
+    assertTrue( loaded.isSpreadingHeavyHitters() );
+
+    SkewAwarePartitioner copy = loaded.clone();
+    assertEquals( "customer", copy.getFieldName() );
+    assertTrue( copy.isSpreadingHeavyHitters() );
+    assertEquals( "Skew aware partitioner(customer)", copy.getDescription() );
+  }
+}
@@ -0,0 +1,189 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2015 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.compiler;
+
+import static org.junit.Assert.*;
+
+import java.math.BigDecimal;
+import java.util.Date;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.pentaho.di.core.Condition;
+import org.pentaho.di.core.KettleEnvironment;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaAndData;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaBigNumber;
+import org.pentaho.di.core.row.value.ValueMetaBoolean;
+import org.pentaho.di.core.row.value.ValueMetaDate;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaNumber;
+import org.pentaho.di.core.row.value.ValueMetaString;
+
+public class ConditionCompilerTest {
+
+  private static final Object[][] ROWS = {
+    { 1L, "alpha", 1.5, 1L, Boolean.TRUE, new Date( 0L ), new BigDecimal( "1.50" ), " x " },
+    { 5L, "Beta", null, 6L, Boolean.FALSE, null, new BigDecimal( "-2" ), "y" },
+    { null, "", 2.0, null, null, new Date( 1000L ), null, null },
+    { 10L, null, -3.0, 10L, Boolean.TRUE, new Date( 2000L ), new BigDecimal( "10" ), "a%" },
+    { 5L, "a%b\"c\\d", Double.NaN, 5L, Boolean.FALSE, new Date( 1000L ), new BigDecimal( "1.5" ), "" }, };
+
+  private RowMetaInterface rowMeta;
+
+  @BeforeClass
+  public static void initKettle() throws Exception {
+    KettleEnvironment.init( false );
+  }
+
+  private RowMetaInterface getRowMeta() {
+    if ( rowMeta == null ) {
+      rowMeta = new RowMeta();
+      rowMeta.addValueMeta( new ValueMetaInteger( "id" ) );
+      rowMeta.addValueMeta( new ValueMetaString( "name" ) );
+      rowMeta.addValueMeta( new ValueMetaNumber( "amount" ) );
+      rowMeta.addValueMeta( new ValueMetaInteger( "other" ) );
+      rowMeta.addValueMeta( new ValueMetaBoolean( "flag" ) );
+      rowMeta.addValueMeta( new ValueMetaDate( "date" ) );
+      rowMeta.addValueMeta( new ValueMetaBigNumber( "big" ) );
+      ValueMetaInterface trimmed = new ValueMetaString( "trimmed" );
+      trimmed.setTrimType( ValueMetaInterface.TRIM_TYPE_BOTH );
+      rowMeta.addValueMeta( trimmed );
+    }
+    return rowMeta;
+  }
+
+  private static Condition condition( String left, int function, String right, Object constant ) throws Exception {
+    return new Condition( left, function, right, constant == null ? null : new ValueMetaAndData( "constant",
+      constant ) );
+  }
+
+  private CompiledCondition assertSameResults( Condition condition ) throws Exception {
+    CompiledCondition compiled = ConditionCompiler.compile( condition, getRowMeta() );
+    assertNotNull( condition.toString(), compiled );
+    for ( Object[] row : ROWS ) {
+      assertEquals( condition.toString(), condition.evaluate( getRowMeta(), row ), compiled.evaluate( row ) );
+    }
+    return compiled;
+  }
+
+  @Test
+  public void testComparisons() throws Exception {
+    int[] functions = {
+      Condition.FUNC_EQUAL, Condition.FUNC_NOT_EQUAL, Condition.FUNC_SMALLER, Condition.FUNC_SMALLER_EQUAL,
+      Condition.FUNC_LARGER, Condition.FUNC_LARGER_EQUAL, };
+    for ( int function : functions ) {
+      assertSameResults( condition( "id", function, null, 5L ) );
+      assertSameResults( condition( "id", function, null, "5" ) );
+      assertSameResults( condition( "id", function, "other", null ) );
+      assertSameResults( condition( "name", function, null, "Beta" ) );
+      assertSameResults( condition( "name", function, null, "" ) );
+      assertSameResults( condition( "amount", function, null, 1.5 ) );
+      assertSameResults( condition( "amount", function, null, 2L ) );
+      assertSameResults( condition( "flag", function, null, Boolean.TRUE ) );
+      assertSameResults( condition( "date", function, null, new Date( 1000L ) ) );
+      assertSameResults( condition( "big", function, null, new BigDecimal( "1.5" ) ) );
+      assertEquals( 1, assertSameResults( condition( "id", function, null, 5L ) ).getNrCompiled() );
+    }
+  }
+
+  @Test
+  public void testStringFunctions() throws Exception {
+    assertSameResults( condition( "name", Condition.FUNC_NULL, null, null ) );
+    assertSameResults( condition( "amount", Condition.FUNC_NOT_NULL, null, null ) );
+    assertSameResults( condition( "name", Condition.FUNC_CONTAINS, null, "ph" ) );
+    assertSameResults( condition( "name", Condition.FUNC_STARTS_WITH, null, "a%" ) );
+    assertSameResults( condition( "name", Condition.FUNC_ENDS_WITH, null, "\\d" ) );
+    assertSameResults( condition( "name", Condition.FUNC_LIKE, null, "a%" ) );
+    assertSameResults( condition( "name", Condition.FUNC_REGEXP, null, "[a-z]+" ) );
+    assertSameResults( condition( "name", Condition.FUNC_IN_LIST, null, "Beta;alpha;gamma" ) );
+  }
+
+  @Test
+  public void testCompositeConditions() throws Exception {
+    Condition condition = new Condition();
+    condition.addCondition( condition( "id", Condition.FUNC_LARGER, null, 1L ) );
+    Condition or = condition( "name", Condition.FUNC_NULL, null, null );
+    or.setOperator( Condition.OPERATOR_OR );
+    condition.addCondition( or );
+    Condition andNot = condition( "flag", Condition.FUNC_EQUAL, null, Boolean.FALSE );
+    andNot.setOperator( Condition.OPERATOR_AND_NOT );
+    condition.addCondition( andNot );
+    Condition xor = new Condition( true, "amount", Condition.FUNC_SMALLER, null, new ValueMetaAndData( "constant",
+      0.0 ) );
+    xor.setOperator( Condition.OPERATOR_XOR );
+    condition.addCondition( xor );
+
+    Condition negated = new Condition();
+    negated.setNegated( true );
+    negated.addCondition( condition );
+    Condition orNot = condition( "other", Condition.FUNC_EQUAL, "id", null );
+    orNot.setOperator( Condition.OPERATOR_OR_NOT );
+    negated.addCondition( orNot );
+
+    CompiledCondition compiled = assertSameResults( negated );
+    assertEquals( 5, compiled.getNrCompiled() );
+    assertEquals( 0, compiled.getNrInterpreted() );
+  }
+
+  @Test
+  public void testFallback() throws Exception {
+    // A trimmed string, a field compared with a field of another type and an unknown field are interpreted
+    //
+    Condition condition = new Condition();
+    condition.addCondition( condition( "trimmed", Condition.FUNC_EQUAL, null, "x" ) );
+    Condition or = condition( "id", Condition.FUNC_EQUAL, "amount", null );
+    or.setOperator( Condition.OPERATOR_OR );
+    condition.addCondition( or );
+    Condition and = condition( "unknown", Condition.FUNC_NULL, null, null );
+    and.setOperator( Condition.OPERATOR_OR );
+    condition.addCondition( and );
+    Condition compiledPart = condition( "id", Condition.FUNC_EQUAL, null, 5L );
+    compiledPart.setOperator( Condition.OPERATOR_OR );
+    condition.addCondition( compiledPart );
+
+    CompiledCondition compiled = assertSameResults( condition );
+    assertEquals( 1, compiled.getNrCompiled() );
+    assertEquals( 3, compiled.getNrInterpreted() );
+
+    assertNull( ConditionCompiler.compile( condition( "trimmed", Condition.FUNC_NULL, null, null ), getRowMeta() ) );
+  }
+
+  @Test
+  public void testClassesAreShared() throws Exception {
+    Condition condition = condition( "name", Condition.FUNC_LIKE, null, "a%" );
+    CompiledCondition first = ConditionCompiler.compile( condition, getRowMeta() );
+    CompiledCondition second = ConditionCompiler.compile( condition, getRowMeta() );
+    assertNotSame( first, second );
+    assertSame( first.getClass(), second.getClass() );
+  }
+
+  @Test
+  public void testLiterals() {
+    assertEquals( "\"a\\\"b\\\\c\\012\"", ExpressionCompiler.literal( "a\"b\\c\n" ) );
+    assertEquals( "Long.MIN_VALUE", ExpressionCompiler.literal( Long.MIN_VALUE ) );
+    assertEquals( "-5L", ExpressionCompiler.literal( -5L ) );
+  }
+}
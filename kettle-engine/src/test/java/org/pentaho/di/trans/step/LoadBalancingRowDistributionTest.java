@@ -0,0 +1,157 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2015 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.trans.step;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.pentaho.di.core.BlockingRowSet;
+import org.pentaho.di.core.KettleEnvironment;
+import org.pentaho.di.core.QueueRowSet;
+import org.pentaho.di.core.RowSet;
+import org.pentaho.di.core.plugins.PluginRegistry;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+
+public class LoadBalancingRowDistributionTest {
+
+  private final LoadBalancingRowDistribution distribution = new LoadBalancingRowDistribution();
+
+  private RowMetaInterface rowMeta;
+  private StepInterface step;
+  private int currentRowSetNr;
+  private long linesWritten;
+
+  @BeforeClass
+  public static void initKettle() throws Exception {
+    KettleEnvironment.init();
+  }
+
+  @Before
+  public void setUp() {
+    rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaInteger( "id" ) );
+
+    // The step copy keeps the state of the distribution
+    //
+    currentRowSetNr = 0;
+    linesWritten = 0;
+    step = mock( StepInterface.class );
+    when( step.getCurrentOutputRowSetNr() ).thenAnswer( new Answer<Integer>() {
+      public Integer answer( InvocationOnMock invocation ) {
+        return currentRowSetNr;
+      }
+    } );
+    doAnswer( new Answer<Void>() {
+      public Void answer( InvocationOnMock invocation ) {
+        currentRowSetNr = (Integer) invocation.getArguments()[0];
+        return null;
+      }
+    } ).when( step ).setCurrentOutputRowSetNr( anyInt() );
+    when( step.getLinesWritten() ).thenAnswer( new Answer<Long>() {
+      public Long answer( InvocationOnMock invocation ) {
+        return linesWritten;
+      }
+    } );
+  }
+
+  private void distribute( List<RowSet> rowSets, int nrRows ) throws Exception {
+    when( step.getOutputRowSets() ).thenReturn( rowSets );
+    for ( int i = 0; i < nrRows; i++ ) {
+      distribution.distributeRow( rowMeta, new Object[] { (long) i }, step );
+      linesWritten++;
+    }
+  }
+
+  private RowSet createRowSet( int nrRows ) {
+    RowSet rowSet = new QueueRowSet();
+    for ( int i = 0; i < nrRows; i++ ) {
+      rowSet.putRow( rowMeta, new Object[] { -1L } );
+    }
+    return rowSet;
+  }
+
+  @Test
+  public void testRowsGoToTheLeastLoadedRowSet() throws Exception {
+    RowSet busy = createRowSet( 40 );
+    RowSet halfBusy = createRowSet( 20 );
+    RowSet idle = createRowSet( 0 );
+    distribute( Arrays.asList( busy, halfBusy, idle ), 60 );
+
+    // Batches of 16 rows: idle, idle again (16 < 20), half busy and idle
+    //
+    assertEquals( 40, busy.size() );
+    assertEquals( 36, halfBusy.size() );
+    assertEquals( 44, idle.size() );
+  }
+
+  @Test
+  public void testOrderIsKeptPerRowSet() throws Exception {
+    List<RowSet> rowSets = Arrays.asList( createRowSet( 0 ), createRowSet( 0 ), createRowSet( 0 ) );
+    distribute( rowSets, 1000 );
+
+    int total = 0;
+    for ( RowSet rowSet : rowSets ) {
+      assertTrue( rowSet.size() > 0 );
+      long previous = -1L;
+      Object[] row;
+      while ( ( row = rowSet.getRow() ) != null ) {
+        assertTrue( (Long) row[0] > previous );
+        previous = (Long) row[0];
+        total++;
+      }
+    }
+    assertEquals( 1000, total );
+  }
+
+  @Test
+  public void testFullRowSetIsAvoided() throws Exception {
+    BlockingRowSet full = new BlockingRowSet( 1 );
+    full.putRow( rowMeta, new Object[] { -1L } );
+    BlockingRowSet empty = new BlockingRowSet( 100 );
+
+    // In the middle of a batch that goes to the full row set
+    //
+    linesWritten = 1;
+    distribute( Arrays.<RowSet>asList( full, empty ), 1 );
+    assertEquals( 1, empty.size() );
+    assertEquals( 1, currentRowSetNr );
+  }
+
+  @Test
+  public void testRegisteredAsPlugin() throws Exception {
+    assertNotNull( PluginRegistry.getInstance().findPluginWithId( RowDistributionPluginType.class, "LoadBalance" ) );
+    assertEquals( "LoadBalance", distribution.getCode() );
+  }
+}
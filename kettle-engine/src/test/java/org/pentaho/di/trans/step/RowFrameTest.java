@@ -0,0 +1,247 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2015 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.trans.step;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.pentaho.di.core.KettleEnvironment;
+import org.pentaho.di.core.exception.KettleFileException;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaBoolean;
+import org.pentaho.di.core.row.value.ValueMetaDate;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaNumber;
+import org.pentaho.di.core.row.value.ValueMetaString;
+
+public class RowFrameTest {
+
+  @BeforeClass
+  public static void initKettle() throws Exception {
+    KettleEnvironment.init();
+  }
+
+  private static RowMetaInterface createRowMeta() {
+    RowMetaInterface rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaInteger( "id" ) );
+    rowMeta.addValueMeta( new ValueMetaString( "country" ) );
+    rowMeta.addValueMeta( new ValueMetaString( "name" ) );
+    rowMeta.addValueMeta( new ValueMetaNumber( "amount" ) );
+    rowMeta.addValueMeta( new ValueMetaDate( "date" ) );
+    rowMeta.addValueMeta( new ValueMetaBoolean( "flag" ) );
+    return rowMeta;
+  }
+
+  private static List<Object[]> createRows( int nrRows ) {
+    String[] countries = new String[] { "Belgium", "France", "Ελλάδα", "", null };
+    StringBuilder longName = new StringBuilder();
+    for ( int i = 0; i < 300; i++ ) {
+      longName.append( 'x' );
+    }
+    List<Object[]> rows = new ArrayList<Object[]>();
+    for ( int i = 0; i < nrRows; i++ ) {
+      rows.add( new Object[] {
+        i % 7 == 0 ? null : Long.valueOf( i ), countries[i % countries.length],
+        i % 100 == 0 ? longName.toString() : "name " + i, Double.valueOf( i / 3.0 ), new Date( 1000L * i ),
+        Boolean.valueOf( i % 2 == 0 ), } );
+    }
+    return rows;
+  }
+
+  private static List<Object[]> readAll( RowFrameReader reader ) throws Exception {
+    List<Object[]> rows = new ArrayList<Object[]>();
+    Object[] row;
+    while ( ( row = reader.readRow() ) != null ) {
+      rows.add( row );
+    }
+    return rows;
+  }
+
+  private static void assertRowsEqual( RowMetaInterface rowMeta, List<Object[]> expected, List<Object[]> actual )
+    throws Exception {
+    assertEquals( expected.size(), actual.size() );
+    for ( int i = 0; i < expected.size(); i++ ) {
+      assertEquals( "Row " + i, 0, rowMeta.compare( expected.get( i ), actual.get( i ) ) );
+    }
+  }
+
+  private byte[] write( RowMetaInterface rowMeta, List<Object[]> rows, boolean compressing, int frameSize,
+    RowFrameWriter[] writer ) throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    writer[0] = new RowFrameWriter( bytes, null, compressing, frameSize );
+    writer[0].writeMeta( rowMeta );
+    for ( Object[] row : rows ) {
+      writer[0].writeRow( row );
+    }
+    writer[0].finish();
+    return bytes.toByteArray();
+  }
+
+  @Test
+  public void testRoundTrip() throws Exception {
+    RowMetaInterface rowMeta = createRowMeta();
+    List<Object[]> rows = createRows( 5000 );
+
+    for ( boolean compressing : new boolean[] { false, true } ) {
+      RowFrameWriter[] writer = new RowFrameWriter[1];
+      byte[] bytes = write( rowMeta, rows, compressing, 4096, writer );
+      assertTrue( writer[0].getFramesWritten() > 10 );
+
+      RowFrameReader reader = new RowFrameReader( new ByteArrayInputStream( bytes ), null );
+      RowMetaInterface readMeta = reader.readMeta();
+      assertEquals( rowMeta.getFieldNames().length, readMeta.size() );
+      assertEquals( "country", readMeta.getValueMeta( 1 ).getName() );
+      assertRowsEqual( rowMeta, rows, readAll( reader ) );
+      assertNull( reader.readRow() );
+    }
+  }
+
+  @Test
+  public void testRepeatedStringsAreSentOnce() throws Exception {
+    RowMetaInterface rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaString( "country" ) );
+    List<Object[]> rows = new ArrayList<Object[]>();
+    for ( int i = 0; i < 1000; i++ ) {
+      rows.add( new Object[] { "A rather long country name" } );
+    }
+
+    ByteArrayOutputStream legacy = new ByteArrayOutputStream();
+    DataOutputStream legacyStream = new DataOutputStream( legacy );
+    for ( Object[] row : rows ) {
+      rowMeta.writeData( legacyStream, row );
+    }
+    byte[] framed = write( rowMeta, rows, false, RowFrameWriter.DEFAULT_FRAME_SIZE, new RowFrameWriter[1] );
+    assertTrue( framed.length * 10 < legacy.size() );
+
+    // Compression helps for values that aren't in the dictionary
+    //
+    List<Object[]> numbers = createRows( 5000 );
+    byte[] plain = write( createRowMeta(), numbers, false, 4096, new RowFrameWriter[1] );
+    byte[] compressed = write( createRowMeta(), numbers, true, 4096, new RowFrameWriter[1] );
+    assertTrue( compressed.length < plain.length );
+  }
+
+  @Test
+  public void testEmptyAndForeignStreams() throws Exception {
+    assertNull( new RowFrameReader( new ByteArrayInputStream( new byte[0] ), null ).readMeta() );
+
+    ByteArrayOutputStream legacy = new ByteArrayOutputStream();
+    createRowMeta().writeMeta( new DataOutputStream( legacy ) );
+    try {
+      new RowFrameReader( new ByteArrayInputStream( legacy.toByteArray() ), null ).readMeta();
+      fail( "Rows that weren't sent in frames should be refused" );
+    } catch ( KettleFileException e ) {
+      // expected
+    }
+
+    // A stream that stops before the end frame is an error
+    //
+    byte[] bytes = write( createRowMeta(), createRows( 100 ), true, 512, new RowFrameWriter[1] );
+    RowFrameReader reader = new RowFrameReader( new ByteArrayInputStream( bytes, 0, bytes.length - 20 ), null );
+    reader.readMeta();
+    try {
+      readAll( reader );
+      fail( "A truncated stream should fail" );
+    } catch ( KettleFileException e ) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testWriterWaitsForCredits() throws Exception {
+    ByteArrayOutputStream credits = new ByteArrayOutputStream();
+    new DataOutputStream( credits ).writeInt( 2 );
+
+    RowFrameWriter writer =
+      new RowFrameWriter( new ByteArrayOutputStream(), new ByteArrayInputStream( credits.toByteArray() ), false );
+    writer.writeMeta( createRowMeta() );
+    List<Object[]> rows = createRows( 3 );
+    writer.writeRow( rows.get( 0 ) );
+    writer.flush();
+    writer.writeRow( rows.get( 1 ) );
+    writer.flush();
+    writer.writeRow( rows.get( 2 ) );
+    try {
+      // No third credit will ever come
+      writer.flush();
+      fail( "The writer should wait for a credit" );
+    } catch ( KettleFileException e ) {
+      // expected
+    }
+    assertEquals( 3, writer.getFramesWritten() );
+  }
+
+  @Test
+  public void testPipelinedWithCredits() throws Exception {
+    final RowMetaInterface rowMeta = createRowMeta();
+    final List<Object[]> rows = createRows( 20000 );
+
+    PipedOutputStream dataOut = new PipedOutputStream();
+    PipedInputStream dataIn = new PipedInputStream( dataOut, 65536 );
+    PipedOutputStream creditOut = new PipedOutputStream();
+    final PipedInputStream creditIn = new PipedInputStream( creditOut );
+
+    final RowFrameWriter writer = new RowFrameWriter( dataOut, creditIn, true, 1024 );
+    final AtomicReference<Exception> error = new AtomicReference<Exception>();
+    final CountDownLatch received = new CountDownLatch( 1 );
+    Thread thread = new Thread( new Runnable() {
+      public void run() {
+        try {
+          writer.writeMeta( rowMeta );
+          for ( Object[] row : rows ) {
+            writer.writeRow( row );
+          }
+          writer.finish();
+          // A pipe breaks when the thread reading from it goes away
+          received.await();
+        } catch ( Exception e ) {
+          error.set( e );
+        }
+      }
+    } );
+    thread.start();
+
+    RowFrameReader reader = new RowFrameReader( dataIn, creditOut, 2 );
+    assertNotNull( reader.readMeta() );
+    List<Object[]> result = readAll( reader );
+    received.countDown();
+    thread.join();
+
+    assertNull( error.get() );
+    assertRowsEqual( rowMeta, rows, result );
+  }
+}
@@ -0,0 +1,154 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2015 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.step;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.pentaho.di.core.BlockingRowSet;
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.KettleEnvironment;
+import org.pentaho.di.core.QueueRowSet;
+import org.pentaho.di.core.RowSet;
+import org.pentaho.di.trans.Trans;
+import org.pentaho.di.trans.TransHopMeta;
+import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.steps.dummytrans.DummyTransMeta;
+import org.pentaho.di.trans.steps.rowgenerator.RowGeneratorMeta;
+import org.pentaho.di.trans.steps.uniquerows.UniqueRowsMeta;
+
+public class StepFusionTest {
+
+  @BeforeClass
+  public static void initKettle() throws Exception {
+    KettleEnvironment.init( false );
+  }
+
+  /**
+   * generator -> first -> second -> unique -> last
+   */
+  private static TransMeta createTransMeta() {
+    TransMeta transMeta = new TransMeta();
+    transMeta.setName( "fusion" );
+
+    RowGeneratorMeta generator = new RowGeneratorMeta();
+    generator.setDefault();
+    generator.allocate( 1 );
+    generator.getFieldName()[0] = "a";
+    generator.getFieldType()[0] = "Integer";
+    generator.getValue()[0] = "1";
+    generator.getFieldLength()[0] = -1;
+    generator.getFieldPrecision()[0] = -1;
+    generator.setRowLimit( "1000" );
+    UniqueRowsMeta unique = new UniqueRowsMeta();
+    unique.setDefault();
+
+    StepMeta[] steps = {
+      new StepMeta( "generator", generator ), new StepMeta( "first", new DummyTransMeta() ),
+      new StepMeta( "second", new DummyTransMeta() ), new StepMeta( "unique", unique ),
+      new StepMeta( "last", new DummyTransMeta() ), };
+    for ( int i = 0; i < steps.length; i++ ) {
+      transMeta.addStep( steps[i] );
+      if ( i > 0 ) {
+        transMeta.addTransHop( new TransHopMeta( steps[i - 1], steps[i] ) );
+      }
+    }
+    return transMeta;
+  }
+
+  private static RowSet findRowSet( Trans trans, String from, String to ) {
+    return trans.findRowSet( from, 0, to, 0 );
+  }
+
+  @Test
+  public void testLinearChainIsFused() throws Exception {
+    Trans trans = new Trans( createTransMeta() );
+    trans.prepareExecution( null );
+    try {
+      List<List<StepMetaDataCombi>> chains = StepFusion.fuse( trans.getSteps(), trans.getRowsets() );
+      assertEquals( 1, chains.size() );
+      List<StepMetaDataCombi> chain = chains.get( 0 );
+      assertEquals( 3, chain.size() );
+      assertEquals( "generator", chain.get( 0 ).stepname );
+      assertEquals( "first", chain.get( 1 ).stepname );
+      assertEquals( "second", chain.get( 2 ).stepname );
+
+      // The row sets inside the chain are replaced, unique rows keeps its rows until the end and isn't fused
+      //
+      RowSet fused = findRowSet( trans, "generator", "first" );
+      assertTrue( fused instanceof QueueRowSet );
+      assertSame( fused, trans.findRunThread( "generator" ).getOutputRowSets().get( 0 ) );
+      assertSame( fused, trans.findRunThread( "first" ).getInputRowSets().get( 0 ) );
+      assertTrue( findRowSet( trans, "first", "second" ) instanceof QueueRowSet );
+      assertTrue( findRowSet( trans, "second", "unique" ) instanceof BlockingRowSet );
+      assertTrue( findRowSet( trans, "unique", "last" ) instanceof BlockingRowSet );
+    } finally {
+      trans.stopAll();
+    }
+  }
+
+  @Test
+  public void testFusedTransformationRuns() throws Exception {
+    Trans trans = new Trans( createTransMeta() );
+    trans.setVariable( Const.KETTLE_STEP_FUSION, "Y" );
+    trans.execute( null );
+    trans.waitUntilFinished();
+
+    assertEquals( 0, trans.getErrors() );
+    for ( String name : Arrays.asList( "generator", "first", "second" ) ) {
+      assertEquals( name, 1000, trans.findRunThread( name ).getLinesWritten() );
+    }
+    assertEquals( 1000, trans.findRunThread( "unique" ).getLinesRead() );
+    assertEquals( 1, trans.findRunThread( "last" ).getLinesRead() );
+    assertTrue( findRowSet( trans, "first", "second" ) instanceof QueueRowSet );
+  }
+
+  @Test
+  public void testFusedStepsFinishWhenTheyAreDone() throws Exception {
+    final Trans trans = new Trans( createTransMeta() );
+    trans.setVariable( Const.KETTLE_STEP_FUSION, "Y" );
+    trans.prepareExecution( null );
+
+    // The generator is disposed of before the rest of the chain has seen the end of the rows
+    //
+    final boolean[] restOfChainDone = new boolean[1];
+    trans.findRunThread( "generator" ).addStepListener( new StepAdapter() {
+      @Override
+      public void stepFinished( Trans t, StepMeta stepMeta, StepInterface step ) {
+        restOfChainDone[0] = findRowSet( trans, "first", "second" ).isDone();
+      }
+    } );
+    trans.startThreads();
+    trans.waitUntilFinished();
+
+    assertEquals( 0, trans.getErrors() );
+    assertFalse( restOfChainDone[0] );
+    for ( String name : Arrays.asList( "generator", "first", "second" ) ) {
+      assertFalse( name, trans.findRunThread( name ).isRunning() );
+    }
+  }
+}
@@ -0,0 +1,156 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2015 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.step;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.pentaho.di.core.BlockingRowSet;
+import org.pentaho.di.core.KettleEnvironment;
+import org.pentaho.di.core.RowSet;
+import org.pentaho.di.core.logging.LogChannelInterface;
+
+public class StepSchedulerTest {
+
+  @BeforeClass
+  public static void initKettle() throws Exception {
+    KettleEnvironment.init( false );
+  }
+
+  private static StepMetaDataCombi createStep( String name, Answer<Boolean> processRow ) throws Exception {
+    StepMetaDataCombi combi = new StepMetaDataCombi();
+    combi.stepname = name;
+    combi.copy = 0;
+    combi.step = mock( StepInterface.class );
+    combi.meta = mock( StepMetaInterface.class );
+    combi.data = mock( StepDataInterface.class );
+    when( combi.step.getLogChannel() ).thenReturn( mock( LogChannelInterface.class ) );
+    when( combi.step.processRow( any( StepMetaInterface.class ), any( StepDataInterface.class ) ) ).thenAnswer(
+      processRow );
+    return combi;
+  }
+
+  @Test
+  public void testStepsShareOneWorker() throws Exception {
+    final RowSet rowSet = new BlockingRowSet( 10 );
+    rowSet.setThreadNameFromToCopy( "producer", 0, "consumer", 0 );
+    final List<Object> received = Collections.synchronizedList( new ArrayList<Object>() );
+
+    StepMetaDataCombi producer = createStep( "producer", new Answer<Boolean>() {
+      private int nr;
+
+      public Boolean answer( InvocationOnMock invocation ) {
+        if ( nr < 1000 ) {
+          // The scheduler only calls when there's room, the row set never needs to wait
+          assertTrue( rowSet.size() < 10 );
+          rowSet.putRow( null, new Object[] { nr++ } );
+          return true;
+        }
+        rowSet.setDone();
+        return false;
+      }
+    } );
+    StepMetaDataCombi consumer = createStep( "consumer", new Answer<Boolean>() {
+      public Boolean answer( InvocationOnMock invocation ) {
+        Object[] row = rowSet.getRowImmediate();
+        if ( row == null ) {
+          assertTrue( rowSet.isDone() );
+          return false;
+        }
+        received.add( row[0] );
+        return true;
+      }
+    } );
+
+    StepScheduler scheduler = new StepScheduler( 1 );
+    // Start with the consumer to see it wait for rows without holding on to the worker
+    scheduler.schedule( Arrays.asList( consumer, producer ), Arrays.asList( rowSet ), 10 );
+
+    verify( producer.step, timeout( 10000 ) ).markStop();
+    verify( consumer.step, timeout( 10000 ) ).markStop();
+    verify( consumer.step ).dispose( consumer.meta, consumer.data );
+    verify( consumer.step ).setRunning( true );
+    verify( consumer.step ).setUsingThreadPriorityManagment( false );
+    assertEquals( 1000, received.size() );
+    for ( int i = 0; i < received.size(); i++ ) {
+      assertEquals( i, received.get( i ) );
+    }
+    assertEquals( 0, scheduler.getNrTasks() );
+  }
+
+  @Test
+  public void testWaitingStepGetsExtraWorker() throws Exception {
+    final CountDownLatch latch = new CountDownLatch( 1 );
+
+    StepMetaDataCombi waiting = createStep( "waiting", new Answer<Boolean>() {
+      public Boolean answer( InvocationOnMock invocation ) throws InterruptedException {
+        // Like a step reading an info stream: it waits for another step inside processRow()
+        return !latch.await( 10, TimeUnit.SECONDS );
+      }
+    } );
+    StepMetaDataCombi other = createStep( "other", new Answer<Boolean>() {
+      public Boolean answer( InvocationOnMock invocation ) {
+        latch.countDown();
+        return false;
+      }
+    } );
+
+    StepScheduler scheduler = new StepScheduler( 1 );
+    scheduler.schedule( Arrays.asList( waiting, other ), Collections.<RowSet>emptyList(), 10 );
+
+    verify( other.step, timeout( 5000 ) ).markStop();
+    verify( waiting.step, timeout( 5000 ) ).markStop();
+    assertEquals( 0, scheduler.getNrTasks() );
+  }
+
+  @Test
+  public void testErrorStopsTransformation() throws Exception {
+    StepMetaDataCombi failing = createStep( "failing", new Answer<Boolean>() {
+      public Boolean answer( InvocationOnMock invocation ) {
+        throw new IllegalStateException( "test" );
+      }
+    } );
+    LogChannelInterface log = failing.step.getLogChannel();
+    when( log.getLogChannelId() ).thenReturn( "unknown" );
+
+    StepScheduler scheduler = new StepScheduler( 1 );
+    scheduler.schedule( Arrays.asList( failing ), Collections.<RowSet>emptyList(), 10 );
+
+    verify( failing.step, timeout( 5000 ) ).markStop();
+    verify( failing.step ).setErrors( 1 );
+    verify( failing.step ).stopAll();
+    verify( failing.step ).dispose( failing.meta, failing.data );
+  }
+}
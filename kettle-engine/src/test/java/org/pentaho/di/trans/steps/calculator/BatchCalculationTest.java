@@ -0,0 +1,141 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2015 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.trans.steps.calculator;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.when;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.pentaho.di.core.KettleEnvironment;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.logging.LoggingObjectInterface;
+import org.pentaho.di.core.row.RowBatch;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaNumber;
+import org.pentaho.di.core.row.value.ValueMetaString;
+import org.pentaho.di.trans.steps.mock.StepMockHelper;
+
+public class BatchCalculationTest {
+  private StepMockHelper<CalculatorMeta, CalculatorData> smh;
+  private RowMetaInterface inputRowMeta;
+
+  @BeforeClass
+  public static void init() throws KettleException {
+    KettleEnvironment.init( false );
+  }
+
+  @Before
+  public void setUp() {
+    smh =
+      new StepMockHelper<CalculatorMeta, CalculatorData>( "Calculator", CalculatorMeta.class,
+        CalculatorData.class );
+    when( smh.logChannelInterfaceFactory.create( any(), any( LoggingObjectInterface.class ) ) ).thenReturn(
+      smh.logChannelInterface );
+
+    inputRowMeta = new RowMeta();
+    inputRowMeta.addValueMeta( new ValueMetaInteger( "a" ) );
+    inputRowMeta.addValueMeta( new ValueMetaInteger( "b" ) );
+    inputRowMeta.addValueMeta( new ValueMetaNumber( "x" ) );
+    inputRowMeta.addValueMeta( new ValueMetaNumber( "y" ) );
+    inputRowMeta.addValueMeta( new ValueMetaString( "s" ) );
+  }
+
+  private static CalculatorMetaFunction function( String name, int calcType, String fieldA, String fieldB, int type,
+    boolean removed ) {
+    return new CalculatorMetaFunction( name, calcType, fieldA, fieldB, null, type, 0, 0, removed, "", "", "", "" );
+  }
+
+  private BatchCalculation prepare( CalculatorMetaFunction... functions ) {
+    CalculatorMeta meta = new CalculatorMeta();
+    meta.setCalculation( functions );
+    RowMetaInterface calcRowMeta = meta.getAllFields( inputRowMeta );
+    RowMetaInterface outputRowMeta = inputRowMeta.clone();
+    meta.getFields( outputRowMeta, "Calculator", null, null, null, null, null );
+
+    Calculator calculator = new Calculator( smh.stepMeta, smh.stepDataInterface, 0, smh.transMeta, smh.trans );
+    Calculator.FieldIndexes[] fieldIndexes = new Calculator.FieldIndexes[functions.length];
+    for ( int i = 0; i < functions.length; i++ ) {
+      fieldIndexes[i] = calculator.new FieldIndexes();
+      fieldIndexes[i].indexName = calcRowMeta.indexOfValue( functions[i].getFieldName() );
+      fieldIndexes[i].indexA = calcRowMeta.indexOfValue( functions[i].getFieldA() );
+      fieldIndexes[i].indexB =
+        functions[i].getFieldB() == null ? -1 : calcRowMeta.indexOfValue( functions[i].getFieldB() );
+      fieldIndexes[i].indexC = -1;
+    }
+    return BatchCalculation.prepare( functions, fieldIndexes, calcRowMeta, inputRowMeta.size(), outputRowMeta
+      .size() );
+  }
+
+  @Test
+  public void testCalculate() throws Exception {
+    BatchCalculation batchCalculation = prepare(
+      function( "sum", CalculatorMetaFunction.CALC_ADD, "a", "b", ValueMetaInterface.TYPE_INTEGER, false ),
+      function( "diff", CalculatorMetaFunction.CALC_SUBTRACT, "sum", "b", ValueMetaInterface.TYPE_INTEGER, true ),
+      function( "prod", CalculatorMetaFunction.CALC_MULTIPLY, "x", "y", ValueMetaInterface.TYPE_NUMBER, false ),
+      function( "sq", CalculatorMetaFunction.CALC_SQUARE, "diff", null, ValueMetaInterface.TYPE_INTEGER, false ),
+      function( "quot", CalculatorMetaFunction.CALC_DIVIDE, "x", "y", ValueMetaInterface.TYPE_NUMBER, false ),
+      function( "copy", CalculatorMetaFunction.CALC_COPY_OF_FIELD, "a", null, ValueMetaInterface.TYPE_INTEGER,
+        false ) );
+    assertNotNull( batchCalculation );
+
+    RowBatch batch = new RowBatch( inputRowMeta, 4 );
+    batch.addRow( new Object[] { 3L, 4L, 1.5, 2.0, "one" } );
+    batch.addRow( new Object[] { null, 1L, null, 0.0, "two" } );
+    batch.addRow( new Object[] { -2L, 5L, 3.0, -1.0, null } );
+    RowBatch outputBatch = new RowBatch( new RowMeta(), 4 );
+    batchCalculation.calculate( batch, outputBatch );
+
+    assertEquals( 3, outputBatch.size() );
+    assertOutput( outputBatch.getRow( 0 ), new Object[] { 3L, 4L, 1.5, 2.0, "one", 7L, 3.0, 9L, 0.75, 3L } );
+    assertOutput( outputBatch.getRow( 1 ), new Object[] { null, 1L, null, 0.0, "two", null, null, null, null,
+      null } );
+    assertOutput( outputBatch.getRow( 2 ), new Object[] { -2L, 5L, 3.0, -1.0, null, 3L, -3.0, 4L, -3.0, -2L } );
+  }
+
+  private static void assertOutput( Object[] row, Object[] expected ) {
+    for ( int i = 0; i < expected.length; i++ ) {
+      assertEquals( "field " + i, expected[i], row[i] );
+    }
+  }
+
+  @Test
+  public void testNotSupported() throws Exception {
+    // Strings, conversions and other functions are calculated row by row
+    //
+    assertNull( prepare( function( "c", CalculatorMetaFunction.CALC_ADD, "s", "s", ValueMetaInterface.TYPE_STRING,
+      false ) ) );
+    assertNull( prepare( function( "c", CalculatorMetaFunction.CALC_ADD, "a", "b", ValueMetaInterface.TYPE_NUMBER,
+      false ) ) );
+    assertNull( prepare( function( "c", CalculatorMetaFunction.CALC_ADD, "a", "x", ValueMetaInterface.TYPE_INTEGER,
+      false ) ) );
+    assertNull( prepare( function( "c", CalculatorMetaFunction.CALC_SQUARE_ROOT, "x", null,
+      ValueMetaInterface.TYPE_NUMBER, false ) ) );
+  }
+}
@@ -42,6 +42,7 @@ import static org.pentaho.di.trans.steps.calculator.CalculatorMetaFunction.CALC_
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import junit.framework.Assert;
@@ -481,6 +482,71 @@ public class CalculatorUnitTest {
     assertRoundCustom2( -3.0, -2.7, 0, Const.ROUND_HALF_CEILING );
   }
 
+  @Test
+  public void testCompiledCalculations() throws KettleException {
+    Object[][] rows = { { 2L, 3L, 1.5 }, { null, 4L, 2.0 }, { 7L, -2L, null }, { 9L, 0L, -0.5 } };
+    List<Object[]> interpreted = calculate( rows, false );
+    List<Object[]> compiled = calculate( rows, true );
+    Assert.assertEquals( interpreted.size(), compiled.size() );
+    for ( int i = 0; i < interpreted.size(); i++ ) {
+      Assert.assertEquals( interpreted.get( i ).length, compiled.get( i ).length );
+      for ( int j = 0; j < interpreted.get( i ).length; j++ ) {
+        Assert.assertEquals( "row " + i + ", field " + j, interpreted.get( i )[j], compiled.get( i )[j] );
+      }
+    }
+    Assert.assertEquals( Long.valueOf( 5L ), compiled.get( 0 )[3] );
+    Assert.assertEquals( Long.valueOf( -1L ), compiled.get( 0 )[4] );
+  }
+
+  private List<Object[]> calculate( Object[][] rows, boolean compile ) throws KettleException {
+    RowMeta inputRowMeta = new RowMeta();
+    inputRowMeta.addValueMeta( new ValueMetaInteger( "a" ) );
+    inputRowMeta.addValueMeta( new ValueMetaInteger( "b" ) );
+    inputRowMeta.addValueMeta( new ValueMetaNumber( "c" ) );
+
+    RowSet inputRowSet = smh.getMockInputRowSet( rows );
+    inputRowSet.setRowMeta( inputRowMeta );
+
+    Calculator calculator = new Calculator( smh.stepMeta, smh.stepDataInterface, 0, smh.transMeta, smh.trans );
+    calculator.getInputRowSets().add( inputRowSet );
+    calculator.setInputRowMeta( inputRowMeta );
+    calculator.setVariable( Const.KETTLE_COMPILED_EXPRESSIONS, compile ? "Y" : "N" );
+    calculator.init( smh.initStepMetaInterface, smh.initStepDataInterface );
+
+    // a+b, a+b-a*b with a temporary product and a square root that is interpreted
+    //
+    CalculatorMeta meta = new CalculatorMeta();
+    meta.setCalculation( new CalculatorMetaFunction[] {
+      new CalculatorMetaFunction( "sum", CalculatorMetaFunction.CALC_ADD, "a", "b", null,
+        ValueMetaInterface.TYPE_INTEGER, 0, 0, false, "", "", "", "" ),
+      new CalculatorMetaFunction( "product", CalculatorMetaFunction.CALC_MULTIPLY, "a", "b", null,
+        ValueMetaInterface.TYPE_INTEGER, 0, 0, true, "", "", "", "" ),
+      new CalculatorMetaFunction( "result", CalculatorMetaFunction.CALC_SUBTRACT, "sum", "product", null,
+        ValueMetaInterface.TYPE_INTEGER, 0, 0, false, "", "", "", "" ),
+      new CalculatorMetaFunction( "square", CalculatorMetaFunction.CALC_SQUARE, "c", null, null,
+        ValueMetaInterface.TYPE_NUMBER, 0, 0, false, "", "", "", "" ),
+      new CalculatorMetaFunction( "root", CalculatorMetaFunction.CALC_SQUARE_ROOT, "square", null, null,
+        ValueMetaInterface.TYPE_NUMBER, 0, 0, false, "", "", "", "" ) } );
+
+    final List<Object[]> result = new ArrayList<Object[]>();
+    calculator.addRowListener( new RowAdapter() {
+      @Override public void rowWrittenEvent( RowMetaInterface rowMeta, Object[] row ) throws KettleStepException {
+        result.add( Arrays.copyOf( row, rowMeta.size() ) );
+      }
+    } );
+    CalculatorData data = new CalculatorData();
+    while ( calculator.processRow( meta, data ) ) {
+      // keep going
+    }
+    if ( compile ) {
+      Assert.assertEquals( 4, data.getCompiledCalculation().getNrCompiled() );
+      Assert.assertEquals( 1, data.getCompiledCalculation().getNrInterpreted() );
+    } else {
+      Assert.assertNull( data.getCompiledCalculation() );
+    }
+    return result;
+  }
+
   public void assertRoundGeneral( final Object expectedResult, final int calcFunction, final Number value,
       final Long precision, final Long roundingMode, final int valueDataType, final int functionDataType ) throws KettleException {
 
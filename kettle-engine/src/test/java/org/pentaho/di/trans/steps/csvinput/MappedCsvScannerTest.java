@@ -0,0 +1,138 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2015 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.csvinput;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MappedCsvScannerTest {
+
+  private File file;
+  private FileInputStream in;
+
+  @Before
+  public void setUp() throws Exception {
+    file = File.createTempFile( "mapped", ".csv" );
+    file.deleteOnExit();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    if ( in != null ) {
+      in.close();
+    }
+    file.delete();
+  }
+
+  private FileChannel open( String content ) throws Exception {
+    FileOutputStream out = new FileOutputStream( file );
+    try {
+      out.write( content.getBytes( "UTF-8" ) );
+    } finally {
+      out.close();
+    }
+    in = new FileInputStream( file );
+    return in.getChannel();
+  }
+
+  private List<String> scan( String content, long start, int maxFields, boolean newlinesInFields, int windowSize )
+    throws Exception {
+    MappedCsvScanner scanner =
+      new MappedCsvScanner( open( content ), start, (byte) ';', new byte[] { '"' }, maxFields, newlinesInFields,
+        windowSize );
+    List<String> rows = new ArrayList<String>();
+    long length = start;
+    while ( scanner.nextRow( false ) ) {
+      StringBuilder row = new StringBuilder();
+      for ( int i = 0; i < Math.min( maxFields, scanner.getFieldCount() ); i++ ) {
+        row.append( '[' ).append( new String( scanner.getField( i ), "UTF-8" ) ).append( ']' );
+      }
+      rows.add( row.toString() );
+      length += scanner.getRowLength();
+      assertEquals( length, scanner.getPosition() );
+    }
+    scanner.close();
+    return rows;
+  }
+
+  @Test
+  public void testMatches() {
+    long pattern = 0x0101010101010101L * ';';
+    assertEquals( 0L, MappedCsvScanner.matches( 0x6867666564636261L, pattern ) );
+    long found = MappedCsvScanner.matches( 0x68673B65643B6261L, pattern );
+    assertEquals( 2, Long.numberOfTrailingZeros( found ) >>> 3 );
+    assertEquals( 2, Long.bitCount( found ) );
+    // Bytes with the highest bit set or just above the pattern don't match
+    assertEquals( 0L, MappedCsvScanner.matches( 0xBBFFBC3C3A80BB3DL, pattern ) );
+  }
+
+  @Test
+  public void testRowsAndFields() throws Exception {
+    String content = "a;bb;ccc\r\n\"x;y\";\"say \"\"hi\"\"\";\n\n1;2;3;4\nlast;row";
+    List<String> expected = new ArrayList<String>();
+    expected.add( "[a][bb][ccc]" );
+    expected.add( "[x;y][say \"hi\"][]" );
+    expected.add( "[]" );
+    expected.add( "[1][2][3]" );
+    expected.add( "[last][row]" );
+
+    // The result doesn't depend on where the windows end
+    //
+    for ( int windowSize : new int[] { 1, 3, 8, 13, 1024 } ) {
+      assertEquals( "window size " + windowSize, expected, scan( content, 0L, 3, false, windowSize ) );
+    }
+  }
+
+  @Test
+  public void testNewlinesInFields() throws Exception {
+    String content = "a\nb;c\nd;e\n";
+    List<String> expected = new ArrayList<String>();
+    expected.add( "[a\nb][c]" );
+    expected.add( "[d][e]" );
+    assertEquals( expected, scan( content, 0L, 2, true, 4 ) );
+  }
+
+  @Test
+  public void testStartPosition() throws Exception {
+    List<String> expected = new ArrayList<String>();
+    expected.add( "[]" );
+    expected.add( "[b]" );
+    expected.add( "[c]" );
+    assertEquals( expected, scan( "a\r\nb\nc", 1L, 1, false, 8 ) );
+  }
+
+  @Test
+  public void testEmptyFile() throws Exception {
+    assertTrue( scan( "", 0L, 3, false, 8 ).isEmpty() );
+  }
+}
@@ -0,0 +1,331 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2015 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.databaselookup;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.contains;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isNull;
+import static org.mockito.Mockito.*;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.pentaho.di.core.KettleEnvironment;
+import org.pentaho.di.core.ProgressMonitorListener;
+import org.pentaho.di.core.QueueRowSet;
+import org.pentaho.di.core.RowSet;
+import org.pentaho.di.core.database.Database;
+import org.pentaho.di.core.database.DatabaseMeta;
+import org.pentaho.di.core.database.MySQLDatabaseMeta;
+import org.pentaho.di.core.database.OracleDatabaseMeta;
+import org.pentaho.di.core.logging.LoggingObjectInterface;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaString;
+import org.pentaho.di.trans.steps.mock.StepMockHelper;
+
+public class DatabaseLookupBatchTest {
+  private StepMockHelper<DatabaseLookupMeta, DatabaseLookupData> smh;
+
+  @BeforeClass
+  public static void initKettle() throws Exception {
+    KettleEnvironment.init();
+  }
+
+  @Before
+  public void setUp() {
+    smh =
+      new StepMockHelper<DatabaseLookupMeta, DatabaseLookupData>( "Database Lookup", DatabaseLookupMeta.class,
+        DatabaseLookupData.class );
+    when( smh.logChannelInterfaceFactory.create( any(), any( LoggingObjectInterface.class ) ) ).thenReturn(
+      smh.logChannelInterface );
+    when( smh.trans.isRunning() ).thenReturn( true );
+  }
+
+  private DatabaseLookupMeta createMeta( int batchSize ) {
+    DatabaseMeta dbMeta = new DatabaseMeta();
+    dbMeta.setDatabaseInterface( new MySQLDatabaseMeta() );
+
+    DatabaseLookupMeta meta = new DatabaseLookupMeta();
+    meta.setDefault();
+    meta.setDatabaseMeta( dbMeta );
+    meta.setTablename( "lookup" );
+    meta.setStreamKeyField1( new String[] { "id" } );
+    meta.setStreamKeyField2( new String[] { null } );
+    meta.setTableKeyField( new String[] { "id" } );
+    meta.setKeyCondition( new String[] { "=" } );
+    meta.setReturnValueField( new String[] { "value" } );
+    meta.setReturnValueNewName( new String[] { "value" } );
+    meta.setReturnValueDefault( new String[] { "none" } );
+    meta.setReturnValueDefaultType( new int[] { ValueMetaInterface.TYPE_STRING } );
+    meta.setBatchSize( batchSize );
+    return meta;
+  }
+
+  private RowMetaInterface tableMeta() {
+    RowMetaInterface rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaInteger( "id" ) );
+    rowMeta.addValueMeta( new ValueMetaString( "value" ) );
+    return rowMeta;
+  }
+
+  @Test
+  public void testRowsAreLookedUpInBatches() throws Exception {
+    ResultSet first = mock( ResultSet.class );
+    ResultSet second = mock( ResultSet.class );
+    ResultSet third = mock( ResultSet.class );
+    Database db = mock( Database.class );
+    doReturn( tableMeta() ).when( db ).getTableFields( anyString() );
+    doReturn( tableMeta() ).when( db ).getReturnRowMeta();
+    doReturn( mock( PreparedStatement.class ) ).when( db ).prepareSQL( anyString() );
+    when( db.openQuery( any( PreparedStatement.class ), any( RowMetaInterface.class ), any( Object[].class ) ) )
+      .thenReturn( first, second, third );
+    doReturn( Arrays.asList( new Object[][] { { 2L, "two" }, { 1L, "one" } } ) ).when( db ).getRows( eq( first ),
+      anyInt(), (ProgressMonitorListener) isNull() );
+    doReturn( Arrays.asList( new Object[][] { { 4L, "four" }, { 4L, "second four" } } ) ).when( db ).getRows(
+      eq( second ), anyInt(), (ProgressMonitorListener) isNull() );
+    doReturn( Arrays.asList( new Object[][] { { 1L, "one" } } ) ).when( db ).getRows( eq( third ), anyInt(),
+      (ProgressMonitorListener) isNull() );
+
+    DatabaseLookup step =
+      spy( new DatabaseLookup( smh.stepMeta, smh.stepDataInterface, 0, smh.transMeta, smh.trans ) );
+    doReturn( db ).when( step ).getDatabase( any( DatabaseMeta.class ) );
+
+    RowMetaInterface inputRowMeta = new RowMeta();
+    inputRowMeta.addValueMeta( new ValueMetaInteger( "id" ) );
+    RowSet input =
+      smh.getMockInputRowSet( new Object[][] { { 1L }, { 2L }, { 1L }, { 3L }, { null }, { 4L }, { 1L } } );
+    doReturn( inputRowMeta ).when( input ).getRowMeta();
+    step.getInputRowSets().add( input );
+    step.setInputRowMeta( inputRowMeta );
+    RowSet output = new QueueRowSet();
+    step.getOutputRowSets().add( output );
+
+    DatabaseLookupMeta meta = createMeta( 3 );
+    DatabaseLookupData data = new DatabaseLookupData();
+    Assert.assertTrue( "Step init failed", step.init( meta, data ) );
+    while ( step.processRow( meta, data ) ) {
+      // keep going
+    }
+    step.dispose( meta, data );
+
+    // The rows come out in the order they went in
+    //
+    List<Object> values = new ArrayList<Object>();
+    Object[] row;
+    while ( ( row = output.getRow() ) != null ) {
+      values.add( row[1] );
+    }
+    Assert.assertEquals( Arrays.<Object>asList( "one", "two", "one", "none", "none", "four", "one" ), values );
+
+    // One statement, looked up twice with the distinct keys, padded with the last one
+    //
+    verify( db ).prepareSQL( contains( "IN (?, ?, ?)" ) );
+    ArgumentCaptor<Object[]> parameters = ArgumentCaptor.forClass( Object[].class );
+    verify( db, times( 3 ) ).openQuery( any( PreparedStatement.class ), any( RowMetaInterface.class ),
+      parameters.capture() );
+    Assert.assertArrayEquals( new Object[] { 1L, 2L, 2L }, parameters.getAllValues().get( 0 ) );
+    Assert.assertArrayEquals( new Object[] { 3L, 4L, 4L }, parameters.getAllValues().get( 1 ) );
+    Assert.assertArrayEquals( new Object[] { 1L, 1L, 1L }, parameters.getAllValues().get( 2 ) );
+    verify( db, never() ).getLookup( anyBoolean(), anyBoolean() );
+  }
+
+  @Test
+  public void testBatchesNeedEqualConditions() throws Exception {
+    Database db = mock( Database.class );
+    doReturn( tableMeta() ).when( db ).getTableFields( anyString() );
+    RowMetaInterface returnMeta = new RowMeta();
+    returnMeta.addValueMeta( new ValueMetaString( "value" ) );
+    doReturn( returnMeta ).when( db ).getReturnRowMeta();
+    doReturn( new Object[] { "one" } ).when( db ).getLookup( anyBoolean(), anyBoolean() );
+
+    DatabaseLookup step =
+      spy( new DatabaseLookup( smh.stepMeta, smh.stepDataInterface, 0, smh.transMeta, smh.trans ) );
+    doReturn( db ).when( step ).getDatabase( any( DatabaseMeta.class ) );
+
+    RowMetaInterface inputRowMeta = new RowMeta();
+    inputRowMeta.addValueMeta( new ValueMetaInteger( "id" ) );
+    RowSet input = smh.getMockInputRowSet( new Object[][] { { 1L } } );
+    doReturn( inputRowMeta ).when( input ).getRowMeta();
+    step.getInputRowSets().add( input );
+    step.setInputRowMeta( inputRowMeta );
+    step.getOutputRowSets().add( new QueueRowSet() );
+
+    DatabaseLookupMeta meta = createMeta( 100 );
+    meta.setKeyCondition( new String[] { ">=" } );
+    DatabaseLookupData data = new DatabaseLookupData();
+    Assert.assertTrue( "Step init failed", step.init( meta, data ) );
+    Assert.assertTrue( step.processRow( meta, data ) );
+    Assert.assertEquals( 0, data.batchSize );
+    verify( db ).getLookup( anyBoolean(), anyBoolean() );
+    step.dispose( meta, data );
+  }
+
+  @Test
+  public void testBatchSizeIsLimitedByTheDatabase() throws Exception {
+    Database db = mock( Database.class );
+    doReturn( tableMeta() ).when( db ).getTableFields( anyString() );
+    doReturn( mock( PreparedStatement.class ) ).when( db ).prepareSQL( anyString() );
+
+    DatabaseLookup step =
+      spy( new DatabaseLookup( smh.stepMeta, smh.stepDataInterface, 0, smh.transMeta, smh.trans ) );
+    doReturn( db ).when( step ).getDatabase( any( DatabaseMeta.class ) );
+
+    RowMetaInterface inputRowMeta = new RowMeta();
+    inputRowMeta.addValueMeta( new ValueMetaInteger( "id" ) );
+    RowSet input = smh.getMockInputRowSet( new Object[][] { { 1L } } );
+    doReturn( inputRowMeta ).when( input ).getRowMeta();
+    step.getInputRowSets().add( input );
+    step.setInputRowMeta( inputRowMeta );
+    step.getOutputRowSets().add( new QueueRowSet() );
+
+    // Oracle doesn't accept more than 1000 values in an IN list
+    //
+    DatabaseLookupMeta meta = createMeta( 5000 );
+    meta.getDatabaseMeta().setDatabaseInterface( new OracleDatabaseMeta() );
+    DatabaseLookupData data = new DatabaseLookupData();
+    Assert.assertTrue( "Step init failed", step.init( meta, data ) );
+    Assert.assertTrue( step.processRow( meta, data ) );
+    Assert.assertEquals( 1000, data.batchSize );
+    Assert.assertEquals( 1000, data.batchParameterMeta.size() );
+    step.dispose( meta, data );
+  }
+
+  private RowMetaInterface stringTableMeta() {
+    RowMetaInterface rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaString( "id" ) );
+    rowMeta.addValueMeta( new ValueMetaString( "value" ) );
+    return rowMeta;
+  }
+
+  /**
+   * Looks up string keys in a database that finds the given rows for the batch and the given values when a key is
+   * looked up on its own.
+   */
+  private List<Object> lookUpStrings( Database db, List<Object[]> found, final Map<String, Object[]> single,
+    String... keys ) throws Exception {
+    ResultSet resultSet = mock( ResultSet.class );
+    doReturn( stringTableMeta() ).when( db ).getTableFields( anyString() );
+    doReturn( stringTableMeta() ).when( db ).getReturnRowMeta();
+    doReturn( mock( PreparedStatement.class ) ).when( db ).prepareSQL( anyString() );
+    when( db.openQuery( any( PreparedStatement.class ), any( RowMetaInterface.class ), any( Object[].class ) ) )
+      .thenReturn( resultSet );
+    doReturn( found ).when( db ).getRows( eq( resultSet ), anyInt(), (ProgressMonitorListener) isNull() );
+    final Object[][] lookupRow = new Object[1][];
+    doAnswer( new Answer<Void>() {
+      @Override
+      public Void answer( InvocationOnMock invocation ) throws Throwable {
+        lookupRow[0] = (Object[]) invocation.getArguments()[1];
+        return null;
+      }
+    } ).when( db ).setValuesLookup( any( RowMetaInterface.class ), any( Object[].class ) );
+    doAnswer( new Answer<Object[]>() {
+      @Override
+      public Object[] answer( InvocationOnMock invocation ) throws Throwable {
+        return single.get( lookupRow[0][0] );
+      }
+    } ).when( db ).getLookup( anyBoolean(), anyBoolean() );
+
+    DatabaseLookup step =
+      spy( new DatabaseLookup( smh.stepMeta, smh.stepDataInterface, 0, smh.transMeta, smh.trans ) );
+    doReturn( db ).when( step ).getDatabase( any( DatabaseMeta.class ) );
+
+    RowMetaInterface inputRowMeta = new RowMeta();
+    inputRowMeta.addValueMeta( new ValueMetaString( "id" ) );
+    Object[][] rows = new Object[keys.length][];
+    for ( int i = 0; i < keys.length; i++ ) {
+      rows[i] = new Object[] { keys[i] };
+    }
+    RowSet input = smh.getMockInputRowSet( rows );
+    doReturn( inputRowMeta ).when( input ).getRowMeta();
+    step.getInputRowSets().add( input );
+    step.setInputRowMeta( inputRowMeta );
+    RowSet output = new QueueRowSet();
+    step.getOutputRowSets().add( output );
+
+    DatabaseLookupMeta meta = createMeta( keys.length );
+    DatabaseLookupData data = new DatabaseLookupData();
+    Assert.assertTrue( "Step init failed", step.init( meta, data ) );
+    while ( step.processRow( meta, data ) ) {
+      // keep going
+    }
+    step.dispose( meta, data );
+
+    List<Object> values = new ArrayList<Object>();
+    Object[] row;
+    while ( ( row = output.getRow() ) != null ) {
+      values.add( row[1] );
+    }
+    return values;
+  }
+
+  @Test
+  public void testCaseInsensitiveMatchesAreLookedUpOneByOne() throws Exception {
+    Database db = mock( Database.class );
+    Map<String, Object[]> single = new HashMap<String, Object[]>();
+    single.put( "abc", new Object[] { "upper" } );
+
+    // A case insensitive collation finds a single row for both keys
+    //
+    List<Object> values =
+      lookUpStrings( db, Arrays.asList( new Object[][] { { "ABC", "upper" } } ), single, "ABC", "abc", "zzz" );
+    Assert.assertEquals( Arrays.<Object>asList( "upper", "upper", "none" ), values );
+
+    // Only the key that may have been found by the database is looked up again
+    //
+    ArgumentCaptor<Object[]> lookupRow = ArgumentCaptor.forClass( Object[].class );
+    verify( db ).setValuesLookup( any( RowMetaInterface.class ), lookupRow.capture() );
+    Assert.assertArrayEquals( new Object[] { "abc" }, lookupRow.getValue() );
+  }
+
+  @Test
+  public void testUnmatchedRowsLookUpTheMissingKeysOneByOne() throws Exception {
+    Database db = mock( Database.class );
+    Map<String, Object[]> single = new HashMap<String, Object[]>();
+    single.put( "x", new Object[] { "padded" } );
+
+    // A CHAR column comes back padded with spaces
+    //
+    List<Object> values =
+      lookUpStrings( db, Arrays.asList( new Object[][] { { "x    ", "padded" } } ), single, "x", "y" );
+    Assert.assertEquals( Arrays.<Object>asList( "padded", "none" ), values );
+    verify( db, times( 2 ) ).getLookup( anyBoolean(), anyBoolean() );
+  }
+}
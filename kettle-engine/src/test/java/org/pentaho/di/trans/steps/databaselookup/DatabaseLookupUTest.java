@@ -33,6 +33,7 @@ import org.pentaho.di.core.KettleEnvironment;
 import org.pentaho.di.core.RowMetaAndData;
 import org.pentaho.di.core.RowSet;
 import org.pentaho.di.core.TimedRow;
+import org.pentaho.di.core.cache.LookupCacheManager;
 import org.pentaho.di.core.database.Database;
 import org.pentaho.di.core.database.DatabaseMeta;
 import org.pentaho.di.core.database.MySQLDatabaseMeta;
@@ -254,4 +255,40 @@ public class DatabaseLookupUTest {
 
     Assert.assertTrue( Arrays.equals( dataFromCache, add1 ) );
   }
+
+  @Test
+  public void sharedCacheIsUsedByAllCopies() throws KettleException {
+    StepMockHelper<DatabaseLookupMeta, DatabaseLookupData> mockHelper = new StepMockHelper<DatabaseLookupMeta,
+      DatabaseLookupData>( "Test", DatabaseLookupMeta.class, DatabaseLookupData.class );
+    when( mockHelper.logChannelInterfaceFactory.create( any(), any( LoggingObjectInterface.class ) ) )
+      .thenReturn( mockHelper.logChannelInterface );
+
+    ValueMetaInterface valueMeta = new ValueMetaInteger( "fieldTest" );
+    RowMeta lookupMeta = new RowMeta();
+    lookupMeta.setValueMetaList( Collections.singletonList( valueMeta ) );
+
+    DatabaseLookupData[] copies = new DatabaseLookupData[ 2 ];
+    DatabaseLookup[] steps = new DatabaseLookup[ 2 ];
+    for ( int i = 0; i < copies.length; i++ ) {
+      steps[ i ] = new DatabaseLookup( mockHelper.stepMeta, mockHelper.stepDataInterface, i, mockHelper.transMeta,
+        mockHelper.trans );
+      copies[ i ] = new DatabaseLookupData();
+      copies[ i ].sharedCache = LookupCacheManager.getInstance().acquire( "sharedCacheIsUsedByAllCopies", 0, 0 );
+      steps[ i ].init( new DatabaseLookupMeta(), copies[ i ] );
+      copies[ i ].allEquals = true;
+      copies[ i ].lookupMeta = lookupMeta;
+    }
+
+    Object[] add = new Object[] { 10L };
+    steps[ 0 ].storeRowInCache( lookupMeta, new Object[] { 1L }, add );
+    Assert.assertSame( add, steps[ 1 ].getRowFromCache( lookupMeta, new Object[] { 1L } ) );
+    Assert.assertNull( steps[ 1 ].getRowFromCache( lookupMeta, new Object[] { 2L } ) );
+    Assert.assertEquals( 1, copies[ 0 ].sharedCache.getHitCount() );
+
+    for ( int i = 0; i < copies.length; i++ ) {
+      steps[ i ].dispose( new DatabaseLookupMeta(), copies[ i ] );
+      Assert.assertNull( copies[ i ].sharedCache );
+    }
+    Assert.assertNull( LookupCacheManager.getInstance().getCache( "sharedCacheIsUsedByAllCopies" ) );
+  }
 }
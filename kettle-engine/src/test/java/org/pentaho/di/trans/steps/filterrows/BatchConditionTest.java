@@ -0,0 +1,149 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2015 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.trans.steps.filterrows;
+
+import static org.junit.Assert.*;
+
+import java.util.Date;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.pentaho.di.core.Condition;
+import org.pentaho.di.core.KettleEnvironment;
+import org.pentaho.di.core.row.RowBatch;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaAndData;
+import org.pentaho.di.core.row.value.ValueMetaBoolean;
+import org.pentaho.di.core.row.value.ValueMetaDate;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaNumber;
+import org.pentaho.di.core.row.value.ValueMetaString;
+
+public class BatchConditionTest {
+
+  private static final Object[][] ROWS = {
+    { 1L, "alpha", 1.5, 1L, Boolean.TRUE, new Date( 0L ) },
+    { 5L, "Beta", null, 6L, Boolean.FALSE, null },
+    { null, "", 2.0, null, null, new Date( 1000L ) },
+    { 10L, null, -3.0, 10L, Boolean.TRUE, new Date( 2000L ) },
+    { 5L, "gamma", Double.NaN, 5L, Boolean.FALSE, new Date( 1000L ) }, };
+
+  private RowMetaInterface rowMeta;
+
+  @BeforeClass
+  public static void initKettle() throws Exception {
+    KettleEnvironment.init( false );
+  }
+
+  private RowMetaInterface getRowMeta() {
+    if ( rowMeta == null ) {
+      rowMeta = new RowMeta();
+      rowMeta.addValueMeta( new ValueMetaInteger( "id" ) );
+      rowMeta.addValueMeta( new ValueMetaString( "name" ) );
+      rowMeta.addValueMeta( new ValueMetaNumber( "amount" ) );
+      rowMeta.addValueMeta( new ValueMetaInteger( "other" ) );
+      rowMeta.addValueMeta( new ValueMetaBoolean( "flag" ) );
+      rowMeta.addValueMeta( new ValueMetaDate( "date" ) );
+    }
+    return rowMeta;
+  }
+
+  private static Condition condition( String left, int function, String right, Object constant ) throws Exception {
+    return new Condition( left, function, right, constant == null ? null : new ValueMetaAndData( "constant",
+      constant ) );
+  }
+
+  private BatchCondition assertSameResults( Condition condition ) throws Exception {
+    BatchCondition batchCondition = BatchCondition.prepare( condition, getRowMeta() );
+    assertNotNull( condition.toString(), batchCondition );
+
+    RowBatch batch = new RowBatch( getRowMeta(), 8 );
+    for ( Object[] row : ROWS ) {
+      batch.addRow( row );
+    }
+    boolean[] selection = new boolean[batch.getCapacity()];
+    batchCondition.evaluate( batch, selection );
+    for ( int i = 0; i < ROWS.length; i++ ) {
+      assertEquals( condition.toString() + " row " + i, condition.evaluate( getRowMeta(), ROWS[i] ), selection[i] );
+    }
+    return batchCondition;
+  }
+
+  @Test
+  public void testComparisons() throws Exception {
+    int[] functions = {
+      Condition.FUNC_EQUAL, Condition.FUNC_NOT_EQUAL, Condition.FUNC_SMALLER, Condition.FUNC_SMALLER_EQUAL,
+      Condition.FUNC_LARGER, Condition.FUNC_LARGER_EQUAL, };
+    for ( int function : functions ) {
+      assertSameResults( condition( "id", function, null, 5L ) );
+      assertSameResults( condition( "id", function, null, "5" ) );
+      assertSameResults( condition( "amount", function, null, 1.5 ) );
+      assertSameResults( condition( "amount", function, null, 2L ) );
+      assertSameResults( condition( "flag", function, null, Boolean.TRUE ) );
+      assertSameResults( condition( "date", function, null, new Date( 1000L ) ) );
+      assertSameResults( new Condition( true, "id", function, null, new ValueMetaAndData( "constant", 5L ) ) );
+    }
+  }
+
+  @Test
+  public void testNullChecks() throws Exception {
+    assertSameResults( condition( "id", Condition.FUNC_NULL, null, null ) );
+    assertSameResults( condition( "amount", Condition.FUNC_NOT_NULL, null, null ) );
+    assertSameResults( condition( "date", Condition.FUNC_NULL, null, null ) );
+    assertSameResults( new Condition( true, "flag", Condition.FUNC_NULL, null, null ) );
+  }
+
+  @Test
+  public void testCompositeConditions() throws Exception {
+    Condition condition = new Condition();
+    condition.addCondition( condition( "id", Condition.FUNC_LARGER, null, 1L ) );
+    Condition or = condition( "name", Condition.FUNC_NULL, null, null );
+    or.setOperator( Condition.OPERATOR_OR );
+    condition.addCondition( or );
+    Condition andNot = condition( "flag", Condition.FUNC_EQUAL, null, Boolean.FALSE );
+    andNot.setOperator( Condition.OPERATOR_AND_NOT );
+    condition.addCondition( andNot );
+    Condition xor = new Condition( true, "amount", Condition.FUNC_SMALLER, null, new ValueMetaAndData( "constant",
+      0.0 ) );
+    xor.setOperator( Condition.OPERATOR_XOR );
+    condition.addCondition( xor );
+    Condition orNot = condition( "id", Condition.FUNC_EQUAL, "other", null );
+    orNot.setOperator( Condition.OPERATOR_OR_NOT );
+    condition.addCondition( orNot );
+    assertSameResults( condition );
+
+    condition.setNegated( true );
+    assertSameResults( condition );
+  }
+
+  @Test
+  public void testRowByRowOnly() throws Exception {
+    // Nothing to gain: no part of the condition works on a primitive column
+    //
+    assertNull( BatchCondition.prepare( condition( "name", Condition.FUNC_EQUAL, null, "Beta" ), getRowMeta() ) );
+    assertNull( BatchCondition.prepare( condition( "id", Condition.FUNC_EQUAL, "other", null ), getRowMeta() ) );
+    assertNull( BatchCondition.prepare( condition( "unknown", Condition.FUNC_NULL, null, null ), getRowMeta() ) );
+  }
+}
@@ -0,0 +1,175 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2015 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.groupby;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.Date;
+
+import org.junit.Test;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaDate;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaNumber;
+import org.pentaho.di.core.row.value.ValueMetaString;
+
+public class AccumulatorTest {
+
+  private final ValueMetaInterface integerMeta = new ValueMetaInteger( "i" );
+  private final ValueMetaInterface numberMeta = new ValueMetaNumber( "n" );
+  private final ValueMetaInterface dateMeta = new ValueMetaDate( "d" );
+
+  private static void addAll( Accumulator accumulator, ValueMetaInterface meta, Object... values ) throws Exception {
+    for ( Object value : values ) {
+      accumulator.add( meta, value );
+    }
+  }
+
+  @Test
+  public void testPickedFromTypes() {
+    assertTrue( Accumulator.createSum( integerMeta, integerMeta, false ) instanceof Accumulator.LongSum );
+    assertTrue( Accumulator.createSum( integerMeta, numberMeta, false ) instanceof Accumulator.DoubleSum );
+    assertTrue( Accumulator.createSum( numberMeta, numberMeta, true ) instanceof Accumulator.DoubleSum );
+    assertTrue( Accumulator.createMinMax( dateMeta, true, false ) instanceof Accumulator.LongMinMax );
+    assertTrue( Accumulator.createMinMax( numberMeta, false, false ) instanceof Accumulator.DoubleMinMax );
+
+    // No primitives for strings or for binary string storage
+    //
+    ValueMetaInterface stringMeta = new ValueMetaString( "s" );
+    assertNull( Accumulator.createSum( stringMeta, numberMeta, false ) );
+    assertNull( Accumulator.createMinMax( stringMeta, false, false ) );
+    assertNull( Accumulator.createStandardDeviation( stringMeta ) );
+    ValueMetaInterface binaryMeta = new ValueMetaInteger( "b" );
+    binaryMeta.setStorageType( ValueMetaInterface.STORAGE_TYPE_BINARY_STRING );
+    assertNull( Accumulator.createMinMax( binaryMeta, false, false ) );
+  }
+
+  @Test
+  public void testSumAndAverage() throws Exception {
+    Accumulator sum = Accumulator.createSum( integerMeta, integerMeta, false );
+    assertNull( sum.getValue() );
+    addAll( sum, integerMeta, 3L, null, 4L );
+    assertEquals( Long.valueOf( 7 ), sum.getValue() );
+
+    Accumulator average = Accumulator.createSum( integerMeta, integerMeta, true );
+    addAll( average, integerMeta, 3L, null, 4L );
+    assertEquals( Long.valueOf( 3 ), average.getValue() );
+
+    average = Accumulator.createSum( integerMeta, numberMeta, true );
+    addAll( average, integerMeta, 3L, null, 4L );
+    assertEquals( 3.5, (Double) average.getValue(), 0.0 );
+
+    average.reset();
+    assertNull( average.getValue() );
+  }
+
+  @Test
+  public void testCount() throws Exception {
+    Accumulator countAll = Accumulator.createCount( false );
+    Accumulator countAny = Accumulator.createCount( true );
+    addAll( countAll, integerMeta, 1L, null, 2L );
+    addAll( countAny, integerMeta, 1L, null, 2L );
+    assertEquals( Long.valueOf( 2 ), countAll.getValue() );
+    assertEquals( Long.valueOf( 3 ), countAny.getValue() );
+  }
+
+  @Test
+  public void testMinMax() throws Exception {
+    Accumulator min = Accumulator.createMinMax( integerMeta, false, false );
+    addAll( min, integerMeta, null, 5L, -2L, 7L );
+    assertEquals( Long.valueOf( -2 ), min.getValue() );
+
+    Accumulator minNull = Accumulator.createMinMax( integerMeta, false, true );
+    addAll( minNull, integerMeta, 5L, null, -2L );
+    assertNull( minNull.getValue() );
+
+    Accumulator max = Accumulator.createMinMax( numberMeta, true, true );
+    addAll( max, numberMeta, 1.5, null, -3.0 );
+    assertEquals( 1.5, (Double) max.getValue(), 0.0 );
+
+    Date early = new Date( 1000L );
+    Date late = new Date( 2000L );
+    Accumulator maxDate = Accumulator.createMinMax( dateMeta, true, false );
+    addAll( maxDate, dateMeta, early, late, null );
+    assertSame( late, maxDate.getValue() );
+
+    Accumulator empty = Accumulator.createMinMax( dateMeta, true, false );
+    addAll( empty, dateMeta, (Object) null );
+    assertNull( empty.getValue() );
+  }
+
+  @Test
+  public void testStandardDeviation() throws Exception {
+    Accumulator stdDev = Accumulator.createStandardDeviation( numberMeta );
+    assertNull( stdDev.getValue() );
+    addAll( stdDev, numberMeta, 2.0, 4.0, null, 4.0, 4.0, 5.0, 5.0, 7.0, 9.0 );
+    assertEquals( 2.0, (Double) stdDev.getValue(), 1e-12 );
+  }
+
+  @Test
+  public void testMergeIsTheSameAsAddingEverything() throws Exception {
+    Accumulator all = Accumulator.createStandardDeviation( integerMeta );
+    Accumulator first = all.newInstance();
+    Accumulator second = all.newInstance();
+    for ( long value = 0; value < 100; value++ ) {
+      all.add( integerMeta, value * value );
+      ( value < 30 ? first : second ).add( integerMeta, value * value );
+    }
+    first.merge( second );
+    assertEquals( (Double) all.getValue(), (Double) first.getValue(), 1e-9 );
+
+    Accumulator min = Accumulator.createMinMax( integerMeta, false, false );
+    Accumulator later = min.newInstance();
+    addAll( min, integerMeta, 5L, 3L );
+    addAll( later, integerMeta, 4L, 2L );
+    min.merge( later );
+    assertEquals( Long.valueOf( 2 ), min.getValue() );
+  }
+
+  @Test
+  public void testWriteAndReadState() throws Exception {
+    Accumulator[] accumulators = new Accumulator[] {
+      Accumulator.createSum( integerMeta, integerMeta, false ), Accumulator.createSum( numberMeta, numberMeta, true ),
+      Accumulator.createCount( true ), Accumulator.createMinMax( integerMeta, true, false ),
+      Accumulator.createMinMax( dateMeta, false, false ), Accumulator.createStandardDeviation( numberMeta ), };
+    ValueMetaInterface[] metas =
+      new ValueMetaInterface[] { integerMeta, numberMeta, integerMeta, integerMeta, dateMeta, numberMeta };
+    Object[][] values =
+      new Object[][] {
+        { 1L, 2L }, { 1.0, 2.0 }, { null, 1L }, { 8L, 9L }, { new Date( 5L ), new Date( 3L ) }, { 1.0, 3.0 }, };
+
+    for ( int i = 0; i < accumulators.length; i++ ) {
+      addAll( accumulators[i], metas[i], values[i] );
+
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      accumulators[i].writeState( new DataOutputStream( bytes ) );
+      Accumulator read = accumulators[i].newInstance();
+      read.readState( new DataInputStream( new ByteArrayInputStream( bytes.toByteArray() ) ) );
+      assertEquals( accumulators[i].getValue(), read.getValue() );
+    }
+  }
+}
@@ -0,0 +1,142 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2015 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.groupby;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.math.BigDecimal;
+
+import org.junit.Test;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaNumber;
+import org.pentaho.di.core.row.value.ValueMetaString;
+
+public class ApproximateAggregateTest {
+
+  private final ValueMetaInterface integerMeta = new ValueMetaInteger( "i" );
+  private final ValueMetaInterface numberMeta = new ValueMetaNumber( "n" );
+
+  private static Accumulator copy( Accumulator accumulator ) throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    accumulator.writeState( new DataOutputStream( bytes ) );
+    Accumulator read = accumulator.newInstance();
+    read.readState( new DataInputStream( new ByteArrayInputStream( bytes.toByteArray() ) ) );
+    return read;
+  }
+
+  @Test
+  public void testPrecisionAndK() {
+    assertEquals( 14, HyperLogLog.getPrecision( 0.01 ) );
+    assertEquals( HyperLogLog.MAX_PRECISION, HyperLogLog.getPrecision( 0.0 ) );
+    assertEquals( HyperLogLog.MIN_PRECISION, HyperLogLog.getPrecision( 1.0 ) );
+    assertTrue( QuantileSketch.getK( 0.01 ) > 200 );
+    assertEquals( QuantileSketch.MAX_K, QuantileSketch.getK( 0.0 ) );
+  }
+
+  @Test
+  public void testCountDistinctIsExactForSmallGroups() throws Exception {
+    HyperLogLog hll = new HyperLogLog( 14 );
+    assertNull( hll.getValue() );
+    for ( int i = 0; i < 500; i++ ) {
+      hll.add( integerMeta, Long.valueOf( i % 100 ) );
+      hll.add( integerMeta, null );
+    }
+    assertEquals( Long.valueOf( 100 ), hll.getValue() );
+    assertEquals( Long.valueOf( 100 ), copy( hll ).getValue() );
+  }
+
+  @Test
+  public void testCountDistinctWithinError() throws Exception {
+    HyperLogLog hll = new HyperLogLog( 14 );
+    HyperLogLog first = new HyperLogLog( 14 );
+    HyperLogLog second = new HyperLogLog( 14 );
+    ValueMetaInterface stringMeta = new ValueMetaString( "s" );
+    int n = 100000;
+    for ( int i = 0; i < n; i++ ) {
+      String value = "value-" + i;
+      hll.add( stringMeta, value );
+      ( i % 3 == 0 ? first : second ).add( stringMeta, value );
+    }
+    assertEquals( n, hll.estimate(), n * 0.03 );
+
+    first.merge( second );
+    assertEquals( hll.estimate(), first.estimate() );
+    assertEquals( hll.getValue(), copy( hll ).getValue() );
+  }
+
+  @Test
+  public void testEqualValuesHaveTheSameHash() {
+    assertEquals( HyperLogLog.hash( new BigDecimal( "1.0" ) ), HyperLogLog.hash( new BigDecimal( "1.00" ) ) );
+    assertEquals( HyperLogLog.hash( new String( "abc" ) ), HyperLogLog.hash( "abc" ) );
+    assertEquals( HyperLogLog.hash( new byte[] { 1, 2 } ), HyperLogLog.hash( new byte[] { 1, 2 } ) );
+    assertFalse( HyperLogLog.hash( Long.valueOf( 1 ) ) == HyperLogLog.hash( Long.valueOf( 2 ) ) );
+  }
+
+  @Test
+  public void testMedianAndPercentileWithinRankError() throws Exception {
+    int k = QuantileSketch.getK( 0.01 );
+    QuantileSketch median = new QuantileSketch( k, 0.5 );
+    QuantileSketch percentile = new QuantileSketch( k, 0.9 );
+    assertNull( median.getValue() );
+
+    // The values 0..n-1 in a scrambled order, so the value is its own rank
+    //
+    int n = 200000;
+    for ( int i = 0; i < n; i++ ) {
+      Double value = Double.valueOf( ( i * 7919L ) % n );
+      median.add( numberMeta, value );
+      percentile.add( numberMeta, value );
+    }
+    median.add( numberMeta, null );
+    assertEquals( n, median.getCount() );
+    assertEquals( n * 0.5, (Double) median.getValue(), n * 0.01 );
+    assertEquals( n * 0.9, (Double) percentile.getValue(), n * 0.01 );
+
+    // Memory doesn't grow with the number of values
+    //
+    assertTrue( median.estimateSize() < 3L * k * 8 * 4 );
+  }
+
+  @Test
+  public void testQuantileSketchMergeAndState() throws Exception {
+    int k = QuantileSketch.getK( 0.01 );
+    QuantileSketch first = new QuantileSketch( k, 0.5 );
+    QuantileSketch second = new QuantileSketch( k, 0.5 );
+    int n = 100000;
+    for ( int i = 0; i < n; i++ ) {
+      ( i < n / 4 ? first : second ).add( integerMeta, Long.valueOf( ( i * 7919L ) % n ) );
+    }
+    first.merge( second );
+    assertEquals( n, first.getCount() );
+    assertEquals( n * 0.5, (Double) first.getValue(), n * 0.01 );
+
+    Accumulator read = copy( first );
+    assertEquals( first.getValue(), read.getValue() );
+    assertEquals( n, ( (QuantileSketch) read ).getCount() );
+  }
+}
@@ -0,0 +1,193 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2015 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.memgroupby;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.pentaho.di.core.KettleEnvironment;
+import org.pentaho.di.core.logging.LogChannel;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.ValueMeta;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.variables.Variables;
+import org.pentaho.di.trans.steps.memgroupby.MemoryGroupByData.HashEntry;
+
+public class AggregateSpillerTest {
+
+  private static final int[] TYPES = new int[] {
+    MemoryGroupByMeta.TYPE_GROUP_SUM, MemoryGroupByMeta.TYPE_GROUP_COUNT_ALL, MemoryGroupByMeta.TYPE_GROUP_MIN,
+    MemoryGroupByMeta.TYPE_GROUP_LAST, MemoryGroupByMeta.TYPE_GROUP_CONCAT_COMMA,
+    MemoryGroupByMeta.TYPE_GROUP_COUNT_DISTINCT, };
+
+  private MemoryGroupByData data;
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+    KettleEnvironment.init( false );
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    data = new MemoryGroupByData();
+    data.groupMeta = new RowMeta();
+    data.groupMeta.addValueMeta( new ValueMeta( "key", ValueMetaInterface.TYPE_INTEGER ) );
+
+    data.inputRowMeta = new RowMeta();
+    data.inputRowMeta.addValueMeta( new ValueMeta( "value", ValueMetaInterface.TYPE_INTEGER ) );
+    data.subjectnrs = new int[TYPES.length];
+
+    data.aggMeta = new RowMeta();
+    data.aggMeta.addValueMeta( new ValueMeta( "sum", ValueMetaInterface.TYPE_NUMBER ) );
+    data.aggMeta.addValueMeta( new ValueMeta( "count", ValueMetaInterface.TYPE_INTEGER ) );
+    data.aggMeta.addValueMeta( new ValueMeta( "min", ValueMetaInterface.TYPE_INTEGER ) );
+    data.aggMeta.addValueMeta( new ValueMeta( "last", ValueMetaInterface.TYPE_INTEGER ) );
+    data.aggMeta.addValueMeta( new ValueMeta( "concat", ValueMetaInterface.TYPE_STRING ) );
+    data.aggMeta.addValueMeta( new ValueMeta( "distinct", ValueMetaInterface.TYPE_INTEGER ) );
+  }
+
+  private AggregateSpiller createSpiller( long memoryLimit ) {
+    return new AggregateSpiller( data, TYPES, new String[TYPES.length], false, memoryLimit, "grptest", System
+      .getProperty( "java.io.tmpdir" ), new Variables(), new LogChannel( "AggregateSpillerTest" ) );
+  }
+
+  /**
+   * The partial aggregate of a single value.
+   */
+  @SuppressWarnings( "unchecked" )
+  private Aggregate createAggregate( long value ) {
+    Aggregate aggregate = new Aggregate();
+    aggregate.agg = new Object[TYPES.length];
+    aggregate.counts = new long[TYPES.length];
+    aggregate.mean = new double[TYPES.length];
+    aggregate.agg[0] = Double.valueOf( value );
+    aggregate.counts[1] = 1;
+    aggregate.agg[2] = Long.valueOf( value );
+    aggregate.agg[3] = Long.valueOf( value );
+    aggregate.agg[4] = new StringBuilder( Long.toString( value ) );
+    aggregate.distinctObjs = new Set[TYPES.length];
+    aggregate.distinctObjs[5] = new TreeSet<Object>();
+    aggregate.distinctObjs[5].add( Long.valueOf( value % 2 ) );
+    aggregate.agg[5] = Long.valueOf( 1 );
+    return aggregate;
+  }
+
+  /**
+   * Spills group i with value i*10 + spill for every spill, then checks the combined groups.
+   */
+  private void spillAndCheck( long memoryLimit, int nrGroups, int nrSpills ) throws Exception {
+    AggregateSpiller spiller = createSpiller( memoryLimit );
+    Map<HashEntry, Aggregate> map = new HashMap<HashEntry, Aggregate>();
+    for ( int spill = 0; spill < nrSpills; spill++ ) {
+      for ( int i = 0; i < nrGroups; i++ ) {
+        map.put( data.getHashEntry( new Object[] { Long.valueOf( i ) } ), createAggregate( i * 10 + spill ) );
+      }
+      spiller.spill( map );
+      assertTrue( map.isEmpty() );
+    }
+    assertTrue( spiller.hasSpilled() );
+    assertEquals( nrSpills, spiller.getNrSpills() );
+
+    Set<Long> keys = new HashSet<Long>();
+    Map<HashEntry, Aggregate> partition = spiller.nextPartition();
+    while ( partition != null ) {
+      for ( HashEntry entry : partition.keySet() ) {
+        Long key = (Long) entry.getGroupData()[0];
+        assertTrue( "Group " + key + " is returned more than once", keys.add( key ) );
+
+        Aggregate aggregate = partition.get( entry );
+        long first = key * 10;
+        long last = key * 10 + nrSpills - 1;
+        assertEquals( ( first + last ) * nrSpills / 2.0, (Double) aggregate.agg[0], 0.0 );
+        assertEquals( nrSpills, aggregate.counts[1] );
+        assertEquals( Long.valueOf( first ), aggregate.agg[2] );
+        assertEquals( Long.valueOf( last ), aggregate.agg[3] );
+        StringBuilder concat = new StringBuilder();
+        for ( long value = first; value <= last; value++ ) {
+          concat.append( concat.length() > 0 ? ", " : "" ).append( value );
+        }
+        assertEquals( concat.toString(), aggregate.agg[4].toString() );
+        assertEquals( Long.valueOf( Math.min( nrSpills, 2 ) ), aggregate.agg[5] );
+      }
+      partition = spiller.nextPartition();
+    }
+    assertEquals( nrGroups, keys.size() );
+    spiller.clear();
+    assertFalse( spiller.hasSpilled() );
+  }
+
+  @Test
+  public void testSpillAndCombine() throws Exception {
+    spillAndCheck( 64 * 1024 * 1024, 1000, 3 );
+  }
+
+  @Test
+  public void testRepartitionWhenPartitionDoesNotFit() throws Exception {
+    // With no memory at all every partition is divided until the hash code is used up
+    //
+    spillAndCheck( 0, 2000, 4 );
+  }
+
+  @Test
+  public void testWriteAndReadAggregate() throws Exception {
+    AggregateSpiller spiller = createSpiller( 0 );
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    Aggregate aggregate = createAggregate( 7 );
+    aggregate.agg[0] = null;
+    spiller.writeAggregate( new DataOutputStream( bytes ), aggregate );
+
+    Aggregate read = spiller.readAggregate( new DataInputStream( new ByteArrayInputStream( bytes.toByteArray() ) ) );
+    assertNull( read.agg[0] );
+    assertEquals( 1, read.counts[1] );
+    assertEquals( Long.valueOf( 7 ), read.agg[2] );
+    assertEquals( Long.valueOf( 7 ), read.agg[3] );
+    assertEquals( "7", read.agg[4].toString() );
+    assertEquals( Long.valueOf( 1 ), read.agg[5] );
+    assertTrue( read.distinctObjs[5].contains( Long.valueOf( 1 ) ) );
+  }
+
+  @Test
+  public void testPartitionLevelsUseDifferentBits() {
+    // The groups of one partition have to be spread over the partitions of the next level
+    //
+    Set<Integer> subPartitions = new HashSet<Integer>();
+    for ( int hashCode = 0; hashCode < 10000; hashCode++ ) {
+      if ( AggregateSpiller.getPartitionNr( hashCode, 0 ) == 3 ) {
+        subPartitions.add( AggregateSpiller.getPartitionNr( hashCode, 1 ) );
+      }
+    }
+    assertEquals( AggregateSpiller.NR_PARTITIONS, subPartitions.size() );
+  }
+}
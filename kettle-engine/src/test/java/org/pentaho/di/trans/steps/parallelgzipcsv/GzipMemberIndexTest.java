@@ -0,0 +1,177 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2015 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.parallelgzipcsv;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class GzipMemberIndexTest {
+
+  private ExecutorService executor;
+
+  @Before
+  public void setUp() {
+    executor = Executors.newFixedThreadPool( 3 );
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  /**
+   * Writes a BGZF block: a gzip member with the size of the block in a BC extra field.
+   */
+  private static void writeBgzfBlock( ByteArrayOutputStream out, byte[] data ) throws Exception {
+    Deflater deflater = new Deflater( Deflater.DEFAULT_COMPRESSION, true );
+    deflater.setInput( data );
+    deflater.finish();
+    byte[] buffer = new byte[data.length + 1024];
+    int length = 0;
+    while ( !deflater.finished() ) {
+      length += deflater.deflate( buffer, length, buffer.length - length );
+    }
+    deflater.end();
+    CRC32 crc = new CRC32();
+    crc.update( data );
+
+    int blockSize = 18 + length + 8;
+    out.write( new byte[] { 0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff, 6, 0, 'B', 'C', 2, 0 } );
+    writeInt( out, blockSize - 1, 2 );
+    out.write( buffer, 0, length );
+    writeInt( out, crc.getValue(), 4 );
+    writeInt( out, data.length, 4 );
+  }
+
+  private static void writeInt( ByteArrayOutputStream out, long value, int length ) {
+    for ( int i = 0; i < length; i++ ) {
+      out.write( (int) ( value >>> ( 8 * i ) ) & 0xff );
+    }
+  }
+
+  private static byte[] gzip( String data ) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    GZIPOutputStream gzip = new GZIPOutputStream( out );
+    gzip.write( data.getBytes( "UTF-8" ) );
+    gzip.close();
+    return out.toByteArray();
+  }
+
+  private static String read( InputStream in ) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[7];
+    int n;
+    while ( ( n = in.read( buffer ) ) >= 0 ) {
+      out.write( buffer, 0, n );
+    }
+    in.close();
+    return out.toString( "UTF-8" );
+  }
+
+  @Test
+  public void testBgzfBlocks() throws Exception {
+    String[] blocks = { "a;1\nb;2\nc", ";3\nd;4\n", "", "e;5\n" };
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    StringBuilder all = new StringBuilder();
+    for ( String block : blocks ) {
+      writeBgzfBlock( out, block.getBytes( "UTF-8" ) );
+      all.append( block );
+    }
+    byte[] file = out.toByteArray();
+
+    GzipMemberIndex index = GzipMemberIndex.readBgzf( new ByteArrayInputStream( file ), file.length );
+    assertNotNull( index );
+    assertEquals( 4, index.size() );
+    assertEquals( 0L, index.getCompressedOffset( 0 ) );
+    assertEquals( file.length, index.getCompressedOffset( 4 ) );
+    assertEquals( 9L, index.getUncompressedOffset( 1 ) );
+    assertEquals( 16L, index.getUncompressedOffset( 2 ) );
+    assertEquals( all.length(), index.getUncompressedOffset( 4 ) );
+    assertEquals( 7L, index.getUncompressedSize( 1 ) );
+    assertEquals( 1, index.findMember( 1L ) );
+    assertEquals( 1, index.findMember( index.getCompressedOffset( 1 ) ) );
+    assertEquals( 4, index.findMember( file.length ) );
+
+    // All members in order, whatever thread inflated them
+    assertEquals( all.toString(), read( new GzipMemberInputStream( new ByteArrayInputStream( file ), index, 0,
+      executor, 2 ) ) );
+
+    // Starting at the second member
+    ByteArrayInputStream in = new ByteArrayInputStream( file );
+    GzipMemberIndex.skipFully( in, index.getCompressedOffset( 1 ) );
+    assertEquals( all.substring( 9 ), read( new GzipMemberInputStream( in, index, 1, executor, 1 ) ) );
+
+    // A BGZF file is a regular multi-member gzip file as well
+    assertEquals( all.toString(), read( new GZIPInputStream( new ByteArrayInputStream( file ) ) ) );
+  }
+
+  @Test
+  public void testRegularGzipIsNotBgzf() throws Exception {
+    byte[] file = gzip( "a;1\nb;2\n" );
+    assertNull( GzipMemberIndex.readBgzf( new ByteArrayInputStream( file ), file.length ) );
+  }
+
+  @Test
+  public void testIndexFile() throws Exception {
+    byte[] first = gzip( "a;1\nb;2\n" );
+    byte[] second = gzip( "c;3\n" );
+    byte[] third = gzip( "d;4\ne;5\n" );
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    out.write( first );
+    out.write( second );
+    out.write( third );
+    byte[] file = out.toByteArray();
+
+    ByteArrayOutputStream gzi = new ByteArrayOutputStream();
+    writeInt( gzi, 2, 8 );
+    writeInt( gzi, first.length, 8 );
+    writeInt( gzi, 8, 8 );
+    writeInt( gzi, first.length + second.length, 8 );
+    writeInt( gzi, 12, 8 );
+
+    GzipMemberIndex index = GzipMemberIndex.readIndex( new ByteArrayInputStream( gzi.toByteArray() ), file.length );
+    assertEquals( 3, index.size() );
+    assertEquals( first.length, index.getCompressedOffset( 1 ) );
+    assertEquals( 12L, index.getUncompressedOffset( 2 ) );
+    assertEquals( 4L, index.getUncompressedSize( 1 ) );
+    assertEquals( -1L, index.getUncompressedSize( 2 ) );
+    assertTrue( GzipMemberInputStream.canInflate( index, 0 ) );
+
+    ByteArrayInputStream in = new ByteArrayInputStream( file );
+    GzipMemberIndex.skipFully( in, index.getCompressedOffset( 1 ) );
+    assertEquals( "c;3\nd;4\ne;5\n", read( new GzipMemberInputStream( in, index, 1, executor, 4 ) ) );
+  }
+}
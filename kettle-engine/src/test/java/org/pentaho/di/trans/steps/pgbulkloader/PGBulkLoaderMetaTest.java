@@ -84,7 +84,8 @@ public class PGBulkLoaderMetaTest {
       List<StepInjectionMetaEntry> entries =
         loader.getStepMeta().getStepMetaInterface().getStepMetaInjectionInterface().getStepInjectionMetadataEntries();
 
-      String masterKeys = "SCHEMA TABLE LOADACTION STOPONERROR DELIMITER ENCLOSURE PSQLPATH DBNAMEOVERRIDE MAPPINGS ";
+      String masterKeys = "SCHEMA TABLE LOADACTION STOPONERROR DELIMITER ENCLOSURE PSQLPATH DBNAMEOVERRIDE "
+        + "LOADMETHOD COPYFORMAT FLUSHSIZE MAPPINGS ";
 
       for ( StepInjectionMetaEntry entry : entries ) {
         String key = entry.getKey();
@@ -180,6 +181,9 @@ public class PGBulkLoaderMetaTest {
       assertEquals( "Load action not properly injected... ", "new_LOADACTION", lm.getLoadAction() );
       assertEquals( "PSQL path not properly injected... ", "new_PSQLPATH", lm.getPsqlpath() );
       assertEquals( "Stop on error not properly injected... ", Boolean.TRUE, lm.isStopOnError() );
+      assertEquals( "Load method not properly injected... ", "new_LOADMETHOD", lm.getLoadMethod() );
+      assertEquals( "Copy format not properly injected... ", "new_COPYFORMAT", lm.getCopyFormat() );
+      assertEquals( "Flush size not properly injected... ", "new_FLUSHSIZE", lm.getFlushSize() );
 
       assertEquals( "Field name not properly injected... ", "new_FIELDNAME", lm.getFieldTable()[0] );
       assertEquals( "Stream name not properly injected... ", "new_STREAMNAME", lm.getFieldStream()[0] );
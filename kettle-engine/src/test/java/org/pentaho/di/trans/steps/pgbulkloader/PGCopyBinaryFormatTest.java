@@ -0,0 +1,144 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2015 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.pgbulkloader;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.math.BigDecimal;
+import java.util.Calendar;
+import java.util.Date;
+
+import org.junit.Test;
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaString;
+
+public class PGCopyBinaryFormatTest {
+
+  private DataInputStream write( int columnType, ValueMetaInterface valueMeta, Object valueData ) throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    PGCopyBinaryFormat.writeValue( new DataOutputStream( bytes ), "column", columnType, valueMeta, valueData );
+    return new DataInputStream( new ByteArrayInputStream( bytes.toByteArray() ) );
+  }
+
+  private DataInputStream writeNumeric( String number ) throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    PGCopyBinaryFormat.writeNumeric( new DataOutputStream( bytes ), new BigDecimal( number ) );
+    DataInputStream in = new DataInputStream( new ByteArrayInputStream( bytes.toByteArray() ) );
+    assertEquals( bytes.size() - 4, in.readInt() );
+    return in;
+  }
+
+  @Test
+  public void testColumnTypes() {
+    assertEquals( PGCopyBinaryFormat.TYPE_INT8, PGCopyBinaryFormat.getColumnType( "int8" ) );
+    assertEquals( PGCopyBinaryFormat.TYPE_TEXT, PGCopyBinaryFormat.getColumnType( "VARCHAR" ) );
+    assertEquals( PGCopyBinaryFormat.TYPE_TIMESTAMPTZ, PGCopyBinaryFormat.getColumnType( "timestamptz" ) );
+    assertEquals( -1, PGCopyBinaryFormat.getColumnType( "geometry" ) );
+  }
+
+  @Test
+  public void testValues() throws Exception {
+    ValueMetaInterface integer = new ValueMetaInteger( "id" );
+    DataInputStream in = write( PGCopyBinaryFormat.TYPE_INT4, integer, 42L );
+    assertEquals( 4, in.readInt() );
+    assertEquals( 42, in.readInt() );
+
+    in = write( PGCopyBinaryFormat.TYPE_INT8, integer, null );
+    assertEquals( -1, in.readInt() );
+    assertEquals( 0, in.available() );
+
+    in = write( PGCopyBinaryFormat.TYPE_TEXT, new ValueMetaString( "name" ), "caf\u00e9" );
+    assertEquals( 5, in.readInt() );
+
+    in = write( PGCopyBinaryFormat.TYPE_INT2, new ValueMetaString( "code" ), "7" );
+    assertEquals( 2, in.readInt() );
+    assertEquals( 7, in.readShort() );
+  }
+
+  @Test
+  public void testIntegerRange() throws Exception {
+    ValueMetaInterface integer = new ValueMetaInteger( "id" );
+    DataInputStream in = write( PGCopyBinaryFormat.TYPE_INT4, integer, (long) Integer.MIN_VALUE );
+    assertEquals( 4, in.readInt() );
+    assertEquals( Integer.MIN_VALUE, in.readInt() );
+
+    try {
+      write( PGCopyBinaryFormat.TYPE_INT4, integer, Integer.MAX_VALUE + 1L );
+      fail( "An integer out of the int4 range should not be written" );
+    } catch ( KettleValueException e ) {
+      assertTrue( e.getMessage().contains( "[column]" ) );
+    }
+    try {
+      write( PGCopyBinaryFormat.TYPE_INT2, integer, Short.MIN_VALUE - 1L );
+      fail( "An integer out of the int2 range should not be written" );
+    } catch ( KettleValueException e ) {
+      assertTrue( e.getMessage().contains( "[column]" ) );
+    }
+  }
+
+  @Test
+  public void testNumeric() throws Exception {
+    DataInputStream in = writeNumeric( "12345.678" );
+    assertEquals( 3, in.readShort() ); // digits
+    assertEquals( 1, in.readShort() ); // weight
+    assertEquals( 0x0000, in.readShort() ); // positive
+    assertEquals( 3, in.readShort() ); // scale
+    assertEquals( 1, in.readShort() );
+    assertEquals( 2345, in.readShort() );
+    assertEquals( 6780, in.readShort() );
+
+    in = writeNumeric( "-0.0001" );
+    assertEquals( 1, in.readShort() );
+    assertEquals( -1, in.readShort() );
+    assertEquals( 0x4000, in.readShort() ); // negative
+    assertEquals( 4, in.readShort() );
+    assertEquals( 1, in.readShort() );
+
+    in = writeNumeric( "0.00" );
+    assertEquals( 0, in.readShort() );
+    assertEquals( 0, in.readShort() );
+    assertEquals( 0x0000, in.readShort() );
+    assertEquals( 2, in.readShort() );
+  }
+
+  @Test
+  public void testDates() {
+    Calendar calendar = Calendar.getInstance();
+    calendar.clear();
+    calendar.set( 2000, Calendar.JANUARY, 1 );
+    assertEquals( 0, PGCopyBinaryFormat.getPostgresDays( calendar.getTime() ) );
+    assertEquals( 0L, PGCopyBinaryFormat.getPostgresMicros( calendar.getTime(), true ) );
+
+    calendar.set( 1999, Calendar.DECEMBER, 31, 23, 0 );
+    assertEquals( -1, PGCopyBinaryFormat.getPostgresDays( calendar.getTime() ) );
+
+    // 2000-01-01 00:00:01 UTC
+    assertEquals( 1000000L, PGCopyBinaryFormat.getPostgresMicros( new Date( 946684801000L ), false ) );
+  }
+}
@@ -0,0 +1,121 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2015 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.pgbulkloader;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.sql.SQLException;
+
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.postgresql.copy.CopyIn;
+
+public class PGCopyWriterTest {
+
+  private CopyIn createCopyIn( final ByteArrayOutputStream received ) throws SQLException {
+    CopyIn copyIn = mock( CopyIn.class );
+    doAnswer( new Answer<Object>() {
+      public Object answer( InvocationOnMock invocation ) throws Throwable {
+        Object[] args = invocation.getArguments();
+        received.write( (byte[]) args[0], (Integer) args[1], (Integer) args[2] );
+        return null;
+      }
+    } ).when( copyIn ).writeToCopy( any( byte[].class ), anyInt(), anyInt() );
+    return copyIn;
+  }
+
+  @Test
+  public void testDataArrivesInOrder() throws Exception {
+    ByteArrayOutputStream received = new ByteArrayOutputStream();
+    CopyIn copyIn = createCopyIn( received );
+    when( copyIn.endCopy() ).thenReturn( 1000L );
+
+    ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    PGCopyWriter writer = new PGCopyWriter( copyIn, 7, "test" );
+    for ( int i = 0; i < 1000; i++ ) {
+      byte[] row = ( "row " + i + "\n" ).getBytes();
+      writer.write( row );
+      writer.write( '.' );
+      expected.write( row );
+      expected.write( '.' );
+    }
+    assertFalse( writer.isFinished() );
+    assertEquals( 1000L, writer.finish() );
+    assertTrue( writer.isFinished() );
+
+    assertArrayEquals( expected.toByteArray(), received.toByteArray() );
+    verify( copyIn ).endCopy();
+    verify( copyIn, never() ).cancelCopy();
+
+    // Closing a finished writer doesn't end the copy twice
+    writer.close();
+    verify( copyIn ).endCopy();
+  }
+
+  @Test
+  public void testErrorIsReported() throws Exception {
+    CopyIn copyIn = mock( CopyIn.class );
+    SQLException error = new SQLException( "invalid input syntax" );
+    doThrow( error ).when( copyIn ).writeToCopy( any( byte[].class ), anyInt(), anyInt() );
+    when( copyIn.isActive() ).thenReturn( true );
+
+    PGCopyWriter writer = new PGCopyWriter( copyIn, 4, "test" );
+    try {
+      for ( int i = 0; i < 100; i++ ) {
+        writer.write( "data".getBytes() );
+      }
+      writer.finish();
+      fail( "The error of the writer thread should be reported" );
+    } catch ( IOException e ) {
+      assertSame( error, e.getCause() );
+    }
+    verify( copyIn, never() ).endCopy();
+
+    writer.cancel();
+    verify( copyIn ).cancelCopy();
+  }
+
+  @Test
+  public void testCancel() throws Exception {
+    ByteArrayOutputStream received = new ByteArrayOutputStream();
+    CopyIn copyIn = createCopyIn( received );
+    when( copyIn.isActive() ).thenReturn( true );
+
+    PGCopyWriter writer = new PGCopyWriter( copyIn, 1024, "test" );
+    writer.write( "data".getBytes() );
+    writer.cancel();
+    assertTrue( writer.isFinished() );
+    verify( copyIn ).cancelCopy();
+    verify( copyIn, never() ).endCopy();
+
+    // Cancelling twice is harmless
+    writer.cancel();
+    verify( copyIn ).cancelCopy();
+  }
+}
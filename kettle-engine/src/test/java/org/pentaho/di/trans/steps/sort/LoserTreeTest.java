@@ -0,0 +1,88 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2015 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.sort;
+
+import static org.junit.Assert.*;
+
+import java.util.Comparator;
+
+import org.junit.Test;
+
+public class LoserTreeTest {
+
+  private static final Comparator<int[]> COMPARATOR = new Comparator<int[]>() {
+    @Override
+    public int compare( int[] one, int[] two ) {
+      return one[0] - two[0];
+    }
+  };
+
+  @Test
+  public void testMerge() {
+    int[][] sources = new int[][] { { 1, 4, 7 }, {}, { 2, 2, 9 }, { 0, 5 }, { 3 } };
+    final int[] positions = new int[sources.length];
+
+    LoserTree<int[]> tree = new LoserTree<int[]>( sources.length, COMPARATOR );
+    for ( int i = 0; i < sources.length; i++ ) {
+      tree.setHead( i, sources[i].length > 0 ? new int[] { sources[i][0], i } : null );
+    }
+    tree.init();
+
+    int[] expected = new int[] { 0, 1, 2, 2, 3, 4, 5, 7, 9 };
+    for ( int value : expected ) {
+      int[] head = tree.getWinnerHead();
+      assertEquals( value, head[0] );
+      assertEquals( head[1], tree.getWinner() );
+
+      int source = tree.getWinner();
+      positions[source]++;
+      tree.replaceWinner( positions[source] < sources[source].length
+        ? new int[] { sources[source][positions[source]], source } : null );
+    }
+    assertEquals( -1, tree.getWinner() );
+    assertNull( tree.getWinnerHead() );
+  }
+
+  @Test
+  public void testStableOnTies() {
+    LoserTree<int[]> tree = new LoserTree<int[]>( 3, COMPARATOR );
+    tree.setHead( 0, new int[] { 5 } );
+    tree.setHead( 1, new int[] { 5 } );
+    tree.setHead( 2, new int[] { 5 } );
+    tree.init();
+    assertEquals( 0, tree.getWinner() );
+    tree.replaceWinner( null );
+    assertEquals( 1, tree.getWinner() );
+    tree.replaceWinner( null );
+    assertEquals( 2, tree.getWinner() );
+    tree.replaceWinner( null );
+    assertEquals( -1, tree.getWinner() );
+  }
+
+  @Test
+  public void testEmpty() {
+    LoserTree<int[]> tree = new LoserTree<int[]>( 0, COMPARATOR );
+    tree.init();
+    assertEquals( -1, tree.getWinner() );
+  }
+}
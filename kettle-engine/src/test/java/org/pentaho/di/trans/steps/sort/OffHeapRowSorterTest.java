@@ -0,0 +1,154 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2015 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.sort;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.pentaho.di.core.KettleEnvironment;
+import org.pentaho.di.core.logging.LogChannel;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMeta;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.variables.Variables;
+
+public class OffHeapRowSorterTest {
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+    KettleEnvironment.init( false );
+  }
+
+  private OffHeapRowSorter createSorter( RowMetaInterface rowMeta, int[] keyNrs, long memoryLimit, int fanIn ) {
+    return new OffHeapRowSorter( rowMeta, keyNrs, memoryLimit, fanIn, "sorttest", System
+      .getProperty( "java.io.tmpdir" ), new Variables(), new LogChannel( "OffHeapRowSorterTest" ) );
+  }
+
+  @Test
+  public void testSortInMemory() throws Exception {
+    RowMetaInterface rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMeta( "name", ValueMetaInterface.TYPE_STRING ) );
+    rowMeta.addValueMeta( new ValueMeta( "id", ValueMetaInterface.TYPE_INTEGER ) );
+    rowMeta.getValueMeta( 0 ).setSortedDescending( true );
+
+    OffHeapRowSorter sorter = createSorter( rowMeta, new int[] { 0, 1 }, 16 * 1024 * 1024, 8 );
+    String[] names = new String[] { "abcdx", "abcda", null, "b", "abcdx", "a" };
+    for ( int i = 0; i < names.length; i++ ) {
+      sorter.addRow( new Object[] { names[i], Long.valueOf( names.length - i ) } );
+    }
+    sorter.sort();
+    assertEquals( 0, sorter.getNrRuns() );
+
+    // Descending names (nulls first, like ValueMetaBase.compare()), then ascending ids
+    //
+    String[] expectedNames = new String[] { null, "b", "abcdx", "abcdx", "abcda", "a" };
+    long[] expectedIds = new long[] { 4L, 3L, 2L, 6L, 5L, 1L };
+    for ( int i = 0; i < expectedNames.length; i++ ) {
+      Object[] row = sorter.getRow();
+      assertEquals( expectedNames[i], row[0] );
+      assertEquals( Long.valueOf( expectedIds[i] ), row[1] );
+    }
+    assertNull( sorter.getRow() );
+    sorter.dispose();
+  }
+
+  @Test
+  public void testSortWithRuns() throws Exception {
+    RowMetaInterface rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMeta( "payload", ValueMetaInterface.TYPE_STRING ) );
+    rowMeta.addValueMeta( new ValueMeta( "key", ValueMetaInterface.TYPE_INTEGER ) );
+
+    // The smallest possible budget and fan-in, so that we get a lot of runs and intermediate merges
+    //
+    OffHeapRowSorter sorter = createSorter( rowMeta, new int[] { 1 }, 0, 3 );
+    Random random = new Random( 42 );
+    List<Long> keys = new ArrayList<Long>();
+    for ( int i = 0; i < 50000; i++ ) {
+      Long key = i % 100 == 0 ? null : Long.valueOf( random.nextInt( 10000 ) - 5000 );
+      keys.add( key );
+      sorter.addRow( new Object[] { "value of " + key, key } );
+    }
+    sorter.sort();
+    assertTrue( sorter.getNrRuns() > 1 );
+    assertTrue( sorter.getNrRuns() <= 3 );
+
+    List<Long> expected = new ArrayList<Long>();
+    for ( Long key : keys ) {
+      if ( key == null ) {
+        expected.add( 0, null );
+      }
+    }
+    List<Long> nonNull = new ArrayList<Long>();
+    for ( Long key : keys ) {
+      if ( key != null ) {
+        nonNull.add( key );
+      }
+    }
+    Collections.sort( nonNull );
+    expected.addAll( nonNull );
+
+    for ( Long key : expected ) {
+      Object[] row = sorter.getRow();
+      assertNotNull( row );
+      assertEquals( key, row[1] );
+      assertEquals( "value of " + key, row[0] );
+    }
+    assertNull( sorter.getRow() );
+
+    // The sorter can be used again after clearing it
+    //
+    sorter.clear();
+    sorter.addRow( new Object[] { "x", Long.valueOf( 2L ) } );
+    sorter.addRow( new Object[] { "y", Long.valueOf( 1L ) } );
+    assertEquals( "y", sorter.getRow()[0] );
+    assertEquals( "x", sorter.getRow()[0] );
+    assertNull( sorter.getRow() );
+    sorter.dispose();
+  }
+
+  @Test
+  public void testNumberPrefix() throws Exception {
+    RowMetaInterface rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMeta( "number", ValueMetaInterface.TYPE_NUMBER ) );
+    OffHeapRowSorter sorter = createSorter( rowMeta, new int[] { 0 }, 1024 * 1024, 8 );
+
+    double[] values = new double[] { 1.5, -0.0, Double.NEGATIVE_INFINITY, 0.0, -2.25, Double.MAX_VALUE, -1.5 };
+    for ( double value : values ) {
+      sorter.addRow( new Object[] { Double.valueOf( value ) } );
+    }
+    double[] expected = values.clone();
+    java.util.Arrays.sort( expected );
+    for ( double value : expected ) {
+      assertEquals( Double.valueOf( value ), sorter.getRow()[0] );
+    }
+    assertNull( sorter.getRow() );
+    sorter.dispose();
+  }
+}
@@ -0,0 +1,129 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2015 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.sort;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.pentaho.di.core.KettleEnvironment;
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.logging.LogChannel;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMeta;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.variables.Variables;
+
+public class ParallelRowSorterTest {
+
+  private static RowMetaInterface rowMeta;
+  private static Comparator<Object[]> comparator;
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+    KettleEnvironment.init( false );
+
+    rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMeta( "key", ValueMetaInterface.TYPE_INTEGER ) );
+    rowMeta.addValueMeta( new ValueMeta( "sequence", ValueMetaInterface.TYPE_INTEGER ) );
+    comparator = new Comparator<Object[]>() {
+      @Override
+      public int compare( Object[] o1, Object[] o2 ) {
+        try {
+          return rowMeta.compare( o1, o2, new int[] { 0 } );
+        } catch ( KettleValueException e ) {
+          throw new RuntimeException( e );
+        }
+      }
+    };
+  }
+
+  private ParallelRowSorter createSorter( boolean compress ) {
+    return new ParallelRowSorter( rowMeta, comparator, 4, compress, "sorttest", System
+      .getProperty( "java.io.tmpdir" ), new Variables(), new LogChannel( "ParallelRowSorterTest" ) );
+  }
+
+  private List<Object[]> createRows( int nrRows ) {
+    Random random = new Random( 7 );
+    List<Object[]> rows = new ArrayList<Object[]>();
+    for ( int i = 0; i < nrRows; i++ ) {
+      rows.add( new Object[] { Long.valueOf( random.nextInt( 1000 ) ), Long.valueOf( i ) } );
+    }
+    return rows;
+  }
+
+  private void verify( ParallelRowSorter sorter, List<Object[]> rows ) throws Exception {
+    List<Object[]> expected = new ArrayList<Object[]>( rows );
+    Collections.sort( expected, comparator ); // stable
+    for ( Object[] expectedRow : expected ) {
+      Object[] row = sorter.getRow();
+      assertNotNull( row );
+      assertEquals( expectedRow[0], row[0] );
+      assertEquals( expectedRow[1], row[1] );
+    }
+    assertNull( sorter.getRow() );
+  }
+
+  @Test
+  public void testSortInMemory() throws Exception {
+    ParallelRowSorter sorter = createSorter( false );
+    List<Object[]> rows = createRows( 50000 );
+    sorter.sort( rows );
+    assertEquals( 0, sorter.getNrRuns() );
+    verify( sorter, rows );
+    sorter.dispose();
+  }
+
+  @Test
+  public void testSortWithChunks() throws Exception {
+    ParallelRowSorter sorter = createSorter( true );
+    List<Object[]> rows = createRows( 100000 );
+
+    List<Object[]> chunk = new ArrayList<Object[]>();
+    for ( Object[] row : rows ) {
+      chunk.add( row );
+      if ( chunk.size() == 7000 ) {
+        sorter.addChunk( chunk );
+        chunk.clear();
+      }
+    }
+    sorter.sort( chunk );
+    assertEquals( 15, sorter.getNrRuns() );
+    verify( sorter, rows );
+
+    // The sorter can be used again after clearing it
+    //
+    sorter.clear();
+    List<Object[]> more = createRows( 10 );
+    sorter.sort( more );
+    verify( sorter, more );
+    sorter.dispose();
+  }
+}
@@ -87,12 +87,16 @@ public class SortRowsMetaUnit {
 
   @Test
   public void testRoundTrips() throws KettleException {
-    List<String> attributes = Arrays.asList( "directory", "prefix", "sort_size", "free_memory", "compress",
-      "compress_variable", "unique_rows", "name", "ascending", "case_sensitive", "presorted" );
+    List<String> attributes = Arrays.asList( "directory", "prefix", "sort_size", "free_memory", "memory_limit",
+      "merge_fan_in", "sort_threads", "compress", "compress_variable", "unique_rows", "name", "ascending",
+      "case_sensitive", "presorted" );
 
     Map<String, String> getterMap = new HashMap<String, String>();
     getterMap.put( "sort_size", "getSortSize" );
     getterMap.put( "free_memory", "getFreeMemoryLimit" );
+    getterMap.put( "memory_limit", "getMemoryLimit" );
+    getterMap.put( "merge_fan_in", "getMergeFanIn" );
+    getterMap.put( "sort_threads", "getSortThreads" );
     getterMap.put( "compress", "getCompressFiles" );
     getterMap.put( "compress_variable", "getCompressFilesVariable" );
     getterMap.put( "unique_rows", "isOnlyPassingUniqueRows" );
@@ -103,6 +107,9 @@ public class SortRowsMetaUnit {
     Map<String, String> setterMap = new HashMap<String, String>();
     setterMap.put( "sort_size", "setSortSize" );
     setterMap.put( "free_memory", "setFreeMemoryLimit" );
+    setterMap.put( "memory_limit", "setMemoryLimit" );
+    setterMap.put( "merge_fan_in", "setMergeFanIn" );
+    setterMap.put( "sort_threads", "setSortThreads" );
     setterMap.put( "compress", "setCompressFiles" );
     setterMap.put( "compress_variable", "setCompressFilesVariable" );
     setterMap.put( "name", "setFieldName" );
@@ -108,8 +108,11 @@ public class StreamLookupTest {
   }
 
   private RowSet mockDataRowSet( boolean binary ) {
+    return mockDataRowSet( binary, new Object[][] { { "Name1", "1" }, { "Name2", "2" } } );
+  }
+
+  private RowSet mockDataRowSet( boolean binary, Object[][] data ) {
     final int storageType = binary ? STORAGE_TYPE_BINARY_STRING : STORAGE_TYPE_NORMAL;
-    Object[][] data = { { "Name1", "1" }, { "Name2", "2" } };
 
     if ( binary ) {
       convertDataToBinary( data );
@@ -133,6 +136,11 @@ public class StreamLookupTest {
   }
 
   private StreamLookupMeta mockProcessRowMeta( boolean memoryPreservationActive ) throws KettleStepException {
+    return mockProcessRowMeta( memoryPreservationActive, false, false );
+  }
+
+  private StreamLookupMeta mockProcessRowMeta( boolean memoryPreservationActive, boolean binaryIndex,
+    boolean rangeLookup ) throws KettleStepException {
     StreamLookupMeta meta = smh.processRowsStepMetaInterface;
 
     StepMeta lookupStepMeta = when( mock( StepMeta.class ).getName() ).thenReturn( "Lookup" ).getMock();
@@ -148,6 +156,8 @@ public class StreamLookupTest {
     doReturn( memoryPreservationActive ).when( meta ).isMemoryPreservationActive();
     doReturn( false ).when( meta ).isUsingSortedList();
     doReturn( false ).when( meta ).isUsingIntegerPair();
+    doReturn( binaryIndex ).when( meta ).isUsingBinaryIndex();
+    doReturn( rangeLookup ).when( meta ).isRangeLookup();
     doReturn( new int[] { -1 } ).when( meta ).getValueDefaultType();
     doReturn( new String[] { "" } ).when( meta ).getValueDefault();
     doReturn( new String[] { "Value" } ).when( meta ).getValueName();
@@ -159,13 +169,18 @@ public class StreamLookupTest {
   }
 
   private void doTest( boolean memoryPreservationActive, boolean binaryLookupStream, boolean binaryDataStream ) throws KettleException {
+    doTest( memoryPreservationActive, false, binaryLookupStream, binaryDataStream );
+  }
+
+  private void doTest( boolean memoryPreservationActive, boolean binaryIndex, boolean binaryLookupStream,
+    boolean binaryDataStream ) throws KettleException {
     StreamLookup step = new StreamLookup( smh.stepMeta, smh.stepDataInterface, 0, smh.transMeta, smh.trans );
     step.init( smh.initStepMetaInterface, smh.initStepDataInterface );
     step.getInputRowSets().add( mockLookupRowSet( binaryLookupStream ) );
     step.getInputRowSets().add( mockDataRowSet( binaryDataStream ) );
     step.getOutputRowSets().add( new QueueRowSet() );
 
-    StreamLookupMeta meta = mockProcessRowMeta( memoryPreservationActive );
+    StreamLookupMeta meta = mockProcessRowMeta( memoryPreservationActive, binaryIndex, false );
     StreamLookupData data = new StreamLookupData();
     data.readLookupValues = true;
 
@@ -232,4 +247,42 @@ public class StreamLookupTest {
   public void testMemoryPreservationWithBinaryStreams() throws KettleException {
     doTest( true, false, true );
   }
+
+  @Test
+  public void testBinaryIndexWithNormalStreams() throws KettleException {
+    doTest( true, true, false, false );
+  }
+
+  @Test
+  public void testBinaryIndexWithBinaryStreams() throws KettleException {
+    doTest( true, true, true, true );
+  }
+
+  @Test
+  public void testRangeLookup() throws KettleException {
+    StreamLookup step = new StreamLookup( smh.stepMeta, smh.stepDataInterface, 0, smh.transMeta, smh.trans );
+    step.init( smh.initStepMetaInterface, smh.initStepDataInterface );
+    step.getInputRowSets().add( mockLookupRowSet( false ) );
+    step.getInputRowSets().add(
+      mockDataRowSet( false, new Object[][] { { "Name1", "15" }, { "Name2", "3" }, { "Name3", "0" } } ) );
+    step.getOutputRowSets().add( new QueueRowSet() );
+
+    StreamLookupMeta meta = mockProcessRowMeta( false, false, true );
+    StreamLookupData data = new StreamLookupData();
+    data.readLookupValues = true;
+
+    // The Id of a row finds the lookup row with the highest Id that is lower or equal
+    //
+    RowSet outputRowSet = step.getOutputRowSets().get( 0 );
+    String[] expectedValues = { "Value1", "Value2", null };
+    int rowNumber = 0;
+    while ( step.processRow( meta, data ) ) {
+      Object[] rowData = outputRowSet.getRow();
+      if ( rowData != null ) {
+        Assert.assertEquals( "Unexpected value at row " + rowNumber, expectedValues[rowNumber], rowData[2] );
+        rowNumber++;
+      }
+    }
+    Assert.assertEquals( "Incorrect output row number", 3, rowNumber );
+  }
 }
@@ -22,10 +22,23 @@
 
 package org.pentaho.di.trans.steps.synchronizeaftermerge;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.sql.BatchUpdateException;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -40,8 +53,11 @@ import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import org.pentaho.di.core.KettleEnvironment;
 import org.pentaho.di.core.RowMetaAndData;
+import org.pentaho.di.core.database.Database;
 import org.pentaho.di.core.database.DatabaseInterface;
 import org.pentaho.di.core.database.DatabaseMeta;
+import org.pentaho.di.core.exception.KettleDatabaseBatchException;
+import org.pentaho.di.core.logging.LoggingObjectInterface;
 import org.pentaho.di.core.plugins.DatabasePluginType;
 import org.pentaho.di.core.plugins.PluginInterface;
 import org.pentaho.di.core.plugins.PluginRegistry;
@@ -61,6 +77,7 @@ import org.pentaho.di.trans.step.StepInterface;
 import org.pentaho.di.trans.step.StepMeta;
 import org.pentaho.di.trans.steps.dummytrans.DummyTransMeta;
 import org.pentaho.di.trans.steps.injector.InjectorMeta;
+import org.pentaho.di.trans.steps.mock.StepMockHelper;
 
 public class SynchronizeAfterMergeTest {
 
@@ -219,4 +236,64 @@ public class SynchronizeAfterMergeTest {
       ex.printStackTrace();
     }
   }
+
+  @Test
+  public void testFailedBatchIsSentToErrorHandling() throws Exception {
+    StepMockHelper<SynchronizeAfterMergeMeta, SynchronizeAfterMergeData> smh =
+      new StepMockHelper<SynchronizeAfterMergeMeta, SynchronizeAfterMergeData>( "synch step",
+        SynchronizeAfterMergeMeta.class, SynchronizeAfterMergeData.class );
+    when( smh.logChannelInterfaceFactory.create( any(), any( LoggingObjectInterface.class ) ) ).thenReturn(
+      smh.logChannelInterface );
+    when( smh.stepMeta.isDoingErrorHandling() ).thenReturn( true );
+
+    try {
+      RowMetaInterface rowMeta = inputList.get( 0 ).getRowMeta();
+      SynchronizeAfterMergeData data = new SynchronizeAfterMergeData();
+      data.inputRowMeta = rowMeta;
+      data.outputRowMeta = rowMeta;
+      data.indexOfOperationOrderField = 2;
+      data.insertValue = "insert";
+      data.updateValue = "update";
+      data.deleteValue = "deleted";
+      data.valuenrs = new int[] { 1 };
+      data.insertRowMeta = new RowMeta();
+      data.insertRowMeta.addValueMeta( new ValueMeta( "key", ValueMeta.TYPE_STRING ) );
+      data.realSchemaTable = "test";
+      data.batchMode = true;
+      data.commitSize = 2;
+      data.db = mock( Database.class );
+      data.insertStatement = mock( PreparedStatement.class );
+
+      // The second row of the batch fails when the batch is sent to the database
+      //
+      KettleDatabaseBatchException be =
+        new KettleDatabaseBatchException( "Error updating batch", new BatchUpdateException() );
+      be.setUpdateCounts( new int[] { 1, Statement.EXECUTE_FAILED } );
+      List<Exception> exceptions = new ArrayList<Exception>();
+      exceptions.add( new SQLException( "duplicate key" ) );
+      be.setExceptionsList( exceptions );
+      doThrow( be ).when( data.db ).executeBatch( data.insertStatement );
+
+      Object[] row1 = new Object[] { "Ben", "123", "insert" };
+      Object[] row2 = new Object[] { "Ann", "456", "insert" };
+      SynchronizeAfterMerge step =
+        spy( new SynchronizeAfterMerge( smh.stepMeta, data, 0, smh.transMeta, smh.trans ) );
+      step.first = false;
+      doReturn( row1 ).doReturn( row2 ).when( step ).getRow();
+      doNothing().when( step ).putRow( any( RowMetaInterface.class ), any( Object[].class ) );
+      doNothing().when( step ).putError( any( RowMetaInterface.class ), any( Object[].class ), anyLong(),
+        anyString(), anyString(), anyString() );
+
+      assertTrue( step.processRow( smh.processRowsStepMetaInterface, data ) );
+      assertTrue( step.processRow( smh.processRowsStepMetaInterface, data ) );
+
+      verify( data.db ).executeBatch( data.insertStatement );
+      verify( data.db ).commit( true );
+      verify( step ).putRow( rowMeta, row1 );
+      verify( step ).putError( rowMeta, row2, 1L, "java.sql.SQLException: duplicate key", null, "SUYNC002" );
+      assertEquals( 0, step.getErrors() );
+    } finally {
+      smh.cleanUp();
+    }
+  }
 }
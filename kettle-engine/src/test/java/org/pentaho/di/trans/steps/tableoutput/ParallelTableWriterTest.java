@@ -0,0 +1,161 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2015 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.tableoutput;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.pentaho.di.core.database.Database;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+
+public class ParallelTableWriterTest {
+
+  private Database createDatabase( PreparedStatement statement ) throws Exception {
+    Database db = mock( Database.class );
+    doReturn( "INSERT INTO test VALUES ( ? )" ).when( db ).getInsertStatement( anyString(), anyString(),
+      any( RowMetaInterface.class ) );
+    doReturn( statement ).when( db ).prepareSQL( anyString() );
+    doReturn( true ).when( db ).getUseBatchInsert( anyBoolean() );
+    return db;
+  }
+
+  private RowMetaInterface createRowMeta() {
+    RowMetaInterface rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaInteger( "id" ) );
+    return rowMeta;
+  }
+
+  @Test
+  public void testRowsArePassedOnInOrder() throws Exception {
+    List<Database> databases = new ArrayList<Database>();
+    List<PreparedStatement> statements = new ArrayList<PreparedStatement>();
+    for ( int i = 0; i < 3; i++ ) {
+      PreparedStatement statement = mock( PreparedStatement.class );
+      statements.add( statement );
+      databases.add( createDatabase( statement ) );
+    }
+
+    ParallelTableWriter writer =
+      new ParallelTableWriter( databases, null, "test", createRowMeta(), 10, false, 1, "test" );
+    List<Object[]> committed = new ArrayList<Object[]>();
+    for ( long i = 0; i < 1005; i++ ) {
+      writer.addRow( new Object[] { i }, new Object[] { i }, committed );
+    }
+    writer.finish( committed );
+    assertTrue( writer.isFinished() );
+
+    assertEquals( 1005, committed.size() );
+    for ( int i = 0; i < committed.size(); i++ ) {
+      assertEquals( Long.valueOf( i ), committed.get( i )[0] );
+    }
+
+    // 101 batches, round-robin over the connections
+    verify( databases.get( 0 ), times( 34 ) ).executeBatch( statements.get( 0 ) );
+    verify( databases.get( 1 ), times( 34 ) ).executeBatch( statements.get( 1 ) );
+    verify( databases.get( 2 ), times( 33 ) ).executeBatch( statements.get( 2 ) );
+    verify( databases.get( 0 ), times( 34 ) ).commit( true );
+    for ( int i = 0; i < databases.size(); i++ ) {
+      verify( databases.get( i ) ).closePreparedStatement( statements.get( i ) );
+    }
+  }
+
+  @Test
+  public void testBatchesPerCommit() throws Exception {
+    PreparedStatement statement = mock( PreparedStatement.class );
+    Database db = createDatabase( statement );
+
+    ParallelTableWriter writer =
+      new ParallelTableWriter( Arrays.asList( db ), null, "test", createRowMeta(), 10, false, 4, "test" );
+    List<Object[]> committed = new ArrayList<Object[]>();
+    for ( long i = 0; i < 95; i++ ) {
+      writer.addRow( new Object[] { i }, new Object[] { i }, committed );
+    }
+    writer.finish( committed );
+
+    assertEquals( 95, committed.size() );
+    verify( db, times( 10 ) ).executeBatch( statement );
+    // After 4 and 8 batches and the last 2 at the end
+    verify( db, times( 3 ) ).commit( true );
+  }
+
+  @Test
+  public void testErrorIsReported() throws Exception {
+    PreparedStatement statement = mock( PreparedStatement.class );
+    Database db = createDatabase( statement );
+    SQLException duplicate = new SQLException( "duplicate key" );
+    doThrow( Database.createKettleDatabaseBatchException( "Error updating batch", duplicate ) ).when( db )
+      .executeBatch( statement );
+
+    ParallelTableWriter writer =
+      new ParallelTableWriter( Arrays.asList( db ), null, "test", createRowMeta(), 10, false, 1, "test" );
+    List<Object[]> committed = new ArrayList<Object[]>();
+    try {
+      for ( long i = 0; i < 100; i++ ) {
+        writer.addRow( new Object[] { i }, new Object[] { i }, committed );
+      }
+      writer.finish( committed );
+      fail( "The error of the writer should be reported" );
+    } catch ( KettleException e ) {
+      // Expected
+    }
+    writer.cancel();
+    assertTrue( committed.isEmpty() );
+    verify( db, never() ).commit( true );
+  }
+
+  @Test
+  public void testBatchSizeTuner() {
+    ParallelTableWriter.BatchSizeTuner tuner = new ParallelTableWriter.BatchSizeTuner( 1000 );
+    long fast = 10 * 1000000L;
+    long slow = ParallelTableWriter.BatchSizeTuner.TARGET_MILLIS * 3 * 1000000L;
+
+    // Batches that aren't full don't count
+    tuner.executed( 10, fast );
+    assertEquals( 1000, tuner.getBatchSize() );
+
+    tuner.executed( 1000, fast );
+    assertEquals( 2000, tuner.getBatchSize() );
+    for ( int i = 0; i < 10; i++ ) {
+      tuner.executed( tuner.getBatchSize(), fast );
+    }
+    assertEquals( 8000, tuner.getBatchSize() );
+
+    for ( int i = 0; i < 10; i++ ) {
+      tuner.executed( tuner.getBatchSize(), slow );
+    }
+    assertEquals( 125, tuner.getBatchSize() );
+  }
+}
@@ -32,6 +32,7 @@ import org.junit.Test;
 import org.pentaho.di.core.database.DatabaseMeta;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.xml.XMLHandler;
 import org.pentaho.di.repository.Repository;
 import org.pentaho.di.trans.steps.loadsave.MemoryRepository;
 import org.pentaho.metastore.api.IMetaStore;
@@ -125,4 +126,28 @@ public class TableOutputMetaTest {
     assertEquals( "s6", tableOutputMeta.getStreamFields().get( 2 ) );
   }
 
+  @Test
+  public void testParallelWriterOptions() throws Exception {
+    TableOutputMeta tableOutputMeta = new TableOutputMeta();
+    assertEquals( "1", tableOutputMeta.getNumberOfWriters() );
+    assertEquals( "1", tableOutputMeta.getBatchesPerCommit() );
+    assertFalse( tableOutputMeta.isAutoTuneBatchSize() );
+
+    tableOutputMeta.setNumberOfWriters( "${writers}" );
+    tableOutputMeta.setAutoTuneBatchSize( true );
+    tableOutputMeta.setBatchesPerCommit( "10" );
+
+    TableOutputMeta loaded = new TableOutputMeta();
+    loaded.loadXML( XMLHandler.getSubNode(
+      XMLHandler.loadXMLString( "<step>" + tableOutputMeta.getXML() + "</step>" ), "step" ), databases, metaStore );
+    assertEquals( "${writers}", loaded.getNumberOfWriters() );
+    assertTrue( loaded.isAutoTuneBatchSize() );
+    assertEquals( "10", loaded.getBatchesPerCommit() );
+
+    // Steps saved before the option existed use a single writer
+    Repository rep = new MemoryRepository();
+    loaded.readRep( rep, metaStore, null, databases );
+    assertEquals( "1", loaded.getNumberOfWriters() );
+    assertEquals( "1", loaded.getBatchesPerCommit() );
+  }
 }
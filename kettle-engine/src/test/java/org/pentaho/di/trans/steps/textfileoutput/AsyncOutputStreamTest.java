@@ -0,0 +1,150 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2015 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.textfileoutput;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AsyncOutputStreamTest {
+
+  private ExecutorService executor;
+
+  @Before
+  public void setUp() {
+    executor = Executors.newFixedThreadPool( 3 );
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  private static byte[] createData( int size ) {
+    byte[] data = new byte[size];
+    Random random = new Random( 42 );
+    for ( int i = 0; i < size; i++ ) {
+      data[i] = (byte) ( 'a' + random.nextInt( 8 ) );
+    }
+    return data;
+  }
+
+  private static void write( OutputStream out, byte[] data ) throws IOException {
+    // Mix single bytes and chunks of all sizes, crossing the block boundaries
+    //
+    int position = 0;
+    int chunk = 1;
+    while ( position < data.length ) {
+      if ( chunk == 1 ) {
+        out.write( data[position++] );
+      } else {
+        int length = Math.min( chunk, data.length - position );
+        out.write( data, position, length );
+        position += length;
+      }
+      chunk = chunk * 3 % 100003;
+    }
+  }
+
+  private static byte[] gunzip( byte[] compressed ) throws IOException {
+    GZIPInputStream in = new GZIPInputStream( new ByteArrayInputStream( compressed ) );
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[8192];
+    int n;
+    while ( ( n = in.read( buffer ) ) >= 0 ) {
+      out.write( buffer, 0, n );
+    }
+    in.close();
+    return out.toByteArray();
+  }
+
+  @Test
+  public void testWritesBlocksInOrder() throws Exception {
+    byte[] data = createData( 3 * AsyncOutputStream.BLOCK_SIZE + 12345 );
+    ByteArrayOutputStream target = new ByteArrayOutputStream();
+    AsyncOutputStream out = new AsyncOutputStream( target, null, 0, "test writer" );
+    write( out, data );
+    out.flush();
+    assertEquals( data.length, target.size() );
+    out.write( data, 0, 10 );
+    out.close();
+    out.close();
+
+    assertEquals( data.length + 10, target.size() );
+    byte[] written = target.toByteArray();
+    for ( int i = 0; i < data.length; i++ ) {
+      assertEquals( data[i], written[i] );
+    }
+  }
+
+  @Test
+  public void testCompressesBlocksAsGzipMembers() throws Exception {
+    byte[] data = createData( 5 * AsyncOutputStream.BLOCK_SIZE + 1 );
+    ByteArrayOutputStream target = new ByteArrayOutputStream();
+    AsyncOutputStream out = new AsyncOutputStream( target, executor, 3, "test writer" );
+    write( out, data );
+    out.close();
+
+    byte[] compressed = target.toByteArray();
+    assertTrue( compressed.length < data.length );
+    assertArrayEquals( data, gunzip( compressed ) );
+
+    // Every block is a member of its own: the second one starts right after the first
+    //
+    int firstMember = AsyncOutputStream.gzip( data, AsyncOutputStream.BLOCK_SIZE ).length;
+    assertEquals( (byte) 0x1f, compressed[firstMember] );
+    assertEquals( (byte) 0x8b, compressed[firstMember + 1] );
+  }
+
+  @Test
+  public void testFailuresAreReported() throws Exception {
+    OutputStream failing = new OutputStream() {
+      @Override
+      public void write( int b ) throws IOException {
+        throw new IOException( "disk full" );
+      }
+    };
+    AsyncOutputStream out = new AsyncOutputStream( failing, null, 0, "test writer" );
+    try {
+      write( out, createData( 10 * AsyncOutputStream.BLOCK_SIZE ) );
+      out.flush();
+      fail( "the failure of the writer wasn't reported" );
+    } catch ( IOException e ) {
+      assertEquals( "disk full", e.getMessage() );
+    }
+  }
+}
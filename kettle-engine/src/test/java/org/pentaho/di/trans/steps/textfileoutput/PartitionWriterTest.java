@@ -0,0 +1,75 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2015 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.textfileoutput;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+
+import org.junit.Test;
+
+public class PartitionWriterTest {
+
+  @Test
+  public void testEscapePathName() {
+    assertEquals( PartitionWriter.DEFAULT_PARTITION_NAME, PartitionWriter.escapePathName( null ) );
+    assertEquals( PartitionWriter.DEFAULT_PARTITION_NAME, PartitionWriter.escapePathName( "" ) );
+    assertEquals( "BE", PartitionWriter.escapePathName( "BE" ) );
+    assertEquals( "a%2Fb%3Dc", PartitionWriter.escapePathName( "a/b=c" ) );
+    assertEquals( "%24%7Bvar} %0A", PartitionWriter.escapePathName( "${var} \n" ) );
+  }
+
+  @Test
+  public void testFilesAreCountedAndSplit() throws Exception {
+    PartitionWriter partition = new PartitionWriter( "country=BE", "/tmp/country=BE/part" );
+    assertFalse( partition.isOpen() );
+    partition.close();
+
+    ByteArrayOutputStream first = new ByteArrayOutputStream();
+    partition.open( first, null, first );
+    assertTrue( partition.isOpen() );
+    partition.write( "abc\n".getBytes() );
+    partition.rowWritten();
+    assertFalse( partition.isFull( 2, 0 ) );
+    assertTrue( partition.isFull( 0, 4 ) );
+    partition.write( 'd' );
+    partition.rowWritten();
+    assertTrue( partition.isFull( 2, 0 ) );
+    assertFalse( partition.isFull( 0, 0 ) );
+    partition.close();
+    assertFalse( partition.isOpen() );
+    assertEquals( "abc\nd", first.toString() );
+
+    ByteArrayOutputStream second = new ByteArrayOutputStream();
+    partition.open( second, null, second );
+    assertFalse( partition.isFull( 2, 4 ) );
+    partition.write( "ef".getBytes(), 1, 1 );
+    partition.rowWritten();
+    partition.close();
+    assertEquals( "f", second.toString() );
+
+    assertEquals( 2, partition.getNrFiles() );
+    assertEquals( 3, partition.getRows() );
+    assertEquals( 6, partition.getBytes() );
+  }
+}
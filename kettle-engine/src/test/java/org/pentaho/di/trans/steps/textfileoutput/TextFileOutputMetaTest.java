@@ -55,7 +55,8 @@ public class TextFileOutputMetaTest {
         "footer", "format", "compression", "encoding", "endedLine", "fileNameInField", "fileNameField", 
         "create_parent_folder", "fileName", "is_command", "servlet_output", "do_not_open_new_file_init", 
         "extention", "append", "split", "haspartno", "add_date", "add_time", "SpecifyFormat", "date_time_format", 
-        "add_to_result_filenames", "pad", "fast_dump", "splitevery", "OutputFields" );
+        "add_to_result_filenames", "pad", "fast_dump", "async_writer", "splitevery", "OutputFields",
+        "partitionFields", "maxOpenFiles", "partitionSplitSize" );
 
     Map<String, String> getterMap = new HashMap<String, String>();
     getterMap.put( "separator", "getSeparator" );
@@ -86,8 +87,12 @@ public class TextFileOutputMetaTest {
     getterMap.put( "add_to_result_filenames", "isAddToResultFiles" );
     getterMap.put( "pad", "isPadded" );
     getterMap.put( "fast_dump", "isFastDump" );
+    getterMap.put( "async_writer", "isAsyncWriter" );
     getterMap.put( "splitevery", "getSplitEvery" );
     getterMap.put( "OutputFields", "getOutputFields" );
+    getterMap.put( "partitionFields", "getPartitionFields" );
+    getterMap.put( "maxOpenFiles", "getMaxOpenFiles" );
+    getterMap.put( "partitionSplitSize", "getPartitionSplitSize" );
 
 
     Map<String, String> setterMap = new HashMap<String, String>();
@@ -119,8 +124,12 @@ public class TextFileOutputMetaTest {
     setterMap.put( "add_to_result_filenames", "setAddToResultFiles" );
     setterMap.put( "pad", "setPadded" );
     setterMap.put( "fast_dump", "setFastDump" );
+    setterMap.put( "async_writer", "setAsyncWriter" );
     setterMap.put( "splitevery", "setSplitEvery" );
     setterMap.put( "OutputFields", "setOutputFields" );
+    setterMap.put( "partitionFields", "setPartitionFields" );
+    setterMap.put( "maxOpenFiles", "setMaxOpenFiles" );
+    setterMap.put( "partitionSplitSize", "setPartitionSplitSize" );
 
 
     Map<String, FieldLoadSaveValidator<?>> fieldLoadSaveValidatorAttributeMap =
@@ -130,6 +139,8 @@ public class TextFileOutputMetaTest {
       new ArrayLoadSaveValidator<TextFileField>( new TextFileFieldLoadSaveValidator(), 25 );
 
     fieldLoadSaveValidatorAttributeMap.put( "OutputFields", outputFieldArrayLoadSaveValidator );
+    fieldLoadSaveValidatorAttributeMap.put( "partitionFields", new ArrayLoadSaveValidator<String>(
+      new StringLoadSaveValidator(), 5 ) );
 
     LoadSaveTester loadSaveTester =
       new LoadSaveTester( TextFileOutputMeta.class, attributes, getterMap, setterMap,
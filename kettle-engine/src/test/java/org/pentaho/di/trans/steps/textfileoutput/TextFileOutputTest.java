@@ -32,6 +32,7 @@ import static org.pentaho.di.core.util.Assert.assertFalse;
 import static org.pentaho.di.core.util.Assert.assertTrue;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.util.ArrayList;
@@ -41,6 +42,7 @@ import java.util.concurrent.TimeUnit;
 
 import junit.framework.Assert;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.vfs2.FileObject;
 import org.junit.After;
@@ -57,6 +59,8 @@ import org.pentaho.di.core.logging.LoggingObjectInterface;
 import org.pentaho.di.core.plugins.PluginRegistry;
 import org.pentaho.di.core.row.RowMeta;
 import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
 import org.pentaho.di.core.row.value.ValueMetaString;
 import org.pentaho.di.core.variables.VariableSpace;
 import org.pentaho.di.trans.Trans;
@@ -477,4 +481,93 @@ public class TextFileOutputTest {
     verify( step )
       .containsSeparatorOrEnclosure( any( byte[].class ), any( byte[].class ), any( byte[].class ) );
   }
+
+  private static ValueMetaInterface binaryString( ValueMetaInterface valueMeta ) {
+    ValueMetaInterface storageMeta = new ValueMetaString( valueMeta.getName() );
+    valueMeta.setStorageType( ValueMetaInterface.STORAGE_TYPE_BINARY_STRING );
+    valueMeta.setStorageMetadata( storageMeta );
+    return valueMeta;
+  }
+
+  @Test
+  public void testUnchangedBinaryStringsAreWrittenWithoutConversion() throws Exception {
+    TextFileOutput step =
+      new TextFileOutput( stepMockHelper.stepMeta, stepMockHelper.stepDataInterface, 1, stepMockHelper.transMeta,
+        stepMockHelper.trans );
+    step.meta = new TextFileOutputMeta();
+
+    TextFileOutputData data = new TextFileOutputData();
+    data.binarySeparator = ";".getBytes();
+    data.binaryEnclosure = "\"".getBytes();
+    data.binaryNewline = "\n".getBytes();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    data.writer = out;
+    step.data = data;
+
+    RowMeta rowMeta = new RowMeta();
+    rowMeta.addValueMeta( binaryString( new ValueMetaString( "name" ) ) );
+    rowMeta.addValueMeta( binaryString( new ValueMetaInteger( "id" ) ) );
+    ValueMetaInterface trimmed = binaryString( new ValueMetaString( "trimmed" ) );
+    trimmed.setTrimType( ValueMetaInterface.TRIM_TYPE_BOTH );
+    rowMeta.addValueMeta( trimmed );
+
+    step.writeRowToFile( rowMeta, new Object[] { "a;b".getBytes(), "0042".getBytes(), " c ".getBytes() } );
+
+    Assert.assertEquals( "\"a;b\";0042;c\n", out.toString() );
+    Assert.assertEquals( 2, data.conversionsAvoided );
+  }
+
+  @Test
+  public void testPartitionedOutput() throws Exception {
+    File folder = File.createTempFile( "partitioned", "" );
+    folder.delete();
+    try {
+      TextFileOutputMeta meta = new TextFileOutputMeta();
+      meta.setDefault();
+      meta.setFileName( new File( folder, "part" ).getPath() );
+      meta.setExtension( "csv" );
+      meta.setHeaderEnabled( false );
+      meta.setNewline( "\n" );
+      meta.setAddToResultFiles( false );
+      meta.setPartitionFields( new String[] { "country" } );
+      meta.setMaxOpenFiles( 1 );
+      meta.setSplitEvery( 2 );
+
+      TextFileOutputData data = new TextFileOutputData();
+      TextFileOutputTestHandler step =
+        new TextFileOutputTestHandler( stepMockHelper.stepMeta, data, 0, stepMockHelper.transMeta,
+          stepMockHelper.trans );
+      RowMeta rowMeta = new RowMeta();
+      rowMeta.addValueMeta( new ValueMetaString( "country" ) );
+      rowMeta.addValueMeta( new ValueMetaString( "name" ) );
+      step.setInputRowMeta( rowMeta );
+      Assert.assertTrue( step.init( meta, data ) );
+
+      Object[][] rows = { { "BE", "a" }, { "NL", "b" }, { "BE", "c" }, { "BE", "d" }, { "BE", "e" }, { null, "f" } };
+      for ( Object[] row : rows ) {
+        step.setRow( row );
+        Assert.assertTrue( step.processRow( meta, data ) );
+      }
+      step.setRow( null );
+      Assert.assertFalse( step.processRow( meta, data ) );
+      step.dispose( meta, data );
+      Assert.assertTrue( step.errors.isEmpty() );
+
+      // Only one file is kept open: opening another partition closes it, the next file gets a new number
+      //
+      Assert.assertEquals( "BE;a\n", FileUtils.readFileToString( new File( folder, "country=BE/part_0.csv" ) ) );
+      Assert.assertEquals( "NL;b\n", FileUtils.readFileToString( new File( folder, "country=NL/part_0.csv" ) ) );
+      Assert.assertEquals( "BE;c\nBE;d\n", FileUtils.readFileToString( new File( folder, "country=BE/part_1.csv" ) ) );
+      Assert.assertEquals( "BE;e\n", FileUtils.readFileToString( new File( folder, "country=BE/part_2.csv" ) ) );
+      Assert.assertEquals( ";f\n", FileUtils.readFileToString(
+        new File( folder, "country=__HIVE_DEFAULT_PARTITION__/part_0.csv" ) ) );
+
+      Assert.assertEquals( 3, data.partitions.size() );
+      Assert.assertEquals( 1, data.maxOpenPartitions );
+      Assert.assertEquals( 3, data.partitionFilesEvicted );
+      Assert.assertTrue( data.openPartitions.isEmpty() );
+    } finally {
+      FileUtils.deleteDirectory( folder );
+    }
+  }
 }
@@ -86,6 +86,18 @@ public class DatabaseLookupDialog extends BaseStepDialog implements StepDialogIn
   private Text wCachesize;
   private FormData fdlCachesize, fdCachesize;
 
+  private Label wlCacheShared;
+  private Button wCacheShared;
+  private FormData fdlCacheShared, fdCacheShared;
+
+  private Label wlCacheTimeToLive;
+  private Text wCacheTimeToLive;
+  private FormData fdlCacheTimeToLive, fdCacheTimeToLive;
+
+  private Label wlBatchSize;
+  private Text wBatchSize;
+  private FormData fdlBatchSize, fdBatchSize;
+
   private Label wlKey;
   private TableView wKey;
   private FormData fdlKey, fdKey;
@@ -332,12 +344,74 @@ public class DatabaseLookupDialog extends BaseStepDialog implements StepDialogIn
       }
     } );
 
+    // Cache : Shared?
+    wlCacheShared = new Label( shell, SWT.RIGHT );
+    wlCacheShared.setText( BaseMessages.getString( PKG, "DatabaseLookupDialog.CacheShared.Label" ) );
+    wlCacheShared.setToolTipText( BaseMessages.getString( PKG, "DatabaseLookupDialog.CacheShared.Tooltip" ) );
+    props.setLook( wlCacheShared );
+    fdlCacheShared = new FormData();
+    fdlCacheShared.left = new FormAttachment( 0, 0 );
+    fdlCacheShared.right = new FormAttachment( middle, -margin );
+    fdlCacheShared.top = new FormAttachment( wCacheLoadAll, margin );
+    wlCacheShared.setLayoutData( fdlCacheShared );
+    wCacheShared = new Button( shell, SWT.CHECK );
+    wCacheShared.setToolTipText( BaseMessages.getString( PKG, "DatabaseLookupDialog.CacheShared.Tooltip" ) );
+    props.setLook( wCacheShared );
+    fdCacheShared = new FormData();
+    fdCacheShared.left = new FormAttachment( middle, 0 );
+    fdCacheShared.top = new FormAttachment( wCacheLoadAll, margin );
+    wCacheShared.setLayoutData( fdCacheShared );
+    wCacheShared.addSelectionListener( new SelectionAdapter() {
+      public void widgetSelected( SelectionEvent e ) {
+        input.setChanged();
+        enableFields();
+      }
+    } );
+
+    // Cache time to live line
+    wlCacheTimeToLive = new Label( shell, SWT.RIGHT );
+    wlCacheTimeToLive.setText( BaseMessages.getString( PKG, "DatabaseLookupDialog.CacheTimeToLive.Label" ) );
+    props.setLook( wlCacheTimeToLive );
+    fdlCacheTimeToLive = new FormData();
+    fdlCacheTimeToLive.left = new FormAttachment( 0, 0 );
+    fdlCacheTimeToLive.right = new FormAttachment( middle, -margin );
+    fdlCacheTimeToLive.top = new FormAttachment( wCacheShared, margin );
+    wlCacheTimeToLive.setLayoutData( fdlCacheTimeToLive );
+    wCacheTimeToLive = new Text( shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wCacheTimeToLive );
+    wCacheTimeToLive.addModifyListener( lsMod );
+    fdCacheTimeToLive = new FormData();
+    fdCacheTimeToLive.left = new FormAttachment( middle, 0 );
+    fdCacheTimeToLive.right = new FormAttachment( 100, 0 );
+    fdCacheTimeToLive.top = new FormAttachment( wCacheShared, margin );
+    wCacheTimeToLive.setLayoutData( fdCacheTimeToLive );
+
+    // Batch size line
+    wlBatchSize = new Label( shell, SWT.RIGHT );
+    wlBatchSize.setText( BaseMessages.getString( PKG, "DatabaseLookupDialog.BatchSize.Label" ) );
+    wlBatchSize.setToolTipText( BaseMessages.getString( PKG, "DatabaseLookupDialog.BatchSize.Tooltip" ) );
+    props.setLook( wlBatchSize );
+    fdlBatchSize = new FormData();
+    fdlBatchSize.left = new FormAttachment( 0, 0 );
+    fdlBatchSize.right = new FormAttachment( middle, -margin );
+    fdlBatchSize.top = new FormAttachment( wCacheTimeToLive, margin );
+    wlBatchSize.setLayoutData( fdlBatchSize );
+    wBatchSize = new Text( shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    wBatchSize.setToolTipText( BaseMessages.getString( PKG, "DatabaseLookupDialog.BatchSize.Tooltip" ) );
+    props.setLook( wBatchSize );
+    wBatchSize.addModifyListener( lsMod );
+    fdBatchSize = new FormData();
+    fdBatchSize.left = new FormAttachment( middle, 0 );
+    fdBatchSize.right = new FormAttachment( 100, 0 );
+    fdBatchSize.top = new FormAttachment( wCacheTimeToLive, margin );
+    wBatchSize.setLayoutData( fdBatchSize );
+
     wlKey = new Label( shell, SWT.NONE );
     wlKey.setText( BaseMessages.getString( PKG, "DatabaseLookupDialog.Keys.Label" ) );
     props.setLook( wlKey );
     fdlKey = new FormData();
     fdlKey.left = new FormAttachment( 0, 0 );
-    fdlKey.top = new FormAttachment( wCacheLoadAll, margin );
+    fdlKey.top = new FormAttachment( wBatchSize, margin );
     wlKey.setLayoutData( fdlKey );
 
     int nrKeyCols = 4;
@@ -529,6 +603,8 @@ public class DatabaseLookupDialog extends BaseStepDialog implements StepDialogIn
     wTable.addSelectionListener( lsDef );
     wOrderBy.addSelectionListener( lsDef );
     wCachesize.addSelectionListener( lsDef );
+    wCacheTimeToLive.addSelectionListener( lsDef );
+    wBatchSize.addSelectionListener( lsDef );
 
     // Detect X or ALT-F4 or something that kills this window...
     shell.addShellListener( new ShellAdapter() {
@@ -630,6 +706,14 @@ public class DatabaseLookupDialog extends BaseStepDialog implements StepDialogIn
     wCachesize.setEnabled( wCache.getSelection() && !wCacheLoadAll.getSelection() );
     wlCachesize.setEnabled( wCache.getSelection() && !wCacheLoadAll.getSelection() );
     wCacheLoadAll.setEnabled( wCache.getSelection() );
+    wlCacheShared.setEnabled( wCache.getSelection() );
+    wCacheShared.setEnabled( wCache.getSelection() );
+    boolean timeToLive = wCache.getSelection() && wCacheShared.getSelection() && !wCacheLoadAll.getSelection();
+    wlCacheTimeToLive.setEnabled( timeToLive );
+    wCacheTimeToLive.setEnabled( timeToLive );
+    boolean batch = !( wCache.getSelection() && wCacheLoadAll.getSelection() );
+    wlBatchSize.setEnabled( batch );
+    wBatchSize.setEnabled( batch );
     wlCacheLoadAll.setEnabled( wCache.getSelection() );
     wFailMultiple.setEnabled( !wCache.getSelection() );
     wlFailMultiple.setEnabled( !wCache.getSelection() );
@@ -644,6 +728,9 @@ public class DatabaseLookupDialog extends BaseStepDialog implements StepDialogIn
     wCache.setSelection( input.isCached() );
     wCachesize.setText( "" + input.getCacheSize() );
     wCacheLoadAll.setSelection( input.isLoadingAllDataInCache() );
+    wCacheShared.setSelection( input.isSharingCache() );
+    wCacheTimeToLive.setText( "" + input.getCacheTimeToLive() );
+    wBatchSize.setText( "" + input.getBatchSize() );
 
     if ( input.getStreamKeyField1() != null ) {
       for ( int i = 0; i < input.getStreamKeyField1().length; i++ ) {
@@ -728,6 +815,9 @@ public class DatabaseLookupDialog extends BaseStepDialog implements StepDialogIn
     input.setCached( wCache.getSelection() );
     input.setCacheSize( Const.toInt( wCachesize.getText(), 0 ) );
     input.setLoadingAllDataInCache( wCacheLoadAll.getSelection() );
+    input.setSharingCache( wCacheShared.getSelection() );
+    input.setCacheTimeToLive( Const.toInt( wCacheTimeToLive.getText(), 0 ) );
+    input.setBatchSize( Const.toInt( wBatchSize.getText(), 0 ) );
 
     logDebug( BaseMessages.getString( PKG, "DatabaseLookupDialog.Log.FoundKeys", String.valueOf( nrkeys ) ) );
     //CHECKSTYLE:Indentation:OFF
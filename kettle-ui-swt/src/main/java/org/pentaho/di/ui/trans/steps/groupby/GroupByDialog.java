@@ -120,6 +120,12 @@ public class GroupByDialog extends BaseStepDialog implements StepDialogInterface
 
   private FormData fdlAlwaysAddResult, fdAlwaysAddResult;
 
+  private Label wlApproximationError;
+
+  private TextVar wApproximationError;
+
+  private FormData fdlApproximationError, fdApproximationError;
+
   private Button wGet, wGetAgg;
 
   private FormData fdGet, fdGetAgg;
@@ -335,12 +341,31 @@ public class GroupByDialog extends BaseStepDialog implements StepDialogInterface
     fdAlwaysAddResult.right = new FormAttachment( 100, 0 );
     wAlwaysAddResult.setLayoutData( fdAlwaysAddResult );
 
+    wlApproximationError = new Label( shell, SWT.RIGHT );
+    wlApproximationError.setText( BaseMessages.getString( PKG, "GroupByDialog.ApproximationError.Label" ) );
+    wlApproximationError.setToolTipText( BaseMessages.getString( PKG, "GroupByDialog.ApproximationError.ToolTip" ) );
+    props.setLook( wlApproximationError );
+    fdlApproximationError = new FormData();
+    fdlApproximationError.left = new FormAttachment( 0, 0 );
+    fdlApproximationError.right = new FormAttachment( middle, -margin );
+    fdlApproximationError.top = new FormAttachment( wAlwaysAddResult, margin );
+    wlApproximationError.setLayoutData( fdlApproximationError );
+    wApproximationError = new TextVar( transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    wApproximationError.setToolTipText( BaseMessages.getString( PKG, "GroupByDialog.ApproximationError.ToolTip" ) );
+    props.setLook( wApproximationError );
+    wApproximationError.addModifyListener( lsMod );
+    fdApproximationError = new FormData();
+    fdApproximationError.left = new FormAttachment( middle, 0 );
+    fdApproximationError.top = new FormAttachment( wAlwaysAddResult, margin );
+    fdApproximationError.right = new FormAttachment( 100, 0 );
+    wApproximationError.setLayoutData( fdApproximationError );
+
     wlGroup = new Label( shell, SWT.NONE );
     wlGroup.setText( BaseMessages.getString( PKG, "GroupByDialog.Group.Label" ) );
     props.setLook( wlGroup );
     fdlGroup = new FormData();
     fdlGroup.left = new FormAttachment( 0, 0 );
-    fdlGroup.top = new FormAttachment( wAlwaysAddResult, margin );
+    fdlGroup.top = new FormAttachment( wApproximationError, margin );
     wlGroup.setLayoutData( fdlGroup );
 
     int nrKeyCols = 1;
@@ -485,6 +510,7 @@ public class GroupByDialog extends BaseStepDialog implements StepDialogInterface
     };
 
     wStepname.addSelectionListener( lsDef );
+    wApproximationError.addSelectionListener( lsDef );
 
     // Detect X or ALT-F4 or something that kills this window...
     shell.addShellListener( new ShellAdapter() {
@@ -558,6 +584,7 @@ public class GroupByDialog extends BaseStepDialog implements StepDialogInterface
       wLineNrField.setText( input.getLineNrInGroupField() );
     }
     wAlwaysAddResult.setSelection( input.isAlwaysGivingBackOneRow() );
+    wApproximationError.setText( Const.NVL( input.getApproximationError(), "" ) );
 
     if ( input.getGroupField() != null ) {
       for ( int i = 0; i < input.getGroupField().length; i++ ) {
@@ -614,6 +641,7 @@ public class GroupByDialog extends BaseStepDialog implements StepDialogInterface
 
     input.setLineNrInGroupField( wLineNrField.getText() );
     input.setAlwaysGivingBackOneRow( wAlwaysAddResult.getSelection() );
+    input.setApproximationError( wApproximationError.getText() );
 
     input.allocate( sizegroup, nrfields );
 
@@ -39,6 +39,7 @@ import org.eclipse.swt.layout.FormAttachment;
 import org.eclipse.swt.layout.FormData;
 import org.eclipse.swt.layout.FormLayout;
 import org.eclipse.swt.widgets.Button;
+import org.eclipse.swt.widgets.DirectoryDialog;
 import org.eclipse.swt.widgets.Display;
 import org.eclipse.swt.widgets.Event;
 import org.eclipse.swt.widgets.Label;
@@ -58,6 +59,7 @@ import org.pentaho.di.trans.steps.memgroupby.MemoryGroupByMeta;
 import org.pentaho.di.ui.core.dialog.ErrorDialog;
 import org.pentaho.di.ui.core.widget.ColumnInfo;
 import org.pentaho.di.ui.core.widget.TableView;
+import org.pentaho.di.ui.core.widget.TextVar;
 import org.pentaho.di.ui.trans.step.BaseStepDialog;
 
 public class MemoryGroupByDialog extends BaseStepDialog implements StepDialogInterface {
@@ -75,6 +77,23 @@ public class MemoryGroupByDialog extends BaseStepDialog implements StepDialogInt
   private Button wAlwaysAddResult;
   private FormData fdlAlwaysAddResult, fdAlwaysAddResult;
 
+  private Label wlSortDir;
+  private Button wbSortDir;
+  private TextVar wSortDir;
+  private FormData fdlSortDir, fdbSortDir, fdSortDir;
+
+  private Label wlPrefix;
+  private Text wPrefix;
+  private FormData fdlPrefix, fdPrefix;
+
+  private Label wlMemoryLimit;
+  private TextVar wMemoryLimit;
+  private FormData fdlMemoryLimit, fdMemoryLimit;
+
+  private Label wlApproximationError;
+  private TextVar wApproximationError;
+  private FormData fdlApproximationError, fdApproximationError;
+
   private Button wGet, wGetAgg;
   private FormData fdGet, fdGetAgg;
   private Listener lsGet, lsGetAgg;
@@ -157,12 +176,116 @@ public class MemoryGroupByDialog extends BaseStepDialog implements StepDialogInt
     fdAlwaysAddResult.right = new FormAttachment( 100, 0 );
     wAlwaysAddResult.setLayoutData( fdAlwaysAddResult );
 
+    // Temp directory for the spilled groups
+    wlSortDir = new Label( shell, SWT.RIGHT );
+    wlSortDir.setText( BaseMessages.getString( PKG, "MemoryGroupByDialog.TempDir.Label" ) );
+    props.setLook( wlSortDir );
+    fdlSortDir = new FormData();
+    fdlSortDir.left = new FormAttachment( 0, 0 );
+    fdlSortDir.right = new FormAttachment( middle, -margin );
+    fdlSortDir.top = new FormAttachment( wAlwaysAddResult, margin );
+    wlSortDir.setLayoutData( fdlSortDir );
+
+    wbSortDir = new Button( shell, SWT.PUSH | SWT.CENTER );
+    props.setLook( wbSortDir );
+    wbSortDir.setText( BaseMessages.getString( PKG, "MemoryGroupByDialog.Browse.Button" ) );
+    fdbSortDir = new FormData();
+    fdbSortDir.right = new FormAttachment( 100, 0 );
+    fdbSortDir.top = new FormAttachment( wAlwaysAddResult, margin );
+    wbSortDir.setLayoutData( fdbSortDir );
+
+    wSortDir = new TextVar( transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wSortDir );
+    wSortDir.addModifyListener( lsMod );
+    fdSortDir = new FormData();
+    fdSortDir.left = new FormAttachment( middle, 0 );
+    fdSortDir.top = new FormAttachment( wAlwaysAddResult, margin );
+    fdSortDir.right = new FormAttachment( wbSortDir, -margin );
+    wSortDir.setLayoutData( fdSortDir );
+
+    wbSortDir.addSelectionListener( new SelectionAdapter() {
+      public void widgetSelected( SelectionEvent arg0 ) {
+        DirectoryDialog dd = new DirectoryDialog( shell, SWT.NONE );
+        dd.setFilterPath( wSortDir.getText() );
+        String dir = dd.open();
+        if ( dir != null ) {
+          wSortDir.setText( dir );
+        }
+      }
+    } );
+
+    // Whenever something changes, set the tooltip to the expanded version:
+    wSortDir.addModifyListener( new ModifyListener() {
+      public void modifyText( ModifyEvent e ) {
+        wSortDir.setToolTipText( transMeta.environmentSubstitute( wSortDir.getText() ) );
+      }
+    } );
+
+    // Prefix line...
+    wlPrefix = new Label( shell, SWT.RIGHT );
+    wlPrefix.setText( BaseMessages.getString( PKG, "MemoryGroupByDialog.FilePrefix.Label" ) );
+    props.setLook( wlPrefix );
+    fdlPrefix = new FormData();
+    fdlPrefix.left = new FormAttachment( 0, 0 );
+    fdlPrefix.right = new FormAttachment( middle, -margin );
+    fdlPrefix.top = new FormAttachment( wbSortDir, margin * 2 );
+    wlPrefix.setLayoutData( fdlPrefix );
+    wPrefix = new Text( shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wPrefix );
+    wPrefix.addModifyListener( lsMod );
+    fdPrefix = new FormData();
+    fdPrefix.left = new FormAttachment( middle, 0 );
+    fdPrefix.top = new FormAttachment( wbSortDir, margin * 2 );
+    fdPrefix.right = new FormAttachment( 100, 0 );
+    wPrefix.setLayoutData( fdPrefix );
+
+    // Memory limit
+    wlMemoryLimit = new Label( shell, SWT.RIGHT );
+    wlMemoryLimit.setText( BaseMessages.getString( PKG, "MemoryGroupByDialog.MemoryLimit.Label" ) );
+    wlMemoryLimit.setToolTipText( BaseMessages.getString( PKG, "MemoryGroupByDialog.MemoryLimit.ToolTip" ) );
+    props.setLook( wlMemoryLimit );
+    fdlMemoryLimit = new FormData();
+    fdlMemoryLimit.left = new FormAttachment( 0, 0 );
+    fdlMemoryLimit.right = new FormAttachment( middle, -margin );
+    fdlMemoryLimit.top = new FormAttachment( wPrefix, margin );
+    wlMemoryLimit.setLayoutData( fdlMemoryLimit );
+    wMemoryLimit = new TextVar( transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    wMemoryLimit.setToolTipText( BaseMessages.getString( PKG, "MemoryGroupByDialog.MemoryLimit.ToolTip" ) );
+    props.setLook( wMemoryLimit );
+    wMemoryLimit.addModifyListener( lsMod );
+    fdMemoryLimit = new FormData();
+    fdMemoryLimit.left = new FormAttachment( middle, 0 );
+    fdMemoryLimit.top = new FormAttachment( wPrefix, margin );
+    fdMemoryLimit.right = new FormAttachment( 100, 0 );
+    wMemoryLimit.setLayoutData( fdMemoryLimit );
+
+    wlApproximationError = new Label( shell, SWT.RIGHT );
+    wlApproximationError.setText( BaseMessages.getString( PKG, "MemoryGroupByDialog.ApproximationError.Label" ) );
+    wlApproximationError.setToolTipText(
+      BaseMessages.getString( PKG, "MemoryGroupByDialog.ApproximationError.ToolTip" ) );
+    props.setLook( wlApproximationError );
+    fdlApproximationError = new FormData();
+    fdlApproximationError.left = new FormAttachment( 0, 0 );
+    fdlApproximationError.right = new FormAttachment( middle, -margin );
+    fdlApproximationError.top = new FormAttachment( wMemoryLimit, margin );
+    wlApproximationError.setLayoutData( fdlApproximationError );
+    wApproximationError = new TextVar( transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    wApproximationError.setToolTipText(
+      BaseMessages.getString( PKG, "MemoryGroupByDialog.ApproximationError.ToolTip" ) );
+    props.setLook( wApproximationError );
+    wApproximationError.addModifyListener( lsMod );
+    fdApproximationError = new FormData();
+    fdApproximationError.left = new FormAttachment( middle, 0 );
+    fdApproximationError.top = new FormAttachment( wMemoryLimit, margin );
+    fdApproximationError.right = new FormAttachment( 100, 0 );
+    wApproximationError.setLayoutData( fdApproximationError );
+
     wlGroup = new Label( shell, SWT.NONE );
     wlGroup.setText( BaseMessages.getString( PKG, "MemoryGroupByDialog.Group.Label" ) );
     props.setLook( wlGroup );
     fdlGroup = new FormData();
     fdlGroup.left = new FormAttachment( 0, 0 );
-    fdlGroup.top = new FormAttachment( wAlwaysAddResult, margin );
+    fdlGroup.top = new FormAttachment( wApproximationError, margin );
     wlGroup.setLayoutData( fdlGroup );
 
     int nrKeyCols = 1;
@@ -309,6 +432,10 @@ public class MemoryGroupByDialog extends BaseStepDialog implements StepDialogInt
     };
 
     wStepname.addSelectionListener( lsDef );
+    wSortDir.addSelectionListener( lsDef );
+    wPrefix.addSelectionListener( lsDef );
+    wMemoryLimit.addSelectionListener( lsDef );
+    wApproximationError.addSelectionListener( lsDef );
 
     // Detect X or ALT-F4 or something that kills this window...
     shell.addShellListener( new ShellAdapter() {
@@ -357,6 +484,10 @@ public class MemoryGroupByDialog extends BaseStepDialog implements StepDialogInt
     logDebug( BaseMessages.getString( PKG, "MemoryGroupByDialog.Log.GettingKeyInfo" ) );
 
     wAlwaysAddResult.setSelection( input.isAlwaysGivingBackOneRow() );
+    wSortDir.setText( Const.NVL( input.getDirectory(), "" ) );
+    wPrefix.setText( Const.NVL( input.getPrefix(), "" ) );
+    wMemoryLimit.setText( Const.NVL( input.getMemoryLimit(), "" ) );
+    wApproximationError.setText( Const.NVL( input.getApproximationError(), "" ) );
 
     if ( input.getGroupField() != null ) {
       for ( int i = 0; i < input.getGroupField().length; i++ ) {
@@ -407,6 +538,10 @@ public class MemoryGroupByDialog extends BaseStepDialog implements StepDialogInt
     int nrfields = wAgg.nrNonEmpty();
 
     input.setAlwaysGivingBackOneRow( wAlwaysAddResult.getSelection() );
+    input.setDirectory( wSortDir.getText() );
+    input.setPrefix( wPrefix.getText() );
+    input.setMemoryLimit( wMemoryLimit.getText() );
+    input.setApproximationError( wApproximationError.getText() );
 
     input.allocate( sizegroup, nrfields );
 
@@ -134,6 +134,18 @@ public class PGBulkLoaderDialog extends BaseStepDialog implements StepDialogInte
   private Button wStopOnError;
   private FormData fdlStopOnError, fdStopOnError;
 
+  private Label wlLoadMethod;
+  private CCombo wLoadMethod;
+  private FormData fdlLoadMethod, fdLoadMethod;
+
+  private Label wlCopyFormat;
+  private CCombo wCopyFormat;
+  private FormData fdlCopyFormat, fdCopyFormat;
+
+  private Label wlFlushSize;
+  private TextVar wFlushSize;
+  private FormData fdlFlushSize, fdFlushSize;
+
   private PGBulkLoaderMeta input;
 
   private static final String[] ALL_FILETYPES = new String[] { BaseMessages.getString(
@@ -389,6 +401,74 @@ public class PGBulkLoaderDialog extends BaseStepDialog implements StepDialogInte
       }
     } );
 
+    // Load method line
+    wlLoadMethod = new Label( shell, SWT.RIGHT );
+    wlLoadMethod.setText( BaseMessages.getString( PKG, "PGBulkLoaderDialog.LoadMethod.Label" ) );
+    wlLoadMethod.setToolTipText( BaseMessages.getString( PKG, "PGBulkLoaderDialog.LoadMethod.Tooltip" ) );
+    props.setLook( wlLoadMethod );
+    fdlLoadMethod = new FormData();
+    fdlLoadMethod.left = new FormAttachment( 0, 0 );
+    fdlLoadMethod.top = new FormAttachment( wStopOnError, margin );
+    fdlLoadMethod.right = new FormAttachment( middle, -margin );
+    wlLoadMethod.setLayoutData( fdlLoadMethod );
+    wLoadMethod = new CCombo( shell, SWT.SINGLE | SWT.READ_ONLY | SWT.BORDER );
+    wLoadMethod.add( BaseMessages.getString( PKG, "PGBulkLoaderDialog.LoadMethod.Psql" ) );
+    wLoadMethod.add( BaseMessages.getString( PKG, "PGBulkLoaderDialog.LoadMethod.JdbcCopy" ) );
+    wLoadMethod.select( 0 );
+    wLoadMethod.addModifyListener( lsMod );
+    wLoadMethod.addSelectionListener( new SelectionAdapter() {
+      public void widgetSelected( SelectionEvent e ) {
+        setLoadMethodFlags();
+      }
+    } );
+    props.setLook( wLoadMethod );
+    fdLoadMethod = new FormData();
+    fdLoadMethod.left = new FormAttachment( middle, 0 );
+    fdLoadMethod.top = new FormAttachment( wStopOnError, margin );
+    fdLoadMethod.right = new FormAttachment( 100, 0 );
+    wLoadMethod.setLayoutData( fdLoadMethod );
+
+    // Copy format line
+    wlCopyFormat = new Label( shell, SWT.RIGHT );
+    wlCopyFormat.setText( BaseMessages.getString( PKG, "PGBulkLoaderDialog.CopyFormat.Label" ) );
+    wlCopyFormat.setToolTipText( BaseMessages.getString( PKG, "PGBulkLoaderDialog.CopyFormat.Tooltip" ) );
+    props.setLook( wlCopyFormat );
+    fdlCopyFormat = new FormData();
+    fdlCopyFormat.left = new FormAttachment( 0, 0 );
+    fdlCopyFormat.top = new FormAttachment( wLoadMethod, margin );
+    fdlCopyFormat.right = new FormAttachment( middle, -margin );
+    wlCopyFormat.setLayoutData( fdlCopyFormat );
+    wCopyFormat = new CCombo( shell, SWT.SINGLE | SWT.READ_ONLY | SWT.BORDER );
+    wCopyFormat.add( BaseMessages.getString( PKG, "PGBulkLoaderDialog.CopyFormat.Csv" ) );
+    wCopyFormat.add( BaseMessages.getString( PKG, "PGBulkLoaderDialog.CopyFormat.Binary" ) );
+    wCopyFormat.select( 0 );
+    wCopyFormat.addModifyListener( lsMod );
+    props.setLook( wCopyFormat );
+    fdCopyFormat = new FormData();
+    fdCopyFormat.left = new FormAttachment( middle, 0 );
+    fdCopyFormat.top = new FormAttachment( wLoadMethod, margin );
+    fdCopyFormat.right = new FormAttachment( 100, 0 );
+    wCopyFormat.setLayoutData( fdCopyFormat );
+
+    // Flush size line
+    wlFlushSize = new Label( shell, SWT.RIGHT );
+    wlFlushSize.setText( BaseMessages.getString( PKG, "PGBulkLoaderDialog.FlushSize.Label" ) );
+    wlFlushSize.setToolTipText( BaseMessages.getString( PKG, "PGBulkLoaderDialog.FlushSize.Tooltip" ) );
+    props.setLook( wlFlushSize );
+    fdlFlushSize = new FormData();
+    fdlFlushSize.left = new FormAttachment( 0, 0 );
+    fdlFlushSize.top = new FormAttachment( wCopyFormat, margin );
+    fdlFlushSize.right = new FormAttachment( middle, -margin );
+    wlFlushSize.setLayoutData( fdlFlushSize );
+    wFlushSize = new TextVar( transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wFlushSize );
+    wFlushSize.addModifyListener( lsMod );
+    fdFlushSize = new FormData();
+    fdFlushSize.left = new FormAttachment( middle, 0 );
+    fdFlushSize.top = new FormAttachment( wCopyFormat, margin );
+    fdFlushSize.right = new FormAttachment( 100, 0 );
+    wFlushSize.setLayoutData( fdFlushSize );
+
     // THE BUTTONS
     wOK = new Button( shell, SWT.PUSH );
     wOK.setText( BaseMessages.getString( PKG, "System.Button.OK" ) );
@@ -405,7 +485,7 @@ public class PGBulkLoaderDialog extends BaseStepDialog implements StepDialogInte
     props.setLook( wlReturn );
     fdlReturn = new FormData();
     fdlReturn.left = new FormAttachment( 0, 0 );
-    fdlReturn.top = new FormAttachment( wStopOnError, margin );
+    fdlReturn.top = new FormAttachment( wFlushSize, margin );
     wlReturn.setLayoutData( fdlReturn );
 
     int UpInsCols = 3;
@@ -539,6 +619,7 @@ public class PGBulkLoaderDialog extends BaseStepDialog implements StepDialogInte
     wEnclosure.addSelectionListener( lsDef );
     wDelimiter.addSelectionListener( lsDef );
     wStopOnError.addSelectionListener( lsDef );
+    wFlushSize.addSelectionListener( lsDef );
 
     // Detect X or ALT-F4 or something that kills this window...
     shell.addShellListener( new ShellAdapter() {
@@ -628,6 +709,13 @@ public class PGBulkLoaderDialog extends BaseStepDialog implements StepDialogInte
       wDbNameOverride.setText( input.getDbNameOverride() );
     }
 
+    wLoadMethod.select( input.isUsingJdbcCopy() ? 1 : 0 );
+    wCopyFormat.select( input.isBinaryCopyFormat() ? 1 : 0 );
+    if ( input.getFlushSize() != null ) {
+      wFlushSize.setText( input.getFlushSize() );
+    }
+    setLoadMethodFlags();
+
     String action = input.getLoadAction();
     if ( PGBulkLoaderMeta.ACTION_INSERT.equals( action ) ) {
       wLoadAction.select( 0 );
@@ -780,6 +868,20 @@ public class PGBulkLoaderDialog extends BaseStepDialog implements StepDialogInte
     }
   }
 
+  /**
+   * The psql path is only used by the psql client, the copy format and flush size only by the JDBC copy.
+   */
+  private void setLoadMethodFlags() {
+    boolean jdbcCopy = wLoadMethod.getSelectionIndex() == 1;
+    wlPsqlPath.setEnabled( !jdbcCopy );
+    wPsqlPath.setEnabled( !jdbcCopy );
+    wbPsqlPath.setEnabled( !jdbcCopy );
+    wlCopyFormat.setEnabled( jdbcCopy );
+    wCopyFormat.setEnabled( jdbcCopy );
+    wlFlushSize.setEnabled( jdbcCopy );
+    wFlushSize.setEnabled( jdbcCopy );
+  }
+
   private void cancel() {
     stepname = null;
     input.setChanged( changed );
@@ -818,6 +920,11 @@ public class PGBulkLoaderDialog extends BaseStepDialog implements StepDialogInte
     inf.setDelimiter( wDelimiter.getText() );
     inf.setEnclosure( wEnclosure.getText() );
     inf.setStopOnError( wStopOnError.getSelection() );
+    inf.setLoadMethod( wLoadMethod.getSelectionIndex() == 1
+      ? PGBulkLoaderMeta.LOAD_METHOD_JDBC_COPY : PGBulkLoaderMeta.LOAD_METHOD_PSQL );
+    inf.setCopyFormat( wCopyFormat.getSelectionIndex() == 1
+      ? PGBulkLoaderMeta.COPY_FORMAT_BINARY : PGBulkLoaderMeta.COPY_FORMAT_CSV );
+    inf.setFlushSize( wFlushSize.getText() );
 
     /*
      * /* Set the loadaction
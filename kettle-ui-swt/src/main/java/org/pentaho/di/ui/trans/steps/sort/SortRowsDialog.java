@@ -87,6 +87,18 @@ public class SortRowsDialog extends BaseStepDialog implements StepDialogInterfac
   private TextVar wFreeMemory;
   private FormData fdlFreeMemory, fdFreeMemory;
 
+  private Label wlMemoryLimit;
+  private TextVar wMemoryLimit;
+  private FormData fdlMemoryLimit, fdMemoryLimit;
+
+  private Label wlMergeFanIn;
+  private TextVar wMergeFanIn;
+  private FormData fdlMergeFanIn, fdMergeFanIn;
+
+  private Label wlSortThreads;
+  private TextVar wSortThreads;
+  private FormData fdlSortThreads, fdSortThreads;
+
   private Label wlCompress;
   private CheckBoxVar wCompress;
   private FormData fdlCompress, fdCompress;
@@ -256,6 +268,66 @@ public class SortRowsDialog extends BaseStepDialog implements StepDialogInterfac
     fdFreeMemory.right = new FormAttachment( 100, 0 );
     wFreeMemory.setLayoutData( fdFreeMemory );
 
+    // Memory budget for sorting in off-heap memory
+    wlMemoryLimit = new Label( shell, SWT.RIGHT );
+    wlMemoryLimit.setText( BaseMessages.getString( PKG, "SortRowsDialog.MemoryLimit.Label" ) );
+    wlMemoryLimit.setToolTipText( BaseMessages.getString( PKG, "SortRowsDialog.MemoryLimit.ToolTip" ) );
+    props.setLook( wlMemoryLimit );
+    fdlMemoryLimit = new FormData();
+    fdlMemoryLimit.left = new FormAttachment( 0, 0 );
+    fdlMemoryLimit.right = new FormAttachment( middle, -margin );
+    fdlMemoryLimit.top = new FormAttachment( wFreeMemory, margin * 2 );
+    wlMemoryLimit.setLayoutData( fdlMemoryLimit );
+    wMemoryLimit = new TextVar( transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    wMemoryLimit.setToolTipText( BaseMessages.getString( PKG, "SortRowsDialog.MemoryLimit.ToolTip" ) );
+    props.setLook( wMemoryLimit );
+    wMemoryLimit.addModifyListener( lsMod );
+    fdMemoryLimit = new FormData();
+    fdMemoryLimit.left = new FormAttachment( middle, 0 );
+    fdMemoryLimit.top = new FormAttachment( wFreeMemory, margin * 2 );
+    fdMemoryLimit.right = new FormAttachment( 100, 0 );
+    wMemoryLimit.setLayoutData( fdMemoryLimit );
+
+    // Merge fan-in
+    wlMergeFanIn = new Label( shell, SWT.RIGHT );
+    wlMergeFanIn.setText( BaseMessages.getString( PKG, "SortRowsDialog.MergeFanIn.Label" ) );
+    wlMergeFanIn.setToolTipText( BaseMessages.getString( PKG, "SortRowsDialog.MergeFanIn.ToolTip" ) );
+    props.setLook( wlMergeFanIn );
+    fdlMergeFanIn = new FormData();
+    fdlMergeFanIn.left = new FormAttachment( 0, 0 );
+    fdlMergeFanIn.right = new FormAttachment( middle, -margin );
+    fdlMergeFanIn.top = new FormAttachment( wMemoryLimit, margin * 2 );
+    wlMergeFanIn.setLayoutData( fdlMergeFanIn );
+    wMergeFanIn = new TextVar( transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    wMergeFanIn.setToolTipText( BaseMessages.getString( PKG, "SortRowsDialog.MergeFanIn.ToolTip" ) );
+    props.setLook( wMergeFanIn );
+    wMergeFanIn.addModifyListener( lsMod );
+    fdMergeFanIn = new FormData();
+    fdMergeFanIn.left = new FormAttachment( middle, 0 );
+    fdMergeFanIn.top = new FormAttachment( wMemoryLimit, margin * 2 );
+    fdMergeFanIn.right = new FormAttachment( 100, 0 );
+    wMergeFanIn.setLayoutData( fdMergeFanIn );
+
+    // Number of sort threads
+    wlSortThreads = new Label( shell, SWT.RIGHT );
+    wlSortThreads.setText( BaseMessages.getString( PKG, "SortRowsDialog.SortThreads.Label" ) );
+    wlSortThreads.setToolTipText( BaseMessages.getString( PKG, "SortRowsDialog.SortThreads.ToolTip" ) );
+    props.setLook( wlSortThreads );
+    fdlSortThreads = new FormData();
+    fdlSortThreads.left = new FormAttachment( 0, 0 );
+    fdlSortThreads.right = new FormAttachment( middle, -margin );
+    fdlSortThreads.top = new FormAttachment( wMergeFanIn, margin * 2 );
+    wlSortThreads.setLayoutData( fdlSortThreads );
+    wSortThreads = new TextVar( transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    wSortThreads.setToolTipText( BaseMessages.getString( PKG, "SortRowsDialog.SortThreads.ToolTip" ) );
+    props.setLook( wSortThreads );
+    wSortThreads.addModifyListener( lsMod );
+    fdSortThreads = new FormData();
+    fdSortThreads.left = new FormAttachment( middle, 0 );
+    fdSortThreads.top = new FormAttachment( wMergeFanIn, margin * 2 );
+    fdSortThreads.right = new FormAttachment( 100, 0 );
+    wSortThreads.setLayoutData( fdSortThreads );
+
     // Using compression for temporary files?
     wlCompress = new Label( shell, SWT.RIGHT );
     wlCompress.setText( BaseMessages.getString( PKG, "SortRowsDialog.Compress.Label" ) );
@@ -263,13 +335,13 @@ public class SortRowsDialog extends BaseStepDialog implements StepDialogInterfac
     fdlCompress = new FormData();
     fdlCompress.left = new FormAttachment( 0, 0 );
     fdlCompress.right = new FormAttachment( middle, -margin );
-    fdlCompress.top = new FormAttachment( wFreeMemory, margin * 2 );
+    fdlCompress.top = new FormAttachment( wSortThreads, margin * 2 );
     wlCompress.setLayoutData( fdlCompress );
     wCompress = new CheckBoxVar( transMeta, shell, SWT.CHECK, "" );
     props.setLook( wCompress );
     fdCompress = new FormData();
     fdCompress.left = new FormAttachment( middle, 0 );
-    fdCompress.top = new FormAttachment( wFreeMemory, margin * 2 );
+    fdCompress.top = new FormAttachment( wSortThreads, margin * 2 );
     fdCompress.right = new FormAttachment( 100, 0 );
     wCompress.setLayoutData( fdCompress );
     wCompress.addSelectionListener( new SelectionAdapter() {
@@ -404,6 +476,9 @@ public class SortRowsDialog extends BaseStepDialog implements StepDialogInterfac
     wPrefix.addSelectionListener( lsDef );
     wSortSize.addSelectionListener( lsDef );
     wFreeMemory.addSelectionListener( lsDef );
+    wMemoryLimit.addSelectionListener( lsDef );
+    wMergeFanIn.addSelectionListener( lsDef );
+    wSortThreads.addSelectionListener( lsDef );
 
     // Detect X or ALT-F4 or something that kills this window...
     shell.addShellListener( new ShellAdapter() {
@@ -466,6 +541,9 @@ public class SortRowsDialog extends BaseStepDialog implements StepDialogInterfac
     }
     wSortSize.setText( Const.NVL( input.getSortSize(), "" ) );
     wFreeMemory.setText( Const.NVL( input.getFreeMemoryLimit(), "" ) );
+    wMemoryLimit.setText( Const.NVL( input.getMemoryLimit(), "" ) );
+    wMergeFanIn.setText( Const.NVL( input.getMergeFanIn(), "" ) );
+    wSortThreads.setText( Const.NVL( input.getSortThreads(), "" ) );
     wCompress.setSelection( input.getCompressFiles() );
     wCompress.setVariableName( input.getCompressFilesVariable() );
     wUniqueRows.setSelection( input.isOnlyPassingUniqueRows() );
@@ -511,6 +589,9 @@ public class SortRowsDialog extends BaseStepDialog implements StepDialogInterfac
     input.setDirectory( wSortDir.getText() );
     input.setSortSize( wSortSize.getText() );
     input.setFreeMemoryLimit( wFreeMemory.getText() );
+    input.setMemoryLimit( wMemoryLimit.getText() );
+    input.setMergeFanIn( wMergeFanIn.getText() );
+    input.setSortThreads( wSortThreads.getText() );
     log.logDetailed( "Sort rows", "Compression is set to " + wCompress.getSelection() );
     input.setCompressFiles( wCompress.getSelection() );
     input.setCompressFilesVariable( wCompress.getVariableName() );
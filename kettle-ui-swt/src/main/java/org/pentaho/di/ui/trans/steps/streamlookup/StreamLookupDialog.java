@@ -92,6 +92,14 @@ public class StreamLookupDialog extends BaseStepDialog implements StepDialogInte
   private Button wIntegerPair;
   private FormData fdlIntegerPair, fdIntegerPair;
 
+  private Label wlBinaryIndex;
+  private Button wBinaryIndex;
+  private FormData fdlBinaryIndex, fdBinaryIndex;
+
+  private Label wlRangeLookup;
+  private Button wRangeLookup;
+  private FormData fdlRangeLookup, fdRangeLookup;
+
   private StreamLookupMeta input;
 
   private Button wGetLU;
@@ -257,7 +265,7 @@ public class StreamLookupDialog extends BaseStepDialog implements StepDialogInte
     fdReturn.left = new FormAttachment( 0, 0 );
     fdReturn.top = new FormAttachment( wlReturn, margin );
     fdReturn.right = new FormAttachment( 100, 0 );
-    fdReturn.bottom = new FormAttachment( 100, -125 );
+    fdReturn.bottom = new FormAttachment( 100, -185 );
     wReturn.setLayoutData( fdReturn );
 
     wlPreserveMemory = new Label( shell, SWT.RIGHT );
@@ -324,6 +332,53 @@ public class StreamLookupDialog extends BaseStepDialog implements StepDialogInte
         input.setChanged();
       }
     } );
+
+    wlBinaryIndex = new Label( shell, SWT.RIGHT );
+    wlBinaryIndex.setText( BaseMessages.getString( PKG, "StreamLookupDialog.BinaryIndex.Label" ) );
+    props.setLook( wlBinaryIndex );
+    fdlBinaryIndex = new FormData();
+    fdlBinaryIndex.left = new FormAttachment( 0, 0 );
+    fdlBinaryIndex.top = new FormAttachment( wSortedList, margin );
+    fdlBinaryIndex.right = new FormAttachment( middle, -margin );
+    wlBinaryIndex.setLayoutData( fdlBinaryIndex );
+    wBinaryIndex = new Button( shell, SWT.RADIO );
+    wBinaryIndex.setEnabled( false );
+    props.setLook( wBinaryIndex );
+    fdBinaryIndex = new FormData();
+    fdBinaryIndex.left = new FormAttachment( middle, 0 );
+    fdBinaryIndex.top = new FormAttachment( wSortedList, margin );
+    fdBinaryIndex.right = new FormAttachment( 100, 0 );
+    wBinaryIndex.setLayoutData( fdBinaryIndex );
+    wBinaryIndex.addSelectionListener( new SelectionAdapter() {
+      public void widgetSelected( SelectionEvent e ) {
+        input.setChanged();
+      }
+    } );
+
+    // A range lookup always uses the binary index, with or without preserve memory
+    //
+    wlRangeLookup = new Label( shell, SWT.RIGHT );
+    wlRangeLookup.setText( BaseMessages.getString( PKG, "StreamLookupDialog.RangeLookup.Label" ) );
+    wlRangeLookup.setToolTipText( BaseMessages.getString( PKG, "StreamLookupDialog.RangeLookup.Tooltip" ) );
+    props.setLook( wlRangeLookup );
+    fdlRangeLookup = new FormData();
+    fdlRangeLookup.left = new FormAttachment( 0, 0 );
+    fdlRangeLookup.top = new FormAttachment( wBinaryIndex, margin );
+    fdlRangeLookup.right = new FormAttachment( middle, -margin );
+    wlRangeLookup.setLayoutData( fdlRangeLookup );
+    wRangeLookup = new Button( shell, SWT.CHECK );
+    wRangeLookup.setToolTipText( BaseMessages.getString( PKG, "StreamLookupDialog.RangeLookup.Tooltip" ) );
+    props.setLook( wRangeLookup );
+    fdRangeLookup = new FormData();
+    fdRangeLookup.left = new FormAttachment( middle, 0 );
+    fdRangeLookup.top = new FormAttachment( wBinaryIndex, margin );
+    fdRangeLookup.right = new FormAttachment( 100, 0 );
+    wRangeLookup.setLayoutData( fdRangeLookup );
+    wRangeLookup.addSelectionListener( new SelectionAdapter() {
+      public void widgetSelected( SelectionEvent e ) {
+        input.setChanged();
+      }
+    } );
     // PDI-2107 preserve memory should be enabled to have this options on.
     wPreserveMemory.addListener( SWT.Selection, new Listener() {
       @Override
@@ -331,6 +386,7 @@ public class StreamLookupDialog extends BaseStepDialog implements StepDialogInte
         boolean selection = wPreserveMemory.getSelection();
         wSortedList.setEnabled( selection );
         wIntegerPair.setEnabled( selection );
+        wBinaryIndex.setEnabled( selection );
       }
     } );
 
@@ -530,12 +586,15 @@ public class StreamLookupDialog extends BaseStepDialog implements StepDialogInte
     if ( isPreserveMemory ) {
       wSortedList.setEnabled( true );
       wIntegerPair.setEnabled( true );
+      wBinaryIndex.setEnabled( true );
     }
     // PDI-2107 usually this is sorted list or integer pair
     // for backward compatibility they can be set both
     // but user will be forced to choose only one option later.
     wSortedList.setSelection( input.isUsingSortedList() );
     wIntegerPair.setSelection( input.isUsingIntegerPair() );
+    wBinaryIndex.setSelection( input.isUsingBinaryIndex() );
+    wRangeLookup.setSelection( input.isRangeLookup() );
 
     wKey.setRowNums();
     wKey.optWidth( true );
@@ -563,6 +622,8 @@ public class StreamLookupDialog extends BaseStepDialog implements StepDialogInte
     input.setMemoryPreservationActive( wPreserveMemory.getSelection() );
     input.setUsingSortedList( wSortedList.getSelection() );
     input.setUsingIntegerPair( wIntegerPair.getSelection() );
+    input.setUsingBinaryIndex( wBinaryIndex.getSelection() );
+    input.setRangeLookup( wRangeLookup.getSelection() );
 
     if ( log.isDebug() ) {
       logDebug( BaseMessages.getString( PKG, "StreamLookupDialog.Log.FoundKeys", nrkeys + "" ) );
@@ -169,6 +169,18 @@ public class TableOutputDialog extends BaseStepDialog implements StepDialogInter
   private TextVar wReturnField;
   private FormData fdlReturnField, fdReturnField;
 
+  private Label wlNrWriters;
+  private TextVar wNrWriters;
+  private FormData fdlNrWriters, fdNrWriters;
+
+  private Label wlAutoTune;
+  private Button wAutoTune;
+  private FormData fdlAutoTune, fdAutoTune;
+
+  private Label wlBatchesPerCommit;
+  private TextVar wBatchesPerCommit;
+  private FormData fdlBatchesPerCommit, fdBatchesPerCommit;
+
   private Label wlFields;
   private TableView wFields;
 
@@ -683,6 +695,63 @@ public class TableOutputDialog extends BaseStepDialog implements StepDialogInter
     fdReturnField.right = new FormAttachment( 100, 0 );
     wReturnField.setLayoutData( fdReturnField );
 
+    // Number of parallel writers
+    wlNrWriters = new Label( wMainComp, SWT.RIGHT );
+    wlNrWriters.setText( BaseMessages.getString( PKG, "TableOutputDialog.NrWriters.Label" ) );
+    wlNrWriters.setToolTipText( BaseMessages.getString( PKG, "TableOutputDialog.NrWriters.Tooltip" ) );
+    props.setLook( wlNrWriters );
+    fdlNrWriters = new FormData();
+    fdlNrWriters.left = new FormAttachment( 0, 0 );
+    fdlNrWriters.right = new FormAttachment( middle, -margin );
+    fdlNrWriters.top = new FormAttachment( wReturnField, margin * 5 );
+    wlNrWriters.setLayoutData( fdlNrWriters );
+    wNrWriters = new TextVar( transMeta, wMainComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wNrWriters );
+    wNrWriters.addModifyListener( lsMod );
+    fdNrWriters = new FormData();
+    fdNrWriters.left = new FormAttachment( middle, 0 );
+    fdNrWriters.top = new FormAttachment( wReturnField, margin * 5 );
+    fdNrWriters.right = new FormAttachment( 100, 0 );
+    wNrWriters.setLayoutData( fdNrWriters );
+
+    // Auto-tune the batch size?
+    wlAutoTune = new Label( wMainComp, SWT.RIGHT );
+    wlAutoTune.setText( BaseMessages.getString( PKG, "TableOutputDialog.AutoTuneBatchSize.Label" ) );
+    wlAutoTune.setToolTipText( BaseMessages.getString( PKG, "TableOutputDialog.AutoTuneBatchSize.Tooltip" ) );
+    props.setLook( wlAutoTune );
+    fdlAutoTune = new FormData();
+    fdlAutoTune.left = new FormAttachment( 0, 0 );
+    fdlAutoTune.top = new FormAttachment( wNrWriters, margin );
+    fdlAutoTune.right = new FormAttachment( middle, -margin );
+    wlAutoTune.setLayoutData( fdlAutoTune );
+    wAutoTune = new Button( wMainComp, SWT.CHECK );
+    props.setLook( wAutoTune );
+    fdAutoTune = new FormData();
+    fdAutoTune.left = new FormAttachment( middle, 0 );
+    fdAutoTune.top = new FormAttachment( wNrWriters, margin );
+    fdAutoTune.right = new FormAttachment( 100, 0 );
+    wAutoTune.setLayoutData( fdAutoTune );
+    wAutoTune.addSelectionListener( lsSelMod );
+
+    // Batches per commit
+    wlBatchesPerCommit = new Label( wMainComp, SWT.RIGHT );
+    wlBatchesPerCommit.setText( BaseMessages.getString( PKG, "TableOutputDialog.BatchesPerCommit.Label" ) );
+    wlBatchesPerCommit.setToolTipText( BaseMessages.getString( PKG, "TableOutputDialog.BatchesPerCommit.Tooltip" ) );
+    props.setLook( wlBatchesPerCommit );
+    fdlBatchesPerCommit = new FormData();
+    fdlBatchesPerCommit.left = new FormAttachment( 0, 0 );
+    fdlBatchesPerCommit.right = new FormAttachment( middle, -margin );
+    fdlBatchesPerCommit.top = new FormAttachment( wAutoTune, margin );
+    wlBatchesPerCommit.setLayoutData( fdlBatchesPerCommit );
+    wBatchesPerCommit = new TextVar( transMeta, wMainComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wBatchesPerCommit );
+    wBatchesPerCommit.addModifyListener( lsMod );
+    fdBatchesPerCommit = new FormData();
+    fdBatchesPerCommit.left = new FormAttachment( middle, 0 );
+    fdBatchesPerCommit.top = new FormAttachment( wAutoTune, margin );
+    fdBatchesPerCommit.right = new FormAttachment( 100, 0 );
+    wBatchesPerCommit.setLayoutData( fdBatchesPerCommit );
+
     fdMainComp = new FormData();
     fdMainComp.left = new FormAttachment( 0, 0 );
     fdMainComp.top = new FormAttachment( 0, 0 );
@@ -852,6 +921,8 @@ public class TableOutputDialog extends BaseStepDialog implements StepDialogInter
     wPartField.addSelectionListener( lsDef );
     wNameField.addSelectionListener( lsDef );
     wReturnField.addSelectionListener( lsDef );
+    wNrWriters.addSelectionListener( lsDef );
+    wBatchesPerCommit.addSelectionListener( lsDef );
 
     wbTable.addSelectionListener( new SelectionAdapter() {
       public void widgetSelected( SelectionEvent e ) {
@@ -1185,6 +1256,15 @@ public class TableOutputDialog extends BaseStepDialog implements StepDialogInter
     wlBatch.setEnabled( enableBatch );
     wBatch.setEnabled( enableBatch );
 
+    // Parallel writers need batches that go to a single table
+    boolean enableWriters = useBatch && !usePartitioning && !isTableNameInField;
+    wlNrWriters.setEnabled( enableWriters );
+    wNrWriters.setEnabled( enableWriters );
+    wlAutoTune.setEnabled( enableWriters );
+    wAutoTune.setEnabled( enableWriters );
+    wlBatchesPerCommit.setEnabled( enableWriters );
+    wBatchesPerCommit.setEnabled( enableWriters );
+
     boolean specifyFields = wSpecifyFields.getSelection();
     wFields.setEnabled( specifyFields );
     wGetFields.setEnabled( specifyFields );
@@ -1251,6 +1331,14 @@ public class TableOutputDialog extends BaseStepDialog implements StepDialogInter
       wReturnField.setText( input.getGeneratedKeyField() );
     }
 
+    if ( input.getNumberOfWriters() != null ) {
+      wNrWriters.setText( input.getNumberOfWriters() );
+    }
+    wAutoTune.setSelection( input.isAutoTuneBatchSize() );
+    if ( input.getBatchesPerCommit() != null ) {
+      wBatchesPerCommit.setText( input.getBatchesPerCommit() );
+    }
+
     wSpecifyFields.setSelection( input.specifyFields() );
 
     for ( int i = 0; i < input.getFieldDatabase().length; i++ ) {
@@ -1292,6 +1380,9 @@ public class TableOutputDialog extends BaseStepDialog implements StepDialogInter
     info.setTableNameInTable( wNameInTable.getSelection() );
     info.setReturningGeneratedKeys( wReturnKeys.getSelection() );
     info.setGeneratedKeyField( wReturnField.getText() );
+    info.setNumberOfWriters( wNrWriters.getText() );
+    info.setAutoTuneBatchSize( wAutoTune.getSelection() );
+    info.setBatchesPerCommit( wBatchesPerCommit.getText() );
     info.setSpecifyFields( wSpecifyFields.getSelection() );
 
     int nrRows = wFields.nrNonEmpty();
@@ -152,6 +152,18 @@ public class TextFileOutputDialog extends BaseStepDialog implements StepDialogIn
   private Text wEndedLine;
   private FormData fdlEndedLine, fdEndedLine;
 
+  private Label wlPartitionFields;
+  private Text wPartitionFields;
+  private FormData fdlPartitionFields, fdPartitionFields;
+
+  private Label wlMaxOpenFiles;
+  private Text wMaxOpenFiles;
+  private FormData fdlMaxOpenFiles, fdMaxOpenFiles;
+
+  private Label wlPartitionSplitSize;
+  private Text wPartitionSplitSize;
+  private FormData fdlPartitionSplitSize, fdPartitionSplitSize;
+
   private Label wlEnclForced;
   private Button wEnclForced;
   private FormData fdlEnclForced, fdEnclForced;
@@ -188,6 +200,10 @@ public class TextFileOutputDialog extends BaseStepDialog implements StepDialogIn
   private Button wFastDump;
   private FormData fdlFastDump, fdFastDump;
 
+  private Label wlAsyncWriter;
+  private Button wAsyncWriter;
+  private FormData fdlAsyncWriter, fdAsyncWriter;
+
   private Label wlSplitEvery;
   private Text wSplitEvery;
   private FormData fdlSplitEvery, fdSplitEvery;
@@ -990,12 +1006,34 @@ public class TextFileOutputDialog extends BaseStepDialog implements StepDialogIn
       }
     } );
 
+    wlAsyncWriter = new Label( wContentComp, SWT.RIGHT );
+    wlAsyncWriter.setText( BaseMessages.getString( PKG, "TextFileOutputDialog.AsyncWriter.Label" ) );
+    props.setLook( wlAsyncWriter );
+    fdlAsyncWriter = new FormData();
+    fdlAsyncWriter.left = new FormAttachment( 0, 0 );
+    fdlAsyncWriter.top = new FormAttachment( wFastDump, margin );
+    fdlAsyncWriter.right = new FormAttachment( middle, -margin );
+    wlAsyncWriter.setLayoutData( fdlAsyncWriter );
+    wAsyncWriter = new Button( wContentComp, SWT.CHECK );
+    wAsyncWriter.setToolTipText( BaseMessages.getString( PKG, "TextFileOutputDialog.AsyncWriter.Tooltip" ) );
+    props.setLook( wAsyncWriter );
+    fdAsyncWriter = new FormData();
+    fdAsyncWriter.left = new FormAttachment( middle, 0 );
+    fdAsyncWriter.top = new FormAttachment( wFastDump, margin );
+    fdAsyncWriter.right = new FormAttachment( 100, 0 );
+    wAsyncWriter.setLayoutData( fdAsyncWriter );
+    wAsyncWriter.addSelectionListener( new SelectionAdapter() {
+      public void widgetSelected( SelectionEvent e ) {
+        input.setChanged();
+      }
+    } );
+
     wlSplitEvery = new Label( wContentComp, SWT.RIGHT );
     wlSplitEvery.setText( BaseMessages.getString( PKG, "TextFileOutputDialog.SplitEvery.Label" ) );
     props.setLook( wlSplitEvery );
     fdlSplitEvery = new FormData();
     fdlSplitEvery.left = new FormAttachment( 0, 0 );
-    fdlSplitEvery.top = new FormAttachment( wFastDump, margin );
+    fdlSplitEvery.top = new FormAttachment( wAsyncWriter, margin );
     fdlSplitEvery.right = new FormAttachment( middle, -margin );
     wlSplitEvery.setLayoutData( fdlSplitEvery );
     wSplitEvery = new Text( wContentComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
@@ -1003,7 +1041,7 @@ public class TextFileOutputDialog extends BaseStepDialog implements StepDialogIn
     wSplitEvery.addModifyListener( lsMod );
     fdSplitEvery = new FormData();
     fdSplitEvery.left = new FormAttachment( middle, 0 );
-    fdSplitEvery.top = new FormAttachment( wFastDump, margin );
+    fdSplitEvery.top = new FormAttachment( wAsyncWriter, margin );
     fdSplitEvery.right = new FormAttachment( 100, 0 );
     wSplitEvery.setLayoutData( fdSplitEvery );
 
@@ -1025,6 +1063,58 @@ public class TextFileOutputDialog extends BaseStepDialog implements StepDialogIn
     fdEndedLine.right = new FormAttachment( 100, 0 );
     wEndedLine.setLayoutData( fdEndedLine );
 
+    wlPartitionFields = new Label( wContentComp, SWT.RIGHT );
+    wlPartitionFields.setText( BaseMessages.getString( PKG, "TextFileOutputDialog.PartitionFields.Label" ) );
+    props.setLook( wlPartitionFields );
+    fdlPartitionFields = new FormData();
+    fdlPartitionFields.left = new FormAttachment( 0, 0 );
+    fdlPartitionFields.top = new FormAttachment( wEndedLine, margin );
+    fdlPartitionFields.right = new FormAttachment( middle, -margin );
+    wlPartitionFields.setLayoutData( fdlPartitionFields );
+    wPartitionFields = new Text( wContentComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    wPartitionFields.setToolTipText( BaseMessages.getString( PKG, "TextFileOutputDialog.PartitionFields.Tooltip" ) );
+    props.setLook( wPartitionFields );
+    wPartitionFields.addModifyListener( lsMod );
+    fdPartitionFields = new FormData();
+    fdPartitionFields.left = new FormAttachment( middle, 0 );
+    fdPartitionFields.top = new FormAttachment( wEndedLine, margin );
+    fdPartitionFields.right = new FormAttachment( 100, 0 );
+    wPartitionFields.setLayoutData( fdPartitionFields );
+
+    wlMaxOpenFiles = new Label( wContentComp, SWT.RIGHT );
+    wlMaxOpenFiles.setText( BaseMessages.getString( PKG, "TextFileOutputDialog.MaxOpenFiles.Label" ) );
+    props.setLook( wlMaxOpenFiles );
+    fdlMaxOpenFiles = new FormData();
+    fdlMaxOpenFiles.left = new FormAttachment( 0, 0 );
+    fdlMaxOpenFiles.top = new FormAttachment( wPartitionFields, margin );
+    fdlMaxOpenFiles.right = new FormAttachment( middle, -margin );
+    wlMaxOpenFiles.setLayoutData( fdlMaxOpenFiles );
+    wMaxOpenFiles = new Text( wContentComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wMaxOpenFiles );
+    wMaxOpenFiles.addModifyListener( lsMod );
+    fdMaxOpenFiles = new FormData();
+    fdMaxOpenFiles.left = new FormAttachment( middle, 0 );
+    fdMaxOpenFiles.top = new FormAttachment( wPartitionFields, margin );
+    fdMaxOpenFiles.right = new FormAttachment( 100, 0 );
+    wMaxOpenFiles.setLayoutData( fdMaxOpenFiles );
+
+    wlPartitionSplitSize = new Label( wContentComp, SWT.RIGHT );
+    wlPartitionSplitSize.setText( BaseMessages.getString( PKG, "TextFileOutputDialog.PartitionSplitSize.Label" ) );
+    props.setLook( wlPartitionSplitSize );
+    fdlPartitionSplitSize = new FormData();
+    fdlPartitionSplitSize.left = new FormAttachment( 0, 0 );
+    fdlPartitionSplitSize.top = new FormAttachment( wMaxOpenFiles, margin );
+    fdlPartitionSplitSize.right = new FormAttachment( middle, -margin );
+    wlPartitionSplitSize.setLayoutData( fdlPartitionSplitSize );
+    wPartitionSplitSize = new Text( wContentComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wPartitionSplitSize );
+    wPartitionSplitSize.addModifyListener( lsMod );
+    fdPartitionSplitSize = new FormData();
+    fdPartitionSplitSize.left = new FormAttachment( middle, 0 );
+    fdPartitionSplitSize.top = new FormAttachment( wMaxOpenFiles, margin );
+    fdPartitionSplitSize.right = new FormAttachment( 100, 0 );
+    wPartitionSplitSize.setLayoutData( fdPartitionSplitSize );
+
     fdContentComp = new FormData();
     fdContentComp.left = new FormAttachment( 0, 0 );
     fdContentComp.top = new FormAttachment( 0, 0 );
@@ -1499,6 +1589,17 @@ public class TextFileOutputDialog extends BaseStepDialog implements StepDialogIn
     wAddPartnr.setSelection( input.isPartNrInFilename() );
     wPad.setSelection( input.isPadded() );
     wFastDump.setSelection( input.isFastDump() );
+    wAsyncWriter.setSelection( input.isAsyncWriter() );
+    StringBuilder partitionFields = new StringBuilder();
+    for ( String partitionField : input.getPartitionFields() ) {
+      if ( partitionFields.length() > 0 ) {
+        partitionFields.append( ", " );
+      }
+      partitionFields.append( partitionField );
+    }
+    wPartitionFields.setText( partitionFields.toString() );
+    wMaxOpenFiles.setText( Integer.toString( input.getMaxOpenFiles() ) );
+    wPartitionSplitSize.setText( Integer.toString( input.getPartitionSplitSize() ) );
     wAddToResult.setSelection( input.isAddToResultFiles() );
 
     logDebug( "getting fields info..." );
@@ -1585,6 +1686,16 @@ public class TextFileOutputDialog extends BaseStepDialog implements StepDialogIn
     tfoi.setPadded( wPad.getSelection() );
     tfoi.setAddToResultFiles( wAddToResult.getSelection() );
     tfoi.setFastDump( wFastDump.getSelection() );
+    tfoi.setAsyncWriter( wAsyncWriter.getSelection() );
+    List<String> partitionFields = new ArrayList<String>();
+    for ( String partitionField : wPartitionFields.getText().split( "," ) ) {
+      if ( !Const.isEmpty( partitionField.trim() ) ) {
+        partitionFields.add( partitionField.trim() );
+      }
+    }
+    tfoi.setPartitionFields( partitionFields.toArray( new String[partitionFields.size()] ) );
+    tfoi.setMaxOpenFiles( Const.toInt( wMaxOpenFiles.getText(), TextFileOutputMeta.DEFAULT_MAX_OPEN_FILES ) );
+    tfoi.setPartitionSplitSize( Const.toInt( wPartitionSplitSize.getText(), 0 ) );
 
     int i;
     // Table table = wFields.table;